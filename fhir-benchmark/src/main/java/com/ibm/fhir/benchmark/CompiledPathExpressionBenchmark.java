@@ -0,0 +1,101 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import static com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner.PROPERTY_EXAMPLE_NAME;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
+import com.ibm.fhir.benchmark.util.BenchmarkUtil;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.search.util.CompiledPathExpression;
+
+/**
+ * Compares the compiled search parameter expressions with the FHIRPath interpreter, for the built-in
+ * Observation search parameters which can be compiled
+ */
+public class CompiledPathExpressionBenchmark {
+    private static final String EXAMPLE_NAME = "observation-example";
+    private static final String[] EXPRESSIONS = {
+        "Observation.code",
+        "Observation.status",
+        "Observation.subject",
+        "Observation.category",
+        "Observation.effective",
+        "Observation.encounter",
+        "Observation.performer",
+        "Observation.identifier",
+        "Observation.component.code",
+        "(Observation.value as CodeableConcept)",
+        "(Observation.value as Quantity) | (Observation.value as SampledData)",
+        "Resource.meta.lastUpdated",
+        "Resource.meta.profile",
+        "Resource.meta.tag"
+    };
+
+    @State(Scope.Benchmark)
+    public static class CompiledPathExpressionState {
+        public static final String SPEC_EXAMPLE_NAME = System.getProperty(PROPERTY_EXAMPLE_NAME);
+        public static final String JSON_SPEC_EXAMPLE = BenchmarkUtil.getSpecExample(Format.JSON, SPEC_EXAMPLE_NAME);
+
+        public FHIRPathEvaluator evaluator;
+        public Resource resource;
+        public List<CompiledPathExpression> compiledExpressions;
+
+        @Setup
+        public void setUp() throws Exception {
+            evaluator = FHIRPathEvaluator.evaluator();
+            resource = FHIRParser.parser(Format.JSON).parse(new StringReader(JSON_SPEC_EXAMPLE));
+            compiledExpressions = new ArrayList<>();
+            for (String expression : EXPRESSIONS) {
+                CompiledPathExpression compiled = CompiledPathExpression.compile(resource.getClass(), expression);
+                if (compiled == null) {
+                    throw new IllegalStateException("Expression is not compiled: " + expression);
+                }
+                compiledExpressions.add(compiled);
+            }
+        }
+    }
+
+    /**
+     * Evaluate the expressions as search parameter extraction did before they were compiled, including
+     * building the tree over the resource
+     */
+    @Benchmark
+    public void benchmarkInterpreter(CompiledPathExpressionState state, Blackhole bh) throws Exception {
+        EvaluationContext evaluationContext = new EvaluationContext(state.resource);
+        for (String expression : EXPRESSIONS) {
+            bh.consume(state.evaluator.evaluate(evaluationContext, expression));
+        }
+    }
+
+    @Benchmark
+    public void benchmarkCompiled(CompiledPathExpressionState state, Blackhole bh) throws Exception {
+        for (CompiledPathExpression compiled : state.compiledExpressions) {
+            bh.consume(compiled.evaluate(state.resource));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new FHIRBenchmarkRunner(CompiledPathExpressionBenchmark.class)
+                .property(PROPERTY_EXAMPLE_NAME, EXAMPLE_NAME)
+                .run();
+    }
+}
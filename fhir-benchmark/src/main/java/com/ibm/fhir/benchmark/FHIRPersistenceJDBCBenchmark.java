@@ -0,0 +1,224 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
+import com.ibm.fhir.benchmark.util.BenchmarkDatabase;
+import com.ibm.fhir.benchmark.util.SyntheticDataset;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.OperationOutcome;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.SingleResourceResult;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
+import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Benchmarks for the JDBC persistence layer, including the query builder, the parameter batch DAO and
+ * the caches, against the database selected by {@link BenchmarkDatabase}.
+ *
+ * <p>The database is loaded with a {@link SyntheticDataset} before the measurements start. Each benchmark
+ * invocation runs in its own transaction, the same as a single interaction with the server.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FHIRPersistenceJDBCBenchmark {
+    @State(Scope.Benchmark)
+    public static class FHIRPersistenceJDBCState {
+        private static final int LOAD_CHUNK_SIZE = 100;
+
+        @Param({"100"})
+        public int patientCount;
+
+        public BenchmarkDatabase database;
+        public FHIRPersistence persistence;
+        public SyntheticDataset dataset;
+        public Observation observationTemplate;
+        public Random random;
+        private int nextIndex;
+        private int nextObservation;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            database = BenchmarkDatabase.open();
+            persistence = database.createPersistence(BenchmarkDatabase.createCache());
+            dataset = new SyntheticDataset(patientCount);
+            observationTemplate = SyntheticDataset.parseSpecExample("observation-example");
+            random = new Random(patientCount);
+
+            // Load the dataset with its own ids, in chunks, so that the database content is the same for every run
+            List<Resource> resources = dataset.getResources();
+            for (int start = 0; start < resources.size(); start += LOAD_CHUNK_SIZE) {
+                List<Resource> chunk = resources.subList(start, Math.min(start + LOAD_CHUNK_SIZE, resources.size()));
+                inTransaction(this, () -> {
+                    for (Resource resource : chunk) {
+                        persistence.update(context(), resource.getId(), resource);
+                    }
+                    return null;
+                });
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            if (database != null) {
+                database.close();
+            }
+        }
+
+        /**
+         * @return the next index in a deterministic round-robin over the patients of the dataset
+         */
+        public int nextIndex() {
+            int result = nextIndex;
+            nextIndex = (nextIndex + 1) % patientCount;
+            return result;
+        }
+
+        public String nextFamilyName() {
+            return SyntheticDataset.FAMILY_NAMES.get(nextIndex() % SyntheticDataset.FAMILY_NAMES.size());
+        }
+
+        public String nextLoincCode() {
+            return SyntheticDataset.LOINC_CODES.get(nextIndex() % SyntheticDataset.LOINC_CODES.size());
+        }
+
+        public Observation newObservation() {
+            return SyntheticDataset.observation(observationTemplate, random, null, nextObservation++ % patientCount);
+        }
+    }
+
+    @Benchmark
+    public Resource benchmarkCreate(FHIRPersistenceJDBCState state) throws Exception {
+        return inTransaction(state, () -> state.persistence.create(context(), state.newObservation()).getResource());
+    }
+
+    @Benchmark
+    public Resource benchmarkUpdate(FHIRPersistenceJDBCState state) throws Exception {
+        Patient patient = state.dataset.getPatients().get(state.nextIndex());
+        return inTransaction(state, () -> state.persistence.update(context(), patient.getId(), patient).getResource());
+    }
+
+    @Benchmark
+    public Resource benchmarkRead(FHIRPersistenceJDBCState state) throws Exception {
+        String id = SyntheticDataset.patientId(state.nextIndex());
+        return inTransaction(state, () -> {
+            SingleResourceResult<Patient> result = state.persistence.read(context(), Patient.class, id);
+            return result.getResource();
+        });
+    }
+
+    @Benchmark
+    public List<Resource> benchmarkSearchString(FHIRPersistenceJDBCState state) throws Exception {
+        return search(state, Patient.class, "family", state.nextFamilyName());
+    }
+
+    @Benchmark
+    public List<Resource> benchmarkSearchToken(FHIRPersistenceJDBCState state) throws Exception {
+        return search(state, Observation.class, "code", "http://loinc.org|" + state.nextLoincCode());
+    }
+
+    @Benchmark
+    public List<Resource> benchmarkSearchDate(FHIRPersistenceJDBCState state) throws Exception {
+        int decade = 1930 + 10 * (state.nextIndex() % 9);
+        return search(state, Patient.class, "birthdate", "ge" + decade + "-01-01", "lt" + (decade + 10) + "-01-01");
+    }
+
+    @Benchmark
+    public List<Resource> benchmarkSearchQuantity(FHIRPersistenceJDBCState state) throws Exception {
+        return search(state, Observation.class, "value-quantity", "gt" + (state.nextIndex() % 200) + "|http://unitsofmeasure.org|kg");
+    }
+
+    @Benchmark
+    public List<Resource> benchmarkSearchReference(FHIRPersistenceJDBCState state) throws Exception {
+        return search(state, Observation.class, "subject", "Patient/" + SyntheticDataset.patientId(state.nextIndex()));
+    }
+
+    @Benchmark
+    public List<Resource> benchmarkSearchChained(FHIRPersistenceJDBCState state) throws Exception {
+        return search(state, Observation.class, "subject:Patient.family", state.nextFamilyName());
+    }
+
+    @Benchmark
+    public List<Resource> benchmarkSearchInclude(FHIRPersistenceJDBCState state) throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("code", Collections.singletonList("http://loinc.org|" + state.nextLoincCode()));
+        queryParameters.put("_include", Collections.singletonList("Observation:patient"));
+        return search(state, Observation.class, queryParameters);
+    }
+
+    @Benchmark
+    public int benchmarkReindex(FHIRPersistenceJDBCState state) throws Exception {
+        // Each call reindexes the resource whose index is the oldest
+        return inTransaction(state, () -> state.persistence.reindex(context(), OperationOutcome.builder(), Instant.now(), null));
+    }
+
+    private static List<Resource> search(FHIRPersistenceJDBCState state, Class<? extends Resource> resourceType, String code, String... values)
+            throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put(code, Arrays.asList(values));
+        return search(state, resourceType, queryParameters);
+    }
+
+    private static List<Resource> search(FHIRPersistenceJDBCState state, Class<? extends Resource> resourceType, Map<String, List<String>> queryParameters)
+            throws Exception {
+        return inTransaction(state, () -> {
+            FHIRPersistenceContext context = FHIRPersistenceContextFactory.createPersistenceContext(null,
+                SearchUtil.parseQueryParameters(resourceType, queryParameters));
+            MultiResourceResult<Resource> result = state.persistence.search(context, resourceType);
+            return result.getResource();
+        });
+    }
+
+    private static FHIRPersistenceContext context() {
+        return FHIRPersistenceContextFactory.createPersistenceContext(null);
+    }
+
+    private static <T> T inTransaction(FHIRPersistenceJDBCState state, Callable<T> action) throws Exception {
+        FHIRPersistenceTransaction tx = state.persistence.getTransaction();
+        tx.begin();
+        try {
+            return action.call();
+        } catch (Exception e) {
+            tx.setRollbackOnly();
+            throw e;
+        } finally {
+            tx.end();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new FHIRBenchmarkRunner(FHIRPersistenceJDBCBenchmark.class)
+            .resultFile(args.length > 0 ? args[0] : "target/benchmark/" + FHIRPersistenceJDBCBenchmark.class.getSimpleName() + ".json")
+            .run();
+    }
+}
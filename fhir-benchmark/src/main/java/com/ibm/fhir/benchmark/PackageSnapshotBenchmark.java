@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.registry.util.PackageSnapshot;
+
+/**
+ * Compares loading core package resources by parsing their JSON files with decoding them from a package snapshot
+ */
+public class PackageSnapshotBenchmark {
+    private static final String PACKAGE_DIRECTORY = "hl7/fhir/core/package/";
+    private static final List<String> FILE_NAMES = Arrays.asList(
+        "CapabilityStatement-base.json",
+        "CodeSystem-observation-status.json",
+        "SearchParameter-individual-birthdate.json",
+        "StructureDefinition-Observation.json",
+        "StructureDefinition-Patient.json",
+        "StructureDefinition-vitalsigns.json",
+        "ValueSet-administrative-gender.json",
+        "ValueSet-observation-codes.json");
+
+    @State(Scope.Benchmark)
+    public static class PackageSnapshotState {
+        public List<byte[]> jsonFiles;
+        public List<String> digests;
+        public PackageSnapshot snapshot;
+
+        @Setup
+        public void setUp() throws Exception {
+            jsonFiles = new ArrayList<>();
+            digests = new ArrayList<>();
+            PackageSnapshot.Writer writer = new PackageSnapshot.Writer();
+            for (String fileName : FILE_NAMES) {
+                byte[] json = readAllBytes(PACKAGE_DIRECTORY + fileName);
+                String digest = PackageSnapshot.digest(json);
+                writer.add(digest, FHIRParser.parser(Format.JSON).parse(new ByteArrayInputStream(json)));
+                jsonFiles.add(json);
+                digests.add(digest);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.writeTo(out);
+            byte[] bytes = out.toByteArray();
+
+            // a direct buffer, like the memory-mapped snapshot files
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).flip();
+            snapshot = PackageSnapshot.read(buffer);
+        }
+
+        private static byte[] readAllBytes(String path) throws Exception {
+            try (InputStream in = PackageSnapshotBenchmark.class.getClassLoader().getResourceAsStream(path)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] chunk = new byte[16 * 1024];
+                int n;
+                while ((n = in.read(chunk)) != -1) {
+                    out.write(chunk, 0, n);
+                }
+                return out.toByteArray();
+            }
+        }
+    }
+
+    @Benchmark
+    public void benchmarkJsonParser(PackageSnapshotState state, Blackhole bh) throws Exception {
+        for (byte[] json : state.jsonFiles) {
+            Resource resource = FHIRParser.parser(Format.JSON).parse(new ByteArrayInputStream(json));
+            bh.consume(resource);
+        }
+    }
+
+    /**
+     * Decode the resources as the registry does, including the digest of the JSON file which is the snapshot key
+     */
+    @Benchmark
+    public void benchmarkSnapshot(PackageSnapshotState state, Blackhole bh) throws Exception {
+        for (byte[] json : state.jsonFiles) {
+            bh.consume(state.snapshot.getResource(PackageSnapshot.digest(json)));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new FHIRBenchmarkRunner(PackageSnapshotBenchmark.class).run();
+    }
+}
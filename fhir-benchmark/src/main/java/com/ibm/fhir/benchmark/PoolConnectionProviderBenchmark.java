@@ -0,0 +1,133 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.ibm.fhir.benchmark.runner.FHIRBenchmarkRunner;
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.database.utils.derby.DerbyTranslator;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+
+/**
+ * Measures the contention on the {@link PoolConnectionProvider} when many more threads than connections
+ * run short transactions, like the fhir-bucket loader does, against an in-memory embedded Derby database.
+ *
+ * <p>The statistics of the pool, including the time spent waiting for a connection, are printed at the
+ * end of each trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PoolConnectionProviderBenchmark {
+    public static final int THREADS = 64;
+
+    private static final String DATABASE_URL = "jdbc:derby:memory:poolBenchmark";
+    private static final String QUERY = "SELECT COUNT(*) FROM sys.systables WHERE tabletype = ?";
+
+    /**
+     * Opens connections to the in-memory Derby database
+     */
+    private static class DerbyMemoryConnectionProvider implements IConnectionProvider {
+        private final IDatabaseTranslator translator = new DerbyTranslator();
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = DriverManager.getConnection(DATABASE_URL + ";create=true");
+            connection.setAutoCommit(false);
+            return connection;
+        }
+
+        @Override
+        public IDatabaseTranslator getTranslator() {
+            return translator;
+        }
+
+        @Override
+        public void commitTransaction() throws SQLException {
+            // NOP
+        }
+
+        @Override
+        public void rollbackTransaction() throws SQLException {
+            // NOP
+        }
+
+        @Override
+        public void describe(String prefix, StringBuilder cfg, String key) {
+            // NOP
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PoolState {
+        @Param({"4", "16", "64"})
+        public int poolSize;
+
+        public PoolConnectionProvider pool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            pool = new PoolConnectionProvider(new DerbyMemoryConnectionProvider(), poolSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            System.out.println(pool.getStatistics());
+            pool.close();
+            try {
+                DriverManager.getConnection(DATABASE_URL + ";drop=true");
+            } catch (SQLException x) {
+                // Derby always reports the drop with an exception
+            }
+        }
+    }
+
+    @Benchmark
+    public int benchmarkTransaction(PoolState state) throws Exception {
+        int count = 0;
+        try {
+            try (Connection c = state.pool.getConnection();
+                    PreparedStatement ps = c.prepareStatement(QUERY)) {
+                ps.setString(1, "S");
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        count = rs.getInt(1);
+                    }
+                }
+            }
+            state.pool.commitTransaction();
+        } catch (SQLException x) {
+            state.pool.rollbackTransaction();
+            throw x;
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new FHIRBenchmarkRunner(PoolConnectionProviderBenchmark.class)
+            .threads(THREADS)
+            .resultFile(args.length > 0 ? args[0] : "target/benchmark/" + PoolConnectionProviderBenchmark.class.getSimpleName() + ".json")
+            .run();
+    }
+}
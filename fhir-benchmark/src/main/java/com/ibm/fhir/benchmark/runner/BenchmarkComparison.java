@@ -0,0 +1,162 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark.runner;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+/**
+ * Compares two JMH result files in JSON format, for example from two builds, and reports the
+ * benchmarks whose score got worse by more than a threshold.
+ *
+ * <p>Benchmarks are matched on their name, mode and parameters. For the throughput mode a higher
+ * score is better; for all of the other modes (average time, sample time and single shot time)
+ * a lower score is better.
+ */
+public class BenchmarkComparison {
+    private static final String MODE_THROUGHPUT = "thrpt";
+
+    private final Map<String, Score> baseline;
+    private final Map<String, Score> current;
+
+    /**
+     * A primary metric score from a JMH result file
+     */
+    public static class Score {
+        private final String mode;
+        private final double score;
+        private final double scoreError;
+        private final String unit;
+
+        public Score(String mode, double score, double scoreError, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.scoreError = scoreError;
+            this.unit = unit;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public double getScoreError() {
+            return scoreError;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+    }
+
+    public BenchmarkComparison(Path baselineFile, Path currentFile) throws IOException {
+        this.baseline = read(baselineFile);
+        this.current = read(currentFile);
+    }
+
+    /**
+     * Read the primary metric scores of a JMH result file in JSON format
+     *
+     * @return the scores keyed by benchmark name, mode and parameters, in the order of the file
+     */
+    public static Map<String, Score> read(Path file) throws IOException {
+        Map<String, Score> result = new LinkedHashMap<>();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8); JsonReader jsonReader = Json.createReader(reader)) {
+            JsonArray runs = jsonReader.readArray();
+            for (JsonValue value : runs) {
+                JsonObject run = value.asJsonObject();
+                String mode = run.getString("mode");
+                JsonObject metric = run.getJsonObject("primaryMetric");
+                result.put(key(run), new Score(mode,
+                    metric.getJsonNumber("score").doubleValue(),
+                    metric.isNull("scoreError") ? Double.NaN : toDouble(metric.get("scoreError")),
+                    metric.getString("scoreUnit")));
+            }
+        }
+        return result;
+    }
+
+    private static double toDouble(JsonValue value) {
+        // JMH writes "NaN" as a string when there are too few iterations to compute the error
+        return value.getValueType() == JsonValue.ValueType.NUMBER ? ((JsonNumber) value).doubleValue() : Double.NaN;
+    }
+
+    private static String key(JsonObject run) {
+        StringBuilder key = new StringBuilder(run.getString("benchmark")).append(" [").append(run.getString("mode")).append("]");
+        if (run.containsKey("params")) {
+            // sort the parameters so that the key doesn't depend on their order in the file
+            Map<String, String> params = new TreeMap<>();
+            for (Map.Entry<String, JsonValue> param : run.getJsonObject("params").entrySet()) {
+                params.put(param.getKey(), run.getJsonObject("params").getString(param.getKey()));
+            }
+            key.append(' ').append(params);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the change of the score of the current result relative to the baseline, as a fraction, where
+     *     a positive value is an improvement and a negative value is a regression, regardless of the mode
+     */
+    public static double relativeChange(Score baseline, Score current) {
+        double change = (current.getScore() - baseline.getScore()) / baseline.getScore();
+        return MODE_THROUGHPUT.equals(baseline.getMode()) ? change : -change;
+    }
+
+    /**
+     * Print the comparison of each of the benchmarks found in both files
+     *
+     * @param threshold
+     *     the relative change beyond which a benchmark is reported as a regression, e.g. 0.1 for 10%
+     * @return the keys of the benchmarks which regressed by more than the threshold
+     */
+    public List<String> compare(double threshold, PrintStream out) {
+        List<String> regressions = new ArrayList<>();
+        out.println(String.format("%-100s %15s %15s %9s", "Benchmark", "Baseline", "Current", "Change"));
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if (before == null) {
+                out.println(String.format("%-100s %15s %15.3f %9s", entry.getKey(), "-", after.getScore(), "new"));
+                continue;
+            }
+            double change = relativeChange(before, after);
+            String flag = "";
+            if (change < -threshold) {
+                regressions.add(entry.getKey());
+                flag = " REGRESSION";
+            }
+            out.println(String.format("%-100s %15.3f %15.3f %+8.1f%% %s%s", entry.getKey(), before.getScore(), after.getScore(),
+                change * 100, after.getUnit(), flag));
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                out.println(String.format("%-100s %15.3f %15s %9s", key, baseline.get(key).getScore(), "-", "missing"));
+            }
+        }
+        return regressions;
+    }
+}
@@ -1,11 +1,13 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.benchmark.runner;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -13,8 +15,10 @@ import java.util.List;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.profile.StackProfiler;
 import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.openjdk.jmh.runner.options.TimeValue;
@@ -28,6 +32,8 @@ public class FHIRBenchmarkRunner {
 
     private final Class<?> benchmarkClass;
     private final List<String> properties = new ArrayList<>();
+    private String resultFile;
+    private int threads = 1;
 
     public FHIRBenchmarkRunner(Class<?> benchmarkClass) {
         this.benchmarkClass = benchmarkClass;
@@ -38,11 +44,38 @@ public class FHIRBenchmarkRunner {
         return this;
     }
 
+    /**
+     * Write the results to the given file in the JMH JSON format, for comparing them with {@link #compare}
+     */
+    public FHIRBenchmarkRunner resultFile(String resultFile) {
+        this.resultFile = resultFile;
+        return this;
+    }
+
+    /**
+     * Run the benchmark methods on the given number of threads at the same time, for measuring contention
+     */
+    public FHIRBenchmarkRunner threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    private ChainedOptionsBuilder withResultFile(ChainedOptionsBuilder builder) {
+        if (resultFile != null) {
+            Path parent = Paths.get(resultFile).toAbsolutePath().getParent();
+            if (parent != null) {
+                parent.toFile().mkdirs();
+            }
+            builder.result(resultFile).resultFormat(ResultFormatType.JSON);
+        }
+        return builder;
+    }
+
     /**
      * Run without overriding any parameters
      */
     public Collection<RunResult> run() throws RunnerException {
-        Options opt = new OptionsBuilder()
+        Options opt = withResultFile(new OptionsBuilder()
                 .include(".*" + benchmarkClass.getSimpleName() + ".*")
                 .jvmArgsPrepend("-Xms2g", "-Xmx2g")
                 .jvmArgsAppend(properties.toArray(new String[properties.size()]))
@@ -53,9 +86,9 @@ public class FHIRBenchmarkRunner {
                 .measurementTime(TimeValue.seconds(10))
                 .shouldDoGC(true)
                 .forks(2)
-                .threads(1)
+                .threads(threads)
 //              .mode(Mode.AverageTime)
-                .addProfiler(StackProfiler.class)
+                .addProfiler(StackProfiler.class))
                 .build();
         return new Runner(opt).run();
     }
@@ -64,7 +97,7 @@ public class FHIRBenchmarkRunner {
      * Run and override the 'exampleName' param with the passed fileName
      */
     public Collection<RunResult> run(String fileName) throws RunnerException {
-        Options opt = new OptionsBuilder()
+        Options opt = withResultFile(new OptionsBuilder()
                 .include(".*" + benchmarkClass.getSimpleName() + ".*")
                 .jvmArgsPrepend("-Xms4g", "-Xmx4g")
                 .jvmArgsAppend(properties.toArray(new String[properties.size()]))
@@ -77,7 +110,7 @@ public class FHIRBenchmarkRunner {
                 .forks(1)
 //              .mode(Mode.AverageTime)
                 .addProfiler(StackProfiler.class)
-                .param("exampleName", fileName)
+                .param("exampleName", fileName))
                 .build();
         return new Runner(opt).run();
     }
@@ -86,7 +119,7 @@ public class FHIRBenchmarkRunner {
      * Run the benchmark with all the examples in BenchmarkUtil.SPEC_EXAMPLE_NAMES
      */
     public Collection<RunResult> runAll() throws RunnerException {
-        Options opt = new OptionsBuilder()
+        Options opt = withResultFile(new OptionsBuilder()
                 .include(".*" + benchmarkClass.getSimpleName() + ".*")
                 .jvmArgsPrepend("-Xms4g", "-Xmx4g")
                 .jvmArgsAppend(properties.toArray(new String[properties.size()]))
@@ -99,8 +132,38 @@ public class FHIRBenchmarkRunner {
                 .forks(1)
                 .output("results.txt")
                 .mode(Mode.SingleShotTime)
-                .param("exampleName", BenchmarkUtil.SPEC_EXAMPLE_NAMES.toArray(new String[0])) // https://stackoverflow.com/a/4042464/161022
+                .param("exampleName", BenchmarkUtil.SPEC_EXAMPLE_NAMES.toArray(new String[0]))) // https://stackoverflow.com/a/4042464/161022
                 .build();
         return new Runner(opt).run();
     }
+
+    /**
+     * Compare two result files written with {@link #resultFile(String)}, for example by two builds, and print
+     * the change of each benchmark
+     *
+     * @param threshold
+     *     the relative change beyond which a benchmark is reported as a regression, e.g. 0.1 for 10%
+     * @return the benchmarks which regressed by more than the threshold
+     */
+    public static List<String> compare(String baselineFile, String currentFile, double threshold) throws Exception {
+        return new BenchmarkComparison(Paths.get(baselineFile), Paths.get(currentFile)).compare(threshold, System.out);
+    }
+
+    /**
+     * Compare two result files: {@code FHIRBenchmarkRunner <baseline.json> <current.json> [threshold]}
+     * <p>
+     * Exits with status 1 if any of the benchmarks regressed by more than the threshold (default 0.1).
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: FHIRBenchmarkRunner <baseline.json> <current.json> [threshold]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+        List<String> regressions = compare(args[0], args[1], threshold);
+        if (!regressions.isEmpty()) {
+            System.err.println(regressions.size() + " benchmark(s) regressed by more than " + (threshold * 100) + "%");
+            System.exit(1);
+        }
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark.util;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.common.JdbcConnectionProvider;
+import com.ibm.fhir.database.utils.common.JdbcPropertyAdapter;
+import com.ibm.fhir.database.utils.derby.DerbyMaster;
+import com.ibm.fhir.database.utils.derby.DerbyPropertyAdapter;
+import com.ibm.fhir.database.utils.derby.DerbyTranslator;
+import com.ibm.fhir.database.utils.pool.PoolConnectionProvider;
+import com.ibm.fhir.database.utils.postgres.PostgresPropertyAdapter;
+import com.ibm.fhir.database.utils.postgres.PostgresTranslator;
+import com.ibm.fhir.persistence.jdbc.FHIRPersistenceJDBCCache;
+import com.ibm.fhir.persistence.jdbc.cache.CommonTokenValuesCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.FHIRPersistenceJDBCCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.NameIdCache;
+import com.ibm.fhir.persistence.jdbc.impl.FHIRPersistenceJDBCImpl;
+import com.ibm.fhir.schema.derby.DerbyFhirDatabase;
+
+/**
+ * The database used by the persistence benchmarks.
+ *
+ * <p>By default a new embedded Derby database is bootstrapped under {@code target/benchmark}. If the
+ * {@value #ENV_POSTGRES} environment variable is set, it names a properties file with the connection
+ * details of a local PostgreSQL database instead, using the {@link JdbcPropertyAdapter} keys
+ * ({@code db.host}, {@code db.port}, {@code db.database}, {@code db.user}, {@code db.password} and
+ * {@code db.default.schema}). The FHIR schema must already be deployed to that database with
+ * fhir-persistence-schema.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(BenchmarkDatabase.class.getName());
+
+    public static final String ENV_POSTGRES = "FHIR_BENCHMARK_POSTGRES";
+
+    private static final String BENCHMARK_DIR = "target/benchmark";
+    private static final String DERBY_DB_NAME = BENCHMARK_DIR + "/derby/fhirDB";
+    private static final String DATA_SCHEMA_NAME = "FHIRDATA";
+    private static final int POOL_SIZE = 10;
+
+    private final String flavor;
+    private final Properties persistenceProps = new Properties();
+    private final PoolConnectionProvider connectionPool;
+
+    private BenchmarkDatabase(String flavor, IConnectionProvider cp, String schemaName) {
+        this.flavor = flavor;
+        this.connectionPool = new PoolConnectionProvider(cp, POOL_SIZE);
+        this.persistenceProps.setProperty("schemaName", schemaName);
+        this.persistenceProps.setProperty("updateCreateEnabled", "true");
+    }
+
+    /**
+     * Open the database selected by the environment and configure an empty FHIR server configuration,
+     * so that every search parameter of the specification is available to the benchmarks.
+     */
+    public static BenchmarkDatabase open() throws Exception {
+        writeServerConfig();
+
+        String postgresProps = System.getenv(ENV_POSTGRES);
+        if (postgresProps != null && !postgresProps.isEmpty()) {
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(Paths.get(postgresProps))) {
+                props.load(in);
+            }
+            PostgresPropertyAdapter adapter = new PostgresPropertyAdapter(props);
+            String schemaName = adapter.getDefaultSchema() != null ? adapter.getDefaultSchema() : DATA_SCHEMA_NAME.toLowerCase();
+            logger.info("Using PostgreSQL database '" + adapter.getDatabase() + "' on " + adapter.getHost());
+            return new BenchmarkDatabase("postgresql", new JdbcConnectionProvider(new PostgresTranslator(), adapter), schemaName);
+        }
+
+        // Always start from an empty database so that runs are comparable
+        DerbyMaster.dropDatabase(DERBY_DB_NAME);
+        try (DerbyFhirDatabase db = new DerbyFhirDatabase(DERBY_DB_NAME)) {
+            logger.info("Bootstrapped Derby database " + DERBY_DB_NAME);
+        }
+        Properties props = new Properties();
+        DerbyPropertyAdapter adapter = new DerbyPropertyAdapter(props);
+        adapter.setDatabase(DERBY_DB_NAME);
+        adapter.setDefaultSchema(DATA_SCHEMA_NAME);
+        return new BenchmarkDatabase("derby", new JdbcConnectionProvider(new DerbyTranslator(), adapter), DATA_SCHEMA_NAME);
+    }
+
+    private static void writeServerConfig() throws Exception {
+        Path configDir = Paths.get(BENCHMARK_DIR, FHIRConfiguration.CONFIG_LOCATION, FHIRConfiguration.DEFAULT_TENANT_ID);
+        Files.createDirectories(configDir);
+        Path configFile = configDir.resolve(FHIRConfiguration.CONFIG_FILE_BASENAME);
+        if (!Files.exists(configFile)) {
+            Files.write(configFile, "{\"fhirServer\": {\"core\": {}}}".getBytes("UTF-8"));
+        }
+        FHIRConfiguration.setConfigHome(BENCHMARK_DIR);
+    }
+
+    /**
+     * @return "derby" or "postgresql"
+     */
+    public String getFlavor() {
+        return flavor;
+    }
+
+    /**
+     * Create a new persistence layer instance using the pool of this database and the given cache
+     */
+    public FHIRPersistenceJDBCImpl createPersistence(FHIRPersistenceJDBCCache cache) throws Exception {
+        return new FHIRPersistenceJDBCImpl(persistenceProps, connectionPool, cache);
+    }
+
+    /**
+     * @return a new, empty cache for the persistence layer
+     */
+    public static FHIRPersistenceJDBCCache createCache() {
+        return new FHIRPersistenceJDBCCacheImpl(new NameIdCache<Integer>(), new NameIdCache<Integer>(), new CommonTokenValuesCacheImpl(1000, 10000));
+    }
+
+    @Override
+    public void close() {
+        connectionPool.close();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.benchmark.util;
+
+import static com.ibm.fhir.model.type.String.string;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Organization;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Date;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.model.type.Quantity;
+import com.ibm.fhir.model.type.Reference;
+import com.ibm.fhir.model.type.Uri;
+
+/**
+ * A deterministic synthetic dataset built from the patient, observation and organization examples
+ * of the specification. The same size always produces the same resources, with the same ids, so
+ * that benchmark results from different builds can be compared.
+ *
+ * <p>Each patient has {@link #OBSERVATIONS_PER_PATIENT} observations and is managed by one of
+ * {@link #ORGANIZATION_COUNT} organizations. The family names, birth dates, observation codes and
+ * values are drawn from small fixed pools so that searches on them match a predictable share of
+ * the dataset.
+ */
+public class SyntheticDataset {
+    public static final int ORGANIZATION_COUNT = 10;
+    public static final int OBSERVATIONS_PER_PATIENT = 5;
+
+    public static final List<String> FAMILY_NAMES = Collections.unmodifiableList(Arrays.asList(
+        "Chalmers", "Windsor", "Levin", "Duck", "Baxter", "Donald", "Everywoman", "Nakamura", "Oyelaran", "Silva"));
+    public static final List<String> LOINC_CODES = Collections.unmodifiableList(Arrays.asList(
+        "29463-7", "8302-2", "8867-4", "9279-1", "8310-5"));
+
+    private static final String LOINC = "http://loinc.org";
+    private static final String UCUM = "http://unitsofmeasure.org";
+    private static final long SEED = 20210101L;
+
+    private final int patientCount;
+    private final List<Organization> organizations = new ArrayList<>();
+    private final List<Patient> patients = new ArrayList<>();
+    private final List<Observation> observations = new ArrayList<>();
+
+    /**
+     * Build the dataset
+     * @param patientCount the number of patients
+     */
+    public SyntheticDataset(int patientCount) throws Exception {
+        this.patientCount = patientCount;
+
+        Organization organizationTemplate = parseSpecExample("organization-example");
+        Patient patientTemplate = parseSpecExample("patient-example");
+        Observation observationTemplate = parseSpecExample("observation-example");
+
+        Random random = new Random(SEED);
+        for (int i = 0; i < ORGANIZATION_COUNT; i++) {
+            organizations.add(organizationTemplate.toBuilder()
+                .id(organizationId(i))
+                .name(string("Organization " + i))
+                .build());
+        }
+        for (int i = 0; i < patientCount; i++) {
+            patients.add(patientTemplate.toBuilder()
+                .id(patientId(i))
+                .name(Collections.singletonList(HumanName.builder()
+                    .family(string(FAMILY_NAMES.get(random.nextInt(FAMILY_NAMES.size()))))
+                    .given(string("Given" + i))
+                    .build()))
+                .birthDate(Date.of(String.format("%04d-%02d-%02d", 1930 + random.nextInt(90), 1 + random.nextInt(12), 1 + random.nextInt(28))))
+                .managingOrganization(reference("Organization/" + organizationId(i % ORGANIZATION_COUNT)))
+                .build());
+
+            for (int j = 0; j < OBSERVATIONS_PER_PATIENT; j++) {
+                observations.add(observation(observationTemplate, random, observationId(i, j), i));
+            }
+        }
+    }
+
+    /**
+     * Make a new observation for the given patient, with values drawn from the random source
+     */
+    public static Observation observation(Observation template, Random random, String id, int patientIndex) {
+        String code = LOINC_CODES.get(random.nextInt(LOINC_CODES.size()));
+        return template.toBuilder()
+            .id(id)
+            .code(CodeableConcept.builder()
+                .coding(Coding.builder()
+                    .system(Uri.of(LOINC))
+                    .code(Code.of(code))
+                    .build())
+                .build())
+            .subject(reference("Patient/" + patientId(patientIndex)))
+            .performer(Collections.singletonList(reference("Organization/" + organizationId(patientIndex % ORGANIZATION_COUNT))))
+            .effective(DateTime.of(String.format("2020-%02d-%02dT10:00:00Z", 1 + random.nextInt(12), 1 + random.nextInt(28))))
+            .value(Quantity.builder()
+                .value(Decimal.of(BigDecimal.valueOf(random.nextInt(2000), 1)))
+                .unit(string("kg"))
+                .system(Uri.of(UCUM))
+                .code(Code.of("kg"))
+                .build())
+            .build();
+    }
+
+    public static String organizationId(int index) {
+        return "bench-org-" + index;
+    }
+
+    public static String patientId(int index) {
+        return "bench-patient-" + index;
+    }
+
+    public static String observationId(int patientIndex, int index) {
+        return "bench-obs-" + patientIndex + "-" + index;
+    }
+
+    private static Reference reference(String value) {
+        return Reference.builder().reference(string(value)).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Resource> T parseSpecExample(String exampleName) throws Exception {
+        return (T) FHIRParser.parser(Format.JSON).parse(new StringReader(BenchmarkUtil.getSpecExample(Format.JSON, exampleName)));
+    }
+
+    public int getPatientCount() {
+        return patientCount;
+    }
+
+    /**
+     * @return all of the resources of the dataset, with each resource after the resources it references
+     */
+    public List<Resource> getResources() {
+        List<Resource> result = new ArrayList<>(organizations.size() + patients.size() + observations.size());
+        result.addAll(organizations);
+        result.addAll(patients);
+        result.addAll(observations);
+        return result;
+    }
+
+    public List<Organization> getOrganizations() {
+        return organizations;
+    }
+
+    public List<Patient> getPatients() {
+        return patients;
+    }
+
+    public List<Observation> getObservations() {
+        return observations;
+    }
+}
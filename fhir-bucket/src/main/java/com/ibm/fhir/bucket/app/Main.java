@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -42,6 +42,7 @@ import com.ibm.fhir.bucket.scanner.CosScanner;
 import com.ibm.fhir.bucket.scanner.DataAccess;
 import com.ibm.fhir.bucket.scanner.FHIRClientResourceProcessor;
 import com.ibm.fhir.bucket.scanner.ResourceHandler;
+import com.ibm.fhir.core.util.VirtualThreads;
 import com.ibm.fhir.database.utils.api.IConnectionProvider;
 import com.ibm.fhir.database.utils.api.IDatabaseAdapter;
 import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
@@ -93,6 +94,9 @@ public class Main {
     // Database connection pool size
     private int connectionPoolSize = DEFAULT_CONNECTION_POOL_SIZE;
 
+    // How long to wait for a free database connection before failing, 0 to wait forever
+    private int connectionPoolTimeoutSeconds = 0;
+
     // How many JSON files can we process at the same time
     private int maxConcurrentJsonFiles = 10;
 
@@ -111,6 +115,9 @@ public class Main {
     // The thread-pool shared by the services for async processing
     private ExecutorService commonPool;
 
+    // Run the concurrent FHIR requests and file reads on virtual threads, if the runtime supports them
+    private boolean virtualThreads = false;
+
     // Configured connection to IBM Cloud Object Storage (S3)
     private COSClient cosClient;
 
@@ -293,6 +300,13 @@ public class Main {
                     throw new IllegalArgumentException("missing value for --connection-pool-size");
                 }
                 break;
+            case "--connection-pool-timeout-seconds":
+                if (i < args.length + 1) {
+                    this.connectionPoolTimeoutSeconds = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("missing value for --connection-pool-timeout-seconds");
+                }
+                break;
             case "--concurrent-payer-requests":
                 if (i < args.length + 1) {
                     this.concurrentPayerRequests = Integer.parseInt(args[++i]);
@@ -365,6 +379,9 @@ public class Main {
             case "--no-scan":
                 this.runScanner = false;
                 break;
+            case "--virtual-threads":
+                this.virtualThreads = true;
+                break;
             case "--reindex-tstamp":
                 if (i < args.length + 1) {
                     this.reindexTstampParam = args[++i];
@@ -508,8 +525,10 @@ public class Main {
         }
 
         // We constrain the number of concurrent tasks which are inflight, so a breathable
-        // pool works nicely because it cannot grow unbounded
-        this.commonPool = Executors.newCachedThreadPool();
+        // pool works nicely because it cannot grow unbounded. The tasks mostly wait on
+        // the FHIR server, COS and the database, so they can run on virtual threads
+        VirtualThreads.setEnabled(this.virtualThreads);
+        this.commonPool = VirtualThreads.newTaskExecutor("fhir-bucket");
     }
 
     /**
@@ -525,6 +544,7 @@ public class Main {
         DerbyPropertyAdapter propertyAdapter = new DerbyPropertyAdapter(dbProperties);
         IConnectionProvider cp = new JdbcConnectionProvider(new DerbyTranslator(), propertyAdapter);
         this.connectionPool = new PoolConnectionProvider(cp, connectionPoolSize);
+        this.connectionPool.setConnectionTimeout(connectionPoolTimeoutSeconds, TimeUnit.SECONDS);
         this.connectionPool.setCloseOnAnyError();
         this.adapter = new DerbyAdapter(connectionPool);
         this.transactionProvider = new SimpleTransactionProvider(connectionPool);
@@ -549,6 +569,7 @@ public class Main {
         Db2PropertyAdapter propertyAdapter = new Db2PropertyAdapter(dbProperties);
         IConnectionProvider cp = new JdbcConnectionProvider(translator, propertyAdapter);
         this.connectionPool = new PoolConnectionProvider(cp, connectionPoolSize);
+        this.connectionPool.setConnectionTimeout(connectionPoolTimeoutSeconds, TimeUnit.SECONDS);
         this.adapter = new Db2Adapter(connectionPool);
         this.transactionProvider = new SimpleTransactionProvider(connectionPool);
     }
@@ -572,6 +593,7 @@ public class Main {
         PostgresPropertyAdapter propertyAdapter = new PostgresPropertyAdapter(dbProperties);
         IConnectionProvider cp = new JdbcConnectionProvider(translator, propertyAdapter);
         this.connectionPool = new PoolConnectionProvider(cp, connectionPoolSize);
+        this.connectionPool.setConnectionTimeout(connectionPoolTimeoutSeconds, TimeUnit.SECONDS);
         this.adapter = new PostgresAdapter(connectionPool);
         this.transactionProvider = new SimpleTransactionProvider(connectionPool);
     }
@@ -742,6 +764,10 @@ public class Main {
         } catch (InterruptedException x) {
             logger.warning("Common thread-pool failed to terminate within " + poolShutdownTimeoutSeconds + "s");
         }
+
+        if (connectionPool != null) {
+            logger.info("Database connection pool: " + connectionPool.getStatistics());
+        }
         logger.info("All services stopped");
     }
 
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -10,7 +10,6 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -21,6 +20,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.ibm.fhir.bucket.scanner.DataAccess;
+import com.ibm.fhir.core.util.VirtualThreads;
 
 /**
  * Very simple emulation of a possible interop workload. Adds some random
@@ -52,8 +52,8 @@ public class InteropWorkload {
     // Access to the FHIRBATCH schema
     private final DataAccess dataAccess;
 
-    // thread pool for processing requests
-    private final ExecutorService pool = Executors.newCachedThreadPool();
+    // thread pool for processing requests, on virtual threads if enabled
+    private final ExecutorService pool = VirtualThreads.newTaskExecutor("fhir-bucket-interop");
     
     // for picking random patient ids
     private final SecureRandom random = new SecureRandom();
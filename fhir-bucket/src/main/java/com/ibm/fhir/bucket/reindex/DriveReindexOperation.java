@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -8,7 +8,6 @@ package com.ibm.fhir.bucket.reindex;
 
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -19,6 +18,7 @@ import org.apache.http.HttpStatus;
 import com.ibm.fhir.bucket.client.FHIRBucketClient;
 import com.ibm.fhir.bucket.client.FHIRBucketClientUtil;
 import com.ibm.fhir.bucket.client.FhirServerResponse;
+import com.ibm.fhir.core.util.VirtualThreads;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.OperationOutcome.Issue;
 import com.ibm.fhir.model.resource.Parameters;
@@ -43,8 +43,8 @@ public class DriveReindexOperation {
     // count of how many threads are currently running
     private AtomicInteger currentlyRunning = new AtomicInteger();
 
-    // thread pool for processing requests
-    private final ExecutorService pool = Executors.newCachedThreadPool();
+    // thread pool for processing requests, on virtual threads if enabled
+    private final ExecutorService pool = VirtualThreads.newTaskExecutor("fhir-bucket-reindex");
 
     private final FHIRBucketClient fhirClient;
 
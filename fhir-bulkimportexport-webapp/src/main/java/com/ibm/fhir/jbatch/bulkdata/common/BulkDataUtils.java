@@ -1,21 +1,23 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.jbatch.bulkdata.common;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -24,6 +26,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -80,6 +83,9 @@ import com.ibm.fhir.validation.exception.FHIRValidationException;
 public class BulkDataUtils {
     private final static Logger logger = Logger.getLogger(BulkDataUtils.class.getName());
 
+    // Parser pool shared by all the import partitions, the NDJSON lines of each read are parsed in parallel.
+    private static final ForkJoinPool parserPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     /**
      * Logging helper.
      */
@@ -180,49 +186,133 @@ public class BulkDataUtils {
     }
 
     /**
-     * @param resReader - the buffer reader to read FHIR resource from.
-     * @param numOfProcessedLines - number of the already processed lines.
+     * Result of parsing one NDJSON line.
+     */
+    private static class ParseResult {
+        private final Resource resource;
+        private final FHIRParserException exception;
+
+        private ParseResult(Resource resource, FHIRParserException exception) {
+            this.resource = resource;
+            this.exception = exception;
+        }
+    }
+
+    private static ParseResult parseLine(String line) {
+        try {
+            return new ParseResult(FHIRParser.parser(Format.JSON).parse(new StringReader(line)), null);
+        } catch (FHIRParserException e) {
+            return new ParseResult(null, e);
+        }
+    }
+
+    /**
+     * Read the next batch of lines from the reader of the transient user data and parse them on the parser pool.
+     * The byte offset of the transient user data is only moved forward after the lines are parsed, so a retry
+     * or a restart from the check point continues right after the last line which made it into fhirResources.
+     *
+     * @param transientUserData - transient user data for the chunk which holds the reader.
      * @param fhirResources - List holds the FHIR resources.
-     * @param isSkipProcessed - if need to skip the processed lines before read.
+     * @param dataSource - the data source name for logging.
      * @return - the number of parsing failures.
      * @throws Exception
      */
-    private static int getFhirResourceFromBufferReader(BufferedReader resReader, int numOfProcessedLines, List<Resource> fhirResources,
-            boolean isSkipProcessed, String dataSource) throws Exception {
-        int exported = 0;
-        int lineRed = 0;
+    private static int getFhirResourceFromRangeReader(ImportTransientUserData transientUserData, List<Resource> fhirResources,
+            String dataSource) throws Exception {
+        NDJsonRangeReader resReader = transientUserData.getBufferReader();
+        List<String> lines = new ArrayList<>();
+        List<Long> lineOffsets = new ArrayList<>();
         int parseFailures = 0;
 
-        String resLine = null;
-        do {
-            resLine = resReader.readLine();
-            if (resLine != null) {
-                lineRed++;
-                if (isSkipProcessed && lineRed <= numOfProcessedLines) {
-                    continue;
-                }
-                try {
-                    fhirResources.add(FHIRParser.parser(Format.JSON).parse(new StringReader(resLine)));
-                    exported++;
-                    if (exported == Constants.IMPORT_NUMOFFHIRRESOURCES_PERREAD) {
-                        break;
-                    }
-                } catch (FHIRParserException e) {
-                    // Log and skip the invalid FHIR resource.
-                    parseFailures++;
-                    logger.log(Level.INFO, "getFhirResourceFromBufferReader: " + "Failed to parse line "
-                            + (numOfProcessedLines + exported + parseFailures) + " of [" + dataSource + "].", e);
-                    continue;
-                }
+        while (fhirResources.size() + lines.size() < Constants.IMPORT_NUMOFFHIRRESOURCES_PERREAD) {
+            long lineOffset = resReader.getOffset();
+            String resLine = resReader.readLine();
+            if (resLine == null) {
+                break;
             }
-        } while (resLine != null);
+            lines.add(resLine);
+            lineOffsets.add(lineOffset);
+        }
+
+        List<ParseResult> results;
+        if (lines.size() > 1) {
+            results = parserPool.submit(() -> lines.parallelStream().map(BulkDataUtils::parseLine).collect(Collectors.toList())).get();
+        } else {
+            results = lines.stream().map(BulkDataUtils::parseLine).collect(Collectors.toList());
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            ParseResult result = results.get(i);
+            if (result.exception == null) {
+                fhirResources.add(result.resource);
+            } else {
+                // Log and skip the invalid FHIR resource.
+                parseFailures++;
+                logger.log(Level.INFO, "getFhirResourceFromRangeReader: " + "Failed to parse line at byte offset "
+                        + lineOffsets.get(i) + " of [" + dataSource + "].", result.exception);
+            }
+        }
+        transientUserData.setCurrentBytes(resReader.getOffset());
+
         return parseFailures;
     }
 
+    /**
+     * @param transientUserData - transient user data for the chunk.
+     * @return the byte offset the input stream of the chunk needs to be opened at.
+     */
+    private static long getOpenOffset(ImportTransientUserData transientUserData) {
+        if (isAligningRequired(transientUserData)) {
+            // Open one byte before the partition start, so a line which starts exactly at the partition start isn't skipped.
+            return transientUserData.getPartitionStartOffset() - 1;
+        }
+        return Math.max(transientUserData.getCurrentBytes(), transientUserData.getPartitionStartOffset());
+    }
+
+    /**
+     * @return true if nothing has been read in the partition yet and the partition starts in the middle of the file.
+     */
+    private static boolean isAligningRequired(ImportTransientUserData transientUserData) {
+        return transientUserData.getPartitionStartOffset() > 0
+                && transientUserData.getCurrentBytes() <= transientUserData.getPartitionStartOffset();
+    }
+
+    /**
+     * Create the line reader for the input stream which has been opened at {@link #getOpenOffset(ImportTransientUserData)}
+     * and position it at the next line to read.
+     *
+     * @param inputStream - the input stream.
+     * @param transientUserData - transient user data for the chunk.
+     * @param dataSource - the data source name for logging.
+     * @throws Exception
+     */
+    private static void openRangeReader(InputStream inputStream, ImportTransientUserData transientUserData, String dataSource)
+            throws Exception {
+        boolean isAligningRequired = isAligningRequired(transientUserData);
+        NDJsonRangeReader resReader = new NDJsonRangeReader(inputStream, getOpenOffset(transientUserData),
+                transientUserData.getPartitionEndOffset());
+        transientUserData.setInputStream(inputStream);
+        transientUserData.setBufferReader(resReader);
+
+        if (isAligningRequired) {
+            resReader.skipToNextLine();
+            transientUserData.setCurrentBytes(resReader.getOffset());
+        } else if (transientUserData.getCurrentBytes() == 0 && transientUserData.getNumOfProcessedResources() > 0) {
+            // Check point created before the byte offsets were recorded, skip the already processed lines.
+            logger.info("openRangeReader: skipping " + transientUserData.getNumOfProcessedResources() + " processed lines of [" + dataSource + "]");
+            for (int i = 0; i < transientUserData.getNumOfProcessedResources() && resReader.readLine() != null; i++) {
+                // No Operation
+            }
+            transientUserData.setCurrentBytes(resReader.getOffset());
+        }
+    }
+
     public static void cleanupTransientUserData(ImportTransientUserData transientUserData, boolean isAbort) throws Exception {
         if (transientUserData.getInputStream() != null) {
-            if (isAbort && transientUserData.getInputStream() instanceof S3ObjectInputStream) {
-                // For S3 input stream, if the read is not finished successfully, we have to abort it first.
+            if (transientUserData.getInputStream() instanceof S3ObjectInputStream
+                    && (isAbort || transientUserData.getBufferReader() == null || !transientUserData.getBufferReader().isEndOfInput())) {
+                // For S3 input stream, if the read is not finished successfully or the partition ended before the end of the object,
+                // we have to abort it first.
                 ((S3ObjectInputStream)transientUserData.getInputStream()).abort();
             }
             transientUserData.getInputStream().close();
@@ -239,33 +329,35 @@ public class BulkDataUtils {
      * @param cosClient - COS/S3 client.
      * @param bucketName - COS/S3 bucket name to read from.
      * @param itemName - COS/S3 object name to read from.
-     * @param numOfLinesToSkip - number of lines to skip before read.
      * @param fhirResources - List holds the FHIR resources.
      * @param transientUserData - transient user data for the chunk.
      * @return - number of parsing failures.
      * @throws Exception
      */
     public static int readFhirResourceFromObjectStore(AmazonS3 cosClient, String bucketName, String itemName,
-           int numOfLinesToSkip, List<Resource> fhirResources, ImportTransientUserData transientUserData) throws Exception {
+           List<Resource> fhirResources, ImportTransientUserData transientUserData) throws Exception {
         int parseFailures = 0;
         int retryTimes = Constants.IMPORT_RETRY_TIMES;
         do {
             try {
                 if (transientUserData.getBufferReader() == null) {
-                    S3Object item = cosClient.getObject(new GetObjectRequest(bucketName, itemName));
-                    S3ObjectInputStream s3InStream = item.getObjectContent();
-                    transientUserData.setInputStream(s3InStream);
-                    BufferedReader resReader = new BufferedReader(new InputStreamReader(s3InStream));
-                    transientUserData.setBufferReader(resReader);
-                    // Skip the already processed lines after opening the input stream for first read.
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, true, itemName);
-                } else {
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, false, itemName);
+                    long openOffset = getOpenOffset(transientUserData);
+                    if (openOffset >= transientUserData.getImportFileSize()) {
+                        // Nothing left to read in this object.
+                        return parseFailures;
+                    }
+                    GetObjectRequest request = new GetObjectRequest(bucketName, itemName);
+                    if (openOffset > 0) {
+                        // Ranged read, so the bytes before the check point are not downloaded again.
+                        request.setRange(openOffset, transientUserData.getImportFileSize() - 1);
+                    }
+                    S3Object item = cosClient.getObject(request);
+                    openRangeReader(item.getObjectContent(), transientUserData, itemName);
                 }
+                parseFailures += getFhirResourceFromRangeReader(transientUserData, fhirResources, itemName);
                 break;
             } catch (Exception ex) {
-                // Prepare for retry, skip all the processed lines in previous batches and this batch.
-                numOfLinesToSkip = numOfLinesToSkip + fhirResources.size() + parseFailures;
+                // Prepare for retry, the retry continues from the byte offset of the last parsed line.
                 cleanupTransientUserData(transientUserData, true);
                 logger.warning("readFhirResourceFromObjectStore: Error proccesing file [" + itemName + "] - " + ex.getMessage());
                 if ((retryTimes--) > 0) {
@@ -282,31 +374,27 @@ public class BulkDataUtils {
 
 
     public static long getCosFileSize(AmazonS3 cosClient, String bucketName, String itemName) throws Exception {
-            S3Object item = cosClient.getObject(new GetObjectRequest(bucketName, itemName));
-            return item.getObjectMetadata().getContentLength();
+            return cosClient.getObjectMetadata(bucketName, itemName).getContentLength();
       }
 
     /**
      * @param filePath - file path to the ndjson file.
-     * @param numOfLinesToSkip - number of lines to skip before read.
      * @param fhirResources - List holds the FHIR resources.
      * @param transientUserData - transient user data for the chunk.
      * @return - number of parsing failures.
      * @throws Exception
      */
-    public static int readFhirResourceFromLocalFile(String filePath, int numOfLinesToSkip, List<Resource> fhirResources,
+    public static int readFhirResourceFromLocalFile(String filePath, List<Resource> fhirResources,
             ImportTransientUserData transientUserData) throws Exception {
         int parseFailures = 0;
 
         try {
             if (transientUserData.getBufferReader() == null) {
-                BufferedReader resReader = Files.newBufferedReader(Paths.get(filePath));
-                transientUserData.setBufferReader(resReader);
-                // Skip the already processed lines after opening the input stream for first read.
-                parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, true, filePath);
-            } else {
-                parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, false, filePath);
+                FileChannel fileChannel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+                fileChannel.position(getOpenOffset(transientUserData));
+                openRangeReader(Channels.newInputStream(fileChannel), transientUserData, filePath);
             }
+            parseFailures = getFhirResourceFromRangeReader(transientUserData, fhirResources, filePath);
         } catch (Exception ex) {
             // Clean up.
             fhirResources.clear();
@@ -327,32 +415,46 @@ public class BulkDataUtils {
 
     /**
      * @param dataUrl - URL to the ndjson file.
-     * @param numOfLinesToSkip - number of lines to skip before read.
      * @param fhirResources - List holds the FHIR resources.
      * @param transientUserData - transient user data for the chunk.
      * @return - number of parsing failures.
      * @throws Exception
      */
-    public static int readFhirResourceFromHttps(String dataUrl, int numOfLinesToSkip, List<Resource> fhirResources,
+    public static int readFhirResourceFromHttps(String dataUrl, List<Resource> fhirResources,
             ImportTransientUserData transientUserData) throws Exception {
         int parseFailures = 0;
         int retryTimes = Constants.IMPORT_RETRY_TIMES;
         do {
             try {
                 if (transientUserData.getBufferReader() == null) {
-                    InputStream inputStream = new URL(dataUrl).openConnection().getInputStream();
-                    transientUserData.setInputStream(inputStream);
-                    BufferedReader resReader = new BufferedReader(new InputStreamReader(inputStream));
-                    transientUserData.setBufferReader(resReader);
-                    // Skip the already processed lines after opening the input stream for first read.
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, true, dataUrl);
-                } else {
-                    parseFailures = getFhirResourceFromBufferReader(transientUserData.getBufferReader(), numOfLinesToSkip, fhirResources, false, dataUrl);
+                    long openOffset = getOpenOffset(transientUserData);
+                    if (openOffset > 0 && transientUserData.getImportFileSize() > 0 && openOffset >= transientUserData.getImportFileSize()) {
+                        // Nothing left to read in this file.
+                        return parseFailures;
+                    }
+                    URLConnection connection = new URL(dataUrl).openConnection();
+                    if (openOffset > 0) {
+                        connection.setRequestProperty("Range", "bytes=" + openOffset + "-");
+                    }
+                    InputStream inputStream = connection.getInputStream();
+                    if (openOffset > 0 && (!(connection instanceof HttpURLConnection)
+                            || ((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_PARTIAL)) {
+                        // The server ignored the range request, so skip the processed bytes on the client side.
+                        long skipped = 0;
+                        while (skipped < openOffset) {
+                            long n = inputStream.skip(openOffset - skipped);
+                            if (n <= 0) {
+                                break;
+                            }
+                            skipped += n;
+                        }
+                    }
+                    openRangeReader(inputStream, transientUserData, dataUrl);
                 }
+                parseFailures += getFhirResourceFromRangeReader(transientUserData, fhirResources, dataUrl);
                 break;
             } catch (Exception ex) {
-                // Prepare for retry, skip all the processed lines in previous batches and this batch.
-                numOfLinesToSkip = numOfLinesToSkip + fhirResources.size() + parseFailures;
+                // Prepare for retry, the retry continues from the byte offset of the last parsed line.
                 cleanupTransientUserData(transientUserData, true);
                 logger.warning("readFhirResourceFromHttps: Error proccesing file [" + dataUrl + "] - " + ex.getMessage());
                 if ((retryTimes--) > 0) {
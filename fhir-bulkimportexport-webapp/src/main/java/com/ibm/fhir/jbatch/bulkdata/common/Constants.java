@@ -83,6 +83,12 @@ public class Constants {
     // Partition work item info generated in ImportPartitionMapper.
     public static final String IMPORT_PARTITTION_WORKITEM = "import.partition.workitem";
     public static final String PARTITION_RESOURCE_TYPE = "partition.resourcetype";
+    // Byte range of the work item, used when a large file is split into several partitions.
+    public static final String IMPORT_PARTITTION_STARTOFFSET = "import.partition.startoffset";
+    public static final String IMPORT_PARTITTION_ENDOFFSET = "import.partition.endoffset";
+
+    // The minimal size (10MiB) of the byte range partitions a single import file can be split into.
+    public static final long IMPORT_MIN_PARTITION_SIZE = 10485760;
 
     // Retry times when https or amazon s3 client timeout or other error happens, e.g, timeout can happen if the batch write to DB takes
     // longer than the socket timeout, set to retry once for now.
@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.jbatch.bulkdata.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads NDJSON lines from an input stream while tracking the byte offset of the next unread line.
+ * <p>
+ * The reader owns the lines which start within the byte range [startOffset, endOffset) of the underlying file,
+ * which allows a single file to be split into several partitions without knowing where the line breaks are:
+ * a line which starts before the end offset is read completely, even if it crosses the end offset,
+ * and a partition which doesn't start at the beginning of the file skips the (partial) line it starts in.
+ */
+public class NDJsonRangeReader implements Closeable {
+    private static final int BUFFER_SIZE = 65536;
+    private static final byte NEW_LINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final InputStream inputStream;
+    // -1 means read to the end of the input stream
+    private final long endOffset;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos = 0;
+    private int bufferLimit = 0;
+    private byte[] line = new byte[1024];
+    private int lineLength = 0;
+    private boolean endOfInput = false;
+
+    // The offset (relative to the start of the file) of the next byte to be consumed
+    private long offset;
+
+    /**
+     * @param inputStream - the stream to read from, already positioned at the given offset.
+     * @param offset - the offset of the first byte of the stream relative to the start of the file.
+     * @param endOffset - the offset at which this reader stops starting new lines, or -1 to read to the end.
+     */
+    public NDJsonRangeReader(InputStream inputStream, long offset, long endOffset) {
+        this.inputStream = inputStream;
+        this.offset = offset;
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * Consume everything up to and including the next line separator, so the reader is positioned
+     * at the start of a line.
+     *
+     * @throws IOException
+     */
+    public void skipToNextLine() throws IOException {
+        while (true) {
+            if (bufferPos == bufferLimit && !fill()) {
+                return;
+            }
+            while (bufferPos < bufferLimit) {
+                offset++;
+                if (buffer[bufferPos++] == NEW_LINE) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the next line without its line separator, or null if there are no more lines which start in the range.
+     * @throws IOException
+     */
+    public String readLine() throws IOException {
+        if (endOffset >= 0 && offset >= endOffset) {
+            return null;
+        }
+
+        lineLength = 0;
+        long consumed = 0;
+        boolean lineComplete = false;
+        while (!lineComplete) {
+            if (bufferPos == bufferLimit && !fill()) {
+                break;
+            }
+            int start = bufferPos;
+            while (bufferPos < bufferLimit && buffer[bufferPos] != NEW_LINE) {
+                bufferPos++;
+            }
+            append(start, bufferPos - start);
+            consumed += bufferPos - start;
+            if (bufferPos < bufferLimit) {
+                // consume the line separator
+                bufferPos++;
+                consumed++;
+                lineComplete = true;
+            }
+        }
+
+        if (consumed == 0) {
+            return null;
+        }
+        offset += consumed;
+
+        int length = lineLength;
+        if (length > 0 && line[length - 1] == CARRIAGE_RETURN) {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the offset (relative to the start of the file) of the next line to be read.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return true if the underlying stream has been read to the end.
+     */
+    public boolean isEndOfInput() {
+        return endOfInput && bufferPos == bufferLimit;
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        int read;
+        do {
+            read = inputStream.read(buffer, 0, BUFFER_SIZE);
+        } while (read == 0);
+
+        if (read < 0) {
+            endOfInput = true;
+            bufferPos = bufferLimit = 0;
+            return false;
+        }
+        bufferPos = 0;
+        bufferLimit = read;
+        return true;
+    }
+
+    private void append(int start, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(buffer, start, line, lineLength, length);
+        lineLength += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
@@ -16,6 +16,8 @@ import static com.ibm.fhir.jbatch.bulkdata.common.Constants.DEFAULT_FHIR_TENANT;
 import static com.ibm.fhir.jbatch.bulkdata.common.Constants.FHIR_DATASTORE_ID;
 import static com.ibm.fhir.jbatch.bulkdata.common.Constants.FHIR_TENANT;
 import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_FHIR_STORAGE_TYPE;
+import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_PARTITTION_ENDOFFSET;
+import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_PARTITTION_STARTOFFSET;
 import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_PARTITTION_WORKITEM;
 import static com.ibm.fhir.jbatch.bulkdata.common.Constants.PARTITION_RESOURCE_TYPE;
 
@@ -105,6 +107,20 @@ public class ChunkReader extends AbstractItemReader {
     @BatchProperty(name = IMPORT_PARTITTION_WORKITEM)
     String importPartitionWorkitem;
 
+    /**
+     * Start of the byte range of the work item to process.
+     */
+    @Inject
+    @BatchProperty(name = IMPORT_PARTITTION_STARTOFFSET)
+    String importPartitionStartOffset;
+
+    /**
+     * End of the byte range of the work item to process, the end of the file if not set.
+     */
+    @Inject
+    @BatchProperty(name = IMPORT_PARTITTION_ENDOFFSET)
+    String importPartitionEndOffset;
+
     /**
      * Resource type to process.
      */
@@ -127,7 +143,6 @@ public class ChunkReader extends AbstractItemReader {
     String fhirDatastoreId;
 
     private AmazonS3 cosClient = null;
-    private int numOfLinesToSkip = 0;
 
     public ChunkReader() {
         super();
@@ -145,22 +160,21 @@ public class ChunkReader extends AbstractItemReader {
         }
 
         ImportTransientUserData chunkData = (ImportTransientUserData) stepCtx.getTransientUserData();
-        numOfLinesToSkip = chunkData.getNumOfProcessedResources();
 
         long readStartTimeInMilliSeconds = System.currentTimeMillis();
         int numOfLoaded = 0;
         int numOfParseFailures = 0;
         switch (BulkImportDataSourceStorageType.from(dataSourceStorageType)) {
         case HTTPS:
-            numOfParseFailures = BulkDataUtils.readFhirResourceFromHttps(importPartitionWorkitem, numOfLinesToSkip, loadedFhirResources, chunkData);
+            numOfParseFailures = BulkDataUtils.readFhirResourceFromHttps(importPartitionWorkitem, loadedFhirResources, chunkData);
             break;
         case FILE:
-            numOfParseFailures = BulkDataUtils.readFhirResourceFromLocalFile(importPartitionWorkitem, numOfLinesToSkip, loadedFhirResources, chunkData);
+            numOfParseFailures = BulkDataUtils.readFhirResourceFromLocalFile(importPartitionWorkitem, loadedFhirResources, chunkData);
             break;
         case AWSS3:
         case IBMCOS:
             numOfParseFailures = BulkDataUtils.readFhirResourceFromObjectStore(cosClient, cosBucketName, importPartitionWorkitem,
-                    numOfLinesToSkip, loadedFhirResources, chunkData);
+                    loadedFhirResources, chunkData);
             break;
         default:
             logger.warning("readItem: Data source storage type not found!");
@@ -213,13 +227,16 @@ public class ChunkReader extends AbstractItemReader {
         if (checkpoint != null) {
             ImportCheckPointData checkPointData = (ImportCheckPointData) checkpoint;
             importPartitionWorkitem = checkPointData.getImportPartitionWorkitem();
-            numOfLinesToSkip = checkPointData.getNumOfProcessedResources();
             checkPointData.setInFlyRateBeginMilliSeconds(System.currentTimeMillis());
             stepCtx.setTransientUserData(ImportTransientUserData.fromImportCheckPointData(checkPointData));
         } else {
+            long partitionStartOffset = parseOffset(importPartitionStartOffset, 0);
             ImportTransientUserData chunkData = (ImportTransientUserData)ImportTransientUserData.Builder.builder()
                     .importPartitionWorkitem(importPartitionWorkitem)
-                    .numOfProcessedResources(numOfLinesToSkip)
+                    .numOfProcessedResources(0)
+                    .partitionStartOffset(partitionStartOffset)
+                    .partitionEndOffset(parseOffset(importPartitionEndOffset, -1))
+                    .currentBytes(partitionStartOffset)
                     .importPartitionResourceType(importPartitionResourceType)
                     // This naming pattern is used in bulkdata operation to generate file links for import OperationOutcomes.
                     // e.g, for input file test1.ndjson, if there is any error during the importing, then the errors are in
@@ -250,6 +267,13 @@ public class ChunkReader extends AbstractItemReader {
         }
     }
 
+    private static long parseOffset(String offset, long defaultValue) {
+        if (offset == null || offset.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Long.parseLong(offset.trim());
+    }
+
     @Override
     public void close() throws Exception {
         // No Operation
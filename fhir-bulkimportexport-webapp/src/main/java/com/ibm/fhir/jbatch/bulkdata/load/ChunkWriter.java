@@ -23,6 +23,7 @@ import static com.ibm.fhir.jbatch.bulkdata.common.Constants.PARTITION_RESOURCE_T
 
 import java.io.ByteArrayInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -47,6 +48,7 @@ import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.persistence.FHIRPersistence;
+import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
@@ -206,41 +208,44 @@ public class ChunkWriter extends AbstractItemWriter {
         boolean collectImportOperationOutcomes = !FHIRConfigHelper
                 .getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_IGNORE_IMPORT_OPERATION_OUTCOMES, false);
 
+        // Store the resources without extracting their search parameters, leaving the indexing to $reindex.
+        boolean deferIndexing = FHIRConfigHelper
+                .getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_IMPORT_DEFER_INDEXING, false);
+
         try {
+            // Collect the resources which passed the validation, so the whole chunk can be stored in one batch.
+            List<Resource> resourcesToStore = new ArrayList<>();
             for (Object objResJsonList : arg0) {
                 @SuppressWarnings("unchecked")
                 List<Resource> fhirResourceList = (List<Resource>) objResJsonList;
 
                 for (Resource fhirResource : fhirResourceList) {
-                    try {
-                        String id = fhirResource.getId();
-                        processedNum++;
-                        // Skip the resources which failed the validation
-                        if (failValidationIds.contains(id)) {
-                            continue;
-                        }
-                        OperationOutcome operationOutcome;
-                        if (id == null) {
-                            operationOutcome =
-                                    fhirPersistence.create(persistenceContext, fhirResource).getOutcome();
-                        } else {
-                            operationOutcome =
-                                    fhirPersistence.update(persistenceContext, id, fhirResource).getOutcome();
-                        }
+                    processedNum++;
+                    // Skip the resources which failed the validation
+                    if (!failValidationIds.contains(fhirResource.getId())) {
+                        resourcesToStore.add(fhirResource);
+                    }
+                }
+            }
 
-                        succeededNum++;
-                        if (collectImportOperationOutcomes && operationOutcome != null) {
-                            FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImport());
-                            chunkData.getBufferStreamForImport().write(NDJSON_LINESEPERATOR);
-                        }
-                    } catch (FHIROperationException e) {
-                        logger.warning("Failed to import '" + fhirResource.getId() + "' due to error: " + e.getMessage());
-                        failedNum++;
-                        if (collectImportOperationOutcomes) {
-                            OperationOutcome operationOutCome = FHIRUtil.buildOperationOutcome(e, false);
-                            FHIRGenerator.generator(Format.JSON).generate(operationOutCome, chunkData.getBufferStreamForImportError());
-                            chunkData.getBufferStreamForImportError().write(NDJSON_LINESEPERATOR);
-                        }
+            List<SingleResourceResult<Resource>> results =
+                    fhirPersistence.createOrUpdateBatch(persistenceContext, resourcesToStore, deferIndexing);
+            for (int i = 0; i < results.size(); i++) {
+                SingleResourceResult<Resource> result = results.get(i);
+                OperationOutcome operationOutcome = result.getOutcome();
+                if (result.isSuccess()) {
+                    succeededNum++;
+                    if (collectImportOperationOutcomes && operationOutcome != null) {
+                        FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImport());
+                        chunkData.getBufferStreamForImport().write(NDJSON_LINESEPERATOR);
+                    }
+                } else {
+                    logger.warning("Failed to import '" + resourcesToStore.get(i).getId() + "' due to error: "
+                            + getErrorMessage(operationOutcome));
+                    failedNum++;
+                    if (collectImportOperationOutcomes) {
+                        FHIRGenerator.generator(Format.JSON).generate(operationOutcome, chunkData.getBufferStreamForImportError());
+                        chunkData.getBufferStreamForImportError().write(NDJSON_LINESEPERATOR);
                     }
                 }
             }
@@ -266,6 +271,21 @@ public class ChunkWriter extends AbstractItemWriter {
         }
     }
 
+    /*
+     * Gets the first error message from the OperationOutcome of a failed import
+     */
+    private static String getErrorMessage(OperationOutcome operationOutcome) {
+        for (OperationOutcome.Issue issue : operationOutcome.getIssue()) {
+            if (issue.getDetails() != null && issue.getDetails().getText() != null) {
+                return issue.getDetails().getText().getValue();
+            }
+            if (issue.getDiagnostics() != null) {
+                return issue.getDiagnostics().getValue();
+            }
+        }
+        return null;
+    }
+
     /*
      * Pushes the Operation OUtcomes to COS
      */
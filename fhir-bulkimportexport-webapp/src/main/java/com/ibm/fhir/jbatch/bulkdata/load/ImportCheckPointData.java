@@ -1,11 +1,13 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.jbatch.bulkdata.load;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -18,6 +20,11 @@ public class ImportCheckPointData implements Serializable {
     private static final long serialVersionUID = 2189917861035732241L;
     // URL or COS/S3 object name.
     protected String importPartitionWorkitem;
+    // Byte range of the work item which is processed by this partition, -1 as end offset means the end of the file.
+    protected long partitionStartOffset = 0;
+    protected long partitionEndOffset = -1;
+    // Byte offset of the next line to read, used to resume from the check point without re-reading the processed lines.
+    protected long currentBytes = 0;
 
     // Values for metrics calculation.
     protected int numOfProcessedResources = 0;
@@ -79,6 +86,9 @@ public class ImportCheckPointData implements Serializable {
         protected long totalWriteMilliSeconds;
         protected long importFileSize;
         protected long inFlyRateBeginMilliSeconds;
+        protected long partitionStartOffset;
+        protected long partitionEndOffset = -1;
+        protected long currentBytes;
 
         public Builder() {
             super();
@@ -178,6 +188,21 @@ public class ImportCheckPointData implements Serializable {
             return this;
         }
 
+        public Builder partitionStartOffset(long partitionStartOffset) {
+            this.partitionStartOffset = partitionStartOffset;
+            return this;
+        }
+
+        public Builder partitionEndOffset(long partitionEndOffset) {
+            this.partitionEndOffset = partitionEndOffset;
+            return this;
+        }
+
+        public Builder currentBytes(long currentBytes) {
+            this.currentBytes = currentBytes;
+            return this;
+        }
+
         public ImportCheckPointData build(){
             ImportCheckPointData importCheckPointData = new ImportCheckPointData();
             importCheckPointData.importPartitionWorkitem = this.importPartitionWorkitem;
@@ -198,6 +223,9 @@ public class ImportCheckPointData implements Serializable {
             importCheckPointData.totalWriteMilliSeconds = this.totalWriteMilliSeconds;
             importCheckPointData.importFileSize = this.importFileSize;
             importCheckPointData.inFlyRateBeginMilliSeconds = this.inFlyRateBeginMilliSeconds;
+            importCheckPointData.partitionStartOffset = this.partitionStartOffset;
+            importCheckPointData.partitionEndOffset = this.partitionEndOffset;
+            importCheckPointData.currentBytes = this.currentBytes;
 
             return importCheckPointData;
         }
@@ -264,6 +292,9 @@ public class ImportCheckPointData implements Serializable {
                 .totalWriteMilliSeconds(userData.getTotalWriteMilliSeconds())
                 .importFileSize(userData.getImportFileSize())
                 .inFlyRateBeginMilliSeconds(userData.getInFlyRateBeginMilliSeconds())
+                .partitionStartOffset(userData.getPartitionStartOffset())
+                .partitionEndOffset(userData.getPartitionEndOffset())
+                .currentBytes(userData.getCurrentBytes())
                 .build();
     }
 
@@ -363,9 +394,35 @@ public class ImportCheckPointData implements Serializable {
         this.inFlyRateBeginMilliSeconds = inFlyRateBeginMilliSeconds;
     }
 
+    public long getPartitionStartOffset() {
+        return partitionStartOffset;
+    }
+
+    public long getPartitionEndOffset() {
+        return partitionEndOffset;
+    }
+
+    public long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public void setCurrentBytes(long currentBytes) {
+        this.currentBytes = currentBytes;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // Check points saved before the byte ranges were added don't have the end offset, so it is read as 0.
+        // A partition never ends at offset 0, so this means the partition covers the rest of the file.
+        if (partitionEndOffset == 0) {
+            partitionEndOffset = -1;
+        }
+    }
+
     @Override
     public String toString() {
-        return "ImportCheckPointData [importPartitionWorkitem=" + importPartitionWorkitem + ", numOfProcessedResources=" + numOfProcessedResources
+        return "ImportCheckPointData [importPartitionWorkitem=" + importPartitionWorkitem + ", partitionStartOffset=" + partitionStartOffset
+                + ", partitionEndOffset=" + partitionEndOffset + ", currentBytes=" + currentBytes + ", numOfProcessedResources=" + numOfProcessedResources
                 + ", numOfImportedResources=" + numOfImportedResources + ", numOfImportFailures=" + numOfImportFailures + ", totalReadMilliSeconds="
                 + totalReadMilliSeconds + ", totalWriteMilliSeconds=" + totalWriteMilliSeconds + ", totalValidationMilliSeconds=" + totalValidationMilliSeconds
                 + ", importFileSize=" + importFileSize + ", inFlyRateBeginMilliSeconds=" + inFlyRateBeginMilliSeconds + ", numOfToBeImported="
@@ -87,14 +87,26 @@ public class ImportJobListener implements JobListener {
             inputUrlSequenceMap.put(DSTypeInfo + ":" + DSDataLocationInfo, sequnceNum++);
         }
 
-        String resultInExitStatus[] = new String[sequnceNum];
+        // A large file can be split into several byte range partitions, so add up the results of all the partitions of a file.
+        int numOfImportedResources[] = new int[sequnceNum];
+        int numOfImportFailures[] = new int[sequnceNum];
+        boolean isProcessed[] = new boolean[sequnceNum];
         for (ImportCheckPointData partitionSummary : partitionSummaries) {
             if (partitionSummary == null) {
                 logger.warning("One or more partitionSummaries are null; results may be incomplete");
                 continue;
             }
             int index = inputUrlSequenceMap.get(partitionSummary.getImportPartitionResourceType() + ":" + partitionSummary.getImportPartitionWorkitem());
-            resultInExitStatus[index] = partitionSummary.getNumOfImportedResources() + ":" + partitionSummary.getNumOfImportFailures();
+            numOfImportedResources[index] += partitionSummary.getNumOfImportedResources();
+            numOfImportFailures[index] += partitionSummary.getNumOfImportFailures();
+            isProcessed[index] = true;
+        }
+
+        String resultInExitStatus[] = new String[sequnceNum];
+        for (int i = 0; i < sequnceNum; i++) {
+            if (isProcessed[i]) {
+                resultInExitStatus[i] = numOfImportedResources[i] + ":" + numOfImportFailures[i];
+            }
         }
 
         jobContext.setExitStatus(Arrays.toString(resultInExitStatus));
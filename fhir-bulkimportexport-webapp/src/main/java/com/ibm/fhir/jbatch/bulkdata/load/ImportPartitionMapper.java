@@ -20,12 +20,16 @@ import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_FHIR_STORAGE_
 import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_INPUT_RESOURCE_TYPE;
 import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_INPUT_RESOURCE_URL;
 import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_MAX_PARTITIONPROCESSING_THREADNUMBER;
+import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_MIN_PARTITION_SIZE;
+import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_PARTITTION_ENDOFFSET;
+import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_PARTITTION_STARTOFFSET;
 import static com.ibm.fhir.jbatch.bulkdata.common.Constants.IMPORT_PARTITTION_WORKITEM;
 import static com.ibm.fhir.jbatch.bulkdata.common.Constants.PARTITION_RESOURCE_TYPE;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.batch.api.BatchProperty;
@@ -173,6 +177,8 @@ public class ImportPartitionMapper implements PartitionMapper {
     class FhirDataSource {
         private String type;
         private String url;
+        // Size in bytes, -1 if unknown.
+        private long size = -1;
 
         public FhirDataSource(String type, String url) {
             super();
@@ -180,6 +186,11 @@ public class ImportPartitionMapper implements PartitionMapper {
             this.url = url;
         }
 
+        public FhirDataSource(String type, String url, long size) {
+            this(type, url);
+            this.size = size;
+        }
+
         public String getType() {
             return type;
         }
@@ -196,9 +207,13 @@ public class ImportPartitionMapper implements PartitionMapper {
             this.url = url;
         }
 
+        public long getSize() {
+            return size;
+        }
+
         @Override
         public String toString() {
-            return "FhirDataSource [type=" + type + ", url=" + url + "]";
+            return "FhirDataSource [type=" + type + ", url=" + url + ", size=" + size + "]";
         }
     }
 
@@ -268,7 +283,7 @@ public class ImportPartitionMapper implements PartitionMapper {
                     logger.info("getFhirDataSourcesForObjectStore: ObjectStorge Object(" + objectSummary.getKey()
                             + ") - " + objectSummary.getSize() + " bytes.");
                     if (objectSummary.getSize() > 0) {
-                        fhirDataSources.add(new FhirDataSource(dsTypeInfo, objectSummary.getKey()));
+                        fhirDataSources.add(new FhirDataSource(dsTypeInfo, objectSummary.getKey(), objectSummary.getSize()));
                     }
                 }
             }
@@ -287,9 +302,11 @@ public class ImportPartitionMapper implements PartitionMapper {
 
             switch (type) {
             case HTTPS:
-            case FILE:
                 fhirDataSources.add(new FhirDataSource(dsTypeInfo, dsDataLocationInfo));
                 break;
+            case FILE:
+                fhirDataSources.add(new FhirDataSource(dsTypeInfo, dsDataLocationInfo, BulkDataUtils.getLocalFileSize(dsDataLocationInfo)));
+                break;
             case AWSS3:
             case IBMCOS:
                 fhirDataSources.addAll(getFhirDataSourcesForObjectStore(dsTypeInfo, dsDataLocationInfo));
@@ -302,29 +319,69 @@ public class ImportPartitionMapper implements PartitionMapper {
         return fhirDataSources;
     }
 
+    /**
+     * Get the size of the byte range partitions the data sources are split into, 0 means no split.
+     * Splitting is only supported when the import OperationOutcomes are not collected, because the OperationOutcomes
+     * are uploaded per data source.
+     */
+    private long getPartitionSize() {
+        if (fhirTenant == null) {
+            fhirTenant = "default";
+        }
+        if (fhirDatastoreId == null) {
+            fhirDatastoreId = DEFAULT_FHIR_TENANT;
+        }
+        FHIRRequestContext.set(new FHIRRequestContext(fhirTenant, fhirDatastoreId));
+
+        long partitionSize = FHIRConfigHelper.getLongProperty(FHIRConfiguration.PROPERTY_BULKDATA_IMPORT_PARTITION_SIZE, 0L);
+        if (partitionSize <= 0) {
+            return 0;
+        }
+        if (!FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_BULKDATA_IGNORE_IMPORT_OPERATION_OUTCOMES, false)) {
+            logger.warning("mapPartitions: '" + FHIRConfiguration.PROPERTY_BULKDATA_IMPORT_PARTITION_SIZE + "' is ignored because '"
+                    + FHIRConfiguration.PROPERTY_BULKDATA_IGNORE_IMPORT_OPERATION_OUTCOMES + "' is not enabled");
+            return 0;
+        }
+        return Math.max(partitionSize, IMPORT_MIN_PARTITION_SIZE);
+    }
+
     @Override
     public PartitionPlan mapPartitions() throws Exception {
         JsonArray dataSourceArray = BulkDataUtils.getDataSourcesFromJobInput(dataSourcesInfo);
 
         List<FhirDataSource> fhirDataSources =
                 getFhirDataSources(dataSourceArray, BulkImportDataSourceStorageType.from(dataSourceStorageType));
+        long partitionSize = getPartitionSize();
 
-        PartitionPlanImpl pp = new PartitionPlanImpl();
-        pp.setPartitions(fhirDataSources.size());
-        pp.setThreads(Math.min(IMPORT_MAX_PARTITIONPROCESSING_THREADNUMBER, fhirDataSources.size()));
-        Properties[] partitionProps = new Properties[fhirDataSources.size()];
-
-        int propCount = 0;
+        List<Properties> partitionProps = new ArrayList<>();
         for (FhirDataSource fhirDataSource : fhirDataSources) {
-            Properties p = new Properties();
-            p.setProperty(IMPORT_PARTITTION_WORKITEM, fhirDataSource.getUrl());
-            p.setProperty(PARTITION_RESOURCE_TYPE, fhirDataSource.getType());
+            // Split large data sources into byte ranges, the readers align the ranges to the line boundaries.
+            long startOffset = 0;
+            do {
+                long endOffset = -1;
+                if (partitionSize > 0 && fhirDataSource.getSize() - startOffset > partitionSize) {
+                    endOffset = startOffset + partitionSize;
+                }
+
+                Properties p = new Properties();
+                p.setProperty(IMPORT_PARTITTION_WORKITEM, fhirDataSource.getUrl());
+                p.setProperty(PARTITION_RESOURCE_TYPE, fhirDataSource.getType());
+                p.setProperty(IMPORT_PARTITTION_STARTOFFSET, String.valueOf(startOffset));
+                p.setProperty(IMPORT_PARTITTION_ENDOFFSET, String.valueOf(endOffset));
 
-            partitionProps[propCount++] = p;
-            System.out.println(p);
+                partitionProps.add(p);
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("mapPartitions: " + p);
+                }
+                startOffset = endOffset;
+            } while (startOffset > 0);
         }
-        pp.setPartitionProperties(partitionProps);
+
+        PartitionPlanImpl pp = new PartitionPlanImpl();
+        pp.setPartitions(partitionProps.size());
+        pp.setThreads(Math.min(IMPORT_MAX_PARTITIONPROCESSING_THREADNUMBER, partitionProps.size()));
+        pp.setPartitionProperties(partitionProps.toArray(new Properties[partitionProps.size()]));
 
         return pp;
     }
-}
\ No newline at end of file
+}
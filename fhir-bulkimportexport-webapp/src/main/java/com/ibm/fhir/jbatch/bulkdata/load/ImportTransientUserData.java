@@ -1,15 +1,16 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.jbatch.bulkdata.load;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 
+import com.ibm.fhir.jbatch.bulkdata.common.NDJsonRangeReader;
+
 public class ImportTransientUserData extends ImportCheckPointData {
     private static final long serialVersionUID = -2642411992044844735L;
     // Used for import OperationOutcomes, Bulk data import API defines optional links to the OperationOutcomes for each import data source,
@@ -18,7 +19,7 @@ public class ImportTransientUserData extends ImportCheckPointData {
     private ByteArrayOutputStream bufferStreamForImport = new ByteArrayOutputStream();
 
     private InputStream inputStream = null;
-    private BufferedReader bufferReader = null;
+    private NDJsonRangeReader bufferReader = null;
 
     protected ImportTransientUserData() {
         super();
@@ -52,6 +53,9 @@ public class ImportTransientUserData extends ImportCheckPointData {
                 .totalWriteMilliSeconds(importCheckPointData.totalWriteMilliSeconds)
                 .importFileSize(importCheckPointData.importFileSize)
                 .inFlyRateBeginMilliSeconds(importCheckPointData.inFlyRateBeginMilliSeconds)
+                .partitionStartOffset(importCheckPointData.partitionStartOffset)
+                .partitionEndOffset(importCheckPointData.partitionEndOffset)
+                .currentBytes(importCheckPointData.currentBytes)
                 .build();
     }
 
@@ -82,6 +86,9 @@ public class ImportTransientUserData extends ImportCheckPointData {
             importTransientUserData.totalWriteMilliSeconds = this.totalWriteMilliSeconds;
             importTransientUserData.importFileSize = this.importFileSize;
             importTransientUserData.inFlyRateBeginMilliSeconds = this.inFlyRateBeginMilliSeconds;
+            importTransientUserData.partitionStartOffset = this.partitionStartOffset;
+            importTransientUserData.partitionEndOffset = this.partitionEndOffset;
+            importTransientUserData.currentBytes = this.currentBytes;
             return importTransientUserData;
         }
 
@@ -95,11 +102,11 @@ public class ImportTransientUserData extends ImportCheckPointData {
         this.inputStream = inputStream;
     }
 
-    public BufferedReader getBufferReader() {
+    public NDJsonRangeReader getBufferReader() {
         return bufferReader;
     }
 
-    public void setBufferReader(BufferedReader bufferReader) {
+    public void setBufferReader(NDJsonRangeReader bufferReader) {
         this.bufferReader = bufferReader;
     }
 
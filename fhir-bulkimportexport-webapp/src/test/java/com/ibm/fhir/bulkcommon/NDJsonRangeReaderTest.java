@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.bulkcommon;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.jbatch.bulkdata.common.NDJsonRangeReader;
+
+public class NDJsonRangeReaderTest {
+    private static final List<String> LINES = Arrays.asList(
+        "{\"resourceType\":\"Patient\",\"id\":\"1\"}",
+        "{\"resourceType\":\"Patient\",\"id\":\"2\",\"name\":[{\"family\":\"Doe\"}]}",
+        "",
+        "{\"resourceType\":\"Patient\",\"id\":\"4\",\"name\":[{\"family\":\"\u00dcn\u00efc\u00f6d\u00e9\"}]}",
+        "{\"resourceType\":\"Patient\",\"id\":\"5\"}");
+
+    private static byte[] content(String separator) {
+        return (String.join(separator, LINES) + separator).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readRange(byte[] content, long start, long end) throws Exception {
+        List<String> result = new ArrayList<>();
+        long openOffset = start > 0 ? start - 1 : 0;
+        ByteArrayInputStream in = new ByteArrayInputStream(content, (int) openOffset, content.length - (int) openOffset);
+        try (NDJsonRangeReader reader = new NDJsonRangeReader(in, openOffset, end)) {
+            if (start > 0) {
+                reader.skipToNextLine();
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testReadWholeFile() throws Exception {
+        byte[] content = content("\n");
+        try (NDJsonRangeReader reader = new NDJsonRangeReader(new ByteArrayInputStream(content), 0, -1)) {
+            for (String expected : LINES) {
+                assertEquals(reader.readLine(), expected);
+            }
+            assertNull(reader.readLine());
+            assertEquals(reader.getOffset(), content.length);
+            assertTrue(reader.isEndOfInput());
+        }
+    }
+
+    @Test
+    public void testCarriageReturnLineFeed() throws Exception {
+        byte[] content = content("\r\n");
+        assertEquals(readRange(content, 0, -1), LINES);
+    }
+
+    @Test
+    public void testResumeFromOffset() throws Exception {
+        byte[] content = content("\n");
+        long offset;
+        try (NDJsonRangeReader reader = new NDJsonRangeReader(new ByteArrayInputStream(content), 0, -1)) {
+            reader.readLine();
+            reader.readLine();
+            offset = reader.getOffset();
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(content, (int) offset, content.length - (int) offset);
+        try (NDJsonRangeReader reader = new NDJsonRangeReader(in, offset, -1)) {
+            assertEquals(reader.readLine(), LINES.get(2));
+            assertEquals(reader.readLine(), LINES.get(3));
+        }
+    }
+
+    @Test
+    public void testEveryLineReadExactlyOnceAcrossPartitions() throws Exception {
+        byte[] content = content("\n");
+        for (int partitionSize = 1; partitionSize <= content.length; partitionSize++) {
+            List<String> result = new ArrayList<>();
+            for (long start = 0; start < content.length; start += partitionSize) {
+                long end = start + partitionSize < content.length ? start + partitionSize : -1;
+                result.addAll(readRange(content, start, end));
+            }
+            assertEquals(result, LINES, "partition size " + partitionSize);
+        }
+    }
+}
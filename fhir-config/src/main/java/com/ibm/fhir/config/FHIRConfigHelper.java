@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2020
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -32,6 +32,10 @@ public class FHIRConfigHelper {
         return getTypedProperty(Integer.class, propertyName, defaultValue);
     }
 
+    public static Long getLongProperty(String propertyName, Long defaultValue) {
+        return getTypedProperty(Long.class, propertyName, defaultValue);
+    }
+
     public static Double getDoubleProperty(String propertyName, Double defaultValue) {
         return getTypedProperty(Double.class, propertyName, defaultValue);
     }
@@ -126,12 +130,16 @@ public class FHIRConfigHelper {
                                 result = (T) Boolean.valueOf((String) obj);
                             } else if (Integer.class.equals(expectedDataType)) {
                                 result = (T) Integer.valueOf((String) obj);
+                            } else if (Long.class.equals(expectedDataType)) {
+                                result = (T) Long.valueOf((String) obj);
                             } else if (Double.class.equals(expectedDataType)) {
                                 result = (T) Double.valueOf((String) obj);
                             } else {
                                 throw new RuntimeException("Expected property " + propertyName + " to be of type " + expectedDataType.getName() + ", but was of type "
                                         + obj.getClass().getName());
                             }
+                        } else if (obj instanceof Integer && Long.class.equals(expectedDataType)) {
+                            result = (T) Long.valueOf((Integer) obj);
                         } else if (obj instanceof Boolean) {
                             if (String.class.equals(expectedDataType)) {
                                 result = (T) ((Boolean)obj).toString();
@@ -36,6 +36,12 @@ public class FHIRConfiguration {
     public static final String PROPERTY_CAPABILITY_STATEMENT_CACHE = "fhirServer/core/capabilityStatementCacheTimeout";
     public static final String PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION = "fhirServer/core/extendedCodeableConceptValidation";
     public static final String PROPERTY_DISABLED_OPERATIONS = "fhirServer/core/disabledOperations";
+    public static final String PROPERTY_REGISTRY_WARM_UP = "fhirServer/core/registryWarmUp";
+    public static final String PROPERTY_INTERNED_TYPES = "fhirServer/core/internedTypes";
+    public static final String PROPERTY_INTERN_POOL_MAX_SIZE = "fhirServer/core/internPoolMaxSize";
+    public static final String PROPERTY_SERVER_TIMING_HEADER = "fhirServer/core/serverTimingHeader";
+    public static final String PROPERTY_METRICS_PUBLISHER = "fhirServer/core/metricsPublisher";
+    public static final String PROPERTY_VIRTUAL_THREADS = "fhirServer/core/virtualThreads";
 
     // Resources properties
     public static final String PROPERTY_RESOURCES = "fhirServer/resources";
@@ -48,6 +54,10 @@ public class FHIRConfiguration {
     public static final String PROPERTY_FIELD_RESOURCES_PROFILES = "profiles";
     public static final String PROPERTY_FIELD_RESOURCES_PROFILES_AT_LEAST_ONE = "atLeastOne";
     public static final String PROPERTY_USE_STORED_COMPARTMENT_PARAM = "fhirServer/search/useStoredCompartmentParam";
+    public static final String PROPERTY_SEARCH_MAX_REVINCLUDES_PER_MATCH = "fhirServer/search/maxRevIncludesPerMatch";
+    public static final String PROPERTY_SEARCH_PARALLEL_PARSE_THRESHOLD = "fhirServer/search/parallelParseThreshold";
+    public static final String PROPERTY_SEARCH_MAX_PARALLEL_PARSE_PER_TENANT = "fhirServer/search/maxParallelParsePerTenant";
+    public static final String PROPERTY_SEARCH_STREAMING_RESPONSE = "fhirServer/search/streamingResponse";
 
     // Auth and security properties
     public static final String PROPERTY_SECURITY_CORS = "fhirServer/security/cors";
@@ -97,11 +107,17 @@ public class FHIRConfiguration {
     public static final String PROPERTY_JDBC_DATASOURCE_JNDINAME = "fhirServer/persistence/jdbc/dataSourceJndiName";
     public static final String PROPERTY_JDBC_ENABLE_PROXY_DATASOURCE = "fhirServer/persistence/jdbc/enableProxyDatasource";
     public static final String PROPERTY_JDBC_ENABLE_READ_ONLY_REPLICAS = "fhirServer/persistence/jdbc/enableReadOnlyReplicas";
+    public static final String PROPERTY_JDBC_READ_ONLY_REPLICA_MAX_LAG = "fhirServer/persistence/jdbc/readOnlyReplicaMaxLagMillis";
     public static final String PROPERTY_JDBC_ENABLE_CODE_SYSTEMS_CACHE = "fhirServer/persistence/jdbc/enableCodeSystemsCache";
     public static final String PROPERTY_JDBC_ENABLE_PARAMETER_NAMES_CACHE = "fhirServer/persistence/jdbc/enableParameterNamesCache";
     public static final String PROPERTY_JDBC_ENABLE_RESOURCE_TYPES_CACHE = "fhirServer/persistence/jdbc/enableResourceTypesCache";
     public static final String PROPERTY_JDBC_EXTERNAL_REF_SYSTEM_CACHE_SIZE = "fhirServer/persistence/jdbc/externalRefSystemCacheSize";
     public static final String PROPERTY_JDBC_EXTERNAL_REF_VALUE_CACHE_SIZE = "fhirServer/persistence/jdbc/externalRefValueCacheSize";
+    public static final String PROPERTY_JDBC_STATEMENT_STATISTICS_ENABLED = "fhirServer/persistence/jdbc/statementStatistics/enabled";
+    public static final String PROPERTY_JDBC_STATEMENT_STATISTICS_SLOW_THRESHOLD = "fhirServer/persistence/jdbc/statementStatistics/slowThresholdMillis";
+    public static final String PROPERTY_JDBC_STATEMENT_STATISTICS_EXPLAIN_SAMPLE_RATE = "fhirServer/persistence/jdbc/statementStatistics/explainSampleRate";
+    public static final String PROPERTY_JDBC_STATEMENT_STATISTICS_MAX_STATEMENTS = "fhirServer/persistence/jdbc/statementStatistics/maxStatements";
+    public static final String PROPERTY_JDBC_STATEMENT_STATISTICS_MAX_SLOW_STATEMENTS = "fhirServer/persistence/jdbc/statementStatistics/maxSlowStatements";
 
     // Optimizer options within a datasource definition
     public static final String PROPERTY_JDBC_SEARCH_OPTIMIZER_OPTIONS = "searchOptimizerOptions";
@@ -137,11 +153,16 @@ public class FHIRConfiguration {
     public static final String PROPERTY_BULKDATA_PATIENTEXPORT_PAGESIZE = "fhirServer/bulkdata/patientExportPageSize";
     // Control if push OperationOutcomes to COS/S3.
     public static final String PROPERTY_BULKDATA_IGNORE_IMPORT_OPERATION_OUTCOMES = "fhirServer/bulkdata/ignoreImportOutcomes";
+    // Size in bytes of the partitions a large import file is split into, 0 means no split.
+    public static final String PROPERTY_BULKDATA_IMPORT_PARTITION_SIZE = "fhirServer/bulkdata/importPartitionSize";
+    // Store imported resources without extracting search parameters, leaving the indexing to $reindex.
+    public static final String PROPERTY_BULKDATA_IMPORT_DEFER_INDEXING = "fhirServer/bulkdata/importDeferIndexing";
 
     // Custom header names
     public static final String DEFAULT_TENANT_ID_HEADER_NAME = "X-FHIR-TENANT-ID";
     public static final String DEFAULT_DATASTORE_ID_HEADER_NAME = "X-FHIR-DSID";
     public static final String DEFAULT_PRETTY_RESPONSE_HEADER_NAME = "X-FHIR-FORMATTED";
+    public static final String DEFAULT_CONSISTENCY_TOKEN_HEADER_NAME = "X-FHIR-CONSISTENCY-TOKEN";
 
     public static final String FHIR_SERVER_DEFAULT_CONFIG = "config/default/fhir-server-config.json";
 
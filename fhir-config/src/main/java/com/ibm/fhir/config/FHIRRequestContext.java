@@ -9,11 +9,13 @@ package com.ibm.fhir.config;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.ibm.fhir.config.metrics.RequestTimings;
 import com.ibm.fhir.core.HTTPHandlingPreference;
 import com.ibm.fhir.core.HTTPReturnPreference;
 import com.ibm.fhir.exception.FHIRException;
@@ -25,6 +27,9 @@ import com.ibm.fhir.exception.FHIRException;
  * The overall strategy is for the REST API servlet filter to retrieve the request context
  * information, create an instance of this class and set it on the current thread for use
  * by the FHIR Server as it processes the request.
+ *
+ * <p>Work handed to other threads, including virtual threads, doesn't see the context of the
+ * request unless the task sets it, and removes it when done if the thread is pooled.
  */
 public class FHIRRequestContext {
     private static final Logger log = Logger.getLogger(FHIRRequestContext.class.getName());
@@ -41,9 +46,18 @@ public class FHIRRequestContext {
     // Set to true if the REST layer determines the entire request only needs to read from a persistence layer, not write to it
     private boolean readOnly;
 
+    // The consistency token sent by the client, identifying its last write, if it sent one
+    private String consistencyToken;
+
+    // Creates the consistency token returned to the client once the writes of the request are committed
+    private Supplier<String> consistencyTokenSupplier;
+
     // Set to false automatically, and override when appropriate.
     private boolean bulk = false;
 
+    // The phase timings of the request, or null if the request isn't timed
+    private RequestTimings timings;
+
     // Default to the "strict" handling which means the server will reject unrecognized search parameters and elements
     private HTTPHandlingPreference handlingPreference = HTTPHandlingPreference.STRICT;
 
@@ -99,6 +113,41 @@ public class FHIRRequestContext {
         this.readOnly = flag;
     }
 
+    /**
+     * The consistency token the client sent with this request, which identifies its last write.
+     * Read-only requests must be served from data which includes that write, so a read-only
+     * replica which hasn't applied it yet can't be used.
+     * @return the token, or null if the client didn't send one
+     */
+    public String getConsistencyToken() {
+        return this.consistencyToken;
+    }
+
+    /**
+     * Setter for the consistency token sent by the client
+     * @param consistencyToken
+     */
+    public void setConsistencyToken(String consistencyToken) {
+        this.consistencyToken = consistencyToken;
+    }
+
+    /**
+     * The supplier of the consistency token returned to the client, which is set by the persistence layer
+     * when the request may write, and only called after the writes of the request have been committed.
+     * @return the supplier, or null if the request doesn't need a token
+     */
+    public Supplier<String> getConsistencyTokenSupplier() {
+        return this.consistencyTokenSupplier;
+    }
+
+    /**
+     * Setter for the supplier of the consistency token returned to the client
+     * @param consistencyTokenSupplier
+     */
+    public void setConsistencyTokenSupplier(Supplier<String> consistencyTokenSupplier) {
+        this.consistencyTokenSupplier = consistencyTokenSupplier;
+    }
+
     /**
      * the status of the FHIR request
      * @return the status of the FHIRRequest indicating bulk
@@ -115,6 +164,23 @@ public class FHIRRequestContext {
         this.bulk = bulk;
     }
 
+    /**
+     * The phase timings of the request, which are only collected when they are reported in a
+     * Server-Timing header or published to a metrics system.
+     * @return the timings, or null if the request isn't timed
+     */
+    public RequestTimings getTimings() {
+        return this.timings;
+    }
+
+    /**
+     * Setter for the phase timings of the request
+     * @param timings
+     */
+    public void setTimings(RequestTimings timings) {
+        this.timings = timings;
+    }
+
     public void setTenantId(String tenantId) throws FHIRException {
         Matcher matcher = validChars.matcher(tenantId);
         if (matcher.matches()) {
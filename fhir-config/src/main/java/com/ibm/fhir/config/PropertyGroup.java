@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -281,7 +281,12 @@ public class PropertyGroup {
         case NUMBER:
             JsonNumber jsonNumber = (JsonNumber) jsonValue;
             if (jsonNumber.isIntegral()) {
-                result = Integer.valueOf(jsonNumber.intValue());
+                long value = jsonNumber.longValue();
+                if (value == (int) value) {
+                    result = Integer.valueOf((int) value);
+                } else {
+                    result = Long.valueOf(value);
+                }
             } else {
                 result = Double.valueOf(jsonNumber.doubleValue());
             }
@@ -0,0 +1,47 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.config.metrics;
+
+/**
+ * A service provider interface for publishing the timings of completed requests, and the lag of the read-only
+ * replicas, to a metrics system.
+ * The publisher is configured with {@link RequestMetrics#setPublisher(MetricsPublisher)}.
+ */
+public interface MetricsPublisher {
+    /**
+     * Publish the timings of a completed request. This is called on the request thread, so implementations
+     * should only update their metrics and not block.
+     *
+     * @param tenantId
+     *     the tenant of the request
+     * @param status
+     *     the HTTP status code of the response
+     * @param timings
+     *     the timings of the request
+     */
+    void publish(String tenantId, int status, RequestTimings timings);
+
+    /**
+     * Publish the lag of a read-only replica behind the primary database, each time it is measured. This
+     * is called on the request thread which measured it, so implementations should not block.
+     *
+     * @param replicaName
+     *     the name of the replica datasource
+     * @param lagBytes
+     *     the amount of write-ahead log the replica still had to replay, in bytes
+     */
+    default void publishReplicaLag(String replicaName, long lagBytes) {
+        // No operation
+    }
+
+    /**
+     * @return true if this publisher discards the timings, so requests don't need to be timed for it
+     */
+    default boolean isNoOp() {
+        return false;
+    }
+}
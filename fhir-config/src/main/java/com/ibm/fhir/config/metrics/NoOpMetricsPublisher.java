@@ -0,0 +1,23 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.config.metrics;
+
+/**
+ * The default {@link MetricsPublisher}, which discards the timings
+ */
+public class NoOpMetricsPublisher implements MetricsPublisher {
+
+    @Override
+    public void publish(String tenantId, int status, RequestTimings timings) {
+        // NOP
+    }
+
+    @Override
+    public boolean isNoOp() {
+        return true;
+    }
+}
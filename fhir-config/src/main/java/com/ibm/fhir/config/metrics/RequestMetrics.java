@@ -0,0 +1,83 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.config.metrics;
+
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Holds the {@link MetricsPublisher} of the server, which is the {@link NoOpMetricsPublisher} unless another
+ * publisher is configured.
+ */
+public final class RequestMetrics {
+    private static final Logger log = Logger.getLogger(RequestMetrics.class.getName());
+
+    private static volatile MetricsPublisher publisher = new NoOpMetricsPublisher();
+
+    private RequestMetrics() {
+        // No operation
+    }
+
+    /**
+     * @return the metrics publisher
+     */
+    public static MetricsPublisher getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * @param publisher
+     *     the metrics publisher, not null
+     */
+    public static void setPublisher(MetricsPublisher publisher) {
+        RequestMetrics.publisher = Objects.requireNonNull(publisher, "publisher");
+    }
+
+    /**
+     * @return true if the timings of requests are published
+     */
+    public static boolean isPublishing() {
+        return !publisher.isNoOp();
+    }
+
+    /**
+     * Publish the timings of a completed request. Errors of the publisher are logged, so they can't fail
+     * the request.
+     *
+     * @param tenantId
+     *     the tenant of the request
+     * @param status
+     *     the HTTP status code of the response
+     * @param timings
+     *     the timings of the request
+     */
+    public static void publish(String tenantId, int status, RequestTimings timings) {
+        try {
+            publisher.publish(tenantId, status, timings);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Failed to publish the request timings", e);
+        }
+    }
+
+    /**
+     * Publish the lag of a read-only replica. Errors of the publisher are logged, so they can't fail
+     * the request.
+     *
+     * @param replicaName
+     *     the name of the replica datasource
+     * @param lagBytes
+     *     the amount of write-ahead log the replica still had to replay, in bytes
+     */
+    public static void publishReplicaLag(String replicaName, long lagBytes) {
+        try {
+            publisher.publishReplicaLag(replicaName, lagBytes);
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Failed to publish the replica lag", e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.config.metrics;
+
+/**
+ * The phases of a request which are timed by {@link RequestTimings}
+ */
+public enum RequestPhase {
+    /**
+     * Parsing the resource in the request body
+     */
+    BODY_PARSE("parse"),
+    /**
+     * Validating resources against the base specification and their profiles
+     */
+    VALIDATION("validation"),
+    /**
+     * Calling the persistence interceptors
+     */
+    INTERCEPTORS("interceptors"),
+    /**
+     * Extracting the search parameter values of resources
+     */
+    PARAMETER_EXTRACTION("extraction"),
+    /**
+     * Executing SELECT (and WITH/VALUES) statements
+     */
+    SQL_SELECT("sql-select"),
+    /**
+     * Executing INSERT statements
+     */
+    SQL_INSERT("sql-insert"),
+    /**
+     * Executing UPDATE and MERGE statements
+     */
+    SQL_UPDATE("sql-update"),
+    /**
+     * Executing DELETE statements
+     */
+    SQL_DELETE("sql-delete"),
+    /**
+     * Calling stored procedures
+     */
+    SQL_CALL("sql-call"),
+    /**
+     * Executing any other statements, e.g. DDL or SET statements
+     */
+    SQL_OTHER("sql-other"),
+    /**
+     * Decompressing and parsing the resource payloads read from the database
+     */
+    PAYLOAD_PARSE("payload"),
+    /**
+     * Generating the response body
+     */
+    RESPONSE("response");
+
+    private final String metricName;
+
+    RequestPhase(String metricName) {
+        this.metricName = metricName;
+    }
+
+    /**
+     * @return the name of the phase in the Server-Timing header and in the published metrics
+     */
+    public String metricName() {
+        return metricName;
+    }
+
+    /**
+     * Get the SQL phase of a statement from its first keyword
+     *
+     * @param sql
+     *     the statement text, may be null
+     * @return
+     *     the SQL phase, {@link #SQL_OTHER} if the statement kind isn't recognized
+     */
+    public static RequestPhase ofSql(String sql) {
+        if (sql == null) {
+            return SQL_OTHER;
+        }
+        int length = sql.length();
+        int start = 0;
+        while (start < length && (Character.isWhitespace(sql.charAt(start)) || sql.charAt(start) == '(' || sql.charAt(start) == '{')) {
+            start++;
+        }
+        int end = start;
+        while (end < length && Character.isLetter(sql.charAt(end))) {
+            end++;
+        }
+        if (isKeyword(sql, start, end, "SELECT") || isKeyword(sql, start, end, "WITH") || isKeyword(sql, start, end, "VALUES")) {
+            return SQL_SELECT;
+        } else if (isKeyword(sql, start, end, "INSERT")) {
+            return SQL_INSERT;
+        } else if (isKeyword(sql, start, end, "UPDATE") || isKeyword(sql, start, end, "MERGE")) {
+            return SQL_UPDATE;
+        } else if (isKeyword(sql, start, end, "DELETE")) {
+            return SQL_DELETE;
+        } else if (isKeyword(sql, start, end, "CALL")) {
+            return SQL_CALL;
+        }
+        return SQL_OTHER;
+    }
+
+    private static boolean isKeyword(String sql, int start, int end, String keyword) {
+        return end - start == keyword.length() && sql.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+}
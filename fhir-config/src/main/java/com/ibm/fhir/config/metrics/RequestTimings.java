@@ -0,0 +1,128 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.config.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+
+/**
+ * The time spent in each {@link RequestPhase} of a request, and the number of times each phase was entered.
+ * An instance is carried on the {@link FHIRRequestContext} of requests for which timing is enabled. Recording
+ * a phase only adds to preallocated counters, so it is cheap enough for the inner loops of the server (e.g.
+ * once per SQL statement or per resource payload).
+ *
+ * <p>The typical usage is:
+ * <pre>
+ * long start = System.nanoTime();
+ * ...
+ * RequestTimings.record(RequestPhase.VALIDATION, start);
+ * </pre>
+ */
+public class RequestTimings {
+    private static final RequestPhase[] PHASES = RequestPhase.values();
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray nanos = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray counts = new AtomicLongArray(PHASES.length);
+
+    /**
+     * Add the time of the phase to the timings of the request on the current thread, if timing is
+     * enabled for the request
+     *
+     * @param phase
+     *     the phase
+     * @param startNanos
+     *     the {@link System#nanoTime()} at the start of the phase
+     */
+    public static void record(RequestPhase phase, long startNanos) {
+        RequestTimings timings = FHIRRequestContext.get().getTimings();
+        if (timings != null) {
+            timings.add(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * @return true if timing is enabled for the request on the current thread
+     */
+    public static boolean isEnabled() {
+        return FHIRRequestContext.get().getTimings() != null;
+    }
+
+    /**
+     * Add the time of one occurrence of the phase
+     *
+     * @param phase
+     *     the phase
+     * @param elapsedNanos
+     *     the time spent in the phase, in nanoseconds
+     */
+    public void add(RequestPhase phase, long elapsedNanos) {
+        nanos.addAndGet(phase.ordinal(), elapsedNanos);
+        counts.incrementAndGet(phase.ordinal());
+    }
+
+    /**
+     * @param phase
+     * @return the total time spent in the phase, in nanoseconds
+     */
+    public long getNanos(RequestPhase phase) {
+        return nanos.get(phase.ordinal());
+    }
+
+    /**
+     * @param phase
+     * @return the number of times the phase was entered
+     */
+    public long getCount(RequestPhase phase) {
+        return counts.get(phase.ordinal());
+    }
+
+    /**
+     * @return the time since the timings were created, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Format the timings as the value of a Server-Timing header, e.g.
+     * {@code parse;dur=1.25, sql-select;dur=4.8;desc="3", total;dur=9.03}. The description is the number of
+     * times the phase was entered, the durations are in milliseconds and phases which weren't entered are
+     * omitted.
+     *
+     * @return the header value
+     */
+    public String toServerTimingHeader() {
+        StringBuilder header = new StringBuilder();
+        for (RequestPhase phase : PHASES) {
+            long count = getCount(phase);
+            if (count > 0) {
+                header.append(phase.metricName()).append(";dur=");
+                appendMillis(header, getNanos(phase));
+                if (count > 1) {
+                    header.append(";desc=\"").append(count).append('"');
+                }
+                header.append(", ");
+            }
+        }
+        header.append("total;dur=");
+        appendMillis(header, getElapsedNanos());
+        return header.toString();
+    }
+
+    private static void appendMillis(StringBuilder header, long nanos) {
+        // milliseconds with two decimals
+        long hundredths = nanos / 10000;
+        header.append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            header.append('0');
+        }
+        header.append(fraction);
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017, 2020
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -92,6 +92,14 @@ public class FHIRConfigHelperTest {
         assertNotNull(i);
         assertEquals(12345, i.intValue());
 
+        Long lng = FHIRConfigHelper.getLongProperty("collection/groupC/intProp1", null);
+        assertNotNull(lng);
+        assertEquals(12345L, lng.longValue());
+
+        lng = FHIRConfigHelper.getLongProperty("collection/groupC/intProp2", null);
+        assertNotNull(lng);
+        assertEquals(12345L, lng.longValue());
+
         d = FHIRConfigHelper.getDoubleProperty("collection/groupC/doubleProp2", null);
         assertNotNull(d);
         assertEquals(12345.001, d.doubleValue());
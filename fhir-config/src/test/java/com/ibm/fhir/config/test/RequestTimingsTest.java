@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.config.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.config.metrics.RequestPhase;
+import com.ibm.fhir.config.metrics.RequestTimings;
+
+/**
+ * Tests for {@link RequestTimings} and {@link RequestPhase}
+ */
+public class RequestTimingsTest {
+
+    @AfterMethod
+    public void reset() {
+        FHIRRequestContext.remove();
+    }
+
+    @Test
+    public void testAdd() {
+        RequestTimings timings = new RequestTimings();
+        timings.add(RequestPhase.SQL_SELECT, 1000);
+        timings.add(RequestPhase.SQL_SELECT, 2000);
+        timings.add(RequestPhase.VALIDATION, 500);
+        assertEquals(timings.getNanos(RequestPhase.SQL_SELECT), 3000);
+        assertEquals(timings.getCount(RequestPhase.SQL_SELECT), 2);
+        assertEquals(timings.getNanos(RequestPhase.VALIDATION), 500);
+        assertEquals(timings.getCount(RequestPhase.VALIDATION), 1);
+        assertEquals(timings.getCount(RequestPhase.BODY_PARSE), 0);
+    }
+
+    @Test
+    public void testServerTimingHeader() {
+        RequestTimings timings = new RequestTimings();
+        timings.add(RequestPhase.BODY_PARSE, TimeUnit.MICROSECONDS.toNanos(1520));
+        timings.add(RequestPhase.SQL_INSERT, TimeUnit.MICROSECONDS.toNanos(3005));
+        timings.add(RequestPhase.SQL_INSERT, TimeUnit.MICROSECONDS.toNanos(1000));
+        String header = timings.toServerTimingHeader();
+        assertTrue(header.startsWith("parse;dur=1.52, sql-insert;dur=4.00;desc=\"2\", total;dur="), header);
+        assertTrue(header.matches(".*total;dur=\\d+\\.\\d\\d"), header);
+    }
+
+    @Test
+    public void testRecord() {
+        long start = System.nanoTime();
+
+        // not timed unless the request context has timings
+        assertFalse(RequestTimings.isEnabled());
+        RequestTimings.record(RequestPhase.VALIDATION, start);
+
+        RequestTimings timings = new RequestTimings();
+        FHIRRequestContext.get().setTimings(timings);
+        assertTrue(RequestTimings.isEnabled());
+        RequestTimings.record(RequestPhase.VALIDATION, start);
+        assertEquals(timings.getCount(RequestPhase.VALIDATION), 1);
+        assertTrue(timings.getNanos(RequestPhase.VALIDATION) >= 0);
+    }
+
+    @Test
+    public void testOfSql() {
+        assertEquals(RequestPhase.ofSql("SELECT 1 FROM sysibm.sysdummy1"), RequestPhase.SQL_SELECT);
+        assertEquals(RequestPhase.ofSql("  (select a from b) union (select a from c)"), RequestPhase.SQL_SELECT);
+        assertEquals(RequestPhase.ofSql("WITH t AS (SELECT 1) SELECT * FROM t"), RequestPhase.SQL_SELECT);
+        assertEquals(RequestPhase.ofSql("\n INSERT INTO x VALUES (?)"), RequestPhase.SQL_INSERT);
+        assertEquals(RequestPhase.ofSql("update x set y = ?"), RequestPhase.SQL_UPDATE);
+        assertEquals(RequestPhase.ofSql("MERGE INTO x USING y"), RequestPhase.SQL_UPDATE);
+        assertEquals(RequestPhase.ofSql("DELETE FROM x"), RequestPhase.SQL_DELETE);
+        assertEquals(RequestPhase.ofSql("{CALL fhirdata.add_any_resource(?, ?)}"), RequestPhase.SQL_CALL);
+        assertEquals(RequestPhase.ofSql("SET SCHEMA fhirdata"), RequestPhase.SQL_OTHER);
+        assertEquals(RequestPhase.ofSql("SELECTED"), RequestPhase.SQL_OTHER);
+        assertEquals(RequestPhase.ofSql(null), RequestPhase.SQL_OTHER);
+    }
+}
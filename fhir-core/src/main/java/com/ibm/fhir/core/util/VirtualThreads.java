@@ -0,0 +1,138 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.core.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates the threads of the pools which fan out blocking I/O (HTTP calls, database calls, publishing
+ * notifications), as virtual threads when they are enabled and the runtime supports them (Java 21 or
+ * later), or as platform threads otherwise.
+ *
+ * <p>The virtual thread API is called through reflection so that the code still builds and runs on
+ * Java 8. Virtual threads are only worth it for tasks which mostly wait; CPU-bound work such as
+ * parsing and validation should stay on a fixed pool of platform threads.
+ *
+ * <p>Each virtual thread is created for one task and has its own thread locals, so anything a task
+ * needs from the thread which submitted it (e.g. the request context) must be passed to it, and
+ * per-thread caches of expensive objects are rebuilt for each task.
+ */
+public final class VirtualThreads {
+    private static final Logger logger = Logger.getLogger(VirtualThreads.class.getName());
+
+    // Thread.ofVirtual(), Thread.Builder.name(String, long) and Thread.Builder.factory(), null if not supported
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    // Executors.newThreadPerTaskExecutor(ThreadFactory)
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builderName = builderType.getMethod("name", String.class, long.class);
+            builderFactory = builderType.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+
+            // Virtual threads are a preview feature before Java 21, in which case this throws
+            ofVirtual.invoke(null);
+        } catch (Throwable t) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Virtual threads are not supported by this runtime: " + t);
+            }
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private static volatile boolean enabled = false;
+
+    private VirtualThreads() {
+        // No operation
+    }
+
+    /**
+     * @return true if the runtime supports virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Enable or disable the use of virtual threads by the pools created afterwards. If the runtime
+     * doesn't support them, a warning is logged and platform threads are used.
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        if (enabled && !isSupported()) {
+            logger.warning("Virtual threads are not supported by this Java runtime (Java 21 or later is required), using platform threads");
+        }
+        VirtualThreads.enabled = enabled;
+    }
+
+    /**
+     * @return true if virtual threads are enabled and supported
+     */
+    public static boolean isEnabled() {
+        return enabled && isSupported();
+    }
+
+    /**
+     * Get a factory for the threads of a pool
+     * @param name the prefix of the thread names, followed by a sequence number
+     * @return a factory of virtual threads if they are enabled, or else of platform threads
+     */
+    public static ThreadFactory threadFactory(String name) {
+        if (isEnabled()) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L);
+                return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            } catch (ReflectiveOperationException x) {
+                logger.log(Level.WARNING, "Failed to create a virtual thread factory, using platform threads", x);
+            }
+        }
+        return platformThreadFactory(name);
+    }
+
+    private static ThreadFactory platformThreadFactory(String name) {
+        final AtomicInteger sequence = new AtomicInteger();
+        return r -> new Thread(r, name + "-" + sequence.getAndIncrement());
+    }
+
+    /**
+     * Create an executor which runs each task as soon as it is submitted. The number of tasks in flight
+     * must be bounded by the caller.
+     * @param name the prefix of the thread names
+     * @return an executor which starts a new virtual thread for each task if they are enabled, or else a
+     *     cached pool of platform threads
+     */
+    public static ExecutorService newTaskExecutor(String name) {
+        if (isEnabled()) {
+            try {
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory(name));
+            } catch (ReflectiveOperationException x) {
+                logger.log(Level.WARNING, "Failed to create a virtual thread executor, using platform threads", x);
+            }
+        }
+        return Executors.newCachedThreadPool(platformThreadFactory(name));
+    }
+}
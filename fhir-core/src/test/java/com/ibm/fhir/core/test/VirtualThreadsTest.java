@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.core.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.core.util.VirtualThreads;
+
+/**
+ * Tests the executors of {@link VirtualThreads}, on whichever runtime runs the build
+ */
+public class VirtualThreadsTest {
+
+    @AfterMethod
+    public void disable() {
+        VirtualThreads.setEnabled(false);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        assertFalse(VirtualThreads.isEnabled());
+        ExecutorService executor = VirtualThreads.newTaskExecutor("test");
+        try {
+            String name = executor.submit(() -> Thread.currentThread().getName()).get();
+            assertTrue(name.startsWith("test-"), name);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEnabled() throws Exception {
+        VirtualThreads.setEnabled(true);
+        // Falls back to platform threads when virtual threads aren't supported
+        assertEquals(VirtualThreads.isEnabled(), VirtualThreads.isSupported());
+
+        ExecutorService executor = VirtualThreads.newTaskExecutor("test");
+        try {
+            int tasks = 100;
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < tasks; i++) {
+                futures.add(executor.submit(() -> Thread.currentThread().getName()));
+            }
+            for (Future<String> future : futures) {
+                assertTrue(future.get().startsWith("test-"));
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -13,6 +13,7 @@ import java.util.function.Supplier;
 import com.ibm.fhir.database.utils.model.ColumnBase;
 import com.ibm.fhir.database.utils.model.IdentityDef;
 import com.ibm.fhir.database.utils.model.OrderedColumnDef;
+import com.ibm.fhir.database.utils.model.PartitionSchemeDef;
 import com.ibm.fhir.database.utils.model.PrimaryKeyDef;
 import com.ibm.fhir.database.utils.model.Privilege;
 import com.ibm.fhir.database.utils.model.Table;
@@ -77,6 +78,25 @@ public interface IDatabaseAdapter {
      */
     public void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns,
             PrimaryKeyDef primaryKey, IdentityDef identity, String tablespaceName);
+
+    /**
+     * Build the create table DDL for a table which is split into declarative partitions
+     * according to the given scheme. Targets which don't support declarative partitioning
+     * create a regular table.
+     *
+     * @param schemaName
+     * @param name
+     * @param tenantColumnName optional column name to enable multi-tenancy
+     * @param columns
+     * @param primaryKey
+     * @param identity
+     * @param tablespaceName
+     * @param partitionScheme
+     */
+    public default void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns,
+            PrimaryKeyDef primaryKey, IdentityDef identity, String tablespaceName, PartitionSchemeDef partitionScheme) {
+        createTable(schemaName, name, tenantColumnName, columns, primaryKey, identity, tablespaceName);
+    }
     
     /**
      * Add a new column to an existing table
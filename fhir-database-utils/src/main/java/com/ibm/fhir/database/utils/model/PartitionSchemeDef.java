@@ -0,0 +1,94 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes how a table is split into declarative partitions when supported by
+ * the target database. Tables are partitioned either by the hash of a column
+ * into a fixed number of partitions, or by a list of values where each value
+ * gets its own partition and everything else lands in a default partition.
+ */
+public class PartitionSchemeDef {
+
+    /**
+     * The strategy used to assign rows to partitions
+     */
+    public enum Strategy {
+        HASH,
+        LIST
+    }
+
+    private final Strategy strategy;
+
+    // The column used as the partition key
+    private final String partitionColumn;
+
+    // The number of partitions for the HASH strategy
+    private final int modulus;
+
+    // The values which get their own partition for the LIST strategy
+    private final List<Integer> values = new ArrayList<>();
+
+    /**
+     * Private constructor to force creation through the factory methods
+     * @param strategy
+     * @param partitionColumn
+     * @param modulus
+     * @param values
+     */
+    private PartitionSchemeDef(Strategy strategy, String partitionColumn, int modulus, Collection<Integer> values) {
+        this.strategy = strategy;
+        this.partitionColumn = partitionColumn;
+        this.modulus = modulus;
+        this.values.addAll(values);
+    }
+
+    /**
+     * Partition by the hash of the given column into modulus partitions
+     * @param partitionColumn
+     * @param modulus
+     * @return
+     */
+    public static PartitionSchemeDef hash(String partitionColumn, int modulus) {
+        if (modulus < 1) {
+            throw new IllegalArgumentException("Invalid number of hash partitions: " + modulus);
+        }
+        return new PartitionSchemeDef(Strategy.HASH, partitionColumn, modulus, Collections.emptyList());
+    }
+
+    /**
+     * Partition by the value of the given column, with one partition per value and
+     * a default partition for all other values
+     * @param partitionColumn
+     * @param values
+     * @return
+     */
+    public static PartitionSchemeDef list(String partitionColumn, Collection<Integer> values) {
+        return new PartitionSchemeDef(Strategy.LIST, partitionColumn, 0, values);
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public String getPartitionColumn() {
+        return partitionColumn;
+    }
+
+    public int getModulus() {
+        return modulus;
+    }
+
+    public List<Integer> getValues() {
+        return Collections.unmodifiableList(values);
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -9,6 +9,7 @@ package com.ibm.fhir.database.utils.model;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -47,6 +48,9 @@ public class Table extends BaseObject {
     // The column to use when making this table multi-tenant (if supported by the the target)
     private final String tenantColumnName;
 
+    // The declarative partitioning to use for this table (if supported by the target)
+    private final PartitionSchemeDef partitionScheme;
+
     /**
      * Public constructor
      *
@@ -64,13 +68,16 @@ public class Table extends BaseObject {
      * @param dependencies
      * @param tags
      * @param privileges
+     * @param migrations
+     * @param partitionScheme
      */
     public Table(String schemaName, String name, int version, String tenantColumnName, Collection<ColumnBase> columns, PrimaryKeyDef pk,
             IdentityDef identity, Collection<IndexDef> indexes, Collection<ForeignKeyConstraint> fkConstraints,
             SessionVariableDef accessControlVar, Tablespace tablespace, List<IDatabaseObject> dependencies, Map<String,String> tags,
-            Collection<GroupPrivilege> privileges, List<Migration> migrations) {
+            Collection<GroupPrivilege> privileges, List<Migration> migrations, PartitionSchemeDef partitionScheme) {
         super(schemaName, name, DatabaseObjectType.TABLE, version, migrations);
         this.tenantColumnName = tenantColumnName;
+        this.partitionScheme = partitionScheme;
         this.columns.addAll(columns);
         this.primaryKey = pk;
         this.identity = identity;
@@ -111,10 +118,23 @@ public class Table extends BaseObject {
         return this.tenantColumnName;
     }
 
+    /**
+     * Getter for the optional declarative partitioning scheme
+     * @return
+     */
+    public PartitionSchemeDef getPartitionScheme() {
+        return this.partitionScheme;
+    }
+
     @Override
     public void apply(IDatabaseAdapter target) {
         final String tsName = this.tablespace == null ? null : this.tablespace.getName();
-        target.createTable(getSchemaName(), getObjectName(), this.tenantColumnName, this.columns, this.primaryKey, this.identity, tsName);
+        if (this.partitionScheme != null) {
+            target.createTable(getSchemaName(), getObjectName(), this.tenantColumnName, this.columns, this.primaryKey, this.identity, tsName,
+                this.partitionScheme);
+        } else {
+            target.createTable(getSchemaName(), getObjectName(), this.tenantColumnName, this.columns, this.primaryKey, this.identity, tsName);
+        }
 
         // Now add any indexes associated with this table
         for (IndexDef idx: this.indexes) {
@@ -224,6 +244,9 @@ public class Table extends BaseObject {
         // Privileges to be granted on this table
         private List<GroupPrivilege> privileges = new ArrayList<>();
 
+        // The declarative partitioning scheme for this table [optional]
+        private PartitionSchemeDef partitionScheme;
+
         /**
          * Private constructor to force creation through factory method
          * @param schemaName
@@ -253,6 +276,17 @@ public class Table extends BaseObject {
             return this;
         }
 
+        /**
+         * Setter for the declarative partitioning scheme. The partition column must
+         * be one of the columns of the table.
+         * @param ps
+         * @return
+         */
+        public Builder setPartitionScheme(PartitionSchemeDef ps) {
+            this.partitionScheme = ps;
+            return this;
+        }
+
         public Builder addIntColumn(String columnName, boolean nullable) {
             ColumnDef cd = new ColumnDef(columnName);
             if (columns.contains(cd)) {
@@ -660,10 +694,15 @@ public class Table extends BaseObject {
                 allDependencies.add(tablespace);
             }
 
+            if (this.partitionScheme != null) {
+                checkColumns(Collections.singletonList(this.partitionScheme.getPartitionColumn()));
+            }
+
             // Our schema objects are immutable by design, so all initialization takes place
             // through the constructor
             return new Table(getSchemaName(), getObjectName(), this.version, this.tenantColumnName, buildColumns(), this.primaryKey, this.identity, this.indexes.values(),
-                    this.fkConstraints.values(), this.accessControlVar, this.tablespace, allDependencies, tags, privileges, migrations);
+                    this.fkConstraints.values(), this.accessControlVar, this.tablespace, allDependencies, tags, privileges, migrations,
+                    this.partitionScheme);
 
         }
 
@@ -1,19 +1,22 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.database.utils.pool;
 
+import java.lang.ref.WeakReference;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.ibm.fhir.database.utils.api.DataAccessException;
@@ -26,27 +29,59 @@ import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
  * get the same connection back. Cooperates with the TransactionFactory
  * to provide a JEE-flavored experience, and makes it easy to write
  * code which will work in both J2SE and JEE environments.
- * 
+ *
+ * The pool is a lock-free bag of connections. Each connection has a state
+ * which threads claim with a compare-and-set, so getting and returning a
+ * connection never blocks while there is an idle one. A thread first tries
+ * the connection it used last, then scans the others, then opens a new one
+ * if the pool isn't full. Only when the pool is exhausted does a thread wait,
+ * and returned connections are handed off to the waiting threads in the order
+ * they started waiting. Idle connections are validated before they are reused
+ * only if they've been idle for longer than {@link #setValidateAfterIdle(long, TimeUnit)}.
+ *
+ * The thread affinity also holds for virtual threads, as long as each task commits
+ * or rolls back its transaction before it completes; otherwise the connection stays
+ * allocated after the thread is gone. Waiting for a connection doesn't use a
+ * monitor, so it doesn't pin a virtual thread to its carrier.
+ *
  * Does not support distributed transactions.
  */
 public class PoolConnectionProvider implements IConnectionProvider {
     private static final Logger logger = Logger.getLogger(PoolConnectionProvider.class.getName());
-        
-    // Concurrency control for the pool
-    private final Lock lock = new ReentrantLock();
-    private final Condition waitForConnectionCondition = lock.newCondition();
-    
-    // The number of connections allocated
-    int allocated;
-    
-    // The list of free connections, available to be allocated
-    private Queue<Connection> free = new LinkedList<>();
-    
+
+    // Log a warning after waiting this long for a free connection, then again at the longer interval
+    private static final long FIRST_LONG_WAIT_SECONDS = 5;
+    private static final long LONG_WAIT_SECONDS = 30;
+
+    // Idle connections are validated before they are reused after this long by default
+    public static final long DEFAULT_VALIDATE_AFTER_IDLE_SECONDS = 60;
+
+    // How long the database has to answer the validation of a connection
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    // Handed off to a waiting thread to tell it that it may open a new connection
+    private static final PoolEntry SLOT_AVAILABLE = new PoolEntry(null);
+
+    // Every connection opened by the pool, idle or in use. Only changes when a connection is opened or closed
+    private final CopyOnWriteArrayList<PoolEntry> entries = new CopyOnWriteArrayList<>();
+
+    // Hands off returned connections to the waiting threads, first come first served
+    private final SynchronousQueue<PoolEntry> handoff = new SynchronousQueue<>(true);
+
+    // The number of threads looking for a connection, which returning threads hand theirs to
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    // The number of connections allocated, including the ones being opened
+    private final AtomicInteger allocated = new AtomicInteger();
+
     // The connection provider we are decorating with pooling abilities
     private final IConnectionProvider connectionProvider;
 
     // Connection active on the current thread, if any
-    private ThreadLocal<PooledConnection> activeConnection = new ThreadLocal<>();
+    private final ThreadLocal<PoolEntry> activeEntry = new ThreadLocal<>();
+
+    // The connection the current thread used last, which is tried first the next time
+    private final ThreadLocal<WeakReference<PoolEntry>> lastEntry = new ThreadLocal<>();
 
     // The maximum number of connections allowed to be active
     private final int maxPoolSize;
@@ -54,6 +89,59 @@ public class PoolConnectionProvider implements IConnectionProvider {
     // Should we reuse connections after an exception, or close them instead of returning them to the pool
     private boolean closeOnAnyError = false;
 
+    // How long to wait for a free connection before giving up, 0 to wait forever
+    private volatile long connectionTimeoutNanos = 0;
+
+    // How long a connection can be idle before it is validated, 0 to never validate
+    private volatile long validateAfterIdleNanos = TimeUnit.SECONDS.toNanos(DEFAULT_VALIDATE_AFTER_IDLE_SECONDS);
+
+    // Metrics
+    private final long createTime = System.nanoTime();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+    private final LongAdder inUseNanos = new LongAdder();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder affinityCount = new LongAdder();
+    private final LongAdder waitCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder removedCount = new LongAdder();
+    private final LongAdder validationFailureCount = new LongAdder();
+
+    /**
+     * A connection opened by the pool, and its state
+     */
+    private static class PoolEntry {
+        static final int FREE = 0;
+        static final int IN_USE = 1;
+        static final int REMOVED = 2;
+
+        final Connection connection;
+
+        // A new entry is in use by the thread which opened it
+        final AtomicInteger state = new AtomicInteger(IN_USE);
+
+        // When the connection was last returned to the pool
+        volatile long lastUsedTime = System.nanoTime();
+
+        // The wrapper handed out to the transaction using the connection, and when it was handed out
+        PooledConnection pooled;
+        long borrowTime;
+
+        PoolEntry(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * @return true if this thread now owns the connection, false if it isn't free
+         */
+        boolean claim() {
+            return state.get() == FREE && state.compareAndSet(FREE, IN_USE);
+        }
+    }
+
     /**
      * Public constructor
      * @param cp
@@ -73,97 +161,294 @@ public class PoolConnectionProvider implements IConnectionProvider {
         this.closeOnAnyError = true;
     }
 
+    /**
+     * Configure how long {@link #getConnection()} waits for a free connection when the pool is
+     * exhausted, before it throws a {@link SQLTransientConnectionException}
+     * @param timeout the timeout, or 0 to wait forever (the default)
+     * @param unit
+     */
+    public void setConnectionTimeout(long timeout, TimeUnit unit) {
+        this.connectionTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Configure how long a connection can be idle in the pool before it is validated
+     * with {@link Connection#isValid(int)} the next time it is used. Connections which
+     * are reused continually are never validated, which saves a round-trip per transaction.
+     * @param idleTime the idle time, or 0 to never validate connections
+     * @param unit
+     */
+    public void setValidateAfterIdle(long idleTime, TimeUnit unit) {
+        this.validateAfterIdleNanos = unit.toNanos(idleTime);
+    }
+
     @Override
     public Connection getConnection() throws SQLException {
         // We use the same connection on a given thread each time it is requested
-        PooledConnection result = activeConnection.get();
-        if (result != null) {
-            if (result.incOpenCount() > 1) {
+        PoolEntry active = activeEntry.get();
+        if (active != null) {
+            if (active.pooled.incOpenCount() > 1) {
                 // likely a programming error such as not using try-with-resource
                 logger.warning("Connection open count is > 1");
             }
-            return result;
+            return active.pooled;
         }
-        
+
         // No connection currently on this thread, so try to obtain the underlying
         // connection from the pool
         long startTime = System.nanoTime();
-        Connection c = null;
-        lock.lock();
+        PoolEntry entry = borrow(startTime);
+
+        long endTime = System.nanoTime();
+        double elapsed = (endTime-startTime) / 1e9;
+        if (elapsed > 1.0) {
+            // If it takes over a second to acquire a connection, warn about it
+            logger.warning(String.format("Get connection took %.3f seconds", elapsed));
+        }
+
+        // Wrap the connection, and set it as active on this thread so we will always
+        // use it until the current transaction is complete
+        PooledConnection result = new PooledConnection(this, entry.connection, this.closeOnAnyError);
+        result.incOpenCount();
+        entry.pooled = result;
+        entry.borrowTime = endTime;
+        activeEntry.set(entry);
+
+        borrowCount.increment();
+        int count = inUse.incrementAndGet();
+        peakInUse.accumulateAndGet(count, Math::max);
+
+        return result;
+    }
+
+    /**
+     * Get a connection for the current thread, waiting if the pool is exhausted
+     * @param startTime when the thread started to get a connection
+     * @return an entry in use by the current thread
+     * @throws SQLException if a new connection couldn't be opened, or the wait timed out
+     */
+    private PoolEntry borrow(long startTime) throws SQLException {
+        // The fast path: the connection this thread used last, which is usually
+        // idle unless the pool is exhausted
+        WeakReference<PoolEntry> ref = lastEntry.get();
+        PoolEntry last = ref != null ? ref.get() : null;
+        if (last != null && last.claim() && validate(last)) {
+            affinityCount.increment();
+            return last;
+        }
+
+        while (true) {
+            PoolEntry entry = acquire(startTime);
+            if (entry == SLOT_AVAILABLE) {
+                return open();
+            }
+            else if (validate(entry)) {
+                return entry;
+            }
+            // else the connection was broken and has been removed, so try again
+        }
+    }
+
+    /**
+     * Claim an idle connection, or a slot to open a new one, waiting for one of them
+     * if necessary
+     * @param startTime when the thread started to get a connection
+     * @return the claimed entry, or {@link #SLOT_AVAILABLE} if a slot was reserved
+     * @throws SQLException if the wait timed out
+     */
+    private PoolEntry acquire(long startTime) throws SQLException {
+        long waitStart = 0;
+        long logLongWaitTime = startTime + TimeUnit.SECONDS.toNanos(FIRST_LONG_WAIT_SECONDS);
+        long timeoutNanos = this.connectionTimeoutNanos;
+
+        waiters.incrementAndGet();
         try {
-            // log warning after 5 seconds waiting for a free connection
-            long logLongWaitTimeSeconds = 5;
-            boolean assigned = false;
-            while (!assigned) {
-                if (free.isEmpty()) {
-                    if (this.allocated < this.maxPoolSize) {
-                        this.allocated++;
-                        assigned = true; // get connection outside of lock
+            while (true) {
+                for (PoolEntry entry: entries) {
+                    if (entry.claim()) {
+                        return entry;
                     }
-                    else {
-                        // block until a free connection is available
-                        logger.info("Max connections allocated, waiting for connection to be freed");
-                        if (!this.waitForConnectionCondition.await(logLongWaitTimeSeconds, TimeUnit.SECONDS)) {
-                            logger.warning("Long wait for free connection. Consider increasing pool size");
-                            if (logLongWaitTimeSeconds < 30) {
-                                logLongWaitTimeSeconds = 30; // increase the log interval after the first message
-                            }
-                        }
+                }
+
+                if (reserveSlot()) {
+                    // Open the connection outside of this loop, because it might take a while
+                    return SLOT_AVAILABLE;
+                }
+
+                // block until a free connection is available
+                long now = System.nanoTime();
+                if (waitStart == 0) {
+                    logger.info("Max connections allocated, waiting for connection to be freed");
+                    waitStart = now;
+                }
+                long waitNanos = logLongWaitTime - now;
+                if (timeoutNanos > 0) {
+                    long remaining = startTime + timeoutNanos - now;
+                    if (remaining <= 0) {
+                        timeoutCount.increment();
+                        throw new SQLTransientConnectionException(String.format("Timed out waiting for a free connection after %d ms [allocated=%d, waiting=%d]",
+                            TimeUnit.NANOSECONDS.toMillis(timeoutNanos), allocated.get(), waiters.get()), "08001");
+                    }
+                    waitNanos = Math.min(waitNanos, remaining);
+                }
+
+                PoolEntry entry = waitNanos > 0 ? handoff.poll(waitNanos, TimeUnit.NANOSECONDS) : null;
+                if (entry == null) {
+                    if (System.nanoTime() - logLongWaitTime >= 0) {
+                        logger.warning("Long wait for free connection. Consider increasing pool size");
+                        logLongWaitTime = System.nanoTime() + TimeUnit.SECONDS.toNanos(LONG_WAIT_SECONDS);
                     }
                 }
-                else {
-                    // simply take the next connection from the head of the list
-                    logger.fine("Using db connection from pool");
-                    c = free.poll();
-                    logger.fine("Got db connection from pool: " + c.toString());
-                    assigned = true;
+                else if (entry != SLOT_AVAILABLE && entry.claim()) {
+                    return entry;
                 }
+                // else a connection was closed, or another thread claimed the one we were
+                // handed, so look again
             }
         }
         catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
             throw new DataAccessException("Interrupted waiting for connection");
         }
         finally {
-            lock.unlock();
+            waiters.decrementAndGet();
+            if (waitStart != 0) {
+                long waited = System.nanoTime() - waitStart;
+                waitCount.increment();
+                totalWaitNanos.add(waited);
+                maxWaitNanos.accumulateAndGet(waited, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Reserve a slot to open a new connection, if the pool isn't full
+     * @return true if the slot was reserved
+     */
+    private boolean reserveSlot() {
+        int current;
+        while ((current = allocated.get()) < maxPoolSize) {
+            if (allocated.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Give back a slot after a connection was closed, or failed to open
+     */
+    private void releaseSlot() {
+        allocated.decrementAndGet();
+
+        // Let a waiting thread open a new connection in its place. A thread which is
+        // about to wait will either reserve the slot itself or take the handoff
+        while (waiters.get() > 0 && allocated.get() < maxPoolSize) {
+            if (handoff.offer(SLOT_AVAILABLE)) {
+                break;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Open a new connection in a slot reserved by the current thread
+     * @return the new entry, in use by the current thread
+     * @throws SQLException
+     */
+    private PoolEntry open() throws SQLException {
+        // It might take a while to establish a new connection, so we do this
+        // without holding up any other thread
+        Connection c;
+        try {
+            c = connectionProvider.getConnection();
         }
-        
-        // It might take a while to establish a new connection, so we do this after
-        // releasing the above lock to try and maximize concurrency.
-        if (c == null) {
+        catch (SQLException | RuntimeException x) {
+            // Failed to acquire a connection, so we need to relinquish
+            // our allocation and give others a chance
+            releaseSlot();
+            throw x;
+        }
+
+        PoolEntry entry = new PoolEntry(c);
+        entries.add(entry);
+        createdCount.increment();
+        return entry;
+    }
+
+    /**
+     * Validate the connection of an entry claimed by the current thread, if it has been
+     * idle for long enough, and remove it from the pool if it is no longer valid
+     * @param entry
+     * @return true if the connection can be used
+     */
+    private boolean validate(PoolEntry entry) {
+        long validateAfterIdle = this.validateAfterIdleNanos;
+        if (validateAfterIdle > 0 && System.nanoTime() - entry.lastUsedTime > validateAfterIdle) {
+            boolean valid;
             try {
-                c = connectionProvider.getConnection();
+                valid = entry.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
             }
             catch (SQLException x) {
-                // Failed to acquire a connection, so we need to relinquish
-                // our allocation and give others a chance
-                lock.lock();
-                try {
-                    this.allocated--;
-                    this.waitForConnectionCondition.signal();
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "Connection validation failed", x);
                 }
-                finally {
-                    lock.unlock();
-                }
-                throw x;
+                valid = false;
+            }
+
+            if (!valid) {
+                logger.info("Idle connection is no longer valid, so closing it");
+                validationFailureCount.increment();
+                remove(entry);
+                return false;
             }
         }
-        
-        long endTime = System.nanoTime();
-        double elapsed = (endTime-startTime) / 1e9;
-        if (elapsed > 1.0) {
-            // If it takes over a second to acquire a connection, warn about it
-            logger.warning(String.format("Get connection took %.3f seconds", elapsed));
+        return true;
+    }
+
+    /**
+     * Return an entry to the pool, handing it off to a waiting thread if there is one
+     * @param entry
+     */
+    private void requite(PoolEntry entry) {
+        entry.lastUsedTime = System.nanoTime();
+        entry.state.set(PoolEntry.FREE);
+
+        // A thread which is about to wait will either find the connection when it scans
+        // the pool or take the handoff, so this only spins for a moment
+        while (waiters.get() > 0) {
+            if (entry.state.get() != PoolEntry.FREE || handoff.offer(entry)) {
+                break;
+            }
+            Thread.yield();
         }
 
-        // Wrap the connection, and set it as active on this thread so we will always
-        // use it until the current transaction is complete
-        result = new PooledConnection(this, c, this.closeOnAnyError);
-        result.incOpenCount();
-        activeConnection.set(result);
-        
-        return result;
+        WeakReference<PoolEntry> ref = lastEntry.get();
+        if (ref == null || ref.get() != entry) {
+            lastEntry.set(new WeakReference<>(entry));
+        }
+    }
+
+    /**
+     * Close the connection of an entry claimed by the current thread and remove it from the pool
+     * @param entry
+     */
+    private void remove(PoolEntry entry) {
+        entry.state.set(PoolEntry.REMOVED);
+        entries.remove(entry);
+        try {
+            entry.connection.close();
+        }
+        catch (Exception x) {
+            // nop
+        }
+        removedCount.increment();
+
+        // We now have one less allocated connection, which might unblock
+        // another thread waiting to create a new connection
+        releaseSlot();
     }
-    
+
     /**
      * Called when the connection is closed, which in this case is pretty much a NOP,
      * because this connection will stay active on this thread until the transaction
@@ -171,69 +456,63 @@ public class PoolConnectionProvider implements IConnectionProvider {
      * @param pc
      */
     protected void returnConnection(PooledConnection pc, boolean reuse) {
-        PooledConnection active = activeConnection.get();
-        
+        PoolEntry active = activeEntry.get();
+
         // Just look out for programming errors
         if (active == null) {
             throw new IllegalStateException("No active connection");
         }
-        else if (active != pc) {
+        else if (active.pooled != pc) {
             throw new IllegalStateException("Active connection mismatch");
         }
     }
 
     /**
      * Remove the active connection on this thread. Called when the transaction completes
-     * @throws SQLException 
+     * @throws SQLException
      */
     protected void clearActiveConnection() throws SQLException {
-        PooledConnection pc = activeConnection.get();
-        if (pc != null) {
+        PoolEntry entry = activeEntry.get();
+        if (entry != null) {
+            PooledConnection pc = entry.pooled;
+
             // If the open count of current connection is bigger than 0, then it means the connection is
             // not "closed" yet, then we need to close it to reduce the open count by 1 before the connection
             // is added back to the connection pool.
-            // This could happen, e.g, in FHIRDbDAOImpl, the external connection is not closed after each 
-            // operation, instead, the connection should be closed only after the whole transaction is committed 
+            // This could happen, e.g, in FHIRDbDAOImpl, the external connection is not closed after each
+            // operation, instead, the connection should be closed only after the whole transaction is committed
             // or rolled back.
             if (pc.getOpenCount() > 0) {
                 pc.close();
             }
-            
+
             // remove this connection from thread-local
-            this.activeConnection.remove();
+            this.activeEntry.remove();
             if (pc.getOpenCount() != 0) {
                 // Whoops. getConnection called again on the thread...possibly
                 // indicates the prior connection wasn't closed
                 logger.warning("PooledConnection open/close mismatch: " + pc.getOpenCount());
             }
 
+            entry.pooled = null;
+            inUse.decrementAndGet();
+            inUseNanos.add(System.nanoTime() - entry.borrowTime);
+
             // Update the pool
-            lock.lock();
-            try {
-                if (pc.isReusable()) {
-                    // underlying connection should still be good, so add it back into the pool
-                    logger.fine("Adding connection back to pool");
-                    free.add(pc.getWrapped());
-                }
-                else {
-                    // Connection appears to be broken, so just close it and walk away
-                    logger.fine("Connection is broken, so closing it");
-                    pc.forceClosed();
-                    // We now have one less allocated connection, so need to reduce our
-                    // count accordingly, which might unblock another thread waiting to
-                    // create a new connection
-                    this.allocated--;
-                }
-                
-                // Wake up a thread waiting for an available connection
-                this.waitForConnectionCondition.signal();
+            if (pc.isReusable()) {
+                // underlying connection should still be good, so add it back into the pool
+                logger.fine("Adding connection back to pool");
+                requite(entry);
             }
-            finally {
-                lock.unlock();
+            else {
+                // Connection appears to be broken, so just close it and walk away
+                logger.fine("Connection is broken, so closing it");
+                pc.forceClosed();
+                remove(entry);
             }
         }
     }
-    
+
     /**
      * Simple check to see if the exception is related to a connection error,
      * in which case the connection shouldn't be returned to the pool when closed
@@ -253,11 +532,11 @@ public class PoolConnectionProvider implements IConnectionProvider {
     public void commitTransaction() throws SQLException {
 
         // Run commit on the connection associated with the current thread
-        PooledConnection c = activeConnection.get();
-        if (c != null) {
+        PoolEntry entry = activeEntry.get();
+        if (entry != null) {
             try {
                 logger.fine("Committing transaction");
-                c.getWrapped().commit();
+                entry.pooled.getWrapped().commit();
             }
             finally {
                 clearActiveConnection();
@@ -274,8 +553,9 @@ public class PoolConnectionProvider implements IConnectionProvider {
     public void rollbackTransaction() throws SQLException {
 
         // Run commit on the connection associated with the current thread
-        PooledConnection pc = activeConnection.get();
-        if (pc != null) {
+        PoolEntry entry = activeEntry.get();
+        if (entry != null) {
+            PooledConnection pc = entry.pooled;
             try {
                 logger.warning("Rolling back transaction");
                 pc.getWrapped().rollback();
@@ -306,6 +586,18 @@ public class PoolConnectionProvider implements IConnectionProvider {
         return this.maxPoolSize;
     }
 
+    /**
+     * Get a snapshot of the wait time and utilization metrics of the pool
+     * @return
+     */
+    public PoolStatistics getStatistics() {
+        long elapsed = System.nanoTime() - createTime;
+        double utilization = elapsed > 0 ? Math.min(1.0, inUseNanos.doubleValue() / ((double) maxPoolSize * elapsed)) : 0;
+        return new PoolStatistics(maxPoolSize, allocated.get(), inUse.get(), peakInUse.get(), waiters.get(),
+            borrowCount.sum(), affinityCount.sum(), waitCount.sum(), totalWaitNanos.sum(), maxWaitNanos.get(),
+            timeoutCount.sum(), createdCount.sum(), removedCount.sum(), validationFailureCount.sum(), utilization);
+    }
+
     /**
      * The caller is telling us they no longer need to use the pool so we can free
      * any internal resources. This also let's us check for anything currently
@@ -314,12 +606,18 @@ public class PoolConnectionProvider implements IConnectionProvider {
      *         is active.
      */
     public void close() {
-        if (activeConnection.get() != null) {
+        if (activeEntry.get() != null) {
             throw new IllegalStateException("transaction still active");
         }
 
-        if (this.free.size() != this.allocated) {
-            throw new IllegalStateException(String.format("Connections still in use [free=%d, allocated=%d]", this.free.size(), this.allocated));
+        int free = 0;
+        for (PoolEntry entry: entries) {
+            if (entry.state.get() == PoolEntry.FREE) {
+                free++;
+            }
+        }
+        if (free != this.allocated.get()) {
+            throw new IllegalStateException(String.format("Connections still in use [free=%d, allocated=%d]", free, this.allocated.get()));
         }
     }
-}
\ No newline at end of file
+}
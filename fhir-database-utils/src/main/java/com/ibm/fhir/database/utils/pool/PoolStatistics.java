@@ -0,0 +1,169 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.pool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the counters of a {@link PoolConnectionProvider}, taken by
+ * {@link PoolConnectionProvider#getStatistics()}
+ */
+public class PoolStatistics {
+    private final int maxPoolSize;
+    private final int allocated;
+    private final int inUse;
+    private final int peakInUse;
+    private final int waiting;
+    private final long borrowCount;
+    private final long affinityCount;
+    private final long waitCount;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final long timeoutCount;
+    private final long createdCount;
+    private final long removedCount;
+    private final long validationFailureCount;
+    private final double utilization;
+
+    PoolStatistics(int maxPoolSize, int allocated, int inUse, int peakInUse, int waiting, long borrowCount,
+            long affinityCount, long waitCount, long totalWaitNanos, long maxWaitNanos, long timeoutCount,
+            long createdCount, long removedCount, long validationFailureCount, double utilization) {
+        this.maxPoolSize = maxPoolSize;
+        this.allocated = allocated;
+        this.inUse = inUse;
+        this.peakInUse = peakInUse;
+        this.waiting = waiting;
+        this.borrowCount = borrowCount;
+        this.affinityCount = affinityCount;
+        this.waitCount = waitCount;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.timeoutCount = timeoutCount;
+        this.createdCount = createdCount;
+        this.removedCount = removedCount;
+        this.validationFailureCount = validationFailureCount;
+        this.utilization = utilization;
+    }
+
+    /**
+     * @return the maximum number of connections of the pool
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * @return the number of connections currently open, idle or in use
+     */
+    public int getAllocated() {
+        return allocated;
+    }
+
+    /**
+     * @return the number of connections currently in use by a transaction
+     */
+    public int getInUse() {
+        return inUse;
+    }
+
+    /**
+     * @return the highest number of connections in use at the same time
+     */
+    public int getPeakInUse() {
+        return peakInUse;
+    }
+
+    /**
+     * @return the number of threads currently getting a connection
+     */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * @return the number of connections handed out to a transaction
+     */
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    /**
+     * @return the number of connections handed out which were the last connection used by the same thread
+     */
+    public long getAffinityCount() {
+        return affinityCount;
+    }
+
+    /**
+     * @return the number of connections handed out which the thread had to wait for, because
+     *     the pool was exhausted
+     */
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    /**
+     * @return the total time spent waiting for a connection in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos;
+    }
+
+    /**
+     * @return the longest time spent waiting for a connection in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    /**
+     * @return the number of times a thread gave up waiting for a connection
+     */
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * @return the number of connections opened
+     */
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * @return the number of connections closed because they were broken, rolled back or failed validation
+     */
+    public long getRemovedCount() {
+        return removedCount;
+    }
+
+    /**
+     * @return the number of idle connections which failed validation
+     */
+    public long getValidationFailureCount() {
+        return validationFailureCount;
+    }
+
+    /**
+     * @return the fraction of the capacity of the pool used by the completed transactions since it
+     *     was created, between 0 and 1
+     */
+    public double getUtilization() {
+        return utilization;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pool [size=%d/%d, inUse=%d, peakInUse=%d, waiting=%d, utilization=%.1f%%]"
+                + " borrows [total=%d, affinity=%d, waited=%d, totalWait=%dms, maxWait=%dms, timeouts=%d]"
+                + " connections [created=%d, removed=%d, validationFailures=%d]",
+                allocated, maxPoolSize, inUse, peakInUse, waiting, utilization * 100,
+                borrowCount, affinityCount, waitCount, TimeUnit.NANOSECONDS.toMillis(totalWaitNanos),
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos), timeoutCount,
+                createdCount, removedCount, validationFailureCount);
+    }
+}
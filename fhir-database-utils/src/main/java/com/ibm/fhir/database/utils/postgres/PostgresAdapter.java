@@ -9,6 +9,7 @@ package com.ibm.fhir.database.utils.postgres;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -25,10 +26,12 @@ import com.ibm.fhir.database.utils.api.IDatabaseTarget;
 import com.ibm.fhir.database.utils.common.AddForeignKeyConstraint;
 import com.ibm.fhir.database.utils.common.CommonDatabaseAdapter;
 import com.ibm.fhir.database.utils.common.DataDefinitionUtil;
+import com.ibm.fhir.database.utils.model.BigIntColumn;
 import com.ibm.fhir.database.utils.model.ColumnBase;
 import com.ibm.fhir.database.utils.model.ForeignKeyConstraint;
 import com.ibm.fhir.database.utils.model.IdentityDef;
 import com.ibm.fhir.database.utils.model.OrderedColumnDef;
+import com.ibm.fhir.database.utils.model.PartitionSchemeDef;
 import com.ibm.fhir.database.utils.model.PrimaryKeyDef;
 import com.ibm.fhir.database.utils.model.Privilege;
 import com.ibm.fhir.database.utils.model.Table;
@@ -57,6 +60,9 @@ public class PostgresAdapter extends CommonDatabaseAdapter {
         DROP_PERMISSION
     }
 
+    // Sequence cache for the row id of partitioned tables, which can't use identity columns
+    private static final int PARTITIONED_IDENTITY_CACHE = 1000;
+
     // Just warn once for each unique message key. This cleans up build logs a lot
     private static final Set<MessageKey> warned = ConcurrentHashMap.newKeySet();
 
@@ -101,6 +107,97 @@ public class PostgresAdapter extends CommonDatabaseAdapter {
         runStatement(ddl);
     }
 
+    @Override
+    public void createTable(String schemaName, String name, String tenantColumnName, List<ColumnBase> columns, PrimaryKeyDef primaryKey,
+            IdentityDef identity, String tablespaceName, PartitionSchemeDef partitionScheme) {
+        if (partitionScheme == null) {
+            createTable(schemaName, name, tenantColumnName, columns, primaryKey, identity, tablespaceName);
+            return;
+        }
+
+        if (tenantColumnName != null) {
+            warnOnce(MessageKey.MULTITENANCY, "PostgreSql does support not multi-tenancy: " + name);
+        }
+
+        final String partitionColumn = partitionScheme.getPartitionColumn();
+        DataDefinitionUtil.assertValidName(partitionColumn);
+
+        // PostgreSql requires the partition column to be part of the primary key
+        PrimaryKeyDef pk = primaryKey;
+        if (pk != null && !pk.getColumns().contains(partitionColumn)) {
+            List<String> pkColumns = new ArrayList<>(pk.getColumns());
+            pkColumns.add(partitionColumn);
+            pk = new PrimaryKeyDef(pk.getConstraintName(), pkColumns);
+        }
+
+        // Identity columns aren't supported on partitioned tables, so we use a sequence
+        // owned by the column instead, which is how a BIGSERIAL column is implemented
+        final String qname = DataDefinitionUtil.getQualifiedName(schemaName, name);
+        String sequenceName = null;
+        List<ColumnBase> cols = columns;
+        if (identity != null) {
+            sequenceName = name + "_" + identity.getColumnName() + "_SEQ";
+            DataDefinitionUtil.assertValidName(sequenceName);
+            final String qsname = DataDefinitionUtil.getQualifiedName(schemaName, sequenceName);
+            cols = new ArrayList<>(columns.size());
+            for (ColumnBase column: columns) {
+                if (column.getName().equals(identity.getColumnName())) {
+                    if (!(column instanceof BigIntColumn)) {
+                        throw new IllegalArgumentException("Identity column of partitioned table " + qname + " must be BIGINT: " + column.getName());
+                    }
+                    cols.add(new BigIntColumn(column.getName(), false, "nextval('" + qsname + "')"));
+                } else {
+                    cols.add(column);
+                }
+            }
+            createSequence(schemaName, sequenceName, 1, PARTITIONED_IDENTITY_CACHE, 1);
+        }
+
+        // We also ignore tablespace for PostgreSql
+        StringBuilder ddl = new StringBuilder(buildCreateTableStatement(schemaName, name, cols, pk, null, null));
+        ddl.append(" PARTITION BY ").append(partitionScheme.getStrategy().name());
+        ddl.append(" (").append(partitionColumn).append(")");
+        runStatement(ddl.toString());
+
+        if (sequenceName != null) {
+            runStatement("ALTER SEQUENCE " + DataDefinitionUtil.getQualifiedName(schemaName, sequenceName)
+                    + " OWNED BY " + qname + "." + identity.getColumnName());
+        }
+
+        // Create each of the partitions. Indexes created later on the parent table are
+        // automatically created on each partition, so they remain partition-local
+        switch (partitionScheme.getStrategy()) {
+        case HASH:
+            for (int remainder = 0; remainder < partitionScheme.getModulus(); remainder++) {
+                runStatement(buildCreatePartitionStatement(schemaName, name, "P" + remainder,
+                    "FOR VALUES WITH (MODULUS " + partitionScheme.getModulus() + ", REMAINDER " + remainder + ")"));
+            }
+            break;
+        case LIST:
+            for (Integer value: partitionScheme.getValues()) {
+                runStatement(buildCreatePartitionStatement(schemaName, name, "P" + value, "FOR VALUES IN (" + value + ")"));
+            }
+            runStatement(buildCreatePartitionStatement(schemaName, name, "PDEF", "DEFAULT"));
+            break;
+        }
+    }
+
+    /**
+     * Build the DDL to create a single partition of a partitioned table
+     * @param schemaName
+     * @param tableName
+     * @param suffix
+     * @param boundSpec
+     * @return
+     */
+    protected String buildCreatePartitionStatement(String schemaName, String tableName, String suffix, String boundSpec) {
+        final String partitionName = tableName + "_" + suffix;
+        DataDefinitionUtil.assertValidName(partitionName);
+        return "CREATE TABLE " + DataDefinitionUtil.getQualifiedName(schemaName, partitionName)
+                + " PARTITION OF " + DataDefinitionUtil.getQualifiedName(schemaName, tableName)
+                + " " + boundSpec;
+    }
+
     @Override
     public void createUniqueIndex(String schemaName, String tableName, String indexName, String tenantColumnName, List<OrderedColumnDef> indexColumns,
             List<String> includeColumns) {
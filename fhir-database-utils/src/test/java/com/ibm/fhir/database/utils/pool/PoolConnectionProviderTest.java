@@ -0,0 +1,278 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.pool;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.api.IConnectionProvider;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.database.utils.derby.DerbyTranslator;
+
+/**
+ * Unit test for {@link PoolConnectionProvider}, with fake connections
+ */
+public class PoolConnectionProviderTest {
+
+    /**
+     * Provides fake connections which count how many times they are opened and closed
+     */
+    private static class FakeConnectionProvider implements IConnectionProvider {
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+        final AtomicBoolean valid = new AtomicBoolean(true);
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            opened.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "isValid":
+                        return valid.get();
+                    case "close":
+                        closed.incrementAndGet();
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                    }
+                });
+        }
+
+        @Override
+        public IDatabaseTranslator getTranslator() {
+            return new DerbyTranslator();
+        }
+
+        @Override
+        public void commitTransaction() throws SQLException {
+            // NOP
+        }
+
+        @Override
+        public void rollbackTransaction() throws SQLException {
+            // NOP
+        }
+
+        @Override
+        public void describe(String prefix, StringBuilder cfg, String key) {
+            // NOP
+        }
+    }
+
+    @Test
+    public void testThreadAffinity() throws Exception {
+        FakeConnectionProvider cp = new FakeConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 4);
+
+        PooledConnection c1 = (PooledConnection) pool.getConnection();
+        c1.close();
+        // same connection for the rest of the transaction
+        assertSame(pool.getConnection(), c1);
+        c1.close();
+        pool.commitTransaction();
+
+        // the next transaction on this thread reuses the same underlying connection
+        PooledConnection c2 = (PooledConnection) pool.getConnection();
+        assertNotSame(c2, c1);
+        assertSame(c2.getWrapped(), c1.getWrapped());
+        c2.close();
+        pool.commitTransaction();
+
+        PoolStatistics stats = pool.getStatistics();
+        assertEquals(stats.getCreatedCount(), 1);
+        assertEquals(stats.getBorrowCount(), 2);
+        assertEquals(stats.getAffinityCount(), 1);
+        assertEquals(stats.getInUse(), 0);
+        assertEquals(stats.getPeakInUse(), 1);
+        pool.close();
+    }
+
+    @Test
+    public void testHandoff() throws Exception {
+        FakeConnectionProvider cp = new FakeConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            PooledConnection held = (PooledConnection) pool.getConnection();
+            Future<Connection> waiter = executor.submit(() -> {
+                PooledConnection c = (PooledConnection) pool.getConnection();
+                c.close();
+                pool.commitTransaction();
+                return c.getWrapped();
+            });
+
+            // wait until the other thread is blocked on the pool
+            while (pool.getStatistics().getWaiting() == 0) {
+                Thread.sleep(10);
+            }
+            held.close();
+            pool.commitTransaction();
+
+            assertSame(waiter.get(10, TimeUnit.SECONDS), held.getWrapped());
+            PoolStatistics stats = pool.getStatistics();
+            assertEquals(stats.getCreatedCount(), 1);
+            assertEquals(stats.getWaitCount(), 1);
+            assertTrue(stats.getMaxWaitNanos() > 0);
+            pool.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        FakeConnectionProvider cp = new FakeConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 1);
+        pool.setConnectionTimeout(100, TimeUnit.MILLISECONDS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Connection held = pool.getConnection();
+            Future<?> waiter = executor.submit(() -> pool.getConnection());
+            try {
+                waiter.get(10, TimeUnit.SECONDS);
+                fail("expected a timeout");
+            } catch (ExecutionException x) {
+                assertTrue(x.getCause() instanceof SQLTransientConnectionException);
+            }
+            assertEquals(pool.getStatistics().getTimeoutCount(), 1);
+
+            held.close();
+            pool.commitTransaction();
+            pool.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testValidateAfterIdle() throws Exception {
+        FakeConnectionProvider cp = new FakeConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 1);
+        pool.setValidateAfterIdle(1, TimeUnit.MILLISECONDS);
+
+        PooledConnection c1 = (PooledConnection) pool.getConnection();
+        c1.close();
+        pool.commitTransaction();
+
+        // the idle connection is broken, so it is replaced
+        cp.valid.set(false);
+        Thread.sleep(10);
+        PooledConnection c2 = (PooledConnection) pool.getConnection();
+        assertNotSame(c2.getWrapped(), c1.getWrapped());
+        c2.close();
+        pool.commitTransaction();
+
+        PoolStatistics stats = pool.getStatistics();
+        assertEquals(cp.opened.get(), 2);
+        assertEquals(cp.closed.get(), 1);
+        assertEquals(stats.getValidationFailureCount(), 1);
+        assertEquals(stats.getAllocated(), 1);
+
+        // connections reused straight away aren't validated
+        pool.setValidateAfterIdle(1, TimeUnit.MINUTES);
+        pool.getConnection().close();
+        pool.commitTransaction();
+        assertEquals(pool.getStatistics().getValidationFailureCount(), 1);
+        pool.close();
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        FakeConnectionProvider cp = new FakeConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, 1);
+
+        PooledConnection c1 = (PooledConnection) pool.getConnection();
+        c1.close();
+        pool.rollbackTransaction();
+
+        // the connection was thrown out, and its slot is free again
+        PooledConnection c2 = (PooledConnection) pool.getConnection();
+        assertNotSame(c2.getWrapped(), c1.getWrapped());
+        c2.close();
+        pool.commitTransaction();
+
+        PoolStatistics stats = pool.getStatistics();
+        assertEquals(stats.getCreatedCount(), 2);
+        assertEquals(stats.getRemovedCount(), 1);
+        assertEquals(stats.getAllocated(), 1);
+        pool.close();
+    }
+
+    @Test
+    public void testContention() throws Exception {
+        final int poolSize = 4;
+        final int threads = 16;
+        final int transactions = 500;
+        FakeConnectionProvider cp = new FakeConnectionProvider();
+        PoolConnectionProvider pool = new PoolConnectionProvider(cp, poolSize);
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        AtomicInteger rollbacks = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < transactions; i++) {
+                        Connection c = pool.getConnection();
+                        maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                        Thread.yield();
+                        inUse.decrementAndGet();
+                        c.close();
+                        if (i % 100 == 99) {
+                            rollbacks.incrementAndGet();
+                            pool.rollbackTransaction();
+                        } else {
+                            pool.commitTransaction();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        PoolStatistics stats = pool.getStatistics();
+        assertTrue(maxInUse.get() <= poolSize, "max in use: " + maxInUse.get());
+        assertTrue(stats.getPeakInUse() <= poolSize);
+        assertEquals(stats.getBorrowCount(), threads * transactions);
+        assertEquals(stats.getRemovedCount(), rollbacks.get());
+        assertEquals(stats.getCreatedCount(), cp.opened.get());
+        assertTrue(stats.getAllocated() <= poolSize);
+        assertEquals(stats.getInUse(), 0);
+        pool.close();
+    }
+}
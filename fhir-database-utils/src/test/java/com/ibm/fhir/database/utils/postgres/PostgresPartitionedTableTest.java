@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.database.utils.postgres;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.api.IDatabaseStatement;
+import com.ibm.fhir.database.utils.api.IDatabaseSupplier;
+import com.ibm.fhir.database.utils.api.IDatabaseTarget;
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.database.utils.model.BigIntColumn;
+import com.ibm.fhir.database.utils.model.ColumnBase;
+import com.ibm.fhir.database.utils.model.Generated;
+import com.ibm.fhir.database.utils.model.IdentityDef;
+import com.ibm.fhir.database.utils.model.IntColumn;
+import com.ibm.fhir.database.utils.model.PartitionSchemeDef;
+import com.ibm.fhir.database.utils.model.PrimaryKeyDef;
+
+/**
+ * Tests the DDL generated for PostgreSql declarative partitioning
+ */
+public class PostgresPartitionedTableTest {
+    private static final String schemaName = "SCHEMA1";
+    private static final String tableName = "TABLE1";
+
+    private static final List<ColumnBase> columns = Arrays.asList(
+        new BigIntColumn("ROW_ID", false),
+        new IntColumn("PARAMETER_NAME_ID", false),
+        new BigIntColumn("LOGICAL_RESOURCE_ID", false));
+
+    private static final PrimaryKeyDef primaryKey = new PrimaryKeyDef("PK_TABLE1", Arrays.asList("ROW_ID"));
+
+    private static final IdentityDef identity = new IdentityDef("ROW_ID", Generated.BY_DEFAULT);
+
+    /**
+     * Collects the statements instead of running them
+     */
+    private static class CollectingTarget implements IDatabaseTarget {
+        private final List<String> statements = new ArrayList<>();
+
+        @Override
+        public void runStatement(IDatabaseTranslator translator, String ddl) {
+            statements.add(ddl);
+        }
+
+        @Override
+        public void runStatementWithInt(IDatabaseTranslator translator, String sql, int value) {
+            statements.add(sql);
+        }
+
+        @Override
+        public void runStatement(IDatabaseTranslator translator, IDatabaseStatement statement) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T runStatement(IDatabaseTranslator translator, IDatabaseSupplier<T> supplier) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    public void testHashPartitions() {
+        CollectingTarget target = new CollectingTarget();
+        PostgresAdapter adapter = new PostgresAdapter(target);
+        adapter.createTable(schemaName, tableName, null, columns, primaryKey, identity, null,
+            PartitionSchemeDef.hash("LOGICAL_RESOURCE_ID", 2));
+
+        assertEquals(target.statements, Arrays.asList(
+            "CREATE SEQUENCE SCHEMA1.TABLE1_ROW_ID_SEQ AS BIGINT  INCREMENT BY 1 START WITH 1 CACHE 1000 NO CYCLE",
+            "CREATE TABLE SCHEMA1.TABLE1(ROW_ID BIGINT NOT NULL DEFAULT nextval('SCHEMA1.TABLE1_ROW_ID_SEQ'), "
+                + "PARAMETER_NAME_ID INT NOT NULL, LOGICAL_RESOURCE_ID BIGINT NOT NULL, "
+                + "CONSTRAINT PK_TABLE1 PRIMARY KEY (ROW_ID, LOGICAL_RESOURCE_ID)) PARTITION BY HASH (LOGICAL_RESOURCE_ID)",
+            "ALTER SEQUENCE SCHEMA1.TABLE1_ROW_ID_SEQ OWNED BY SCHEMA1.TABLE1.ROW_ID",
+            "CREATE TABLE SCHEMA1.TABLE1_P0 PARTITION OF SCHEMA1.TABLE1 FOR VALUES WITH (MODULUS 2, REMAINDER 0)",
+            "CREATE TABLE SCHEMA1.TABLE1_P1 PARTITION OF SCHEMA1.TABLE1 FOR VALUES WITH (MODULUS 2, REMAINDER 1)"));
+    }
+
+    @Test
+    public void testListPartitions() {
+        CollectingTarget target = new CollectingTarget();
+        PostgresAdapter adapter = new PostgresAdapter(target);
+        adapter.createTable(schemaName, tableName, null, columns, primaryKey, null, null,
+            PartitionSchemeDef.list("PARAMETER_NAME_ID", Arrays.asList(1001, 1002)));
+
+        assertEquals(target.statements, Arrays.asList(
+            "CREATE TABLE SCHEMA1.TABLE1(ROW_ID BIGINT NOT NULL, PARAMETER_NAME_ID INT NOT NULL, LOGICAL_RESOURCE_ID BIGINT NOT NULL, "
+                + "CONSTRAINT PK_TABLE1 PRIMARY KEY (ROW_ID, PARAMETER_NAME_ID)) PARTITION BY LIST (PARAMETER_NAME_ID)",
+            "CREATE TABLE SCHEMA1.TABLE1_P1001 PARTITION OF SCHEMA1.TABLE1 FOR VALUES IN (1001)",
+            "CREATE TABLE SCHEMA1.TABLE1_P1002 PARTITION OF SCHEMA1.TABLE1 FOR VALUES IN (1002)",
+            "CREATE TABLE SCHEMA1.TABLE1_PDEF PARTITION OF SCHEMA1.TABLE1 DEFAULT"));
+    }
+}
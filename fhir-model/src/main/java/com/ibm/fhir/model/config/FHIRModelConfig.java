@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -9,11 +9,13 @@ package com.ibm.fhir.model.config;
 import static java.util.Objects.requireNonNull;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.type.Element;
 
 /**
  * This class is used to manage runtime configuration for the FHIR model APIs.
@@ -46,11 +48,24 @@ public final class FHIRModelConfig {
      */
     public static final String PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION = "com.ibm.fhir.model.extendedCodeableConceptValidation";
 
+    /**
+     * The element types whose values are interned by the parsers, as a {@code Set<Class<? extends Element>>};
+     * each type also covers its subtypes, e.g. Code covers the code value set enumerations
+     */
+    public static final String PROPERTY_INTERNED_TYPES = "com.ibm.fhir.model.internedTypes";
+
+    /**
+     * The maximum number of distinct values interned for each element type
+     */
+    public static final String PROPERTY_INTERN_POOL_MAX_SIZE = "com.ibm.fhir.model.internPoolMaxSize";
+
     private static final Format DEFAULT_TO_STRING_FORMAT = Format.JSON;
     private static final int DEFAULT_TO_STRING_INDENT_AMOUNT = 2;
     private static final boolean DEFAULT_TO_STRING_PRETTY_PRINTING = true;
     private static final boolean DEFAULT_CHECK_REFERENCE_TYPES = true;
     private static final boolean DEFAULT_EXTENDED_CODEABLE_CONCEPT_VALIDATION = true;
+    private static final Set<Class<? extends Element>> DEFAULT_INTERNED_TYPES = Collections.emptySet();
+    private static final int DEFAULT_INTERN_POOL_MAX_SIZE = 10000;
 
     private static final Map<String, Object> properties = new ConcurrentHashMap<>();
    
@@ -96,6 +111,23 @@ public final class FHIRModelConfig {
         return getPropertyOrDefault(PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION, DEFAULT_EXTENDED_CODEABLE_CONCEPT_VALIDATION, Boolean.class);
     }
    
+    public static void setInternedTypes(Set<Class<? extends Element>> internedTypes) {
+        setProperty(PROPERTY_INTERNED_TYPES, Collections.unmodifiableSet(new HashSet<>(internedTypes)));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Set<Class<? extends Element>> getInternedTypes() {
+        return getPropertyOrDefault(PROPERTY_INTERNED_TYPES, DEFAULT_INTERNED_TYPES, Set.class);
+    }
+
+    public static void setInternPoolMaxSize(int internPoolMaxSize) {
+        setProperty(PROPERTY_INTERN_POOL_MAX_SIZE, internPoolMaxSize);
+    }
+
+    public static int getInternPoolMaxSize() {
+        return getPropertyOrDefault(PROPERTY_INTERN_POOL_MAX_SIZE, DEFAULT_INTERN_POOL_MAX_SIZE, Integer.class);
+    }
+
     public static void setProperty(String name, Object value) {
         properties.put(requireNonNull(name), requireNonNull(value));
     }
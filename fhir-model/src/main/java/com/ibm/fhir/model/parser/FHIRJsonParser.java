@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -41,6 +41,7 @@ import com.ibm.fhir.model.type.Boolean;
 import com.ibm.fhir.model.type.Integer;
 import com.ibm.fhir.model.type.String;
 import com.ibm.fhir.model.util.ElementFilter;
+import com.ibm.fhir.model.util.ElementInterner;
 
 import net.jcip.annotations.NotThreadSafe;
 
@@ -18999,7 +19000,7 @@ public class FHIRJsonParser extends FHIRAbstractParser {
             throw new IllegalArgumentException("Expected: STRING but found: " + jsonValue.getValueType() + " for element: " + elementName);
         }
         stackPop();
-        return builder.build();
+        return ElementInterner.intern(builder.build());
     }
 
     private String parseString(java.lang.String elementName, JsonValue jsonValue, JsonValue _jsonValue, int elementIndex) {
@@ -21823,7 +21824,7 @@ public class FHIRJsonParser extends FHIRAbstractParser {
             throw new IllegalArgumentException("Expected: STRING but found: " + jsonValue.getValueType() + " for element: " + elementName);
         }
         stackPop();
-        return builder.build();
+        return ElementInterner.intern(builder.build());
     }
 
     private Uri parseUri(java.lang.String elementName, JsonValue jsonValue, JsonValue _jsonValue, int elementIndex) {
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -31,6 +31,7 @@ import com.ibm.fhir.model.type.code.*;
 import com.ibm.fhir.model.type.Boolean;
 import com.ibm.fhir.model.type.Integer;
 import com.ibm.fhir.model.type.String;
+import com.ibm.fhir.model.util.ElementInterner;
 import com.ibm.fhir.model.util.XMLSupport.StreamReaderDelegate;
 
 import net.jcip.annotations.NotThreadSafe;
@@ -42355,7 +42356,7 @@ public class FHIRXMLParser extends FHIRAbstractParser {
             case XMLStreamReader.END_ELEMENT:
                 if (reader.getLocalName().equals(elementName)) {
                     stackPop();
-                    return builder.build();
+                    return ElementInterner.intern(builder.build());
                 }
                 break;
             }
@@ -49950,7 +49951,7 @@ public class FHIRXMLParser extends FHIRAbstractParser {
             case XMLStreamReader.END_ELEMENT:
                 if (reader.getLocalName().equals(elementName)) {
                     stackPop();
-                    return builder.build();
+                    return ElementInterner.intern(builder.build());
                 }
                 break;
             }
@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.util;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.fhir.model.config.FHIRModelConfig;
+import com.ibm.fhir.model.type.Element;
+
+/**
+ * A pool of shared instances for primitive elements with repeated values, such as the code systems in
+ * {@code Coding.system}, the profiles in {@code Meta.profile} and status codes. The model classes are
+ * immutable, so parsed resources can share one instance for each distinct value instead of holding a copy
+ * of it for every occurrence.
+ *
+ * <p>Only the element types configured with {@link FHIRModelConfig#setInternedTypes(Set)} are interned, and
+ * only elements which have a value and no id or extensions. Each type has its own pool. When a pool reaches
+ * {@link FHIRModelConfig#getInternPoolMaxSize()} values it is emptied and starts over, so that high cardinality
+ * values can neither grow the pool without bound nor fill it for good and shut out the values which do repeat.
+ * The instances shared before the pool was emptied stay valid, they just aren't shared with new resources.
+ */
+public final class ElementInterner {
+    private static final Map<Class<?>, Map<Element, Element>> POOLS = new ConcurrentHashMap<>();
+
+    private ElementInterner() { }
+
+    /**
+     * Get the shared instance equal to the element, if the element is of an interned type
+     *
+     * @param element
+     *     the element, may be null
+     * @return
+     *     the shared instance, or the passed element if it isn't interned
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Element> T intern(T element) {
+        if (element == null) {
+            return null;
+        }
+        Set<Class<? extends Element>> internedTypes = FHIRModelConfig.getInternedTypes();
+        if (internedTypes.isEmpty() || element.getId() != null || element.hasChildren() || !element.hasValue()
+                || !isInternedType(element.getClass(), internedTypes)) {
+            return element;
+        }
+
+        Map<Element, Element> pool = POOLS.computeIfAbsent(element.getClass(), k -> new ConcurrentHashMap<>());
+        Element shared = pool.get(element);
+        if (shared == null) {
+            if (pool.size() >= FHIRModelConfig.getInternPoolMaxSize()) {
+                // values which repeat are added back by the next resources which contain them
+                pool.clear();
+            }
+            shared = pool.putIfAbsent(element, element);
+        }
+        return (shared != null) ? (T) shared : element;
+    }
+
+    /**
+     * Remove all of the shared instances
+     */
+    public static void clear() {
+        POOLS.clear();
+    }
+
+    private static boolean isInternedType(Class<?> type, Set<Class<? extends Element>> internedTypes) {
+        for (Class<?> c = type; c != null && Element.class.isAssignableFrom(c); c = c.getSuperclass()) {
+            if (internedTypes.contains(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
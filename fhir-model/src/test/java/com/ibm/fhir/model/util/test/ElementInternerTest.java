@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.model.util.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.config.FHIRModelConfig;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.util.ElementInterner;
+
+/**
+ * Tests for {@link ElementInterner}
+ */
+public class ElementInternerTest {
+    private static final String OBSERVATION_JSON = "{\"resourceType\":\"Observation\",\"status\":\"final\","
+            + "\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"29463-7\"}]}}";
+
+    private static final String OBSERVATION_XML = "<Observation xmlns=\"http://hl7.org/fhir\"><status value=\"final\"/>"
+            + "<code><coding><system value=\"http://loinc.org\"/><code value=\"29463-7\"/></coding></code></Observation>";
+
+    @AfterMethod
+    public void reset() {
+        FHIRModelConfig.removeProperty(FHIRModelConfig.PROPERTY_INTERNED_TYPES);
+        FHIRModelConfig.removeProperty(FHIRModelConfig.PROPERTY_INTERN_POOL_MAX_SIZE);
+        ElementInterner.clear();
+    }
+
+    private void internTypes(Class<?>... types) {
+        HashSet<Class<? extends Element>> internedTypes = new HashSet<>();
+        for (Class<?> type : types) {
+            internedTypes.add(type.asSubclass(Element.class));
+        }
+        FHIRModelConfig.setInternedTypes(internedTypes);
+    }
+
+    private Observation parse(Format format) throws Exception {
+        String text = (format == Format.JSON) ? OBSERVATION_JSON : OBSERVATION_XML;
+        return FHIRParser.parser(format).parse(new StringReader(text));
+    }
+
+    @Test
+    public void testParsersShareValues() throws Exception {
+        internTypes(Uri.class, Code.class);
+        for (Format format : Arrays.asList(Format.JSON, Format.XML)) {
+            Observation first = parse(format);
+            Observation second = parse(format);
+            assertEquals(first, second);
+            assertSame(second.getCode().getCoding().get(0).getSystem(), first.getCode().getCoding().get(0).getSystem());
+            assertSame(second.getCode().getCoding().get(0).getCode(), first.getCode().getCoding().get(0).getCode());
+            // the status is an enumeration, which is a subtype of Code
+            assertSame(second.getStatus(), first.getStatus());
+        }
+    }
+
+    @Test
+    public void testNotInternedByDefault() throws Exception {
+        Observation first = parse(Format.JSON);
+        Observation second = parse(Format.JSON);
+        assertNotSame(second.getCode().getCoding().get(0).getSystem(), first.getCode().getCoding().get(0).getSystem());
+    }
+
+    @Test
+    public void testOnlyConfiguredTypes() throws Exception {
+        internTypes(Uri.class);
+        Observation first = parse(Format.JSON);
+        Observation second = parse(Format.JSON);
+        assertSame(second.getCode().getCoding().get(0).getSystem(), first.getCode().getCoding().get(0).getSystem());
+        assertNotSame(second.getCode().getCoding().get(0).getCode(), first.getCode().getCoding().get(0).getCode());
+    }
+
+    @Test
+    public void testElementsWithExtensionsAreNotInterned() {
+        internTypes(Uri.class);
+        Extension extension = Extension.builder().url("http://example.com/extension").value(Code.of("x")).build();
+        Uri first = Uri.builder().value("http://loinc.org").extension(extension).build();
+        Uri second = Uri.builder().value("http://loinc.org").extension(extension).build();
+        assertSame(ElementInterner.intern(first), first);
+        assertSame(ElementInterner.intern(second), second);
+    }
+
+    @Test
+    public void testPoolMaxSize() {
+        internTypes(Uri.class);
+        FHIRModelConfig.setInternPoolMaxSize(1);
+        Uri loinc = ElementInterner.intern(Uri.of("http://loinc.org"));
+        assertSame(ElementInterner.intern(Uri.of("http://loinc.org")), loinc);
+
+        // the pool is full, so it starts over with the new value
+        Uri snomed = Uri.of("http://snomed.info/sct");
+        assertSame(ElementInterner.intern(snomed), snomed);
+        assertSame(ElementInterner.intern(Uri.of("http://snomed.info/sct")), snomed);
+
+        // and the old value is shared again once it comes back
+        Uri loinc2 = Uri.of("http://loinc.org");
+        assertSame(ElementInterner.intern(loinc2), loinc2);
+        assertNotSame(loinc2, loinc);
+        assertSame(ElementInterner.intern(Uri.of("http://loinc.org")), loinc2);
+    }
+}
@@ -6,16 +6,21 @@
 
 package com.ibm.fhir.notification;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.core.util.VirtualThreads;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.notification.exception.FHIRNotificationException;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
@@ -32,6 +37,9 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
     private static final FHIRNotificationService INSTANCE = new FHIRNotificationService();
     private Set<String> includedResourceTypes = Collections.synchronizedSortedSet(new TreeSet<String>());
 
+    // Notifies the subscribers concurrently, created on first use when virtual threads are enabled
+    private volatile ExecutorService dispatcher;
+
     private FHIRNotificationService() {
         log.entering(this.getClass().getName(), "FHIRNotificationService");
         try {
@@ -64,22 +72,86 @@ public class FHIRNotificationService implements FHIRPersistenceInterceptor {
 
     /**
      * Method for broadcasting message to each subscriber.
+     * When virtual threads are enabled and there are several subscribers, they are notified concurrently,
+     * each on its own virtual thread, so the request waits for the slowest subscriber rather than for all
+     * of them in turn.
      *
      * @param event
      */
     public void publish(FHIRNotificationEvent event) {
         log.entering(this.getClass().getName(), "publish");
-        for (FHIRNotificationSubscriber subscriber : subscribers) {
-            try {
-                subscriber.notify(event);
-            } catch (FHIRNotificationException e) {
-                subscribers.remove(subscriber);
-                log.log(Level.WARNING, FHIRNotificationService.class.getName() + ": unable to publish event", e);
+        ExecutorService dispatcher = getDispatcher();
+        if (dispatcher != null && subscribers.size() > 1) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (FHIRNotificationSubscriber subscriber : subscribers) {
+                futures.add(dispatcher.submit(() -> notifySubscriber(subscriber, event)));
+            }
+            awaitAll(futures);
+        } else {
+            for (FHIRNotificationSubscriber subscriber : subscribers) {
+                notifySubscriber(subscriber, event);
             }
         }
         log.exiting(this.getClass().getName(), "publish");
     }
 
+    /**
+     * Notify the subscriber, which is unsubscribed if it fails
+     */
+    private void notifySubscriber(FHIRNotificationSubscriber subscriber, FHIRNotificationEvent event) {
+        try {
+            subscriber.notify(event);
+        } catch (FHIRNotificationException e) {
+            subscribers.remove(subscriber);
+            log.log(Level.WARNING, FHIRNotificationService.class.getName() + ": unable to publish event", e);
+        }
+    }
+
+    /**
+     * Wait for all the subscribers to be notified, then throw the first unexpected exception if any,
+     * as if they had been notified in turn on the calling thread
+     */
+    private void awaitAll(List<Future<?>> futures) {
+        Throwable failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while publishing notification event", e);
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * @return the executor to notify the subscribers concurrently, or null if virtual threads aren't enabled
+     */
+    private ExecutorService getDispatcher() {
+        if (!VirtualThreads.isEnabled()) {
+            return null;
+        }
+        ExecutorService result = dispatcher;
+        if (result == null) {
+            synchronized (this) {
+                result = dispatcher;
+                if (result == null) {
+                    result = VirtualThreads.newTaskExecutor("fhir-notification");
+                    dispatcher = result;
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Method to subscribe the target notification implementation
      *
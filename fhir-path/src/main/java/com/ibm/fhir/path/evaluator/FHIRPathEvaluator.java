@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -85,6 +85,7 @@ import com.ibm.fhir.path.FHIRPathTree;
 import com.ibm.fhir.path.FHIRPathType;
 import com.ibm.fhir.path.exception.FHIRPathException;
 import com.ibm.fhir.path.function.FHIRPathFunction;
+import com.ibm.fhir.path.spi.ReferenceResolver;
 import com.ibm.fhir.path.util.FHIRPathUtil;
 
 /**
@@ -1361,6 +1362,9 @@ public class FHIRPathEvaluator {
         private Constraint constraint;
         private final List<Issue> issues = new ArrayList<>();
 
+        private ReferenceResolver referenceResolver;
+        private final Map<String, Resource> resolvedReferences = new HashMap<>();
+
         /**
          * Create an empty evaluation context, evaluating stand-alone expressions
          */
@@ -1549,5 +1553,77 @@ public class FHIRPathEvaluator {
         public boolean hasIssues() {
             return !issues.isEmpty();
         }
+
+        /**
+         * Set the reference resolver used by the resolve() function to load the targets of literal references
+         * which are not contained or Bundle-internal references
+         *
+         * @param referenceResolver
+         *     the reference resolver
+         */
+        public void setReferenceResolver(ReferenceResolver referenceResolver) {
+            this.referenceResolver = referenceResolver;
+        }
+
+        /**
+         * Get the reference resolver used by the resolve() function
+         *
+         * @return
+         *     the reference resolver if exists, otherwise null
+         */
+        public ReferenceResolver getReferenceResolver() {
+            return referenceResolver;
+        }
+
+        /**
+         * Indicates whether this evaluation context has a reference resolver
+         *
+         * @return
+         *     true if this evaluation context has a reference resolver, otherwise false
+         */
+        public boolean hasReferenceResolver() {
+            return referenceResolver != null;
+        }
+
+        /**
+         * Resolve the given literal references using the reference resolver
+         *
+         * <p>References which have not been seen before by this evaluation context are passed to the reference
+         * resolver in a single call. The outcome (including references which could not be resolved) is cached for
+         * the lifetime of this evaluation context.
+         *
+         * @param references
+         *     the literal references
+         * @return
+         *     a map from reference to target resource, for the references which could be resolved
+         */
+        public Map<String, Resource> resolveReferences(Collection<String> references) {
+            if (referenceResolver == null || references.isEmpty()) {
+                return Collections.emptyMap();
+            }
+
+            Set<String> unresolved = new LinkedHashSet<>();
+            for (String reference : references) {
+                if (!resolvedReferences.containsKey(reference)) {
+                    unresolved.add(reference);
+                }
+            }
+
+            if (!unresolved.isEmpty()) {
+                Map<String, Resource> resolved = referenceResolver.resolve(unresolved);
+                for (String reference : unresolved) {
+                    resolvedReferences.put(reference, resolved.get(reference));
+                }
+            }
+
+            Map<String, Resource> result = new HashMap<>();
+            for (String reference : references) {
+                Resource resource = resolvedReferences.get(reference);
+                if (resource != null) {
+                    result.put(reference, resource);
+                }
+            }
+            return result;
+        }
     }
 }
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -11,10 +11,14 @@ import static com.ibm.fhir.model.util.ModelSupport.isResourceType;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 
-import com.ibm.fhir.model.resource.DomainResource;
+import com.ibm.fhir.model.resource.Bundle;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.type.Reference;
 import com.ibm.fhir.model.type.code.IssueSeverity;
@@ -49,8 +53,15 @@ public class ResolveFunction extends FHIRPathAbstractFunction {
      * and nothing is added to the output collection. The items in the collection may also represent a Reference, in which
      * case the Reference.reference is resolved.
      *
-     * <p>This method creates a resource node that is a placeholder for the actual resource, thus allowing for the FHIRPath
-     * evaluator to perform type checking on the result of the resolve function. For example:
+     * <p>Contained references (e.g. "#id") are resolved against the root resource of the evaluation context and, if
+     * the root resource is a Bundle, references are resolved against the fullUrl and resource identity of its entries.
+     * Neither case requires any I/O. Any other literal references in the input collection are collected and passed
+     * in a single call to the {@link com.ibm.fhir.path.spi.ReferenceResolver} of the evaluation context, if one has
+     * been set.
+     *
+     * <p>If a reference cannot be resolved to an actual resource, this method creates a resource node that is a
+     * placeholder for the actual resource, thus allowing for the FHIRPath evaluator to perform type checking on the
+     * result of the resolve function. For example:
      *
      * <pre>Observation.subject.where(resolve() is Patient)</pre>
      *
@@ -68,62 +79,103 @@ public class ResolveFunction extends FHIRPathAbstractFunction {
      */
     @Override
     public Collection<FHIRPathNode> apply(EvaluationContext evaluationContext, Collection<FHIRPathNode> context, List<Collection<FHIRPathNode>> arguments) {
-        Collection<FHIRPathNode> result = new ArrayList<>();
+        FHIRPathTree tree = evaluationContext.getTree();
+        Map<String, FHIRPathNode> bundleEntryMap = null;
+
+        // First pass: resolve what we can locally and collect the references which need a resolver
+        List<FHIRPathNode> referenceNodes = new ArrayList<>();
+        List<FHIRPathNode> localTargets = new ArrayList<>();
+        Set<String> externalReferences = new LinkedHashSet<>();
         for (FHIRPathNode node : context) {
             if (node.isElementNode() && node.asElementNode().element().is(Reference.class)) {
-                Reference reference = node.asElementNode().element().as(Reference.class);
-
-                String referenceReference = getReferenceReference(reference);
-                String referenceType = getReferenceType(reference);
-
-                String resourceType = null;
-
-                if (referenceReference != null) {
-                    if (referenceReference.startsWith("#")) {
-                        // internal fragment reference
-                        resourceType = resolveInternalFragmentReference(evaluationContext.getTree(), referenceReference);
-                    } else {
-                        Matcher matcher = REFERENCE_PATTERN.matcher(referenceReference);
-                        if (matcher.matches()) {
-                            resourceType = matcher.group(RESOURCE_TYPE);
-                            if (referenceType != null && !resourceType.equals(referenceType)) {
-                                throw new IllegalArgumentException("Resource type found in reference URL does not match reference type");
-                            }
-                        }
+                String referenceReference = getReferenceReference(node.asElementNode().element().as(Reference.class));
+
+                FHIRPathNode target = null;
+                if (referenceReference == null) {
+                    // nothing to resolve
+                } else if (referenceReference.startsWith("#")) {
+                    // internal fragment reference
+                    target = resolveInternalFragmentReference(tree, referenceReference);
+                } else {
+                    if (bundleEntryMap == null) {
+                        bundleEntryMap = buildBundleEntryMap(tree);
+                    }
+                    target = bundleEntryMap.get(referenceReference);
+                    if (target == null && evaluationContext.hasReferenceResolver() && REFERENCE_PATTERN.matcher(referenceReference).matches()) {
+                        externalReferences.add(referenceReference);
                     }
                 }
+                referenceNodes.add(node);
+                localTargets.add(target);
+            }
+        }
+
+        // Resolve all the remaining references in one batch
+        Map<String, Resource> resolved = evaluationContext.resolveReferences(externalReferences);
 
-                if (resourceType == null) {
-                    resourceType = referenceType;
+        Collection<FHIRPathNode> result = new ArrayList<>();
+        for (int i = 0; i < referenceNodes.size(); i++) {
+            FHIRPathNode node = referenceNodes.get(i);
+            Reference reference = node.asElementNode().element().as(Reference.class);
+
+            String referenceReference = getReferenceReference(reference);
+            String referenceType = getReferenceType(reference);
+
+            FHIRPathNode target = localTargets.get(i);
+            if (target == null && referenceReference != null) {
+                Resource resource = resolved.get(referenceReference);
+                if (resource != null) {
+                    target = FHIRPathTree.tree(resource).getRoot();
                 }
+            }
+            if (target != null) {
+                result.add(target);
+                continue;
+            }
 
-                FHIRPathType type = isResourceType(resourceType) ? FHIRPathType.from(resourceType) : FHIRPathType.FHIR_UNKNOWN_RESOURCE_TYPE;
+            String resourceType = null;
 
-                if (referenceReference != null && FHIRPathType.FHIR_UNKNOWN_RESOURCE_TYPE.equals(type)) {
-                    generateIssue(evaluationContext, IssueSeverity.INFORMATION, IssueType.INFORMATIONAL, "Resource type could not be inferred from reference: " + referenceReference, node.path());
+            if (referenceReference != null && !referenceReference.startsWith("#")) {
+                Matcher matcher = REFERENCE_PATTERN.matcher(referenceReference);
+                if (matcher.matches()) {
+                    resourceType = matcher.group(RESOURCE_TYPE);
+                    if (referenceType != null && !resourceType.equals(referenceType)) {
+                        throw new IllegalArgumentException("Resource type found in reference URL does not match reference type");
+                    }
                 }
+            }
+
+            if (resourceType == null) {
+                resourceType = referenceType;
+            }
+
+            FHIRPathType type = isResourceType(resourceType) ? FHIRPathType.from(resourceType) : FHIRPathType.FHIR_UNKNOWN_RESOURCE_TYPE;
 
-                result.add(FHIRPathResourceNode.resourceNode(type));
+            if (referenceReference != null && FHIRPathType.FHIR_UNKNOWN_RESOURCE_TYPE.equals(type)) {
+                generateIssue(evaluationContext, IssueSeverity.INFORMATION, IssueType.INFORMATIONAL, "Resource type could not be inferred from reference: " + referenceReference, node.path());
             }
+
+            result.add(FHIRPathResourceNode.resourceNode(type));
         }
         return result;
     }
 
-    private String resolveInternalFragmentReference(FHIRPathTree tree, String referenceReference) {
+    /**
+     * Find the node of the root resource or one of its contained resources
+     */
+    private FHIRPathNode resolveInternalFragmentReference(FHIRPathTree tree, String referenceReference) {
         if (tree != null) {
             FHIRPathNode root = tree.getRoot();
             if (root.isResourceNode()) {
-                Resource resource = root.asResourceNode().resource();
                 if ("#".equals(referenceReference)) {
-                    return resource.getClass().getSimpleName();
+                    return root;
                 }
                 String id = referenceReference.substring(1);
-                if (resource instanceof DomainResource) {
-                    DomainResource domainResource = (DomainResource) resource;
-                    for (Resource contained : domainResource.getContained()) {
-                        if (contained.getId() != null &&
-                                id.equals(contained.getId())) {
-                            return contained.getClass().getSimpleName();
+                for (FHIRPathNode child : root.children()) {
+                    if ("contained".equals(child.name()) && child.isResourceNode()) {
+                        Resource contained = child.asResourceNode().resource();
+                        if (contained.getId() != null && id.equals(contained.getId())) {
+                            return child;
                         }
                     }
                 }
@@ -132,6 +184,38 @@ public class ResolveFunction extends FHIRPathAbstractFunction {
         return null;
     }
 
+    /**
+     * If the root of the tree is a Bundle, map the fullUrl and the relative reference ("type/id" and
+     * "type/id/_history/versionId") of each entry to the node of the entry resource
+     */
+    private Map<String, FHIRPathNode> buildBundleEntryMap(FHIRPathTree tree) {
+        Map<String, FHIRPathNode> result = new HashMap<>();
+        if (tree != null && tree.getRoot().isResourceNode() && tree.getRoot().asResourceNode().resource() instanceof Bundle) {
+            for (FHIRPathNode entryNode : tree.getRoot().children()) {
+                if (!"entry".equals(entryNode.name()) || !entryNode.isElementNode()) {
+                    continue;
+                }
+                for (FHIRPathNode child : entryNode.children()) {
+                    if ("resource".equals(child.name()) && child.isResourceNode()) {
+                        Bundle.Entry entry = entryNode.asElementNode().element().as(Bundle.Entry.class);
+                        Resource resource = child.asResourceNode().resource();
+                        if (entry.getFullUrl() != null && entry.getFullUrl().getValue() != null) {
+                            result.putIfAbsent(entry.getFullUrl().getValue(), child);
+                        }
+                        if (resource.getId() != null) {
+                            String relativeReference = resource.getClass().getSimpleName() + "/" + resource.getId();
+                            result.putIfAbsent(relativeReference, child);
+                            if (resource.getMeta() != null && resource.getMeta().getVersionId() != null) {
+                                result.putIfAbsent(relativeReference + "/_history/" + resource.getMeta().getVersionId().getValue(), child);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
     private String getReferenceReference(Reference reference) {
         if (reference.getReference() != null && reference.getReference().getValue() != null) {
             return reference.getReference().getValue();
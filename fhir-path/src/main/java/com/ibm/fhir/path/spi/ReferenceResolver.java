@@ -0,0 +1,34 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.path.spi;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * An interface used by the FHIRPath resolve() function to load the targets of literal references.
+ *
+ * <p>Contained and Bundle-internal references are resolved by the evaluator itself, so implementations
+ * are only passed references which need to be looked up elsewhere (e.g. in a persistence layer).
+ * The evaluator collects all such references in the input collection of resolve() and passes them
+ * in a single call, so implementations should fetch them in as few round-trips as possible.
+ */
+public interface ReferenceResolver {
+    /**
+     * Resolve the given literal references
+     *
+     * @param references
+     *     the distinct literal references to resolve, e.g. "Patient/123", "Patient/123/_history/2"
+     *     or an absolute URL
+     * @return
+     *     a map from reference to target resource, for the references which could be resolved;
+     *     references which could not be resolved are omitted
+     */
+    Map<String, Resource> resolve(Collection<String> references);
+}
@@ -0,0 +1,173 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.path.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static com.ibm.fhir.path.evaluator.FHIRPathEvaluator.SINGLETON_TRUE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Practitioner;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Date;
+import com.ibm.fhir.model.type.Reference;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.code.BundleType;
+import com.ibm.fhir.model.type.code.ObservationStatus;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.path.spi.ReferenceResolver;
+
+/**
+ * Tests for the resolve() function with a {@link ReferenceResolver}
+ */
+public class ReferenceResolverTest {
+    private static final Date BIRTH_DATE = Date.of("1970-01-01");
+
+    private static final Patient PATIENT = Patient.builder()
+            .id("123")
+            .birthDate(BIRTH_DATE)
+            .build();
+
+    private static final Practitioner PRACTITIONER = Practitioner.builder()
+            .id("456")
+            .build();
+
+    @Test
+    public void testBatchedResolve() throws Exception {
+        Observation observation = observation(reference("Patient/123"), reference("Practitioner/456"), reference("Patient/999"));
+        TestResolver resolver = new TestResolver(PATIENT, PRACTITIONER);
+
+        EvaluationContext evaluationContext = new EvaluationContext(observation);
+        evaluationContext.setReferenceResolver(resolver);
+
+        FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
+        Collection<FHIRPathNode> result = evaluator.evaluate(evaluationContext, "(Observation.subject | Observation.performer).resolve()");
+        assertEquals(result.size(), 3);
+
+        // all the references were passed in a single call
+        assertEquals(resolver.calls.size(), 1);
+        assertEquals(resolver.calls.get(0).size(), 3);
+
+        result = evaluator.evaluate(evaluationContext, "Observation.subject.resolve().birthDate");
+        assertEquals(result.size(), 1);
+        assertEquals(result.iterator().next().asElementNode().element(), BIRTH_DATE);
+
+        // resolved (and unresolved) references are cached by the evaluation context
+        result = evaluator.evaluate(evaluationContext, "Observation.performer.resolve()");
+        assertEquals(resolver.calls.size(), 1);
+
+        // the unresolved reference still yields a typed placeholder
+        result = evaluator.evaluate(evaluationContext, "Observation.performer.where(resolve() is Patient).count() = 1");
+        assertEquals(result, SINGLETON_TRUE);
+    }
+
+    @Test
+    public void testContainedResolve() throws Exception {
+        Observation observation = observation(reference("#p1")).toBuilder()
+                .contained(PATIENT.toBuilder().id("p1").build())
+                .build();
+        TestResolver resolver = new TestResolver();
+
+        EvaluationContext evaluationContext = new EvaluationContext(observation);
+        evaluationContext.setReferenceResolver(resolver);
+
+        Collection<FHIRPathNode> result = FHIRPathEvaluator.evaluator().evaluate(evaluationContext, "Observation.subject.resolve().birthDate");
+        assertEquals(result.size(), 1);
+        assertEquals(result.iterator().next().asElementNode().element(), BIRTH_DATE);
+        assertTrue(resolver.calls.isEmpty());
+    }
+
+    @Test
+    public void testBundleResolve() throws Exception {
+        String fullUrl = "urn:uuid:5e0a7b2c-3c6e-4d4f-9a4b-2f1d6c9b7e10";
+        Bundle bundle = Bundle.builder()
+                .type(BundleType.COLLECTION)
+                .entry(Bundle.Entry.builder()
+                    .fullUrl(Uri.of(fullUrl))
+                    .resource(PATIENT)
+                    .build())
+                .entry(Bundle.Entry.builder()
+                    .resource(observation(reference(fullUrl)))
+                    .build())
+                .entry(Bundle.Entry.builder()
+                    .resource(observation(reference("Patient/123")))
+                    .build())
+                .build();
+        TestResolver resolver = new TestResolver();
+
+        EvaluationContext evaluationContext = new EvaluationContext(bundle);
+        evaluationContext.setReferenceResolver(resolver);
+
+        Collection<FHIRPathNode> result = FHIRPathEvaluator.evaluator().evaluate(evaluationContext,
+            "Bundle.entry.resource.ofType(Observation).subject.resolve().birthDate");
+        assertEquals(result.size(), 2);
+        assertTrue(resolver.calls.isEmpty());
+    }
+
+    @Test
+    public void testNoResolver() throws Exception {
+        Observation observation = observation(reference("Patient/123"));
+        Collection<FHIRPathNode> result = FHIRPathEvaluator.evaluator().evaluate(observation, "Observation.subject.resolve() is Patient");
+        assertEquals(result, SINGLETON_TRUE);
+
+        result = FHIRPathEvaluator.evaluator().evaluate(observation, "Observation.subject.resolve().birthDate");
+        assertTrue(result.isEmpty());
+    }
+
+    private static Reference reference(String value) {
+        return Reference.builder().reference(string(value)).build();
+    }
+
+    private static Observation observation(Reference subject, Reference... performers) {
+        return Observation.builder()
+                .status(ObservationStatus.FINAL)
+                .code(CodeableConcept.builder().text(string("test")).build())
+                .subject(subject)
+                .performer(performers)
+                .build();
+    }
+
+    /**
+     * A resolver which records the references it is asked to resolve
+     */
+    private static class TestResolver implements ReferenceResolver {
+        private final Map<String, Resource> resources = new HashMap<>();
+        private final List<Collection<String>> calls = new ArrayList<>();
+
+        private TestResolver(Resource... resources) {
+            for (Resource resource : resources) {
+                this.resources.put(resource.getClass().getSimpleName() + "/" + resource.getId(), resource);
+            }
+        }
+
+        @Override
+        public Map<String, Resource> resolve(Collection<String> references) {
+            calls.add(new ArrayList<>(references));
+            Map<String, Resource> result = new HashMap<>();
+            for (String reference : references) {
+                if (resources.containsKey(reference)) {
+                    result.put(reference, resources.get(reference));
+                }
+            }
+            return result;
+        }
+    }
+}
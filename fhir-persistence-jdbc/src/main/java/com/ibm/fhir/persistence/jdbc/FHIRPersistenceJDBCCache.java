@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -10,6 +10,8 @@ import java.sql.Connection;
 
 import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.INameIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ISearchResultCache;
 
 /**
  * Manages caches separated by tenant
@@ -42,6 +44,18 @@ public interface FHIRPersistenceJDBCCache {
      */
     INameIdCache<Integer> getParameterNameCache();
 
+    /**
+     * Getter for the cache of search results
+     * @return
+     */
+    ISearchResultCache getSearchResultCache();
+
+    /**
+     * Getter for the cache of resource versions used by read and vread
+     * @return
+     */
+    IResourceCache getResourceCache();
+
     /**
      * Tell any caches that the transaction on the current thread has just committed
      */
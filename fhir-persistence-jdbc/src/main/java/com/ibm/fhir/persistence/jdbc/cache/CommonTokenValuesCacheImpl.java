@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -32,19 +32,32 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
     // The lru cache shared at the server level
     private final LRUCache<String, Integer> codeSystemsCache;
     
-    // The lru cache shared at the server level
-    private final LRUCache<CommonTokenValue, Long> tokenValuesCache;
-    
-    
+    // The map shared at the server level. It handles its own locking so we don't need to synchronize
+    private final TokenValueIdMap tokenValuesCache;
+
+    // The number of the most referenced token values to prefill
+    private final int tokenValuePrefillSize;
+
     /**
      * Public constructor
      * @param sharedExternalSystemNameCacheSize
      */
     public CommonTokenValuesCacheImpl(int codeSystemCacheSize, int tokenValueCacheSize) {
+        this(codeSystemCacheSize, tokenValueCacheSize, 0);
+    }
+
+    /**
+     * Public constructor
+     * @param codeSystemCacheSize
+     * @param tokenValueCacheSize
+     * @param tokenValuePrefillSize the number of the most referenced token values to prefill, 0 for none
+     */
+    public CommonTokenValuesCacheImpl(int codeSystemCacheSize, int tokenValueCacheSize, int tokenValuePrefillSize) {
         
         // LRU cache for quick lookup of code-systems and token-values
         codeSystemsCache = new LRUCache<>(codeSystemCacheSize);
-        tokenValuesCache = new LRUCache<>(tokenValueCacheSize);
+        tokenValuesCache = new TokenValueIdMap(tokenValueCacheSize);
+        this.tokenValuePrefillSize = Math.min(tokenValuePrefillSize, tokenValueCacheSize);
     }
 
     /**
@@ -65,8 +78,8 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
         
         LinkedHashMap<CommonTokenValue,Long> valMap = commonTokenValues.get();
         if (valMap != null) {
-            synchronized(this.tokenValuesCache) {
-                tokenValuesCache.update(valMap);
+            for (Map.Entry<CommonTokenValue,Long> entry: valMap.entrySet()) {
+                tokenValuesCache.put(entry.getKey().getCodeSystemId(), entry.getKey().getTokenValue(), entry.getValue());
             }
             
             // clear the thread-local cache
@@ -160,14 +173,12 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
         // See what we have currently in our thread-local cache
         LinkedHashMap<CommonTokenValue,Long> valMap = commonTokenValues.get();
 
-        List<CommonTokenValue> foundKeys = new ArrayList<>(tokenValues.size()); // for updating LRU
         List<ResourceTokenValueRec> needToFindValues = new ArrayList<>(tokenValues.size()); // for the ref values we haven't yet found
         for (ResourceTokenValueRec tv: tokenValues) {
             if (valMap != null) {
                 CommonTokenValue key = new CommonTokenValue(tv.getCodeSystemValueId(), tv.getTokenValue());
                 Long id = valMap.get(key);
                 if (id != null) {
-                    foundKeys.add(key);
                     tv.setCommonTokenValueId(id);
                 } else {
                     // not found, so add to the cache miss list
@@ -178,22 +189,14 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
             }
         }
 
-        // If we still have keys to find, look them up in the shared cache (which we need to lock first)
-        if (needToFindValues.size() > 0) {
-            synchronized (this.tokenValuesCache) {
-                for (ResourceTokenValueRec tv: needToFindValues) {
-                    CommonTokenValue key = new CommonTokenValue(tv.getCodeSystemValueId(), tv.getTokenValue());
-                    Long id = tokenValuesCache.get(key);
-                    if (id != null) {
-                        tv.setCommonTokenValueId(id);
-                        
-                        // Update the local cache with this value
-                        addTokenValue(key, id);
-                    } else {
-                        // cache miss so add this record to the miss list for further processing
-                        misses.add(tv);
-                    }
-                }
+        // If we still have keys to find, look them up in the shared cache
+        for (ResourceTokenValueRec tv: needToFindValues) {
+            long id = tokenValuesCache.get(tv.getCodeSystemValueId(), tv.getTokenValue());
+            if (id != TokenValueIdMap.NO_VALUE) {
+                tv.setCommonTokenValueId(id);
+            } else {
+                // cache miss so add this record to the miss list for further processing
+                misses.add(tv);
             }
         }
     }
@@ -237,15 +240,15 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
             this.codeSystemsCache.clear();
         }
 
-        synchronized (this.tokenValuesCache) {
-            this.tokenValuesCache.clear();
-        }
+        this.tokenValuesCache.clear();
     }
 
     @Override
     public void clearLocalMaps() {
         // clear the maps, but keep the maps in place because they'll be used again
-        // the next time this thread is picked from the pool
+        // the next time this thread is picked from the pool. A virtual thread runs a
+        // single task, so its maps are discarded with it. Either way the staged values
+        // never cross threads, because a transaction starts and ends on the same thread
         LinkedHashMap<String,Integer> sysMap = codeSystems.get();
 
         if (sysMap != null) {
@@ -265,4 +268,26 @@ public class CommonTokenValuesCacheImpl implements ICommonTokenValuesCache {
             codeSystemsCache.putAll(codeSystems);
         }
     }
+
+    @Override
+    public int getTokenValuePrefillSize() {
+        return tokenValuePrefillSize;
+    }
+
+    @Override
+    public void prefillTokenValues(Map<CommonTokenValue, Long> tokenValues) {
+        for (Map.Entry<CommonTokenValue, Long> entry: tokenValues.entrySet()) {
+            tokenValuesCache.put(entry.getKey().getCodeSystemId(), entry.getKey().getTokenValue(), entry.getValue());
+        }
+    }
+
+    @Override
+    public long getTokenValueHits() {
+        return tokenValuesCache.getHits();
+    }
+
+    @Override
+    public long getTokenValueMisses() {
+        return tokenValuesCache.getMisses();
+    }
 }
\ No newline at end of file
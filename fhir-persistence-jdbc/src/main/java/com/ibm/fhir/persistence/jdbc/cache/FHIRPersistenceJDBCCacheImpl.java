@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -12,6 +12,8 @@ import java.util.logging.Logger;
 import com.ibm.fhir.persistence.jdbc.FHIRPersistenceJDBCCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.INameIdCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ISearchResultCache;
 
 /**
  * Aggregates and manages the individual caches used for a tenant
@@ -25,6 +27,10 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
     
     private final ICommonTokenValuesCache resourceReferenceCache;
 
+    private final ISearchResultCache searchResultCache;
+
+    private final IResourceCache resourceCache;
+
     // flag to allow one lucky caller to get the opportunity to prefill
     private final AtomicBoolean needToPrefillFlag = new AtomicBoolean(true);
     
@@ -35,9 +41,24 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
      * @param resourceReferenceCache
      */
     public FHIRPersistenceJDBCCacheImpl(INameIdCache<Integer> resourceTypeCache, INameIdCache<Integer> parameterNameCache, ICommonTokenValuesCache resourceReferenceCache) {
+        this(resourceTypeCache, parameterNameCache, resourceReferenceCache, new SearchResultCacheImpl(0), new ResourceCacheImpl(0, 0));
+    }
+
+    /**
+     * Public constructor
+     * @param resourceTypeCache
+     * @param parameterNameCache
+     * @param resourceReferenceCache
+     * @param searchResultCache
+     * @param resourceCache
+     */
+    public FHIRPersistenceJDBCCacheImpl(INameIdCache<Integer> resourceTypeCache, INameIdCache<Integer> parameterNameCache, ICommonTokenValuesCache resourceReferenceCache,
+            ISearchResultCache searchResultCache, IResourceCache resourceCache) {
         this.resourceTypeCache = resourceTypeCache;
         this.parameterNameCache = parameterNameCache;
         this.resourceReferenceCache = resourceReferenceCache;
+        this.searchResultCache = searchResultCache;
+        this.resourceCache = resourceCache;
     }
 
     /**
@@ -58,6 +79,16 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
     public INameIdCache<Integer> getParameterNameCache() {
         return parameterNameCache;
     }
+
+    @Override
+    public ISearchResultCache getSearchResultCache() {
+        return searchResultCache;
+    }
+
+    @Override
+    public IResourceCache getResourceCache() {
+        return resourceCache;
+    }
     
     @Override
     public void transactionCommitted() {
@@ -65,6 +96,8 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
         resourceTypeCache.updateSharedMaps();
         parameterNameCache.updateSharedMaps();
         resourceReferenceCache.updateSharedMaps();
+        searchResultCache.updateSharedMaps();
+        resourceCache.updateSharedMaps();
     }
 
     @Override
@@ -73,6 +106,8 @@ public class FHIRPersistenceJDBCCacheImpl implements FHIRPersistenceJDBCCache {
         resourceTypeCache.clearLocalMaps();
         parameterNameCache.clearLocalMaps();
         resourceReferenceCache.clearLocalMaps();
+        searchResultCache.clearLocalMaps();
+        resourceCache.clearLocalMaps();
     }
 
     @Override
@@ -1,11 +1,12 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.persistence.jdbc.cache;
 
+import java.util.Collection;
 import java.util.Map;
 
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
@@ -13,6 +14,7 @@ import com.ibm.fhir.persistence.jdbc.FHIRPersistenceJDBCCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ICommonTokenValuesCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dto.CommonTokenValue;
 
 /**
  * Utilities for operating on the FHIRPersistenceJDBCCache
@@ -24,16 +26,77 @@ public class FHIRPersistenceJDBCCacheUtil {
      * @return
      */
     public static FHIRPersistenceJDBCCache create(int codeSystemCacheSize, int tokenValueCacheSize) {
-        ICommonTokenValuesCache rrc = new CommonTokenValuesCacheImpl(codeSystemCacheSize, tokenValueCacheSize);
-        return new FHIRPersistenceJDBCCacheImpl(new NameIdCache<Integer>(), new NameIdCache<Integer>(), rrc);
-        
+        return create(codeSystemCacheSize, tokenValueCacheSize, 0);
+    }
+
+    /**
+     * Factory function to create a new cache instance
+     * @param codeSystemCacheSize
+     * @param tokenValueCacheSize
+     * @param searchResultCacheSize the number of searches to cache, 0 to disable search result caching
+     * @return
+     */
+    public static FHIRPersistenceJDBCCache create(int codeSystemCacheSize, int tokenValueCacheSize, int searchResultCacheSize) {
+        return create(codeSystemCacheSize, tokenValueCacheSize, searchResultCacheSize, 0, 0);
+    }
+
+    /**
+     * Factory function to create a new cache instance
+     * @param codeSystemCacheSize
+     * @param tokenValueCacheSize
+     * @param searchResultCacheSize the number of searches to cache, 0 to disable search result caching
+     * @param resourceCacheSize the number of parsed resources to hold on-heap, 0 to disable resource caching
+     * @param resourceCacheOffHeapBytes the number of bytes of compressed resources to hold off-heap
+     * @return
+     */
+    public static FHIRPersistenceJDBCCache create(int codeSystemCacheSize, int tokenValueCacheSize, int searchResultCacheSize,
+            int resourceCacheSize, long resourceCacheOffHeapBytes) {
+        return create(codeSystemCacheSize, tokenValueCacheSize, 0, searchResultCacheSize, resourceCacheSize, resourceCacheOffHeapBytes);
     }
+
     /**
-     * Prefill the cache with constants already committed in the database
+     * Factory function to create a new cache instance
+     * @param codeSystemCacheSize
+     * @param tokenValueCacheSize
+     * @param tokenValuePrefillSize the number of the most referenced token values to prefill, 0 for none
+     * @param searchResultCacheSize the number of searches to cache, 0 to disable search result caching
+     * @param resourceCacheSize the number of parsed resources to hold on-heap, 0 to disable resource caching
+     * @param resourceCacheOffHeapBytes the number of bytes of compressed resources to hold off-heap
+     * @return
+     */
+    public static FHIRPersistenceJDBCCache create(int codeSystemCacheSize, int tokenValueCacheSize, int tokenValuePrefillSize,
+            int searchResultCacheSize, int resourceCacheSize, long resourceCacheOffHeapBytes) {
+        return create(codeSystemCacheSize, tokenValueCacheSize, tokenValuePrefillSize, searchResultCacheSize, SearchResultCacheImpl.DEFAULT_MAX_BYTES,
+                resourceCacheSize, resourceCacheOffHeapBytes);
+    }
+
+    /**
+     * Factory function to create a new cache instance
+     * @param codeSystemCacheSize
+     * @param tokenValueCacheSize
+     * @param tokenValuePrefillSize the number of the most referenced token values to prefill, 0 for none
+     * @param searchResultCacheSize the number of searches to cache, 0 to disable search result caching
+     * @param searchResultCacheMaxBytes the maximum estimated heap used by the cached searches
+     * @param resourceCacheSize the number of parsed resources to hold on-heap, 0 to disable resource caching
+     * @param resourceCacheOffHeapBytes the number of bytes of compressed resources to hold off-heap
+     * @return
+     */
+    public static FHIRPersistenceJDBCCache create(int codeSystemCacheSize, int tokenValueCacheSize, int tokenValuePrefillSize,
+            int searchResultCacheSize, long searchResultCacheMaxBytes, int resourceCacheSize, long resourceCacheOffHeapBytes) {
+        ICommonTokenValuesCache rrc = new CommonTokenValuesCacheImpl(codeSystemCacheSize, tokenValueCacheSize, tokenValuePrefillSize);
+        return new FHIRPersistenceJDBCCacheImpl(new NameIdCache<Integer>(), new NameIdCache<Integer>(), rrc,
+                new SearchResultCacheImpl(searchResultCacheSize, searchResultCacheMaxBytes), new ResourceCacheImpl(resourceCacheSize, resourceCacheOffHeapBytes));
+    }
+
+    /**
+     * Prefill the cache with constants already committed in the database. The token values
+     * are not prefilled here, see {@link #prefillTokenValues(ParameterDAO, Collection, FHIRPersistenceJDBCCache, int)}
      * @param connection
      * @param cache
+     * @return the names of the resource types in the database
      */
-    public static void prefill(ResourceDAO resourceDAO, ParameterDAO parameterDAO, FHIRPersistenceJDBCCache cache) throws FHIRPersistenceException {
+    public static Collection<String> prefill(ResourceDAO resourceDAO, ParameterDAO parameterDAO, FHIRPersistenceJDBCCache cache)
+            throws FHIRPersistenceException {
         Map<String,Integer> resourceTypes = resourceDAO.readAllResourceTypeNames();
         cache.getResourceTypeCache().prefill(resourceTypes);
 
@@ -42,5 +105,25 @@ public class FHIRPersistenceJDBCCacheUtil {
         
         Map<String,Integer> codeSystems = parameterDAO.readAllCodeSystems();
         cache.getResourceReferenceCache().prefillCodeSystems(codeSystems);
+        return resourceTypes.keySet();
+    }
+
+    /**
+     * Warm the token values cache with the values referenced by the most resources, if a
+     * prefill size is configured. This scans the token references of every resource type,
+     * so it should be run in the background rather than by a request.
+     * @param parameterDAO
+     * @param resourceTypes the resource types whose token references are counted
+     * @param cache
+     * @param timeoutSeconds the time allowed for counting the references
+     */
+    public static void prefillTokenValues(ParameterDAO parameterDAO, Collection<String> resourceTypes, FHIRPersistenceJDBCCache cache,
+            int timeoutSeconds) throws FHIRPersistenceException {
+        int tokenValuePrefillSize = cache.getResourceReferenceCache().getTokenValuePrefillSize();
+        if (tokenValuePrefillSize > 0) {
+            Map<CommonTokenValue,Long> tokenValues = parameterDAO.readMostReferencedCommonTokenValues(resourceTypes, tokenValuePrefillSize,
+                    timeoutSeconds);
+            cache.getResourceReferenceCache().prefillTokenValues(tokenValues);
+        }
     }
 }
@@ -73,7 +73,13 @@ public class FHIRPersistenceJDBCTenantCache {
             } else {
                 int externalSystemCacheSize = pg.getIntProperty("externalSystemCacheSize", 1000);
                 int externalValueCacheSize = pg.getIntProperty("externalValueCacheSize", 100000);
-                return FHIRPersistenceJDBCCacheUtil.create(externalSystemCacheSize, externalValueCacheSize);
+                int externalValueCachePrefillSize = pg.getIntProperty("externalValueCachePrefillSize", 0);
+                int searchResultCacheSize = pg.getIntProperty("searchResultCacheSize", 0);
+                long searchResultCacheMaxBytes = pg.getIntProperty("searchResultCacheMaxMB", 64) * 1024L * 1024L;
+                int resourceCacheSize = pg.getIntProperty("resourceCacheSize", 0);
+                long resourceCacheOffHeapBytes = pg.getIntProperty("resourceCacheOffHeapMB", 0) * 1024L * 1024L;
+                return FHIRPersistenceJDBCCacheUtil.create(externalSystemCacheSize, externalValueCacheSize, externalValueCachePrefillSize, searchResultCacheSize,
+                        searchResultCacheMaxBytes, resourceCacheSize, resourceCacheOffHeapBytes);
             }
         } catch (IllegalStateException ise) {
             throw ise;
@@ -0,0 +1,145 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A store of immutable byte arrays held outside of the Java heap in a ring of
+ * fixed-size direct ByteBuffer slabs. Values are appended to the current slab.
+ * When the ring wraps around, the oldest slab is reused and every value it
+ * held is dropped, so eviction is FIFO at the granularity of a slab.
+ *
+ * Slabs are only allocated when first needed, so an idle store uses no
+ * off-heap memory.
+ */
+public class OffHeapPayloadStore {
+
+    // The slabs making up the ring, allocated on demand
+    private final ByteBuffer[] slabs;
+
+    // The keys of the values stored in each slab, so they can be dropped when the slab is reused
+    private final List<List<String>> slabKeys;
+
+    // Where each value is stored
+    private final Map<String, Location> index = new HashMap<>();
+
+    private final int slabSize;
+
+    // The slab and offset where the next value is written
+    private int currentSlab = 0;
+    private int currentOffset = 0;
+
+    /**
+     * Public constructor
+     * @param capacity the total number of bytes to hold
+     * @param slabSize the size of each slab in bytes, which is also the largest value which can be stored
+     */
+    public OffHeapPayloadStore(long capacity, int slabSize) {
+        if (capacity < 1 || slabSize < 1) {
+            throw new IllegalArgumentException("Invalid capacity or slab size");
+        }
+        this.slabSize = (int) Math.min(capacity, slabSize);
+        int slabCount = (int) Math.max(1, capacity / this.slabSize);
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabKeys = new ArrayList<>(slabCount);
+        for (int i = 0; i < slabCount; i++) {
+            slabKeys.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Store the value unless the key is already present. Values larger than a slab are ignored.
+     * @param key
+     * @param value
+     */
+    public synchronized void put(String key, byte[] value) {
+        if (value.length > slabSize || index.containsKey(key)) {
+            return;
+        }
+
+        if (currentOffset + value.length > slabSize) {
+            // Move on to the next slab in the ring, dropping everything it holds
+            currentSlab = (currentSlab + 1) % slabs.length;
+            currentOffset = 0;
+            List<String> keys = slabKeys.get(currentSlab);
+            for (String k: keys) {
+                index.remove(k);
+            }
+            keys.clear();
+        }
+
+        ByteBuffer slab = slabs[currentSlab];
+        if (slab == null) {
+            slab = ByteBuffer.allocateDirect(slabSize);
+            slabs[currentSlab] = slab;
+        }
+
+        ByteBuffer target = slab.duplicate();
+        target.position(currentOffset);
+        target.put(value);
+        index.put(key, new Location(currentSlab, currentOffset, value.length));
+        slabKeys.get(currentSlab).add(key);
+        currentOffset += value.length;
+    }
+
+    /**
+     * Get a copy of the value stored for the key
+     * @param key
+     * @return the value, or null if it isn't held by this store
+     */
+    public synchronized byte[] get(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+
+        byte[] result = new byte[location.length];
+        ByteBuffer source = slabs[location.slab].duplicate();
+        source.position(location.offset);
+        source.get(result);
+        return result;
+    }
+
+    /**
+     * Drop all the values, keeping any slabs already allocated for reuse
+     */
+    public synchronized void clear() {
+        index.clear();
+        for (List<String> keys: slabKeys) {
+            keys.clear();
+        }
+        currentSlab = 0;
+        currentOffset = 0;
+    }
+
+    /**
+     * @return the number of values held by this store
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * The position of a value within the slabs
+     */
+    private static class Location {
+        private final int slab;
+        private final int offset;
+        private final int length;
+
+        private Location(int slab, int offset, int length) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceCache;
+
+/**
+ * Implementation of a two-tier cache of resource versions.
+ *
+ * Invalidation of the current version pointers is tracked using a fixed number of
+ * generation counters shared by all logical resources. Two logical resources sharing
+ * a counter only cause an unnecessary cache miss, never a stale read.
+ */
+public class ResourceCacheImpl implements IResourceCache {
+
+    // The number of generation counters, which must be a power of 2
+    private static final int GENERATION_COUNT = 4096;
+
+    // The number of current version pointers held for each resource in the on-heap tier
+    private static final int CURRENT_VERSIONS_PER_RESOURCE = 10;
+
+    // The size of each off-heap slab
+    private static final int SLAB_SIZE = 4 * 1024 * 1024;
+
+    // Generation counters bumped each time a transaction writing a new version commits
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_COUNT);
+
+    // Logical resources written by the current transaction
+    private final ThreadLocal<Set<String>> pendingInvalidations = new ThreadLocal<>();
+
+    // The lru cache of current version pointers shared at the server level
+    private final LRUCache<String, CurrentVersion> currentVersionCache;
+
+    // The lru cache of parsed resources shared at the server level
+    private final LRUCache<String, Resource> resourceCache;
+
+    // The off-heap tier of compressed payloads, null if not configured
+    private final OffHeapPayloadStore payloadStore;
+
+    private final int resourceCacheSize;
+
+    /**
+     * Public constructor
+     * @param resourceCacheSize the number of parsed resources held on-heap, 0 to disable the cache
+     * @param offHeapCapacity the number of bytes of compressed payloads held off-heap, 0 for none
+     */
+    public ResourceCacheImpl(int resourceCacheSize, long offHeapCapacity) {
+        this.resourceCacheSize = resourceCacheSize;
+        this.currentVersionCache = new LRUCache<>(resourceCacheSize * CURRENT_VERSIONS_PER_RESOURCE);
+        this.resourceCache = new LRUCache<>(resourceCacheSize);
+        this.payloadStore = resourceCacheSize > 0 && offHeapCapacity > 0 ? new OffHeapPayloadStore(offHeapCapacity, SLAB_SIZE) : null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return resourceCacheSize > 0;
+    }
+
+    @Override
+    public long getGeneration(String resourceType, String logicalId) {
+        return generations.get(slot(logicalResourceKey(resourceType, logicalId)));
+    }
+
+    @Override
+    public Integer getCurrentVersion(String resourceType, String logicalId) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        final String key = logicalResourceKey(resourceType, logicalId);
+        if (isPending(key)) {
+            // written by this thread, so the version isn't committed yet
+            return null;
+        }
+
+        CurrentVersion cv;
+        synchronized (this.currentVersionCache) {
+            cv = currentVersionCache.get(key);
+        }
+
+        if (cv == null || generations.get(slot(key)) != cv.generation) {
+            return null;
+        }
+        return cv.version;
+    }
+
+    @Override
+    public void putCurrentVersion(String resourceType, String logicalId, int version, long generation) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        final String key = logicalResourceKey(resourceType, logicalId);
+        if (!isPending(key) && generations.get(slot(key)) == generation) {
+            synchronized (this.currentVersionCache) {
+                currentVersionCache.put(key, new CurrentVersion(version, generation));
+            }
+        }
+    }
+
+    @Override
+    public Resource getResource(String resourceType, String logicalId, int version) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        synchronized (this.resourceCache) {
+            return resourceCache.get(versionKey(resourceType, logicalId, version));
+        }
+    }
+
+    @Override
+    public byte[] getPayload(String resourceType, String logicalId, int version) {
+        if (payloadStore == null) {
+            return null;
+        }
+        return payloadStore.get(versionKey(resourceType, logicalId, version));
+    }
+
+    @Override
+    public void putResource(String resourceType, String logicalId, int version, Resource resource, byte[] payload) {
+        if (!isEnabled() || isPending(logicalResourceKey(resourceType, logicalId))) {
+            // versions written by this thread may still be rolled back
+            return;
+        }
+
+        final String key = versionKey(resourceType, logicalId, version);
+        if (resource != null) {
+            synchronized (this.resourceCache) {
+                resourceCache.put(key, resource);
+            }
+        }
+
+        if (payload != null && payloadStore != null) {
+            payloadStore.put(key, payload);
+        }
+    }
+
+    @Override
+    public void invalidateCurrentVersion(String resourceType, String logicalId) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Set<String> pending = pendingInvalidations.get();
+        if (pending == null) {
+            pending = new HashSet<>();
+            pendingInvalidations.set(pending);
+        }
+        pending.add(logicalResourceKey(resourceType, logicalId));
+    }
+
+    /**
+     * Called after a transaction commit() to invalidate the current version
+     * of every logical resource written by the transaction
+     */
+    @Override
+    public void updateSharedMaps() {
+        Set<String> pending = pendingInvalidations.get();
+        if (pending != null) {
+            for (String key: pending) {
+                generations.incrementAndGet(slot(key));
+            }
+
+            // clear the thread-local cache
+            pendingInvalidations.remove();
+        }
+    }
+
+    @Override
+    public void clearLocalMaps() {
+        pendingInvalidations.remove();
+    }
+
+    @Override
+    public void reset() {
+        pendingInvalidations.remove();
+        synchronized (this.currentVersionCache) {
+            currentVersionCache.clear();
+        }
+        synchronized (this.resourceCache) {
+            resourceCache.clear();
+        }
+        if (payloadStore != null) {
+            payloadStore.clear();
+        }
+    }
+
+    /**
+     * @param key
+     * @return true if the logical resource has been written by the current transaction
+     */
+    private boolean isPending(String key) {
+        Set<String> pending = pendingInvalidations.get();
+        return pending != null && pending.contains(key);
+    }
+
+    private static String logicalResourceKey(String resourceType, String logicalId) {
+        return resourceType + "/" + logicalId;
+    }
+
+    private static String versionKey(String resourceType, String logicalId, int version) {
+        return resourceType + "/" + logicalId + "/_history/" + version;
+    }
+
+    /**
+     * Map the logical resource onto one of the generation counters
+     * @param key
+     * @return
+     */
+    private static int slot(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_COUNT - 1);
+    }
+
+    /**
+     * The current version of a logical resource and the generation at the time it was read
+     */
+    private static class CurrentVersion {
+        private final int version;
+        private final long generation;
+
+        private CurrentVersion(int version, long generation) {
+            this.version = version;
+            this.generation = generation;
+        }
+    }
+}
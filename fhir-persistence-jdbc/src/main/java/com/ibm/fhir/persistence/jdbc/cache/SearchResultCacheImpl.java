@@ -0,0 +1,269 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.ibm.fhir.persistence.jdbc.dao.api.ISearchResultCache;
+import com.ibm.fhir.persistence.jdbc.dto.CachedSearchResult;
+
+/**
+ * Implementation of a cache used to hold the outcome of searches.
+ *
+ * Dependencies are mapped onto a fixed number of generation counters, so the
+ * memory used to track invalidations is bounded no matter how many compartments
+ * are written to. Two dependencies sharing a counter only cause an unnecessary
+ * cache miss, never a stale result.
+ *
+ * The cache is bounded both by the number of searches and by an estimate of
+ * the heap used by the entries, whichever is reached first. The oldest entries
+ * are evicted first.
+ */
+public class SearchResultCacheImpl implements ISearchResultCache {
+
+    // The number of generation counters, which must be a power of 2
+    private static final int GENERATION_COUNT = 4096;
+
+    // The default bound of the estimated heap used by the entries
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    // Estimated heap used by an entry apart from its key and arrays: the map node, Entry, CachedSearchResult and list
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    // Estimated heap used by each id in the list of resource ids: the reference and the Long
+    private static final int RESOURCE_ID_BYTES = 24;
+
+    // Generation counters bumped each time a transaction invalidating the dependency commits
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_COUNT);
+
+    // Invalidations recorded by the current transaction which are applied once it commits
+    private final ThreadLocal<Set<Integer>> pendingInvalidations = new ThreadLocal<>();
+
+    // The cache shared at the server level, oldest entries first. Guarded by its own monitor, like cachedBytes
+    private final LinkedHashMap<String, Entry> searchResultCache = new LinkedHashMap<>();
+
+    // The estimated heap used by the entries of the cache
+    private long cachedBytes = 0;
+
+    private final int searchResultCacheSize;
+
+    private final long maxBytes;
+
+    /**
+     * Public constructor, bounding the heap used by the entries to {@link #DEFAULT_MAX_BYTES}
+     * @param searchResultCacheSize the maximum number of searches to hold, 0 to disable the cache
+     */
+    public SearchResultCacheImpl(int searchResultCacheSize) {
+        this(searchResultCacheSize, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Public constructor
+     * @param searchResultCacheSize the maximum number of searches to hold, 0 to disable the cache
+     * @param maxBytes the maximum estimated heap used by the entries
+     */
+    public SearchResultCacheImpl(int searchResultCacheSize, long maxBytes) {
+        this.searchResultCacheSize = searchResultCacheSize;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return searchResultCacheSize > 0;
+    }
+
+    @Override
+    public long[] getGenerations(Collection<String> dependencies) {
+        long[] result = new long[dependencies.size()];
+        int i = 0;
+        for (String dependency: dependencies) {
+            result[i++] = generations.get(slot(dependency));
+        }
+        return result;
+    }
+
+    @Override
+    public CachedSearchResult get(String key) {
+        if (!isEnabled() || hasPendingInvalidations()) {
+            // this thread has uncommitted writes which the cached results can't reflect
+            return null;
+        }
+
+        Entry entry;
+        synchronized (this.searchResultCache) {
+            entry = searchResultCache.get(key);
+        }
+
+        if (entry == null) {
+            return null;
+        } else if (!isCurrent(entry.slots, entry.generations)) {
+            synchronized (this.searchResultCache) {
+                if (searchResultCache.remove(key, entry)) {
+                    cachedBytes -= entry.bytes;
+                }
+            }
+            return null;
+        }
+        return entry.result;
+    }
+
+    @Override
+    public void put(String key, Collection<String> dependencies, long[] generations, CachedSearchResult result) {
+        if (!isEnabled() || hasPendingInvalidations()) {
+            return;
+        }
+
+        int[] slots = new int[dependencies.size()];
+        int i = 0;
+        for (String dependency: dependencies) {
+            slots[i++] = slot(dependency);
+        }
+
+        // Don't bother caching a result which is already out of date
+        if (isCurrent(slots, generations)) {
+            Entry entry = new Entry(key, slots, generations, result);
+            if (entry.bytes > maxBytes) {
+                return;
+            }
+            synchronized (this.searchResultCache) {
+                Entry old = searchResultCache.remove(key);
+                if (old != null) {
+                    cachedBytes -= old.bytes;
+                }
+                searchResultCache.put(key, entry);
+                cachedBytes += entry.bytes;
+
+                // Evict the oldest entries until both bounds are met
+                Iterator<Map.Entry<String, Entry>> it = searchResultCache.entrySet().iterator();
+                while (searchResultCache.size() > searchResultCacheSize || cachedBytes > maxBytes) {
+                    cachedBytes -= it.next().getValue().bytes;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(Collection<String> dependencies) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Set<Integer> pending = pendingInvalidations.get();
+        if (pending == null) {
+            pending = new HashSet<>();
+            pendingInvalidations.set(pending);
+        }
+        for (String dependency: dependencies) {
+            pending.add(slot(dependency));
+        }
+    }
+
+    /**
+     * Called after a transaction commit() to bump the generation of each
+     * dependency invalidated by the transaction
+     */
+    @Override
+    public void updateSharedMaps() {
+        Set<Integer> pending = pendingInvalidations.get();
+        if (pending != null) {
+            for (Integer slot: pending) {
+                generations.incrementAndGet(slot);
+            }
+
+            // clear the thread-local cache
+            pendingInvalidations.remove();
+        }
+    }
+
+    @Override
+    public void clearLocalMaps() {
+        pendingInvalidations.remove();
+    }
+
+    @Override
+    public void reset() {
+        pendingInvalidations.remove();
+        synchronized (this.searchResultCache) {
+            searchResultCache.clear();
+            cachedBytes = 0;
+        }
+        for (int i = 0; i < GENERATION_COUNT; i++) {
+            generations.incrementAndGet(i);
+        }
+    }
+
+    /**
+     * @return the estimated heap used by the entries of the cache
+     */
+    public long getCachedBytes() {
+        synchronized (this.searchResultCache) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * @return true if the current thread has invalidations which have not yet been applied
+     */
+    private boolean hasPendingInvalidations() {
+        Set<Integer> pending = pendingInvalidations.get();
+        return pending != null && !pending.isEmpty();
+    }
+
+    /**
+     * @param slots
+     * @param expected
+     * @return true if none of the generation counters have moved on from the expected values
+     */
+    private boolean isCurrent(int[] slots, long[] expected) {
+        for (int i = 0; i < slots.length; i++) {
+            if (generations.get(slots[i]) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Map the dependency onto one of the generation counters
+     * @param dependency
+     * @return
+     */
+    private static int slot(String dependency) {
+        int h = dependency.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_COUNT - 1);
+    }
+
+    /**
+     * A cached result and the generations of its dependencies at the time the search ran
+     */
+    private static class Entry {
+        private final int[] slots;
+        private final long[] generations;
+        private final CachedSearchResult result;
+
+        // The estimated heap used by the entry, including its key
+        private final long bytes;
+
+        private Entry(String key, int[] slots, long[] generations, CachedSearchResult result) {
+            this.slots = slots;
+            this.generations = generations;
+            this.result = result;
+
+            List<Long> resourceIds = result.getResourceIds();
+            this.bytes = ENTRY_OVERHEAD_BYTES + 2L * key.length() + 4L * slots.length + 8L * generations.length
+                    + (resourceIds == null ? 0 : (long) RESOURCE_ID_BYTES * resourceIds.size());
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A compact, memory-bounded map from (code_system_id, token_value) to
+ * common_token_value_id, shared by all threads.
+ *
+ * The map is split into segments, each locked independently, so concurrent
+ * lookups rarely contend. Each segment is an open-addressed table of primitive
+ * arrays using linear probing. Token values of up to 16 ASCII characters (which
+ * covers most codes) are packed exactly into two longs, so no String is retained
+ * for them. Longer values keep a reference to the String. Because the packing is
+ * exact, lookups never return the id of a different token value.
+ *
+ * When a segment is full, an entry is evicted using the CLOCK algorithm, which
+ * approximates LRU by giving recently used entries a second chance.
+ */
+public class TokenValueIdMap {
+
+    // Returned by get when the key isn't in the map
+    public static final long NO_VALUE = -1L;
+
+    // Maximum number of segments, which must be a power of 2
+    private static final int MAX_SEGMENTS = 64;
+
+    // Longest token value which can be packed into two longs
+    private static final int MAX_PACKED_LENGTH = 16;
+
+    private final Segment[] segments;
+
+    private final int segmentShift;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Public constructor
+     * @param capacity the maximum number of entries held by the map
+     */
+    public TokenValueIdMap(int capacity) {
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 32 <= capacity) {
+            segmentCount <<= 1;
+        }
+        this.segments = new Segment[segmentCount];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+
+        // Spread the capacity over the segments so that the total is exact
+        int segmentCapacity = Math.max(capacity, 0) / segmentCount;
+        int remainder = Math.max(capacity, 0) % segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(i < remainder ? segmentCapacity + 1 : segmentCapacity);
+        }
+    }
+
+    /**
+     * Get the id for the given key
+     * @param codeSystemId
+     * @param tokenValue
+     * @return the id, or {@link #NO_VALUE} if the key isn't in the map
+     */
+    public long get(int codeSystemId, String tokenValue) {
+        long result = NO_VALUE;
+        if (tokenValue != null) {
+            Key key = new Key(codeSystemId, tokenValue);
+            result = segmentFor(key.hash).get(key);
+        }
+
+        if (result == NO_VALUE) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Add the id for the given key, evicting an older entry if the map is full.
+     * Null token values are ignored because they are never stored in COMMON_TOKEN_VALUES.
+     * @param codeSystemId
+     * @param tokenValue
+     * @param id
+     */
+    public void put(int codeSystemId, String tokenValue, long id) {
+        if (tokenValue != null) {
+            Key key = new Key(codeSystemId, tokenValue);
+            segmentFor(key.hash).put(key, id);
+        }
+    }
+
+    /**
+     * Remove all entries. The hit and miss counts are not reset.
+     */
+    public void clear() {
+        for (Segment segment: segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return the number of entries in the map
+     */
+    public int size() {
+        int result = 0;
+        for (Segment segment: segments) {
+            result += segment.size();
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of lookups which found an id
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups which didn't find an id
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private Segment segmentFor(int hash) {
+        return segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    /**
+     * A key in its stored form. The String is only kept when the token value can't be packed.
+     */
+    private static final class Key {
+        private final int codeSystemId;
+        private final String tokenValue;
+        private final long packed0;
+        private final long packed1;
+        private final int hash;
+
+        private Key(int codeSystemId, String tokenValue) {
+            this.codeSystemId = codeSystemId;
+
+            long p0 = 0;
+            long p1 = 0;
+            boolean packable = tokenValue.length() <= MAX_PACKED_LENGTH;
+            for (int i = 0; packable && i < tokenValue.length(); i++) {
+                char c = tokenValue.charAt(i);
+                if (c == 0 || c > 127) {
+                    packable = false;
+                } else if (i < 8) {
+                    p0 |= ((long) c) << (i * 8);
+                } else {
+                    p1 |= ((long) c) << ((i - 8) * 8);
+                }
+            }
+
+            int h;
+            if (packable) {
+                this.tokenValue = null;
+                this.packed0 = p0;
+                this.packed1 = p1;
+                long x = p0 * 0x9E3779B97F4A7C15L + p1;
+                h = (int) (x ^ (x >>> 32));
+            } else {
+                this.tokenValue = tokenValue;
+                this.packed0 = 0;
+                this.packed1 = 0;
+                h = tokenValue.hashCode();
+            }
+            h = h * 31 + codeSystemId;
+
+            // spread the bits so both the segment (high bits) and the slot (low bits) are well distributed
+            h *= 0x9E3779B9;
+            this.hash = h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * An independently locked open-addressed table
+     */
+    private static final class Segment {
+        // codeSystemId + 1, so that 0 marks an empty slot
+        private final int[] systems;
+        private final int[] hashes;
+        private final long[] packed0;
+        private final long[] packed1;
+        private final String[] strings;
+        private final long[] ids;
+        private final boolean[] referenced;
+        private final int mask;
+        private final int maxSize;
+        private int size;
+        private int hand;
+
+        private Segment(int maxSize) {
+            int tableSize = 2;
+            while (tableSize < maxSize + maxSize / 3 + 1) {
+                tableSize <<= 1;
+            }
+            this.maxSize = maxSize;
+            this.mask = tableSize - 1;
+            this.systems = new int[tableSize];
+            this.hashes = new int[tableSize];
+            this.packed0 = new long[tableSize];
+            this.packed1 = new long[tableSize];
+            this.strings = new String[tableSize];
+            this.ids = new long[tableSize];
+            this.referenced = new boolean[tableSize];
+        }
+
+        private synchronized long get(Key key) {
+            int slot = find(key);
+            if (systems[slot] == 0) {
+                return NO_VALUE;
+            }
+            referenced[slot] = true;
+            return ids[slot];
+        }
+
+        private synchronized void put(Key key, long id) {
+            if (maxSize == 0) {
+                return;
+            }
+
+            int slot = find(key);
+            if (systems[slot] == 0) {
+                if (size >= maxSize) {
+                    evict();
+                    slot = find(key);
+                }
+                systems[slot] = key.codeSystemId + 1;
+                hashes[slot] = key.hash;
+                packed0[slot] = key.packed0;
+                packed1[slot] = key.packed1;
+                strings[slot] = key.tokenValue;
+                size++;
+            }
+            ids[slot] = id;
+            referenced[slot] = true;
+        }
+
+        private synchronized void clear() {
+            for (int i = 0; i <= mask; i++) {
+                systems[i] = 0;
+                strings[i] = null;
+                referenced[i] = false;
+            }
+            size = 0;
+            hand = 0;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Find the slot holding the key, or the empty slot where it would be inserted
+         */
+        private int find(Key key) {
+            int slot = key.hash & mask;
+            while (systems[slot] != 0) {
+                if (hashes[slot] == key.hash
+                        && systems[slot] == key.codeSystemId + 1
+                        && packed0[slot] == key.packed0
+                        && packed1[slot] == key.packed1
+                        && (key.tokenValue == null ? strings[slot] == null : key.tokenValue.equals(strings[slot]))) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Remove one entry, skipping (and clearing the flag of) recently referenced entries
+         */
+        private void evict() {
+            while (true) {
+                if (systems[hand] != 0) {
+                    if (referenced[hand]) {
+                        referenced[hand] = false;
+                    } else {
+                        remove(hand);
+                        return;
+                    }
+                }
+                hand = (hand + 1) & mask;
+            }
+        }
+
+        /**
+         * Remove the entry in the given slot, shifting back any following entries
+         * in the probe sequence so that lookups don't need tombstones
+         */
+        private void remove(int slot) {
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (systems[next] == 0) {
+                    break;
+                }
+
+                // The entry can fill the hole unless its home slot lies cyclically in (hole, next]
+                int home = hashes[next] & mask;
+                boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+                if (!stays) {
+                    systems[hole] = systems[next];
+                    hashes[hole] = hashes[next];
+                    packed0[hole] = packed0[next];
+                    packed1[hole] = packed1[next];
+                    strings[hole] = strings[next];
+                    ids[hole] = ids[next];
+                    referenced[hole] = referenced[next];
+                    hole = next;
+                }
+            }
+            systems[hole] = 0;
+            strings[hole] = null;
+            referenced[hole] = false;
+            size--;
+        }
+    }
+}
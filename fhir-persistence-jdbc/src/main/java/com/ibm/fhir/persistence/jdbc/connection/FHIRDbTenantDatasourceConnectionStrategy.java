@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,6 +7,7 @@
 package com.ibm.fhir.persistence.jdbc.connection;
 
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -102,15 +103,54 @@ public class FHIRDbTenantDatasourceConnectionStrategy extends FHIRDbConnectionSt
             log.entering(CLASSNAME, METHODNAME);
         }
 
-        // the dsId/tenantId specific datasource we need to locate
-        DataSource datasource;
-
         // Resources can be routed to different databases using the dsId currently
         // set on the context.
         String tenantId = FHIRRequestContext.get().getTenantId();
         String dsId = FHIRRequestContext.get().getDataStoreId();
         boolean readOnly = this.enableReadOnlyReplicas && FHIRRequestContext.get().isReadOnly();
 
+        try {
+            String jndiName = getJndiName(tenantId, dsId, readOnly);
+            connection = getConnection(jndiName, tenantId, dsId);
+
+            // Read-your-writes: if the client has written recently, only use the replica
+            // once it has applied that write
+            String token = FHIRRequestContext.get().getConsistencyToken();
+            if (readOnly && token != null
+                    && !ReplicaLagMonitor.getInstance().isCurrent(jndiName, flavor.getType(), connection, token)) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Replica '" + jndiName + "' is behind the consistency token; using the primary");
+                }
+                try {
+                    connection.close();
+                } catch (SQLException x) {
+                    log.log(Level.WARNING, "Failed to close replica connection", x);
+                }
+                connection = getConnection(getJndiName(tenantId, dsId, false), tenantId, dsId);
+            }
+
+            // Requests which may write give the client a token of their writes, created after the commit
+            if (this.enableReadOnlyReplicas && !readOnly && FHIRRequestContext.get().getConsistencyTokenSupplier() == null) {
+                FHIRRequestContext.get().setConsistencyTokenSupplier(() -> createConsistencyToken(jndiName));
+            }
+        } finally {
+            if (log.isLoggable(Level.FINEST)) {
+                log.exiting(CLASSNAME, METHODNAME);
+            }
+        }
+
+        return connection;
+    }
+
+    /**
+     * Get the JNDI name of the datasource for the given tenant and datastore
+     * @param tenantId
+     * @param dsId
+     * @param readOnly true for the read-only replica of the datasource
+     * @return
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private String getJndiName(String tenantId, String dsId, boolean readOnly) throws FHIRPersistenceDBConnectException {
         // The jndiName may be given explicitly in the fhir-server-config
         String jndiName;
 
@@ -119,7 +159,7 @@ public class FHIRDbTenantDatasourceConnectionStrategy extends FHIRDbConnectionSt
             PropertyGroup fhirConfig = FHIRConfiguration.getInstance().loadConfigurationForTenant(tenantId);
             jndiName = fhirConfig.getStringProperty(jndiNameProperty, null);
 
-            if (readOnly) {
+            if (jndiName != null && readOnly) {
                 jndiName = jndiName + "_ro";
             }
         } catch (Exception x) {
@@ -131,32 +171,41 @@ public class FHIRDbTenantDatasourceConnectionStrategy extends FHIRDbConnectionSt
             // Name wasn't provided, so build the name using a standard pattern: jdbc/fhir_<tenantId>_<dsId>[_ro]
             jndiName = makeTenantDatasourceJNDIName(DATASOURCE_BASE_NAME, tenantId, dsId, readOnly);
         }
+        return jndiName;
+    }
 
-
-        // Note: we don't need any synchronization around ConcurrentHashMap, but that
-        // doesn't change the fact that we may look up the datasource and put it into
-        // the map more than once. That's fine. There aren't any integrity issues, just
-        // the chance of doing more work than necessary a single time, but we avoid the
-        // need for any synchronization. We cache locally, because we've found that JNDI
-        // lookups can become a bottleneck with high concurrency
-        datasource = datasourceMap.get(jndiName);
-        if (datasource == null) {
-            // cache miss
-            try {
-                InitialContext ctxt = new InitialContext();
-
-                datasource = (DataSource) ctxt.lookup(jndiName);
-                datasourceMap.put(jndiName, datasource);
-            } catch (Throwable e) {
-                // don't emit secrets in exceptions
-                FHIRPersistenceDBConnectException fx = new FHIRPersistenceDBConnectException("Failure acquiring datasource");
-                throw FHIRDbHelper.severe(log, fx, "Failure acquiring connection for datasource: " + jndiName, e);
-            } finally {
-                if (log.isLoggable(Level.FINEST)) {
-                    log.exiting(CLASSNAME, METHODNAME);
-                }
+    /**
+     * Create the consistency token of the writes committed so far on the primary. This is called after
+     * the transaction, so the connection used isn't part of it and doesn't need to be configured.
+     * @param jndiName the JNDI name of the primary datasource
+     * @return the token, or null if it can't be created
+     */
+    private String createConsistencyToken(String jndiName) {
+        try {
+            if (flavor.getType() != DbType.POSTGRESQL) {
+                return ReplicaLagMonitor.getInstance().createToken(flavor.getType(), null);
             }
+            try (Connection connection = getDatasource(jndiName).getConnection()) {
+                return ReplicaLagMonitor.getInstance().createToken(flavor.getType(), connection);
+            }
+        } catch (Exception x) {
+            // Without a token, the next reads of the client may not see its writes, but they still work
+            log.log(Level.WARNING, "Failed to create the consistency token for datasource: " + jndiName, x);
+            return null;
         }
+    }
+
+    /**
+     * Get a connection from the datasource with the given JNDI name
+     * @param jndiName
+     * @param tenantId
+     * @param dsId
+     * @return
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private Connection getConnection(String jndiName, String tenantId, String dsId) throws FHIRPersistenceDBConnectException {
+        // the dsId/tenantId specific datasource we need to locate
+        DataSource datasource = getDatasource(jndiName);
 
         long start = System.nanoTime();
         if (log.isLoggable(Level.FINE)) {
@@ -165,24 +214,49 @@ public class FHIRDbTenantDatasourceConnectionStrategy extends FHIRDbConnectionSt
 
         // Now use the dsId/tenantId specific JEE datasource to get a connection
         try {
-            connection = getConnection(datasource, tenantId, dsId);
+            Connection connection = getConnection(datasource, tenantId, dsId);
 
             if (log.isLoggable(Level.FINE)) {
                 long deltams = (System.nanoTime() - start) / NANOMS;
                 log.fine("Got the connection for [" + tenantId + "/" + dsId + "]. Took " + deltams + " ms");
             }
+            return connection;
         } catch (Throwable e) {
             // Don't emit secrets in case they are returned to a client
             FHIRPersistenceDBConnectException fx =
                     new FHIRPersistenceDBConnectException("Failure acquiring connection for datasource");
             throw FHIRDbHelper.severe(log, fx, "Failure acquiring connection for datasource: " + jndiName, e);
-        } finally {
-            if (log.isLoggable(Level.FINEST)) {
-                log.exiting(CLASSNAME, METHODNAME);
-            }
         }
+    }
 
-        return connection;
+    /**
+     * Get the datasource with the given JNDI name
+     * @param jndiName
+     * @return
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private DataSource getDatasource(String jndiName) throws FHIRPersistenceDBConnectException {
+        // Note: we don't need any synchronization around ConcurrentHashMap, but that
+        // doesn't change the fact that we may look up the datasource and put it into
+        // the map more than once. That's fine. There aren't any integrity issues, just
+        // the chance of doing more work than necessary a single time, but we avoid the
+        // need for any synchronization. We cache locally, because we've found that JNDI
+        // lookups can become a bottleneck with high concurrency
+        DataSource datasource = datasourceMap.get(jndiName);
+        if (datasource == null) {
+            // cache miss
+            try {
+                InitialContext ctxt = new InitialContext();
+
+                datasource = (DataSource) ctxt.lookup(jndiName);
+                datasourceMap.put(jndiName, datasource);
+            } catch (Throwable e) {
+                // don't emit secrets in exceptions
+                FHIRPersistenceDBConnectException fx = new FHIRPersistenceDBConnectException("Failure acquiring datasource");
+                throw FHIRDbHelper.severe(log, fx, "Failure acquiring connection for datasource: " + jndiName, e);
+            }
+        }
+        return datasource;
     }
 
     @Override
@@ -0,0 +1,266 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.connection;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.ibm.fhir.config.metrics.RequestMetrics;
+import com.ibm.fhir.database.utils.model.DbType;
+
+/**
+ * Creates the consistency tokens returned to clients after their writes, and checks whether a read-only
+ * replica has applied the write identified by a token, so that the next reads of the client are only
+ * served by a replica which can see its own writes.
+ *
+ * <p>With PostgreSQL, the token is the write-ahead log (WAL) position of the primary, read with
+ * {@code pg_current_wal_lsn()} after the commit, so it is at or after the commit record of the write.
+ * A standby can serve the request once its {@code pg_last_wal_replay_lsn()} has reached the token. No
+ * clocks are involved, so this doesn't depend on the clocks of the servers being in step. A replica is
+ * probed at most once per probe interval; until the next probe, the last replay position is used.
+ *
+ * <p>Other databases have no portable equivalent, so their token is the time of the write on the FHIR
+ * server, and a replica is assumed to have applied the write once the configured maximum lag has passed.
+ *
+ * <p>The lag of each PostgreSQL replica, in bytes of WAL behind the newest primary position known to
+ * this server, is measured with each probe. It is available from {@link #getReplicaLagBytes()} and is
+ * published with {@link RequestMetrics#publishReplicaLag(String, long)}.
+ */
+public class ReplicaLagMonitor {
+    private static final Logger log = Logger.getLogger(ReplicaLagMonitor.class.getName());
+
+    // Default minimum time between two probes of the same replica
+    public static final long DEFAULT_PROBE_INTERVAL_MS = 1000;
+
+    // Default lag assumed for replicas which can't be probed
+    public static final long DEFAULT_MAX_LAG_MS = 5000;
+
+    // The current WAL position of the primary
+    private static final String POSTGRES_PRIMARY_LSN_SQL = "SELECT pg_current_wal_lsn()";
+
+    // The WAL position replayed by a standby, which is null when the database isn't a standby
+    private static final String POSTGRES_REPLAY_LSN_SQL = "SELECT pg_last_wal_replay_lsn()";
+
+    // A WAL position, as two hexadecimal numbers (the high and low 32 bits)
+    private static final Pattern LSN = Pattern.compile("[0-9A-Fa-f]{1,8}/[0-9A-Fa-f]{1,8}");
+
+    // The replay position of a database which isn't a standby, so has everything
+    private static final long NOT_IN_RECOVERY = Long.MAX_VALUE;
+
+    private static final ReplicaLagMonitor INSTANCE = new ReplicaLagMonitor(DEFAULT_PROBE_INTERVAL_MS, DEFAULT_MAX_LAG_MS);
+
+    private final long probeIntervalMs;
+    private volatile long maxLagMs;
+
+    // The newest WAL position of the primary seen in a token, or -1 if none yet
+    private final AtomicLong newestPrimaryLsn = new AtomicLong(-1);
+
+    // The last measurement for each replica, keyed by datasource name
+    private final Map<String, ReplicaStatus> statusMap = new ConcurrentHashMap<>();
+
+    /**
+     * The WAL position replayed by a replica at a point in time
+     */
+    private static class ReplicaStatus {
+        // FHIR server time of the probe
+        private final long probeTime;
+
+        // the replayed WAL position, or -1 if it couldn't be read
+        private final long replayLsn;
+
+        // the bytes of WAL behind the newest known primary position, or -1 if not known
+        private final long lagBytes;
+
+        ReplicaStatus(long probeTime, long replayLsn, long lagBytes) {
+            this.probeTime = probeTime;
+            this.replayLsn = replayLsn;
+            this.lagBytes = lagBytes;
+        }
+    }
+
+    /**
+     * Public constructor
+     * @param probeIntervalMs the minimum time between two probes of the same replica
+     * @param maxLagMs the lag assumed for replicas which can't be probed
+     */
+    public ReplicaLagMonitor(long probeIntervalMs, long maxLagMs) {
+        this.probeIntervalMs = probeIntervalMs;
+        this.maxLagMs = maxLagMs;
+    }
+
+    /**
+     * @return the monitor shared by all the connection strategies of this server
+     */
+    public static ReplicaLagMonitor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the lag assumed for replicas which can't be probed
+     * @param maxLagMs
+     */
+    public void setMaxLagMillis(long maxLagMs) {
+        this.maxLagMs = maxLagMs;
+    }
+
+    /**
+     * Create the consistency token of the writes committed so far. Must be called after the commit.
+     *
+     * @param type the type of the primary database
+     * @param primary a connection to the primary, outside of the transaction of the writes, or null
+     *     if the type isn't PostgreSQL
+     * @return the WAL position of a PostgreSQL primary, or else the current time in milliseconds
+     * @throws SQLException if the WAL position can't be read
+     */
+    public String createToken(DbType type, Connection primary) throws SQLException {
+        if (type != DbType.POSTGRESQL) {
+            return Long.toString(System.currentTimeMillis());
+        }
+        try (Statement s = primary.createStatement(); ResultSet rs = s.executeQuery(POSTGRES_PRIMARY_LSN_SQL)) {
+            if (!rs.next() || rs.getString(1) == null) {
+                throw new SQLException("No WAL position returned by the primary");
+            }
+            String token = rs.getString(1);
+            newestPrimaryLsn.accumulateAndGet(parseLsn(token), Math::max);
+            return token;
+        }
+    }
+
+    /**
+     * Check if the replica has applied the write identified by the consistency token.
+     *
+     * @param replicaName the name of the replica datasource, used to key the measurements
+     * @param type the type of the replica database
+     * @param replica a connection to the replica, used if it needs to be probed
+     * @param token the consistency token of the client's last write, from {@link #createToken(DbType, Connection)}
+     * @return true if the replica can serve the request
+     */
+    public boolean isCurrent(String replicaName, DbType type, Connection replica, String token) {
+        final long now = System.currentTimeMillis();
+
+        if (!isValidToken(token)) {
+            log.fine("Ignoring invalid consistency token");
+            return true;
+        }
+        if (!isLsn(token)) {
+            // The time of the write, so just wait long enough
+            return now - Long.parseLong(token) >= maxLagMs;
+        }
+        if (type != DbType.POSTGRESQL) {
+            // A WAL position can't be compared with anything on this replica
+            return false;
+        }
+
+        final long tokenLsn = parseLsn(token);
+        newestPrimaryLsn.accumulateAndGet(tokenLsn, Math::max);
+
+        ReplicaStatus status = statusMap.get(replicaName);
+        if (status == null || status.replayLsn < tokenLsn && now - status.probeTime >= probeIntervalMs) {
+            // never measured, or behind and old enough to be worth measuring again
+            status = probe(replicaName, replica, now);
+        }
+
+        // A replica whose position is unknown isn't used, as there is no way to tell it has the write
+        return status.replayLsn >= tokenLsn;
+    }
+
+    /**
+     * Read the WAL position replayed by the given replica, and remember and publish its lag
+     */
+    private ReplicaStatus probe(String replicaName, Connection replica, long now) {
+        long replayLsn = -1;
+        try (Statement s = replica.createStatement(); ResultSet rs = s.executeQuery(POSTGRES_REPLAY_LSN_SQL)) {
+            if (rs.next()) {
+                String lsn = rs.getString(1);
+                replayLsn = lsn != null ? parseLsn(lsn) : NOT_IN_RECOVERY;
+            }
+        } catch (SQLException | IllegalArgumentException x) {
+            // Not fatal; the primary is used until the replica can be probed
+            log.log(Level.WARNING, "Failed to read the WAL position of replica '" + replicaName + "'", x);
+        }
+
+        long lagBytes = -1;
+        long primaryLsn = newestPrimaryLsn.get();
+        if (replayLsn == NOT_IN_RECOVERY) {
+            lagBytes = 0;
+        } else if (replayLsn >= 0 && primaryLsn >= 0) {
+            lagBytes = Math.max(0, primaryLsn - replayLsn);
+        }
+        if (lagBytes >= 0) {
+            RequestMetrics.publishReplicaLag(replicaName, lagBytes);
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Replica '" + replicaName + "' lag: " + lagBytes + " bytes");
+        }
+
+        ReplicaStatus result = new ReplicaStatus(now, replayLsn, lagBytes);
+        statusMap.put(replicaName, result);
+        return result;
+    }
+
+    /**
+     * @return the last measured lag in bytes of WAL of each replica which has been probed, keyed by
+     *     datasource name, with -1 for replicas whose lag couldn't be measured
+     */
+    public Map<String, Long> getReplicaLagBytes() {
+        Map<String, Long> result = new HashMap<>();
+        for (Map.Entry<String, ReplicaStatus> entry : statusMap.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().lagBytes);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return true if the consistency token is a WAL position rather than a time
+     */
+    public static boolean isLsn(String token) {
+        return token.indexOf('/') >= 0;
+    }
+
+    /**
+     * Check the syntax of a consistency token received from a client
+     * @param token
+     * @return true if the token is a time in milliseconds or a WAL position
+     */
+    public static boolean isValidToken(String token) {
+        try {
+            if (isLsn(token)) {
+                parseLsn(token);
+            } else {
+                Long.parseLong(token);
+            }
+            return true;
+        } catch (IllegalArgumentException x) {
+            return false;
+        }
+    }
+
+    /**
+     * Parse a PostgreSQL WAL position, written as two hexadecimal numbers separated by a slash
+     * (the high and low 32 bits)
+     * @param lsn
+     * @return the position as a number
+     * @throws IllegalArgumentException if the position is invalid
+     */
+    public static long parseLsn(String lsn) {
+        if (!LSN.matcher(lsn).matches()) {
+            throw new IllegalArgumentException("Invalid WAL position: " + lsn);
+        }
+        int slash = lsn.indexOf('/');
+        return Long.parseLong(lsn.substring(0, slash), 16) << 32 | Long.parseLong(lsn.substring(slash + 1), 16);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ibm.fhir.config.metrics.RequestPhase;
+import com.ibm.fhir.config.metrics.RequestTimings;
+import com.ibm.fhir.persistence.jdbc.stats.StatementStatistics;
+import com.ibm.fhir.persistence.jdbc.stats.StatementStatisticsRegistry;
+
+/**
+ * Wraps a connection so that the time spent executing its statements is added to the SQL phase
+ * of the current request matching the kind of each statement (SELECT, INSERT, UPDATE, DELETE, CALL
+ * or other), and recorded in the {@link StatementStatisticsRegistry} when it is enabled, together
+ * with the rows read from the result sets. Only the execution is timed, not fetching the rows.
+ *
+ * <p>The wrapper goes through reflection for every call, so it is only used for requests which are
+ * timed (see {@link RequestTimings#isEnabled()}) or when the registry is enabled.
+ */
+public class TimedConnection {
+
+    private TimedConnection() {
+        // No operation
+    }
+
+    /**
+     * @return true if connections need to be wrapped for the current request
+     */
+    public static boolean isNeeded() {
+        return RequestTimings.isEnabled() || StatementStatisticsRegistry.getInstance().isEnabled();
+    }
+
+    /**
+     * Wrap the connection
+     * @param connection the connection to wrap
+     * @return a connection which times its statements
+     */
+    public static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            new ConnectionHandler(connection));
+    }
+
+    /**
+     * Invoke the method on the target, unwrapping the exceptions it throws
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * The identity methods of a proxy must not be delegated, because the target doesn't know about its proxy
+     * @return true if the method is equals or hashCode
+     */
+    private static boolean isIdentityMethod(Method method) {
+        return ("equals".equals(method.getName()) && method.getParameterCount() == 1)
+                || ("hashCode".equals(method.getName()) && method.getParameterCount() == 0);
+    }
+
+    private static Object invokeIdentityMethod(Object proxy, Method method, Object[] args) {
+        if ("equals".equals(method.getName())) {
+            return proxy == args[0];
+        }
+        return System.identityHashCode(proxy);
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        private ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isIdentityMethod(method)) {
+                return invokeIdentityMethod(proxy, method, args);
+            }
+            Object result = TimedConnection.invoke(connection, method, args);
+            if (result instanceof Statement && method.getReturnType().isInterface()) {
+                // prepareStatement and prepareCall know their SQL up front, createStatement gets it with each execute
+                String sql = null;
+                if (args != null && args.length > 0 && args[0] instanceof String) {
+                    sql = (String) args[0];
+                }
+                Class<?> statementType = method.getReturnType();
+                result = Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { statementType },
+                    new StatementHandler(connection, (Statement) result, sql));
+            }
+            return result;
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+        private final StatementStatisticsRegistry registry = StatementStatisticsRegistry.getInstance();
+        private final Connection connection;
+        private final Statement statement;
+        private final String sql;
+        private final RequestPhase phase;
+        private final StatementStatistics stats;
+
+        // The last bind call of each parameter, only kept if the plans of slow statements are sampled
+        private final Map<Integer, Object[]> binds;
+
+        private StatementHandler(Connection connection, Statement statement, String sql) {
+            this.connection = connection;
+            this.statement = statement;
+            this.sql = sql;
+            this.phase = sql != null ? RequestPhase.ofSql(sql) : null;
+            this.stats = sql != null ? registry.getStatistics(sql) : null;
+            this.binds = stats != null && registry.isExplainEnabled() && phase == RequestPhase.SQL_SELECT
+                    && statement instanceof PreparedStatement ? new HashMap<>() : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isIdentityMethod(method)) {
+                return invokeIdentityMethod(proxy, method, args);
+            }
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                if (binds != null) {
+                    if (name.startsWith("set") && args != null && args.length > 1 && args[0] instanceof Integer) {
+                        binds.put((Integer) args[0], new Object[] { method, args });
+                    } else if ("clearParameters".equals(name)) {
+                        binds.clear();
+                    }
+                }
+                Object result = TimedConnection.invoke(statement, method, args);
+                if (stats != null && result instanceof ResultSet && "getResultSet".equals(name)) {
+                    result = countRows((ResultSet) result, stats);
+                }
+                return result;
+            }
+
+            String executeSql = sql;
+            RequestPhase executePhase = phase;
+            StatementStatistics executeStats = stats;
+            Map<Integer, Object[]> executeBinds = binds;
+            if (args != null && args.length > 0 && args[0] instanceof String) {
+                executeSql = (String) args[0];
+                executeBinds = null;
+                executePhase = RequestPhase.ofSql(executeSql);
+                executeStats = registry.getStatistics(executeSql);
+            } else if (executePhase == null) {
+                // a batch of a plain statement
+                executePhase = RequestPhase.SQL_OTHER;
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = TimedConnection.invoke(statement, method, args);
+                failed = false;
+                if (executeStats != null && result instanceof ResultSet) {
+                    result = countRows((ResultSet) result, executeStats);
+                }
+                return result;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                RequestTimings.record(executePhase, start);
+                if (executeStats != null) {
+                    registry.record(executeStats, elapsed, failed, connection, executeSql,
+                        executeBinds != null ? executeBinds.values() : null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wrap the result set to count the rows read from it
+     */
+    private static ResultSet countRows(ResultSet resultSet, StatementStatistics stats) {
+        return (ResultSet) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+            (proxy, method, args) -> {
+                if (isIdentityMethod(method)) {
+                    return invokeIdentityMethod(proxy, method, args);
+                }
+                Object result = invoke(resultSet, method, args);
+                if (Boolean.TRUE.equals(result) && "next".equals(method.getName())) {
+                    stats.addRow();
+                }
+                return result;
+            });
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -21,7 +21,8 @@ import com.ibm.fhir.persistence.jdbc.dto.CommonTokenValue;
  * The code-systems cache can be pre-filled because it is reasonable to
  * expect that it can be sized to accommodate every value. There are
  * likely to be too many unique token-values to cache, so these need
- * to be retrieved on-demand and managed as LRU.
+ * to be retrieved on-demand and managed as LRU. The most referenced
+ * token-values can optionally be prefilled.
  */
 public interface ICommonTokenValuesCache {
 
@@ -90,4 +91,28 @@ public interface ICommonTokenValuesCache {
      * @param codeSystems
      */
     void prefillCodeSystems(Map<String, Integer> codeSystems);
+
+    /**
+     * @return the number of the most referenced token values to prefill, 0 if
+     * the token values cache should not be prefilled
+     */
+    int getTokenValuePrefillSize();
+
+    /**
+     * Add the contents of the given tokenValues map to the shared cache. It is assumed
+     * that all of these ids are already committed in the database, not newly inserted
+     * as part of the current transaction.
+     * @param tokenValues
+     */
+    void prefillTokenValues(Map<CommonTokenValue, Long> tokenValues);
+
+    /**
+     * @return the number of token value lookups found in the shared cache
+     */
+    long getTokenValueHits();
+
+    /**
+     * @return the number of token value lookups not found in the shared cache
+     */
+    long getTokenValueMisses();
 }
@@ -0,0 +1,108 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.api;
+
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * An interface for a cache of resource versions. Because a resource version never
+ * changes once it has been committed, versions can be cached without invalidation.
+ * The only mutable state is the pointer from a logical resource to its current
+ * version, which is invalidated when a transaction writing a new version commits.
+ *
+ * Versions are held in two tiers. A small on-heap tier holds parsed resources, and
+ * a larger off-heap tier holds the compressed payloads which need to be parsed again
+ * on a hit.
+ */
+public interface IResourceCache {
+
+    /**
+     * @return true if the cache is configured to hold any entries
+     */
+    boolean isEnabled();
+
+    /**
+     * Get the current generation of the given logical resource. The generation must
+     * be obtained before reading the current version from the database so that
+     * {@link #putCurrentVersion(String, String, int, long)} can tell if a newer version
+     * was committed in the meantime.
+     * @param resourceType
+     * @param logicalId
+     * @return
+     */
+    long getGeneration(String resourceType, String logicalId);
+
+    /**
+     * Look up the current version of the given logical resource
+     * @param resourceType
+     * @param logicalId
+     * @return the version, or null if it isn't known
+     */
+    Integer getCurrentVersion(String resourceType, String logicalId);
+
+    /**
+     * Record the current version of the given logical resource, unless the current
+     * version was invalidated after the generation was obtained
+     * @param resourceType
+     * @param logicalId
+     * @param version
+     * @param generation
+     */
+    void putCurrentVersion(String resourceType, String logicalId, int version, long generation);
+
+    /**
+     * Get the parsed resource from the on-heap tier
+     * @param resourceType
+     * @param logicalId
+     * @param version
+     * @return the resource, or null if it isn't held in the on-heap tier
+     */
+    Resource getResource(String resourceType, String logicalId, int version);
+
+    /**
+     * Get the compressed payload of the resource from the off-heap tier
+     * @param resourceType
+     * @param logicalId
+     * @param version
+     * @return the payload, or null if it isn't held in the off-heap tier
+     */
+    byte[] getPayload(String resourceType, String logicalId, int version);
+
+    /**
+     * Add a committed resource version to the cache
+     * @param resourceType
+     * @param logicalId
+     * @param version
+     * @param resource the parsed resource for the on-heap tier, or null
+     * @param payload the compressed payload for the off-heap tier, or null
+     */
+    void putResource(String resourceType, String logicalId, int version, Resource resource, byte[] payload);
+
+    /**
+     * Stage the invalidation of the current version of the given logical resource in the
+     * current thread. Until the invalidation is applied by {@link #updateSharedMaps()}, the
+     * current version is not returned to the current thread.
+     * @param resourceType
+     * @param logicalId
+     */
+    void invalidateCurrentVersion(String resourceType, String logicalId);
+
+    /**
+     * Apply the invalidations staged by the current thread to the shared cache
+     */
+    void updateSharedMaps();
+
+    /**
+     * Throw away the invalidations staged by the current thread (probably because a transaction was rolled back)
+     */
+    void clearLocalMaps();
+
+    /**
+     * Clear the thread-local and shared caches (for test purposes)
+     */
+    void reset();
+}
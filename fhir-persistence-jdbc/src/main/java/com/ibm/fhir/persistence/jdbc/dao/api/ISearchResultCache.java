@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.api;
+
+import java.util.Collection;
+
+import com.ibm.fhir.persistence.jdbc.dto.CachedSearchResult;
+
+/**
+ * An interface for a cache of search results, keyed by the generated search SQL
+ * and its bind variables. Each entry depends on a set of named dependencies
+ * (for example a resource type, or a resource type within a given compartment).
+ * Writes invalidate dependencies, which are staged in the current thread and
+ * only applied to the shared cache when the transaction commits.
+ */
+public interface ISearchResultCache {
+
+    /**
+     * @return true if the cache is configured to hold any entries
+     */
+    boolean isEnabled();
+
+    /**
+     * Get the current generation of each of the given dependencies. The generations must
+     * be obtained before running the queries whose results are passed to
+     * {@link #put(String, Collection, long[], CachedSearchResult)}
+     * @param dependencies
+     * @return
+     */
+    long[] getGenerations(Collection<String> dependencies);
+
+    /**
+     * Get the cached result for the given key
+     * @param key
+     * @return the result, or null if there is no entry or one of its dependencies has been invalidated
+     */
+    CachedSearchResult get(String key);
+
+    /**
+     * Add the result to the cache unless any of its dependencies has been invalidated since
+     * the generations were obtained
+     * @param key
+     * @param dependencies
+     * @param generations
+     * @param result
+     */
+    void put(String key, Collection<String> dependencies, long[] generations, CachedSearchResult result);
+
+    /**
+     * Stage the invalidation of the given dependencies in the current thread. Until the
+     * invalidation is applied by {@link #updateSharedMaps()}, the cache is bypassed for
+     * the current thread so that it sees its own uncommitted writes.
+     * @param dependencies
+     */
+    void invalidate(Collection<String> dependencies);
+
+    /**
+     * Apply the invalidations staged by the current thread to the shared cache
+     */
+    void updateSharedMaps();
+
+    /**
+     * Throw away the invalidations staged by the current thread (probably because a transaction was rolled back)
+     */
+    void clearLocalMaps();
+
+    /**
+     * Clear the thread-local and shared caches (for test purposes)
+     */
+    void reset();
+}
@@ -1,14 +1,17 @@
 /*
- * (C) Copyright IBM Corp. 2017, 2020
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.persistence.jdbc.dao.api;
 
+import java.util.Collection;
 import java.util.Map;
 
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.dto.CommonTokenValue;
+import com.ibm.fhir.persistence.jdbc.dto.ParameterStatistics;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 
@@ -33,6 +36,33 @@ public interface ParameterDAO extends FHIRDbDAO {
      * @throws FHIRPersistenceDataAccessException
      */
     Map<String,Integer> readAllCodeSystems() throws FHIRPersistenceDBConnectException, FHIRPersistenceDataAccessException;
+
+    /**
+     * Reads lightweight statistics of the values of a search parameter from a bounded sample of the rows of
+     * its parameter table, for estimating how selective a search on the parameter is
+     * @param tableName the parameter table, e.g. Patient_STR_VALUES
+     * @param valueColumn the column holding the parameter values, e.g. STR_VALUE
+     * @param parameterNameId the id of the search parameter name
+     * @param sampleSize the maximum number of rows read
+     * @return the statistics of the sample
+     * @throws FHIRPersistenceDBConnectException
+     * @throws FHIRPersistenceDataAccessException
+     */
+    ParameterStatistics readParameterStatistics(String tableName, String valueColumn, int parameterNameId, int sampleSize)
+            throws FHIRPersistenceDBConnectException, FHIRPersistenceDataAccessException;
+
+    /**
+     * Reads the rows in the Common_Token_Values table referenced by the most resources
+     * of the given resource types, and returns the data as a Map
+     * @param resourceTypes the resource types whose token references are counted
+     * @param limit the maximum number of rows to return
+     * @param timeoutSeconds the time allowed for counting the references; the counts read by then are used
+     * @return Map<CommonTokenValue, Long> - A map containing key=(code-system-id, token-value), value=common-token-value-id
+     * @throws FHIRPersistenceDBConnectException
+     * @throws FHIRPersistenceDataAccessException
+     */
+    Map<CommonTokenValue,Long> readMostReferencedCommonTokenValues(Collection<String> resourceTypes, int limit, int timeoutSeconds)
+            throws FHIRPersistenceDBConnectException, FHIRPersistenceDataAccessException;
     
     /**
      * Reads the id associated with the name of the passed Parameter from the Parameter_Names table. If the id for the passed name is not present
@@ -0,0 +1,30 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.api;
+
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
+import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+
+/**
+ * An open query returning Resource DTOs, which creates each DTO only when asked for the next row.
+ * The cursor holds a statement open on the connection of the DAO, so it must be closed before
+ * the connection is.
+ */
+public interface ResourceCursor extends AutoCloseable {
+
+    /**
+     * @return the DTO for the next row of the query, or null if there are no more rows
+     * @throws FHIRPersistenceDataAccessException
+     */
+    Resource next() throws FHIRPersistenceDataAccessException;
+
+    /**
+     * Close the result set and statement of the query
+     */
+    @Override
+    void close();
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017, 2020
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,6 +7,7 @@
 package com.ibm.fhir.persistence.jdbc.dao.api;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -14,6 +15,7 @@ import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceVersionIdMismatchException;
 import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
+import com.ibm.fhir.persistence.jdbc.dto.LocalReference;
 import com.ibm.fhir.persistence.jdbc.dto.Resource;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
@@ -85,6 +87,16 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     List<Resource> search(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 
+    /**
+     * Executes the search contained in the passed SqlQueryData, returning a cursor which reads the rows of the
+     * result set one at a time rather than all at once.
+     * @param queryData - Contains a search string and (optionally) bind variables.
+     * @return ResourceCursor An open cursor over the FHIR Resources satisfying the passed search, which the caller must close.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    ResourceCursor searchCursor(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
     /**
      * Executes the search contained in the passed SqlQueryData, using it's encapsulated search string and bind variables.
      * @param queryData - Contains a search string and (optionally) bind variables.
@@ -196,4 +208,83 @@ public interface ResourceDAO extends FHIRDbDAO {
      */
     Resource insert(Resource resource, List<ExtractedParameterValue> parameters, ParameterDAO parameterDao)
             throws FHIRPersistenceException;
+
+    /**
+     * Reads the current version id of each of the passed logical ids of the given resource type, using one query per
+     * batch of logical ids rather than one query per resource.
+     * @param resourceType - The name of a FHIR Resource type
+     * @param logicalIds - The logical ids to look up
+     * @return Map<String, Integer> - The current version id keyed by logical id. Logical ids which don't exist are not included.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    Map<String, Integer> readCurrentVersionIds(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
+    /**
+     * Reads the current version of each of the passed logical ids of the given resource type, using one query per
+     * batch of logical ids. Deleted resources are not returned.
+     * @param resourceType - The name of a FHIR Resource type
+     * @param logicalIds - The logical ids to read
+     * @return List<Resource> - The resources found, in no particular order
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<Resource> searchByLogicalIds(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
+    /**
+     * Reads the versions targeted by the passed versioned references to resources of the given resource type, using one
+     * query per batch of references. Versions of resources whose current version is deleted are not returned.
+     * @param resourceType - The name of a FHIR Resource type
+     * @param references - The references, each with a target logical id and version id
+     * @return List<Resource> - The resource versions found, in no particular order
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<Resource> searchByLogicalIdVersions(String resourceType, Collection<LocalReference> references)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
+    /**
+     * Reads the references of the given reference search parameter held by the passed resources, using one query per
+     * batch of logical ids.
+     * @param resourceType - The name of the FHIR Resource type holding the references
+     * @param parameterNameId - The id of the reference search parameter
+     * @param targetTypeCodeSystemId - The code system id representing the resource type referenced
+     * @param logicalIds - The logical ids of the resources holding the references
+     * @return List<LocalReference> - The references found
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<LocalReference> readReferences(String resourceType, int parameterNameId, int targetTypeCodeSystemId, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
+    /**
+     * Reads the references of the given reference search parameter to the current version of the passed resources,
+     * held by resources which aren't deleted, using one query per batch of logical ids. Versioned references are only
+     * returned when they target the current version.
+     * @param resourceType - The name of the FHIR Resource type holding the references
+     * @param parameterNameId - The id of the reference search parameter
+     * @param targetType - The name of the FHIR Resource type referenced
+     * @param targetTypeCodeSystemId - The code system id representing the resource type referenced
+     * @param targetLogicalIds - The logical ids of the referenced resources
+     * @param maxPerTarget - The maximum number of references returned for each referenced resource
+     * @param maxResults - The maximum number of references returned
+     * @return List<LocalReference> - The references found, each holding resource returned at most once per target
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    List<LocalReference> readReverseReferences(String resourceType, int parameterNameId, String targetType, int targetTypeCodeSystemId,
+            Collection<String> targetLogicalIds, int maxPerTarget, int maxResults)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
+
+    /**
+     * Resets the reindex timestamp of the passed logical resources to its default value, so that the resources
+     * are picked up by the next reindex pass. Used when resources are stored without extracting their search parameters.
+     * @param logicalResourceIds - The logical resource ids to reset
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    void resetReindexTstamp(Collection<Long> logicalResourceIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException;
 }
\ No newline at end of file
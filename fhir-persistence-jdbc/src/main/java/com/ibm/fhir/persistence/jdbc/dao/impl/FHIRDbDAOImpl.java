@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017, 2020
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -25,6 +25,7 @@ import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.jdbc.JDBCConstants;
 import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavor;
 import com.ibm.fhir.persistence.jdbc.dao.api.FHIRDbDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceCursor;
 import com.ibm.fhir.persistence.jdbc.dto.Resource;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBCleanupException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
@@ -45,6 +46,10 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
     private static final String CLASSNAME = FHIRDbDAOImpl.class.getName();
     private static final String NEWLINE = System.getProperty("line.separator");
 
+    // The number of rows fetched at a time by a cursor. Some drivers (PostgreSQL) otherwise read the
+    // whole result set into memory.
+    private static final int CURSOR_FETCH_SIZE = 10;
+
     // The connection the DAO operates against
     private final Connection connection;
     
@@ -228,6 +233,109 @@ public class FHIRDbDAOImpl implements FHIRDbDAO {
         return fhirObjects;
     }
 
+    /**
+     * Creates and executes a PreparedStatement using the passed parameters, and returns a cursor which creates
+     * the FHIR Data Transfer Objects one row at a time.
+     *
+     * @param sql        - The SQL template to execute.
+     * @param searchArgs - An array of arguments to be substituted into the SQL template.
+     * @return ResourceCursor - An open cursor over the results of the executed query, which the caller must close.
+     * @throws FHIRPersistenceDataAccessException
+     * @throws FHIRPersistenceDBConnectException
+     */
+    protected ResourceCursor runQueryCursor(String sql, Object... searchArgs)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "runQueryCursor";
+        log.entering(CLASSNAME, METHODNAME);
+
+        PreparedStatement stmt = null;
+        ResultSet resultSet = null;
+        String errMsg;
+        long dbCallStartTime;
+        double dbCallDuration;
+
+        try {
+            stmt = connection.prepareStatement(sql);
+            stmt.setFetchSize(CURSOR_FETCH_SIZE);
+            // Inject arguments into the prepared stmt.
+            for (int i = 0; i < searchArgs.length; i++) {
+                if (searchArgs[i] instanceof Timestamp) {
+                    stmt.setTimestamp(i + 1, (Timestamp) searchArgs[i], JDBCConstants.UTC);
+                } else {
+                    stmt.setObject(i + 1, searchArgs[i]);
+                }
+            }
+            dbCallStartTime = System.nanoTime();
+            resultSet = stmt.executeQuery();
+            dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Successfully opened cursor. SQL=" + sql + "  searchArgs="
+                        + Arrays.toString(searchArgs) + " executionTime=" + dbCallDuration + "ms");
+            }
+            ResourceCursor cursor = new ResultSetResourceCursor(resultSet, stmt);
+            stmt = null;
+            return cursor;
+        } catch (Throwable e) {
+            // avoid leaking SQL because the exception message might be returned to a client
+            FHIRPersistenceDataAccessException fx =
+                    new FHIRPersistenceDataAccessException("Failure retrieving FHIR objects");
+            errMsg = "Failure retrieving FHIR objects. SQL=" + sql + "  searchArgs=" + Arrays.toString(searchArgs);
+            throw severe(log, fx, errMsg, e);
+        } finally {
+            if (stmt != null) {
+                this.cleanup(resultSet, stmt);
+            }
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * A cursor creating the DTOs for the rows of an open result set with {@link FHIRDbDAOImpl#createDTO(ResultSet)}
+     */
+    private class ResultSetResourceCursor implements ResourceCursor {
+        private ResultSet resultSet;
+        private PreparedStatement stmt;
+
+        private ResultSetResourceCursor(ResultSet resultSet, PreparedStatement stmt) {
+            this.resultSet = resultSet;
+            this.stmt = stmt;
+        }
+
+        @Override
+        public Resource next() throws FHIRPersistenceDataAccessException {
+            if (resultSet == null) {
+                return null;
+            }
+            try {
+                while (resultSet.next()) {
+                    Resource dto = createDTO(resultSet);
+                    if (dto != null) {
+                        return dto;
+                    }
+                }
+            } catch (FHIRPersistenceDataAccessException e) {
+                throw e;
+            } catch (Throwable e) {
+                // Don't chain the cause, because we might leak secrets
+                FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure creating DTOs.");
+                throw severe(log, fx, e);
+            }
+            // No more rows, so release the statement right away
+            close();
+            return null;
+        }
+
+        @Override
+        public void close() {
+            if (stmt != null) {
+                cleanup(resultSet, stmt);
+                resultSet = null;
+                stmt = null;
+            }
+        }
+    }
+
     /**
      * Creates and executes a PreparedStatement for the passed sql containing a 'SELECT COUNT...'.
      * The count value is extracted from the ResultSet and returned as an int.
@@ -0,0 +1,172 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.impl;
+
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DOT;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.database.utils.api.IDatabaseTranslator;
+import com.ibm.fhir.persistence.ResourceChangeLogRecord;
+import com.ibm.fhir.persistence.ResourceChangeLogRecord.ChangeType;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+
+/**
+ * DAO to read the RESOURCE_CHANGE_LOG table, optionally filtered by a start time and resource type,
+ * and continuing after a given resource_id.
+ *
+ * <p>Without a start time, the changes are read in resource_id order, which is a range scan of the
+ * primary key (or of the (RESOURCE_TYPE_ID, RESOURCE_ID) index for a single resource type). With a
+ * start time, the changes are read in (change_tstamp, resource_id) order, which is the order of the
+ * (CHANGE_TSTAMP, RESOURCE_ID) index, so the database can scan that index from the start time and
+ * stop after the first resourceCount rows instead of sorting every change since the start time.
+ * In that case the resource_id only breaks ties between changes made at the start time, so the next
+ * batch is read by passing the change_tstamp and resource_id of the last change read.
+ */
+public class FetchResourceChangesDAO {
+    private static final Logger logger = Logger.getLogger(FetchResourceChangesDAO.class.getName());
+
+    private static final Calendar UTC_CALENDAR = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+    // The FHIR data schema name
+    private final String schemaName;
+
+    // The database translator to help tweak the syntax needed for different DB support
+    private final IDatabaseTranslator translator;
+
+    // The maximum number of changes to read
+    private final int resourceCount;
+
+    // Read changes from this timestamp. Can be null.
+    private final Instant fromLastModified;
+
+    // Read changes after this resource_id. Can be null. If fromLastModified is given, this only
+    // skips the changes made exactly at fromLastModified.
+    private final Long afterResourceId;
+
+    // Only read changes to this resource type. Can be null.
+    private final String resourceTypeName;
+
+    /**
+     * Public constructor
+     * @param translator
+     * @param schemaName
+     * @param resourceCount
+     * @param fromLastModified
+     * @param afterResourceId
+     * @param resourceTypeName
+     */
+    public FetchResourceChangesDAO(IDatabaseTranslator translator, String schemaName, int resourceCount, Instant fromLastModified,
+        Long afterResourceId, String resourceTypeName) {
+        this.translator = translator;
+        this.schemaName = schemaName;
+        this.resourceCount = resourceCount;
+        this.fromLastModified = fromLastModified;
+        this.afterResourceId = afterResourceId;
+        this.resourceTypeName = resourceTypeName;
+    }
+
+    /**
+     * Run the query
+     * @param c
+     * @return the changes without their resources, in resource_id order, or in (change_tstamp, resource_id)
+     *     order if a start time was given
+     * @throws FHIRPersistenceException
+     */
+    public List<ResourceChangeLogRecord> run(Connection c) throws FHIRPersistenceException {
+        List<ResourceChangeLogRecord> result = new ArrayList<>();
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT c.resource_id, rt.resource_type, c.logical_id, c.version_id, c.change_tstamp, c.change_type FROM ");
+        query.append(schemaName).append(DOT).append("resource_change_log AS c ");
+        query.append("  JOIN ").append(schemaName).append(DOT).append("resource_types AS rt ");
+        query.append("    ON rt.resource_type_id = c.resource_type_id ");
+        query.append(" WHERE 1=1 ");
+
+        if (this.fromLastModified != null) {
+            // Keyset on (change_tstamp, resource_id), written without a row value comparison which
+            // Db2 and Derby don't support. The range of the index scan starts at fromLastModified.
+            query.append(" AND c.change_tstamp >= ? ");
+            if (this.afterResourceId != null) {
+                query.append(" AND (c.change_tstamp > ? OR c.resource_id > ?) ");
+            }
+        } else if (this.afterResourceId != null) {
+            query.append(" AND c.resource_id > ? ");
+        }
+        if (this.resourceTypeName != null) {
+            query.append(" AND rt.resource_type = ? ");
+        }
+
+        if (this.fromLastModified != null) {
+            query.append(" ORDER BY c.change_tstamp, c.resource_id ");
+        } else {
+            // The resource_id is allocated from fhir_sequence when the change is made, so this is
+            // the order of the changes, and the last resource_id read is where the next read continues
+            query.append(" ORDER BY c.resource_id ");
+        }
+        query.append(translator.limit(Integer.toString(this.resourceCount)));
+
+        final String select = query.toString();
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Fetch resource changes query: " + select);
+        }
+
+        try (PreparedStatement ps = c.prepareStatement(select)) {
+            int a = 1;
+            if (this.fromLastModified != null) {
+                Timestamp fromTstamp = Timestamp.from(this.fromLastModified);
+                ps.setTimestamp(a++, fromTstamp, UTC_CALENDAR);
+                if (this.afterResourceId != null) {
+                    ps.setTimestamp(a++, fromTstamp, UTC_CALENDAR);
+                    ps.setLong(a++, this.afterResourceId);
+                }
+            } else if (this.afterResourceId != null) {
+                ps.setLong(a++, this.afterResourceId);
+            }
+            if (this.resourceTypeName != null) {
+                ps.setString(a++, this.resourceTypeName);
+            }
+
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                final ChangeType changeType;
+                switch (rs.getString(6)) {
+                case "C":
+                    changeType = ChangeType.CREATE;
+                    break;
+                case "D":
+                    changeType = ChangeType.DELETE;
+                    break;
+                default:
+                    changeType = ChangeType.UPDATE;
+                    break;
+                }
+                result.add(new ResourceChangeLogRecord(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getInt(4),
+                    rs.getTimestamp(5, UTC_CALENDAR).toInstant(), changeType, null));
+            }
+        } catch (SQLException x) {
+            logger.log(Level.SEVERE, "query: " + select + "[fromLastModified=" + fromLastModified + ", afterResourceId=" + afterResourceId
+                + ", resourceTypeName=" + resourceTypeName + "]", x);
+            throw new FHIRPersistenceDataAccessException("FetchResourceChanges query failed");
+        }
+
+        return result;
+    }
+}
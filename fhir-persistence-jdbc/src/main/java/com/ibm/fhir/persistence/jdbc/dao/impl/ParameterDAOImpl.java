@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2020
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,8 +7,16 @@
 package com.ibm.fhir.persistence.jdbc.dao.impl;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,6 +28,8 @@ import com.ibm.fhir.persistence.jdbc.dao.api.CodeSystemDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterNameDAO;
 import com.ibm.fhir.persistence.jdbc.derby.DerbyCodeSystemDAO;
+import com.ibm.fhir.persistence.jdbc.dto.CommonTokenValue;
+import com.ibm.fhir.persistence.jdbc.dto.ParameterStatistics;
 import com.ibm.fhir.persistence.jdbc.derby.DerbyParameterNamesDAO;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
@@ -41,6 +51,9 @@ public class ParameterDAOImpl extends FHIRDbDAOImpl implements ParameterDAO {
 
     public static final String DEFAULT_TOKEN_SYSTEM = "default-token-system";
 
+    // The number of ids bound to each query when reading common token values by id
+    private static final int COMMON_TOKEN_VALUES_QUERY_SIZE = 500;
+
     private Map<String, Integer> newParameterNameIds = new HashMap<>();
     private Map<String, Integer> newCodeSystemIds = new HashMap<>();
 
@@ -108,6 +121,181 @@ public class ParameterDAOImpl extends FHIRDbDAOImpl implements ParameterDAO {
         }
     }
 
+    @Override
+    public Map<CommonTokenValue, Long> readMostReferencedCommonTokenValues(Collection<String> resourceTypes, int limit, int timeoutSeconds)
+            throws FHIRPersistenceDBConnectException, FHIRPersistenceDataAccessException {
+        final String METHODNAME = "readMostReferencedCommonTokenValues";
+        log.entering(CLASSNAME, METHODNAME);
+
+        final Connection connection = getConnection(); // do not close
+        Map<CommonTokenValue, Long> result = new HashMap<>();
+        long dbCallStartTime = System.nanoTime();
+        final long deadline = dbCallStartTime + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        try {
+            // Sum the top-n reference counts from each resource type. A value which is only
+            // moderately popular across many types can be missed, but this keeps each query
+            // bounded and is good enough to warm the cache.
+            Map<Long, Long> referenceCounts = new HashMap<>();
+            for (String resourceType: resourceTypes) {
+                long remainingSeconds = TimeUnit.NANOSECONDS.toSeconds(deadline - System.nanoTime());
+                if (remainingSeconds < 1) {
+                    log.info("Stopped counting token value references after " + timeoutSeconds + "s, at resource type " + resourceType);
+                    break;
+                }
+                final String sql = "SELECT common_token_value_id, COUNT(*) AS cnt"
+                        + " FROM " + resourceType + "_RESOURCE_TOKEN_REFS"
+                        + " WHERE common_token_value_id IS NOT NULL"
+                        + " GROUP BY common_token_value_id"
+                        + " ORDER BY cnt DESC"
+                        + " FETCH FIRST " + limit + " ROWS ONLY";
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    stmt.setQueryTimeout((int) Math.min(remainingSeconds, Integer.MAX_VALUE));
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        referenceCounts.merge(rs.getLong(1), rs.getLong(2), Long::sum);
+                    }
+                } catch (SQLException x) {
+                    if (System.nanoTime() - deadline < 0) {
+                        throw x;
+                    }
+                    // the query was cancelled by the timeout, so go with the counts read so far
+                    log.info("Stopped counting token value references after " + timeoutSeconds + "s, at resource type " + resourceType);
+                    break;
+                }
+            }
+
+            List<Long> ids = referenceCounts.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+
+            // Now fetch the values for the ids we selected
+            for (int start = 0; start < ids.size(); start += COMMON_TOKEN_VALUES_QUERY_SIZE) {
+                List<Long> chunk = ids.subList(start, Math.min(ids.size(), start + COMMON_TOKEN_VALUES_QUERY_SIZE));
+                StringBuilder sql = new StringBuilder();
+                sql.append("SELECT common_token_value_id, code_system_id, token_value FROM common_token_values");
+                sql.append(" WHERE common_token_value_id IN (");
+                sql.append(chunk.stream().map(id -> "?").collect(Collectors.joining(",")));
+                sql.append(")");
+                try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+                    int a = 1;
+                    for (Long id: chunk) {
+                        stmt.setLong(a++, id);
+                    }
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        result.put(new CommonTokenValue(rs.getInt(2), rs.getString(3)), rs.getLong(1));
+                    }
+                }
+            }
+
+            if (log.isLoggable(Level.FINE)) {
+                double dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+                log.fine("DB read most referenced common token values complete. count=" + result.size() + " executionTime=" + dbCallDuration + "ms");
+            }
+        } catch (Throwable e) {
+            throw new FHIRPersistenceDataAccessException("Failure retrieving most referenced common token values.", e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+
+        return result;
+    }
+
+    @Override
+    public ParameterStatistics readParameterStatistics(String tableName, String valueColumn, int parameterNameId, int sampleSize)
+            throws FHIRPersistenceDBConnectException, FHIRPersistenceDataAccessException {
+        final String METHODNAME = "readParameterStatistics";
+        log.entering(CLASSNAME, METHODNAME);
+
+        final Connection connection = getConnection(); // do not close
+        ParameterStatistics result = null;
+        long dbCallStartTime = System.nanoTime();
+
+        // The sample bounds the cost of the query no matter how big the table is. The rows are
+        // grouped by value to count the distinct values, and the values seen only once
+        final String sql = "SELECT SUM(G.value_rows), COUNT(*), SUM(CASE WHEN G.value_rows = 1 THEN 1 ELSE 0 END)"
+                + " FROM (SELECT S." + valueColumn + ", COUNT(*) AS value_rows"
+                + " FROM (SELECT " + valueColumn + " FROM " + tableName
+                + " WHERE parameter_name_id = ?"
+                + " FETCH FIRST " + sampleSize + " ROWS ONLY) S"
+                + " GROUP BY S." + valueColumn + ") G";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, parameterNameId);
+            ResultSet rs = stmt.executeQuery();
+            long rowCount = 0;
+            long distinctValueCount = 0;
+            long singletonCount = 0;
+            if (rs.next()) {
+                // SUM is null when the sample is empty, which getLong reads as 0
+                rowCount = rs.getLong(1);
+                distinctValueCount = rs.getLong(2);
+                singletonCount = rs.getLong(3);
+            }
+            long tableRowCount = rowCount < sampleSize ? -1 : readTableRowCount(connection, tableName);
+            result = new ParameterStatistics(rowCount, distinctValueCount, singletonCount, sampleSize, tableRowCount);
+
+            if (log.isLoggable(Level.FINE)) {
+                double dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+                log.fine("DB read parameter statistics complete. table=" + tableName + " parameterNameId=" + parameterNameId
+                    + " rows=" + result.getRowCount() + " distinct=" + result.getDistinctValueCount()
+                    + " singletons=" + result.getSingletonCount() + " tableRows=" + tableRowCount
+                    + " executionTime=" + dbCallDuration + "ms");
+            }
+        } catch (Throwable e) {
+            throw new FHIRPersistenceDataAccessException("Failure retrieving parameter statistics.", e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+
+        return result;
+    }
+
+    /**
+     * Read the row count of a parameter table from the statistics in the database catalog
+     * @param connection
+     * @param tableName the parameter table, or the view of the token values
+     * @return the row count, or -1 if the catalog doesn't have it
+     * @throws SQLException
+     */
+    private long readTableRowCount(Connection connection, String tableName) throws SQLException {
+        // The token values view hides the table holding the rows
+        String catalogTable = tableName.toUpperCase().endsWith("_TOKEN_VALUES_V")
+                ? tableName.substring(0, tableName.length() - "_TOKEN_VALUES_V".length()) + "_RESOURCE_TOKEN_REFS"
+                : tableName;
+
+        final String sql;
+        final String[] binds;
+        switch (getFlavor().getType()) {
+        case POSTGRESQL:
+            // reltuples is -1 (or 0 before PostgreSQL 14) until the table is first analyzed
+            sql = "SELECT reltuples FROM pg_class WHERE oid = to_regclass(?)";
+            binds = new String[] { getSchemaName().toLowerCase() + "." + catalogTable.toLowerCase() };
+            break;
+        case DB2:
+            // CARD is -1 until RUNSTATS is run on the table
+            sql = "SELECT card FROM syscat.tables WHERE tabschema = ? AND tabname = ?";
+            binds = new String[] { getSchemaName().toUpperCase(), catalogTable.toUpperCase() };
+            break;
+        default:
+            // Derby doesn't keep row counts in its catalog
+            return -1;
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < binds.length; i++) {
+                stmt.setString(i + 1, binds[i]);
+            }
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                long rowCount = rs.getLong(1);
+                return rowCount > 0 ? rowCount : -1;
+            }
+            return -1;
+        }
+    }
+
     /**
      * Calls a stored procedure to read the name contained in the passed Parameter in the Parameter_Names table.
      * If it's not in the DB, it will be stored and a unique id will be returned.
@@ -0,0 +1,283 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dao.impl;
+
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.UTC;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Buffers the rows to insert into one parameter table, and writes them when flushed with
+ * multi-row {@code INSERT ... VALUES (...), (...)} statements, which Db2, PostgreSQL and
+ * Derby all support. Each statement is one round-trip, whereas a JDBC batch is still sent
+ * as one INSERT per row by some drivers.
+ *
+ * <p>To keep the number of distinct statements the driver and database have to prepare small,
+ * the rows are split into statements whose sizes are powers of two, plus the typical number of
+ * rows written to the table at a time, which is learned from the previous flushes. The typical
+ * number is rounded to a multiple of {@link #TYPICAL_ROWS_GRID}, so that small changes in the
+ * average don't keep adding new statement sizes. The split uses the fewest statements possible
+ * with these sizes.
+ */
+public class ParameterInsertBuffer implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(ParameterInsertBuffer.class.getName());
+
+    // The typical number of rows is rounded to a multiple of this
+    public static final int TYPICAL_ROWS_GRID = 8;
+
+    // The smoothed number of rows per flush for each table, times 16 to keep some precision
+    private static final Map<String, AtomicLong> TYPICAL_ROWS = new ConcurrentHashMap<>();
+
+    private final Connection connection;
+
+    // The key of the row count history, which is different for each resource type
+    private final String historyKey;
+
+    // "INSERT INTO table (columns) VALUES " and "(?,?,...)"
+    private final String insertPrefix;
+    private final String rowValues;
+
+    // The java.sql.Types of each column, used to bind null values
+    private final int[] columnTypes;
+
+    // The max number of rows per statement
+    private final int maxRows;
+
+    // The buffered rows, one value per column
+    private final List<Object[]> rows;
+
+    // The statements prepared so far, by number of rows
+    private final Map<Integer, PreparedStatement> statements = new HashMap<>();
+
+    /**
+     * Public constructor
+     * @param c the connection to use for the inserts
+     * @param historyKey the key of the row count history of the table, which must be different for
+     *     each resource type when the table is shared by all resource types
+     * @param tableName the name of the table
+     * @param tenantValue the SQL expression of the mt_id column, or null if the schema isn't multi-tenant
+     * @param columnNames the names of the other columns
+     * @param columnTypes the {@link java.sql.Types} of the other columns
+     * @param maxRows the max number of rows per statement
+     */
+    public ParameterInsertBuffer(Connection c, String historyKey, String tableName, String tenantValue, String[] columnNames,
+            int[] columnTypes, int maxRows) {
+        if (columnNames.length != columnTypes.length) {
+            throw new IllegalArgumentException("One type is required per column");
+        }
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("maxRows must be >= 1");
+        }
+
+        this.connection = c;
+        this.historyKey = historyKey;
+        this.columnTypes = columnTypes;
+        this.maxRows = maxRows;
+
+        StringBuilder insert = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        StringBuilder values = new StringBuilder("(");
+        if (tenantValue != null) {
+            insert.append("mt_id, ");
+            values.append(tenantValue).append(",");
+        }
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i > 0) {
+                insert.append(", ");
+                values.append(",");
+            }
+            insert.append(columnNames[i]);
+            values.append("?");
+        }
+        this.insertPrefix = insert.append(") VALUES ").toString();
+        this.rowValues = values.append(")").toString();
+
+        // Pre-size the buffer for the number of rows usually written to this table
+        this.rows = new ArrayList<>(Math.max(getTypicalRows(historyKey), 1));
+    }
+
+    /**
+     * Buffer a row
+     * @param values the value of each column, in the order of the column names
+     */
+    public void add(Object... values) {
+        if (values.length != columnTypes.length) {
+            throw new IllegalArgumentException("Expected " + columnTypes.length + " values, but found " + values.length);
+        }
+        rows.add(values);
+    }
+
+    /**
+     * @return the number of rows buffered
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * Insert all the buffered rows, then clear the buffer
+     * @throws SQLException
+     */
+    public void flush() throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        int typical = recordRows(historyKey, rows.size());
+        int[] chunks = planStatements(rows.size(), maxRows, typical);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Inserting " + rows.size() + " rows with " + chunks.length + " statements: " + insertPrefix);
+        }
+
+        int next = 0;
+        for (int chunk : chunks) {
+            PreparedStatement ps = getStatement(chunk);
+            int index = 1;
+            for (int r = next; r < next + chunk; r++) {
+                Object[] row = rows.get(r);
+                for (int col = 0; col < row.length; col++) {
+                    setValue(ps, index++, row[col], columnTypes[col]);
+                }
+            }
+            ps.executeUpdate();
+            next += chunk;
+        }
+        rows.clear();
+    }
+
+    /**
+     * Get the statement inserting the given number of rows, preparing it the first time
+     */
+    private PreparedStatement getStatement(int rowCount) throws SQLException {
+        PreparedStatement ps = statements.get(rowCount);
+        if (ps == null) {
+            StringBuilder sql = new StringBuilder(insertPrefix.length() + rowCount * (rowValues.length() + 2));
+            sql.append(insertPrefix);
+            for (int i = 0; i < rowCount; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(rowValues);
+            }
+            ps = connection.prepareStatement(sql.toString());
+            statements.put(rowCount, ps);
+        }
+        return ps;
+    }
+
+    /**
+     * Bind a value with the setter matching its type
+     */
+    private static void setValue(PreparedStatement ps, int index, Object value, int sqlType) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, sqlType);
+        } else if (value instanceof Integer) {
+            ps.setInt(index, (Integer) value);
+        } else if (value instanceof Long) {
+            ps.setLong(index, (Long) value);
+        } else if (value instanceof String) {
+            ps.setString(index, (String) value);
+        } else if (value instanceof BigDecimal) {
+            ps.setBigDecimal(index, (BigDecimal) value);
+        } else if (value instanceof Double) {
+            ps.setDouble(index, (Double) value);
+        } else if (value instanceof Timestamp) {
+            ps.setTimestamp(index, (Timestamp) value, UTC);
+        } else {
+            ps.setObject(index, value, sqlType);
+        }
+    }
+
+    /**
+     * Split a number of rows into statements, using the fewest statements whose sizes are powers of two
+     * or the typical number of rows, and preferring bigger statements first
+     * @param rowCount the number of rows to insert
+     * @param maxRows the max number of rows per statement
+     * @param typical the typical number of rows, or 0 if not known
+     * @return the number of rows of each statement
+     */
+    public static int[] planStatements(int rowCount, int maxRows, int typical) {
+        List<Integer> sizes = new ArrayList<>();
+        for (int size = 1; size <= maxRows && size > 0; size <<= 1) {
+            sizes.add(size);
+        }
+        if (typical > 1 && typical <= maxRows && !sizes.contains(typical)) {
+            sizes.add(typical);
+        }
+        sizes.sort((a, b) -> Integer.compare(b, a));
+
+        // The fewest statements for each number of rows, and the size of the first one
+        int[] count = new int[rowCount + 1];
+        int[] first = new int[rowCount + 1];
+        for (int n = 1; n <= rowCount; n++) {
+            count[n] = Integer.MAX_VALUE;
+            for (int size : sizes) {
+                if (size <= n && count[n - size] + 1 < count[n]) {
+                    count[n] = count[n - size] + 1;
+                    first[n] = size;
+                }
+            }
+        }
+
+        int[] result = new int[count[rowCount]];
+        for (int i = 0, n = rowCount; n > 0; n -= first[n]) {
+            result[i++] = first[n];
+        }
+        return result;
+    }
+
+    /**
+     * @return the typical number of rows written to the table, or 0 if not known yet
+     */
+    private static int getTypicalRows(String historyKey) {
+        AtomicLong history = TYPICAL_ROWS.get(historyKey);
+        return history != null ? toGrid(history.get()) : 0;
+    }
+
+    /**
+     * Add a number of rows written to the table to its history
+     * @return the typical number of rows written to the table, including these, rounded to the grid
+     */
+    private static int recordRows(String historyKey, int rowCount) {
+        long scaled = (long) rowCount << 4;
+        AtomicLong history = TYPICAL_ROWS.computeIfAbsent(historyKey, k -> new AtomicLong(scaled));
+        // Exponential moving average with a weight of 1/8 for the newest count
+        long smoothed = history.updateAndGet(old -> old + ((scaled - old) >> 3));
+        return toGrid(smoothed);
+    }
+
+    /**
+     * Round a smoothed row count (times 16) to the nearest multiple of {@link #TYPICAL_ROWS_GRID}
+     */
+    private static int toGrid(long smoothed) {
+        long scaledGrid = TYPICAL_ROWS_GRID << 4;
+        return (int) ((smoothed + scaledGrid / 2) / scaledGrid * TYPICAL_ROWS_GRID);
+    }
+
+    @Override
+    public void close() {
+        for (PreparedStatement ps : statements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException x) {
+                logger.warning("failed to close statement");
+            }
+        }
+        statements.clear();
+    }
+}
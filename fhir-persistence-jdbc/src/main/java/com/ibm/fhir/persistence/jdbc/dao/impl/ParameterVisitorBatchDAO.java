@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -17,6 +17,7 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,8 +45,9 @@ import com.ibm.fhir.search.util.ReferenceValue.ReferenceType;
 /**
  * Batch insert into the parameter values tables. Avoids having to create one stored procedure
  * per resource type, because the row type array approach apparently won't work with dynamic
- * SQL (EXECUTE ... USING ...). Unfortunately this means we have more database round-trips, we
- * don't have a choice.
+ * SQL (EXECUTE ... USING ...). To keep the database round-trips down, the rows of each table
+ * are buffered until the DAO is closed, then written with multi-row inserts
+ * (see {@link ParameterInsertBuffer}).
  */
 public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor, AutoCloseable {
     private static final Logger logger = Logger.getLogger(ParameterVisitorBatchDAO.class.getName());
@@ -53,52 +55,56 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
     // the connection to use for the inserts
     private final Connection connection;
 
-    // the max number of rows we accumulate for a given statement before we submit the batch
-    private final int batchSize;
+    // Column names and types of the parameter tables, after the optional mt_id
+    private static final String[] STR_COLUMNS = { "parameter_name_id", "str_value", "str_value_lcase", "logical_resource_id" };
+    private static final int[] STR_TYPES = { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.BIGINT };
+    private static final String[] NUMBER_COLUMNS = { "parameter_name_id", "number_value", "number_value_low", "number_value_high", "logical_resource_id" };
+    private static final int[] NUMBER_TYPES = { Types.INTEGER, Types.DECIMAL, Types.DECIMAL, Types.DECIMAL, Types.BIGINT };
+    private static final String[] DATE_COLUMNS = { "parameter_name_id", "date_start", "date_end", "logical_resource_id" };
+    private static final int[] DATE_TYPES = { Types.INTEGER, Types.TIMESTAMP, Types.TIMESTAMP, Types.BIGINT };
+    private static final String[] TOKEN_COLUMNS = { "parameter_name_id", "code_system_id", "token_value", "logical_resource_id" };
+    private static final int[] TOKEN_TYPES = { Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.BIGINT };
+    private static final String[] QUANTITY_COLUMNS = { "parameter_name_id", "code_system_id", "code", "quantity_value", "quantity_value_low", "quantity_value_high", "logical_resource_id" };
+    private static final int[] QUANTITY_TYPES = { Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.DECIMAL, Types.DECIMAL, Types.DECIMAL, Types.BIGINT };
+    private static final String[] COMPOSITE_COLUMNS = { "parameter_name_id", "logical_resource_id",
+            "comp1_str", "comp1_number", "comp1_date", "comp1_token", "comp1_quantity", "comp1_latlng",
+            "comp2_str", "comp2_number", "comp2_date", "comp2_token", "comp2_quantity", "comp2_latlng",
+            "comp3_str", "comp3_number", "comp3_date", "comp3_token", "comp3_quantity", "comp3_latlng" };
 
     // FK to the logical resource for the parameters being added
     private final long logicalResourceId;
 
-    // Maintainers: remember to close all statements in AutoCloseable#close()
+    // Maintainers: remember to close all buffers and statements in AutoCloseable#close()
     private final String insertString;
-    private final PreparedStatement strings;
-    private int stringCount;
+    private final ParameterInsertBuffer strings;
 
     private final String insertNumber;
-    private final PreparedStatement numbers;
-    private int numberCount;
+    private final ParameterInsertBuffer numbers;
 
     private final String insertDate;
-    private final PreparedStatement dates;
-    private int dateCount;
+    private final ParameterInsertBuffer dates;
 
-    private final PreparedStatement tokens;
-    // token is the most common component type in composite params, so prepare a statement for it
-    private final PreparedStatement tokenComp;
-    private int tokenCount;
+    // token is the most common component type in composite params, so reuse a statement for it
+    private final String insertToken;
+    private PreparedStatement tokenComp;
 
     private final String insertQuantity;
-    private final PreparedStatement quantities;
-    private int quantityCount;
+    private final ParameterInsertBuffer quantities;
 
     // rarely used so no need for {@code java.sql.PreparedStatement} or batching on this one
     // even on Location resources its only there once by default
     private final String insertLocation;
 
-    private final PreparedStatement composites;
-    private int compositesCount;
+    private final ParameterInsertBuffer composites;
 
     // Searchable string attributes stored at the Resource (system) level
-    private final PreparedStatement resourceStrings;
-    private int resourceStringCount;
+    private final ParameterInsertBuffer resourceStrings;
 
     // Searchable date attributes stored at the Resource (system) level
-    private final PreparedStatement resourceDates;
-    private int resourceDateCount;
+    private final ParameterInsertBuffer resourceDates;
 
     // Searchable token attributes stored at the Resource (system) level
-    private final PreparedStatement resourceTokens;
-    private int resourceTokenCount;
+    private final ParameterInsertBuffer resourceTokens;
 
     // DAO for handling parameters stored as token values
     private final IResourceReferenceDAO resourceReferenceDAO;
@@ -119,6 +125,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
      * Public constructor
      * @param c
      * @param resourceId
+     * @param batchSize the max number of rows inserted by one statement
      */
     public ParameterVisitorBatchDAO(Connection c, String adminSchemaName, String tablePrefix, boolean multitenant, long logicalResourceId, int batchSize,
             JDBCIdentityCache identityCache, IResourceReferenceDAO resourceReferenceDAO, ParameterTransactionDataImpl ptdi) throws SQLException {
@@ -128,80 +135,56 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
 
         this.connection = c;
         this.logicalResourceId = logicalResourceId;
-        this.batchSize = batchSize;
         this.identityCache = identityCache;
         this.resourceReferenceDAO = resourceReferenceDAO;
         this.tablePrefix = tablePrefix;
         this.transactionData = ptdi;
 
+        // The tenant id is the first column of every row in a multi-tenant schema
+        final String tenantValue = multitenant ? adminSchemaName + ".sv_tenant_id" : null;
+
         insertString = multitenant ?
                 "INSERT INTO " + tablePrefix + "_str_values (mt_id, parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 :
                 "INSERT INTO " + tablePrefix + "_str_values (parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (?,?,?,?)";
-        strings = c.prepareStatement(insertString);
+        strings = new ParameterInsertBuffer(c, tablePrefix + "_str_values", tablePrefix + "_str_values", tenantValue, STR_COLUMNS, STR_TYPES, batchSize);
 
         insertNumber = multitenant ?
                 "INSERT INTO " + tablePrefix + "_number_values (mt_id, parameter_name_id, number_value, number_value_low, number_value_high, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?,?)"
                 :
                 "INSERT INTO " + tablePrefix + "_number_values (parameter_name_id, number_value, number_value_low, number_value_high, logical_resource_id) VALUES (?,?,?,?,?)";
-        numbers = c.prepareStatement(insertNumber);
+        numbers = new ParameterInsertBuffer(c, tablePrefix + "_number_values", tablePrefix + "_number_values", tenantValue, NUMBER_COLUMNS, NUMBER_TYPES, batchSize);
 
         insertDate = multitenant ?
                 "INSERT INTO " + tablePrefix + "_date_values (mt_id, parameter_name_id, date_start, date_end, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 :
                 "INSERT INTO " + tablePrefix + "_date_values (parameter_name_id, date_start, date_end, logical_resource_id) VALUES (?,?,?,?)";
-        dates = c.prepareStatement(insertDate);
+        dates = new ParameterInsertBuffer(c, tablePrefix + "_date_values", tablePrefix + "_date_values", tenantValue, DATE_COLUMNS, DATE_TYPES, batchSize);
 
-        String insertToken = multitenant ?
+        insertToken = multitenant ?
                 "INSERT INTO " + tablePrefix + "_token_values (mt_id, parameter_name_id, code_system_id, token_value, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 :
                 "INSERT INTO " + tablePrefix + "_token_values (parameter_name_id, code_system_id, token_value, logical_resource_id) VALUES (?,?,?,?)";
-        tokens = c.prepareStatement(insertToken);
-        tokenComp = c.prepareStatement(insertToken, Statement.RETURN_GENERATED_KEYS);
 
         insertQuantity = multitenant ?
                 "INSERT INTO " + tablePrefix + "_quantity_values (mt_id, parameter_name_id, code_system_id, code, quantity_value, quantity_value_low, quantity_value_high, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?,?,?,?)"
                 :
                 "INSERT INTO " + tablePrefix + "_quantity_values (parameter_name_id, code_system_id, code, quantity_value, quantity_value_low, quantity_value_high, logical_resource_id) VALUES (?,?,?,?,?,?,?)";
-        quantities = c.prepareStatement(insertQuantity);
+        quantities = new ParameterInsertBuffer(c, tablePrefix + "_quantity_values", tablePrefix + "_quantity_values", tenantValue, QUANTITY_COLUMNS, QUANTITY_TYPES, batchSize);
 
         insertLocation = multitenant ? "INSERT INTO " + tablePrefix + "_latlng_values (mt_id, parameter_name_id, latitude_value, longitude_value, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
                 : "INSERT INTO " + tablePrefix + "_latlng_values (parameter_name_id, latitude_value, longitude_value, logical_resource_id) VALUES (?,?,?,?)";
 
-        String insertComposite = multitenant ?
-                "INSERT INTO " + tablePrefix + "_composites (mt_id, parameter_name_id, logical_resource_id, "
-                + "comp1_str, comp1_number, comp1_date, comp1_token, comp1_quantity, comp1_latlng, "
-                + "comp2_str, comp2_number, comp2_date, comp2_token, comp2_quantity, comp2_latlng, "
-                + "comp3_str, comp3_number, comp3_date, comp3_token, comp3_quantity, comp3_latlng"
-                + ") VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,  ?,?,?,?,?,?,  ?,?,?,?,?,?,  ?,?,?,?,?,?)"
-                :
-                "INSERT INTO " + tablePrefix + "_composites (parameter_name_id, logical_resource_id, "
-                + "comp1_str, comp1_number, comp1_date, comp1_token, comp1_quantity, comp1_latlng, "
-                + "comp2_str, comp2_number, comp2_date, comp2_token, comp2_quantity, comp2_latlng, "
-                + "comp3_str, comp3_number, comp3_date, comp3_token, comp3_quantity, comp3_latlng"
-                + ") VALUES (?,?,  ?,?,?,?,?,?,  ?,?,?,?,?,?,  ?,?,?,?,?,?)";
-        composites = c.prepareStatement(insertComposite);
-
-        // Resource level string attributes
-        String insertResourceString = multitenant ?
-                "INSERT INTO resource_str_values (mt_id, parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
-                :
-                "INSERT INTO resource_str_values (parameter_name_id, str_value, str_value_lcase, logical_resource_id) VALUES (?,?,?,?)";
-        resourceStrings = c.prepareStatement(insertResourceString);
-
-        // Resource level date attributes
-        String insertResourceDate = multitenant ?
-                "INSERT INTO resource_date_values (mt_id, parameter_name_id, date_start, date_end, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
-                :
-                "INSERT INTO resource_date_values (parameter_name_id, date_start, date_end, logical_resource_id) VALUES (?,?,?,?)";
-        resourceDates = c.prepareStatement(insertResourceDate);
+        int[] compositeTypes = new int[COMPOSITE_COLUMNS.length];
+        Arrays.fill(compositeTypes, Types.BIGINT);
+        compositeTypes[0] = Types.INTEGER;
+        composites = new ParameterInsertBuffer(c, tablePrefix + "_composites", tablePrefix + "_composites", tenantValue, COMPOSITE_COLUMNS, compositeTypes, batchSize);
 
-        // Resource level token attributes
-        String insertResourceToken = multitenant ?
-                "INSERT INTO resource_token_values (mt_id, parameter_name_id, code_system_id, token_value, logical_resource_id) VALUES (" + adminSchemaName + ".sv_tenant_id,?,?,?,?)"
-                :
-                "INSERT INTO resource_token_values (parameter_name_id, code_system_id, token_value, logical_resource_id) VALUES (?,?,?,?)";
-        resourceTokens = c.prepareStatement(insertResourceToken);
+        // Resource level attributes. The tables are shared by all resource types, but the
+        // number of rows depends on the resource type
+        resourceStrings = new ParameterInsertBuffer(c, tablePrefix + ":resource_str_values", "resource_str_values", tenantValue, STR_COLUMNS, STR_TYPES, batchSize);
+        resourceDates = new ParameterInsertBuffer(c, tablePrefix + ":resource_date_values", "resource_date_values", tenantValue, DATE_COLUMNS, DATE_TYPES, batchSize);
+        resourceTokens = new ParameterInsertBuffer(c, tablePrefix + ":resource_token_values", "resource_token_values", tenantValue, TOKEN_COLUMNS, TOKEN_TYPES, batchSize);
     }
 
     /**
@@ -233,47 +216,22 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
             value = value.substring(0, value.length() / 2);
         }
 
-        try {
-            int parameterNameId = getParameterNameId(parameterName);
-            if (isBase(param)) {
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("baseStringValue: " + parameterName + "[" + parameterNameId + "], " + value);
-                }
-
-                resourceStrings.setInt(1, parameterNameId);
-                if (value != null) {
-                    resourceStrings.setString(2, value);
-                    resourceStrings.setString(3, value.toLowerCase());
-                }
-                else {
-                    resourceStrings.setNull(2, Types.VARCHAR);
-                    resourceStrings.setNull(3, Types.VARCHAR);
-                }
-                resourceStrings.setLong(4, logicalResourceId);
-                resourceStrings.addBatch();
-
-                if (++resourceStringCount == this.batchSize) {
-                    resourceStrings.executeBatch();
-                    resourceStringCount = 0;
-                }
+        int parameterNameId = getParameterNameId(parameterName);
+        String valueLcase = value != null ? value.toLowerCase() : null;
+        if (isBase(param)) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("baseStringValue: " + parameterName + "[" + parameterNameId + "], " + value);
             }
-            else {
-                // standard resource property
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("stringValue: " + parameterName + "[" + parameterNameId + "], " + value);
-                }
-
-                setStringParms(strings, parameterNameId, value);
-                strings.addBatch();
 
-                if (++stringCount == this.batchSize) {
-                    strings.executeBatch();
-                    stringCount = 0;
-                }
-            }
+            resourceStrings.add(parameterNameId, value, valueLcase, logicalResourceId);
         }
-        catch (SQLException x) {
-            throw new FHIRPersistenceDataAccessException(parameterName + "=" + value, x);
+        else {
+            // standard resource property
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("stringValue: " + parameterName + "[" + parameterNameId + "], " + value);
+            }
+
+            strings.add(parameterNameId, value, valueLcase, logicalResourceId);
         }
     }
 
@@ -297,25 +255,14 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         BigDecimal valueLow = param.getValueNumberLow();
         BigDecimal valueHigh = param.getValueNumberHigh();
 
-        try {
-            int parameterNameId = getParameterNameId(parameterName);
-
-            if (logger.isLoggable(Level.FINE)) {
-                logger.fine("numberValue: " + parameterName + "[" + parameterNameId + "], "
-                        + value + " [" + valueLow + ", " + valueHigh + "]");
-            }
-
-            setNumberParms(numbers, parameterNameId, value, valueLow, valueHigh);
-            numbers.addBatch();
+        int parameterNameId = getParameterNameId(parameterName);
 
-            if (++numberCount == this.batchSize) {
-                numbers.executeBatch();
-                numberCount = 0;
-            }
-        }
-        catch (SQLException x) {
-            throw new FHIRPersistenceDataAccessException(parameterName + "={" + value + " ["+ valueLow + "," + valueHigh + "}", x);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("numberValue: " + parameterName + "[" + parameterNameId + "], "
+                    + value + " [" + valueLow + ", " + valueHigh + "]");
         }
+
+        numbers.add(parameterNameId, value, valueLow, valueHigh, logicalResourceId);
     }
 
     private void setNumberParms(PreparedStatement insert, int parameterNameId, BigDecimal value, BigDecimal valueLow, BigDecimal valueHigh) throws SQLException {
@@ -331,44 +278,26 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         String parameterName = param.getName();
         Timestamp dateStart = param.getValueDateStart();
         Timestamp dateEnd = param.getValueDateEnd();
-        try {
-            int parameterNameId = getParameterNameId(parameterName);
-
-            if (isBase(param)) {
-                // store in the base (resource) table
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("baseDateValue: " + parameterName + "[" + parameterNameId + "], "
-                             + "[" + dateStart + ", " + dateEnd + "]");
-                }
-
-                // Insert record into the base level date attribute table
-                setDateParms(resourceDates, parameterNameId, dateStart, dateEnd);
-                resourceDates.addBatch();
+        int parameterNameId = getParameterNameId(parameterName);
 
-                if (++resourceDateCount == this.batchSize) {
-                    resourceDates.executeBatch();
-                    resourceDateCount = 0;
-                }
+        if (isBase(param)) {
+            // store in the base (resource) table
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("baseDateValue: " + parameterName + "[" + parameterNameId + "], "
+                         + "[" + dateStart + ", " + dateEnd + "]");
             }
-            else {
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("dateValue: " + parameterName + "[" + parameterNameId + "], "
-                            + "period: [" + dateStart + ", " + dateEnd + "]");
-                }
-
-                setDateParms(dates, parameterNameId, dateStart, dateEnd);
-                dates.addBatch();
 
-                if (++dateCount == this.batchSize) {
-                    dates.executeBatch();
-                    dateCount = 0;
-                }
-            }
-        }
-        catch (SQLException x) {
-            throw new FHIRPersistenceDataAccessException(parameterName + "={" + dateStart + ", " + dateEnd + "}", x);
+            // Insert record into the base level date attribute table
+            resourceDates.add(parameterNameId, dateStart, dateEnd, logicalResourceId);
         }
+        else {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("dateValue: " + parameterName + "[" + parameterNameId + "], "
+                        + "period: [" + dateStart + ", " + dateEnd + "]");
+            }
 
+            dates.add(parameterNameId, dateStart, dateEnd, logicalResourceId);
+        }
     }
 
     private void setDateParms(PreparedStatement insert, int parameterNameId, Timestamp dateStart, Timestamp dateEnd) throws SQLException {
@@ -396,16 +325,7 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                             + codeSystem + "[" + codeSystemId + "], " + tokenValue);
                 }
 
-                resourceTokens.setInt(1, parameterNameId);
-                resourceTokens.setInt(2, codeSystemId);
-                resourceTokens.setString(3, tokenValue);
-                resourceTokens.setLong(4, logicalResourceId);
-                resourceTokens.addBatch();
-
-                if (++resourceTokenCount == this.batchSize) {
-                    resourceTokens.executeBatch();
-                    resourceTokenCount = 0;
-                }
+                resourceTokens.add(parameterNameId, codeSystemId, tokenValue, logicalResourceId);
             }
             else {
                 if (logger.isLoggable(Level.FINE)) {
@@ -430,9 +350,6 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         catch (FHIRPersistenceDataAccessException x) {
             throw new FHIRPersistenceDataAccessException(parameterName + "=" + codeSystem + ":" + tokenValue, x);
         }
-        catch (SQLException x) {
-            throw new FHIRPersistenceDataAccessException(parameterName + "=" + codeSystem + ":" + tokenValue, x);
-        }
     }
 
     private void setTokenParms(PreparedStatement insert, int parameterNameId, int codeSystemId, String tokenValue) throws SQLException {
@@ -468,21 +385,12 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                             + quantityValue + " [" + quantityLow + ", " + quantityHigh + "]");
                 }
 
-                setQuantityParms(quantities, parameterNameId, codeSystem, code, quantityValue, quantityLow, quantityHigh);
-                quantities.addBatch();
-
-                if (++quantityCount == batchSize) {
-                    quantities.executeBatch();
-                    quantityCount = 0;
-                }
+                quantities.add(parameterNameId, getCodeSystemId(codeSystem), code, quantityValue, quantityLow, quantityHigh, logicalResourceId);
             }
             catch (FHIRPersistenceDataAccessException x) {
                 // wrap the exception so we have more context about the parameter causing the problem
                 throw new FHIRPersistenceDataAccessException(parameterName + "=" + code + ":" + codeSystem + "{" + quantityValue + ", " + quantityLow + ", " + quantityHigh + "}", x);
             }
-            catch (SQLException x) {
-                throw new FHIRPersistenceDataAccessException(parameterName + "=" + code + ":" + codeSystem + "{" + quantityValue + ", " + quantityLow + ", " + quantityHigh + "}", x);
-            }
         }
 
     }
@@ -531,10 +439,12 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
         }
 
         try {
-            int i = 1;
+            // the component columns of the row default to null
+            Object[] row = new Object[COMPOSITE_COLUMNS.length];
+            int i = 0;
             int parameterNameId = getParameterNameId(parameterName);
-            composites.setInt(i++, parameterNameId);
-            composites.setLong(i++, logicalResourceId);
+            row[i++] = parameterNameId;
+            row[i++] = logicalResourceId;
 
             for (ExtractedParameterValue val : component) {
                 // TODO figure out how to use the visitor here and still get back the generated id
@@ -546,11 +456,11 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                         // closing the insert statement also closes the resultset
                         ResultSet rs = insert.getGeneratedKeys();
                         if (rs.next()) {
-                            composites.setLong(i++, rs.getLong(1));
+                            row[i++] = rs.getLong(1);
                         }
                     }
                 } else {
-                    composites.setNull(i++, Types.BIGINT);
+                    i++;
                 }
 
                 if (val instanceof NumberParmVal) {
@@ -561,11 +471,11 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                         // closing the insert statement also closes the resultset
                         ResultSet rs = insert.getGeneratedKeys();
                         if (rs.next()) {
-                            composites.setLong(i++, rs.getLong(1));
+                            row[i++] = rs.getLong(1);
                         }
                     }
                 } else {
-                    composites.setNull(i++, Types.BIGINT);
+                    i++;
                 }
 
                 if (val instanceof DateParmVal) {
@@ -576,24 +486,27 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                         // closing the insert statement also closes the resultset
                         ResultSet rs = insert.getGeneratedKeys();
                         if (rs.next()) {
-                            composites.setLong(i++, rs.getLong(1));
+                            row[i++] = rs.getLong(1);
                         }
                     }
                 } else {
-                    composites.setNull(i++, Types.BIGINT);
+                    i++;
                 }
 
                 if (val instanceof TokenParmVal) {
                     TokenParmVal tVal = (TokenParmVal) val;
+                    if (tokenComp == null) {
+                        tokenComp = connection.prepareStatement(insertToken, Statement.RETURN_GENERATED_KEYS);
+                    }
                     setTokenParms(tokenComp, parameterNameId, getCodeSystemId(tVal.getValueSystem()), tVal.getValueCode());
                     tokenComp.executeUpdate();
                     try (ResultSet rs = tokenComp.getGeneratedKeys()) {
                         if (rs.next()) {
-                            composites.setLong(i++, rs.getLong(1));
+                            row[i++] = rs.getLong(1);
                         }
                     }
                 } else {
-                    composites.setNull(i++, Types.BIGINT);
+                    i++;
                 }
 
                 if (val instanceof QuantityParmVal) {
@@ -605,11 +518,11 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                         // closing the insert statement also closes the resultset
                         ResultSet rs = insert.getGeneratedKeys();
                         if (rs.next()) {
-                            composites.setLong(i++, rs.getLong(1));
+                            row[i++] = rs.getLong(1);
                         }
                     }
                 } else {
-                    composites.setNull(i++, Types.BIGINT);
+                    i++;
                 }
 
                 if (val instanceof LocationParmVal) {
@@ -620,22 +533,14 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
                         // closing the insert statement also closes the resultset
                         ResultSet rs = insert.getGeneratedKeys();
                         if (rs.next()) {
-                            composites.setLong(i++, rs.getLong(1));
+                            row[i++] = rs.getLong(1);
                         }
                     }
                 } else {
-                    composites.setNull(i++, Types.BIGINT);
+                    i++;
                 }
             }
-            while (i <= 20) {
-                composites.setNull(i++, Types.BIGINT);
-            }
-            composites.addBatch();
-
-            if (++compositesCount == this.batchSize) {
-                composites.executeBatch();
-                compositesCount = 0;
-            }
+            composites.add(row);
         } catch (SQLException x) {
             throw new FHIRPersistenceDataAccessException(parameterName + " of composite " +
                     component.stream().map(c -> c.getClass().getSimpleName()).collect(Collectors.joining(",")), x);
@@ -644,54 +549,17 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
 
     @Override
     public void close() throws Exception {
-        // flush any stragglers, remembering to reset each count because
+        // flush any stragglers. Each flush clears its buffer, because
         // close() should be idempotent.
         try {
-            if (stringCount > 0) {
-                strings.executeBatch();
-                stringCount = 0;
-            }
-
-            if (numberCount > 0) {
-                numbers.executeBatch();
-                numberCount = 0;
-            }
-
-            if (dateCount > 0) {
-                dates.executeBatch();
-                dateCount = 0;
-            }
-
-            if (tokenCount > 0) {
-                tokens.executeBatch();
-                tokenCount = 0;
-            }
-
-            if (quantityCount > 0) {
-                quantities.executeBatch();
-                quantityCount = 0;
-            }
-
-            if (compositesCount > 0) {
-                composites.executeBatch();
-                compositesCount = 0;
-            }
-
-            if (resourceStringCount > 0) {
-                resourceStrings.executeBatch();
-                resourceStringCount = 0;
-            }
-
-            if (resourceDateCount > 0) {
-                resourceDates.executeBatch();
-                resourceDateCount = 0;
-            }
-
-            if (resourceTokenCount > 0) {
-                resourceTokens.executeBatch();
-                resourceTokenCount = 0;
-            }
-
+            strings.flush();
+            numbers.flush();
+            dates.flush();
+            quantities.flush();
+            composites.flush();
+            resourceStrings.flush();
+            resourceDates.flush();
+            resourceTokens.flush();
         }
         catch (SQLException x) {
             SQLException batchException = x.getNextException();
@@ -709,15 +577,17 @@ public class ParameterVisitorBatchDAO implements ExtractedParameterValueVisitor,
             this.resourceReferenceDAO.addCommonTokenValues(this.tablePrefix, tokenValueRecs);
         }
 
-        closeStatement(strings);
-        closeStatement(numbers);
-        closeStatement(dates);
-        closeStatement(tokens);
-        closeStatement(tokenComp);
-        closeStatement(quantities);
-        closeStatement(resourceStrings);
-        closeStatement(resourceDates);
-        closeStatement(resourceTokens);
+        strings.close();
+        numbers.close();
+        dates.close();
+        quantities.close();
+        composites.close();
+        resourceStrings.close();
+        resourceDates.close();
+        resourceTokens.close();
+        if (tokenComp != null) {
+            closeStatement(tokenComp);
+        }
     }
 
     /**
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017, 2020
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -21,10 +21,13 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,8 +42,10 @@ import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavor;
 import com.ibm.fhir.persistence.jdbc.dao.api.IResourceReferenceDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceCursor;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
 import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
+import com.ibm.fhir.persistence.jdbc.dto.LocalReference;
 import com.ibm.fhir.persistence.jdbc.dto.Resource;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
@@ -84,6 +89,9 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
     // Don't forget that we must account for IN and OUT parameters.
     private static final String SQL_INSERT_WITH_PARAMETERS = "CALL %s.add_any_resource(?,?,?,?,?,?,?,?)";
 
+    private static final String SQL_INSERT_RESOURCE_CHANGE_LOG = "INSERT INTO resource_change_log "
+            + "(resource_id, resource_type_id, logical_id, version_id, change_tstamp, change_type) VALUES (?, ?, ?, ?, ?, ?)";
+
     // Read version history of the resource identified by its logical-id
     private static final String SQL_HISTORY =
             "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
@@ -116,6 +124,42 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
 
     private static final String SQL_ORDER_BY_IDS = "ORDER BY CASE R.RESOURCE_ID ";
 
+    // Read the current version id of a list of logical ids
+    private static final String SQL_READ_CURRENT_VERSION_IDS = "SELECT LR.LOGICAL_ID, R.VERSION_ID " +
+            "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+            "R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND LR.LOGICAL_ID IN ";
+
+    // Read the current version of a list of logical ids, unless it is deleted
+    private static final String SQL_SEARCH_BY_LOGICAL_IDS =
+            "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
+                    "FROM %s_RESOURCES R, %s_LOGICAL_RESOURCES LR WHERE " +
+                    "R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND R.IS_DELETED = 'N' AND LR.LOGICAL_ID IN ";
+
+    // Read given versions of a list of logical ids, unless the current version is deleted
+    private static final String SQL_SEARCH_BY_LOGICAL_ID_VERSIONS =
+            "SELECT R.RESOURCE_ID, R.LOGICAL_RESOURCE_ID, R.VERSION_ID, R.LAST_UPDATED, R.IS_DELETED, R.DATA, LR.LOGICAL_ID " +
+                    "FROM %1$s_RESOURCES R, %1$s_LOGICAL_RESOURCES LR, %1$s_RESOURCES CR WHERE " +
+                    "R.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID AND CR.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND CR.IS_DELETED = 'N' AND ";
+
+    // Read the references of a search parameter held by a list of logical ids
+    private static final String SQL_READ_REFERENCES = "SELECT LR.LOGICAL_ID, P1.TOKEN_VALUE, P1.REF_VERSION_ID " +
+            "FROM %s_TOKEN_VALUES_V P1, %s_LOGICAL_RESOURCES LR WHERE " +
+            "P1.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID AND P1.PARAMETER_NAME_ID = ? AND P1.CODE_SYSTEM_ID = ? AND LR.LOGICAL_ID IN ";
+
+    // Read the references of a search parameter to the current version of a list of logical ids
+    private static final String SQL_READ_REVERSE_REFERENCES = "SELECT LR.LOGICAL_ID, P1.TOKEN_VALUE, P1.REF_VERSION_ID " +
+            "FROM %1$s_TOKEN_VALUES_V P1, %1$s_LOGICAL_RESOURCES LR, %1$s_RESOURCES R, %2$s_LOGICAL_RESOURCES TLR, %2$s_RESOURCES TR WHERE " +
+            "P1.LOGICAL_RESOURCE_ID = LR.LOGICAL_RESOURCE_ID AND R.RESOURCE_ID = LR.CURRENT_RESOURCE_ID AND R.IS_DELETED = 'N' AND " +
+            "TLR.LOGICAL_ID = P1.TOKEN_VALUE AND TR.RESOURCE_ID = TLR.CURRENT_RESOURCE_ID AND " +
+            "(P1.REF_VERSION_ID IS NULL OR P1.REF_VERSION_ID = TR.VERSION_ID) AND " +
+            "P1.PARAMETER_NAME_ID = ? AND P1.CODE_SYSTEM_ID = ? AND P1.TOKEN_VALUE IN ";
+
+    // Reset the reindex timestamp of a list of logical resources
+    private static final String SQL_RESET_REINDEX_TSTAMP = "UPDATE LOGICAL_RESOURCES SET REINDEX_TSTAMP = ? WHERE LOGICAL_RESOURCE_ID IN ";
+
+    // The max number of bind variables we put in a single IN list
+    private static final int MAX_IN_LIST_SIZE = 500;
+
     private static final String DERBY_PAGINATION_PARMS = "OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
 
     private static final String DB2_PAGINATION_PARMS = "LIMIT ? OFFSET ?";
@@ -335,6 +379,21 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resources;
     }
 
+    @Override
+    public ResourceCursor searchCursor(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "searchCursor(SqlQueryData)";
+        log.entering(CLASSNAME, METHODNAME);
+
+        String sqlSelect = queryData.getQueryString();
+        Object[] bindVariables = queryData.getBindVariables().toArray();
+
+        try {
+            return this.runQueryCursor(sqlSelect, bindVariables);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
     @Override
     public int searchCount(SqlQueryData queryData) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "searchCount(SqlQueryData)";
@@ -640,6 +699,33 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         return resource;
     }
 
+    /**
+     * Record the creation, update or deletion of a resource version in the RESOURCE_CHANGE_LOG table.
+     * Used by the implementations which insert resources without the add_any_resource procedure,
+     * which records the change itself.
+     * @param conn
+     * @param resourceId the resource_id of the new version
+     * @param resourceTypeId
+     * @param logicalId
+     * @param versionId
+     * @param lastUpdated
+     * @param isDeleted
+     * @throws SQLException
+     */
+    protected void addResourceChangeLog(Connection conn, long resourceId, int resourceTypeId, String logicalId, int versionId,
+            Timestamp lastUpdated, boolean isDeleted) throws SQLException {
+        final String changeType = isDeleted ? "D" : versionId == 1 ? "C" : "U";
+        try (PreparedStatement ps = conn.prepareStatement(SQL_INSERT_RESOURCE_CHANGE_LOG)) {
+            ps.setLong(1, resourceId);
+            ps.setInt(2, resourceTypeId);
+            ps.setString(3, logicalId);
+            ps.setInt(4, versionId);
+            ps.setTimestamp(5, lastUpdated, UTC);
+            ps.setString(6, changeType);
+            ps.executeUpdate();
+        }
+    }
+
     @Override
     public List<Resource> search(String sqlSelect) throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
         final String METHODNAME = "search";
@@ -748,6 +834,284 @@ public class ResourceDAOImpl extends FHIRDbDAOImpl implements ResourceDAO {
         }
     }
 
+    @Override
+    public Map<String, Integer> readCurrentVersionIds(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readCurrentVersionIds";
+        log.entering(CLASSNAME, METHODNAME);
+
+        Map<String, Integer> result = new HashMap<>();
+        Connection connection = getConnection(); // do not close
+        List<String> ids = new ArrayList<>(logicalIds);
+        long dbCallStartTime = System.nanoTime();
+
+        try {
+            for (int start = 0; start < ids.size(); start += MAX_IN_LIST_SIZE) {
+                List<String> batch = ids.subList(start, Math.min(start + MAX_IN_LIST_SIZE, ids.size()));
+                String stmtString = String.format(SQL_READ_CURRENT_VERSION_IDS, resourceType, resourceType) + inList(batch.size());
+                try (PreparedStatement stmt = connection.prepareStatement(stmtString)) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        stmt.setString(i + 1, batch.get(i));
+                    }
+                    try (ResultSet resultSet = stmt.executeQuery()) {
+                        while (resultSet.next()) {
+                            result.put(resultSet.getString(1), resultSet.getInt(2));
+                        }
+                    }
+                }
+            }
+            if (log.isLoggable(Level.FINE)) {
+                double dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+                log.fine("DB read current version ids complete. resourceType=" + resourceType + " ids=" + ids.size()
+                        + " found=" + result.size() + " executionTime=" + dbCallDuration + "ms");
+            }
+        } catch (SQLException e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure reading current version ids");
+            throw severe(log, fx, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Resource> searchByLogicalIds(String resourceType, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "searchByLogicalIds";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<Resource> result = new ArrayList<>();
+        Connection connection = getConnection(); // do not close
+        List<String> ids = new ArrayList<>(logicalIds);
+        long dbCallStartTime = System.nanoTime();
+
+        try {
+            for (int start = 0; start < ids.size(); start += MAX_IN_LIST_SIZE) {
+                List<String> batch = ids.subList(start, Math.min(start + MAX_IN_LIST_SIZE, ids.size()));
+                String stmtString = String.format(SQL_SEARCH_BY_LOGICAL_IDS, resourceType, resourceType) + inList(batch.size());
+                try (PreparedStatement stmt = connection.prepareStatement(stmtString)) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        stmt.setString(i + 1, batch.get(i));
+                    }
+                    try (ResultSet resultSet = stmt.executeQuery()) {
+                        result.addAll(this.createDTOs(resultSet));
+                    }
+                }
+            }
+            if (log.isLoggable(Level.FINE)) {
+                double dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+                log.fine("DB search by logical ids complete. resourceType=" + resourceType + " ids=" + ids.size()
+                        + " found=" + result.size() + " executionTime=" + dbCallDuration + "ms");
+            }
+        } catch (SQLException e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure retrieving FHIR Resources");
+            throw severe(log, fx, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Resource> searchByLogicalIdVersions(String resourceType, Collection<LocalReference> references)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "searchByLogicalIdVersions";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<Resource> result = new ArrayList<>();
+        Connection connection = getConnection(); // do not close
+        List<LocalReference> refs = new ArrayList<>(references);
+        long dbCallStartTime = System.nanoTime();
+
+        // Each reference takes two bind variables
+        final int batchSize = MAX_IN_LIST_SIZE / 2;
+        try {
+            for (int start = 0; start < refs.size(); start += batchSize) {
+                List<LocalReference> batch = refs.subList(start, Math.min(start + batchSize, refs.size()));
+                StringBuilder stmtString = new StringBuilder(String.format(SQL_SEARCH_BY_LOGICAL_ID_VERSIONS, resourceType));
+                stmtString.append("(");
+                for (int i = 0; i < batch.size(); i++) {
+                    if (i > 0) {
+                        stmtString.append(" OR ");
+                    }
+                    stmtString.append("(LR.LOGICAL_ID = ? AND R.VERSION_ID = ?)");
+                }
+                stmtString.append(")");
+                try (PreparedStatement stmt = connection.prepareStatement(stmtString.toString())) {
+                    int a = 1;
+                    for (LocalReference ref : batch) {
+                        stmt.setString(a++, ref.getTargetLogicalId());
+                        stmt.setInt(a++, ref.getTargetVersionId());
+                    }
+                    try (ResultSet resultSet = stmt.executeQuery()) {
+                        result.addAll(this.createDTOs(resultSet));
+                    }
+                }
+            }
+            if (log.isLoggable(Level.FINE)) {
+                double dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+                log.fine("DB search by logical id versions complete. resourceType=" + resourceType + " refs=" + refs.size()
+                        + " found=" + result.size() + " executionTime=" + dbCallDuration + "ms");
+            }
+        } catch (SQLException e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure retrieving FHIR Resources");
+            throw severe(log, fx, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return result;
+    }
+
+    @Override
+    public List<LocalReference> readReferences(String resourceType, int parameterNameId, int targetTypeCodeSystemId, Collection<String> logicalIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readReferences";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<LocalReference> result = new ArrayList<>();
+        Connection connection = getConnection(); // do not close
+        List<String> ids = new ArrayList<>(logicalIds);
+        long dbCallStartTime = System.nanoTime();
+
+        try {
+            for (int start = 0; start < ids.size(); start += MAX_IN_LIST_SIZE) {
+                List<String> batch = ids.subList(start, Math.min(start + MAX_IN_LIST_SIZE, ids.size()));
+                String stmtString = String.format(SQL_READ_REFERENCES, resourceType, resourceType) + inList(batch.size());
+                try (PreparedStatement stmt = connection.prepareStatement(stmtString)) {
+                    stmt.setInt(1, parameterNameId);
+                    stmt.setInt(2, targetTypeCodeSystemId);
+                    for (int i = 0; i < batch.size(); i++) {
+                        stmt.setString(i + 3, batch.get(i));
+                    }
+                    try (ResultSet resultSet = stmt.executeQuery()) {
+                        while (resultSet.next()) {
+                            result.add(createReference(resultSet));
+                        }
+                    }
+                }
+            }
+            if (log.isLoggable(Level.FINE)) {
+                double dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+                log.fine("DB read references complete. resourceType=" + resourceType + " ids=" + ids.size()
+                        + " found=" + result.size() + " executionTime=" + dbCallDuration + "ms");
+            }
+        } catch (SQLException e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure reading references");
+            throw severe(log, fx, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return result;
+    }
+
+    @Override
+    public List<LocalReference> readReverseReferences(String resourceType, int parameterNameId, String targetType, int targetTypeCodeSystemId,
+            Collection<String> targetLogicalIds, int maxPerTarget, int maxResults)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "readReverseReferences";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<LocalReference> result = new ArrayList<>();
+        Connection connection = getConnection(); // do not close
+        List<String> ids = new ArrayList<>(targetLogicalIds);
+        long dbCallStartTime = System.nanoTime();
+
+        // The sources already returned for each target. The per-target bound can't be expressed portably
+        // in SQL, so the rows beyond it are skipped here, and reading stops once maxResults is reached.
+        Map<String, Set<String>> sourcesByTarget = new HashMap<>();
+        try {
+            for (int start = 0; start < ids.size() && result.size() < maxResults; start += MAX_IN_LIST_SIZE) {
+                List<String> batch = ids.subList(start, Math.min(start + MAX_IN_LIST_SIZE, ids.size()));
+                String stmtString = String.format(SQL_READ_REVERSE_REFERENCES, resourceType, targetType) + inList(batch.size());
+                try (PreparedStatement stmt = connection.prepareStatement(stmtString)) {
+                    stmt.setInt(1, parameterNameId);
+                    stmt.setInt(2, targetTypeCodeSystemId);
+                    for (int i = 0; i < batch.size(); i++) {
+                        stmt.setString(i + 3, batch.get(i));
+                    }
+                    try (ResultSet resultSet = stmt.executeQuery()) {
+                        while (result.size() < maxResults && resultSet.next()) {
+                            LocalReference ref = createReference(resultSet);
+                            Set<String> sources = sourcesByTarget.computeIfAbsent(ref.getTargetLogicalId(), k -> new HashSet<>());
+                            if (sources.size() < maxPerTarget && sources.add(ref.getSourceLogicalId())) {
+                                result.add(ref);
+                            }
+                        }
+                    }
+                }
+            }
+            if (log.isLoggable(Level.FINE)) {
+                double dbCallDuration = (System.nanoTime() - dbCallStartTime) / 1e6;
+                log.fine("DB read reverse references complete. resourceType=" + resourceType + " targetType=" + targetType
+                        + " ids=" + ids.size() + " found=" + result.size() + " executionTime=" + dbCallDuration + "ms");
+            }
+        } catch (SQLException e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure reading references");
+            throw severe(log, fx, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+        return result;
+    }
+
+    /**
+     * Create a reference from the current row of a result set holding the source logical id,
+     * the target logical id and the target version id, in that order
+     * @param resultSet
+     * @return
+     * @throws SQLException
+     */
+    private LocalReference createReference(ResultSet resultSet) throws SQLException {
+        int refVersionId = resultSet.getInt(3);
+        return new LocalReference(resultSet.getString(1), resultSet.getString(2), resultSet.wasNull() ? null : refVersionId);
+    }
+
+    @Override
+    public void resetReindexTstamp(Collection<Long> logicalResourceIds)
+            throws FHIRPersistenceDataAccessException, FHIRPersistenceDBConnectException {
+        final String METHODNAME = "resetReindexTstamp";
+        log.entering(CLASSNAME, METHODNAME);
+
+        Connection connection = getConnection(); // do not close
+        List<Long> ids = new ArrayList<>(logicalResourceIds);
+        Timestamp defaultReindexTstamp = Timestamp.valueOf(DEFAULT_VALUE_REINDEX_TSTAMP);
+
+        try {
+            for (int start = 0; start < ids.size(); start += MAX_IN_LIST_SIZE) {
+                List<Long> batch = ids.subList(start, Math.min(start + MAX_IN_LIST_SIZE, ids.size()));
+                try (PreparedStatement stmt = connection.prepareStatement(SQL_RESET_REINDEX_TSTAMP + inList(batch.size()))) {
+                    stmt.setTimestamp(1, defaultReindexTstamp);
+                    for (int i = 0; i < batch.size(); i++) {
+                        stmt.setLong(i + 2, batch.get(i));
+                    }
+                    stmt.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            FHIRPersistenceDataAccessException fx = new FHIRPersistenceDataAccessException("Failure resetting reindex timestamps");
+            throw severe(log, fx, e);
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Build an IN list with the given number of bind variables, e.g. (?,?,?)
+     * @param size
+     * @return
+     */
+    private static String inList(int size) {
+        StringBuilder result = new StringBuilder("(");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                result.append(",");
+            }
+            result.append("?");
+        }
+        result.append(")");
+        return result.toString();
+    }
+
     /**
      * Getter for access to the {@link FHIRPersistenceJDBCCache} from subclasses
      *
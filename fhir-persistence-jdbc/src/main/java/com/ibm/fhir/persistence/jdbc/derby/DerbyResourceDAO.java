@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -415,6 +415,9 @@ public class DerbyResourceDAO extends ResourceDAOImpl {
             stmt.executeUpdate();
         }
 
+        // Record the change in the global change log used for system and type level history
+        addResourceChangeLog(conn, v_resource_id, v_resource_type_id, p_logical_id, v_insert_version, p_last_updated, p_is_deleted);
+
         if (p_version == null || p_version > v_version) {
             //only update the logical resource if the resource we are adding supercedes the
             //current resource
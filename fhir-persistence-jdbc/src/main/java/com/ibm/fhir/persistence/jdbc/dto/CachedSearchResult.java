@@ -0,0 +1,42 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dto;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * DTO representing the outcome of a search held in the search result cache.
+ * Only the total count and the RESOURCE_ID values of the requested page are
+ * kept, never the resource payloads.
+ */
+public class CachedSearchResult {
+
+    private final int totalCount;
+
+    // null when only the count was requested (or nothing matched)
+    private final List<Long> resourceIds;
+
+    public CachedSearchResult(int totalCount, List<Long> resourceIds) {
+        this.totalCount = totalCount;
+        this.resourceIds = resourceIds == null ? null : Collections.unmodifiableList(resourceIds);
+    }
+
+    /**
+     * @return the totalCount
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the RESOURCE_ID values of the page in result order, or null if no page was fetched
+     */
+    public List<Long> getResourceIds() {
+        return resourceIds;
+    }
+}
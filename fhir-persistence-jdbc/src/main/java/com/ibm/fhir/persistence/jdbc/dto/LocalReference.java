@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dto;
+
+/**
+ * DTO representing a reference from one resource to another resource stored in this
+ * server, as indexed in the token values of a reference search parameter.
+ */
+public class LocalReference {
+
+    // the logical id of the resource holding the reference
+    private final String sourceLogicalId;
+
+    // the logical id of the referenced resource
+    private final String targetLogicalId;
+
+    // the version of the referenced resource, or null if the reference isn't versioned
+    private final Integer targetVersionId;
+
+    public LocalReference(String sourceLogicalId, String targetLogicalId, Integer targetVersionId) {
+        this.sourceLogicalId = sourceLogicalId;
+        this.targetLogicalId = targetLogicalId;
+        this.targetVersionId = targetVersionId;
+    }
+
+    /**
+     * @return the logical id of the resource holding the reference
+     */
+    public String getSourceLogicalId() {
+        return sourceLogicalId;
+    }
+
+    /**
+     * @return the logical id of the referenced resource
+     */
+    public String getTargetLogicalId() {
+        return targetLogicalId;
+    }
+
+    /**
+     * @return the version of the referenced resource, or null if the reference isn't versioned
+     */
+    public Integer getTargetVersionId() {
+        return targetVersionId;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.dto;
+
+/**
+ * DTO representing lightweight statistics of the values of one search parameter
+ * of one resource type, read from a bounded sample of its parameter table rows.
+ *
+ * <p>When the sample doesn't hold all of the rows of the parameter, the counts are scaled up
+ * to the row count of the parameter table in the database catalog. The table holds the rows of
+ * the other parameters of the resource type too, so the scaled counts are upper bounds. The
+ * number of distinct values is scaled with the Haas and Stokes estimator, which uses the number
+ * of values seen only once in the sample: a parameter whose sampled values are all different
+ * (e.g. an identifier) keeps about one row per value, however big the table, whereas the rows
+ * per value of a parameter with a few repeated values (e.g. a status) grow with the table.
+ */
+public class ParameterStatistics {
+
+    // the number of rows in the sample
+    private final long rowCount;
+
+    // the number of distinct values in the sample
+    private final long distinctValueCount;
+
+    // the number of values which occur only once in the sample
+    private final long singletonCount;
+
+    // the maximum size of the sample
+    private final int sampleSize;
+
+    // the row count of the parameter table from the database catalog, or -1 if not known
+    private final long tableRowCount;
+
+    public ParameterStatistics(long rowCount, long distinctValueCount, long singletonCount, int sampleSize, long tableRowCount) {
+        this.rowCount = rowCount;
+        this.distinctValueCount = distinctValueCount;
+        this.singletonCount = singletonCount;
+        this.sampleSize = sampleSize;
+        this.tableRowCount = tableRowCount;
+    }
+
+    /**
+     * @return the number of rows in the sample
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the number of distinct values in the sample
+     */
+    public long getDistinctValueCount() {
+        return distinctValueCount;
+    }
+
+    /**
+     * @return the number of values which occur only once in the sample
+     */
+    public long getSingletonCount() {
+        return singletonCount;
+    }
+
+    /**
+     * @return the row count of the parameter table from the database catalog, or -1 if not known
+     */
+    public long getTableRowCount() {
+        return tableRowCount;
+    }
+
+    /**
+     * @return true if the sample holds all of the rows of the parameter
+     */
+    public boolean isComplete() {
+        return rowCount < sampleSize;
+    }
+
+    /**
+     * @return the estimated number of rows of the parameter in the database
+     */
+    public double getEstimatedRowCount() {
+        if (isComplete() || tableRowCount <= rowCount) {
+            // all there is, or all that is known
+            return rowCount;
+        }
+        return tableRowCount;
+    }
+
+    /**
+     * @return the estimated number of distinct values of the parameter in the database
+     */
+    public double getEstimatedDistinctValueCount() {
+        final double estimatedRows = getEstimatedRowCount();
+        if (rowCount == 0 || estimatedRows <= rowCount) {
+            return distinctValueCount;
+        }
+        // Haas and Stokes: n * d / (n - f1 + f1 * n / N)
+        double n = rowCount;
+        double denominator = n - singletonCount + singletonCount * n / estimatedRows;
+        return Math.min(estimatedRows, n * distinctValueCount / denominator);
+    }
+
+    /**
+     * @return the estimated number of rows which match a single value of the parameter
+     */
+    public double getRowsPerValue() {
+        final double distinct = getEstimatedDistinctValueCount();
+        return distinct == 0 ? 0 : getEstimatedRowCount() / distinct;
+    }
+}
@@ -34,6 +34,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -51,6 +54,8 @@ import com.ibm.fhir.config.FHIRConfigProvider;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.config.PropertyGroup;
+import com.ibm.fhir.config.metrics.RequestPhase;
+import com.ibm.fhir.config.metrics.RequestTimings;
 import com.ibm.fhir.core.FHIRUtilities;
 import com.ibm.fhir.core.context.FHIRPagingContext;
 import com.ibm.fhir.database.utils.api.DataAccessException;
@@ -86,7 +91,10 @@ import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
 import com.ibm.fhir.persistence.MultiResourceResult;
+import com.ibm.fhir.persistence.ResourceChangeLogRecord;
+import com.ibm.fhir.persistence.ResourceChangeLogRecord.ChangeType;
 import com.ibm.fhir.persistence.ResourcePayload;
+import com.ibm.fhir.persistence.SearchResultCursor;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -106,21 +114,28 @@ import com.ibm.fhir.persistence.jdbc.connection.FHIRDbTenantDatasourceConnection
 import com.ibm.fhir.persistence.jdbc.connection.FHIRDbTestConnectionStrategy;
 import com.ibm.fhir.persistence.jdbc.connection.FHIRTestTransactionAdapter;
 import com.ibm.fhir.persistence.jdbc.connection.FHIRUserTransactionAdapter;
+import com.ibm.fhir.persistence.jdbc.connection.ReplicaLagMonitor;
 import com.ibm.fhir.persistence.jdbc.connection.SchemaNameFromProps;
 import com.ibm.fhir.persistence.jdbc.connection.SchemaNameImpl;
 import com.ibm.fhir.persistence.jdbc.connection.SchemaNameSupplier;
 import com.ibm.fhir.persistence.jdbc.connection.SetTenantAction;
+import com.ibm.fhir.persistence.jdbc.connection.TimedConnection;
 import com.ibm.fhir.persistence.jdbc.dao.ReindexResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.IResourceReferenceDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ISearchResultCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
 import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceCursor;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
 import com.ibm.fhir.persistence.jdbc.dao.api.ResourceIndexRecord;
+import com.ibm.fhir.persistence.jdbc.dao.impl.FetchResourceChangesDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.FetchResourcePayloadsDAO;
 import com.ibm.fhir.persistence.jdbc.dao.impl.JDBCIdentityCacheImpl;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterDAOImpl;
 import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceTokenValueRec;
 import com.ibm.fhir.persistence.jdbc.dao.impl.TransactionDataImpl;
+import com.ibm.fhir.persistence.jdbc.dto.CachedSearchResult;
 import com.ibm.fhir.persistence.jdbc.dto.CompositeParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.DateParmVal;
 import com.ibm.fhir.persistence.jdbc.dto.ExtractedParameterValue;
@@ -133,8 +148,12 @@ import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDBConnectException
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
 import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceFKVException;
 import com.ibm.fhir.persistence.jdbc.util.CodeSystemsCache;
+import com.ibm.fhir.persistence.jdbc.util.InclusionResolver;
 import com.ibm.fhir.persistence.jdbc.util.JDBCParameterBuildingVisitor;
 import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
+import com.ibm.fhir.persistence.jdbc.util.SelectivityEstimator;
+import com.ibm.fhir.persistence.jdbc.util.ParallelResourceConverter;
+import com.ibm.fhir.persistence.jdbc.util.StreamingSearchResultCursor;
 import com.ibm.fhir.persistence.jdbc.util.ParameterNamesCache;
 import com.ibm.fhir.persistence.jdbc.util.ResourceTypesCache;
 import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
@@ -143,6 +162,7 @@ import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
 import com.ibm.fhir.persistence.util.LogicalIdentityProvider;
 import com.ibm.fhir.schema.control.FhirSchemaConstants;
 import com.ibm.fhir.search.SearchConstants;
+import com.ibm.fhir.search.SearchConstants.Modifier;
 import com.ibm.fhir.search.SummaryValueSet;
 import com.ibm.fhir.search.compartment.CompartmentUtil;
 import com.ibm.fhir.search.context.FHIRSearchContext;
@@ -168,10 +188,34 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
     protected static final String TXN_JNDI_NAME = "java:comp/UserTransaction";
     public static final String TRX_SYNCH_REG_JNDI_NAME = "java:comp/TransactionSynchronizationRegistry";
     private static final String TXN_DATA_KEY = "transactionDataKey/" + CLASSNAME;
+    private static final String SESSION_KEY_PREFIX = "persistenceSession/" + CLASSNAME + "/";
 
     // The following are filtered as they are handled specifically by the persistence layer:
     private static final List<String> SPECIAL_HANDLING = Arrays.asList("_id", "_lastUpdated");
 
+    // Search result cache dependency invalidated by every write
+    private static final String SEARCH_RESULT_ANY_DEPENDENCY = "*";
+
+    // Used to serialize resources and extract their search parameters in parallel for createOrUpdateBatch
+    private static final ForkJoinPool batchPreparePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // Runs the token value cache prefill of each tenant/datastore in the background, one at a time
+    private static final ExecutorService cachePrefillExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "fhir-cache-prefill");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Reads the search parameter statistics in the background, on connections of their own
+    private static final ExecutorService statisticsExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "fhir-search-statistics");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // The time allowed for counting the token value references when prefilling the cache
+    private static final int TOKEN_VALUE_PREFILL_TIMEOUT_SECONDS = 120;
+
     private final TransactionSynchronizationRegistry trxSynchRegistry;
     private List<OperationOutcome.Issue> supplementalIssues = new ArrayList<>();
 
@@ -243,6 +287,10 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         } else {
             //  use separate JNDI datasources for each tenant/dsId (preferred approach)
             boolean enableReadOnlyReplicas = fhirConfig.getBooleanProperty(FHIRConfiguration.PROPERTY_JDBC_ENABLE_READ_ONLY_REPLICAS, Boolean.FALSE);
+            if (enableReadOnlyReplicas) {
+                ReplicaLagMonitor.getInstance().setMaxLagMillis(fhirConfig.getIntProperty(FHIRConfiguration.PROPERTY_JDBC_READ_ONLY_REPLICA_MAX_LAG,
+                    (int) ReplicaLagMonitor.DEFAULT_MAX_LAG_MS));
+            }
             this.connectionStrategy = new FHIRDbTenantDatasourceConnectionStrategy(trxSynchRegistry, buildActionChain(), enableReadOnlyReplicas);
         }
 
@@ -390,11 +438,14 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
 
             // Persist the Resource DTO.
             resourceDao.setPersistenceContext(context);
-            resourceDao.insert(resourceDTO, this.extractSearchParameters(updatedResource, resourceDTO), parameterDao);
+            List<ExtractedParameterValue> parameters = this.extractSearchParameters(updatedResource, resourceDTO);
+            resourceDao.insert(resourceDTO, parameters, parameterDao);
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Persisted FHIR Resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "' id=" + resourceDTO.getId()
                             + ", version=" + resourceDTO.getVersionId());
             }
+            invalidateSearchResults(getCreateDependencies(resourceDTO.getResourceType(), parameters));
+            invalidateCurrentVersion(resourceDTO.getResourceType(), logicalId);
 
             SingleResourceResult.Builder<T> resultBuilder = new SingleResourceResult.Builder<T>()
                     .success(true)
@@ -436,21 +487,40 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
      * @throws FHIRPersistenceDataAccessException
      */
     private ResourceDAO makeResourceDAO(Connection connection) throws FHIRPersistenceDataAccessException, FHIRPersistenceException, IllegalArgumentException {
+        PersistenceSession session = getSession(connection);
+        if (session != null && session.getResourceDAO() != null) {
+            // the caches were already checked for prefill when the session's DAO was made
+            return session.getResourceDAO();
+        }
 
         // The resourceDAO is made before any database interaction, so this is a great spot
         // to prefill the caches if needed
         doCachePrefill(connection);
 
+        ResourceDAO resourceDao;
         if (this.trxSynchRegistry != null) {
             String datastoreId = FHIRRequestContext.get().getDataStoreId();
-            return FHIRResourceDAOFactory.getResourceDAO(connection, FhirSchemaConstants.FHIR_ADMIN, schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor(), this.trxSynchRegistry, this.cache, this.getTransactionDataForDatasource(datastoreId));
+            resourceDao = FHIRResourceDAOFactory.getResourceDAO(connection, FhirSchemaConstants.FHIR_ADMIN, getSchemaName(connection), connectionStrategy.getFlavor(), this.trxSynchRegistry, this.cache, this.getTransactionDataForDatasource(datastoreId));
         } else {
-            return FHIRResourceDAOFactory.getResourceDAO(connection, FhirSchemaConstants.FHIR_ADMIN, schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor(), this.cache);
+            resourceDao = FHIRResourceDAOFactory.getResourceDAO(connection, FhirSchemaConstants.FHIR_ADMIN, getSchemaName(connection), connectionStrategy.getFlavor(), this.cache);
+        }
+        if (session != null) {
+            session.setResourceDAO(resourceDao);
         }
+        return resourceDao;
     }
 
     private IResourceReferenceDAO makeResourceReferenceDAO(Connection connection) throws FHIRPersistenceDataAccessException, FHIRPersistenceException, IllegalArgumentException {
-        return FHIRResourceDAOFactory.getResourceReferenceDAO(connection, FhirSchemaConstants.FHIR_ADMIN, schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor(), this.cache);
+        PersistenceSession session = getSession(connection);
+        if (session != null && session.getResourceReferenceDAO() != null) {
+            return session.getResourceReferenceDAO();
+        }
+
+        IResourceReferenceDAO resourceReferenceDao = FHIRResourceDAOFactory.getResourceReferenceDAO(connection, FhirSchemaConstants.FHIR_ADMIN, getSchemaName(connection), connectionStrategy.getFlavor(), this.cache);
+        if (session != null) {
+            session.setResourceReferenceDAO(resourceReferenceDao);
+        }
+        return resourceReferenceDao;
     }
 
     /**
@@ -461,11 +531,38 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
      * @throws FHIRPersistenceDataAccessException
      */
     private ParameterDAO makeParameterDAO(Connection connection) throws FHIRPersistenceDataAccessException, FHIRPersistenceException {
+        PersistenceSession session = getSession(connection);
+        if (session != null && session.getParameterDAO() != null) {
+            return session.getParameterDAO();
+        }
+
+        ParameterDAO parameterDao;
         if (this.trxSynchRegistry != null) {
-            return new ParameterDAOImpl(connection, schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor(), trxSynchRegistry);
+            parameterDao = new ParameterDAOImpl(connection, getSchemaName(connection), connectionStrategy.getFlavor(), trxSynchRegistry);
         } else {
-            return new ParameterDAOImpl(connection, schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor());
+            parameterDao = new ParameterDAOImpl(connection, getSchemaName(connection), connectionStrategy.getFlavor());
+        }
+        if (session != null) {
+            session.setParameterDAO(parameterDao);
         }
+        return parameterDao;
+    }
+
+    /**
+     * Get the schema name for the current request, which is resolved once per session
+     * @param connection
+     * @return
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private String getSchemaName(Connection connection) throws FHIRPersistenceDBConnectException {
+        PersistenceSession session = getSession(connection);
+        if (session == null) {
+            return schemaNameSupplier.getSchemaForRequestContext(connection);
+        }
+        if (session.getSchemaName() == null) {
+            session.setSchemaName(schemaNameSupplier.getSchemaForRequestContext(connection));
+        }
+        return session.getSchemaName();
     }
 
     @Override
@@ -559,11 +656,18 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
 
             // Persist the Resource DTO.
             resourceDao.setPersistenceContext(context);
-            resourceDao.insert(resourceDTO, this.extractSearchParameters(updatedResource, resourceDTO), parameterDao);
+            List<ExtractedParameterValue> parameters = this.extractSearchParameters(updatedResource, resourceDTO);
+            resourceDao.insert(resourceDTO, parameters, parameterDao);
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Persisted FHIR Resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "' id=" + resourceDTO.getId()
                             + ", version=" + resourceDTO.getVersionId());
             }
+            List<String> dependencies = getCreateDependencies(resourceDTO.getResourceType(), parameters);
+            if (existingVersion != 0) {
+                dependencies.add(changedDependency(resourceDTO.getResourceType()));
+            }
+            invalidateSearchResults(dependencies);
+            invalidateCurrentVersion(resourceDTO.getResourceType(), logicalId);
 
             SingleResourceResult.Builder<T> resultBuilder = new SingleResourceResult.Builder<T>()
                     .success(true)
@@ -596,6 +700,204 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public List<SingleResourceResult<Resource>> createOrUpdateBatch(FHIRPersistenceContext context, List<Resource> resources,
+            boolean deferIndexing) throws FHIRPersistenceException {
+        final String METHODNAME = "createOrUpdateBatch";
+        log.entering(CLASSNAME, METHODNAME);
+
+        List<SingleResourceResult<Resource>> results = new ArrayList<>(resources.size());
+
+        try (Connection connection = openConnection()) {
+            // One set of DAOs is used for the whole batch
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+            resourceDao.setPersistenceContext(context);
+
+            // Fetch the current version of every resource being updated, using one query per resource type
+            Map<String, Set<String>> logicalIdsByType = new HashMap<>();
+            for (Resource resource : resources) {
+                if (resource.getId() != null) {
+                    logicalIdsByType.computeIfAbsent(resource.getClass().getSimpleName(), k -> new HashSet<>()).add(resource.getId());
+                }
+            }
+            Map<String, Map<String, Integer>> versionsByType = new HashMap<>();
+            for (Entry<String, Set<String>> entry : logicalIdsByType.entrySet()) {
+                versionsByType.put(entry.getKey(), resourceDao.readCurrentVersionIds(entry.getKey(), entry.getValue()));
+            }
+
+            // Assign the logical id and version of each resource. The same resource may appear more than
+            // once in the batch, so the version map is bumped as we go.
+            List<BatchEntry> entries = new ArrayList<>(resources.size());
+            for (Resource resource : resources) {
+                BatchEntry entry = new BatchEntry(resource);
+                entries.add(entry);
+                if (resource.getId() == null) {
+                    entry.logicalId = generateResourceId();
+                    entry.versionId = 1;
+                } else {
+                    Map<String, Integer> versions = versionsByType.get(resource.getClass().getSimpleName());
+                    Integer existingVersion = versions.get(resource.getId());
+                    if (existingVersion == null && !updateCreateEnabled) {
+                        String msg = "Resource '" + resource.getClass().getSimpleName() + "/" + resource.getId() + "' not found.";
+                        log.log(Level.SEVERE, msg);
+                        entry.failure = new FHIRPersistenceResourceNotFoundException(msg);
+                        continue;
+                    }
+                    entry.logicalId = resource.getId();
+                    entry.versionId = existingVersion == null ? 1 : existingVersion + 1;
+                    versions.put(entry.logicalId, entry.versionId);
+                }
+            }
+
+            // Serialize the resources and extract their search parameters in parallel. The worker threads need the
+            // request context to pick up the tenant-specific search parameters.
+            final FHIRRequestContext requestContext = FHIRRequestContext.get();
+            if (entries.size() > 1) {
+                batchPreparePool.submit(() -> entries.parallelStream().forEach(entry -> {
+                    FHIRRequestContext.set(requestContext);
+                    try {
+                        prepareBatchEntry(entry, deferIndexing);
+                    } finally {
+                        // Don't leave the request context behind on the pool thread
+                        FHIRRequestContext.remove();
+                    }
+                })).get();
+            } else {
+                entries.forEach(entry -> prepareBatchEntry(entry, deferIndexing));
+            }
+
+            // Insert the resources using the shared connection and DAOs
+            List<Long> deferredLogicalResourceIds = new ArrayList<>();
+            Set<String> dependencies = new HashSet<>();
+            for (BatchEntry entry : entries) {
+                if (entry.failure == null) {
+                    try {
+                        resourceDao.insert(entry.resourceDTO, entry.parameters, parameterDao);
+                        if (log.isLoggable(Level.FINE)) {
+                            log.fine("Persisted FHIR Resource '" + entry.resourceDTO.getResourceType() + "/" + entry.resourceDTO.getLogicalId()
+                                    + "' id=" + entry.resourceDTO.getId() + ", version=" + entry.resourceDTO.getVersionId());
+                        }
+                        dependencies.addAll(getCreateDependencies(entry.resourceDTO.getResourceType(), entry.parameters));
+                        if (entry.versionId > 1) {
+                            dependencies.add(changedDependency(entry.resourceDTO.getResourceType()));
+                        }
+                        invalidateCurrentVersion(entry.resourceDTO.getResourceType(), entry.logicalId);
+                        if (deferIndexing) {
+                            deferredLogicalResourceIds.add(entry.resourceDTO.getId());
+                        }
+                    } catch (FHIRPersistenceException e) {
+                        entry.failure = e;
+                    }
+                }
+
+                if (entry.failure == null) {
+                    SingleResourceResult.Builder<Resource> resultBuilder = new SingleResourceResult.Builder<Resource>()
+                            .success(true)
+                            .resource(entry.updatedResource);
+                    if (!supplementalIssues.isEmpty()) {
+                        resultBuilder.outcome(OperationOutcome.builder()
+                            .issue(supplementalIssues)
+                            .build());
+                    }
+                    results.add(resultBuilder.build());
+                } else {
+                    results.add(new SingleResourceResult.Builder<Resource>()
+                            .success(false)
+                            .outcome(FHIRUtil.buildOperationOutcome(entry.failure, false))
+                            .build());
+                }
+            }
+
+            // Make sure the resources stored without their search parameters are picked up by the next reindex
+            if (!deferredLogicalResourceIds.isEmpty()) {
+                resourceDao.resetReindexTstamp(deferredLogicalResourceIds);
+            }
+            invalidateSearchResults(dependencies);
+
+            return results;
+        }
+        catch(FHIRPersistenceException e) {
+            throw e;
+        }
+        catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a batch create or update operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+        finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Builds the new version of the resource held by the passed entry, serializes it and, unless indexing
+     * is deferred, extracts its search parameters. Failures are recorded in the entry.
+     * @param entry
+     * @param deferIndexing
+     */
+    private void prepareBatchEntry(BatchEntry entry, boolean deferIndexing) {
+        if (entry.failure != null) {
+            return;
+        }
+
+        try {
+            Resource resource = entry.resource;
+            Instant lastUpdated = Instant.now(ZoneOffset.UTC);
+            Meta meta = resource.getMeta();
+            Meta.Builder metaBuilder = meta == null ? Meta.builder() : meta.toBuilder();
+            metaBuilder.versionId(Id.of(Integer.toString(entry.versionId)));
+            metaBuilder.lastUpdated(lastUpdated);
+            Resource updatedResource = resource.toBuilder()
+                    .id(entry.logicalId)
+                    .meta(metaBuilder.build())
+                    .build();
+
+            com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = new com.ibm.fhir.persistence.jdbc.dto.Resource();
+            resourceDTO.setLogicalId(entry.logicalId);
+            resourceDTO.setVersionId(entry.versionId);
+            resourceDTO.setLastUpdated(FHIRUtilities.convertToTimestamp(lastUpdated.getValue()));
+            resourceDTO.setResourceType(updatedResource.getClass().getSimpleName());
+
+            // Serialize and compress the Resource
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            try (GZIPOutputStream zipStream = new GZIPOutputStream(stream)) {
+                FHIRGenerator.generator(Format.JSON, false).generate(updatedResource, zipStream);
+                zipStream.finish();
+                resourceDTO.setData(stream.toByteArray());
+            }
+
+            entry.updatedResource = updatedResource;
+            entry.resourceDTO = resourceDTO;
+            entry.parameters = deferIndexing ? null : extractSearchParameters(updatedResource, resourceDTO);
+        } catch (FHIRPersistenceException e) {
+            entry.failure = e;
+        } catch (Throwable e) {
+            // don't chain the exception to avoid leaking secrets
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while preparing resource '"
+                    + entry.resource.getClass().getSimpleName() + "/" + entry.resource.getId() + "' for storage.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            entry.failure = fx;
+        }
+    }
+
+    /**
+     * The state of a single resource as it moves through createOrUpdateBatch
+     */
+    private static class BatchEntry {
+        private final Resource resource;
+        private String logicalId;
+        private int versionId;
+        private Resource updatedResource;
+        private com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO;
+        private List<ExtractedParameterValue> parameters;
+        private FHIRPersistenceException failure;
+
+        private BatchEntry(Resource resource) {
+            this.resource = resource;
+        }
+    }
+
     @Override
     public MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
             throws FHIRPersistenceException {
@@ -618,14 +920,18 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             JDBCIdentityCache identityCache = new JDBCIdentityCacheImpl(cache, resourceDao, parameterDao);
 
             checkModifiers(searchContext, isSystemLevelSearch(resourceType));
-            queryBuilder = new JDBCQueryBuilder(parameterDao, resourceDao, connectionStrategy.getQueryHints(), identityCache);
+            queryBuilder = new JDBCQueryBuilder(parameterDao, resourceDao, connectionStrategy.getQueryHints(), identityCache,
+                makeSelectivityEstimator(getSchemaName(connection), identityCache));
 
             countQuery = queryBuilder.buildCountQuery(resourceType, searchContext);
             if (countQuery != null) {
-                searchResultCount = resourceDao.searchCount(countQuery);
-                if (log.isLoggable(Level.FINE)) {
-                    log.fine("searchResultCount = " + searchResultCount);
-                }
+                // The generations of the dependencies are obtained before querying the database so that
+                // a write committed while the search runs stops the results from being cached
+                ISearchResultCache searchResultCache = cache.getSearchResultCache();
+                List<String> dependencies = getSearchResultDependencies(resourceType, searchContext);
+                long[] generations = dependencies != null ? searchResultCache.getGenerations(dependencies) : null;
+
+                searchResultCount = countSearchResults(resourceDao, resourceType, countQuery, dependencies, generations);
                 searchContext.setTotalCount(searchResultCount);
 
                 List<OperationOutcome.Issue> issues = validatePagingContext(searchContext);
@@ -644,79 +950,55 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                         && searchContext.getPageSize() > 0) {
                     query = queryBuilder.buildQuery(resourceType, searchContext);
 
-                    List<String> elements = searchContext.getElementsParameters();
-
-                    //Only consider _summary if _elements parameter is empty
-                    if (elements == null && searchContext.hasSummaryParameter()) {
-                        Set<String> summaryElements = null;
-                        SummaryValueSet summary = searchContext.getSummaryParameter();
-
-                        switch (summary) {
-                        case TRUE:
-                            summaryElements = JsonSupport.getSummaryElementNames(resourceType);
-                            break;
-                        case TEXT:
-                            summaryElements = SearchUtil.getSummaryTextElementNames(resourceType);
-                            break;
-                        case DATA:
-                            summaryElements = JsonSupport.getSummaryDataElementNames(resourceType);
-                            break;
-                        default:
-                            break;
-                        }
-
-                        if (summaryElements != null) {
-                            elements = new ArrayList<>();
-                            elements.addAll(summaryElements);
-                        }
+                    CachedSearchResult cachedPage = null;
+                    String pageKey = null;
+                    if (dependencies != null) {
+                        pageKey = makeSearchResultCacheKey(resourceType, query);
+                        cachedPage = searchResultCache.get(pageKey);
                     }
 
-                    if (searchContext.hasSortParameters()) {
+                    List<String> elements = getElements(resourceType, searchContext);
+
+                    if (cachedPage != null) {
+                        // Only the ids were cached, so fetch the current payloads in the cached order
+                        resources = this.buildSortedFhirResources(resourceDao, context, resourceType, cachedPage.getResourceIds(), elements);
+                    } else if (searchContext.hasSortParameters()) {
                         // Sorting results of a system-level search is limited, and has a different logic path
                         // than other sorted searches.
                         if (resourceType.equals(Resource.class)) {
                            resources = this.convertResourceDTOList(resourceDao.search(query), resourceType, elements);
                         } else {
-                            resources = this.buildSortedFhirResources(resourceDao, context, resourceType, resourceDao.searchForIds(query), elements);
+                            List<Long> sortedIdList = resourceDao.searchForIds(query);
+                            if (pageKey != null) {
+                                searchResultCache.put(pageKey, dependencies, generations, new CachedSearchResult(searchResultCount, sortedIdList));
+                            }
+                            resources = this.buildSortedFhirResources(resourceDao, context, resourceType, sortedIdList, elements);
                         }
                     } else {
-                        List<com.ibm.fhir.persistence.jdbc.dto.Resource> resultsList = resourceDao.search(query);
-                        List<com.ibm.fhir.persistence.jdbc.dto.Resource> matchResultList = resultsList;
-                        List<com.ibm.fhir.persistence.jdbc.dto.Resource> includeResultList = new ArrayList<>();
+                        List<com.ibm.fhir.persistence.jdbc.dto.Resource> matchResultList = resourceDao.search(query);
+                        List<com.ibm.fhir.persistence.jdbc.dto.Resource> includeResultList = Collections.emptyList();
 
-                        // Check if _include or _revinclude search. If so, remove duplicates from 'include' resources
-                        // (duplicates of both 'match' and 'include' resources) and make sure _elements processing
-                        // is not done for 'include' resources.
+                        // Check if _include or _revinclude search. If so, the included resources are read by following
+                        // the references of the page of 'match' resources, without duplicates of the 'match' resources.
+                        // At most MAX_PAGE_SIZE + 1 are read, so that the REST layer can tell when there are too many.
                         if (searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()) {
-                            // Calculate 'match' results count
-                            int pageSize = searchContext.getPageSize();
-                            int offset = (searchContext.getPageNumber() - 1) * pageSize;
-                            int matchResultCount = pageSize;
-                            if (searchResultCount < offset + pageSize) {
-                                matchResultCount = searchResultCount - offset;
-                            }
-
-                            // Split results list into 'match' list and 'include' list. The results have been sorted
-                            // by the underlying query to return the 'match' results before the 'include' results.
-                            if (resultsList.size() > matchResultCount) {
-                                matchResultList = resultsList.subList(0, matchResultCount);
+                            int maxRevIncludesPerMatch = FHIRConfigHelper.getIntProperty(
+                                FHIRConfiguration.PROPERTY_SEARCH_MAX_REVINCLUDES_PER_MATCH, SearchConstants.MAX_PAGE_SIZE);
+                            InclusionResolver inclusionResolver =
+                                    new InclusionResolver(resourceDao, identityCache, SearchConstants.MAX_PAGE_SIZE, maxRevIncludesPerMatch);
+                            includeResultList = inclusionResolver.resolve(resourceType.getSimpleName(), matchResultList,
+                                searchContext.getIncludeParameters(), searchContext.getRevIncludeParameters());
+                        }
 
-                                // Remove duplicates from 'include' list
-                                Set<Long> resultIds = new HashSet<>();
-                                for (com.ibm.fhir.persistence.jdbc.dto.Resource resource : matchResultList) {
-                                    resultIds.add(resource.getId());
-                                }
-                                for (int i=matchResultCount; i<resultsList.size(); ++i) {
-                                    com.ibm.fhir.persistence.jdbc.dto.Resource resource = resultsList.get(i);
-                                    if (!resultIds.contains(resource.getId())) {
-                                        resultIds.add(resource.getId());
-                                        includeResultList.add(resource);
-                                    }
-                                }
+                        if (pageKey != null) {
+                            List<Long> resultIds = new ArrayList<>(matchResultList.size());
+                            for (com.ibm.fhir.persistence.jdbc.dto.Resource resource : matchResultList) {
+                                resultIds.add(resource.getId());
                             }
+                            searchResultCache.put(pageKey, dependencies, generations, new CachedSearchResult(searchResultCount, resultIds));
                         }
 
-                        // Convert resources
+                        // Convert resources, leaving out _elements processing for 'include' resources
                         resources = this.convertResourceDTOList(matchResultList, resourceType, elements);
                         resources.addAll(this.convertResourceDTOList(includeResultList, resourceType, null));
                     }
@@ -738,6 +1020,281 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         }
     }
 
+    @Override
+    public SearchResultCursor searchCursor(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
+            throws FHIRPersistenceException {
+        final String METHODNAME = "searchCursor";
+        log.entering(CLASSNAME, METHODNAME);
+
+        FHIRSearchContext searchContext = context.getSearchContext();
+        if (isSystemLevelSearch(resourceType)
+                || searchContext.hasSortParameters()
+                || searchContext.hasIncludeParameters()
+                || searchContext.hasRevIncludeParameters()) {
+            // Sorted pages are put in order in memory, and included resources are read once the page is complete
+            log.exiting(CLASSNAME, METHODNAME);
+            return FHIRPersistence.super.searchCursor(context, resourceType);
+        }
+
+        // The connection stays open until the cursor is closed
+        Connection connection = openConnection();
+        ResourceCursor resourceCursor = null;
+        try {
+            connectionStrategy.applySearchOptimizerOptions(connection);
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            ParameterDAO parameterDao = makeParameterDAO(connection);
+            JDBCIdentityCache identityCache = new JDBCIdentityCacheImpl(cache, resourceDao, parameterDao);
+
+            checkModifiers(searchContext, false);
+            JDBCQueryBuilder queryBuilder = new JDBCQueryBuilder(parameterDao, resourceDao, connectionStrategy.getQueryHints(), identityCache,
+                makeSelectivityEstimator(getSchemaName(connection), identityCache));
+
+            SqlQueryData countQuery = queryBuilder.buildCountQuery(resourceType, searchContext);
+            if (countQuery != null) {
+                List<String> dependencies = getSearchResultDependencies(resourceType, searchContext);
+                long[] generations = dependencies != null ? cache.getSearchResultCache().getGenerations(dependencies) : null;
+                int searchResultCount = countSearchResults(resourceDao, resourceType, countQuery, dependencies, generations);
+                searchContext.setTotalCount(searchResultCount);
+
+                boolean pagingValid = validatePagingContext(searchContext).isEmpty() || searchContext.isLenient();
+                if (pagingValid
+                        && searchResultCount > 0
+                        && !SummaryValueSet.COUNT.equals(searchContext.getSummaryParameter())
+                        && searchContext.getPageSize() > 0) {
+                    final List<String> elements = getElements(resourceType, searchContext);
+                    resourceCursor = resourceDao.searchCursor(queryBuilder.buildQuery(resourceType, searchContext));
+                    SearchResultCursor result = new StreamingSearchResultCursor(connection, resourceCursor, resourceDTO -> {
+                        Resource resource = this.convertResourceDTO(resourceDTO, resourceType, elements);
+                        return resourceDTO.isDeleted() ? FHIRPersistenceUtil.createDeletedResourceMarker(resource) : resource;
+                    });
+                    connection = null;
+                    return result;
+                }
+            }
+            return SearchResultCursor.of(Collections.emptyList());
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a search operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            if (connection != null) {
+                if (resourceCursor != null) {
+                    resourceCursor.close();
+                }
+                try {
+                    connection.close();
+                } catch (SQLException x) {
+                    log.log(Level.SEVERE, "Failure closing connection", x);
+                }
+            }
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+
+    /**
+     * Count the results of the search, using the search result cache when possible
+     * @param resourceDao
+     * @param resourceType
+     * @param countQuery
+     * @param dependencies the dependencies of the search, or null if its results must not be cached
+     * @param generations the generations of the dependencies, obtained before querying the database
+     * @return
+     * @throws FHIRPersistenceException
+     */
+    private int countSearchResults(ResourceDAO resourceDao, Class<? extends Resource> resourceType, SqlQueryData countQuery,
+            List<String> dependencies, long[] generations) throws FHIRPersistenceException {
+        ISearchResultCache searchResultCache = cache.getSearchResultCache();
+        int searchResultCount;
+
+        CachedSearchResult cachedCount = null;
+        String countKey = null;
+        if (dependencies != null) {
+            countKey = makeSearchResultCacheKey(resourceType, countQuery);
+            cachedCount = searchResultCache.get(countKey);
+        }
+        if (cachedCount != null) {
+            searchResultCount = cachedCount.getTotalCount();
+        } else {
+            searchResultCount = resourceDao.searchCount(countQuery);
+            if (countKey != null) {
+                searchResultCache.put(countKey, dependencies, generations, new CachedSearchResult(searchResultCount, null));
+            }
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("searchResultCount = " + searchResultCount);
+        }
+        return searchResultCount;
+    }
+
+    /**
+     * Get the elements to keep in the resources of the search results, per the _elements or _summary parameter
+     * @param resourceType
+     * @param searchContext
+     * @return the element names, or null to keep all the elements
+     */
+    private List<String> getElements(Class<? extends Resource> resourceType, FHIRSearchContext searchContext) {
+        List<String> elements = searchContext.getElementsParameters();
+
+        //Only consider _summary if _elements parameter is empty
+        if (elements == null && searchContext.hasSummaryParameter()) {
+            Set<String> summaryElements = null;
+            SummaryValueSet summary = searchContext.getSummaryParameter();
+
+            switch (summary) {
+            case TRUE:
+                summaryElements = JsonSupport.getSummaryElementNames(resourceType);
+                break;
+            case TEXT:
+                summaryElements = SearchUtil.getSummaryTextElementNames(resourceType);
+                break;
+            case DATA:
+                summaryElements = JsonSupport.getSummaryDataElementNames(resourceType);
+                break;
+            default:
+                break;
+            }
+
+            if (summaryElements != null) {
+                elements = new ArrayList<>();
+                elements.addAll(summaryElements);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Get the dependencies of the search for the purposes of the search result cache. A type-level
+     * search depends on every write to the resource types it touches. A compartment search only
+     * depends on resources created in that compartment and on updates and deletes of the type.
+     * @param resourceType
+     * @param searchContext
+     * @return the dependencies, or null if the results of the search must not be cached
+     */
+    private List<String> getSearchResultDependencies(Class<? extends Resource> resourceType, FHIRSearchContext searchContext) {
+        if (!cache.getSearchResultCache().isEnabled()
+                || isSystemLevelSearch(resourceType)
+                || searchContext.hasIncludeParameters()
+                || searchContext.hasRevIncludeParameters()) {
+            return null;
+        }
+
+        final String resourceTypeName = resourceType.getSimpleName();
+        Set<String> dependencies = new HashSet<>();
+        boolean compartmentSearch = false;
+        for (QueryParameter param : searchContext.getSearchParameters()) {
+            if (param.isInclusionCriteria()) {
+                compartmentSearch = true;
+                dependencies.add(changedDependency(resourceTypeName));
+                for (QueryParameter criteria = param; criteria != null; criteria = criteria.getNextParameter()) {
+                    if (criteria.getCode().contains(".")) {
+                        // chained inclusion criteria reach other resource types
+                        dependencies.add(SEARCH_RESULT_ANY_DEPENDENCY);
+                    } else {
+                        dependencies.add(compartmentDependency(resourceTypeName, criteria.getValues().get(0).getValueString()));
+                    }
+                }
+            } else {
+                for (QueryParameter p = param; p != null; p = p.getNextParameter()) {
+                    if (p.getModifier() == Modifier.TYPE && p.getModifierResourceTypeName() != null) {
+                        dependencies.add(p.getModifierResourceTypeName());
+                    } else if (p.isChained() || p.isReverseChained()) {
+                        // the target type isn't known, so any write may change the result
+                        dependencies.add(SEARCH_RESULT_ANY_DEPENDENCY);
+                    }
+                }
+            }
+        }
+
+        if (!compartmentSearch) {
+            dependencies.add(resourceTypeName);
+        }
+        return new ArrayList<>(dependencies);
+    }
+
+    /**
+     * Build the search result cache key for the given query. The generated SQL together with its
+     * bind variables fully describes the search, so two requests producing the same query share the entry.
+     * @param resourceType
+     * @param query
+     * @return
+     */
+    private String makeSearchResultCacheKey(Class<? extends Resource> resourceType, SqlQueryData query) {
+        StringBuilder key = new StringBuilder();
+        key.append(resourceType.getSimpleName()).append('\n').append(query.getQueryString());
+        for (Object bindVariable : query.getBindVariables()) {
+            key.append('\n');
+            if (bindVariable != null) {
+                key.append(bindVariable.getClass().getSimpleName()).append(':');
+            }
+            key.append(bindVariable);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Record that the current transaction changes the results of searches which depend
+     * on the given dependencies. The search result cache applies the invalidation when
+     * the transaction commits.
+     * @param dependencies
+     */
+    private void invalidateSearchResults(Collection<String> dependencies) {
+        ISearchResultCache searchResultCache = cache.getSearchResultCache();
+        if (searchResultCache.isEnabled()) {
+            Set<String> all = new HashSet<>(dependencies);
+            all.add(SEARCH_RESULT_ANY_DEPENDENCY);
+            searchResultCache.invalidate(all);
+
+            if (this.trxSynchRegistry == null) {
+                // No commit notifications outside of a JEE container, so apply right away
+                searchResultCache.updateSharedMaps();
+            }
+        }
+    }
+
+    /**
+     * Get the search result cache dependencies invalidated by creating the given resource
+     * @param resourceTypeName
+     * @param parameters the extracted search parameters, which include the compartment references
+     * @return
+     */
+    private List<String> getCreateDependencies(String resourceTypeName, List<ExtractedParameterValue> parameters) {
+        List<String> dependencies = new ArrayList<>();
+        dependencies.add(resourceTypeName);
+        if (parameters == null) {
+            // the compartments aren't known
+            dependencies.add(changedDependency(resourceTypeName));
+        } else {
+            for (ExtractedParameterValue parameter : parameters) {
+                if (parameter instanceof ReferenceParmVal) {
+                    ReferenceValue rv = ((ReferenceParmVal) parameter).getRefValue();
+                    if (rv != null && parameter.getName().equals(CompartmentUtil.makeCompartmentParamName(rv.getTargetResourceType()))) {
+                        dependencies.add(compartmentDependency(resourceTypeName, rv.getTargetResourceType() + "/" + rv.getValue()));
+                    }
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * @param resourceTypeName
+     * @return the dependency for updates and deletes of the given resource type
+     */
+    private static String changedDependency(String resourceTypeName) {
+        return resourceTypeName + "#changed";
+    }
+
+    /**
+     * @param resourceTypeName
+     * @param compartmentRef the compartment in the form Patient/123
+     * @return the dependency for resources of the given type created in the compartment
+     */
+    private static String compartmentDependency(String resourceTypeName, String compartmentRef) {
+        return resourceTypeName + "|" + compartmentRef;
+    }
+
     /**
      * @return true if this instance represents a FHIR system level search
      */
@@ -851,6 +1408,8 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             // Persist the logically deleted Resource DTO.
             resourceDao.setPersistenceContext(context);
             resourceDao.insert(resourceDTO, null, null);
+            invalidateSearchResults(Arrays.asList(resourceDTO.getResourceType(), changedDependency(resourceDTO.getResourceType())));
+            invalidateCurrentVersion(resourceDTO.getResourceType(), logicalId);
 
             if (log.isLoggable(Level.FINE)) {
                 log.fine("Persisted FHIR Resource '" + resourceDTO.getResourceType() + "/" + resourceDTO.getLogicalId() + "' id=" + resourceDTO.getId()
@@ -925,6 +1484,22 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             }
         }
 
+        // Resource versions never change once committed, so if we know the current version
+        // we can serve the read without touching the database
+        IResourceCache resourceCache = cache.getResourceCache();
+        Integer currentVersion = resourceCache.getCurrentVersion(resourceType.getSimpleName(), logicalId);
+        if (currentVersion != null) {
+            resource = getCachedResource(resourceType, logicalId, currentVersion, elements);
+            if (resource != null) {
+                log.exiting(CLASSNAME, METHODNAME);
+                return new SingleResourceResult.Builder<T>()
+                        .success(true)
+                        .resource(resource)
+                        .build();
+            }
+        }
+        final long generation = resourceCache.getGeneration(resourceType.getSimpleName(), logicalId);
+
         try (Connection connection = openConnection()) {
             ResourceDAO resourceDao = makeResourceDAO(connection);
 
@@ -934,6 +1509,11 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                         resourceType.getSimpleName() + "/" + logicalId + "' is deleted.");
             }
             resource = this.convertResourceDTO(resourceDTO, resourceType, elements);
+            if (resourceDTO != null && !resourceDTO.isDeleted()) {
+                resourceCache.putResource(resourceType.getSimpleName(), logicalId, resourceDTO.getVersionId(),
+                    elements == null ? resource : null, resourceDTO.getData());
+                resourceCache.putCurrentVersion(resourceType.getSimpleName(), logicalId, resourceDTO.getVersionId(), generation);
+            }
 
             SingleResourceResult<T> result = new SingleResourceResult.Builder<T>()
                     .success(true)
@@ -1122,6 +1702,23 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             }
         }
 
+        // Resource versions never change once committed, so a cached copy never goes stale
+        IResourceCache resourceCache = cache.getResourceCache();
+        if (resourceCache.isEnabled()) {
+            try {
+                resource = getCachedResource(resourceType, logicalId, Integer.parseInt(versionId), elements);
+            } catch (NumberFormatException e) {
+                // reported when the version is parsed for the database read
+            }
+            if (resource != null) {
+                log.exiting(CLASSNAME, METHODNAME);
+                return new SingleResourceResult.Builder<T>()
+                        .success(true)
+                        .resource(resource)
+                        .build();
+            }
+        }
+
         try (Connection connection = openConnection()) {
             ResourceDAO resourceDao = makeResourceDAO(connection);
 
@@ -1132,6 +1729,10 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                         resourceType.getSimpleName() + "/" + logicalId + "' version " + versionId + " is deleted.");
             }
             resource = this.convertResourceDTO(resourceDTO, resourceType, elements);
+            if (resourceDTO != null && !resourceDTO.isDeleted()) {
+                resourceCache.putResource(resourceType.getSimpleName(), logicalId, resourceDTO.getVersionId(),
+                    elements == null ? resource : null, resourceDTO.getData());
+            }
 
             SingleResourceResult<T> result = new SingleResourceResult.Builder<T>()
                     .success(true)
@@ -1178,6 +1779,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         int sortIndex;
         List<Resource> sortedResourceList = new ArrayList<>();
         List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOList;
+        List<Resource> fhirResources;
         Map<Long,Integer> idPositionMap = new HashMap<>();
 
         // This loop builds a Map where key=resourceId, and value=its proper position in the returned sorted collection.
@@ -1189,12 +1791,13 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         resourceDTOList = this.getResourceDTOs(resourceDao, resourceType, sortedIdList);
 
 
-        // Convert the returned JPA Resources to FHIR Resources, and store each FHIRResource in its proper position
-        // in the returned sorted resource list.
-        for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
-            fhirResource = this.convertResourceDTO(resourceDTO, resourceType, elements);
+        // Convert the returned JPA Resources to FHIR Resources, possibly in parallel, and store each FHIRResource in its
+        // proper position in the returned sorted resource list.
+        fhirResources = makeResourceConverter().convert(resourceDTOList, resourceDTO -> this.convertResourceDTO(resourceDTO, resourceType, elements));
+        for (int i = 0; i < resourceDTOList.size(); i++) {
+            fhirResource = fhirResources.get(i);
             if (fhirResource != null) {
-                sortIndex = idPositionMap.get(resourceDTO.getId());
+                sortIndex = idPositionMap.get(resourceDTOList.get(i).getId());
                 sortedFhirResources[sortIndex] = fhirResource;
             }
         }
@@ -1235,17 +1838,16 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         final String METHODNAME = "convertResourceDTO List";
         log.entering(CLASSNAME, METHODNAME);
 
-        List<Resource> resources = new ArrayList<>();
+        List<Resource> resources;
         try {
-            for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDTOList) {
+            // Large pages are decompressed and parsed in parallel
+            resources = makeResourceConverter().convert(resourceDTOList, resourceDTO -> {
                 Resource existingResource = this.convertResourceDTO(resourceDTO, resourceType, elements);
                 if (resourceDTO.isDeleted()) {
-                    Resource deletedResourceMarker = FHIRPersistenceUtil.createDeletedResourceMarker(existingResource);
-                    resources.add(deletedResourceMarker);
-                } else {
-                    resources.add(existingResource);
+                    return FHIRPersistenceUtil.createDeletedResourceMarker(existingResource);
                 }
-            }
+                return existingResource;
+            });
         }
         finally {
             log.exiting(CLASSNAME, METHODNAME);
@@ -1253,6 +1855,18 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         return resources;
     }
 
+    /**
+     * Creates the converter used to decompress and parse pages of search results, configured for the current tenant
+     * @return
+     */
+    private ParallelResourceConverter makeResourceConverter() {
+        int threshold = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_SEARCH_PARALLEL_PARSE_THRESHOLD,
+            ParallelResourceConverter.DEFAULT_THRESHOLD);
+        int maxConcurrencyPerTenant = FHIRConfigHelper.getIntProperty(FHIRConfiguration.PROPERTY_SEARCH_MAX_PARALLEL_PARSE_PER_TENANT,
+            ParallelResourceConverter.DEFAULT_MAX_CONCURRENCY_PER_TENANT);
+        return new ParallelResourceConverter(threshold, maxConcurrencyPerTenant);
+    }
+
    /**
      * Calls some cache analysis methods and aggregates the output into a single String.
      * @return
@@ -1269,6 +1883,8 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             diags.append(ParameterNamesCache.dumpCacheContents()).append(ParameterNamesCache.reportCacheDiscrepancies(parameterDao));
             diags.append(CodeSystemsCache.dumpCacheContents()).append(CodeSystemsCache.reportCacheDiscrepancies(parameterDao));
             diags.append(ResourceTypesCache.dumpCacheContents()).append(ResourceTypesCache.reportCacheDiscrepancies(resourceDao));
+            diags.append("Common token values cache: hits=").append(cache.getResourceReferenceCache().getTokenValueHits())
+                .append(" misses=").append(cache.getResourceReferenceCache().getTokenValueMisses()).append("\n");
         } catch (Exception x) {
             log.log(Level.SEVERE, "failed to produce cache diagnostics", x);
             diags.append("No cache diagnostic info available");
@@ -1609,12 +2225,86 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         final String METHODNAME = "openConnection";
         log.entering(CLASSNAME, METHODNAME);
         try {
-            return connectionStrategy.getConnection();
+            PersistenceSession session = getOrCreateSession();
+            return session != null ? session.getConnection() : getStrategyConnection();
         } finally {
             log.exiting(CLASSNAME, METHODNAME);
         }
     }
 
+    /**
+     * Get a connection from the connection strategy, wrapped to time its statements if the
+     * current request is timed or the statement statistics are enabled
+     * @return
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private Connection getStrategyConnection() throws FHIRPersistenceDBConnectException {
+        Connection connection = connectionStrategy.getConnection();
+        return TimedConnection.isNeeded() ? TimedConnection.wrap(connection) : connection;
+    }
+
+    /**
+     * Get the session of the current global transaction, creating it on first use. The session
+     * holds one connection and the DAOs for the whole transaction, and is closed by its
+     * synchronization when the transaction completes.
+     * @return the session, or null if there is no global transaction
+     * @throws FHIRPersistenceDBConnectException
+     */
+    private PersistenceSession getOrCreateSession() throws FHIRPersistenceDBConnectException {
+        if (this.trxSynchRegistry == null || this.trxSynchRegistry.getTransactionKey() == null) {
+            return null;
+        }
+
+        // The registry is transaction-scoped and may span multiple instances of this class,
+        // so the session is shared by all of them. No synchronization necessary...this is
+        // all in one thread
+        String key = makeSessionKey();
+        Object obj = this.trxSynchRegistry.getResource(key);
+        if (obj instanceof PersistenceSession) {
+            return (PersistenceSession) obj;
+        } else if (obj != null) {
+            throw new IllegalStateException(key + " invalid class"); // basic coding error
+        }
+
+        Connection connection = getStrategyConnection();
+        PersistenceSession session = new PersistenceSession(connection);
+        try {
+            this.trxSynchRegistry.registerInterposedSynchronization(session);
+        } catch (IllegalStateException x) {
+            // the transaction can no longer take synchronizations (e.g. it is completing), so
+            // just use the connection for this call without a session
+            log.fine("Unable to register the persistence session: " + x.getMessage());
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.log(Level.WARNING, "Failed to close connection", e);
+            }
+            return null;
+        }
+        this.trxSynchRegistry.putResource(key, session);
+        return session;
+    }
+
+    /**
+     * @param connection
+     * @return the session of the current transaction if the connection was obtained from it, otherwise null
+     */
+    private PersistenceSession getSession(Connection connection) {
+        if (this.trxSynchRegistry == null || this.trxSynchRegistry.getTransactionKey() == null) {
+            return null;
+        }
+        Object obj = this.trxSynchRegistry.getResource(makeSessionKey());
+        if (obj instanceof PersistenceSession && ((PersistenceSession) obj).isSessionConnection(connection)) {
+            return (PersistenceSession) obj;
+        }
+        return null;
+    }
+
+    private String makeSessionKey() {
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+        return SESSION_KEY_PREFIX + requestContext.getTenantId() + "/" + requestContext.getDataStoreId();
+    }
+
     @Override
     public OperationOutcome getHealth() throws FHIRPersistenceException {
 
@@ -1702,6 +2392,62 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         return resources;
     }
 
+    /**
+     * Get the given resource version from the resource cache, parsing the compressed payload
+     * from the off-heap tier if the parsed resource isn't held on-heap. Problems with the
+     * cached payload are logged and treated as a cache miss.
+     * @param resourceType
+     * @param logicalId
+     * @param version
+     * @param elements
+     * @return the resource, or null if it isn't cached
+     */
+    private <T extends Resource> T getCachedResource(Class<T> resourceType, String logicalId, int version, List<String> elements) {
+        IResourceCache resourceCache = cache.getResourceCache();
+        final String resourceTypeName = resourceType.getSimpleName();
+        if (elements == null) {
+            Resource resource = resourceCache.getResource(resourceTypeName, logicalId, version);
+            if (resource != null) {
+                return resourceType.cast(resource);
+            }
+        }
+
+        byte[] payload = resourceCache.getPayload(resourceTypeName, logicalId, version);
+        if (payload != null) {
+            com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO = new com.ibm.fhir.persistence.jdbc.dto.Resource();
+            resourceDTO.setData(payload);
+            try {
+                T resource = this.convertResourceDTO(resourceDTO, resourceType, elements);
+                if (elements == null) {
+                    // promote to the on-heap tier
+                    resourceCache.putResource(resourceTypeName, logicalId, version, resource, null);
+                }
+                return resource;
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Failed to parse cached resource '" + resourceTypeName + "/" + logicalId + "' version " + version, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record that the current transaction writes a new version of the given logical resource. The
+     * resource cache invalidates its current version when the transaction commits.
+     * @param resourceType
+     * @param logicalId
+     */
+    private void invalidateCurrentVersion(String resourceType, String logicalId) {
+        IResourceCache resourceCache = cache.getResourceCache();
+        if (resourceCache.isEnabled()) {
+            resourceCache.invalidateCurrentVersion(resourceType, logicalId);
+
+            if (this.trxSynchRegistry == null) {
+                // No commit notifications outside of a JEE container, so apply right away
+                resourceCache.updateSharedMaps();
+            }
+        }
+    }
+
     /**
      * Converts the passed Resource Data Transfer Object to a FHIR Resource object.
      * @param resourceDTO - A valid Resource DTO
@@ -1718,6 +2464,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         T resource = null;
         try {
             if (resourceDTO != null) {
+                long start = System.nanoTime();
                 InputStream in = new GZIPInputStream(new ByteArrayInputStream(resourceDTO.getData()));
                 if (elements != null) {
                     // parse/filter the resource using elements
@@ -1730,6 +2477,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
                     resource = FHIRParser.parser(Format.JSON).parse(in);
                 }
                 in.close();
+                RequestTimings.record(RequestPhase.PAYLOAD_PARSE, start);
             }
         } finally {
             log.exiting(CLASSNAME, METHODNAME);
@@ -1769,14 +2517,18 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
      * Associate a supplemental warning with the current request
      */
     private void addWarning(IssueType issueType, String message, String... expression) {
-        supplementalIssues.add(OperationOutcome.Issue.builder()
+        OperationOutcome.Issue issue = OperationOutcome.Issue.builder()
                 .severity(IssueSeverity.WARNING)
                 .code(issueType)
                 .details(CodeableConcept.builder()
                     .text(string(message))
                     .build())
                 .expression(Arrays.stream(expression).map(com.ibm.fhir.model.type.String::string).collect(Collectors.toList()))
-                .build());
+                .build();
+        // search parameters may be extracted in parallel by createOrUpdateBatch
+        synchronized (supplementalIssues) {
+            supplementalIssues.add(issue);
+        }
     }
 
     @Override
@@ -1833,10 +2585,70 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         if (cache.needToPrefill()) {
             ResourceDAO resourceDao = makeResourceDAO(connection);
             ParameterDAO parameterDao = makeParameterDAO(connection);
-            FHIRPersistenceJDBCCacheUtil.prefill(resourceDao, parameterDao, cache);
+            Collection<String> resourceTypes = FHIRPersistenceJDBCCacheUtil.prefill(resourceDao, parameterDao, cache);
+            if (cache.getResourceReferenceCache().getTokenValuePrefillSize() > 0) {
+                startTokenValuePrefill(new ArrayList<>(resourceTypes), getSchemaName(connection));
+            }
         }
     }
 
+    /**
+     * Create the estimator used to plan a search. The statistics it needs are read in the background on
+     * a connection of their own, so a failure can't abort the transaction of the search.
+     * @param schemaName
+     * @param identityCache
+     * @return
+     */
+    private SelectivityEstimator makeSelectivityEstimator(String schemaName, JDBCIdentityCache identityCache) {
+        final FHIRRequestContext requestContext = FHIRRequestContext.get();
+        final String tenantId = requestContext.getTenantId();
+        final String datastoreId = requestContext.getDataStoreId();
+        SelectivityEstimator.StatisticsReader reader = (tableName, valueColumn, parameterNameId, sampleSize) -> {
+            // the connection strategy picks the datasource of the tenant from the request context
+            try {
+                FHIRRequestContext.set(new FHIRRequestContext(tenantId, datastoreId));
+            } catch (FHIRException x) {
+                throw new FHIRPersistenceException("Invalid request context for the statistics connection", x);
+            }
+            try (Connection connection = connectionStrategy.getConnection()) {
+                ParameterDAO parameterDao = new ParameterDAOImpl(connection, schemaName, connectionStrategy.getFlavor());
+                return parameterDao.readParameterStatistics(tableName, valueColumn, parameterNameId, sampleSize);
+            } catch (SQLException x) {
+                throw new FHIRPersistenceDataAccessException("Failed to close the statistics connection", x);
+            } finally {
+                FHIRRequestContext.remove();
+            }
+        };
+        return new SelectivityEstimator(reader, statisticsExecutor, identityCache);
+    }
+
+    /**
+     * Prefill the token values cache in the background, on its own connection, so that the scan of the
+     * token references neither delays the request which triggered it nor runs in its transaction.
+     * Requests which run before the prefill completes just end up having cache-misses.
+     * @param resourceTypes
+     * @param schemaName
+     */
+    private void startTokenValuePrefill(Collection<String> resourceTypes, String schemaName) {
+        final FHIRRequestContext requestContext = FHIRRequestContext.get();
+        final String tenantId = requestContext.getTenantId();
+        final String datastoreId = requestContext.getDataStoreId();
+        cachePrefillExecutor.execute(() -> {
+            try {
+                // the connection strategy picks the datasource of the tenant from the request context
+                FHIRRequestContext.set(new FHIRRequestContext(tenantId, datastoreId));
+                try (Connection connection = connectionStrategy.getConnection()) {
+                    ParameterDAO parameterDao = new ParameterDAOImpl(connection, schemaName, connectionStrategy.getFlavor());
+                    FHIRPersistenceJDBCCacheUtil.prefillTokenValues(parameterDao, resourceTypes, cache, TOKEN_VALUE_PREFILL_TIMEOUT_SECONDS);
+                }
+            } catch (Exception x) {
+                log.log(Level.WARNING, "Failed to prefill the token values cache for tenant '" + tenantId + "', datastore '" + datastoreId + "'", x);
+            } finally {
+                FHIRRequestContext.remove();
+            }
+        });
+    }
+
     @Override
     public boolean isReindexSupported() {
         return true;
@@ -1863,7 +2675,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
         try (Connection connection = openConnection()) {
             ResourceDAO resourceDao = makeResourceDAO(connection);
             ParameterDAO parameterDao = makeParameterDAO(connection);
-            ReindexResourceDAO reindexDAO = FHIRResourceDAOFactory.getReindexResourceDAO(connection, FhirSchemaConstants.FHIR_ADMIN, schemaNameSupplier.getSchemaForRequestContext(connection), connectionStrategy.getFlavor(), this.trxSynchRegistry, this.cache, parameterDao);
+            ReindexResourceDAO reindexDAO = FHIRResourceDAOFactory.getReindexResourceDAO(connection, FhirSchemaConstants.FHIR_ADMIN, getSchemaName(connection), connectionStrategy.getFlavor(), this.trxSynchRegistry, this.cache, parameterDao);
             // Obtain a resource we will reindex in this request/transaction. The record is locked as part
             // of its selection, so we avoid a lot of (but not all) deadlock issues
             Integer resourceTypeId = null;
@@ -1960,6 +2772,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             // Extract parameters from the resource payload we just read and store them, replacing
             // the existing set
             reindexDAO.updateParameters(rir.getResourceType(), this.extractSearchParameters(existingResource, existingResourceDTO), rir.getLogicalId(), rir.getLogicalResourceId());
+            invalidateSearchResults(Arrays.asList(rir.getResourceType(), changedDependency(rir.getResourceType())));
 
             // Use an OperationOutcome Issue to let the caller know that some work was performed
             final String diag = "Processed " + rir.getResourceType() + "/" + rir.getLogicalId();
@@ -2049,7 +2862,7 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             // translator is required to handle some simple SQL syntax differences. This is easier
             // than creating separate DAO implementations for each database type
             IDatabaseTranslator translator = FHIRResourceDAOFactory.getTranslatorForFlavor(connectionStrategy.getFlavor());
-            FetchResourcePayloadsDAO dao = new FetchResourcePayloadsDAO(translator, schemaNameSupplier.getSchemaForRequestContext(connection), resourceType.getSimpleName(), fromLastModified, toLastModified, processor);
+            FetchResourcePayloadsDAO dao = new FetchResourcePayloadsDAO(translator, getSchemaName(connection), resourceType.getSimpleName(), fromLastModified, toLastModified, processor);
 
             if (log.isLoggable(Level.FINEST)) {
                 int count = dao.count(connection);
@@ -2064,4 +2877,56 @@ public class FHIRPersistenceJDBCImpl implements FHIRPersistence, SchemaNameSuppl
             throw fx;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean isChangesSupported() {
+        return true;
+    }
+
+    @Override
+    public List<ResourceChangeLogRecord> changes(int resourceCount, java.time.Instant fromLastModified, Long afterChangeId,
+            String resourceTypeName) throws FHIRPersistenceException {
+        final String METHODNAME = "changes";
+        log.entering(CLASSNAME, METHODNAME);
+
+        try (Connection connection = openConnection()) {
+            IDatabaseTranslator translator = FHIRResourceDAOFactory.getTranslatorForFlavor(connectionStrategy.getFlavor());
+            FetchResourceChangesDAO dao = new FetchResourceChangesDAO(translator, getSchemaName(connection), resourceCount,
+                fromLastModified, afterChangeId, resourceTypeName);
+            List<ResourceChangeLogRecord> changes = dao.run(connection);
+
+            // The change id is the resource_id of the version, so the versions which were created
+            // or updated can be read with one query for each resource type
+            Map<String, List<Long>> resourceIdsByType = new HashMap<>();
+            for (ResourceChangeLogRecord change : changes) {
+                if (change.getChangeType() != ChangeType.DELETE) {
+                    resourceIdsByType.computeIfAbsent(change.getResourceTypeName(), k -> new ArrayList<>()).add(change.getChangeId());
+                }
+            }
+
+            ResourceDAO resourceDao = makeResourceDAO(connection);
+            Map<Long, Resource> resources = new HashMap<>();
+            for (Entry<String, List<Long>> entry : resourceIdsByType.entrySet()) {
+                Class<? extends Resource> resourceType = getResourceType(entry.getKey());
+                for (com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO : resourceDao.searchByIds(entry.getKey(), entry.getValue())) {
+                    resources.put(resourceDTO.getId(), this.convertResourceDTO(resourceDTO, resourceType, null));
+                }
+            }
+
+            List<ResourceChangeLogRecord> result = new ArrayList<>(changes.size());
+            for (ResourceChangeLogRecord change : changes) {
+                result.add(new ResourceChangeLogRecord(change.getChangeId(), change.getResourceTypeName(), change.getLogicalId(),
+                    change.getVersionId(), change.getChangeTstamp(), change.getChangeType(), resources.get(change.getChangeId())));
+            }
+            return result;
+        } catch(FHIRPersistenceException e) {
+            throw e;
+        } catch(Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while reading resource changes.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        } finally {
+            log.exiting(CLASSNAME, METHODNAME);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.transaction.Synchronization;
+
+import com.ibm.fhir.persistence.jdbc.dao.api.IResourceReferenceDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+
+/**
+ * Holds the database connection and the DAOs used by the persistence layer for the whole of a
+ * global transaction, so that an interaction bundle with many entries doesn't obtain a connection,
+ * resolve the schema and build the DAOs for each entry.
+ *
+ * <p>The session is stored in the TransactionSynchronizationRegistry and registered with it as an
+ * interposed synchronization; the connection is closed when the transaction completes. Callers
+ * receive a handle to the connection whose {@link Connection#close()} does nothing, so the usual
+ * try-with-resources blocks can be used unchanged.
+ */
+public class PersistenceSession implements Synchronization {
+    private static final Logger logger = Logger.getLogger(PersistenceSession.class.getName());
+
+    // The connection held for the transaction
+    private final Connection connection;
+
+    // The handle given to callers, which can't close the connection
+    private final Connection handle;
+
+    // Resolved lazily on first use and reused for the rest of the transaction
+    private String schemaName;
+    private ResourceDAO resourceDAO;
+    private ParameterDAO parameterDAO;
+    private IResourceReferenceDAO resourceReferenceDAO;
+
+    /**
+     * Public constructor
+     * @param connection the connection to hold until the transaction completes
+     */
+    public PersistenceSession(Connection connection) {
+        this.connection = connection;
+        this.handle = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                    return null;
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+
+    /**
+     * @return a handle to the connection of this session, which is not closed by {@link Connection#close()}
+     */
+    public Connection getConnection() {
+        return handle;
+    }
+
+    /**
+     * @return true if the given connection was obtained from this session
+     */
+    public boolean isSessionConnection(Connection c) {
+        return c == handle;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public void setSchemaName(String schemaName) {
+        this.schemaName = schemaName;
+    }
+
+    public ResourceDAO getResourceDAO() {
+        return resourceDAO;
+    }
+
+    public void setResourceDAO(ResourceDAO resourceDAO) {
+        this.resourceDAO = resourceDAO;
+    }
+
+    public ParameterDAO getParameterDAO() {
+        return parameterDAO;
+    }
+
+    public void setParameterDAO(ParameterDAO parameterDAO) {
+        this.parameterDAO = parameterDAO;
+    }
+
+    public IResourceReferenceDAO getResourceReferenceDAO() {
+        return resourceReferenceDAO;
+    }
+
+    public void setResourceReferenceDAO(IResourceReferenceDAO resourceReferenceDAO) {
+        this.resourceReferenceDAO = resourceReferenceDAO;
+    }
+
+    @Override
+    public void beforeCompletion() {
+        // NOP. Other synchronizations may still use the connection to persist data before the commit
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+        resourceDAO = null;
+        parameterDAO = null;
+        resourceReferenceDAO = null;
+        try {
+            connection.close();
+        } catch (SQLException x) {
+            logger.log(Level.WARNING, "Failed to close the session connection", x);
+        }
+    }
+}
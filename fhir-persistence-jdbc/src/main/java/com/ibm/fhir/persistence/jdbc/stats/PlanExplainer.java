@@ -0,0 +1,182 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.stats;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gets the access plan of a SELECT statement from the database, on the connection which executed it:
+ * <ul>
+ * <li>PostgreSQL: a plain {@code EXPLAIN}, only for statements without parameter markers. The connection
+ * is enlisted in the JTA transaction, which rules out a savepoint, and any error would abort the transaction.
+ * The statement has just run on the same connection, so explaining it again can't fail for reasons such as its
+ * syntax or privileges, but replaying its binds could, and would put the bind values in the plan.</li>
+ * <li>Db2: {@code EXPLAIN PLAN FOR}, then the operators of the plan are read from the explain tables in the
+ * SYSTOOLS schema, which must have been created with {@code SYSPROC.SYSINSTALLOBJECTS}</li>
+ * <li>Derby: the statement is executed again with runtime statistics enabled</li>
+ * </ul>
+ */
+class PlanExplainer {
+    private static final Logger logger = Logger.getLogger(PlanExplainer.class.getName());
+
+    // Plans can be long, and are only meant to give an idea of the access path
+    private static final int MAX_PLAN_LENGTH = 8000;
+
+    private static final String DB2_PLAN_SQL = "SELECT o.operator_id, o.operator_type, o.total_cost"
+            + " FROM systools.explain_operator o"
+            + " WHERE o.explain_time = (SELECT MAX(i.explain_time) FROM systools.explain_instance i WHERE i.explain_requester = CURRENT USER)"
+            + " ORDER BY o.operator_id";
+
+    private PlanExplainer() {
+        // No operation
+    }
+
+    /**
+     * Get the access plan of the statement
+     * @param connection the connection which executed the statement
+     * @param sql the statement
+     * @param binds the bind calls of the execution, each a {@link PreparedStatement} setter method and its arguments,
+     *     which are only replayed on Derby
+     * @return the plan, or a message saying why it isn't available
+     */
+    static String explain(Connection connection, String sql, Collection<Object[]> binds) {
+        try {
+            String product = connection.getMetaData().getDatabaseProductName();
+            String plan;
+            if (product.startsWith("PostgreSQL")) {
+                plan = explainPostgres(connection, sql);
+            } else if (product.startsWith("DB2")) {
+                plan = explainDb2(connection, sql);
+            } else if (product.startsWith("Apache Derby")) {
+                plan = explainDerby(connection, sql, binds);
+            } else {
+                plan = "Plans are not supported for " + product;
+            }
+            return plan.length() > MAX_PLAN_LENGTH ? plan.substring(0, MAX_PLAN_LENGTH) + "..." : plan;
+        } catch (SQLException x) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Failed to explain statement: " + sql, x);
+            }
+            return "Plan not available: " + x.getMessage();
+        }
+    }
+
+    private static String explainPostgres(Connection connection, String sql) throws SQLException {
+        if (hasParameterMarkers(sql)) {
+            return "Plan not available: PostgreSQL statements with parameter markers are not explained";
+        }
+        try (PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql)) {
+            return readRows(ps.executeQuery());
+        }
+    }
+
+    private static String explainDb2(Connection connection, String sql) throws SQLException {
+        // Db2 accepts parameter markers in explained statements, so no bind values are needed
+        try (PreparedStatement ps = connection.prepareStatement("EXPLAIN PLAN FOR " + sql)) {
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = connection.prepareStatement(DB2_PLAN_SQL)) {
+            return readRows(ps.executeQuery());
+        }
+    }
+
+    private static String explainDerby(Connection connection, String sql, Collection<Object[]> binds) throws SQLException {
+        try (CallableStatement cs = connection.prepareCall("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)")) {
+            cs.execute();
+        }
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                bind(ps, binds);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        // The statistics are complete once all the rows are read
+                    }
+                }
+            }
+            try (PreparedStatement ps = connection.prepareStatement("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")) {
+                return readRows(ps.executeQuery());
+            }
+        } finally {
+            try (CallableStatement cs = connection.prepareCall("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(0)")) {
+                cs.execute();
+            }
+        }
+    }
+
+    /**
+     * @return true if the statement has a parameter marker outside of its string literals and quoted identifiers
+     */
+    static boolean hasParameterMarkers(String sql) {
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    // a doubled quote is an escaped quote, which closes and reopens the literal
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '?') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replay the bind calls of the execution on the statement
+     */
+    private static void bind(PreparedStatement ps, Collection<Object[]> binds) throws SQLException {
+        if (binds == null) {
+            return;
+        }
+        for (Object[] bind : binds) {
+            try {
+                ((Method) bind[0]).invoke(ps, (Object[]) bind[1]);
+            } catch (InvocationTargetException x) {
+                if (x.getCause() instanceof SQLException) {
+                    throw (SQLException) x.getCause();
+                }
+                throw new SQLException("Failed to bind " + ((Method) bind[0]).getName(), x.getCause());
+            } catch (IllegalAccessException x) {
+                throw new SQLException("Failed to bind " + ((Method) bind[0]).getName(), x);
+            }
+        }
+    }
+
+    /**
+     * Read the result set into a string, one line per row with the columns separated by spaces
+     */
+    private static String readRows(ResultSet rs) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (ResultSet r = rs) {
+            int columns = r.getMetaData().getColumnCount();
+            while (r.next()) {
+                if (plan.length() > 0) {
+                    plan.append('\n');
+                }
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) {
+                        plan.append(' ');
+                    }
+                    plan.append(r.getString(i));
+                }
+            }
+        }
+        return plan.toString();
+    }
+}
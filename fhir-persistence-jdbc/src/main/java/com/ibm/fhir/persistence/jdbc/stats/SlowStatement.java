@@ -0,0 +1,59 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.stats;
+
+import java.time.Instant;
+
+/**
+ * An execution of a statement which took longer than the slow statement threshold
+ */
+public class SlowStatement {
+    private final String sql;
+    private final long elapsedNanos;
+    private final Instant time;
+    private final String tenantId;
+    private final String plan;
+
+    /**
+     * Public constructor
+     * @param sql the normalized SQL of the statement, without any literal or bind values
+     * @param elapsedNanos the execution time
+     * @param time the time the execution completed
+     * @param tenantId the tenant of the request which executed the statement
+     * @param plan the access plan of the statement, or null if it wasn't sampled
+     */
+    public SlowStatement(String sql, long elapsedNanos, Instant time, String tenantId, String plan) {
+        this.sql = sql;
+        this.elapsedNanos = elapsedNanos;
+        this.time = time;
+        this.tenantId = tenantId;
+        this.plan = plan;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public Instant getTime() {
+        return time;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * @return the access plan of the statement, or null if it wasn't sampled
+     */
+    public String getPlan() {
+        return plan;
+    }
+}
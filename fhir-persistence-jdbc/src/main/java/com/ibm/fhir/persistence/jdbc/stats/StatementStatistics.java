@@ -0,0 +1,131 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ibm.fhir.config.metrics.RequestPhase;
+
+/**
+ * The execution statistics of one SQL statement shape: the number of executions, their latency
+ * (total, maximum and a histogram), the number of rows read from their result sets and the number
+ * of executions which failed.
+ */
+public class StatementStatistics {
+    /**
+     * The upper bounds of the latency histogram buckets, in milliseconds. The last bucket
+     * holds the executions which took longer than the last bound.
+     */
+    public static final long[] BUCKET_BOUNDS_MILLIS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    private static final long[] BUCKET_BOUNDS_NANOS = new long[BUCKET_BOUNDS_MILLIS.length];
+    static {
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            BUCKET_BOUNDS_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BUCKET_BOUNDS_MILLIS[i]);
+        }
+    }
+
+    private final String sql;
+    private final RequestPhase kind;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+
+    /**
+     * Public constructor
+     * @param sql the normalized SQL of the statement shape
+     */
+    public StatementStatistics(String sql) {
+        this.sql = sql;
+        this.kind = RequestPhase.ofSql(sql);
+    }
+
+    /**
+     * Record an execution
+     * @param elapsedNanos the execution time
+     * @param failed true if the execution threw an exception
+     */
+    public void add(long elapsedNanos, boolean failed) {
+        count.increment();
+        totalNanos.add(elapsedNanos);
+        long max = maxNanos.get();
+        while (elapsedNanos > max && !maxNanos.compareAndSet(max, elapsedNanos)) {
+            max = maxNanos.get();
+        }
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_NANOS.length && elapsedNanos > BUCKET_BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Record a row read from a result set of the statement
+     */
+    public void addRow() {
+        rows.increment();
+    }
+
+    /**
+     * @return the normalized SQL, with literals replaced by parameter markers
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the kind of the statement, one of the SQL phases
+     */
+    public RequestPhase getKind() {
+        return kind;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return the mean execution time, or 0 if the statement wasn't executed
+     */
+    public long getMeanNanos() {
+        long n = getCount();
+        return n > 0 ? getTotalNanos() / n : 0;
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @param bucket the index of the histogram bucket, from 0 to the number of {@link #BUCKET_BOUNDS_MILLIS}
+     * @return the number of executions in the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+}
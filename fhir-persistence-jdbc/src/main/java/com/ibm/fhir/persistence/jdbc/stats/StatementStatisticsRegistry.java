@@ -0,0 +1,279 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.stats;
+
+import java.sql.Connection;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.config.metrics.RequestPhase;
+
+/**
+ * Aggregates the execution statistics of the SQL statements run by the persistence layer, keyed by the
+ * shape of each statement: its text with the string and numeric literals replaced by parameter markers,
+ * the lists of parameter markers collapsed and the whitespace normalized. So the queries built with
+ * inlined values and the IN lists of different lengths are counted together.
+ *
+ * <p>Executions which take longer than the slow statement threshold are also kept (the most recent ones
+ * only), with their shape rather than their actual text so that no values are captured. A sample of the
+ * slow SELECT statements can also get their access plan from the database; note that the plans of some
+ * databases show the bind values.
+ *
+ * <p>The registry is disabled by default, and records nothing until it is enabled with
+ * {@link #configure(boolean, long, double, int, int)}.
+ */
+public class StatementStatisticsRegistry {
+    private static final Logger logger = Logger.getLogger(StatementStatisticsRegistry.class.getName());
+
+    private static final StatementStatisticsRegistry INSTANCE = new StatementStatisticsRegistry();
+
+    private static final Pattern MARKER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+    private static final Pattern MARKER_TUPLE_LIST = Pattern.compile("\\(\\?(?:\\.\\.\\.)?\\)(?:\\s*,\\s*\\(\\?(?:\\.\\.\\.)?\\))+");
+
+    private volatile boolean enabled = false;
+    private volatile long slowThresholdNanos = TimeUnit.SECONDS.toNanos(1);
+    private volatile double explainSampleRate = 0.0;
+    private volatile int maxStatements = 1000;
+    private volatile int maxSlowStatements = 100;
+
+    private final Map<String, StatementStatistics> statistics = new ConcurrentHashMap<>();
+
+    // The shapes of the statement texts seen so far, to normalize each text only once
+    private final Map<String, String> shapes = new ConcurrentHashMap<>();
+
+    // The executions not counted because the registry already holds maxStatements shapes
+    private final LongAdder overflow = new LongAdder();
+
+    // The most recent slow executions, newest first
+    private final Deque<SlowStatement> slowStatements = new ArrayDeque<>();
+
+    private StatementStatisticsRegistry() {
+        // Singleton
+    }
+
+    /**
+     * @return the registry of the server
+     */
+    public static StatementStatisticsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Configure the registry
+     * @param enabled whether to record statement executions
+     * @param slowThresholdMillis the execution time above which executions are kept as slow statements
+     * @param explainSampleRate the fraction of the slow SELECT executions for which the access plan is
+     *     obtained, from 0 (never) to 1 (always)
+     * @param maxStatements the maximum number of statement shapes to keep statistics for
+     * @param maxSlowStatements the number of most recent slow statements to keep
+     */
+    public void configure(boolean enabled, long slowThresholdMillis, double explainSampleRate, int maxStatements, int maxSlowStatements) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.explainSampleRate = explainSampleRate;
+        this.maxStatements = maxStatements;
+        this.maxSlowStatements = maxSlowStatements;
+        this.enabled = enabled;
+        logger.info("Statement statistics enabled=" + enabled + ", slowThresholdMillis=" + slowThresholdMillis
+                + ", explainSampleRate=" + explainSampleRate);
+    }
+
+    /**
+     * @return true if statement executions are recorded
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if the access plans of slow statements may be sampled, which needs their bind values
+     */
+    public boolean isExplainEnabled() {
+        return enabled && explainSampleRate > 0;
+    }
+
+    /**
+     * Get the statistics of the shape of the statement, creating them on first use
+     * @param sql the statement text
+     * @return the statistics, or null if the registry is disabled or full
+     */
+    public StatementStatistics getStatistics(String sql) {
+        if (!enabled || sql == null) {
+            return null;
+        }
+        String shape = shapes.get(sql);
+        if (shape == null) {
+            shape = normalize(sql);
+            if (shapes.size() < maxStatements * 4) {
+                shapes.put(sql, shape);
+            }
+        }
+        StatementStatistics result = statistics.get(shape);
+        if (result == null) {
+            if (statistics.size() >= maxStatements) {
+                overflow.increment();
+                return null;
+            }
+            result = statistics.computeIfAbsent(shape, StatementStatistics::new);
+        }
+        return result;
+    }
+
+    /**
+     * Record an execution of a statement
+     * @param stats the statistics of the statement shape
+     * @param elapsedNanos the execution time
+     * @param failed true if the execution threw an exception
+     * @param connection the connection which executed the statement, used to get its access plan
+     * @param sql the statement text
+     * @param binds the bind calls of the execution, or null if they weren't captured
+     */
+    public void record(StatementStatistics stats, long elapsedNanos, boolean failed, Connection connection, String sql, Collection<Object[]> binds) {
+        stats.add(elapsedNanos, failed);
+        if (failed || elapsedNanos < slowThresholdNanos) {
+            return;
+        }
+
+        String plan = null;
+        if (stats.getKind() == RequestPhase.SQL_SELECT && explainSampleRate > 0
+                && ThreadLocalRandom.current().nextDouble() < explainSampleRate) {
+            plan = PlanExplainer.explain(connection, sql, binds);
+        }
+        SlowStatement slow = new SlowStatement(stats.getSql(), elapsedNanos, Instant.now(),
+                FHIRRequestContext.get().getTenantId(), plan);
+        synchronized (slowStatements) {
+            slowStatements.addFirst(slow);
+            while (slowStatements.size() > maxSlowStatements) {
+                slowStatements.removeLast();
+            }
+        }
+    }
+
+    /**
+     * @return the statistics of all the statement shapes, by descending total execution time
+     */
+    public List<StatementStatistics> getStatistics() {
+        List<StatementStatistics> result = new ArrayList<>(statistics.values());
+        result.sort(Comparator.comparingLong(StatementStatistics::getTotalNanos).reversed());
+        return result;
+    }
+
+    /**
+     * @return the most recent slow executions, newest first
+     */
+    public List<SlowStatement> getSlowStatements() {
+        synchronized (slowStatements) {
+            return new ArrayList<>(slowStatements);
+        }
+    }
+
+    /**
+     * @return the number of executions which weren't counted because the maximum number of shapes was reached
+     */
+    public long getOverflowCount() {
+        return overflow.sum();
+    }
+
+    /**
+     * Discard all the statistics and slow statements
+     */
+    public void reset() {
+        statistics.clear();
+        shapes.clear();
+        overflow.reset();
+        synchronized (slowStatements) {
+            slowStatements.clear();
+        }
+    }
+
+    /**
+     * Normalize the statement text to its shape: string and numeric literals are replaced by parameter
+     * markers, lists of parameter markers are collapsed to {@code ?...}, lists of parenthesized markers
+     * (e.g. the rows of a multi-row VALUES clause) to {@code (?...)...} and runs of whitespace to one space.
+     * Identifiers, including quoted ones, are kept as they are.
+     * @param sql the statement text
+     * @return the shape
+     */
+    public static String normalize(String sql) {
+        StringBuilder result = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // string literal, with '' as an escaped quote
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                result.append('?');
+            } else if (c == '"') {
+                // quoted identifier
+                int end = sql.indexOf('"', i + 1);
+                end = end < 0 ? length : end + 1;
+                result.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(c) && !isIdentifierPart(result)) {
+                // numeric literal, with an optional fraction and exponent
+                while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                if (i + 1 < length && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')
+                        && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '-' || sql.charAt(i + 1) == '+')) {
+                    i += 2;
+                    while (i < length && Character.isDigit(sql.charAt(i))) {
+                        i++;
+                    }
+                }
+                result.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (result.length() > 0 && i < length) {
+                    result.append(' ');
+                }
+            } else {
+                result.append(c);
+                i++;
+            }
+        }
+        String shape = MARKER_LIST.matcher(result).replaceAll("?...");
+        return MARKER_TUPLE_LIST.matcher(shape).replaceAll("(?...)...");
+    }
+
+    /**
+     * @return true if the last character appended is part of an identifier, so a digit continues it
+     */
+    private static boolean isIdentifierPart(StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char last = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$' || last == '#';
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dto.LocalReference;
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
+import com.ibm.fhir.search.parameters.InclusionParameter;
+
+/**
+ * Resolves the resources added to a page of search results by the _include and _revinclude search result
+ * parameters. Rather than running the search again for each inclusion, the references of the matching resources
+ * are read from the values of the reference search parameters, and the included resources are then read with
+ * one batched query per resource type. Inclusions with the :iterate modifier are also applied to the included
+ * resources, one pass at a time, until a pass includes no new resources.
+ */
+public class InclusionResolver {
+    private static final String CLASSNAME = InclusionResolver.class.getName();
+    private static final Logger log = Logger.getLogger(CLASSNAME);
+
+    private final ResourceDAO resourceDao;
+    private final JDBCIdentityCache identityCache;
+
+    // The maximum number of resources included for a page of matches
+    private final int maxIncludedResources;
+
+    // The maximum number of resources a _revinclude adds for any one resource it is applied to
+    private final int maxRevIncludesPerMatch;
+
+    // The resources already included, in order
+    private final List<Resource> included = new ArrayList<>();
+
+    // The resource ids of the matches and included resources, so that each resource is returned once
+    private final Set<Long> resourceIds = new HashSet<>();
+
+    // The type/logical id of the resources whose current version has been read already
+    private final Set<String> currentIds = new HashSet<>();
+
+    /**
+     * Public constructor
+     * @param resourceDao used to read the references and the included resources
+     * @param identityCache used to look up the parameter name and code system ids
+     * @param maxIncludedResources the maximum number of resources included for a page of matches
+     * @param maxRevIncludesPerMatch the maximum number of resources a _revinclude adds for any one resource
+     */
+    public InclusionResolver(ResourceDAO resourceDao, JDBCIdentityCache identityCache, int maxIncludedResources, int maxRevIncludesPerMatch) {
+        this.resourceDao = resourceDao;
+        this.identityCache = identityCache;
+        this.maxIncludedResources = maxIncludedResources;
+        this.maxRevIncludesPerMatch = maxRevIncludesPerMatch;
+    }
+
+    /**
+     * Resolve the resources included in the search results by the given inclusion parameters
+     *
+     * @param resourceType the name of the resource type searched
+     * @param matches the page of resources matching the search
+     * @param includeParameters the _include parameters of the search
+     * @param revIncludeParameters the _revinclude parameters of the search
+     * @return the included resources which aren't matches, each once. When there are more than maxIncludedResources
+     *     of them, maxIncludedResources + 1 are returned so that the caller can tell the limit was exceeded.
+     * @throws FHIRPersistenceException
+     */
+    public List<Resource> resolve(String resourceType, List<Resource> matches, List<InclusionParameter> includeParameters,
+            List<InclusionParameter> revIncludeParameters) throws FHIRPersistenceException {
+        final String METHODNAME = "resolve";
+        log.entering(CLASSNAME, METHODNAME);
+
+        for (Resource match : matches) {
+            resourceIds.add(match.getId());
+            currentIds.add(resourceType + "/" + match.getLogicalId());
+        }
+
+        // The resources the inclusions are applied to, by resource type. The first pass applies all the inclusions to
+        // the matches, the next ones only the iterated inclusions to the resources included by the previous pass.
+        Map<String, List<Resource>> sources = Collections.singletonMap(resourceType, matches);
+        boolean firstPass = true;
+        while (!sources.isEmpty() && !isFull()) {
+            // The logical ids to read, by resource type
+            Map<String, Set<String>> currentTargets = new LinkedHashMap<>();
+            Map<String, List<LocalReference>> versionedTargets = new LinkedHashMap<>();
+
+            for (InclusionParameter includeParm : includeParameters) {
+                List<Resource> resources = sources.get(includeParm.getJoinResourceType());
+                if (resources != null && (firstPass || includeParm.isIterate())) {
+                    addIncludeTargets(includeParm, resources, currentTargets, versionedTargets);
+                }
+            }
+            for (InclusionParameter revIncludeParm : revIncludeParameters) {
+                List<Resource> resources = sources.get(revIncludeParm.getSearchParameterTargetType());
+                if (resources != null && (firstPass || revIncludeParm.isIterate())) {
+                    addRevIncludeTargets(revIncludeParm, resources, currentTargets);
+                }
+            }
+
+            sources = readTargets(currentTargets, versionedTargets);
+            firstPass = false;
+        }
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Included " + included.size() + " resources for " + matches.size() + " " + resourceType + " matches");
+        }
+        log.exiting(CLASSNAME, METHODNAME);
+        return included;
+    }
+
+    /**
+     * Add the resources referenced by the given resources through the _include search parameter to the targets
+     */
+    private void addIncludeTargets(InclusionParameter includeParm, List<Resource> resources, Map<String, Set<String>> currentTargets,
+            Map<String, List<LocalReference>> versionedTargets) throws FHIRPersistenceException {
+        final String targetType = includeParm.getSearchParameterTargetType();
+        Integer parameterNameId = identityCache.getParameterNameId(includeParm.getSearchParameter());
+        Integer targetTypeCodeSystemId = identityCache.getCodeSystemId(targetType);
+        if (parameterNameId == null || targetTypeCodeSystemId == null) {
+            // Nothing was ever stored for this parameter or target type, so nothing is referenced
+            return;
+        }
+
+        List<LocalReference> refs = resourceDao.readReferences(includeParm.getJoinResourceType(), parameterNameId, targetTypeCodeSystemId,
+            logicalIds(resources));
+        for (LocalReference ref : refs) {
+            if (ref.getTargetVersionId() != null) {
+                versionedTargets.computeIfAbsent(targetType, k -> new ArrayList<>()).add(ref);
+            } else {
+                currentTargets.computeIfAbsent(targetType, k -> new LinkedHashSet<>()).add(ref.getTargetLogicalId());
+            }
+        }
+    }
+
+    /**
+     * Add the resources referencing the given resources through the _revinclude search parameter to the targets
+     */
+    private void addRevIncludeTargets(InclusionParameter revIncludeParm, List<Resource> resources, Map<String, Set<String>> currentTargets)
+            throws FHIRPersistenceException {
+        final String targetType = revIncludeParm.getSearchParameterTargetType();
+        Integer parameterNameId = identityCache.getParameterNameId(revIncludeParm.getSearchParameter());
+        Integer targetTypeCodeSystemId = identityCache.getCodeSystemId(targetType);
+        if (parameterNameId == null || targetTypeCodeSystemId == null) {
+            return;
+        }
+
+        // Any more references than the limit wouldn't be included anyway
+        List<LocalReference> refs = resourceDao.readReverseReferences(revIncludeParm.getJoinResourceType(), parameterNameId, targetType,
+            targetTypeCodeSystemId, logicalIds(resources), maxRevIncludesPerMatch, maxIncludedResources + 1);
+        for (LocalReference ref : refs) {
+            currentTargets.computeIfAbsent(revIncludeParm.getJoinResourceType(), k -> new LinkedHashSet<>()).add(ref.getSourceLogicalId());
+        }
+    }
+
+    /**
+     * Read the target resources with one query per resource type, and add the ones not seen yet to the included resources
+     *
+     * @return the newly included resources, by resource type
+     */
+    private Map<String, List<Resource>> readTargets(Map<String, Set<String>> currentTargets, Map<String, List<LocalReference>> versionedTargets)
+            throws FHIRPersistenceException {
+        Map<String, List<Resource>> result = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Set<String>> entry : currentTargets.entrySet()) {
+            final String resourceType = entry.getKey();
+            List<String> logicalIds = new ArrayList<>();
+            for (String logicalId : entry.getValue()) {
+                if (currentIds.add(resourceType + "/" + logicalId)) {
+                    logicalIds.add(logicalId);
+                }
+            }
+            if (!logicalIds.isEmpty() && !isFull()) {
+                addIncluded(resourceType, resourceDao.searchByLogicalIds(resourceType, logicalIds), result);
+            }
+        }
+
+        for (Map.Entry<String, List<LocalReference>> entry : versionedTargets.entrySet()) {
+            if (!isFull()) {
+                addIncluded(entry.getKey(), resourceDao.searchByLogicalIdVersions(entry.getKey(), entry.getValue()), result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add the resources which weren't seen yet to the included resources, up to the limit
+     */
+    private void addIncluded(String resourceType, List<Resource> resources, Map<String, List<Resource>> result) {
+        for (Resource resource : resources) {
+            if (isFull()) {
+                break;
+            }
+            if (resourceIds.add(resource.getId())) {
+                included.add(resource);
+                result.computeIfAbsent(resourceType, k -> new ArrayList<>()).add(resource);
+            }
+        }
+    }
+
+    /**
+     * @return true if the limit of included resources has been exceeded
+     */
+    private boolean isFull() {
+        return included.size() > maxIncludedResources;
+    }
+
+    private static List<String> logicalIds(List<Resource> resources) {
+        Set<String> result = new LinkedHashSet<>();
+        for (Resource resource : resources) {
+            result.add(resource.getLogicalId());
+        }
+        return new ArrayList<>(result);
+    }
+}
@@ -53,6 +53,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -135,18 +136,35 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
     private static final String CLR = "CLR";
     private static final String CP = "CP";
 
+    // For ordering the search parameters and chain segments by their estimated selectivity
+    private final SelectivityEstimator selectivityEstimator;
+
     /**
-     * Public constructor
+     * Public constructor for a builder which doesn't use any statistics
      * @param parameterDao
      * @param resourceDao
      * @param queryHints
      * @param identityCache
      */
     public JDBCQueryBuilder(ParameterDAO parameterDao, ResourceDAO resourceDao, QueryHints queryHints, JDBCIdentityCache identityCache) {
+        this(parameterDao, resourceDao, queryHints, identityCache, new SelectivityEstimator(null, null, identityCache));
+    }
+
+    /**
+     * Public constructor
+     * @param parameterDao
+     * @param resourceDao
+     * @param queryHints
+     * @param identityCache
+     * @param selectivityEstimator orders the search parameters and plans the chains
+     */
+    public JDBCQueryBuilder(ParameterDAO parameterDao, ResourceDAO resourceDao, QueryHints queryHints, JDBCIdentityCache identityCache,
+            SelectivityEstimator selectivityEstimator) {
         this.parameterDao = parameterDao;
         this.resourceDao  = resourceDao;
         this.queryHints = queryHints;
         this.identityCache = identityCache;
+        this.selectivityEstimator = selectivityEstimator;
     }
 
     /**
@@ -218,21 +236,12 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
         int nearParameterIndex;
         List<QueryParameter> searchParameters = searchContext.getSearchParameters();
 
-        // Forces _id and _lastUpdated to come before all other parameters, which is good for this bit here
-        // zero is used to for all other cases.
-        searchParameters.sort(new Comparator<QueryParameter>() {
-            @Override
-            public int compare(QueryParameter leftParameter, QueryParameter rightParameter) {
-                int result = 0;
-                if (QuerySegmentAggregator.ID.equals(leftParameter.getCode())) {
-                    result = -100;
-                } else if (LastUpdatedParmBehaviorUtil.LAST_UPDATED.equals(leftParameter.getCode())) {
-                    result = -90;
-                }
-                return result;
-            }
-
-        });
+        // Forces _id and _lastUpdated to come before all other parameters, which is good for this bit here,
+        // followed by the other parameters in order of their estimated selectivity, most selective first.
+        // The sort is stable, so the order of the request is kept when nothing is known.
+        final Map<QueryParameter, Double> estimates = estimateRows(resourceType, searchParameters);
+        searchParameters.sort(Comparator.comparingInt(JDBCQueryBuilder::evaluationRank)
+                .thenComparingDouble(p -> estimates.getOrDefault(p, SelectivityEstimator.UNKNOWN)));
 
         int pageSize = searchContext.getPageSize();
         int offset = (searchContext.getPageNumber() - 1) * pageSize;
@@ -275,6 +284,44 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
 
     }
 
+    /**
+     * @return 0 for _id, 1 for _lastUpdated and 2 for all other search parameters
+     */
+    private static int evaluationRank(QueryParameter queryParm) {
+        if (QuerySegmentAggregator.ID.equals(queryParm.getCode())) {
+            return 0;
+        } else if (LastUpdatedParmBehaviorUtil.LAST_UPDATED.equals(queryParm.getCode())) {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * Estimate the number of rows matching each of the search parameters which are ordered by their
+     * estimates. Nothing is estimated if there is nothing to order.
+     *
+     * @param resourceType the type of resource being searched for
+     * @param searchParameters the search parameters
+     * @return the estimates keyed by search parameter
+     */
+    private Map<QueryParameter, Double> estimateRows(Class<?> resourceType, List<QueryParameter> searchParameters) {
+        Map<QueryParameter, Double> estimates = new IdentityHashMap<>();
+        if (ModelSupport.isAbstract(resourceType)
+                || searchParameters.stream().filter(p -> evaluationRank(p) == 2).count() < 2) {
+            return estimates;
+        }
+        for (QueryParameter queryParameter : searchParameters) {
+            if (evaluationRank(queryParameter) == 2 && !queryParameter.isInclusionCriteria()) {
+                estimates.put(queryParameter, selectivityEstimator.estimateRows(resourceType.getSimpleName(), queryParameter));
+            }
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("estimated rows: " + estimates.entrySet().stream()
+                .map(e -> e.getKey().getCode() + "=" + e.getValue()).collect(Collectors.joining(", ")));
+        }
+        return estimates;
+    }
+
     protected String getOperator(QueryParameter queryParm) {
         final String METHODNAME = "getOperator(QueryParameter)";
         log.entering(CLASSNAME, METHODNAME, queryParm.getModifier());
@@ -381,7 +428,7 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                     if (queryParm.isReverseChained()) {
                         databaseQueryParm = this.processReverseChainedReferenceParm(resourceType, queryParm);
                     } else if (queryParm.isChained()) {
-                        databaseQueryParm = this.processChainedReferenceParm(queryParm);
+                        databaseQueryParm = this.processChainedReferenceParm(resourceType, queryParm);
                     } else if (queryParm.isInclusionCriteria()) {
                         databaseQueryParm = this.processInclusionCriteria(queryParm);
                     } else {
@@ -621,6 +668,253 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
     /**
      * Contains special logic for handling chained reference search parameters.
      * <p>
+     * References are stored as the logical id of their target (with the target resource type as code system),
+     * so each link of the chain is a join on ids, and the whole chain, however long, is realized as a single flat
+     * semi-join instead of one nested sub-select per link. Here is a sample chained query for an Observation
+     * given this search parameter: {@code subject:Patient.organization:Organization.name=Acme}
+     * <p>
+     * When the end of the chain is estimated to be selective, or nothing is known about it, the semi-join starts
+     * from the rows which match it and follows the references back to the head of the chain:
+     *
+     * <pre>
+     * (pX.PARAMETER_NAME_ID = 1 AND pX.CODE_SYSTEM_ID = 2 AND pX.TOKEN_VALUE IN
+     *   (SELECT CLR1.LOGICAL_ID
+     *      FROM Organization_STR_VALUES AS CP2
+     *      JOIN Organization_LOGICAL_RESOURCES AS CLR2 ON CLR2.LOGICAL_RESOURCE_ID = CP2.LOGICAL_RESOURCE_ID
+     *      JOIN Organization_RESOURCES AS CR2 ON CR2.RESOURCE_ID = CLR2.CURRENT_RESOURCE_ID AND CR2.IS_DELETED = 'N'
+     *      JOIN Patient_TOKEN_VALUES_V AS CP1 ON CP1.TOKEN_VALUE = CLR2.LOGICAL_ID AND CP1.PARAMETER_NAME_ID = 3 AND CP1.CODE_SYSTEM_ID = 4
+     *      JOIN Patient_LOGICAL_RESOURCES AS CLR1 ON CLR1.LOGICAL_RESOURCE_ID = CP1.LOGICAL_RESOURCE_ID
+     *      JOIN Patient_RESOURCES AS CR1 ON CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED = 'N'
+     *     WHERE (CP2.PARAMETER_NAME_ID = 5 AND ...)))
+     * </pre>
+     *
+     * Otherwise, the semi-join is a correlated EXISTS which follows the references from the head of the chain,
+     * so that the unselective end of the chain is only probed for the rows which reach it:
+     *
+     * <pre>
+     * (pX.PARAMETER_NAME_ID = 1 AND pX.CODE_SYSTEM_ID = 2 AND EXISTS
+     *   (SELECT 1
+     *      FROM Patient_LOGICAL_RESOURCES AS CLR1
+     *      JOIN Patient_RESOURCES AS CR1 ON CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED = 'N'
+     *      JOIN Patient_TOKEN_VALUES_V AS CP1 ON CP1.LOGICAL_RESOURCE_ID = CLR1.LOGICAL_RESOURCE_ID AND CP1.PARAMETER_NAME_ID = 3 AND CP1.CODE_SYSTEM_ID = 4
+     *      JOIN Organization_LOGICAL_RESOURCES AS CLR2 ON CLR2.LOGICAL_ID = CP1.TOKEN_VALUE
+     *      JOIN Organization_RESOURCES AS CR2 ON CR2.RESOURCE_ID = CLR2.CURRENT_RESOURCE_ID AND CR2.IS_DELETED = 'N'
+     *      JOIN Organization_STR_VALUES AS CP2 ON CP2.LOGICAL_RESOURCE_ID = CLR2.LOGICAL_RESOURCE_ID
+     *     WHERE CLR1.LOGICAL_ID = pX.TOKEN_VALUE AND (CP2.PARAMETER_NAME_ID = 5 AND ...)))
+     * </pre>
+     *
+     * Chains which include a wildcard resource type are built by {@link #processNestedChainedReferenceParm(QueryParameter)}.
+     *
+     * @see https://www.hl7.org/fhir/search.html#reference (section 2.1.1.4.13)
+     * @param queryParm
+     *                  - A Parameter representing a chained query.
+     * @return SqlQueryData - The query segment for a chained parameter reference
+     *         search.
+     * @throws Exception
+     */
+    @Override
+    protected SqlQueryData processChainedReferenceParm(QueryParameter queryParm) throws Exception {
+        return processChainedReferenceParm(null, queryParm);
+    }
+
+    /**
+     * Builds a chained reference search parameter, see {@link #processChainedReferenceParm(QueryParameter)}
+     *
+     * @param resourceType the type of resource being searched for, or null if not known
+     * @param queryParm
+     * @return
+     * @throws Exception
+     */
+    private SqlQueryData processChainedReferenceParm(Class<?> resourceType, QueryParameter queryParm) throws Exception {
+        final String METHODNAME = "processChainedReferenceParm";
+        log.entering(CLASSNAME, METHODNAME, queryParm.toString());
+
+        // The reference parameters of the chain, each followed by the resource type it refers to
+        List<QueryParameter> links = new ArrayList<>();
+        QueryParameter tail = queryParm;
+        while (tail.getNextParameter() != null) {
+            if ("*".equals(tail.getModifierResourceTypeName())) {
+                log.exiting(CLASSNAME, METHODNAME);
+                return processNestedChainedReferenceParm(queryParm);
+            }
+            links.add(tail);
+            tail = tail.getNextParameter();
+        }
+        final int lastHop = links.size();
+        final String tailResourceTypeName = links.get(lastHop - 1).getModifierResourceTypeName();
+        final String tailLogicalResourceVar = CLR + lastHop;
+        final String tailResourceVar = CR + lastHop;
+        final String tailParmVar = CP + lastHop;
+
+        // Build the condition on the end of the chain, and decide if it needs its own parameter table
+        String code = tail.getCode();
+        SqlQueryData tailQueryData;
+        boolean tailParmTable = false;
+        if (QuerySegmentAggregator.ID.equals(code)) {
+            tailQueryData = buildChainedIdClause(tail, tailParmVar);
+        } else if (LastUpdatedParmBehaviorUtil.LAST_UPDATED.equals(code)) {
+            // Build this piece: (CRx.LAST_UPDATED <operator> ?)
+            LastUpdatedParmBehaviorUtil util = new LastUpdatedParmBehaviorUtil();
+            StringBuilder lastUpdatedWhereClause = new StringBuilder();
+            util.executeBehavior(lastUpdatedWhereClause, tail);
+            tailQueryData = new SqlQueryData(lastUpdatedWhereClause.toString()
+                .replaceAll(LastUpdatedParmBehaviorUtil.LAST_UPDATED_COLUMN_NAME,
+                    tailResourceVar + DOT + LastUpdatedParmBehaviorUtil.LAST_UPDATED_COLUMN_NAME),
+                util.getBindVariables());
+        } else {
+            // :missing and :not build their own [NOT] EXISTS sub-select correlated to CLRx
+            tailQueryData = buildQueryParm(ModelSupport.getResourceType(tailResourceTypeName), tail, tailParmVar, tailLogicalResourceVar, true);
+            tailParmTable = !Modifier.MISSING.equals(tail.getModifier())
+                    && !(Type.TOKEN.equals(tail.getType()) && Modifier.NOT.equals(tail.getModifier()));
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("chained sqlQueryData[" + tailParmVar + "] = " + tailQueryData.getQueryString());
+        }
+
+        // Evaluate the end of the chain first if it matches fewer rows than there are references to follow
+        // from the head of the chain, which is what the correlated EXISTS would be evaluated for. With no
+        // statistics, the nested IN evaluation order of earlier releases is kept
+        double tailEstimate = selectivityEstimator.estimateRows(tailResourceTypeName, tail);
+        double headEstimate = resourceType != null && !ModelSupport.isAbstract(resourceType)
+                ? selectivityEstimator.estimateTotalRows(resourceType.getSimpleName(), queryParm) : SelectivityEstimator.UNKNOWN;
+        boolean tailFirst = tailEstimate == SelectivityEstimator.UNKNOWN || headEstimate == SelectivityEstimator.UNKNOWN
+                || tailEstimate <= headEstimate;
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("chain " + queryParm.getCode() + " tail estimate=" + tailEstimate + " head estimate=" + headEstimate
+                + " tailFirst=" + tailFirst);
+        }
+
+        // Build this piece: (pX.PARAMETER_NAME_ID = x AND pX.CODE_SYSTEM_ID = y AND
+        StringBuilder whereClauseSegment = new StringBuilder();
+        this.populateNameIdSubSegment(whereClauseSegment, queryParm.getCode(), PARAMETER_TABLE_ALIAS);
+        appendCodeSystemIdFilter(whereClauseSegment, queryParm, PARAMETER_TABLE_ALIAS);
+        whereClauseSegment.append(AND);
+
+        if (tailFirst) {
+            // Build this piece: pX.TOKEN_VALUE IN (SELECT CLR1.LOGICAL_ID FROM <tail> JOIN ... <head> WHERE <tail condition>)
+            whereClauseSegment.append(PARAMETER_TABLE_ALIAS).append(DOT).append(TOKEN_VALUE).append(IN)
+                    .append(LEFT_PAREN).append(SELECT).append(CLR + 1).append(DOT).append(LOGICAL_ID).append(FROM);
+            if (tailParmTable) {
+                whereClauseSegment.append(QuerySegmentAggregator.tableName(tailResourceTypeName, tail)).append(AS).append(tailParmVar);
+                appendCompositeComponentJoins(whereClauseSegment, tailResourceTypeName, tail, tailParmVar);
+                whereClauseSegment.append(JOIN);
+                appendLogicalResourceTable(whereClauseSegment, tailResourceTypeName, tailLogicalResourceVar);
+                whereClauseSegment.append(ON).append(tailLogicalResourceVar).append(DOT).append(LOGICAL_RESOURCE_ID).append(EQ)
+                        .append(tailParmVar).append(DOT).append(LOGICAL_RESOURCE_ID);
+            } else {
+                appendLogicalResourceTable(whereClauseSegment, tailResourceTypeName, tailLogicalResourceVar);
+            }
+            appendCurrentResourceJoin(whereClauseSegment, tailResourceTypeName, tailResourceVar, tailLogicalResourceVar);
+
+            // Follow the references back: JOIN <type>_TOKEN_VALUES_V AS CPx ON CPx.TOKEN_VALUE = CLRy.LOGICAL_ID ...
+            for (int hop = lastHop - 1; hop >= 1; hop--) {
+                final String resourceTypeName = links.get(hop - 1).getModifierResourceTypeName();
+                final String parmVar = CP + hop;
+                final String logicalResourceVar = CLR + hop;
+                whereClauseSegment.append(JOIN).append(resourceTypeName).append("_TOKEN_VALUES_V").append(AS).append(parmVar)
+                        .append(ON).append(parmVar).append(DOT).append(TOKEN_VALUE).append(EQ)
+                        .append(CLR + (hop + 1)).append(DOT).append(LOGICAL_ID);
+                appendLinkFilter(whereClauseSegment, links.get(hop), parmVar);
+                whereClauseSegment.append(JOIN);
+                appendLogicalResourceTable(whereClauseSegment, resourceTypeName, logicalResourceVar);
+                whereClauseSegment.append(ON).append(logicalResourceVar).append(DOT).append(LOGICAL_RESOURCE_ID).append(EQ)
+                        .append(parmVar).append(DOT).append(LOGICAL_RESOURCE_ID);
+                appendCurrentResourceJoin(whereClauseSegment, resourceTypeName, CR + hop, logicalResourceVar);
+            }
+            whereClauseSegment.append(WHERE);
+        } else {
+            // Build this piece: EXISTS (SELECT 1 FROM <head> JOIN ... <tail> WHERE CLR1.LOGICAL_ID = pX.TOKEN_VALUE AND <tail condition>)
+            whereClauseSegment.append(EXISTS).append(LEFT_PAREN).append("SELECT 1").append(FROM);
+            for (int hop = 1; hop <= lastHop; hop++) {
+                final String resourceTypeName = links.get(hop - 1).getModifierResourceTypeName();
+                final String parmVar = CP + hop;
+                final String logicalResourceVar = CLR + hop;
+                if (hop > 1) {
+                    // Follow the reference: JOIN <type>_LOGICAL_RESOURCES AS CLRy ON CLRy.LOGICAL_ID = CPx.TOKEN_VALUE
+                    whereClauseSegment.append(JOIN);
+                    appendLogicalResourceTable(whereClauseSegment, resourceTypeName, logicalResourceVar);
+                    whereClauseSegment.append(ON).append(logicalResourceVar).append(DOT).append(LOGICAL_ID).append(EQ)
+                            .append(CP + (hop - 1)).append(DOT).append(TOKEN_VALUE);
+                } else {
+                    appendLogicalResourceTable(whereClauseSegment, resourceTypeName, logicalResourceVar);
+                }
+                appendCurrentResourceJoin(whereClauseSegment, resourceTypeName, CR + hop, logicalResourceVar);
+
+                if (hop < lastHop) {
+                    whereClauseSegment.append(JOIN).append(resourceTypeName).append("_TOKEN_VALUES_V").append(AS).append(parmVar)
+                            .append(ON).append(parmVar).append(DOT).append(LOGICAL_RESOURCE_ID).append(EQ)
+                            .append(logicalResourceVar).append(DOT).append(LOGICAL_RESOURCE_ID);
+                    appendLinkFilter(whereClauseSegment, links.get(hop), parmVar);
+                } else if (tailParmTable) {
+                    whereClauseSegment.append(JOIN).append(QuerySegmentAggregator.tableName(resourceTypeName, tail)).append(AS).append(parmVar)
+                            .append(ON).append(parmVar).append(DOT).append(LOGICAL_RESOURCE_ID).append(EQ)
+                            .append(logicalResourceVar).append(DOT).append(LOGICAL_RESOURCE_ID);
+                    appendCompositeComponentJoins(whereClauseSegment, resourceTypeName, tail, parmVar);
+                }
+            }
+            whereClauseSegment.append(WHERE).append(CLR + 1).append(DOT).append(LOGICAL_ID).append(EQ)
+                    .append(PARAMETER_TABLE_ALIAS).append(DOT).append(TOKEN_VALUE).append(AND);
+        }
+
+        whereClauseSegment.append(tailQueryData.getQueryString());
+        whereClauseSegment.append(RIGHT_PAREN).append(RIGHT_PAREN);
+
+        SqlQueryData queryData = new SqlQueryData(whereClauseSegment.toString(), new ArrayList<>(tailQueryData.getBindVariables()));
+        log.exiting(CLASSNAME, METHODNAME, whereClauseSegment.toString());
+        return queryData;
+    }
+
+    /**
+     * Build this piece: AND CPx.CODE_SYSTEM_ID = y, restricting a reference to the resource type it refers to.
+     * Nothing is added if the reference may refer to any resource type.
+     */
+    private void appendCodeSystemIdFilter(StringBuilder whereClauseSegment, QueryParameter referenceParm, String parmVar)
+            throws FHIRPersistenceException {
+        final String codeSystemName = referenceParm.getModifierResourceTypeName();
+        if (codeSystemName != null && !codeSystemName.equals("*")) {
+            Integer codeSystemId = identityCache.getCodeSystemId(codeSystemName);
+            if (codeSystemId != null) {
+                whereClauseSegment.append(AND).append(parmVar).append(DOT).append(CODE_SYSTEM_ID).append(EQ)
+                        .append(codeSystemId);
+            }
+        }
+    }
+
+    /**
+     * Build this piece: AND CPx.PARAMETER_NAME_ID = x AND CPx.CODE_SYSTEM_ID = y, for a link in the middle of a chain
+     */
+    private void appendLinkFilter(StringBuilder whereClauseSegment, QueryParameter referenceParm, String parmVar)
+            throws FHIRPersistenceException {
+        Integer parameterNameId = identityCache.getParameterNameId(referenceParm.getCode());
+        whereClauseSegment.append(AND).append(parmVar).append(DOT).append(PARAMETER_NAME_ID).append(EQ)
+                .append(nullCheck(parameterNameId));
+        appendCodeSystemIdFilter(whereClauseSegment, referenceParm, parmVar);
+    }
+
+    /**
+     * Build this piece: <resource-type>_LOGICAL_RESOURCES AS CLRx
+     */
+    private void appendLogicalResourceTable(StringBuilder whereClauseSegment, String resourceTypeName, String logicalResourceVar) {
+        whereClauseSegment.append(resourceTypeName).append(_LOGICAL_RESOURCES).append(AS).append(logicalResourceVar);
+    }
+
+    /**
+     * Build this piece: JOIN <resource-type>_RESOURCES AS CRx ON CRx.RESOURCE_ID = CLRx.CURRENT_RESOURCE_ID AND CRx.IS_DELETED = 'N'
+     */
+    private void appendCurrentResourceJoin(StringBuilder whereClauseSegment, String resourceTypeName, String resourceVar,
+            String logicalResourceVar) {
+        whereClauseSegment.append(JOIN).append(resourceTypeName).append(_RESOURCES).append(AS).append(resourceVar)
+                .append(ON).append(resourceVar).append(DOT).append(RESOURCE_ID).append(EQ)
+                .append(logicalResourceVar).append(DOT).append(CURRENT_RESOURCE_ID)
+                .append(AND).append(resourceVar).append(DOT).append(IS_DELETED_NO);
+    }
+
+    /**
+     * Builds a chained reference search parameter as nested sub-selects, one per link of the chain.
+     * This is only used for chains which include a wildcard resource type, which occur for compartment
+     * searches with chained inclusion criteria; all other chains are planned by
+     * {@link #processChainedReferenceParm(QueryParameter)}.
+     * <p>
      * Nested sub-selects are built to realize the chaining logic required. Here is
      * a sample chained query for an Observation given this search parameter:
      * {@code device:Device.patient.family=Monella}
@@ -647,9 +941,8 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
      *         search.
      * @throws Exception
      */
-    @Override
-    protected SqlQueryData processChainedReferenceParm(QueryParameter queryParm) throws Exception {
-        final String METHODNAME = "processChainedReferenceParm";
+    private SqlQueryData processNestedChainedReferenceParm(QueryParameter queryParm) throws Exception {
+        final String METHODNAME = "processNestedChainedReferenceParm";
         log.entering(CLASSNAME, METHODNAME, queryParm.toString());
 
         QueryParameter currentParm;
@@ -832,10 +1125,36 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                 .append(chainedParmVar);
         }
 
-        if (Type.COMPOSITE.equals(nextParameter.getType())) {
-            if (nextParameter.getValues() != null && !nextParameter.getValues().isEmpty()) {
+        appendCompositeComponentJoins(whereClauseSegment, resourceTypeName, nextParameter, chainedParmVar);
+
+        whereClauseSegment.append(WHERE);
+
+        // CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED = 'N' AND
+        // CP1.LOGICAL_RESOURCE_ID = CLR1.LOGICAL_RESOURCE_ID AND
+        whereClauseSegment.append(chainedResourceTableAlias).append(RESOURCE_ID).append(EQ)
+                .append(chainedLogicalResourceTableAlias).append(CURRENT_RESOURCE_ID)
+                .append(AND)
+                .append(chainedResourceTableAlias)
+                .append(IS_DELETED_NO)
+                .append(AND);
+        if (currentParm.getNextParameter() != null && !"_id".equals(currentParm.getNextParameter().getCode())) {
+            whereClauseSegment.append(chainedParmTableAlias).append(LOGICAL_RESOURCE_ID).append(EQ)
+                .append(chainedResourceTableAlias).append(LOGICAL_RESOURCE_ID)
+                .append(AND);
+        }
+    }
+
+    /**
+     * Build the joins of the component tables of a composite parameter at the end of a chain:
+     * JOIN <resource-type>_<type>_VALUES CPx_pn ON CPx.COMPn_<type> = CPx_pn.ROW_ID AND CPx_pn.LOGICAL_RESOURCE_ID = CPx.LOGICAL_RESOURCE_ID
+     * Nothing is added for any other type of parameter.
+     */
+    private void appendCompositeComponentJoins(StringBuilder whereClauseSegment, String resourceTypeName,
+            QueryParameter compositeParm, String chainedParmVar) {
+        if (Type.COMPOSITE.equals(compositeParm.getType())) {
+            if (compositeParm.getValues() != null && !compositeParm.getValues().isEmpty()) {
                 // Assumption:  all the values should have the same number of components and the same types
-                List<QueryParameter> components = nextParameter.getValues().get(0).getComponent();
+                List<QueryParameter> components = compositeParm.getValues().get(0).getComponent();
                 for (int componentNum = 1; componentNum <= components.size(); componentNum++) {
                     String alias = chainedParmVar + "_p" + componentNum;
                     QueryParameter component = components.get(componentNum - 1);
@@ -849,26 +1168,14 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                             .append(ON)
                             .append(chainedParmVar).append(".COMP").append(componentNum).append(QuerySegmentAggregator.abbr(component))
                             .append("=")
-                            .append(alias).append(".ROW_ID");
+                            .append(alias).append(".ROW_ID")
+                            .append(AND)
+                            .append(alias).append(DOT).append(LOGICAL_RESOURCE_ID)
+                            .append(EQ)
+                            .append(chainedParmVar).append(DOT).append(LOGICAL_RESOURCE_ID);
                 }
             }
         }
-
-        whereClauseSegment.append(WHERE);
-
-        // CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED = 'N' AND
-        // CP1.LOGICAL_RESOURCE_ID = CLR1.LOGICAL_RESOURCE_ID AND
-        whereClauseSegment.append(chainedResourceTableAlias).append(RESOURCE_ID).append(EQ)
-                .append(chainedLogicalResourceTableAlias).append(CURRENT_RESOURCE_ID)
-                .append(AND)
-                .append(chainedResourceTableAlias)
-                .append(IS_DELETED_NO)
-                .append(AND);
-        if (currentParm.getNextParameter() != null && !"_id".equals(currentParm.getNextParameter().getCode())) {
-            whereClauseSegment.append(chainedParmTableAlias).append(LOGICAL_RESOURCE_ID).append(EQ)
-                .append(chainedResourceTableAlias).append(LOGICAL_RESOURCE_ID)
-                .append(AND);
-        }
     }
 
     /**
@@ -1674,9 +1981,9 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                             //   JOIN <modifierTypeResourceName>_COMPOSITES AS CPx
                             //     ON CPx.LOGICAL_RESOURCE_ID = CLR<x-1>.LOGICAL_RESOURCE_ID
                             //   JOIN <modifierTypeResourceName>__<type>_VALUES AS CPx_px
-                            //     ON CPx.COMPx_<type> = CPx_px.ROW_ID
+                            //     ON CPx.COMPx_<type> = CPx_px.ROW_ID AND CPx_px.LOGICAL_RESOURCE_ID = CPx.LOGICAL_RESOURCE_ID
                             //   JOIN <modifierTypeResourceName>__<type>_VALUES AS CPx_p<x+1>
-                            //     ON CPx.COMP<x+1>_<type> = CPx_p<x+1>.ROW_ID
+                            //     ON CPx.COMP<x+1>_<type> = CPx_p<x+1>.ROW_ID AND CPx_p<x+1>.LOGICAL_RESOURCE_ID = CPx.LOGICAL_RESOURCE_ID
                             //     AND
                             // @formatter:on
                             whereClauseSegment.append(JOIN).append(previousParm.getModifierResourceTypeName()).append("_COMPOSITES")
@@ -1695,7 +2002,9 @@ public class JDBCQueryBuilder extends AbstractQueryBuilder<SqlQueryData> {
                                     }
                                     whereClauseSegment.append(JOIN).append(tableName).append(alias).append(ON)
                                             .append(chainedParmVar).append(".COMP").append(componentNum).append(QuerySegmentAggregator.abbr(component))
-                                            .append(EQ).append(alias).append(".ROW_ID");
+                                            .append(EQ).append(alias).append(".ROW_ID")
+                                            .append(AND).append(alias).append(DOT).append(LOGICAL_RESOURCE_ID)
+                                            .append(EQ).append(chainedParmVar).append(DOT).append(LOGICAL_RESOURCE_ID);
                                 }
                             }
                             whereClauseSegment.append(AND);
@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.exception.FHIRException;
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * Converts a page of resource DTOs to FHIR resources, decompressing and parsing the payloads on several threads
+ * when the page is large enough for it to pay off. The request thread always takes part in the conversion, and is
+ * helped by threads of a shared, bounded pool. The number of pool threads converting pages for any one tenant at
+ * once is capped, so that a few tenants with large pages can't take over the pool. When no pool thread can be had,
+ * the request thread simply converts the page on its own.
+ *
+ * <p>The resources are returned in the order of the DTOs, whichever thread converted them.
+ */
+public class ParallelResourceConverter {
+    private static final Logger log = Logger.getLogger(ParallelResourceConverter.class.getName());
+
+    // The page size up to which the conversion stays on the request thread, and the least number of
+    // resources per thread otherwise
+    public static final int DEFAULT_THRESHOLD = 32;
+
+    // The default maximum number of pool threads converting pages of any one tenant at once
+    public static final int DEFAULT_MAX_CONCURRENCY_PER_TENANT = Runtime.getRuntime().availableProcessors();
+
+    // Shared by all the tenants, bounded by the number of processors since the work is CPU-bound
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // The pool threads available to each tenant
+    private static final Map<String, Semaphore> tenantPermits = new ConcurrentHashMap<>();
+
+    private final int threshold;
+    private final int maxConcurrencyPerTenant;
+
+    /**
+     * Converts one DTO to a FHIR resource
+     */
+    @FunctionalInterface
+    public interface Converter {
+        Resource convert(com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO) throws FHIRException, IOException;
+    }
+
+    /**
+     * Public constructor
+     * @param threshold the page size up to which the conversion stays on the request thread, or 0 to never convert in parallel
+     * @param maxConcurrencyPerTenant the maximum number of pool threads converting pages of the same tenant at once. This is
+     *     fixed by the first conversion for the tenant.
+     */
+    public ParallelResourceConverter(int threshold, int maxConcurrencyPerTenant) {
+        this.threshold = threshold;
+        this.maxConcurrencyPerTenant = maxConcurrencyPerTenant;
+    }
+
+    /**
+     * Convert the given DTOs
+     * @param resourceDTOs the DTOs to convert
+     * @param converter converts one DTO, and must be safe to call from several threads
+     * @return the converted resources, in the order of the DTOs
+     * @throws FHIRException
+     * @throws IOException
+     */
+    public List<Resource> convert(List<com.ibm.fhir.persistence.jdbc.dto.Resource> resourceDTOs, Converter converter)
+            throws FHIRException, IOException {
+        final int size = resourceDTOs.size();
+        final Resource[] result = new Resource[size];
+
+        // Each thread is given about threshold resources to convert at least
+        int helpersWanted = threshold > 0 && size > threshold ? Math.min(pool.getParallelism(), (size + threshold - 1) / threshold) - 1 : 0;
+        if (helpersWanted <= 0) {
+            for (int i = 0; i < size; i++) {
+                result[i] = converter.convert(resourceDTOs.get(i));
+            }
+            return new ArrayList<>(Arrays.asList(result));
+        }
+
+        final FHIRRequestContext requestContext = FHIRRequestContext.get();
+        final Semaphore permits = tenantPermits.computeIfAbsent(requestContext.getTenantId(), k -> new Semaphore(maxConcurrencyPerTenant));
+        int helperCount = 0;
+        while (helperCount < helpersWanted && permits.tryAcquire()) {
+            helperCount++;
+        }
+
+        // The threads claim the next DTO to convert until there are none left, or one of them failed
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Runnable work = () -> {
+            int i;
+            while (failure.get() == null && (i = next.getAndIncrement()) < size) {
+                try {
+                    result[i] = converter.convert(resourceDTOs.get(i));
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        };
+
+        // A helper which hasn't started by the time the request thread is done is skipped rather than waited for,
+        // which is what the started flags are for. Each helper releases its permit once done or skipped.
+        final CountDownLatch helpersDone = new CountDownLatch(helperCount);
+        final AtomicBoolean[] started = new AtomicBoolean[helperCount];
+        for (int h = 0; h < helperCount; h++) {
+            final AtomicBoolean helperStarted = new AtomicBoolean();
+            started[h] = helperStarted;
+            pool.execute(() -> {
+                if (helperStarted.compareAndSet(false, true)) {
+                    FHIRRequestContext.set(requestContext);
+                    try {
+                        work.run();
+                    } finally {
+                        FHIRRequestContext.remove();
+                        permits.release();
+                        helpersDone.countDown();
+                    }
+                }
+            });
+        }
+
+        work.run();
+        for (AtomicBoolean helperStarted : started) {
+            if (helperStarted.compareAndSet(false, true)) {
+                permits.release();
+                helpersDone.countDown();
+            }
+        }
+        try {
+            helpersDone.await();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new FHIRException("Interrupted while converting resources", x);
+        }
+
+        Throwable t = failure.get();
+        if (t != null) {
+            if (t instanceof FHIRException) {
+                throw (FHIRException) t;
+            } else if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new FHIRException("Failed to convert resources", t);
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Converted " + size + " resources with " + helperCount + " helper threads");
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+}
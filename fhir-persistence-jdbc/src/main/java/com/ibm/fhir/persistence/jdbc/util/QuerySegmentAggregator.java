@@ -659,11 +659,17 @@ public class QuerySegmentAggregator {
                                 if (component.getType().equals(Type.REFERENCE) || component.getType().equals(Type.TOKEN)) {
                                     tableName = overrideType + "_TOKEN_VALUES ";
                                 }
+                                // The extra LOGICAL_RESOURCE_ID predicate is redundant, but lets the database
+                                // prune partitions when the parameter tables are partitioned by logical resource
                                 whereClause.append(JOIN).append(tableName).append(alias)
                                         .append(ON)
                                         .append(compositeAlias).append(".COMP").append(componentNum).append(abbr(component))
                                         .append(EQ)
-                                        .append(alias).append(".ROW_ID");
+                                        .append(alias).append(".ROW_ID")
+                                        .append(AND)
+                                        .append(alias).append(".LOGICAL_RESOURCE_ID")
+                                        .append(EQ)
+                                        .append(compositeAlias).append(".LOGICAL_RESOURCE_ID");
                                 whereClauseSegment =
                                         whereClauseSegment.replaceAll(
                                                 PARAMETER_TABLE_ALIAS + "_p" + componentNum + "\\.", alias + ".");
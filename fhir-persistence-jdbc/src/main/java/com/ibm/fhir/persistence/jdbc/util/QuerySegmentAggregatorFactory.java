@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2018,2020
+ * (C) Copyright IBM Corp. 2018, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -34,11 +34,8 @@ public class QuerySegmentAggregatorFactory {
         
         QuerySegmentAggregator qsa;
         
-        if (searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()) {
-            qsa = new InclusionQuerySegmentAggregator(resourceType, offset, pageSize, parameterDao, resourceDao, 
-                                                      searchContext.getIncludeParameters(), searchContext.getRevIncludeParameters(), queryHints, identityCache);
-        }
-        else if (searchContext.hasSortParameters()) {
+        // _include and _revinclude resources are read separately, for the resulting page, by the InclusionResolver
+        if (searchContext.hasSortParameters()) {
             qsa = new SortedQuerySegmentAggregator(resourceType, offset, pageSize, parameterDao, resourceDao, searchContext.getSortParameters(), queryHints);
         }
         else {
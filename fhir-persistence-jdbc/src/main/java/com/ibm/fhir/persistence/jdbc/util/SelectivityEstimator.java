@@ -0,0 +1,311 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.DATE_START;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.NUMBER_VALUE;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.QUANTITY_VALUE;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.STR_VALUE;
+import static com.ibm.fhir.persistence.jdbc.JDBCConstants.TOKEN_VALUE;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
+import com.ibm.fhir.persistence.jdbc.dto.ParameterStatistics;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.SearchConstants.Prefix;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+
+/**
+ * Estimates how many rows of a parameter table match a search parameter, so that the query
+ * builder can evaluate the most selective parameters, and chain segments, first.
+ *
+ * <p>The estimates are based on {@link ParameterStatistics} read from a bounded sample of the
+ * parameter table rows of each search parameter, scaled up to the size of the table. The
+ * statistics are cached per tenant and datastore for {@link #DEFAULT_TTL_MS}, so the sample is
+ * read at most once in that period for any parameter. Without statistics (e.g. no
+ * {@link StatisticsReader}), nothing is known and {@link #UNKNOWN} is returned.
+ *
+ * <p>Given an executor, the statistics are read in the background, so that the search which
+ * needs them isn't delayed and a failure can't affect its transaction. Until they have been
+ * read, the search is planned with the expired statistics, if any, or without statistics.
+ */
+public class SelectivityEstimator {
+    private static final Logger log = Logger.getLogger(SelectivityEstimator.class.getName());
+
+    // The maximum number of parameter table rows read to compute the statistics of a parameter
+    public static final int DEFAULT_SAMPLE_SIZE = 10000;
+
+    // How long the statistics of a parameter are reused before being read again
+    public static final long DEFAULT_TTL_MS = 10 * 60 * 1000L;
+
+    // The estimate when nothing is known about the parameter
+    public static final double UNKNOWN = Double.MAX_VALUE;
+
+    // The fraction of rows assumed to match a range, contains or negated search
+    private static final double RANGE_SELECTIVITY = 1.0 / 3;
+
+    // Statistics shared by all the searches, keyed by tenant, datastore, table and parameter name id
+    private static final Map<String, CachedStatistics> CACHE = new ConcurrentHashMap<>();
+
+    private final StatisticsReader statisticsReader;
+    private final Executor executor;
+    private final JDBCIdentityCache identityCache;
+    private final int sampleSize;
+    private final long ttlMs;
+
+    /**
+     * Reads the statistics of a search parameter, for example with
+     * {@link com.ibm.fhir.persistence.jdbc.dao.api.ParameterDAO#readParameterStatistics(String, String, int, int)}
+     * on a connection of its own
+     */
+    @FunctionalInterface
+    public interface StatisticsReader {
+        /**
+         * @param tableName the parameter table, e.g. Patient_STR_VALUES
+         * @param valueColumn the column holding the parameter values, e.g. STR_VALUE
+         * @param parameterNameId the id of the search parameter name
+         * @param sampleSize the maximum number of rows read
+         * @return the statistics
+         * @throws FHIRPersistenceException
+         */
+        ParameterStatistics read(String tableName, String valueColumn, int parameterNameId, int sampleSize)
+                throws FHIRPersistenceException;
+    }
+
+    /**
+     * Statistics read at a point in time. The statistics are null if they couldn't be read, or
+     * haven't been read yet.
+     */
+    private static class CachedStatistics {
+        private final long readTime;
+        private final ParameterStatistics statistics;
+
+        CachedStatistics(long readTime, ParameterStatistics statistics) {
+            this.readTime = readTime;
+            this.statistics = statistics;
+        }
+    }
+
+    /**
+     * Public constructor
+     * @param statisticsReader used to read the statistics, or null if none should be read
+     * @param executor runs the statistics reads, or null to read them on the calling thread
+     * @param identityCache used to look up parameter name ids
+     */
+    public SelectivityEstimator(StatisticsReader statisticsReader, Executor executor, JDBCIdentityCache identityCache) {
+        this(statisticsReader, executor, identityCache, DEFAULT_SAMPLE_SIZE, DEFAULT_TTL_MS);
+    }
+
+    /**
+     * Public constructor
+     * @param statisticsReader used to read the statistics, or null if none should be read
+     * @param executor runs the statistics reads, or null to read them on the calling thread
+     * @param identityCache used to look up parameter name ids
+     * @param sampleSize the maximum number of rows sampled per parameter
+     * @param ttlMs how long the statistics of a parameter are reused
+     */
+    public SelectivityEstimator(StatisticsReader statisticsReader, Executor executor, JDBCIdentityCache identityCache,
+            int sampleSize, long ttlMs) {
+        this.statisticsReader = statisticsReader;
+        this.executor = executor;
+        this.identityCache = identityCache;
+        this.sampleSize = sampleSize;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Clear the statistics of all tenants and datastores
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    /**
+     * Estimate the number of resources matching the given search parameter. For a chained or
+     * reverse chained parameter, the estimate is that of the last parameter in the chain on its
+     * own resource type, which is the best indication of how selective the whole chain is.
+     *
+     * @param resourceTypeName the resource type searched
+     * @param queryParm the search parameter
+     * @return the estimated number of matching rows, or {@link #UNKNOWN}
+     */
+    public double estimateRows(String resourceTypeName, QueryParameter queryParm) {
+        String typeName = resourceTypeName;
+        QueryParameter parm = queryParm;
+        while (parm.getNextParameter() != null) {
+            typeName = parm.getModifierResourceTypeName();
+            parm = parm.getNextParameter();
+        }
+
+        if (typeName == null || "*".equals(typeName)) {
+            return UNKNOWN;
+        }
+        if (QuerySegmentAggregator.ID.equals(parm.getCode())) {
+            // Each value matches at most one resource
+            return parm.getValues().size();
+        }
+        return estimateRows(parm, getStatistics(typeName, parm));
+    }
+
+    /**
+     * Estimate the number of rows of the given search parameter, whatever their values. For a
+     * chained reference parameter, this is the number of references of its first link, which the
+     * chain is followed from.
+     *
+     * @param resourceTypeName the resource type searched
+     * @param queryParm the search parameter
+     * @return the estimated number of rows, or {@link #UNKNOWN}
+     */
+    public double estimateTotalRows(String resourceTypeName, QueryParameter queryParm) {
+        ParameterStatistics statistics = getStatistics(resourceTypeName, queryParm);
+        return statistics == null ? UNKNOWN : statistics.getEstimatedRowCount();
+    }
+
+    /**
+     * Estimate the number of rows matching the given search parameter from its statistics
+     *
+     * @param parm the search parameter, not chained
+     * @param statistics the statistics of the parameter, or null if they aren't known
+     * @return the estimated number of matching rows, or {@link #UNKNOWN}
+     */
+    public static double estimateRows(QueryParameter parm, ParameterStatistics statistics) {
+        if (statistics == null || Modifier.MISSING.equals(parm.getModifier())) {
+            return UNKNOWN;
+        }
+        if (statistics.isComplete() && statistics.getRowCount() == 0) {
+            // Nothing to match at all
+            return 0;
+        }
+
+        double estimate = 0;
+        for (QueryParameterValue value : parm.getValues()) {
+            if (isEqualityLike(parm, value)) {
+                estimate += Math.max(1, statistics.getRowsPerValue());
+            } else {
+                estimate += Math.max(1, statistics.getEstimatedRowCount() * RANGE_SELECTIVITY);
+            }
+        }
+        // No more rows can match than there are
+        return Math.min(estimate, Math.max(1, statistics.getEstimatedRowCount()));
+    }
+
+    /**
+     * @return true if the value matches roughly the rows of a single distinct value of the parameter
+     */
+    private static boolean isEqualityLike(QueryParameter parm, QueryParameterValue value) {
+        Modifier modifier = parm.getModifier();
+        if (modifier != null && modifier != Modifier.EXACT && modifier != Modifier.OF_TYPE
+                && modifier != Modifier.IDENTIFIER && modifier != Modifier.TYPE) {
+            // contains, text, above, below, not, in, not-in
+            return false;
+        }
+        Prefix prefix = value.getPrefix();
+        return prefix == null || prefix == Prefix.EQ || prefix == Prefix.AP;
+    }
+
+    /**
+     * Get the statistics of the given parameter, reading them if they aren't cached or have expired
+     *
+     * @return the statistics, or null if they aren't known
+     */
+    private ParameterStatistics getStatistics(String resourceTypeName, QueryParameter parm) {
+        if (statisticsReader == null || identityCache == null) {
+            return null;
+        }
+        final String valueColumn = valueColumn(parm);
+        if (valueColumn == null) {
+            return null;
+        }
+
+        try {
+            Integer parameterNameId = identityCache.getParameterNameId(parm.getCode());
+            if (parameterNameId == null) {
+                return null;
+            }
+            final String tableName = QuerySegmentAggregator.tableName(resourceTypeName, parm).trim();
+            FHIRRequestContext context = FHIRRequestContext.get();
+            final String key = context.getTenantId() + "~" + context.getDataStoreId() + "~" + tableName + "~" + parameterNameId;
+
+            final long now = System.currentTimeMillis();
+            CachedStatistics cached = CACHE.get(key);
+            if (cached == null || now - cached.readTime >= ttlMs) {
+                // Keep any expired statistics until the new ones have been read, and stop other
+                // searches from reading them too
+                CachedStatistics pending = new CachedStatistics(now, cached != null ? cached.statistics : null);
+                boolean reader = cached == null ? CACHE.putIfAbsent(key, pending) == null : CACHE.replace(key, cached, pending);
+                if (reader) {
+                    Runnable read = () -> CACHE.put(key, new CachedStatistics(System.currentTimeMillis(),
+                        readStatistics(tableName, valueColumn, parameterNameId, parm.getCode())));
+                    if (executor == null) {
+                        read.run();
+                    } else {
+                        try {
+                            executor.execute(read);
+                        } catch (RejectedExecutionException x) {
+                            log.log(Level.WARNING, "Failed to schedule the read of the statistics of '" + parm.getCode() + "'", x);
+                        }
+                    }
+                }
+                cached = CACHE.get(key);
+            }
+            return cached != null ? cached.statistics : null;
+        } catch (FHIRPersistenceException x) {
+            log.log(Level.WARNING, "Failed to look up search parameter '" + parm.getCode() + "'", x);
+            return null;
+        }
+    }
+
+    /**
+     * Read the statistics of a parameter
+     *
+     * @return the statistics, or null if they couldn't be read
+     */
+    private ParameterStatistics readStatistics(String tableName, String valueColumn, int parameterNameId, String code) {
+        try {
+            return statisticsReader.read(tableName, valueColumn, parameterNameId, sampleSize);
+        } catch (FHIRPersistenceException | RuntimeException x) {
+            // Not fatal; searches are simply planned without statistics until they expire
+            log.log(Level.WARNING, "Failed to read statistics of '" + code + "' from " + tableName, x);
+            return null;
+        }
+    }
+
+    /**
+     * @return the column holding the values of the parameter in its parameter table,
+     *     or null if there is no single such column
+     */
+    private static String valueColumn(QueryParameter parm) {
+        if (parm.isReverseChained() || parm.getType() == null) {
+            return null;
+        }
+        switch (parm.getType()) {
+        case URI:
+        case STRING:
+            return STR_VALUE;
+        case REFERENCE:
+        case TOKEN:
+            return TOKEN_VALUE;
+        case DATE:
+            return DATE_START;
+        case NUMBER:
+            return NUMBER_VALUE;
+        case QUANTITY:
+            return QUANTITY_VALUE;
+        default:
+            return null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.SearchResultCursor;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceCursor;
+
+/**
+ * A cursor over the results of a search query which converts each row to a FHIR resource only when it
+ * is asked for, so that just one resource of the page is held in memory at a time. The cursor owns the
+ * connection the query runs on, and closes it along with the query.
+ */
+public class StreamingSearchResultCursor implements SearchResultCursor {
+    private static final Logger log = Logger.getLogger(StreamingSearchResultCursor.class.getName());
+
+    private final Connection connection;
+    private final ResourceCursor resourceCursor;
+    private final ParallelResourceConverter.Converter converter;
+    private boolean closed;
+
+    /**
+     * Public constructor
+     * @param connection the connection of the query, closed with this cursor
+     * @param resourceCursor the open query
+     * @param converter converts the DTO of each row to a FHIR resource
+     */
+    public StreamingSearchResultCursor(Connection connection, ResourceCursor resourceCursor, ParallelResourceConverter.Converter converter) {
+        this.connection = connection;
+        this.resourceCursor = resourceCursor;
+        this.converter = converter;
+    }
+
+    @Override
+    public Resource next() throws FHIRPersistenceException {
+        if (closed) {
+            return null;
+        }
+
+        try {
+            com.ibm.fhir.persistence.jdbc.dto.Resource resourceDTO;
+            while ((resourceDTO = resourceCursor.next()) != null) {
+                Resource resource = converter.convert(resourceDTO);
+                if (resource != null) {
+                    return resource;
+                }
+            }
+            return null;
+        } catch (FHIRPersistenceException e) {
+            throw e;
+        } catch (Throwable e) {
+            FHIRPersistenceException fx = new FHIRPersistenceException("Unexpected error while performing a search operation.");
+            log.log(Level.SEVERE, fx.getMessage(), e);
+            throw fx;
+        }
+    }
+
+    @Override
+    public void close() throws FHIRPersistenceException {
+        if (!closed) {
+            closed = true;
+            resourceCursor.close();
+            try {
+                connection.close();
+            } catch (SQLException x) {
+                throw new FHIRPersistenceException("Failure closing connection", x);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.cache.OffHeapPayloadStore;
+
+/**
+ * Unit tests for {@link OffHeapPayloadStore}
+ */
+public class OffHeapPayloadStoreTest {
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testPutGet() {
+        OffHeapPayloadStore store = new OffHeapPayloadStore(1024, 256);
+        store.put("a", bytes("alpha"));
+        store.put("b", bytes("beta"));
+        assertEquals(new String(store.get("a"), StandardCharsets.UTF_8), "alpha");
+        assertEquals(new String(store.get("b"), StandardCharsets.UTF_8), "beta");
+        assertNull(store.get("c"));
+        assertEquals(store.size(), 2);
+    }
+
+    @Test
+    public void testValuesAreImmutable() {
+        OffHeapPayloadStore store = new OffHeapPayloadStore(1024, 256);
+        store.put("a", bytes("alpha"));
+        store.put("a", bytes("other"));
+        assertEquals(new String(store.get("a"), StandardCharsets.UTF_8), "alpha");
+    }
+
+    @Test
+    public void testTooLarge() {
+        OffHeapPayloadStore store = new OffHeapPayloadStore(1024, 8);
+        store.put("a", bytes("more than eight bytes"));
+        assertNull(store.get("a"));
+    }
+
+    @Test
+    public void testOldestSlabEvicted() {
+        // two slabs of 8 bytes, each holding two 4 byte values
+        OffHeapPayloadStore store = new OffHeapPayloadStore(16, 8);
+        store.put("a", bytes("aaaa"));
+        store.put("b", bytes("bbbb"));
+        store.put("c", bytes("cccc"));
+        store.put("d", bytes("dddd"));
+        assertNotNull(store.get("a"));
+
+        // wraps around to the first slab, dropping a and b
+        store.put("e", bytes("eeee"));
+        assertNull(store.get("a"));
+        assertNull(store.get("b"));
+        assertEquals(new String(store.get("c"), StandardCharsets.UTF_8), "cccc");
+        assertEquals(new String(store.get("d"), StandardCharsets.UTF_8), "dddd");
+        assertEquals(new String(store.get("e"), StandardCharsets.UTF_8), "eeee");
+    }
+}
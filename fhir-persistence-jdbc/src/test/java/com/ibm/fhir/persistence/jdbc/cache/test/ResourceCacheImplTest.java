@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.cache.ResourceCacheImpl;
+
+/**
+ * Unit tests for {@link ResourceCacheImpl}
+ */
+public class ResourceCacheImplTest {
+
+    @Test
+    public void testCurrentVersion() {
+        ResourceCacheImpl cache = new ResourceCacheImpl(10, 0);
+        long generation = cache.getGeneration("Patient", "p1");
+        cache.putCurrentVersion("Patient", "p1", 2, generation);
+        assertEquals(cache.getCurrentVersion("Patient", "p1"), Integer.valueOf(2));
+        assertNull(cache.getCurrentVersion("Patient", "p2"));
+
+        // Hidden from the writing thread until the transaction commits, then gone
+        cache.invalidateCurrentVersion("Patient", "p1");
+        assertNull(cache.getCurrentVersion("Patient", "p1"));
+        cache.updateSharedMaps();
+        assertNull(cache.getCurrentVersion("Patient", "p1"));
+    }
+
+    @Test
+    public void testRollback() {
+        ResourceCacheImpl cache = new ResourceCacheImpl(10, 0);
+        cache.putCurrentVersion("Patient", "p1", 1, cache.getGeneration("Patient", "p1"));
+        cache.invalidateCurrentVersion("Patient", "p1");
+        cache.clearLocalMaps();
+        assertEquals(cache.getCurrentVersion("Patient", "p1"), Integer.valueOf(1));
+    }
+
+    @Test
+    public void testStaleCurrentVersionNotCached() {
+        ResourceCacheImpl cache = new ResourceCacheImpl(10, 0);
+        long generation = cache.getGeneration("Patient", "p1");
+
+        // A new version commits while the read is running
+        cache.invalidateCurrentVersion("Patient", "p1");
+        cache.updateSharedMaps();
+
+        cache.putCurrentVersion("Patient", "p1", 1, generation);
+        assertNull(cache.getCurrentVersion("Patient", "p1"));
+    }
+
+    @Test
+    public void testPayload() {
+        ResourceCacheImpl cache = new ResourceCacheImpl(10, 1024 * 1024);
+        byte[] payload = "payload".getBytes(StandardCharsets.UTF_8);
+        cache.putResource("Patient", "p1", 1, null, payload);
+        assertNotNull(cache.getPayload("Patient", "p1", 1));
+        assertNull(cache.getPayload("Patient", "p1", 2));
+
+        // Versions don't change, so a commit doesn't touch them
+        cache.invalidateCurrentVersion("Patient", "p1");
+        cache.updateSharedMaps();
+        assertEquals(cache.getPayload("Patient", "p1", 1), payload);
+    }
+
+    @Test
+    public void testDisabled() {
+        ResourceCacheImpl cache = new ResourceCacheImpl(0, 1024 * 1024);
+        assertFalse(cache.isEnabled());
+        cache.putCurrentVersion("Patient", "p1", 1, cache.getGeneration("Patient", "p1"));
+        cache.putResource("Patient", "p1", 1, null, new byte[] {1});
+        assertNull(cache.getCurrentVersion("Patient", "p1"));
+        assertNull(cache.getPayload("Patient", "p1", 1));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.cache.SearchResultCacheImpl;
+import com.ibm.fhir.persistence.jdbc.dto.CachedSearchResult;
+
+/**
+ * Unit tests for {@link SearchResultCacheImpl}
+ */
+public class SearchResultCacheImplTest {
+    private static final List<String> PATIENT = Collections.singletonList("Patient");
+    private static final List<String> OBSERVATION = Collections.singletonList("Observation");
+
+    @Test
+    public void testHitAndInvalidate() {
+        SearchResultCacheImpl cache = new SearchResultCacheImpl(10);
+        assertTrue(cache.isEnabled());
+
+        long[] generations = cache.getGenerations(PATIENT);
+        cache.put("q1", PATIENT, generations, new CachedSearchResult(3, Arrays.asList(1L, 2L, 3L)));
+        CachedSearchResult result = cache.get("q1");
+        assertNotNull(result);
+        assertEquals(result.getTotalCount(), 3);
+        assertEquals(result.getResourceIds(), Arrays.asList(1L, 2L, 3L));
+
+        // A write to another type doesn't touch the entry
+        cache.invalidate(OBSERVATION);
+        cache.updateSharedMaps();
+        assertNotNull(cache.get("q1"));
+
+        cache.invalidate(PATIENT);
+        cache.updateSharedMaps();
+        assertNull(cache.get("q1"));
+    }
+
+    @Test
+    public void testPendingInvalidation() {
+        SearchResultCacheImpl cache = new SearchResultCacheImpl(10);
+        cache.put("q1", PATIENT, cache.getGenerations(PATIENT), new CachedSearchResult(0, null));
+
+        // The writing thread bypasses the cache until its transaction completes
+        cache.invalidate(OBSERVATION);
+        assertNull(cache.get("q1"));
+
+        // Rolled back, so nothing changed
+        cache.clearLocalMaps();
+        assertNotNull(cache.get("q1"));
+    }
+
+    @Test
+    public void testStaleResultNotCached() {
+        SearchResultCacheImpl cache = new SearchResultCacheImpl(10);
+        long[] generations = cache.getGenerations(PATIENT);
+
+        // A write commits while the search is running
+        cache.invalidate(PATIENT);
+        cache.updateSharedMaps();
+
+        cache.put("q1", PATIENT, generations, new CachedSearchResult(1, Collections.singletonList(1L)));
+        assertNull(cache.get("q1"));
+    }
+
+    @Test
+    public void testLRU() {
+        SearchResultCacheImpl cache = new SearchResultCacheImpl(2);
+        long[] generations = cache.getGenerations(PATIENT);
+        cache.put("q1", PATIENT, generations, new CachedSearchResult(1, null));
+        cache.put("q2", PATIENT, generations, new CachedSearchResult(2, null));
+        cache.put("q3", PATIENT, generations, new CachedSearchResult(3, null));
+        assertNull(cache.get("q1"));
+        assertNotNull(cache.get("q2"));
+        assertNotNull(cache.get("q3"));
+    }
+
+    @Test
+    public void testMaxBytes() {
+        SearchResultCacheImpl cache = new SearchResultCacheImpl(100, 4200);
+        long[] generations = cache.getGenerations(PATIENT);
+        List<Long> page = new ArrayList<>();
+        for (long id = 0; id < 50; id++) {
+            page.add(id);
+        }
+
+        // each entry takes over 1000 bytes, so only the newest three fit
+        for (int i = 1; i <= 5; i++) {
+            cache.put("q" + i, PATIENT, generations, new CachedSearchResult(50, page));
+        }
+        assertNull(cache.get("q1"));
+        assertNull(cache.get("q2"));
+        assertNotNull(cache.get("q3"));
+        assertNotNull(cache.get("q5"));
+        assertTrue(cache.getCachedBytes() <= 4200);
+
+        // an entry bigger than the whole cache isn't cached, and doesn't evict the others
+        for (long id = 50; id < 500; id++) {
+            page.add(id);
+        }
+        cache.put("big", PATIENT, generations, new CachedSearchResult(500, page));
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("q3"));
+
+        cache.reset();
+        assertEquals(cache.getCachedBytes(), 0);
+    }
+
+    @Test
+    public void testDisabled() {
+        SearchResultCacheImpl cache = new SearchResultCacheImpl(0);
+        assertFalse(cache.isEnabled());
+        cache.put("q1", PATIENT, cache.getGenerations(PATIENT), new CachedSearchResult(1, null));
+        assertNull(cache.get("q1"));
+    }
+}
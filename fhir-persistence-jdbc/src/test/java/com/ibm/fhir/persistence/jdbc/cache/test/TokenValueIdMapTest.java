@@ -0,0 +1,127 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.cache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.cache.CommonTokenValuesCacheImpl;
+import com.ibm.fhir.persistence.jdbc.cache.TokenValueIdMap;
+import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceTokenValueRec;
+import com.ibm.fhir.persistence.jdbc.dto.CommonTokenValue;
+
+/**
+ * Unit tests for {@link TokenValueIdMap}
+ */
+public class TokenValueIdMapTest {
+
+    @Test
+    public void testGetPut() {
+        TokenValueIdMap map = new TokenValueIdMap(100);
+        map.put(1, "abc", 10L);
+        map.put(2, "abc", 20L);
+        map.put(1, "a-value-which-is-too-long-to-pack", 30L);
+        map.put(1, "café", 40L);
+        map.put(1, "", 50L);
+
+        assertEquals(map.get(1, "abc"), 10L);
+        assertEquals(map.get(2, "abc"), 20L);
+        assertEquals(map.get(1, "a-value-which-is-too-long-to-pack"), 30L);
+        assertEquals(map.get(1, "café"), 40L);
+        assertEquals(map.get(1, ""), 50L);
+        assertEquals(map.get(1, "abd"), TokenValueIdMap.NO_VALUE);
+        assertEquals(map.get(3, "abc"), TokenValueIdMap.NO_VALUE);
+        assertEquals(map.get(1, null), TokenValueIdMap.NO_VALUE);
+        assertEquals(map.size(), 5);
+
+        // Replace an existing value
+        map.put(1, "abc", 11L);
+        assertEquals(map.get(1, "abc"), 11L);
+        assertEquals(map.size(), 5);
+
+        assertEquals(map.getHits(), 6L);
+        assertEquals(map.getMisses(), 3L);
+
+        map.clear();
+        assertEquals(map.size(), 0);
+        assertEquals(map.get(1, "abc"), TokenValueIdMap.NO_VALUE);
+    }
+
+    @Test
+    public void testPackingIsExact() {
+        TokenValueIdMap map = new TokenValueIdMap(100);
+        map.put(1, "12345678", 1L);
+        map.put(1, "123456780", 2L);
+        map.put(1, "1234567812345678", 3L);
+        map.put(1, "12345678123456789", 4L);
+
+        assertEquals(map.get(1, "12345678"), 1L);
+        assertEquals(map.get(1, "123456780"), 2L);
+        assertEquals(map.get(1, "1234567812345678"), 3L);
+        assertEquals(map.get(1, "12345678123456789"), 4L);
+        assertEquals(map.get(1, "1234567"), TokenValueIdMap.NO_VALUE);
+    }
+
+    @Test
+    public void testEviction() {
+        final int capacity = 1000;
+        TokenValueIdMap map = new TokenValueIdMap(capacity);
+        for (int i = 0; i < capacity * 5; i++) {
+            map.put(1, "code-" + i, i);
+
+            // keep touching the first value so it's never evicted
+            assertEquals(map.get(1, "code-0"), 0L);
+        }
+        assertTrue(map.size() <= capacity);
+
+        // every value still held must map to the right id, which checks that
+        // removal doesn't break the probe sequence of other entries
+        int found = 0;
+        for (int i = 0; i < capacity * 5; i++) {
+            long id = map.get(1, "code-" + i);
+            if (id != TokenValueIdMap.NO_VALUE) {
+                assertEquals(id, (long) i);
+                found++;
+            }
+        }
+        assertEquals(found, map.size());
+    }
+
+    @Test
+    public void testDisabled() {
+        TokenValueIdMap map = new TokenValueIdMap(0);
+        map.put(1, "abc", 10L);
+        assertEquals(map.get(1, "abc"), TokenValueIdMap.NO_VALUE);
+        assertEquals(map.size(), 0);
+    }
+
+    @Test
+    public void testPrefill() {
+        CommonTokenValuesCacheImpl impl = new CommonTokenValuesCacheImpl(10, 10, 5);
+        assertEquals(impl.getTokenValuePrefillSize(), 5);
+        impl.prefillTokenValues(Collections.singletonMap(new CommonTokenValue(1, "val1"), 100L));
+
+        List<ResourceTokenValueRec> xrefs = new ArrayList<>();
+        xrefs.add(new ResourceTokenValueRec(1, "Patient", 1, 1L, "sys1", "val1"));
+        xrefs.add(new ResourceTokenValueRec(1, "Patient", 1, 1L, "sys1", "val2"));
+        xrefs.get(0).setCodeSystemValueId(1);
+        xrefs.get(1).setCodeSystemValueId(1);
+
+        List<ResourceTokenValueRec> valueMisses = new ArrayList<>();
+        impl.resolveTokenValues(xrefs, valueMisses);
+        assertEquals(valueMisses.size(), 1);
+        assertEquals((long) xrefs.get(0).getCommonTokenValueId(), 100L);
+        assertEquals(impl.getTokenValueHits(), 1L);
+        assertEquals(impl.getTokenValueMisses(), 1L);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.connection;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.transaction.Status;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.impl.PersistenceSession;
+
+/**
+ * Unit test for the {@link PersistenceSession}
+ */
+public class PersistenceSessionTest {
+
+    /**
+     * Create a fake connection which counts the calls to close and getSchema
+     */
+    private Connection fakeConnection(AtomicInteger closeCount, AtomicInteger otherCount) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "close":
+                    closeCount.incrementAndGet();
+                    return null;
+                case "getSchema":
+                    otherCount.incrementAndGet();
+                    return "FHIRDATA";
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testHandleCannotClose() throws Exception {
+        AtomicInteger closeCount = new AtomicInteger();
+        AtomicInteger otherCount = new AtomicInteger();
+        Connection connection = fakeConnection(closeCount, otherCount);
+        PersistenceSession session = new PersistenceSession(connection);
+
+        Connection handle = session.getConnection();
+        assertNotSame(handle, connection);
+        try (Connection c = handle) {
+            assertEquals(c.getSchema(), "FHIRDATA");
+        }
+        assertEquals(closeCount.get(), 0);
+        assertEquals(otherCount.get(), 1);
+
+        // the same connection is handed out for the whole transaction
+        assertTrue(session.isSessionConnection(session.getConnection()));
+        assertFalse(session.isSessionConnection(connection));
+    }
+
+    @Test(groups = {"jdbc"}, expectedExceptions = UnsupportedOperationException.class)
+    public void testHandleUnwrapsExceptions() throws Exception {
+        PersistenceSession session = new PersistenceSession(fakeConnection(new AtomicInteger(), new AtomicInteger()));
+        session.getConnection().getCatalog();
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testAfterCompletion() throws Exception {
+        AtomicInteger closeCount = new AtomicInteger();
+        PersistenceSession session = new PersistenceSession(fakeConnection(closeCount, new AtomicInteger()));
+        session.setSchemaName("FHIRDATA");
+
+        session.beforeCompletion();
+        assertEquals(closeCount.get(), 0);
+        session.afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals(closeCount.get(), 1);
+    }
+}
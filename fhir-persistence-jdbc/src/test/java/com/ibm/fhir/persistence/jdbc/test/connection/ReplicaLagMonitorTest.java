@@ -0,0 +1,198 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.connection;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.model.DbType;
+import com.ibm.fhir.persistence.jdbc.connection.ReplicaLagMonitor;
+
+/**
+ * Unit test for the {@link ReplicaLagMonitor}
+ */
+public class ReplicaLagMonitorTest {
+    private static final long HOUR = 3600 * 1000;
+
+    // Makes the fake connection fail its query
+    private static final String FAIL = "fail";
+
+    /**
+     * Create a fake connection which answers every query with the given WAL position
+     * @param lsn the WAL position, null (not a standby) or {@link #FAIL}
+     * @param queries records the queries
+     */
+    private Connection fakeConnection(AtomicReference<String> lsn, List<String> queries) {
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "next":
+                    return true;
+                case "getString":
+                    return lsn.get();
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        Statement s = (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { Statement.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "executeQuery":
+                    queries.add((String) args[0]);
+                    if (FAIL.equals(lsn.get())) {
+                        throw new SQLException("connection lost");
+                    }
+                    return rs;
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                if ("createStatement".equals(method.getName())) {
+                    return s;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testCreateToken() throws Exception {
+        List<String> queries = new ArrayList<>();
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(HOUR, 5000);
+        Connection primary = fakeConnection(new AtomicReference<>("0/3000060"), queries);
+
+        assertEquals(monitor.createToken(DbType.POSTGRESQL, primary), "0/3000060");
+        assertEquals(queries.size(), 1);
+        assertEquals(queries.get(0), "SELECT pg_current_wal_lsn()");
+
+        // other databases use the time of the write
+        long before = System.currentTimeMillis();
+        long token = Long.parseLong(monitor.createToken(DbType.DB2, null));
+        assertTrue(token >= before && token <= System.currentTimeMillis());
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testCaughtUpReplica() {
+        List<String> queries = new ArrayList<>();
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(HOUR, 5000);
+        Connection replica = fakeConnection(new AtomicReference<>("0/3000060"), queries);
+
+        assertTrue(monitor.isCurrent("jdbc/fhir_default_default_ro", DbType.POSTGRESQL, replica, "0/3000060"));
+        assertEquals(queries.size(), 1);
+        assertEquals(queries.get(0), "SELECT pg_last_wal_replay_lsn()");
+        assertEquals(monitor.getReplicaLagBytes().get("jdbc/fhir_default_default_ro"), Long.valueOf(0));
+
+        // the measurement is reused while it shows the replica has applied the write
+        assertTrue(monitor.isCurrent("jdbc/fhir_default_default_ro", DbType.POSTGRESQL, replica, "0/3000000"));
+        assertEquals(queries.size(), 1);
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testLaggingReplica() {
+        List<String> queries = new ArrayList<>();
+        AtomicReference<String> replayLsn = new AtomicReference<>("0/3000000");
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(HOUR, 5000);
+        Connection replica = fakeConnection(replayLsn, queries);
+
+        // the replica hasn't replayed the write yet
+        assertFalse(monitor.isCurrent("replica", DbType.POSTGRESQL, replica, "0/3000060"));
+        assertEquals(monitor.getReplicaLagBytes().get("replica"), Long.valueOf(0x60));
+        // but it has an older one
+        assertTrue(monitor.isCurrent("replica", DbType.POSTGRESQL, replica, "0/2FFFFFF"));
+
+        // the replica isn't probed again before the end of the probe interval, even once it has caught up
+        replayLsn.set("0/3000060");
+        assertFalse(monitor.isCurrent("replica", DbType.POSTGRESQL, replica, "0/3000060"));
+        assertEquals(queries.size(), 1);
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testReprobeAfterInterval() {
+        List<String> queries = new ArrayList<>();
+        AtomicReference<String> replayLsn = new AtomicReference<>("0/3000000");
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(0, 5000);
+        Connection replica = fakeConnection(replayLsn, queries);
+
+        assertFalse(monitor.isCurrent("replica", DbType.POSTGRESQL, replica, "1/0"));
+        assertEquals(monitor.getReplicaLagBytes().get("replica"), Long.valueOf(0x100000000L - 0x3000000));
+        replayLsn.set("1/10");
+        assertTrue(monitor.isCurrent("replica", DbType.POSTGRESQL, replica, "1/0"));
+        assertEquals(queries.size(), 2);
+        assertEquals(monitor.getReplicaLagBytes().get("replica"), Long.valueOf(0));
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testUnknownPosition() {
+        List<String> queries = new ArrayList<>();
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(HOUR, 5000);
+        Connection replica = fakeConnection(new AtomicReference<>(FAIL), queries);
+
+        // a replica which can't be probed isn't used, however old the write
+        assertFalse(monitor.isCurrent("replica", DbType.POSTGRESQL, replica, "0/1"));
+        assertEquals(monitor.getReplicaLagBytes().get("replica"), Long.valueOf(-1));
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testNotInRecovery() {
+        List<String> queries = new ArrayList<>();
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(HOUR, 5000);
+        Connection replica = fakeConnection(new AtomicReference<>(null), queries);
+
+        // the "replica" is a primary, so has every write
+        assertTrue(monitor.isCurrent("replica", DbType.POSTGRESQL, replica, "FFFFFFFF/FFFFFFFF"));
+        assertEquals(monitor.getReplicaLagBytes().get("replica"), Long.valueOf(0));
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testTimeToken() {
+        List<String> queries = new ArrayList<>();
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(HOUR, 5000);
+        Connection replica = fakeConnection(new AtomicReference<>("0/1"), queries);
+        long now = System.currentTimeMillis();
+
+        // Replicas of the other databases aren't probed; the maximum lag is assumed
+        assertFalse(monitor.isCurrent("replica", DbType.DB2, replica, Long.toString(now - 1000)));
+        assertTrue(monitor.isCurrent("replica", DbType.DB2, replica, Long.toString(now - 10000)));
+        // a WAL position can't be checked on them
+        assertFalse(monitor.isCurrent("replica", DbType.DB2, replica, "0/1"));
+        assertEquals(queries.size(), 0);
+        assertTrue(monitor.getReplicaLagBytes().isEmpty());
+
+        // invalid tokens are ignored
+        assertTrue(monitor.isCurrent("replica", DbType.POSTGRESQL, replica, "not a token"));
+        assertEquals(queries.size(), 0);
+    }
+
+    @Test(groups = {"jdbc"})
+    public void testParseLsn() {
+        assertEquals(ReplicaLagMonitor.parseLsn("0/0"), 0L);
+        assertEquals(ReplicaLagMonitor.parseLsn("16/B374D848"), 0x16B374D848L);
+        assertTrue(ReplicaLagMonitor.isValidToken("16/b374d848"));
+        assertTrue(ReplicaLagMonitor.isValidToken("1612345678901"));
+        assertFalse(ReplicaLagMonitor.isValidToken("16/"));
+        assertFalse(ReplicaLagMonitor.isValidToken("16/B374D848/1"));
+        assertFalse(ReplicaLagMonitor.isValidToken("123456789/0"));
+        assertFalse(ReplicaLagMonitor.isValidToken("yesterday"));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
+import com.ibm.fhir.persistence.jdbc.dto.ParameterStatistics;
+import com.ibm.fhir.persistence.jdbc.util.JDBCQueryBuilder;
+import com.ibm.fhir.persistence.jdbc.util.SelectivityEstimator;
+import com.ibm.fhir.persistence.jdbc.util.SqlQueryData;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+
+/**
+ * Tests the SQL of chained reference searches, which are built as one flat semi-join
+ * however many links the chain has
+ */
+public class ChainedSearchQueryTest {
+
+    private static final Map<String, Integer> IDS = new HashMap<>();
+    static {
+        // parameter names
+        IDS.put("subject", 1);
+        IDS.put("organization", 2);
+        IDS.put("name", 3);
+        IDS.put("gender", 4);
+        // code systems, which are the target resource types of the references
+        IDS.put("Patient", 10);
+        IDS.put("Organization", 11);
+    }
+
+    /**
+     * Makes the building of a single search parameter visible to the test
+     */
+    private static class TestQueryBuilder extends JDBCQueryBuilder {
+        TestQueryBuilder(SelectivityEstimator selectivityEstimator) {
+            super(null, null, null, identityCache(), selectivityEstimator);
+        }
+
+        SqlQueryData build(Class<?> resourceType, QueryParameter queryParm) throws Exception {
+            return buildQueryParm(resourceType, queryParm, "P1", "LR", false);
+        }
+    }
+
+    private static JDBCIdentityCache identityCache() {
+        return (JDBCIdentityCache) Proxy.newProxyInstance(JDBCIdentityCache.class.getClassLoader(), new Class<?>[] { JDBCIdentityCache.class },
+            (proxy, method, args) -> IDS.get(args[0]));
+    }
+
+    @BeforeMethod
+    public void clearCache() {
+        SelectivityEstimator.clearCache();
+    }
+
+    /**
+     * @return a chain of reference parameters ending in the given parameter, with each reference
+     *     followed by the resource type it refers to
+     */
+    private QueryParameter chain(QueryParameter tail, String... links) {
+        QueryParameter head = null;
+        QueryParameter previous = null;
+        for (int i = 0; i < links.length; i += 2) {
+            QueryParameter link = new QueryParameter(Type.REFERENCE, links[i], null, links[i + 1]);
+            if (head == null) {
+                head = link;
+            } else {
+                previous.setNextParameter(link);
+            }
+            previous = link;
+        }
+        previous.setNextParameter(tail);
+        return head;
+    }
+
+    private QueryParameter stringParm(String code, String value) {
+        QueryParameter parm = new QueryParameter(Type.STRING, code, null, null);
+        QueryParameterValue parmValue = new QueryParameterValue();
+        parmValue.setValueString(value);
+        parm.getValues().add(parmValue);
+        return parm;
+    }
+
+    @Test
+    public void testSingleLinkTailFirst() throws Exception {
+        // no statistics, so the end of the chain is evaluated first
+        TestQueryBuilder builder = new TestQueryBuilder(new SelectivityEstimator(null, null, null));
+        SqlQueryData query = builder.build(Observation.class, chain(stringParm("name", "Smith"), "subject", "Patient"));
+
+        assertEquals(query.getQueryString(), "(pX.PARAMETER_NAME_ID = 1 AND pX.CODE_SYSTEM_ID = 10 AND "
+                + "pX.TOKEN_VALUE IN ( SELECT CLR1.LOGICAL_ID FROM Patient_STR_VALUES  AS CP1 "
+                + "JOIN Patient_LOGICAL_RESOURCES AS CLR1 ON CLR1.LOGICAL_RESOURCE_ID = CP1.LOGICAL_RESOURCE_ID "
+                + "JOIN Patient_RESOURCES AS CR1 ON CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED = 'N' "
+                + "WHERE (CP1.PARAMETER_NAME_ID = 3 AND (CP1.STR_VALUE_LCASE LIKE ? ESCAPE '+'))))");
+        assertEquals(query.getBindVariables(), Arrays.asList("smith%"));
+    }
+
+    @Test
+    public void testTwoLinksFlat() throws Exception {
+        TestQueryBuilder builder = new TestQueryBuilder(new SelectivityEstimator(null, null, null));
+        SqlQueryData query = builder.build(Observation.class,
+            chain(stringParm("name", "Acme"), "subject", "Patient", "organization", "Organization"));
+
+        // one sub-select, which follows the references back from the matching organizations
+        assertEquals(query.getQueryString(), "(pX.PARAMETER_NAME_ID = 1 AND pX.CODE_SYSTEM_ID = 10 AND "
+                + "pX.TOKEN_VALUE IN ( SELECT CLR1.LOGICAL_ID FROM Organization_STR_VALUES  AS CP2 "
+                + "JOIN Organization_LOGICAL_RESOURCES AS CLR2 ON CLR2.LOGICAL_RESOURCE_ID = CP2.LOGICAL_RESOURCE_ID "
+                + "JOIN Organization_RESOURCES AS CR2 ON CR2.RESOURCE_ID = CLR2.CURRENT_RESOURCE_ID AND CR2.IS_DELETED = 'N' "
+                + "JOIN Patient_TOKEN_VALUES_V AS CP1 ON CP1.TOKEN_VALUE = CLR2.LOGICAL_ID "
+                + "AND CP1.PARAMETER_NAME_ID = 2 AND CP1.CODE_SYSTEM_ID = 11 "
+                + "JOIN Patient_LOGICAL_RESOURCES AS CLR1 ON CLR1.LOGICAL_RESOURCE_ID = CP1.LOGICAL_RESOURCE_ID "
+                + "JOIN Patient_RESOURCES AS CR1 ON CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED = 'N' "
+                + "WHERE (CP2.PARAMETER_NAME_ID = 3 AND (CP2.STR_VALUE_LCASE LIKE ? ESCAPE '+'))))");
+        assertEquals(query.getBindVariables(), Arrays.asList("acme%"));
+    }
+
+    @Test
+    public void testUnselectiveTailExists() throws Exception {
+        // Patient gender matches half of a million patients, which is more than the 1000 subject
+        // references of the Observations, so the chain is followed from its head
+        Map<String, ParameterStatistics> statistics = new HashMap<>();
+        statistics.put("Patient_STR_VALUES", new ParameterStatistics(10000, 2, 0, 10000, 1000000));
+        statistics.put("Observation_TOKEN_VALUES_V", new ParameterStatistics(1000, 1000, 1000, 10000, -1));
+        SelectivityEstimator estimator = new SelectivityEstimator(
+            (tableName, valueColumn, parameterNameId, sampleSize) -> statistics.get(tableName), null, identityCache());
+
+        TestQueryBuilder builder = new TestQueryBuilder(estimator);
+        SqlQueryData query = builder.build(Observation.class, chain(stringParm("gender", "female"), "subject", "Patient"));
+
+        assertEquals(query.getQueryString(), "(pX.PARAMETER_NAME_ID = 1 AND pX.CODE_SYSTEM_ID = 10 AND "
+                + " EXISTS (SELECT 1 FROM Patient_LOGICAL_RESOURCES AS CLR1 "
+                + "JOIN Patient_RESOURCES AS CR1 ON CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED = 'N' "
+                + "JOIN Patient_STR_VALUES  AS CP1 ON CP1.LOGICAL_RESOURCE_ID = CLR1.LOGICAL_RESOURCE_ID "
+                + "WHERE CLR1.LOGICAL_ID = pX.TOKEN_VALUE AND (CP1.PARAMETER_NAME_ID = 4 AND (CP1.STR_VALUE_LCASE LIKE ? ESCAPE '+'))))");
+
+        // a selective tail is still evaluated first
+        statistics.put("Patient_STR_VALUES", new ParameterStatistics(10000, 10000, 10000, 10000, 1000000));
+        SelectivityEstimator.clearCache();
+        query = builder.build(Observation.class, chain(stringParm("name", "Smith"), "subject", "Patient"));
+        assertTrue(query.getQueryString().contains("pX.TOKEN_VALUE IN ( SELECT CLR1.LOGICAL_ID"), query.getQueryString());
+    }
+
+    @Test
+    public void testMissingTail() throws Exception {
+        TestQueryBuilder builder = new TestQueryBuilder(new SelectivityEstimator(null, null, null));
+        QueryParameter missing = new QueryParameter(Type.STRING, "name", Modifier.MISSING, null);
+        QueryParameterValue value = new QueryParameterValue();
+        value.setValueCode("true");
+        missing.getValues().add(value);
+        SqlQueryData query = builder.build(Observation.class, chain(missing, "subject", "Patient"));
+
+        // the end of the chain has its own NOT EXISTS, so its parameter table isn't joined
+        assertEquals(query.getQueryString(), "(pX.PARAMETER_NAME_ID = 1 AND pX.CODE_SYSTEM_ID = 10 AND "
+                + "pX.TOKEN_VALUE IN ( SELECT CLR1.LOGICAL_ID FROM Patient_LOGICAL_RESOURCES AS CLR1 "
+                + "JOIN Patient_RESOURCES AS CR1 ON CR1.RESOURCE_ID = CLR1.CURRENT_RESOURCE_ID AND CR1.IS_DELETED = 'N' "
+                + "WHERE  NOT  EXISTS (SELECT 1 FROM Patient_STR_VALUES  AS CP1_param0 "
+                + "WHERE (CP1_param0.PARAMETER_NAME_ID = 3 AND CP1_param0.LOGICAL_RESOURCE_ID = CLR1.LOGICAL_RESOURCE_ID))))");
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.derby.DerbyTranslator;
+import com.ibm.fhir.persistence.jdbc.dao.impl.FetchResourceChangesDAO;
+
+/**
+ * Unit test for the queries of {@link FetchResourceChangesDAO}, with a fake connection
+ */
+public class FetchResourceChangesDAOTest {
+    private static final Instant SINCE = Instant.parse("2021-04-01T10:00:00.123456Z");
+
+    private final List<String> statements = new ArrayList<>();
+    private final List<Object> binds = new ArrayList<>();
+
+    private Connection connection() {
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class },
+            (proxy, method, args) -> "next".equals(method.getName()) ? false : null);
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+            (proxy, method, args) -> {
+                if (method.getName().startsWith("set")) {
+                    binds.add(args[1] instanceof Timestamp ? ((Timestamp) args[1]).toInstant() : args[1]);
+                }
+                return "executeQuery".equals(method.getName()) ? rs : null;
+            });
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                if ("prepareStatement".equals(method.getName())) {
+                    statements.add((String) args[0]);
+                    return ps;
+                }
+                return null;
+            });
+    }
+
+    @Test
+    public void testChangeIdOrder() throws Exception {
+        new FetchResourceChangesDAO(new DerbyTranslator(), "FHIRDATA", 10, null, 42L, "Patient").run(connection());
+        String sql = statements.get(0);
+        assertTrue(sql.contains(" AND c.resource_id > ? "), sql);
+        assertTrue(sql.contains(" ORDER BY c.resource_id "), sql);
+        assertTrue(!sql.contains("change_tstamp >"), sql);
+        assertEquals(binds, Arrays.asList(42L, "Patient"));
+    }
+
+    @Test
+    public void testSinceFollowsTheIndex() throws Exception {
+        // the first page of a _since history
+        new FetchResourceChangesDAO(new DerbyTranslator(), "FHIRDATA", 10, SINCE, null, null).run(connection());
+        String sql = statements.get(0);
+        assertTrue(sql.contains(" AND c.change_tstamp >= ? "), sql);
+        assertTrue(sql.contains(" ORDER BY c.change_tstamp, c.resource_id "), sql);
+        assertTrue(!sql.contains("resource_id >"), sql);
+        assertEquals(binds, Arrays.asList(SINCE));
+
+        // the next pages continue after the last change, in (change_tstamp, resource_id) order
+        binds.clear();
+        new FetchResourceChangesDAO(new DerbyTranslator(), "FHIRDATA", 10, SINCE, 42L, "Patient").run(connection());
+        sql = statements.get(1);
+        assertTrue(sql.contains(" AND c.change_tstamp >= ?  AND (c.change_tstamp > ? OR c.resource_id > ?) "), sql);
+        assertTrue(sql.contains(" ORDER BY c.change_tstamp, c.resource_id "), sql);
+        assertEquals(binds, Arrays.asList(SINCE, SINCE, 42L, "Patient"));
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.model.DbType;
+import com.ibm.fhir.persistence.jdbc.connection.FHIRDbFlavorImpl;
+import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
+import com.ibm.fhir.persistence.jdbc.dao.api.ResourceDAO;
+import com.ibm.fhir.persistence.jdbc.dao.impl.ResourceDAOImpl;
+import com.ibm.fhir.persistence.jdbc.dto.LocalReference;
+import com.ibm.fhir.persistence.jdbc.dto.Resource;
+import com.ibm.fhir.persistence.jdbc.util.InclusionResolver;
+import com.ibm.fhir.search.parameters.InclusionParameter;
+
+/**
+ * Unit test for {@link InclusionResolver}, with an in-memory fake of the resource DAO
+ */
+public class InclusionResolverTest {
+
+    /**
+     * A reference from one resource to another through a reference search parameter
+     */
+    private static class Ref {
+        final String sourceType;
+        final String sourceId;
+        final String parameter;
+        final String targetType;
+        final String targetId;
+
+        Ref(String sourceType, String sourceId, String parameter, String targetType, String targetId) {
+            this.sourceType = sourceType;
+            this.sourceId = sourceId;
+            this.parameter = parameter;
+            this.targetType = targetType;
+            this.targetId = targetId;
+        }
+    }
+
+    /**
+     * Holds the resources and references, and serves them like the ResourceDAO and JDBCIdentityCache do
+     */
+    private static class FakeStore {
+        final Map<String, Resource> resources = new LinkedHashMap<>();
+        final List<Ref> refs = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        final List<Integer> maxPerTargetArgs = new ArrayList<>();
+        int referenceReads = 0;
+
+        Resource add(String resourceType, String logicalId) {
+            Resource resource = new Resource();
+            resource.setId(resources.size() + 1);
+            resource.setResourceType(resourceType);
+            resource.setLogicalId(logicalId);
+            resource.setVersionId(1);
+            resources.put(resourceType + "/" + logicalId, resource);
+            return resource;
+        }
+
+        void ref(String source, String parameter, String target) {
+            String[] s = source.split("/");
+            String[] t = target.split("/");
+            refs.add(new Ref(s[0], s[1], parameter, t[0], t[1]));
+        }
+
+        // parameter names and code systems (i.e. resource type names) share the same ids here
+        int id(String name) {
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+            return names.indexOf(name);
+        }
+
+        JDBCIdentityCache identityCache() {
+            return (JDBCIdentityCache) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { JDBCIdentityCache.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getParameterNameId":
+                    case "getCodeSystemId":
+                        return id((String) args[0]);
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        }
+
+        @SuppressWarnings("unchecked")
+        ResourceDAO resourceDao() {
+            return (ResourceDAO) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResourceDAO.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "readReferences": {
+                        referenceReads++;
+                        String parameter = names.get((Integer) args[1]);
+                        String targetType = names.get((Integer) args[2]);
+                        Collection<String> logicalIds = (Collection<String>) args[3];
+                        List<LocalReference> result = new ArrayList<>();
+                        for (Ref ref : refs) {
+                            if (ref.sourceType.equals(args[0]) && ref.parameter.equals(parameter) && ref.targetType.equals(targetType)
+                                    && logicalIds.contains(ref.sourceId)) {
+                                result.add(new LocalReference(ref.sourceId, ref.targetId, null));
+                            }
+                        }
+                        return result;
+                    }
+                    case "readReverseReferences": {
+                        referenceReads++;
+                        String parameter = names.get((Integer) args[1]);
+                        Collection<String> targetIds = (Collection<String>) args[4];
+                        int maxPerTarget = (Integer) args[5];
+                        int maxResults = (Integer) args[6];
+                        maxPerTargetArgs.add(maxPerTarget);
+                        // the same bounds as ResourceDAOImpl
+                        Map<String, Set<String>> sourcesByTarget = new HashMap<>();
+                        List<LocalReference> result = new ArrayList<>();
+                        for (Ref ref : refs) {
+                            if (result.size() < maxResults && ref.sourceType.equals(args[0]) && ref.parameter.equals(parameter)
+                                    && ref.targetType.equals(args[2]) && targetIds.contains(ref.targetId)) {
+                                Set<String> sources = sourcesByTarget.computeIfAbsent(ref.targetId, k -> new HashSet<>());
+                                if (sources.size() < maxPerTarget && sources.add(ref.sourceId)) {
+                                    result.add(new LocalReference(ref.sourceId, ref.targetId, null));
+                                }
+                            }
+                        }
+                        return result;
+                    }
+                    case "searchByLogicalIds": {
+                        List<Resource> result = new ArrayList<>();
+                        for (String logicalId : (Collection<String>) args[1]) {
+                            Resource resource = resources.get(args[0] + "/" + logicalId);
+                            if (resource != null) {
+                                result.add(resource);
+                            }
+                        }
+                        return result;
+                    }
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        }
+
+        List<Resource> resolve(String resourceType, List<Resource> matches, List<InclusionParameter> includes,
+                List<InclusionParameter> revIncludes, int maxIncludedResources, int maxRevIncludesPerMatch) throws Exception {
+            return new InclusionResolver(resourceDao(), identityCache(), maxIncludedResources, maxRevIncludesPerMatch)
+                    .resolve(resourceType, matches, includes, revIncludes);
+        }
+    }
+
+    private static List<String> ids(List<Resource> resources) {
+        List<String> result = new ArrayList<>();
+        for (Resource resource : resources) {
+            result.add(resource.getResourceType() + "/" + resource.getLogicalId());
+        }
+        return result;
+    }
+
+    @Test
+    public void testIterateTerminates() throws Exception {
+        FakeStore store = new FakeStore();
+        Resource patient = store.add("Patient", "p1");
+        store.add("Organization", "o1");
+        store.add("Organization", "o2");
+        store.add("Organization", "o3");
+        store.ref("Patient/p1", "organization", "Organization/o1");
+        // a cycle of partOf references
+        store.ref("Organization/o1", "partof", "Organization/o2");
+        store.ref("Organization/o2", "partof", "Organization/o3");
+        store.ref("Organization/o3", "partof", "Organization/o1");
+
+        List<InclusionParameter> includes = Arrays.asList(
+            new InclusionParameter("Patient", "organization", "Organization"),
+            new InclusionParameter("Organization", "partof", "Organization", true));
+        List<Resource> included = store.resolve("Patient", Collections.singletonList(patient), includes, Collections.emptyList(), 100, 100);
+
+        assertEquals(ids(included), Arrays.asList("Organization/o1", "Organization/o2", "Organization/o3"));
+        // one pass for the patient, then one per organization, and the last pass includes nothing new
+        assertTrue(store.referenceReads <= 5, "reference reads: " + store.referenceReads);
+    }
+
+    @Test
+    public void testIncludeWithoutIterate() throws Exception {
+        FakeStore store = new FakeStore();
+        Resource patient = store.add("Patient", "p1");
+        store.add("Organization", "o1");
+        store.add("Organization", "o2");
+        store.ref("Patient/p1", "organization", "Organization/o1");
+        store.ref("Organization/o1", "partof", "Organization/o2");
+
+        // without :iterate, partof is only applied to the matches, which aren't organizations
+        List<InclusionParameter> includes = Arrays.asList(
+            new InclusionParameter("Patient", "organization", "Organization"),
+            new InclusionParameter("Organization", "partof", "Organization"));
+        List<Resource> included = store.resolve("Patient", Collections.singletonList(patient), includes, Collections.emptyList(), 100, 100);
+        assertEquals(ids(included), Collections.singletonList("Organization/o1"));
+    }
+
+    @Test
+    public void testIncludeCap() throws Exception {
+        FakeStore store = new FakeStore();
+        List<Resource> patients = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            patients.add(store.add("Patient", "p" + i));
+            store.add("Organization", "o" + i);
+            store.ref("Patient/p" + i, "organization", "Organization/o" + i);
+        }
+
+        List<InclusionParameter> includes = Collections.singletonList(new InclusionParameter("Patient", "organization", "Organization"));
+        List<Resource> included = store.resolve("Patient", patients, includes, Collections.emptyList(), 3, 100);
+        // one more than the limit, so the caller can tell it was exceeded
+        assertEquals(included.size(), 4);
+
+        included = store.resolve("Patient", patients, includes, Collections.emptyList(), 10, 100);
+        assertEquals(included.size(), 10);
+    }
+
+    @Test
+    public void testMatchesAreNotIncluded() throws Exception {
+        FakeStore store = new FakeStore();
+        Resource p1 = store.add("Patient", "p1");
+        Resource p2 = store.add("Patient", "p2");
+        store.ref("Patient/p1", "link", "Patient/p2");
+
+        List<InclusionParameter> includes = Collections.singletonList(new InclusionParameter("Patient", "link", "Patient"));
+        List<Resource> included = store.resolve("Patient", Arrays.asList(p1, p2), includes, Collections.emptyList(), 100, 100);
+        assertEquals(included.size(), 0);
+    }
+
+    @Test
+    public void testMaxRevIncludesPerMatch() throws Exception {
+        FakeStore store = new FakeStore();
+        Resource p1 = store.add("Patient", "p1");
+        Resource p2 = store.add("Patient", "p2");
+        for (int i = 0; i < 5; i++) {
+            store.add("Observation", "a" + i);
+            store.ref("Observation/a" + i, "subject", "Patient/p1");
+        }
+        store.add("Observation", "b0");
+        store.ref("Observation/b0", "subject", "Patient/p2");
+
+        List<InclusionParameter> revIncludes = Collections.singletonList(new InclusionParameter("Observation", "subject", "Patient"));
+        List<Resource> included = store.resolve("Patient", Arrays.asList(p1, p2), Collections.emptyList(), revIncludes, 100, 2);
+        assertEquals(ids(included), Arrays.asList("Observation/a0", "Observation/a1", "Observation/b0"));
+        assertEquals(store.maxPerTargetArgs, Collections.singletonList(2));
+    }
+
+    @Test
+    public void testReadReverseReferencesBound() throws Exception {
+        // source, target rows returned by the database
+        String[][] rows = {
+            { "a0", "p1" }, { "a1", "p1" }, { "a1", "p1" }, { "a2", "p1" }, { "b0", "p2" }, { "b1", "p2" }, { "b2", "p2" }
+        };
+        int[] row = { -1 };
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "next":
+                    return ++row[0] < rows.length;
+                case "getString":
+                    return rows[row[0]][(Integer) args[0] - 1];
+                case "getInt":
+                    return 0;
+                case "wasNull":
+                    return true;
+                default:
+                    return null;
+                }
+            });
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+            (proxy, method, args) -> "executeQuery".equals(method.getName()) ? rs : null);
+        Connection c = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> "prepareStatement".equals(method.getName()) ? ps : null);
+
+        ResourceDAOImpl dao = new ResourceDAOImpl(c, "FHIRDATA", new FHIRDbFlavorImpl(DbType.DERBY, false), null, null);
+        List<LocalReference> refs = dao.readReverseReferences("Observation", 1, "Patient", 2, Arrays.asList("p1", "p2"), 2, 100);
+        List<String> sources = new ArrayList<>();
+        for (LocalReference ref : refs) {
+            sources.add(ref.getSourceLogicalId());
+        }
+        // at most 2 distinct sources per target
+        assertEquals(sources, Arrays.asList("a0", "a1", "b0", "b1"));
+
+        // and no more than maxResults in total
+        row[0] = -1;
+        refs = dao.readReverseReferences("Observation", 1, "Patient", 2, Arrays.asList("p1", "p2"), 2, 3);
+        assertEquals(refs.size(), 3);
+    }
+}
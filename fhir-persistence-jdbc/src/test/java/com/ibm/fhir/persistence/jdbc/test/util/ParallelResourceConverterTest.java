@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.exception.FHIRException;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.jdbc.util.ParallelResourceConverter;
+
+/**
+ * Unit test for the {@link ParallelResourceConverter}
+ */
+public class ParallelResourceConverterTest {
+
+    private List<com.ibm.fhir.persistence.jdbc.dto.Resource> dtos(int count) {
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            com.ibm.fhir.persistence.jdbc.dto.Resource dto = new com.ibm.fhir.persistence.jdbc.dto.Resource();
+            dto.setId(i);
+            dto.setLogicalId("p" + i);
+            result.add(dto);
+        }
+        return result;
+    }
+
+    private Resource patient(com.ibm.fhir.persistence.jdbc.dto.Resource dto) {
+        return Patient.builder().id(dto.getLogicalId()).build();
+    }
+
+    @Test
+    public void testOrderPreserved() throws Exception {
+        List<com.ibm.fhir.persistence.jdbc.dto.Resource> dtos = dtos(1000);
+        List<Resource> resources = new ParallelResourceConverter(10, 4).convert(dtos, this::patient);
+        assertEquals(resources.size(), dtos.size());
+        for (int i = 0; i < dtos.size(); i++) {
+            assertEquals(resources.get(i).getId(), "p" + i);
+        }
+    }
+
+    @Test
+    public void testSmallPageOnRequestThread() throws Exception {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        List<Resource> resources = new ParallelResourceConverter(32, 4).convert(dtos(32), dto -> {
+            threads.add(Thread.currentThread());
+            return patient(dto);
+        });
+        assertEquals(resources.size(), 32);
+        assertEquals(threads.size(), 1);
+        assertTrue(threads.contains(Thread.currentThread()));
+
+        // disabled
+        threads.clear();
+        new ParallelResourceConverter(0, 4).convert(dtos(1000), dto -> {
+            threads.add(Thread.currentThread());
+            return patient(dto);
+        });
+        assertEquals(threads.size(), 1);
+    }
+
+    @Test
+    public void testNullResult() throws Exception {
+        List<Resource> resources = new ParallelResourceConverter(10, 4).convert(dtos(100), dto -> dto.getId() % 2 == 0 ? null : patient(dto));
+        assertNull(resources.get(0));
+        assertEquals(resources.get(1).getId(), "p1");
+    }
+
+    @Test(expectedExceptions = FHIRException.class)
+    public void testFailure() throws Exception {
+        new ParallelResourceConverter(10, 4).convert(dtos(1000), dto -> {
+            if (dto.getId() == 500) {
+                throw new FHIRException("bad payload");
+            }
+            return patient(dto);
+        });
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.dao.impl.ParameterInsertBuffer;
+
+/**
+ * Unit test for {@link ParameterInsertBuffer}
+ */
+public class ParameterInsertBufferTest {
+
+    @Test
+    public void testPlanStatements() {
+        assertEquals(ParameterInsertBuffer.planStatements(0, 100, 0).length, 0);
+        assertEquals(ParameterInsertBuffer.planStatements(1, 100, 0), new int[] { 1 });
+        assertEquals(ParameterInsertBuffer.planStatements(40, 100, 0), new int[] { 32, 8 });
+        assertEquals(ParameterInsertBuffer.planStatements(7, 100, 0), new int[] { 4, 2, 1 });
+        // the typical row count saves statements when it matches
+        assertEquals(ParameterInsertBuffer.planStatements(24, 100, 24), new int[] { 24 });
+        assertEquals(ParameterInsertBuffer.planStatements(56, 100, 24), new int[] { 32, 24 });
+        assertEquals(ParameterInsertBuffer.planStatements(40, 100, 24), new int[] { 32, 8 });
+        // statements never exceed the max rows
+        assertEquals(ParameterInsertBuffer.planStatements(250, 100, 0), new int[] { 64, 64, 64, 32, 16, 8, 2 });
+        assertEquals(ParameterInsertBuffer.planStatements(250, 100, 100), new int[] { 100, 100, 32, 16, 2 });
+        assertEquals(ParameterInsertBuffer.planStatements(5, 1, 0), new int[] { 1, 1, 1, 1, 1 });
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        List<String> statements = new ArrayList<>();
+        List<String> binds = new ArrayList<>();
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+            (proxy, method, args) -> {
+                if (method.getName().startsWith("set")) {
+                    binds.add(args[0] + "=" + (method.getName().equals("setNull") ? "null" : args[1]));
+                }
+                return "executeUpdate".equals(method.getName()) ? 1 : null;
+            });
+        Connection c = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                if ("prepareStatement".equals(method.getName())) {
+                    statements.add((String) args[0]);
+                    return ps;
+                }
+                return null;
+            });
+
+        try (ParameterInsertBuffer buffer = new ParameterInsertBuffer(c, "Test:resource_str_values", "resource_str_values", "FHIR_ADMIN.sv_tenant_id",
+                new String[] { "parameter_name_id", "str_value", "logical_resource_id" }, new int[] { Types.INTEGER, Types.VARCHAR, Types.BIGINT }, 2)) {
+            buffer.add(1, "a", 10L);
+            buffer.add(2, null, 10L);
+            buffer.add(3, "c", 10L);
+            assertEquals(buffer.size(), 3);
+            buffer.flush();
+            assertEquals(buffer.size(), 0);
+
+            // nothing left to write
+            buffer.flush();
+        }
+
+        assertEquals(statements.size(), 2);
+        assertEquals(statements.get(0), "INSERT INTO resource_str_values (mt_id, parameter_name_id, str_value, logical_resource_id) VALUES "
+                + "(FHIR_ADMIN.sv_tenant_id,?,?,?), (FHIR_ADMIN.sv_tenant_id,?,?,?)");
+        assertEquals(statements.get(1), "INSERT INTO resource_str_values (mt_id, parameter_name_id, str_value, logical_resource_id) VALUES "
+                + "(FHIR_ADMIN.sv_tenant_id,?,?,?)");
+        assertEquals(binds, Arrays.asList("1=1", "2=a", "3=10", "4=2", "5=null", "6=10", "1=3", "2=c", "3=10"));
+    }
+
+    @Test
+    public void testRowCountHistory() throws Exception {
+        // the row count of the first flush becomes the typical row count, so it takes one statement
+        assertEquals(flushRows("Test:history", 24), 1);
+        // 5 rows still take 4 + 1
+        assertEquals(flushRows("Test:history", 5), 2);
+        // the average is now 22, which is rounded back to 24
+        assertEquals(flushRows("Test:history", 24), 1);
+
+        // row counts which aren't on the grid are split as usual, 7 = 4 + 2 + 1
+        assertEquals(flushRows("Test:history7", 7), 3);
+    }
+
+    /**
+     * Flush the given number of rows to a fake connection
+     * @return the number of statements prepared
+     */
+    private int flushRows(String historyKey, int rows) throws Exception {
+        List<String> statements = new ArrayList<>();
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+            (proxy, method, args) -> "executeUpdate".equals(method.getName()) ? 1 : null);
+        Connection c = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                if ("prepareStatement".equals(method.getName())) {
+                    statements.add((String) args[0]);
+                    return ps;
+                }
+                return null;
+            });
+
+        try (ParameterInsertBuffer buffer = new ParameterInsertBuffer(c, historyKey, "t", null,
+                new String[] { "x" }, new int[] { Types.INTEGER }, 100)) {
+            for (int row = 0; row < rows; row++) {
+                buffer.add(row);
+            }
+            buffer.flush();
+        }
+        return statements.size();
+    }
+}
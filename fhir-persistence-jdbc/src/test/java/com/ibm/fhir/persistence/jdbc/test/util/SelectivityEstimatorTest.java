@@ -0,0 +1,220 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.persistence.jdbc.dao.api.JDBCIdentityCache;
+import com.ibm.fhir.persistence.jdbc.dto.ParameterStatistics;
+import com.ibm.fhir.persistence.jdbc.exception.FHIRPersistenceDataAccessException;
+import com.ibm.fhir.persistence.jdbc.util.SelectivityEstimator;
+import com.ibm.fhir.persistence.jdbc.util.SelectivityEstimator.StatisticsReader;
+import com.ibm.fhir.search.SearchConstants.Modifier;
+import com.ibm.fhir.search.SearchConstants.Prefix;
+import com.ibm.fhir.search.SearchConstants.Type;
+import com.ibm.fhir.search.parameters.QueryParameter;
+import com.ibm.fhir.search.parameters.QueryParameterValue;
+
+/**
+ * Unit test for the {@link SelectivityEstimator}
+ */
+public class SelectivityEstimatorTest {
+    private static final double DELTA = 0.001;
+
+    @BeforeMethod
+    public void clearCache() {
+        SelectivityEstimator.clearCache();
+    }
+
+    private QueryParameter parm(Type type, String code, Modifier modifier, Prefix... prefixes) {
+        QueryParameter parm = new QueryParameter(type, code, modifier, null);
+        for (Prefix prefix : prefixes) {
+            QueryParameterValue value = new QueryParameterValue();
+            value.setPrefix(prefix);
+            value.setValueCode("x");
+            parm.getValues().add(value);
+        }
+        return parm;
+    }
+
+    /**
+     * Create a fake reader which answers all statistics requests with the given statistics
+     */
+    private StatisticsReader fakeReader(ParameterStatistics statistics, AtomicInteger readCount) {
+        return (tableName, valueColumn, parameterNameId, sampleSize) -> {
+            readCount.incrementAndGet();
+            return statistics;
+        };
+    }
+
+    private JDBCIdentityCache fakeIdentityCache() {
+        return (JDBCIdentityCache) Proxy.newProxyInstance(JDBCIdentityCache.class.getClassLoader(), new Class<?>[] { JDBCIdentityCache.class },
+            (proxy, method, args) -> {
+                if ("getParameterNameId".equals(method.getName())) {
+                    return 42;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    @Test
+    public void testEqualityEstimate() {
+        // 1000 rows with 100 distinct values, so 10 rows per value
+        ParameterStatistics statistics = new ParameterStatistics(1000, 100, 100, 10000, -1);
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.TOKEN, "code", null, (Prefix) null), statistics), 10, DELTA);
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.TOKEN, "code", null, null, null), statistics), 20, DELTA);
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.DATE, "date", null, Prefix.EQ), statistics), 10, DELTA);
+    }
+
+    @Test
+    public void testRangeEstimate() {
+        ParameterStatistics statistics = new ParameterStatistics(900, 900, 900, 10000, -1);
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.DATE, "date", null, Prefix.GT), statistics), 300, DELTA);
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.STRING, "name", Modifier.CONTAINS, (Prefix) null), statistics), 300, DELTA);
+
+        // never more than there are
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.DATE, "date", null, Prefix.GT, Prefix.LT, Prefix.NE, Prefix.SA), statistics), 900, DELTA);
+    }
+
+    @Test
+    public void testUnknownEstimate() {
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.TOKEN, "code", null, (Prefix) null), null), SelectivityEstimator.UNKNOWN);
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.TOKEN, "code", Modifier.MISSING, (Prefix) null),
+            new ParameterStatistics(10, 10, 10, 10000, -1)), SelectivityEstimator.UNKNOWN);
+
+        // no DAO, no statistics
+        SelectivityEstimator estimator = new SelectivityEstimator(null, null, null);
+        assertEquals(estimator.estimateRows("Patient", parm(Type.STRING, "name", null, (Prefix) null)), SelectivityEstimator.UNKNOWN);
+    }
+
+    @Test
+    public void testEmptyParameter() {
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.TOKEN, "code", null, (Prefix) null), new ParameterStatistics(0, 0, 0, 10000, -1)), 0, DELTA);
+    }
+
+    @Test
+    public void testIdEstimate() {
+        SelectivityEstimator estimator = new SelectivityEstimator(null, null, null);
+        assertEquals(estimator.estimateRows("Patient", parm(Type.TOKEN, "_id", null, null, null, null)), 3, DELTA);
+    }
+
+    @Test
+    public void testChainEstimate() {
+        AtomicInteger readCount = new AtomicInteger();
+        SelectivityEstimator estimator = new SelectivityEstimator(fakeReader(new ParameterStatistics(10000, 5000, 5000, 10000, -1), readCount),
+            null, fakeIdentityCache());
+
+        // subject:Patient.identifier=x is estimated as identifier=x on Patient
+        QueryParameter subject = new QueryParameter(Type.REFERENCE, "subject", null, "Patient");
+        subject.setNextParameter(parm(Type.TOKEN, "identifier", null, (Prefix) null));
+        assertEquals(estimator.estimateRows("Observation", subject), 2, DELTA);
+        assertEquals(readCount.get(), 1);
+
+        // wildcard chains can't be estimated
+        QueryParameter wildcard = new QueryParameter(Type.REFERENCE, "subject", null, "*");
+        wildcard.setNextParameter(parm(Type.TOKEN, "identifier", null, (Prefix) null));
+        assertEquals(estimator.estimateRows("Observation", wildcard), SelectivityEstimator.UNKNOWN);
+    }
+
+    @Test
+    public void testStatisticsCached() {
+        AtomicInteger readCount = new AtomicInteger();
+        StatisticsReader reader = fakeReader(new ParameterStatistics(100, 10, 10, 10000, -1), readCount);
+
+        SelectivityEstimator estimator = new SelectivityEstimator(reader, null, fakeIdentityCache());
+        estimator.estimateRows("Patient", parm(Type.STRING, "name", null, (Prefix) null));
+        estimator.estimateRows("Patient", parm(Type.STRING, "name", null, (Prefix) null));
+        // shared across estimators
+        new SelectivityEstimator(reader, null, fakeIdentityCache()).estimateRows("Patient", parm(Type.STRING, "name", null, (Prefix) null));
+        assertEquals(readCount.get(), 1);
+
+        // another table
+        estimator.estimateRows("Practitioner", parm(Type.STRING, "name", null, (Prefix) null));
+        assertEquals(readCount.get(), 2);
+
+        // expired
+        SelectivityEstimator expiring = new SelectivityEstimator(reader, null, fakeIdentityCache(), 10000, 0);
+        assertTrue(expiring.estimateRows("Patient", parm(Type.STRING, "name", null, (Prefix) null)) < SelectivityEstimator.UNKNOWN);
+        assertEquals(readCount.get(), 3);
+    }
+
+    @Test
+    public void testStatistics() {
+        ParameterStatistics complete = new ParameterStatistics(50, 25, 25, 100, -1);
+        assertTrue(complete.isComplete());
+        assertEquals(complete.getRowsPerValue(), 2, DELTA);
+
+        ParameterStatistics sampled = new ParameterStatistics(100, 3, 3, 100, -1);
+        assertEquals(sampled.isComplete(), false);
+        assertEquals(Arrays.asList(sampled.getRowCount(), sampled.getDistinctValueCount()), Arrays.asList(100L, 3L));
+    }
+
+    @Test
+    public void testScaledStatistics() {
+        // all different values in the sample, like an identifier: still about one row per value
+        ParameterStatistics unique = new ParameterStatistics(10000, 10000, 10000, 10000, 1000000);
+        assertEquals(unique.getEstimatedRowCount(), 1000000, DELTA);
+        assertEquals(unique.getEstimatedDistinctValueCount(), 1000000, DELTA);
+        assertEquals(unique.getRowsPerValue(), 1, DELTA);
+
+        // a few repeated values, like a status: the rows per value grow with the table
+        ParameterStatistics status = new ParameterStatistics(10000, 5, 0, 10000, 1000000);
+        assertEquals(status.getEstimatedDistinctValueCount(), 5, DELTA);
+        assertEquals(status.getRowsPerValue(), 200000, DELTA);
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.TOKEN, "status", null, (Prefix) null), status), 200000, DELTA);
+        assertEquals(SelectivityEstimator.estimateRows(parm(Type.DATE, "date", null, Prefix.GT), status), 1000000 / 3.0, DELTA);
+
+        // half the values seen once: somewhere in between
+        ParameterStatistics mixed = new ParameterStatistics(10000, 6000, 5000, 10000, 1000000);
+        assertTrue(mixed.getRowsPerValue() > 1 && mixed.getRowsPerValue() < 200000);
+
+        // no catalog row count: the sample is all that is known
+        ParameterStatistics noCatalog = new ParameterStatistics(10000, 5, 0, 10000, -1);
+        assertEquals(noCatalog.getEstimatedRowCount(), 10000, DELTA);
+        assertEquals(noCatalog.getRowsPerValue(), 2000, DELTA);
+    }
+
+    @Test
+    public void testBackgroundRead() {
+        AtomicInteger readCount = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        SelectivityEstimator estimator = new SelectivityEstimator(fakeReader(new ParameterStatistics(100, 10, 10, 10000, -1), readCount),
+            tasks::add, fakeIdentityCache());
+
+        // nothing is known until the read has run
+        QueryParameter name = parm(Type.STRING, "name", null, (Prefix) null);
+        assertEquals(estimator.estimateRows("Patient", name), SelectivityEstimator.UNKNOWN);
+        assertEquals(estimator.estimateRows("Patient", name), SelectivityEstimator.UNKNOWN);
+        assertEquals(tasks.size(), 1);
+        assertEquals(readCount.get(), 0);
+
+        tasks.get(0).run();
+        assertEquals(readCount.get(), 1);
+        assertEquals(estimator.estimateRows("Patient", name), 10, DELTA);
+        assertEquals(estimator.estimateTotalRows("Patient", name), 100, DELTA);
+    }
+
+    @Test
+    public void testReadFailure() {
+        StatisticsReader failing = (tableName, valueColumn, parameterNameId, sampleSize) -> {
+            throw new FHIRPersistenceDataAccessException("statistics not available");
+        };
+        SelectivityEstimator estimator = new SelectivityEstimator(failing, null, fakeIdentityCache());
+        assertEquals(estimator.estimateRows("Patient", parm(Type.STRING, "name", null, (Prefix) null)), SelectivityEstimator.UNKNOWN);
+        assertEquals(estimator.estimateTotalRows("Patient", parm(Type.STRING, "name", null, (Prefix) null)), SelectivityEstimator.UNKNOWN);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.jdbc.test.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.metrics.RequestPhase;
+import com.ibm.fhir.persistence.jdbc.connection.TimedConnection;
+import com.ibm.fhir.persistence.jdbc.stats.SlowStatement;
+import com.ibm.fhir.persistence.jdbc.stats.StatementStatistics;
+import com.ibm.fhir.persistence.jdbc.stats.StatementStatisticsRegistry;
+
+/**
+ * Unit test for the {@link StatementStatisticsRegistry}
+ */
+public class StatementStatisticsRegistryTest {
+    private final StatementStatisticsRegistry registry = StatementStatisticsRegistry.getInstance();
+
+    @BeforeMethod
+    public void enable() {
+        registry.reset();
+        registry.configure(true, 100, 0.0, 3, 2);
+    }
+
+    @AfterMethod
+    public void disable() {
+        registry.configure(false, 1000, 0.0, 1000, 100);
+        registry.reset();
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals(StatementStatisticsRegistry.normalize("SELECT  a.x1\n  FROM t1 a WHERE a.y = 'O''Brien' AND a.z > 42.5e-3"),
+            "SELECT a.x1 FROM t1 a WHERE a.y = ? AND a.z > ?");
+        assertEquals(StatementStatisticsRegistry.normalize("SELECT \"Col 1\" FROM t WHERE id IN (?, ?,?)"),
+            "SELECT \"Col 1\" FROM t WHERE id IN (?...)");
+        assertEquals(StatementStatisticsRegistry.normalize("SELECT 1 FROM t WHERE id IN (1, 2, 3)"),
+            "SELECT ? FROM t WHERE id IN (?...)");
+        assertEquals(StatementStatisticsRegistry.normalize("INSERT INTO t (a, b) VALUES (?, ?), (?, ?), (?, ?)"),
+            "INSERT INTO t (a, b) VALUES (?...)...");
+        assertEquals(StatementStatisticsRegistry.normalize("INSERT INTO t (a) VALUES (?), (?)"),
+            "INSERT INTO t (a) VALUES (?...)...");
+    }
+
+    @Test
+    public void testShapesAreShared() {
+        StatementStatistics stats = registry.getStatistics("SELECT x FROM t WHERE id IN (1, 2)");
+        assertNotNull(stats);
+        assertSame(registry.getStatistics("SELECT x FROM t WHERE id IN (3,4,5)"), stats);
+        assertEquals(stats.getKind(), RequestPhase.SQL_SELECT);
+    }
+
+    @Test
+    public void testRecord() {
+        StatementStatistics stats = registry.getStatistics("UPDATE t SET x = ? WHERE id = ?");
+        registry.record(stats, TimeUnit.MICROSECONDS.toNanos(500), false, null, null, null);
+        registry.record(stats, TimeUnit.MILLISECONDS.toNanos(30), true, null, null, null);
+        registry.record(stats, TimeUnit.MILLISECONDS.toNanos(20000), false, null, null, null);
+
+        assertEquals(stats.getCount(), 3);
+        assertEquals(stats.getErrors(), 1);
+        assertEquals(stats.getMaxNanos(), TimeUnit.MILLISECONDS.toNanos(20000));
+        assertEquals(stats.getBucketCount(0), 1);
+        // 30ms is in the (25, 50] bucket
+        assertEquals(stats.getBucketCount(5), 1);
+        // beyond the last bound
+        assertEquals(stats.getBucketCount(StatementStatistics.BUCKET_BOUNDS_MILLIS.length), 1);
+
+        // only the successful execution above the threshold is slow
+        List<SlowStatement> slow = registry.getSlowStatements();
+        assertEquals(slow.size(), 1);
+        assertEquals(slow.get(0).getSql(), "UPDATE t SET x = ? WHERE id = ?");
+        assertNull(slow.get(0).getPlan());
+    }
+
+    @Test
+    public void testLimits() {
+        for (int i = 0; i < 4; i++) {
+            StatementStatistics stats = registry.getStatistics("DELETE FROM t" + i);
+            if (i < 3) {
+                registry.record(stats, TimeUnit.MILLISECONDS.toNanos(200 + i), false, null, null, null);
+            } else {
+                assertNull(stats);
+            }
+        }
+        assertEquals(registry.getStatistics().size(), 3);
+        assertEquals(registry.getOverflowCount(), 1);
+
+        // newest first, and only the most recent ones
+        List<SlowStatement> slow = registry.getSlowStatements();
+        assertEquals(slow.size(), 2);
+        assertEquals(slow.get(0).getSql(), "DELETE FROM t2");
+        assertEquals(slow.get(1).getSql(), "DELETE FROM t1");
+
+        // by descending total time
+        assertEquals(registry.getStatistics().get(0).getSql(), "DELETE FROM t2");
+    }
+
+    @Test
+    public void testTimedConnection() throws Exception {
+        assertTrue(TimedConnection.isNeeded());
+
+        AtomicInteger rowsLeft = new AtomicInteger(3);
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class },
+            (proxy, method, args) -> "next".equals(method.getName()) ? rowsLeft.getAndDecrement() > 0 : null);
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+            (proxy, method, args) -> "executeQuery".equals(method.getName()) ? rs : null);
+        Connection c = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> "prepareStatement".equals(method.getName()) ? ps : null);
+
+        Connection timed = TimedConnection.wrap(c);
+        try (PreparedStatement stmt = timed.prepareStatement("SELECT x FROM t WHERE id = 7")) {
+            stmt.setLong(1, 7L);
+            try (ResultSet result = stmt.executeQuery()) {
+                while (result.next()) {
+                    // read all the rows
+                }
+            }
+        }
+
+        StatementStatistics stats = registry.getStatistics("SELECT x FROM t WHERE id = 8");
+        assertEquals(stats.getCount(), 1);
+        assertEquals(stats.getRows(), 3);
+    }
+
+    @Test
+    public void testExplainPostgres() throws Exception {
+        registry.configure(true, 100, 1.0, 10, 10);
+        List<String> prepared = new ArrayList<>();
+        AtomicInteger rowsLeft = new AtomicInteger(1);
+        ResultSetMetaData rsmd = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSetMetaData.class },
+            (proxy, method, args) -> "getColumnCount".equals(method.getName()) ? 1 : null);
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "next":
+                    return rowsLeft.getAndDecrement() > 0;
+                case "getMetaData":
+                    return rsmd;
+                case "getString":
+                    return "Seq Scan on t";
+                default:
+                    return null;
+                }
+            });
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+            (proxy, method, args) -> {
+                if (method.getName().startsWith("set")) {
+                    throw new IllegalStateException("binds are not replayed");
+                }
+                return "executeQuery".equals(method.getName()) ? rs : null;
+            });
+        DatabaseMetaData dbmd = (DatabaseMetaData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DatabaseMetaData.class },
+            (proxy, method, args) -> "getDatabaseProductName".equals(method.getName()) ? "PostgreSQL" : null);
+        Connection c = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "getMetaData":
+                    return dbmd;
+                case "prepareStatement":
+                    prepared.add((String) args[0]);
+                    return ps;
+                default:
+                    // no savepoints on a connection enlisted in a JTA transaction
+                    throw new IllegalStateException(method.getName());
+                }
+            });
+
+        // statements with parameter markers aren't explained
+        String sql = "SELECT x FROM t WHERE id = ?";
+        registry.record(registry.getStatistics(sql), TimeUnit.SECONDS.toNanos(1), false, c, sql,
+            Collections.singletonList(new Object[] { PreparedStatement.class.getMethod("setLong", int.class, long.class), new Object[] { 1, 7L } }));
+        assertTrue(prepared.isEmpty());
+        assertTrue(registry.getSlowStatements().get(0).getPlan().startsWith("Plan not available"));
+
+        // a question mark in a literal isn't a parameter marker
+        sql = "SELECT x FROM t WHERE y = 'why?'";
+        registry.record(registry.getStatistics(sql), TimeUnit.SECONDS.toNanos(1), false, c, sql, null);
+        assertEquals(prepared, Collections.singletonList("EXPLAIN " + sql));
+        assertEquals(registry.getSlowStatements().get(0).getPlan(), "Seq Scan on t");
+    }
+}
@@ -53,6 +53,7 @@ import com.ibm.fhir.database.utils.db2.Db2Translator;
 import com.ibm.fhir.database.utils.derby.DerbyTranslator;
 import com.ibm.fhir.database.utils.model.DatabaseObjectType;
 import com.ibm.fhir.database.utils.model.DbType;
+import com.ibm.fhir.database.utils.model.PartitionSchemeDef;
 import com.ibm.fhir.database.utils.model.PhysicalDataModel;
 import com.ibm.fhir.database.utils.model.Table;
 import com.ibm.fhir.database.utils.model.Tenant;
@@ -74,6 +75,7 @@ import com.ibm.fhir.schema.control.GetTenantInfo;
 import com.ibm.fhir.schema.control.GetTenantList;
 import com.ibm.fhir.schema.control.JavaBatchSchemaGenerator;
 import com.ibm.fhir.schema.control.OAuthSchemaGenerator;
+import com.ibm.fhir.schema.control.ParameterTablePartitioning;
 import com.ibm.fhir.schema.control.PopulateParameterNames;
 import com.ibm.fhir.schema.control.PopulateResourceTypes;
 import com.ibm.fhir.schema.control.TenantInfo;
@@ -168,6 +170,9 @@ public class Main {
     // What status to leave with
     private int exitStatus = EXIT_OK;
 
+    // Optional declarative partitioning of the search parameter tables (PostgreSQL only)
+    private PartitionSchemeDef parameterTablePartitionScheme;
+
     // The connection pool and transaction provider to support concurrent operations
     private int maxConnectionPoolSize = FhirSchemaConstants.DEFAULT_POOL_SIZE;
     private PoolConnectionProvider connectionPool;
@@ -216,6 +221,7 @@ public class Main {
     protected void buildCommonModel(PhysicalDataModel pdm, boolean fhirSchema, boolean oauthSchema, boolean javaBatchSchema) {
         if (fhirSchema) {
             FhirSchemaGenerator gen = new FhirSchemaGenerator(schema.getAdminSchemaName(), schema.getSchemaName(), isMultitenant());
+            gen.setParameterTablePartitionScheme(this.parameterTablePartitionScheme);
             gen.buildSchema(pdm);
             switch (dbType) {
             case DB2:
@@ -1425,6 +1431,13 @@ public class Main {
                     throw new IllegalArgumentException("Missing value for argument at posn: " + i);
                 }
                 break;
+            case "--partition-parameter-tables":
+                if (++i < args.length) {
+                    this.parameterTablePartitionScheme = ParameterTablePartitioning.parse(args[i]);
+                } else {
+                    throw new IllegalArgumentException("Missing value for argument at posn: " + i);
+                }
+                break;
             case "--db-type":
                 if (++i < args.length) {
                     this.dbType = DbType.from(args[i]);
@@ -1449,6 +1462,10 @@ public class Main {
                 throw new IllegalArgumentException("Invalid argument: " + arg);
             }
         }
+
+        if (this.parameterTablePartitionScheme != null && this.dbType != DbType.POSTGRESQL) {
+            throw new IllegalArgumentException("--partition-parameter-tables is only supported for PostgreSQL");
+        }
     }
 
     /**
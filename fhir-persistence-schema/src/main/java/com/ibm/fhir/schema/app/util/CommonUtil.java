@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -106,6 +106,11 @@ public final class CommonUtil {
         ps.println("--drop-schema-oauth");
         ps.println(" * drop the db schema used by liberty's oauth/openid connect features");
 
+        // Partitions the search parameter tables
+        ps.println("--partition-parameter-tables hash:<n>|list:<code>[,<code>...]");
+        ps.println(" * PostgreSQL only: create the search parameter tables with declarative partitions, either by hash of the ");
+        ps.println(" * logical resource id or with one partition for each of the listed search parameters ");
+
         // Uses a specified poolsize
         ps.println("--pool-size poolSize");
         ps.println(" * poolsize used with the database actions ");
@@ -78,6 +78,7 @@ import com.ibm.fhir.database.utils.model.Generated;
 import com.ibm.fhir.database.utils.model.GroupPrivilege;
 import com.ibm.fhir.database.utils.model.IDatabaseObject;
 import com.ibm.fhir.database.utils.model.ObjectGroup;
+import com.ibm.fhir.database.utils.model.PartitionSchemeDef;
 import com.ibm.fhir.database.utils.model.PhysicalDataModel;
 import com.ibm.fhir.database.utils.model.SessionVariableDef;
 import com.ibm.fhir.database.utils.model.Table;
@@ -109,6 +110,9 @@ public class FhirResourceTableGroup {
     // Privileges to be granted to each of the resource tables created by this class
     private final Collection<GroupPrivilege> resourceTablePrivileges;
 
+    // The optional declarative partitioning used for the search parameter tables
+    private final PartitionSchemeDef parameterTablePartitionScheme;
+
     private static final String _LOGICAL_RESOURCES = "_LOGICAL_RESOURCES";
     private static final String _RESOURCES = "_RESOURCES";
 
@@ -136,6 +140,16 @@ public class FhirResourceTableGroup {
      */
     public FhirResourceTableGroup(PhysicalDataModel model, String schemaName, boolean multitenant, SessionVariableDef sessionVariable,
             Set<IDatabaseObject> procedureDependencies, Tablespace fhirTablespace, Collection<GroupPrivilege> privileges) {
+        this(model, schemaName, multitenant, sessionVariable, procedureDependencies, fhirTablespace, privileges, null);
+    }
+
+    /**
+     * Public constructor with the declarative partitioning scheme to use for the search
+     * parameter tables, or null if these tables are not partitioned
+     */
+    public FhirResourceTableGroup(PhysicalDataModel model, String schemaName, boolean multitenant, SessionVariableDef sessionVariable,
+            Set<IDatabaseObject> procedureDependencies, Tablespace fhirTablespace, Collection<GroupPrivilege> privileges,
+            PartitionSchemeDef parameterTablePartitionScheme) {
         this.model = model;
         this.schemaName = schemaName;
         this.multitenant = multitenant;
@@ -143,6 +157,7 @@ public class FhirResourceTableGroup {
         this.procedureDependencies = procedureDependencies;
         this.fhirTablespace = fhirTablespace;
         this.resourceTablePrivileges = privileges;
+        this.parameterTablePartitionScheme = parameterTablePartitionScheme;
     }
 
     /**
@@ -335,6 +350,7 @@ ALTER TABLE device_str_values ADD CONSTRAINT fk_device_str_values_rid  FOREIGN K
                 .addForeignKeyConstraint(FK + tableName + "_PNID", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
                 .addForeignKeyConstraint(FK + tableName + "_RID", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .build(model)
@@ -388,6 +404,7 @@ ALTER TABLE device_token_values ADD CONSTRAINT fk_device_token_values_r  FOREIGN
                 .addForeignKeyConstraint(FK + tableName + "_CS", schemaName, CODE_SYSTEMS, CODE_SYSTEM_ID)
                 .addForeignKeyConstraint(FK + tableName + "_R", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .build(model)
@@ -430,6 +447,7 @@ ALTER TABLE device_token_values ADD CONSTRAINT fk_device_token_values_r  FOREIGN
                 .addPrimaryKey(PK + tableName, ROW_ID)
                 .setIdentityColumn(ROW_ID, Generated.BY_DEFAULT)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .build(model);
@@ -530,6 +548,7 @@ ALTER TABLE device_date_values ADD CONSTRAINT fk_device_date_values_r  FOREIGN K
                 .addForeignKeyConstraint(FK + tableName + "_PN", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
                 .addForeignKeyConstraint(FK + tableName + "_R", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .addMigration(priorVersion -> {
@@ -594,6 +613,7 @@ ALTER TABLE device_number_values ADD CONSTRAINT fk_device_number_values_r  FOREI
                 .addForeignKeyConstraint(FK + tableName + "_PN", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
                 .addForeignKeyConstraint(FK + tableName + "_RID", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .addMigration(priorVersion -> {
@@ -661,6 +681,7 @@ ALTER TABLE device_latlng_values ADD CONSTRAINT fk_device_latlng_values_r  FOREI
                 .addForeignKeyConstraint(FK + tableName + "_PN", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
                 .addForeignKeyConstraint(FK + tableName + "_RID", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .build(model)
@@ -729,6 +750,7 @@ ALTER TABLE device_quantity_values ADD CONSTRAINT fk_device_quantity_values_r  F
                 .addForeignKeyConstraint(FK + tableName + "_PN", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
                 .addForeignKeyConstraint(FK + tableName + "_R", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .build(model)
@@ -810,6 +832,7 @@ ALTER TABLE device_composites ADD CONSTRAINT fk_device_composites_r  FOREIGN KEY
                 .addForeignKeyConstraint(FK + tableName + "_PN", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
                 .addForeignKeyConstraint(FK + tableName + "_R", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable);
 
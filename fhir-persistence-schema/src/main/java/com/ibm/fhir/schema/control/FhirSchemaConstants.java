@@ -61,6 +61,11 @@ public class FhirSchemaConstants {
     public static final String REINDEX_TXID = "REINDEX_TXID";
     public static final String REINDEX_SEQ = "REINDEX_SEQ";
 
+    // Global log of resource changes, used for system and type level history
+    public static final String RESOURCE_CHANGE_LOG = "RESOURCE_CHANGE_LOG";
+    public static final String CHANGE_TSTAMP = "CHANGE_TSTAMP";
+    public static final String CHANGE_TYPE = "CHANGE_TYPE";
+
     // R4 Logical Resource Tags and Security are modeled as token values
     public static final String TOKEN_VALUES = "TOKEN_VALUES";
 
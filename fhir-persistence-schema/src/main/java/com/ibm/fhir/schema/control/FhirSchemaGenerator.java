@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -13,6 +13,8 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMMON_TOKEN_VALUE
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMMON_TOKEN_VALUE_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMPARTMENT_LOGICAL_RESOURCE_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.COMPARTMENT_NAME_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.CHANGE_TSTAMP;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.CHANGE_TYPE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_END;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_START;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.DATE_VALUES;
@@ -36,6 +38,8 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.PARAMETER_NAME_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.REF_VERSION_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.REINDEX_TSTAMP;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.REINDEX_TXID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_CHANGE_LOG;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_ID;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TOKEN_REFS;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.RESOURCE_TYPES;
@@ -53,6 +57,7 @@ import static com.ibm.fhir.schema.control.FhirSchemaConstants.TENANT_SEQUENCE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.TENANT_STATUS;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.TOKEN_VALUE;
 import static com.ibm.fhir.schema.control.FhirSchemaConstants.TOKEN_VALUES;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.VERSION_ID;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -77,6 +82,7 @@ import com.ibm.fhir.database.utils.model.IDatabaseObject;
 import com.ibm.fhir.database.utils.model.NopObject;
 import com.ibm.fhir.database.utils.model.ObjectGroup;
 import com.ibm.fhir.database.utils.model.OrderedColumnDef;
+import com.ibm.fhir.database.utils.model.PartitionSchemeDef;
 import com.ibm.fhir.database.utils.model.PhysicalDataModel;
 import com.ibm.fhir.database.utils.model.Privilege;
 import com.ibm.fhir.database.utils.model.ProcedureDef;
@@ -147,6 +153,7 @@ public class FhirSchemaGenerator {
     private Table codeSystemsTable;
     private Table parameterNamesTable;
     private Table resourceTypesTable;
+    private Table resourceChangeLogTable;
     private Table commonTokenValuesTable;
 
     // A NOP marker used to ensure procedures are only applied after all the create
@@ -168,6 +175,9 @@ public class FhirSchemaGenerator {
     // The default tablespace used for everything not specific to a tenant
     private Tablespace fhirTablespace;
 
+    // The optional declarative partitioning used for the search parameter tables
+    private PartitionSchemeDef parameterTablePartitionScheme;
+
     /**
      * Generate the IBM FHIR Server Schema for all resourceTypes
      *
@@ -217,6 +227,17 @@ public class FhirSchemaGenerator {
         this.resourceTypes = resourceTypes;
     }
 
+    /**
+     * Partition the search parameter tables (e.g. PATIENT_STR_VALUES) using the given
+     * scheme when the target database supports declarative partitioning. Must be called
+     * before the schema is built.
+     *
+     * @param partitionScheme the scheme, or null to create regular tables
+     */
+    public void setParameterTablePartitionScheme(PartitionSchemeDef partitionScheme) {
+        this.parameterTablePartitionScheme = partitionScheme;
+    }
+
     /**
      * Build the admin part of the schema. One admin schema can support multiple FHIRDATA
      * schemas. It is also possible to have multiple admin schemas (on a dev system,
@@ -355,6 +376,7 @@ public class FhirSchemaGenerator {
         addCommonTokenValues(model);
         addResourceTypes(model);
         addLogicalResources(model); // for system-level parameter search
+        addResourceChangeLog(model); // for system-level and type-level history
         addReferencesSequence(model);
         addLogicalResourceCompartments(model);
 
@@ -410,9 +432,9 @@ public class FhirSchemaGenerator {
 
         pd = model.addProcedure(this.schemaName,
                 ADD_ANY_RESOURCE,
-                FhirSchemaVersion.V0001.vid(),
+                FhirSchemaVersion.V0008.vid(),
                 () -> SchemaGeneratorUtil.readTemplate(adminSchemaName, schemaName, ROOT_DIR + ADD_ANY_RESOURCE.toLowerCase() + ".sql", null),
-                Arrays.asList(fhirSequence, resourceTypesTable, allTablesComplete),
+                Arrays.asList(fhirSequence, resourceTypesTable, resourceChangeLogTable, allTablesComplete),
                 procedurePrivileges);
         pd.addTag(SCHEMA_GROUP_TAG, FHIRDATA_GROUP);
     }
@@ -447,10 +469,10 @@ public class FhirSchemaGenerator {
 
         fd = model.addFunction(this.schemaName,
                 ADD_ANY_RESOURCE,
-                FhirSchemaVersion.V0001.vid(),
+                FhirSchemaVersion.V0008.vid(),
                 () -> SchemaGeneratorUtil.readTemplate(adminSchemaName, schemaName, ROOT_DIR + ADD_ANY_RESOURCE.toLowerCase()
                         + ".sql", null),
-                Arrays.asList(fhirSequence, resourceTypesTable, allTablesComplete), procedurePrivileges);
+                Arrays.asList(fhirSequence, resourceTypesTable, resourceChangeLogTable, allTablesComplete), procedurePrivileges);
         fd.addTag(SCHEMA_GROUP_TAG, FHIRDATA_GROUP);
     }
 
@@ -510,6 +532,42 @@ public class FhirSchemaGenerator {
         pdm.addObject(tbl);
     }
 
+    /**
+     * Add the system-wide RESOURCE_CHANGE_LOG table, which has one row for each resource
+     * version created, updated or deleted. The RESOURCE_ID of each row is the resource_id
+     * of the version, allocated from FHIR_SEQUENCE, so reading the table in RESOURCE_ID
+     * order gives the changes in the order they were made. The rows are written by the
+     * add_any_resource procedure, in the same transaction as the resource version.
+     * @param pdm
+     */
+    public void addResourceChangeLog(PhysicalDataModel pdm) {
+        final String tableName = RESOURCE_CHANGE_LOG;
+
+        Table tbl = Table.builder(schemaName, tableName)
+                .setTenantColumnName(MT_ID)
+                .addBigIntColumn(RESOURCE_ID, false)
+                .addIntColumn(RESOURCE_TYPE_ID, false)
+                .addVarcharColumn(LOGICAL_ID, LOGICAL_ID_BYTES, false)
+                .addIntColumn(VERSION_ID, false)
+                .addTimestampColumn(CHANGE_TSTAMP, false)
+                .addCharColumn(CHANGE_TYPE, 1, false)
+                .addPrimaryKey(tableName + "_PK", RESOURCE_ID)
+                .addIndex(IDX + tableName + "_CTRID", CHANGE_TSTAMP, RESOURCE_ID)
+                .addIndex(IDX + tableName + "_RTRID", RESOURCE_TYPE_ID, RESOURCE_ID)
+                .setTablespace(fhirTablespace)
+                .addPrivileges(resourceTablePrivileges)
+                .addForeignKeyConstraint(FK + tableName + "_RTID", schemaName, RESOURCE_TYPES, RESOURCE_TYPE_ID)
+                .enableAccessControl(this.sessionVariable)
+                .setVersion(FhirSchemaVersion.V0008.vid())
+                .build(pdm);
+
+        tbl.addTag(SCHEMA_GROUP_TAG, FHIRDATA_GROUP);
+        this.resourceChangeLogTable = tbl;
+        this.procedureDependencies.add(tbl);
+        pdm.addTable(tbl);
+        pdm.addObject(tbl);
+    }
+
     /**
      * Add the system-wide TOKEN_VALUES table which is used for
      * _tag and _security search properties in R4
@@ -534,6 +592,7 @@ public class FhirSchemaGenerator {
                 .addForeignKeyConstraint(FK + tableName + "_LR", schemaName, LOGICAL_RESOURCES, LOGICAL_RESOURCE_ID)
                 .addForeignKeyConstraint(FK + tableName + "_PN", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .build(pdm);
@@ -612,6 +671,7 @@ public class FhirSchemaGenerator {
                 .addForeignKeyConstraint(FK + STR_VALUES + "_PNID", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
                 .addForeignKeyConstraint(FK + STR_VALUES + "_RID", schemaName, LOGICAL_RESOURCES, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .build(pdm);
@@ -646,6 +706,7 @@ public class FhirSchemaGenerator {
                 .addForeignKeyConstraint(FK + tableName + "_PN", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
                 .addForeignKeyConstraint(FK + tableName + "_R", schemaName, logicalResourcesTable, LOGICAL_RESOURCE_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .addMigration(priorVersion -> {
@@ -714,7 +775,8 @@ public class FhirSchemaGenerator {
 
         // The sessionVariable is used to enable access control on every table, so we
         // provide it as a dependency
-        FhirResourceTableGroup frg = new FhirResourceTableGroup(model, this.schemaName, this.multitenant, sessionVariable, this.procedureDependencies, this.fhirTablespace, this.resourceTablePrivileges);
+        FhirResourceTableGroup frg = new FhirResourceTableGroup(model, this.schemaName, this.multitenant, sessionVariable, this.procedureDependencies, this.fhirTablespace, this.resourceTablePrivileges,
+            this.parameterTablePartitionScheme);
         for (String resourceType: this.resourceTypes) {
             ObjectGroup group = frg.addResourceType(resourceType);
             group.addTag(SCHEMA_GROUP_TAG, FHIRDATA_GROUP);
@@ -875,6 +937,7 @@ public class FhirSchemaGenerator {
                 .addForeignKeyConstraint(FK + tableName + "_LR", schemaName, LOGICAL_RESOURCES, LOGICAL_RESOURCE_ID)
                 .addForeignKeyConstraint(FK + tableName + "_PNID", schemaName, PARAMETER_NAMES, PARAMETER_NAME_ID)
                 .setTablespace(fhirTablespace)
+                .setPartitionScheme(parameterTablePartitionScheme)
                 .addPrivileges(resourceTablePrivileges)
                 .enableAccessControl(this.sessionVariable)
                 .build(pdm);
@@ -22,6 +22,7 @@ public enum FhirSchemaVersion {
     ,V0005(5, "issue-1331 add index for resource.last_updated")
     ,V0006(6, "issue-1366 normalized schema for storing resource references")
     ,V0007(7, "issue-1273 add ref_version_id column to xxx_TOKEN_VALUES_V view")
+    ,V0008(8, "add RESOURCE_CHANGE_LOG for system and type level history")
     ;
 
     // The version number recorded in the VERSION_HISTORY
@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.schema.control;
+
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.LOGICAL_RESOURCE_ID;
+import static com.ibm.fhir.schema.control.FhirSchemaConstants.PARAMETER_NAME_ID;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.ibm.fhir.database.utils.model.PartitionSchemeDef;
+
+/**
+ * Builds the declarative partitioning scheme used for the search parameter tables
+ * (e.g. PATIENT_STR_VALUES) from its command line representation:
+ * <ul>
+ * <li>{@code hash:<n>} splits each table into n partitions by the hash of LOGICAL_RESOURCE_ID
+ * <li>{@code list:<code>[,<code>...]} gives each of the listed search parameters its own
+ * partition by PARAMETER_NAME_ID, with all other parameters stored in a default partition
+ * </ul>
+ * The PARAMETER_NAME_ID values are the fixed values from parameter_names.properties, so
+ * search queries which use the literal id of the parameter only touch its partition.
+ */
+public class ParameterTablePartitioning {
+    private static final String HASH_PREFIX = "hash:";
+    private static final String LIST_PREFIX = "list:";
+
+    private ParameterTablePartitioning() {
+        // No operation
+    }
+
+    /**
+     * Parse the given partitioning specification
+     * @param spec
+     * @return
+     * @throws IllegalArgumentException if the specification is invalid
+     */
+    public static PartitionSchemeDef parse(String spec) {
+        if (spec.startsWith(HASH_PREFIX)) {
+            final String modulus = spec.substring(HASH_PREFIX.length());
+            try {
+                return PartitionSchemeDef.hash(LOGICAL_RESOURCE_ID, Integer.parseInt(modulus));
+            } catch (NumberFormatException x) {
+                throw new IllegalArgumentException("Invalid number of hash partitions: '" + modulus + "'");
+            }
+        } else if (spec.startsWith(LIST_PREFIX)) {
+            Properties parameterNames = loadParameterNames();
+            List<Integer> values = new ArrayList<>();
+            for (String code: spec.substring(LIST_PREFIX.length()).split(",")) {
+                final String parameterNameId = parameterNames.getProperty(code.trim());
+                if (parameterNameId == null) {
+                    throw new IllegalArgumentException("Unknown search parameter code: '" + code + "'");
+                }
+                Integer value = Integer.parseInt(parameterNameId);
+                if (!values.contains(value)) {
+                    values.add(value);
+                }
+            }
+            return PartitionSchemeDef.list(PARAMETER_NAME_ID, values);
+        } else {
+            throw new IllegalArgumentException("Invalid partitioning, expected hash:<n> or list:<code>[,<code>...]: '" + spec + "'");
+        }
+    }
+
+    /**
+     * Load the fixed mapping of search parameter codes to PARAMETER_NAME_ID
+     * @return
+     */
+    private static Properties loadParameterNames() {
+        Properties props = new Properties();
+        try (InputStream fis =
+                ParameterTablePartitioning.class.getClassLoader().getResourceAsStream("parameter_names.properties")) {
+            props.load(fis);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return props;
+    }
+}
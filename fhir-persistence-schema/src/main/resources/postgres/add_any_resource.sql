@@ -1,5 +1,5 @@
 -------------------------------------------------------------------------------
--- (C) Copyright IBM Corp. 2020
+-- (C) Copyright IBM Corp. 2020, 2021
 --
 -- SPDX-License-Identifier: Apache-2.0
 -------------------------------------------------------------------------------
@@ -164,6 +164,12 @@ BEGIN
       || ' VALUES ($1, $2, $3, $4, $5, $6)'
     USING v_resource_id, v_logical_resource_id, v_insert_version, p_payload, p_last_updated, p_is_deleted;
 
+  -- Record the change in the global change log, which is ordered by the resource_id
+  -- and used for system and type level history
+  INSERT INTO {{SCHEMA_NAME}}.resource_change_log (resource_id, resource_type_id, logical_id, version_id, change_tstamp, change_type)
+       VALUES (v_resource_id, v_resource_type_id, p_logical_id, v_insert_version, p_last_updated,
+               CASE WHEN p_is_deleted = 'Y' THEN 'D' WHEN v_insert_version = 1 THEN 'C' ELSE 'U' END);
+
   IF p_version IS NULL OR p_version > v_version
   THEN
     -- only update the logical resource if the resource we are adding supercedes the
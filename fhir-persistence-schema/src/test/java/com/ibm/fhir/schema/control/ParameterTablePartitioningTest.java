@@ -0,0 +1,52 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.schema.control;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.database.utils.model.PartitionSchemeDef;
+
+/**
+ * Tests the parsing of the search parameter table partitioning option
+ */
+public class ParameterTablePartitioningTest {
+
+    @Test
+    public void testHash() {
+        PartitionSchemeDef ps = ParameterTablePartitioning.parse("hash:8");
+        assertEquals(ps.getStrategy(), PartitionSchemeDef.Strategy.HASH);
+        assertEquals(ps.getPartitionColumn(), "LOGICAL_RESOURCE_ID");
+        assertEquals(ps.getModulus(), 8);
+    }
+
+    @Test
+    public void testList() {
+        PartitionSchemeDef ps = ParameterTablePartitioning.parse("list:_content, _id,_content");
+        assertEquals(ps.getStrategy(), PartitionSchemeDef.Strategy.LIST);
+        assertEquals(ps.getPartitionColumn(), "PARAMETER_NAME_ID");
+        assertEquals(ps.getValues(), Arrays.asList(1001, 1002));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownCode() {
+        ParameterTablePartitioning.parse("list:not-a-search-parameter");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidModulus() {
+        ParameterTablePartitioning.parse("hash:0");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidStrategy() {
+        ParameterTablePartitioning.parse("range:10");
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -7,10 +7,13 @@
 package com.ibm.fhir.persistence;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Function;
 
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.util.FHIRUtil;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
 import com.ibm.fhir.persistence.exception.FHIRPersistenceNotSupportedException;
@@ -33,6 +36,42 @@ public interface FHIRPersistence {
      */
     <T extends Resource> SingleResourceResult<T> create(FHIRPersistenceContext context, T resource) throws FHIRPersistenceException;
 
+    /**
+     * Stores a batch of FHIR Resources in the datastore. Resources without an id are created with a
+     * server-assigned id; resources with an id are updated (or created, if update/create is enabled).
+     * A failure to store one resource doesn't prevent the remaining resources from being stored.
+     * <p>
+     * The default implementation calls {@link #create} or {@link #update} for each resource in turn and
+     * ignores deferIndexing. Implementations may override it to share work across the whole batch.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resources the FHIR Resource instances to be stored in the datastore
+     * @param deferIndexing if true, only the resources are stored and the extraction of their search parameters
+     *        is left to a later reindex; the resources can't be found by search until they have been reindexed
+     * @return a list with one SingleResourceResult for each resource, in the same order as the passed resources;
+     *         failed results include an OperationOutcome with the error
+     * @throws FHIRPersistenceException if the batch as a whole can't be processed
+     */
+    default List<SingleResourceResult<Resource>> createOrUpdateBatch(FHIRPersistenceContext context, List<Resource> resources,
+            boolean deferIndexing) throws FHIRPersistenceException {
+        List<SingleResourceResult<Resource>> results = new ArrayList<>(resources.size());
+        for (Resource resource : resources) {
+            try {
+                if (resource.getId() == null) {
+                    results.add(create(context, resource));
+                } else {
+                    results.add(update(context, resource.getId(), resource));
+                }
+            } catch (FHIRPersistenceException e) {
+                results.add(new SingleResourceResult.Builder<Resource>()
+                        .success(false)
+                        .outcome(FHIRUtil.buildOperationOutcome(e, false))
+                        .build());
+            }
+        }
+        return results;
+    }
+
     /**
      * Retrieves the most recent version of a FHIR Resource from the datastore.
      *
@@ -109,6 +148,24 @@ public interface FHIRPersistence {
      */
     MultiResourceResult<Resource> search(FHIRPersistenceContext context, Class<? extends Resource> resourceType) throws FHIRPersistenceException;
 
+    /**
+     * Performs a search on the specified target resource type using the specified search parameters, and returns
+     * a cursor which reads the resources of the search result set one at a time. The total count of the search
+     * results is set on the search context before this method returns.
+     * <p>
+     * The default implementation reads the whole page with {@link #search}. Implementations may override it to
+     * read and convert each resource only when the caller asks for it.
+     *
+     * @param context the FHIRPersistenceContext instance associated with the current request
+     * @param resourceType the resource type which is the target of the search
+     * @return a cursor over the FHIR Resources in the search result set, which the caller must close
+     * @throws FHIRPersistenceException
+     */
+    default SearchResultCursor searchCursor(FHIRPersistenceContext context, Class<? extends Resource> resourceType)
+            throws FHIRPersistenceException {
+        return SearchResultCursor.of(search(context, resourceType).getResource());
+    }
+
     /**
      * Returns true iff the persistence layer implementation supports transactions.
      */
@@ -183,4 +240,34 @@ public interface FHIRPersistence {
     ResourcePayload fetchResourcePayloads(Class<? extends Resource> resourceType,
         Instant fromLastModified, Instant toLastModified,
         Function<ResourcePayload,Boolean> process) throws FHIRPersistenceException;
+
+    /**
+     * Returns true iff the persistence layer implementation supports reading the resource change
+     * log with {@link #changes(int, Instant, Long, String)}
+     * @return
+     */
+    default boolean isChangesSupported() {
+        return false;
+    }
+
+    /**
+     * Reads the resource versions created, updated or deleted across all resource types, or across
+     * a single resource type, in the order in which the changes were made. Used for system and type
+     * level history. A client can continue reading from where it left off by passing the change id
+     * of the last record it has read as afterChangeId. When a fromLastModified time is given, the changes
+     * are ordered by time first, so the client must also pass the change time of the last record it has
+     * read as fromLastModified.
+     *
+     * @param resourceCount the maximum number of changes to read
+     * @param fromLastModified only read changes made at or after this time, if provided (can be null)
+     * @param afterChangeId only read changes after this change id, if provided (can be null); if fromLastModified
+     *     is provided, only the changes made at fromLastModified are compared with this change id
+     * @param resourceTypeName only read changes to resources of this type, if provided (can be null)
+     * @return the changes, ordered by change id, or by change time and then change id if fromLastModified is provided
+     * @throws FHIRPersistenceException
+     */
+    default List<ResourceChangeLogRecord> changes(int resourceCount, Instant fromLastModified, Long afterChangeId, String resourceTypeName)
+            throws FHIRPersistenceException {
+        throw new FHIRPersistenceNotSupportedException("The 'changes' operation is not supported by this persistence implementation");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence;
+
+import java.time.Instant;
+
+import com.ibm.fhir.model.resource.Resource;
+
+/**
+ * A record of a resource version being created, updated or deleted, as read from the
+ * resource change log for system and type level history
+ */
+public class ResourceChangeLogRecord {
+
+    /**
+     * The kind of change which created the resource version
+     */
+    public static enum ChangeType {
+        CREATE, UPDATE, DELETE
+    }
+
+    // The id of the change, which increases with each change and is used as the continuation token
+    private final long changeId;
+
+    // The resource type name, e.g. "Patient"
+    private final String resourceTypeName;
+
+    // The logical id of the resource
+    private final String logicalId;
+
+    // The version of the resource created by this change
+    private final int versionId;
+
+    // The last updated time of the resource version
+    private final Instant changeTstamp;
+
+    private final ChangeType changeType;
+
+    // The resource version, or null for a deletion
+    private final Resource resource;
+
+    /**
+     * Public constructor
+     * @param changeId
+     * @param resourceTypeName
+     * @param logicalId
+     * @param versionId
+     * @param changeTstamp
+     * @param changeType
+     * @param resource the resource version, or null if this change is a deletion
+     */
+    public ResourceChangeLogRecord(long changeId, String resourceTypeName, String logicalId, int versionId, Instant changeTstamp,
+            ChangeType changeType, Resource resource) {
+        this.changeId = changeId;
+        this.resourceTypeName = resourceTypeName;
+        this.logicalId = logicalId;
+        this.versionId = versionId;
+        this.changeTstamp = changeTstamp;
+        this.changeType = changeType;
+        this.resource = resource;
+    }
+
+    /**
+     * @return the changeId
+     */
+    public long getChangeId() {
+        return changeId;
+    }
+
+    /**
+     * @return the resourceTypeName
+     */
+    public String getResourceTypeName() {
+        return resourceTypeName;
+    }
+
+    /**
+     * @return the logicalId
+     */
+    public String getLogicalId() {
+        return logicalId;
+    }
+
+    /**
+     * @return the versionId
+     */
+    public int getVersionId() {
+        return versionId;
+    }
+
+    /**
+     * @return the changeTstamp
+     */
+    public Instant getChangeTstamp() {
+        return changeTstamp;
+    }
+
+    /**
+     * @return the changeType
+     */
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    /**
+     * @return the resource version, or null if this change is a deletion
+     */
+    public Resource getResource() {
+        return resource;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence;
+
+import java.util.Iterator;
+import java.util.List;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+
+/**
+ * A cursor over a page of search results, used to process the resources one at a time as the persistence
+ * layer reads them instead of holding the whole page in memory. The resources are returned in the same order
+ * as by {@link FHIRPersistence#search}: the resources matching the search, followed by the included resources.
+ *
+ * <p>The cursor may hold on to datastore resources such as a database connection, so it must be closed once
+ * done with, and before the transaction it was opened in completes.
+ */
+public interface SearchResultCursor extends AutoCloseable {
+
+    /**
+     * @return the next resource of the search results, or null if there are no more
+     * @throws FHIRPersistenceException
+     */
+    Resource next() throws FHIRPersistenceException;
+
+    /**
+     * Release the datastore resources held by this cursor
+     * @throws FHIRPersistenceException
+     */
+    @Override
+    void close() throws FHIRPersistenceException;
+
+    /**
+     * Create a cursor over search results which have already been read
+     * @param resources
+     * @return
+     */
+    static SearchResultCursor of(List<Resource> resources) {
+        final Iterator<Resource> iterator = resources.iterator();
+        return new SearchResultCursor() {
+            @Override
+            public Resource next() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -16,6 +16,14 @@ public interface FHIRHistoryContext extends FHIRPagingContext {
     
     Instant getSince();
     void setSince(Instant since);
+
+    /**
+     * Returns the change id after which a system or type level history continues, given
+     * by the _changeIdMarker parameter, or null if the parameter was not given.
+     * @return the change id marker
+     */
+    Long getChangeIdMarker();
+    void setChangeIdMarker(Long changeIdMarker);
     
     /**
      * Returns a Map indicating the deletion history of a resource.
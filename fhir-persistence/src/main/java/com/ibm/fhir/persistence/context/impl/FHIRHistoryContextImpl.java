@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -16,6 +16,7 @@ import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 
 public class FHIRHistoryContextImpl extends FHIRPagingContextImpl implements FHIRHistoryContext {
     private Instant since = null;
+    private Long changeIdMarker = null;
     private Map<String,List<Integer>> deletedResources = new HashMap<>();
     
     public FHIRHistoryContextImpl() {
@@ -31,6 +32,16 @@ public class FHIRHistoryContextImpl extends FHIRPagingContextImpl implements FHI
         this.since = since;
     }
 
+    @Override
+    public Long getChangeIdMarker() {
+        return changeIdMarker;
+    }
+
+    @Override
+    public void setChangeIdMarker(Long changeIdMarker) {
+        this.changeIdMarker = changeIdMarker;
+    }
+
     @Override
     public Map<String, List<Integer>> getDeletedResources() {
         return this.deletedResources;
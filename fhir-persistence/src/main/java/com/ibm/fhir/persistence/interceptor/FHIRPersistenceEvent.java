@@ -11,6 +11,7 @@ import java.util.Map;
 
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.path.spi.ReferenceResolver;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 
@@ -64,6 +65,13 @@ public class FHIRPersistenceEvent {
      */
     public static final String PROPNAME_SEARCH_CONTEXT_IMPL = "SEARCH_CONTEXT_IMPL";
 
+    /**
+     * This property is of type ReferenceResolver and loads the targets of references
+     * from the server for the FHIRPath resolve() function, for the current request.
+     * It may be null.
+     */
+    public static final String PROPNAME_REFERENCE_RESOLVER = "REFERENCE_RESOLVER";
+
     private Resource fhirResource;
     private Resource prevFhirResource = null;
     private boolean  prevFhirResourceSet = false;
@@ -206,4 +214,12 @@ public class FHIRPersistenceEvent {
         return (FHIRSearchContext) getProperty(PROPNAME_SEARCH_CONTEXT_IMPL);
     }
 
+    /**
+     * Returns the ReferenceResolver which loads the targets of references from the server
+     * for the current request, or null if there isn't one.
+     */
+    public ReferenceResolver getReferenceResolver() {
+        return (ReferenceResolver) getProperty(PROPNAME_REFERENCE_RESOLVER);
+    }
+
 }
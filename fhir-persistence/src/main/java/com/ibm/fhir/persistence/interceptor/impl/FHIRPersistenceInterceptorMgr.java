@@ -13,6 +13,8 @@ import java.util.ServiceLoader;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.ibm.fhir.config.metrics.RequestPhase;
+import com.ibm.fhir.config.metrics.RequestTimings;
 import com.ibm.fhir.core.FHIRUtilities;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceInterceptor;
@@ -83,102 +85,100 @@ public class FHIRPersistenceInterceptorMgr {
         interceptors.add(0, interceptor);
     }
 
+    /**
+     * @return true if any interceptor is registered
+     */
+    public boolean hasInterceptors() {
+        return !interceptors.isEmpty();
+    }
+
     /**
      * The following methods will invoke the respective interceptor methods on each registered interceptor.
      */
     public void fireBeforeCreateEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.beforeCreate(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::beforeCreate);
     }
 
     public void fireAfterCreateEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.afterCreate(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::afterCreate);
     }
 
     public void fireBeforeUpdateEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.beforeUpdate(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::beforeUpdate);
     }
 
     public void fireAfterUpdateEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.afterUpdate(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::afterUpdate);
     }
 
     public void fireBeforePatchEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.beforePatch(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::beforePatch);
     }
 
     public void fireAfterPatchEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.afterPatch(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::afterPatch);
     }
 
     public void fireBeforeDeleteEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.beforeDelete(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::beforeDelete);
     }
 
     public void fireAfterDeleteEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.afterDelete(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::afterDelete);
     }
 
     public void fireBeforeReadEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.beforeRead(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::beforeRead);
     }
 
     public void fireAfterReadEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.afterRead(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::afterRead);
     }
 
     public void fireBeforeVreadEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.beforeVread(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::beforeVread);
     }
 
     public void fireAfterVreadEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.afterVread(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::afterVread);
     }
 
     public void fireBeforeHistoryEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.beforeHistory(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::beforeHistory);
     }
 
     public void fireAfterHistoryEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.afterHistory(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::afterHistory);
     }
 
     public void fireBeforeSearchEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.beforeSearch(event);
-        }
+        fire(event, FHIRPersistenceInterceptor::beforeSearch);
     }
 
     public void fireAfterSearchEvent(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
-        for (FHIRPersistenceInterceptor interceptor : interceptors) {
-            interceptor.afterSearch(event);
+        fire(event, FHIRPersistenceInterceptor::afterSearch);
+    }
+
+    /**
+     * Invoke the interceptor method on each registered interceptor, adding the time spent to the
+     * {@link RequestPhase#INTERCEPTORS} phase of the request.
+     */
+    private void fire(FHIRPersistenceEvent event, InterceptorMethod method) throws FHIRPersistenceInterceptorException {
+        if (interceptors.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            for (FHIRPersistenceInterceptor interceptor : interceptors) {
+                method.invoke(interceptor, event);
+            }
+        } finally {
+            RequestTimings.record(RequestPhase.INTERCEPTORS, start);
         }
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    private interface InterceptorMethod {
+        void invoke(FHIRPersistenceInterceptor interceptor, FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException;
+    }
+}
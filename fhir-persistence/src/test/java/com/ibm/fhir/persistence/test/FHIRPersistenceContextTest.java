@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017,2019
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -12,6 +12,12 @@ import static org.testng.AssertJUnit.assertNotNull;
 import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.testng.annotations.Test;
 
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
@@ -19,6 +25,7 @@ import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContextFactory;
 import com.ibm.fhir.persistence.context.impl.FHIRPersistenceContextImpl;
 import com.ibm.fhir.persistence.interceptor.FHIRPersistenceEvent;
+import com.ibm.fhir.persistence.util.FHIRPersistenceUtil;
 import com.ibm.fhir.search.context.FHIRSearchContext;
 import com.ibm.fhir.search.context.FHIRSearchContextFactory;
 
@@ -87,4 +94,20 @@ public class FHIRPersistenceContextTest {
         assertFalse(ctxt.includeDeleted());
         assertNull(ctxt.getHistoryContext());
     }
+
+    @Test
+    public void testHistoryChangeIdMarker() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        queryParameters.put("_count", Collections.singletonList("50"));
+        queryParameters.put("_since", Collections.singletonList("2021-01-01T00:00:00Z"));
+        queryParameters.put("_changeIdMarker", Arrays.asList("12345"));
+
+        FHIRHistoryContext hc = FHIRPersistenceUtil.parseHistoryParameters(queryParameters, false);
+        assertEquals(50, hc.getPageSize());
+        assertNotNull(hc.getSince());
+        assertEquals(Long.valueOf(12345), hc.getChangeIdMarker());
+
+        hc = FHIRPersistenceUtil.parseHistoryParameters(Collections.<String, List<String>>emptyMap(), false);
+        assertNull(hc.getChangeIdMarker());
+    }
 }
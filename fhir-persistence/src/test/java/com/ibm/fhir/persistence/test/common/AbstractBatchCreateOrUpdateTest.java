@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.persistence.test.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Basic;
+import com.ibm.fhir.model.resource.OperationOutcome;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.persistence.SingleResourceResult;
+
+/**
+ * This class contains tests for storing a batch of resources with createOrUpdateBatch.
+ */
+public abstract class AbstractBatchCreateOrUpdateTest extends AbstractPersistenceTest {
+    private static final String SYSTEM = "http://example.org/batch-test";
+
+    private static Basic basic(String id, String code) {
+        return Basic.builder()
+                .id(id)
+                .code(CodeableConcept.builder()
+                    .coding(Coding.builder()
+                        .system(Uri.of(SYSTEM))
+                        .code(Code.of(code))
+                        .build())
+                    .build())
+                .build();
+    }
+
+    @Test
+    public void testCreateOrUpdateBatch() throws Exception {
+        List<Resource> resources = Arrays.asList(basic(null, "batch-create"), basic(null, "batch-create"), basic("batch-basic-1", "batch-create"));
+
+        List<SingleResourceResult<Resource>> results = persistence.createOrUpdateBatch(getDefaultPersistenceContext(), resources, false);
+        assertEquals(results.size(), 3);
+        for (SingleResourceResult<Resource> result : results) {
+            assertTrue(result.isSuccess());
+            assertNotNull(result.getResource().getId());
+            assertEquals(result.getResource().getMeta().getVersionId().getValue(), "1");
+        }
+        assertEquals(results.get(2).getResource().getId(), "batch-basic-1");
+
+        List<Resource> found = runQueryTest(Basic.class, "code", SYSTEM + "|batch-create");
+        assertEquals(found.size(), 3);
+    }
+
+    @Test(dependsOnMethods = { "testCreateOrUpdateBatch" })
+    public void testUpdateSameResourceTwiceInBatch() throws Exception {
+        List<Resource> resources = Arrays.asList(basic("batch-basic-1", "batch-update-1"), basic("batch-basic-1", "batch-update-2"));
+
+        List<SingleResourceResult<Resource>> results = persistence.createOrUpdateBatch(getDefaultPersistenceContext(), resources, false);
+        assertEquals(results.size(), 2);
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        assertEquals(results.get(0).getResource().getMeta().getVersionId().getValue(), "2");
+        assertEquals(results.get(1).getResource().getMeta().getVersionId().getValue(), "3");
+
+        Basic basic = persistence.read(getDefaultPersistenceContext(), Basic.class, "batch-basic-1").getResource();
+        assertEquals(basic.getMeta().getVersionId().getValue(), "3");
+        assertTrue(runQueryTest(Basic.class, "code", SYSTEM + "|batch-update-1").isEmpty());
+        assertEquals(runQueryTest(Basic.class, "code", SYSTEM + "|batch-update-2").size(), 1);
+    }
+
+    @Test
+    public void testDeferIndexing() throws Exception {
+        List<Resource> resources = Arrays.asList(basic(null, "batch-deferred"));
+
+        List<SingleResourceResult<Resource>> results = persistence.createOrUpdateBatch(getDefaultPersistenceContext(), resources, true);
+        assertTrue(results.get(0).isSuccess());
+        String logicalId = results.get(0).getResource().getId();
+
+        // the resource is stored, but not searchable until it is reindexed
+        assertNotNull(persistence.read(getDefaultPersistenceContext(), Basic.class, logicalId).getResource());
+        assertTrue(runQueryTest(Basic.class, "code", SYSTEM + "|batch-deferred").isEmpty());
+
+        int reindexed = persistence.reindex(getDefaultPersistenceContext(), OperationOutcome.builder(), Instant.now(), "Basic/" + logicalId);
+        assertEquals(reindexed, 1);
+
+        List<Resource> found = runQueryTest(Basic.class, "code", SYSTEM + "|batch-deferred");
+        assertEquals(found.size(), 1);
+        assertEquals(found.get(0).getId(), logicalId);
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -39,6 +39,8 @@ import org.owasp.encoder.Encode;
 import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.config.metrics.RequestPhase;
+import com.ibm.fhir.config.metrics.RequestTimings;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.core.HTTPHandlingPreference;
 import com.ibm.fhir.model.format.Format;
@@ -78,6 +80,7 @@ public class FHIRProvider implements MessageBodyReader<Resource>, MessageBodyWri
             MultivaluedMap<String, String> httpHeaders,
             InputStream entityStream) throws IOException, WebApplicationException {
         log.entering(this.getClass().getName(), "readFrom");
+        long start = System.nanoTime();
         try {
             FHIRRequestContext requestContext = FHIRRequestContext.get();
             Format format = getFormat(mediaType);
@@ -101,6 +104,7 @@ public class FHIRProvider implements MessageBodyReader<Resource>, MessageBodyWri
                 throw new IOException("an error occurred during resource deserialization", e);
             }
         } finally {
+            RequestTimings.record(RequestPhase.BODY_PARSE, start);
             log.exiting(this.getClass().getName(), "readFrom");
         }
     }
@@ -115,6 +119,7 @@ public class FHIRProvider implements MessageBodyReader<Resource>, MessageBodyWri
             MultivaluedMap<String, Object> httpHeaders,
             OutputStream entityStream) throws IOException, WebApplicationException {
         log.entering(this.getClass().getName(), "writeTo");
+        long start = System.nanoTime();
         try {
             FHIRGenerator.generator(getFormat(mediaType), isPretty(requestHeaders, uriInfo)).generate(t, entityStream);
         } catch (FHIRGeneratorException e) {
@@ -130,6 +135,7 @@ public class FHIRProvider implements MessageBodyReader<Resource>, MessageBodyWri
                 throw new WebApplicationException(response);
             }
         } finally {
+            RequestTimings.record(RequestPhase.RESPONSE, start);
             log.exiting(this.getClass().getName(), "writeTo");
         }
     }
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -20,6 +20,7 @@ import java.util.Objects;
 import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -31,6 +32,7 @@ import com.ibm.fhir.model.type.code.SearchParamType;
 import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.registry.resource.FHIRRegistryResource;
 import com.ibm.fhir.registry.spi.FHIRRegistryResourceProvider;
+import com.ibm.fhir.registry.util.PackageRegistryResourceProvider;
 
 /**
  * A singleton registry for FHIR definitional resources: <a href="http://hl7.org/fhir/definition.html">http://hl7.org/fhir/definition.html</a>
@@ -226,6 +228,41 @@ public final class FHIRRegistry {
                 .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
     }
 
+    /**
+     * Load all resources from the package-based registry resource providers in parallel, so that later lookups
+     * don't pay the cost of loading (and parsing) them.
+     *
+     * <p>Providers which are not package-based are skipped because they may need a request context to load their resources.
+     *
+     * @param parallelism
+     *     the number of threads used to load the resources
+     * @return
+     *     the number of resources loaded
+     */
+    public int loadAllResources(int parallelism) {
+        List<FHIRRegistryResource> registryResources = providers.stream()
+                .filter(provider -> provider instanceof PackageRegistryResourceProvider)
+                .map(FHIRRegistryResourceProvider::getRegistryResources)
+                .flatMap(Collection::stream)
+                .collect(Collectors.toList());
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            return pool.submit(() -> (int) registryResources.parallelStream()
+                    .map(FHIRRegistryResource::getResource)
+                    .filter(Objects::nonNull)
+                    .count()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warning("Interrupted while loading registry resources");
+            return 0;
+        } catch (Exception e) {
+            log.warning("Unable to load registry resources due to the following exception: " + e.getMessage());
+            return 0;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     private FHIRRegistryResource findRegistryResource(Class<? extends Resource> resourceType, String url, String version) {
         if (version == null) {
             // find the latest version of the registry resource with the specified resourceType and url (across all providers)
@@ -1,22 +1,33 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
 
 package com.ibm.fhir.registry.util;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -135,15 +146,106 @@ public final class FHIRRegistryUtil {
         return DEFINITIONAL_RESOURCE_TYPES.contains(resourceType);
     }
 
+    /**
+     * System property which may be set to "false" to disable loading resources from package snapshots
+     */
+    public static final String PROPERTY_USE_SNAPSHOTS = "com.ibm.fhir.registry.useSnapshots";
+
+    private static final boolean USE_SNAPSHOTS = Boolean.parseBoolean(System.getProperty(PROPERTY_USE_SNAPSHOTS, "true"));
+
+    // package directory -> snapshot (empty if the package has no usable snapshot)
+    private static final Map<String, Optional<PackageSnapshot>> SNAPSHOTS = new ConcurrentHashMap<>();
+
+    /**
+     * Load the resource at the given classpath location, decoding it from the package snapshot if the snapshot
+     * holds a resource with the same digest as the JSON file, and parsing the JSON file otherwise
+     *
+     * @param path
+     *     the classpath location of the JSON file of the resource
+     * @return
+     *     the resource, or null if it could not be loaded
+     */
     public static Resource loadResource(String path) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(FHIRRegistryUtil.class.getClassLoader().getResourceAsStream(path), StandardCharsets.UTF_8))) {
-            return FHIRParser.parser(Format.JSON).parse(reader);
+        byte[] json;
+        try (InputStream in = FHIRRegistryUtil.class.getClassLoader().getResourceAsStream(path)) {
+            json = readAllBytes(in);
+        } catch (Exception e) {
+            log.warning("Unable to load resource: " + path + " due to the following exception: " + e.getMessage());
+            return null;
+        }
+        if (USE_SNAPSHOTS) {
+            int index = path.lastIndexOf('/');
+            if (index != -1) {
+                PackageSnapshot snapshot = SNAPSHOTS.computeIfAbsent(path.substring(0, index), FHIRRegistryUtil::readSnapshot).orElse(null);
+                if (snapshot != null) {
+                    try {
+                        // a snapshot generated from another version of the file doesn't hold its digest
+                        Resource resource = snapshot.getResource(PackageSnapshot.digest(json));
+                        if (resource != null) {
+                            return resource;
+                        }
+                    } catch (IllegalStateException e) {
+                        log.log(Level.WARNING, "Unable to load resource: " + path + " from package snapshot", e);
+                    }
+                }
+            }
+        }
+        try {
+            return FHIRParser.parser(Format.JSON).parse(new ByteArrayInputStream(json));
         } catch (Exception e) {
             log.warning("Unable to load resource: " + path + " due to the following exception: " + e.getMessage());
         }
         return null;
     }
 
+    private static byte[] readAllBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        byte[] chunk = new byte[16 * 1024];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Read and memory-map the snapshot of the package in the given directory. A snapshot which is not on the file
+     * system, e.g. in a jar, is first copied to a temporary file.
+     *
+     * @param packageDirectory
+     *     the package directory on the classpath
+     * @return
+     *     the snapshot, or an empty optional if the package has no usable snapshot
+     */
+    private static Optional<PackageSnapshot> readSnapshot(String packageDirectory) {
+        String snapshotPath = packageDirectory + "/" + PackageSnapshot.FILE_NAME;
+        URL url = FHIRRegistryUtil.class.getClassLoader().getResource(snapshotPath);
+        if (url == null) {
+            return Optional.empty();
+        }
+        try {
+            if ("file".equals(url.getProtocol())) {
+                return Optional.of(PackageSnapshot.read(map(Paths.get(url.toURI()))));
+            }
+            Path file = Files.createTempFile("fhir-registry-", PackageSnapshot.FILE_NAME);
+            file.toFile().deleteOnExit();
+            try (InputStream in = url.openStream()) {
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return Optional.of(PackageSnapshot.read(map(file)));
+        } catch (Exception e) {
+            log.warning("Unable to read package snapshot: " + snapshotPath + " due to the following exception: " + e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
     public static Collection<FHIRRegistryResource> getRegistryResources(String packageId) {
         List<FHIRRegistryResource> resources = new ArrayList<>();
         String packageDirectory = packageId.replace(".", "/") + "/package";
@@ -0,0 +1,307 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.registry.util.SnapshotCodec.ClassBinding;
+
+/**
+ * A binary snapshot of the resources in a package, stored alongside the package index as ".snapshot.bin".
+ *
+ * <p>Each resource is stored as a direct encoding of its model objects (see {@link SnapshotCodec}), which is
+ * decoded by calling the model builders, without tokenizing the JSON text or building a JSON object tree.
+ * Resources are keyed by the SHA-256 digest of the bytes of their JSON file, so a snapshot which was generated
+ * from other versions of the files simply doesn't hold them, and they are parsed from JSON instead.
+ *
+ * <p>Snapshots are generated and checked against the JSON files during the build of the registry modules, by
+ * {@link PackageSnapshotGenerator}.
+ *
+ * <p>Layout (all integers are big-endian):
+ * <pre>
+ * int magic, int formatVersion
+ * int classCount, classCount * (string className, int elementCount, elementCount * string elementName)
+ * int entryCount, entryCount * (string digest, int offset, int length)
+ * data: the encoded resources, with offsets relative to the start of the data
+ * </pre>
+ * where a string is an int byte length followed by UTF-8 bytes.
+ */
+public class PackageSnapshot {
+    public static final String FILE_NAME = ".snapshot.bin";
+
+    private static final int MAGIC = 0x46534e50; // "FSNP"
+    private static final int FORMAT_VERSION = 2;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ByteBuffer buffer;
+    private final String[] classNames;
+    private final List<List<String>> elementNames;
+    private final Map<String, int[]> entries;
+    private final int dataStart;
+
+    // bound on first use, as most packages only use a part of the model
+    private final ClassBinding[] bindings;
+
+    private PackageSnapshot(ByteBuffer buffer) {
+        ByteBuffer b = buffer.duplicate();
+        if (b.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a package snapshot");
+        }
+        int formatVersion = b.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported package snapshot format version: " + formatVersion);
+        }
+
+        int classCount = b.getInt();
+        this.classNames = new String[classCount];
+        this.elementNames = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            classNames[i] = SnapshotCodec.readString(b);
+            int elementCount = b.getInt();
+            List<String> names = new ArrayList<>(elementCount);
+            for (int j = 0; j < elementCount; j++) {
+                names.add(SnapshotCodec.readString(b));
+            }
+            elementNames.add(names);
+        }
+        this.bindings = new ClassBinding[classCount];
+
+        int entryCount = b.getInt();
+        this.entries = new HashMap<>(entryCount * 2);
+        for (int i = 0; i < entryCount; i++) {
+            String digest = SnapshotCodec.readString(b);
+            entries.put(digest, new int[] { b.getInt(), b.getInt() });
+        }
+
+        this.dataStart = b.position();
+        this.buffer = buffer;
+    }
+
+    /**
+     * Read a snapshot from the given buffer, which is not copied
+     *
+     * @param buffer
+     *     the buffer holding the snapshot, e.g. a memory-mapped file
+     * @return
+     *     the snapshot
+     * @throws IllegalArgumentException
+     *     if the buffer does not hold a snapshot in a supported format
+     */
+    public static PackageSnapshot read(ByteBuffer buffer) {
+        return new PackageSnapshot(buffer);
+    }
+
+    /**
+     * Compute the key of a resource in a snapshot
+     *
+     * @param json
+     *     the bytes of the JSON file of the resource
+     * @return
+     *     the SHA-256 digest of the bytes, as lower case hex
+     */
+    public static String digest(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return
+     *     the number of resources in this snapshot
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Indicates whether this snapshot holds the resource with the given digest
+     *
+     * @param digest
+     *     the digest of the JSON file of the resource
+     * @return
+     *     true if this snapshot holds the resource, otherwise false
+     */
+    public boolean contains(String digest) {
+        return entries.containsKey(digest);
+    }
+
+    /**
+     * @return
+     *     the digests of the resources in this snapshot
+     */
+    public Set<String> getDigests() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Decode the resource with the given digest
+     *
+     * @param digest
+     *     the digest of the JSON file of the resource
+     * @return
+     *     the resource, or null if this snapshot does not hold the resource
+     * @throws IllegalStateException
+     *     if the resource could not be decoded, e.g. because the snapshot was written with another version of the model
+     */
+    public Resource getResource(String digest) {
+        int[] entry = entries.get(digest);
+        if (entry == null) {
+            return null;
+        }
+        // duplicate so that concurrent readers don't share a position
+        ByteBuffer b = buffer.duplicate();
+        b.position(dataStart + entry[0]);
+        b.limit(dataStart + entry[0] + entry[1]);
+        try {
+            return (Resource) SnapshotCodec.read(b, this::binding);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Unable to decode resource: " + digest + " from package snapshot", e);
+        }
+    }
+
+    private ClassBinding binding(int classIndex) {
+        ClassBinding binding = bindings[classIndex];
+        if (binding == null) {
+            // concurrent readers may both bind the class, which is harmless
+            binding = SnapshotCodec.bind(classNames[classIndex], elementNames.get(classIndex));
+            bindings[classIndex] = binding;
+        }
+        return binding;
+    }
+
+    /**
+     * Collects encoded resources and writes them as a snapshot
+     */
+    public static class Writer {
+        private final Map<Class<?>, Integer> classIndexes = new HashMap<>();
+        private final List<Class<?>> classes = new ArrayList<>();
+        private final List<ClassBinding> bindings = new ArrayList<>();
+        private final Map<String, int[]> entries = new LinkedHashMap<>();
+        private final Buffer data = new Buffer();
+        private final DataOutputStream dataOut = new DataOutputStream(data);
+
+        /**
+         * Encode a resource
+         *
+         * @param digest
+         *     the digest of the JSON file of the resource
+         * @param resource
+         *     the resource parsed from the JSON file
+         * @throws IOException
+         */
+        public void add(String digest, Resource resource) throws IOException {
+            int offset = dataOut.size();
+            SnapshotCodec.write(resource, dataOut, this::classIndex);
+            dataOut.flush();
+            entries.put(digest, new int[] { offset, dataOut.size() - offset });
+        }
+
+        /**
+         * Decode a resource which was added to this writer, e.g. to check it against the resource which was added
+         *
+         * @param digest
+         *     the digest of the JSON file of the resource
+         * @return
+         *     the resource, or null if it was not added
+         */
+        public Resource getResource(String digest) {
+            int[] entry = entries.get(digest);
+            if (entry == null) {
+                return null;
+            }
+            return (Resource) SnapshotCodec.read(data.slice(entry[0], entry[1]), bindings::get);
+        }
+
+        private int classIndex(Class<?> modelClass) {
+            Integer index = classIndexes.get(modelClass);
+            if (index == null) {
+                index = classes.size();
+                if (index > Short.MAX_VALUE) {
+                    throw new IllegalStateException("Too many model classes in package snapshot");
+                }
+                classIndexes.put(modelClass, index);
+                classes.add(modelClass);
+                bindings.add(SnapshotCodec.bind(modelClass));
+            }
+            return index;
+        }
+
+        /**
+         * Write the snapshot of the resources added so far
+         *
+         * @param out
+         *     the output stream
+         * @throws IOException
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(FORMAT_VERSION);
+            header.writeInt(classes.size());
+            for (Class<?> modelClass : classes) {
+                writeString(modelClass.getName(), header);
+                List<String> names = SnapshotCodec.getElementNames(modelClass);
+                header.writeInt(names.size());
+                for (String name : names) {
+                    writeString(name, header);
+                }
+            }
+            header.writeInt(entries.size());
+            for (Map.Entry<String, int[]> entry : entries.entrySet()) {
+                writeString(entry.getKey(), header);
+                header.writeInt(entry.getValue()[0]);
+                header.writeInt(entry.getValue()[1]);
+            }
+            data.writeTo(header);
+            header.flush();
+        }
+
+        private static void writeString(String value, DataOutputStream out) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * A byte array output stream whose contents can be read without copying them
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(1024 * 1024);
+        }
+
+        ByteBuffer slice(int offset, int length) {
+            return ByteBuffer.wrap(buf, offset, length);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.registry.util.Index.Entry;
+
+/**
+ * Generates the snapshots of the packages in the build output of a registry module. It is run by the
+ * exec-maven-plugin in the process-classes phase, with the output directories to search for package indexes
+ * (.index.json files) as its arguments.
+ *
+ * <p>A snapshot is only regenerated when the digests of the JSON files of the package have changed. Each
+ * resource decoded from a new snapshot must equal the resource parsed from its JSON file, otherwise the build
+ * fails.
+ */
+public class PackageSnapshotGenerator {
+    private static final Logger log = Logger.getLogger(PackageSnapshotGenerator.class.getName());
+
+    private static final String INDEX_FILE_NAME = ".index.json";
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            Path outputDirectory = Paths.get(arg);
+            if (!Files.isDirectory(outputDirectory)) {
+                continue;
+            }
+            List<Path> packageDirectories;
+            try (Stream<Path> paths = Files.walk(outputDirectory)) {
+                packageDirectories = paths
+                        .filter(path -> INDEX_FILE_NAME.equals(path.getFileName().toString()))
+                        .map(Path::getParent)
+                        .collect(Collectors.toList());
+            }
+            for (Path packageDirectory : packageDirectories) {
+                generate(packageDirectory);
+            }
+        }
+    }
+
+    /**
+     * Generate the snapshot of the package in the given directory from its index and JSON files, unless the
+     * existing snapshot was generated from the same JSON files
+     *
+     * @param packageDirectory
+     *     the package directory on the file system
+     * @throws Exception
+     * @throws IllegalStateException
+     *     if a resource decoded from the snapshot does not equal the resource parsed from its JSON file
+     */
+    public static void generate(Path packageDirectory) throws Exception {
+        Index index = new Index();
+        try (InputStream in = Files.newInputStream(packageDirectory.resolve(INDEX_FILE_NAME))) {
+            index.load(in);
+        }
+
+        // digest -> file name
+        Map<String, String> fileNames = new LinkedHashMap<>();
+        for (Entry entry : index.getEntries()) {
+            Path file = packageDirectory.resolve(entry.getFileName());
+            if (Files.exists(file)) {
+                fileNames.put(PackageSnapshot.digest(Files.readAllBytes(file)), entry.getFileName());
+            }
+        }
+
+        Path snapshotFile = packageDirectory.resolve(PackageSnapshot.FILE_NAME);
+        if (isUpToDate(snapshotFile, fileNames)) {
+            log.fine("Package snapshot is up to date: " + snapshotFile);
+            return;
+        }
+
+        // parse, encode and check one resource at a time, so that only the encoded package is held in memory
+        PackageSnapshot.Writer writer = new PackageSnapshot.Writer();
+        List<String> mismatches = new ArrayList<>();
+        for (Map.Entry<String, String> entry : fileNames.entrySet()) {
+            byte[] json = Files.readAllBytes(packageDirectory.resolve(entry.getValue()));
+            Resource resource = FHIRParser.parser(Format.JSON).parse(new ByteArrayInputStream(json));
+            writer.add(entry.getKey(), resource);
+            if (!resource.equals(writer.getResource(entry.getKey()))) {
+                mismatches.add(entry.getValue());
+            }
+        }
+        if (!mismatches.isEmpty()) {
+            throw new IllegalStateException("Resources decoded from the snapshot of package " + packageDirectory
+                    + " do not match their JSON files: " + mismatches);
+        }
+
+        try (OutputStream out = Files.newOutputStream(snapshotFile)) {
+            writer.writeTo(out);
+        }
+        log.info("Generated package snapshot: " + snapshotFile + " with " + fileNames.size() + " resources");
+    }
+
+    private static boolean isUpToDate(Path snapshotFile, Map<String, String> fileNames) {
+        if (!Files.exists(snapshotFile)) {
+            return false;
+        }
+        try {
+            PackageSnapshot snapshot = PackageSnapshot.read(ByteBuffer.wrap(Files.readAllBytes(snapshotFile)));
+            return snapshot.getDigests().equals(fileNames.keySet());
+        } catch (IOException | RuntimeException e) {
+            // e.g. a snapshot in an older format
+            return false;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+import javax.lang.model.SourceVersion;
+
+import com.ibm.fhir.model.builder.Builder;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ModelSupport.ElementInfo;
+
+/**
+ * Encodes model objects into the binary form stored in package snapshots, and decodes them by calling the
+ * model builders directly, without going through JSON.
+ *
+ * <p>An object is written as the index of its class in the class table of the snapshot, the number of its
+ * elements which have a value, and then each of those elements as its index in the element list of the class,
+ * followed by its value:
+ * <ul>
+ * <li>a repeating element: an int count followed by the objects</li>
+ * <li>an element of a model type: the object</li>
+ * <li>the Java value of a primitive type, or the id or url of an element: a tag followed by the value</li>
+ * </ul>
+ * The class table holds the name and the element names of each class, so that a snapshot written with another
+ * version of the model fails to decode instead of filling in the wrong elements.
+ */
+final class SnapshotCodec {
+    // Tags of the Java values
+    private static final byte STRING = 1;
+    private static final byte TRUE = 2;
+    private static final byte FALSE = 3;
+    private static final byte INTEGER = 4;
+    private static final byte DECIMAL = 5;
+    private static final byte BYTES = 6;
+    private static final byte YEAR = 7;
+    private static final byte YEAR_MONTH = 8;
+    private static final byte DATE = 9;
+    private static final byte DATE_TIME = 10;
+    private static final byte TIME = 11;
+
+    private static final Map<Class<?>, ClassPlan> PLANS = new ConcurrentHashMap<>();
+
+    private SnapshotCodec() { }
+
+    /**
+     * How to read and build the elements of a model class
+     */
+    private static final class ClassPlan {
+        private final Class<?> modelClass;
+        private final List<ElementPlan> elements;
+
+        // creates a builder, or null if the class is abstract
+        private final MethodHandle builderFactory;
+
+        private ClassPlan(Class<?> modelClass) throws ReflectiveOperationException {
+            this.modelClass = modelClass;
+
+            Class<?> builderClass = null;
+            MethodHandle builderFactory = null;
+            if (!Modifier.isAbstract(modelClass.getModifiers())) {
+                Method builderMethod = modelClass.getMethod("builder");
+                builderClass = builderMethod.getReturnType();
+                builderFactory = MethodHandles.publicLookup().unreflect(builderMethod).asType(MethodType.methodType(Object.class));
+            }
+            this.builderFactory = builderFactory;
+
+            List<ElementPlan> elements = new ArrayList<>();
+            for (ElementInfo elementInfo : getElementInfo(modelClass)) {
+                elements.add(new ElementPlan(modelClass, builderClass, elementInfo));
+            }
+            this.elements = Collections.unmodifiableList(elements);
+        }
+
+        /**
+         * Subtypes of the model classes, such as the code subtypes with a value set, have the elements of the
+         * closest model class
+         */
+        private static Collection<ElementInfo> getElementInfo(Class<?> modelClass) {
+            for (Class<?> c = modelClass; c != null; c = c.getSuperclass()) {
+                Collection<ElementInfo> elementInfo = ModelSupport.getElementInfo(c);
+                if (!elementInfo.isEmpty()) {
+                    return elementInfo;
+                }
+            }
+            throw new IllegalArgumentException("Not a model class: " + modelClass.getName());
+        }
+    }
+
+    /**
+     * How to read and set one element of a model class
+     */
+    private static final class ElementPlan {
+        private final String name;
+        private final boolean repeating;
+
+        // true if the values are model objects, rather than the Java values of primitive types
+        private final boolean model;
+
+        private final MethodHandle getter;
+
+        // null if the class is abstract
+        private final MethodHandle setter;
+
+        private ElementPlan(Class<?> modelClass, Class<?> builderClass, ElementInfo elementInfo) throws ReflectiveOperationException {
+            this.name = elementInfo.getName();
+            this.repeating = elementInfo.isRepeating();
+            Class<?> type = elementInfo.getType();
+            this.model = Element.class.isAssignableFrom(type) || Resource.class.isAssignableFrom(type);
+            if (repeating && !model) {
+                throw new IllegalArgumentException("Repeating element '" + name + "' of " + modelClass.getName() + " is not of a model type");
+            }
+
+            MethodType objectGetter = MethodType.methodType(Object.class, Object.class);
+            this.getter = MethodHandles.publicLookup().unreflect(modelClass.getMethod(getterName(name))).asType(objectGetter);
+            if (builderClass != null) {
+                Method setterMethod = builderClass.getMethod(setterName(name), repeating ? Collection.class : type);
+                MethodType objectSetter = MethodType.methodType(Object.class, Object.class, Object.class);
+                this.setter = MethodHandles.publicLookup().unreflect(setterMethod).asType(objectSetter);
+            } else {
+                this.setter = null;
+            }
+        }
+
+        private static String getterName(String name) {
+            return "class".equals(name) ? "getClazz" : "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+
+        private static String setterName(String name) {
+            if ("class".equals(name)) {
+                return "clazz";
+            }
+            return SourceVersion.isKeyword(name) ? "_" + name : name;
+        }
+    }
+
+    /**
+     * The plan of a class in a class table, with its elements in the order of their indexes in the encoded objects
+     */
+    static final class ClassBinding {
+        private final ClassPlan plan;
+        private final ElementPlan[] elements;
+
+        private ClassBinding(ClassPlan plan, ElementPlan[] elements) {
+            this.plan = plan;
+            this.elements = elements;
+        }
+    }
+
+    private static ClassPlan plan(Class<?> modelClass) {
+        ClassPlan plan = PLANS.get(modelClass);
+        if (plan == null) {
+            try {
+                plan = new ClassPlan(modelClass);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Unable to bind the builder of " + modelClass.getName(), e);
+            }
+            PLANS.putIfAbsent(modelClass, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * @return the names of the elements of the model class, in the order of their indexes in the encoded objects
+     */
+    static List<String> getElementNames(Class<?> modelClass) {
+        List<String> names = new ArrayList<>();
+        for (ElementPlan element : plan(modelClass).elements) {
+            names.add(element.name);
+        }
+        return names;
+    }
+
+    /**
+     * Bind a class of the model in this JVM, for objects encoded in this JVM
+     */
+    static ClassBinding bind(Class<?> modelClass) {
+        ClassPlan plan = plan(modelClass);
+        return new ClassBinding(plan, plan.elements.toArray(new ElementPlan[0]));
+    }
+
+    /**
+     * Bind an entry of the class table of a snapshot to the model in this JVM
+     *
+     * @throws IllegalArgumentException
+     *     if the class or one of its elements is not in the model
+     */
+    static ClassBinding bind(String className, List<String> elementNames) {
+        Class<?> modelClass;
+        try {
+            modelClass = Class.forName(className, true, Resource.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown model class: " + className);
+        }
+        ClassPlan plan = plan(modelClass);
+        ElementPlan[] elements = new ElementPlan[elementNames.size()];
+        for (int i = 0; i < elements.length; i++) {
+            for (ElementPlan element : plan.elements) {
+                if (element.name.equals(elementNames.get(i))) {
+                    elements[i] = element;
+                    break;
+                }
+            }
+            if (elements[i] == null) {
+                throw new IllegalArgumentException("Unknown element '" + elementNames.get(i) + "' of " + className);
+            }
+        }
+        return new ClassBinding(plan, elements);
+    }
+
+    /**
+     * Write a model object
+     *
+     * @param object
+     *     the resource or element
+     * @param out
+     *     the output
+     * @param classIndex
+     *     the index of a model class in the class table, which adds the class if it is not there yet
+     */
+    static void write(Object object, DataOutputStream out, ToIntFunction<Class<?>> classIndex) throws IOException {
+        ClassPlan plan = plan(object.getClass());
+        List<ElementPlan> elements = plan.elements;
+        Object[] values = new Object[elements.size()];
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            Object value = get(elements.get(i), object);
+            if (value != null && !(value instanceof List && ((List<?>) value).isEmpty())) {
+                values[i] = value;
+                count++;
+            }
+        }
+
+        out.writeShort(classIndex.applyAsInt(plan.modelClass));
+        out.writeByte(count);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            ElementPlan element = elements.get(i);
+            out.writeByte(i);
+            if (element.repeating) {
+                List<?> list = (List<?>) values[i];
+                out.writeInt(list.size());
+                for (Object item : list) {
+                    write(item, out, classIndex);
+                }
+            } else if (element.model) {
+                write(values[i], out, classIndex);
+            } else {
+                writeJavaValue(values[i], out);
+            }
+        }
+    }
+
+    private static Object get(ElementPlan element, Object object) {
+        try {
+            return element.getter.invokeExact(object);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static void writeJavaValue(Object value, DataOutputStream out) throws IOException {
+        if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) value, out);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            writeString(value.toString(), out);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Year) {
+            out.writeByte(YEAR);
+            out.writeInt(((Year) value).getValue());
+        } else if (value instanceof YearMonth) {
+            YearMonth yearMonth = (YearMonth) value;
+            out.writeByte(YEAR_MONTH);
+            out.writeInt(yearMonth.getYear());
+            out.writeByte(yearMonth.getMonthValue());
+        } else if (value instanceof LocalDate) {
+            out.writeByte(DATE);
+            out.writeLong(((LocalDate) value).toEpochDay());
+        } else if (value instanceof ZonedDateTime) {
+            ZonedDateTime dateTime = (ZonedDateTime) value;
+            out.writeByte(DATE_TIME);
+            out.writeLong(dateTime.toEpochSecond());
+            out.writeInt(dateTime.getNano());
+            writeString(dateTime.getZone().getId(), out);
+        } else if (value instanceof LocalTime) {
+            out.writeByte(TIME);
+            out.writeLong(((LocalTime) value).toNanoOfDay());
+        } else {
+            throw new IllegalArgumentException("Unsupported value type: " + value.getClass().getName());
+        }
+    }
+
+    private static void writeString(String value, DataOutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a model object
+     *
+     * @param b
+     *     the buffer, positioned at the start of the object
+     * @param bindings
+     *     the bindings of the class table
+     * @return
+     *     the resource or element
+     */
+    static Object read(ByteBuffer b, IntFunction<ClassBinding> bindings) {
+        ClassBinding binding = bindings.apply(b.getShort());
+        if (binding.plan.builderFactory == null) {
+            throw new IllegalStateException("Abstract model class: " + binding.plan.modelClass.getName());
+        }
+        try {
+            Object builder = binding.plan.builderFactory.invokeExact();
+            int count = b.get() & 0xff;
+            for (int i = 0; i < count; i++) {
+                ElementPlan element = binding.elements[b.get() & 0xff];
+                Object value;
+                if (element.repeating) {
+                    int size = b.getInt();
+                    List<Object> list = new ArrayList<>(size);
+                    for (int j = 0; j < size; j++) {
+                        list.add(read(b, bindings));
+                    }
+                    value = list;
+                } else if (element.model) {
+                    value = read(b, bindings);
+                } else {
+                    value = readJavaValue(b);
+                }
+                Object unused = element.setter.invokeExact(builder, value);
+            }
+            return ((Builder<?>) builder).build();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static Object readJavaValue(ByteBuffer b) {
+        byte tag = b.get();
+        switch (tag) {
+        case STRING:
+            return readString(b);
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case INTEGER:
+            return b.getInt();
+        case DECIMAL:
+            return new BigDecimal(readString(b));
+        case BYTES: {
+            byte[] bytes = new byte[b.getInt()];
+            b.get(bytes);
+            return bytes;
+        }
+        case YEAR:
+            return Year.of(b.getInt());
+        case YEAR_MONTH:
+            return YearMonth.of(b.getInt(), b.get());
+        case DATE:
+            return LocalDate.ofEpochDay(b.getLong());
+        case DATE_TIME: {
+            Instant instant = Instant.ofEpochSecond(b.getLong(), b.getInt());
+            return ZonedDateTime.ofInstant(instant, ZoneId.of(readString(b)));
+        }
+        case TIME:
+            return LocalTime.ofNanoOfDay(b.getLong());
+        default:
+            throw new IllegalStateException("Invalid value tag: " + tag);
+        }
+    }
+
+    static String readString(ByteBuffer b) {
+        int length = b.getInt();
+        if (b.hasArray()) {
+            String value = new String(b.array(), b.arrayOffset() + b.position(), length, StandardCharsets.UTF_8);
+            b.position(b.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
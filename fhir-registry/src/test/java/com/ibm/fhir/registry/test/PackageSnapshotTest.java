@@ -0,0 +1,234 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.registry.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Binary;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Base64Binary;
+import com.ibm.fhir.model.type.Boolean;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.Coding;
+import com.ibm.fhir.model.type.Date;
+import com.ibm.fhir.model.type.DateTime;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.Extension;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.model.type.Integer;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.Narrative;
+import com.ibm.fhir.model.type.Quantity;
+import com.ibm.fhir.model.type.Reference;
+import com.ibm.fhir.model.type.Time;
+import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.Xhtml;
+import com.ibm.fhir.model.type.code.AdministrativeGender;
+import com.ibm.fhir.model.type.code.NarrativeStatus;
+import com.ibm.fhir.model.type.code.ObservationStatus;
+import com.ibm.fhir.registry.util.PackageSnapshot;
+
+public class PackageSnapshotTest {
+    private static final String PACKAGE_DIRECTORY = "hl7/fhir/core/package/";
+    private static final List<String> FILE_NAMES = Arrays.asList(
+        "CapabilityStatement-base.json",
+        "CodeSystem-observation-status.json",
+        "SearchParameter-individual-birthdate.json",
+        "StructureDefinition-Patient.json",
+        "ValueSet-administrative-gender.json");
+
+    @Test
+    public void testModelRoundTrip() throws Exception {
+        Map<String, Resource> resources = new LinkedHashMap<>();
+        resources.put(digest("patient"), patient());
+        resources.put(digest("observation"), observation());
+        resources.put(digest("binary"), binary());
+        byte[] bytes = write(resources);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        for (PackageSnapshot snapshot : new PackageSnapshot[] { PackageSnapshot.read(ByteBuffer.wrap(bytes)), PackageSnapshot.read(direct) }) {
+            assertEquals(snapshot.size(), resources.size());
+            assertEquals(snapshot.getDigests(), resources.keySet());
+            for (Map.Entry<String, Resource> entry : resources.entrySet()) {
+                assertTrue(snapshot.contains(entry.getKey()));
+                assertEquals(snapshot.getResource(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testPackageRoundTrip() throws Exception {
+        Map<String, Resource> resources = new LinkedHashMap<>();
+        for (String fileName : FILE_NAMES) {
+            byte[] json = readAllBytes(PACKAGE_DIRECTORY + fileName);
+            resources.put(PackageSnapshot.digest(json), FHIRParser.parser(Format.JSON).parse(new ByteArrayInputStream(json)));
+        }
+        PackageSnapshot snapshot = PackageSnapshot.read(ByteBuffer.wrap(write(resources)));
+        for (Map.Entry<String, Resource> entry : resources.entrySet()) {
+            Resource actual = snapshot.getResource(entry.getKey());
+            assertNotNull(actual);
+            assertEquals(actual, entry.getValue());
+        }
+    }
+
+    @Test
+    public void testStaleResource() throws Exception {
+        Map<String, Resource> resources = new LinkedHashMap<>();
+        resources.put(digest("{\"resourceType\":\"Patient\",\"active\":true}"), patient());
+        PackageSnapshot snapshot = PackageSnapshot.read(ByteBuffer.wrap(write(resources)));
+
+        // the JSON file changed after the snapshot was generated
+        String digest = digest("{\"resourceType\":\"Patient\",\"active\":false}");
+        assertFalse(snapshot.contains(digest));
+        assertNull(snapshot.getResource(digest));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testModelMismatch() throws Exception {
+        Map<String, Resource> resources = new LinkedHashMap<>();
+        resources.put("patient", patient());
+        byte[] bytes = write(resources);
+
+        // a snapshot written with a model which had another element name
+        String snapshot = new String(bytes, StandardCharsets.ISO_8859_1);
+        int index = snapshot.indexOf("birthDate");
+        assertTrue(index != -1);
+        bytes[index] = 'B';
+
+        PackageSnapshot.read(ByteBuffer.wrap(bytes)).getResource("patient");
+    }
+
+    @Test
+    public void testDigest() {
+        assertEquals(digest("abc"), "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidSnapshot() throws Exception {
+        PackageSnapshot.read(ByteBuffer.wrap("{\"resourceType\":\"Patient\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private String digest(String json) {
+        return PackageSnapshot.digest(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private byte[] write(Map<String, Resource> resources) throws Exception {
+        PackageSnapshot.Writer writer = new PackageSnapshot.Writer();
+        for (Map.Entry<String, Resource> entry : resources.entrySet()) {
+            writer.add(entry.getKey(), entry.getValue());
+            assertEquals(writer.getResource(entry.getKey()), entry.getValue());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private Patient patient() {
+        return Patient.builder()
+                .id("example")
+                .meta(Meta.builder()
+                    .lastUpdated(Instant.of("2021-03-04T05:06:07.089Z"))
+                    .build())
+                .text(Narrative.builder()
+                    .status(NarrativeStatus.GENERATED)
+                    .div(Xhtml.of("<div xmlns=\"http://www.w3.org/1999/xhtml\">Jane Doe</div>"))
+                    .build())
+                .extension(Extension.builder()
+                    .url("http://example.com/extension")
+                    .value(Integer.of(3))
+                    .build())
+                .active(Boolean.TRUE)
+                .name(HumanName.builder()
+                    .id("name")
+                    .family(string("Doe"))
+                    .given(string("Jane"), string("Ann"))
+                    .build())
+                .gender(AdministrativeGender.FEMALE)
+                .birthDate(Date.of("1970-01"))
+                .deceased(Boolean.FALSE)
+                .build();
+    }
+
+    private Observation observation() {
+        return Observation.builder()
+                .contained(patient())
+                .status(ObservationStatus.FINAL)
+                .code(CodeableConcept.builder()
+                    .coding(Coding.builder()
+                        .system(Uri.of("http://loinc.org"))
+                        .code(Code.of("29463-7"))
+                        .build())
+                    .build())
+                .subject(Reference.builder()
+                    .reference(string("#example"))
+                    .build())
+                .effective(DateTime.of("2021-01-02T03:04:05.678+01:00"))
+                .issued(Instant.of("2021-01-02T03:04:05Z"))
+                .value(Quantity.builder()
+                    .value(Decimal.of("72.50"))
+                    .unit(string("kg"))
+                    .build())
+                .component(Observation.Component.builder()
+                    .code(CodeableConcept.builder()
+                        .text(string("time"))
+                        .build())
+                    .value(Time.of("10:11:12.5"))
+                    .build(),
+                    Observation.Component.builder()
+                    .code(CodeableConcept.builder()
+                        .text(string("year"))
+                        .build())
+                    .value(DateTime.of("2021"))
+                    .build())
+                .build();
+    }
+
+    private Binary binary() {
+        return Binary.builder()
+                .contentType(Code.of("text/plain"))
+                .data(Base64Binary.builder()
+                    .value("snapshot".getBytes(StandardCharsets.UTF_8))
+                    .build())
+                .build();
+    }
+
+    private byte[] readAllBytes(String path) throws Exception {
+        try (InputStream in = PackageSnapshotTest.class.getClassLoader().getResourceAsStream(path)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[16 * 1024];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -72,6 +72,9 @@ public class SearchConstants {
     // _revinclude
     public static final String REVINCLUDE = "_revinclude";
 
+    // :iterate modifier of _include and _revinclude
+    public static final String ITERATE = "iterate";
+
     // _page
     public static final String PAGE = "_page";
 
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -15,12 +15,18 @@ public class InclusionParameter {
     private String joinResourceType;
     private String searchParameter;
     private String searchParameterTargetType;
+    private boolean iterate;
 
     public InclusionParameter(String joinRt, String searchParm, String searchParmTargetType) {
+        this(joinRt, searchParm, searchParmTargetType, false);
+    }
+
+    public InclusionParameter(String joinRt, String searchParm, String searchParmTargetType, boolean iterate) {
         super();
         this.joinResourceType = joinRt;
         this.searchParameter = searchParm;
         this.searchParameterTargetType = searchParmTargetType;
+        this.iterate = iterate;
     }
 
     public String getJoinResourceType() {
@@ -35,6 +41,14 @@ public class InclusionParameter {
         return searchParameterTargetType;
     }
 
+    /**
+     * @return true if the inclusion is also applied to the resources it includes (the :iterate modifier),
+     *     rather than only to the resources matching the search
+     */
+    public boolean isIterate() {
+        return iterate;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -42,6 +56,7 @@ public class InclusionParameter {
         result = prime * result + ((joinResourceType == null) ? 0 : joinResourceType.hashCode());
         result = prime * result + ((searchParameter == null) ? 0 : searchParameter.hashCode());
         result = prime * result + ((searchParameterTargetType == null) ? 0 : searchParameterTargetType.hashCode());
+        result = prime * result + (iterate ? 1231 : 1237);
         return result;
     }
 
@@ -78,13 +93,16 @@ public class InclusionParameter {
         } else if (!searchParameterTargetType.equals(other.searchParameterTargetType)) {
             return false;
         }
+        if (iterate != other.iterate) {
+            return false;
+        }
         return true;
     }
 
     @Override
     public String toString() {
         return "InclusionParameter [joinResourceType=" + joinResourceType + ", searchParameter=" + searchParameter + ", searchParameterTargetType="
-                + searchParameterTargetType + "]";
+                + searchParameterTargetType + ", iterate=" + iterate + "]";
     }
 
 }
@@ -160,6 +160,10 @@ public class UriBuilder {
         for (InclusionParameter param : context.getIncludeParameters()) {
             queryString.append(SearchConstants.AND_CHAR);
             queryString.append(SearchConstants.INCLUDE);
+            if (param.isIterate()) {
+                queryString.append(SearchConstants.COLON_DELIMITER);
+                queryString.append(SearchConstants.ITERATE);
+            }
             queryString.append(SearchConstants.EQUALS_CHAR);
             appendInclusionParamValue(param);
         }
@@ -178,6 +182,10 @@ public class UriBuilder {
         for (InclusionParameter param : context.getRevIncludeParameters()) {
             queryString.append(SearchConstants.AND_CHAR);
             queryString.append(SearchConstants.REVINCLUDE);
+            if (param.isIterate()) {
+                queryString.append(SearchConstants.COLON_DELIMITER);
+                queryString.append(SearchConstants.ITERATE);
+            }
             queryString.append(SearchConstants.EQUALS_CHAR);
             appendInclusionParamValue(param);
         }
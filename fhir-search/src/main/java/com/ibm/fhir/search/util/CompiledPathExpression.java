@@ -0,0 +1,564 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.util;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Quantity;
+import com.ibm.fhir.model.util.ModelSupport;
+import com.ibm.fhir.model.util.ModelSupport.ElementInfo;
+import com.ibm.fhir.path.FHIRPathElementNode;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.FHIRPathQuantityNode;
+import com.ibm.fhir.path.FHIRPathQuantityValue;
+import com.ibm.fhir.path.FHIRPathResourceNode;
+import com.ibm.fhir.path.FHIRPathTree;
+import com.ibm.fhir.path.FHIRPathType;
+
+/**
+ * A search parameter expression compiled into a chain of model getter calls.
+ *
+ * <p>Most of the built-in search parameter expressions only navigate the resource, so evaluating them with
+ * the FHIRPath interpreter costs far more than the navigation itself: a {@link FHIRPathTree} is built over
+ * the whole resource and each expression is walked as a parse tree. This class handles the following subset
+ * of FHIRPath directly against the model classes:
+ * <ul>
+ * <li>paths, e.g. {@code Patient.name.given}</li>
+ * <li>type filters with {@code ofType(T)}, {@code as(T)} and {@code as T}, e.g. {@code (Observation.value as Quantity)}</li>
+ * <li>{@code where(element='literal')}, e.g. {@code Patient.telecom.where(system='phone')}</li>
+ * <li>unions with {@code |}</li>
+ * </ul>
+ * Anything else, such as {@code resolve()}, indexers and the other functions and operators, is left to the
+ * interpreter. The results are the same nodes, in the same order, as the interpreter would return.
+ *
+ * <p>The getters are bound once, when the expression is compiled, as lambdas created with the
+ * {@link LambdaMetafactory}, so evaluating an expression makes plain interface calls rather than reflective ones.
+ * The selected nodes carry the primitive value of the selected element, like the nodes of the interpreter, but not
+ * its children: the callers only need the selected element itself, so no tree is built below it.
+ *
+ * <p>Expressions are compiled once per resource type and cached, because the same expression may navigate
+ * different elements on different resource types, e.g. for search parameters with more than one base.
+ */
+public class CompiledPathExpression {
+    private static final Logger log = Logger.getLogger(CompiledPathExpression.class.getName());
+
+    // Compiled expressions by resource type and expression, with an empty value for expressions outside of the subset
+    private static final Map<Class<?>, Map<String, Optional<CompiledPathExpression>>> CACHE = new ConcurrentHashMap<>();
+
+    // The branches of the union, or a single branch if the expression has no union
+    private final List<Branch> branches;
+
+    private CompiledPathExpression(List<Branch> branches) {
+        this.branches = branches;
+    }
+
+    /**
+     * Get the compiled form of the expression for the resource type
+     *
+     * @param resourceType
+     *     the resource type the expression will be evaluated against
+     * @param expression
+     *     the FHIRPath expression
+     * @return
+     *     the compiled expression, or null if the expression is outside of the subset which can be compiled
+     */
+    public static CompiledPathExpression compile(Class<? extends Resource> resourceType, String expression) {
+        Map<String, Optional<CompiledPathExpression>> expressions = CACHE.computeIfAbsent(resourceType, k -> new ConcurrentHashMap<>());
+        return expressions.computeIfAbsent(expression, k -> Optional.ofNullable(new Compiler(resourceType, expression).compile())).orElse(null);
+    }
+
+    /**
+     * Evaluate the expression against the resource
+     *
+     * @param resource
+     *     the resource, which must be of the resource type the expression was compiled for
+     * @return
+     *     the selected nodes
+     */
+    public List<FHIRPathNode> evaluate(Resource resource) {
+        if (branches.size() == 1) {
+            return toNodes(branches.get(0).evaluate(resource));
+        }
+
+        // Unions remove duplicates, as in the interpreter
+        Set<FHIRPathNode> union = new LinkedHashSet<>();
+        for (Branch branch : branches) {
+            union.addAll(toNodes(branch.evaluate(resource)));
+        }
+        return new ArrayList<>(union);
+    }
+
+    /**
+     * Wrap the selected model objects in nodes, with the primitive values that the nodes of the interpreter
+     * would have, but without their children.
+     */
+    private static List<FHIRPathNode> toNodes(List<Object> values) {
+        if (values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<FHIRPathNode> result = new ArrayList<>(values.size());
+        for (Object value : values) {
+            result.add(toNode(value));
+        }
+        return result;
+    }
+
+    private static FHIRPathNode toNode(Object value) {
+        if (value instanceof Resource) {
+            return FHIRPathResourceNode.resourceNode((Resource) value);
+        }
+        if (value instanceof Quantity) {
+            Quantity quantity = (Quantity) value;
+            FHIRPathQuantityNode.Builder builder = FHIRPathQuantityNode.builder(quantity);
+            FHIRPathQuantityValue quantityValue = FHIRPathQuantityValue.quantityValue(quantity);
+            if (quantityValue != null) {
+                builder.value(quantityValue);
+            }
+            return builder.build();
+        }
+        if (ModelSupport.isPrimitiveType(value.getClass())) {
+            // a primitive only has its id and extensions below it, and the tree converts its value
+            return FHIRPathTree.tree((Element) value).getRoot();
+        }
+        return FHIRPathElementNode.elementNode((Element) value);
+    }
+
+    /**
+     * A single path, applied step by step to the resource
+     */
+    private static class Branch {
+        private final List<Step> steps = new ArrayList<>();
+
+        // The model class of the values selected so far, if known at compile time
+        private Class<?> staticType;
+
+        // True if the path can never select anything for this resource type
+        private boolean empty;
+
+        private Branch(Class<?> staticType) {
+            this.staticType = staticType;
+        }
+
+        private List<Object> evaluate(Resource resource) {
+            if (empty) {
+                return Collections.emptyList();
+            }
+            List<Object> current = Collections.singletonList(resource);
+            for (Step step : steps) {
+                List<Object> next = new ArrayList<>();
+                for (Object value : current) {
+                    step.apply(value, next);
+                }
+                if (next.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                current = next;
+            }
+            return current;
+        }
+    }
+
+    private interface Step {
+        /**
+         * Add the values selected from value to result
+         */
+        void apply(Object value, List<Object> result);
+    }
+
+    /**
+     * Navigate to a child element, like a member invocation
+     */
+    private static class GetterStep implements Step {
+        private final Function<Object, Object> getter;
+        private final boolean repeating;
+
+        private GetterStep(Function<Object, Object> getter, boolean repeating) {
+            this.getter = getter;
+            this.repeating = repeating;
+        }
+
+        @Override
+        public void apply(Object value, List<Object> result) {
+            Object child = getter.apply(value);
+            if (child == null) {
+                return;
+            }
+            if (repeating) {
+                for (Object item : (List<?>) child) {
+                    if (item != null) {
+                        result.add(item);
+                    }
+                }
+            } else {
+                result.add(child);
+            }
+        }
+    }
+
+    /**
+     * Keep the values of the given type, like the ofType function and the as operator and function
+     */
+    private static class TypeFilterStep implements Step {
+        private final FHIRPathType type;
+
+        private TypeFilterStep(FHIRPathType type) {
+            this.type = type;
+        }
+
+        @Override
+        public void apply(Object value, List<Object> result) {
+            if (type.isAssignableFrom(FHIRPathType.from(value.getClass()))) {
+                result.add(value);
+            }
+        }
+    }
+
+    /**
+     * Keep the values whose primitive child element equals the literal, like where(element='literal')
+     */
+    private static class WhereEqualsStep implements Step {
+        private final Function<Object, Object> getter;
+        private final Function<Object, Object> valueGetter;
+        private final String literal;
+
+        private WhereEqualsStep(Function<Object, Object> getter, Function<Object, Object> valueGetter, String literal) {
+            this.getter = getter;
+            this.valueGetter = valueGetter;
+            this.literal = literal;
+        }
+
+        @Override
+        public void apply(Object value, List<Object> result) {
+            Object child = getter.apply(value);
+            if (child != null && literal.equals(valueGetter.apply(child))) {
+                result.add(value);
+            }
+        }
+    }
+
+    /**
+     * Signals that the expression is outside of the subset which can be compiled
+     */
+    private static class UnsupportedExpressionException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedExpressionException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A recursive descent parser for the supported subset, which builds the steps as it goes
+     */
+    private static class Compiler {
+        private final Class<? extends Resource> resourceType;
+        private final String expression;
+        private int pos = 0;
+
+        private Compiler(Class<? extends Resource> resourceType, String expression) {
+            this.resourceType = resourceType;
+            this.expression = expression;
+        }
+
+        private CompiledPathExpression compile() {
+            try {
+                List<Branch> branches = parseUnion();
+                skipWhitespace();
+                if (pos != expression.length()) {
+                    throw new UnsupportedExpressionException("unexpected '" + expression.charAt(pos) + "' at position " + pos);
+                }
+                return new CompiledPathExpression(branches);
+            } catch (UnsupportedExpressionException | RuntimeException e) {
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Expression [" + expression + "] for " + resourceType.getSimpleName()
+                            + " is evaluated by the FHIRPath interpreter: " + e.getMessage());
+                }
+                return null;
+            }
+        }
+
+        // union : term ('|' term)*
+        private List<Branch> parseUnion() throws UnsupportedExpressionException {
+            List<Branch> branches = new ArrayList<>(parseTerm());
+            while (accept('|')) {
+                branches.addAll(parseTerm());
+            }
+            return branches;
+        }
+
+        // term : ('(' union ')' | identifier) ('.' invocation)* ('as' typeSpecifier)?
+        private List<Branch> parseTerm() throws UnsupportedExpressionException {
+            Branch branch;
+            if (accept('(')) {
+                List<Branch> inner = parseUnion();
+                expect(')');
+                if (inner.size() > 1) {
+                    // a union in parentheses can only be merged into the outer union if nothing is applied to it
+                    if (peek('.') || peekKeyword("as")) {
+                        throw new UnsupportedExpressionException("invocation on a union");
+                    }
+                    return inner;
+                }
+                branch = inner.get(0);
+            } else {
+                branch = new Branch(resourceType);
+                String identifier = parseIdentifier();
+                // the expression is evaluated against the resource, so a leading type name selects the resource itself
+                if (!closure(resourceType).contains(identifier)) {
+                    member(branch, identifier);
+                }
+            }
+            while (accept('.')) {
+                parseInvocation(branch);
+            }
+            if (acceptKeyword("as")) {
+                typeFilter(branch, parseTypeSpecifier());
+            }
+            return Collections.singletonList(branch);
+        }
+
+        // invocation : identifier | ('ofType' | 'as') '(' typeSpecifier ')' | 'where' '(' identifier '=' string ')'
+        private void parseInvocation(Branch branch) throws UnsupportedExpressionException {
+            String identifier = parseIdentifier();
+            if (!accept('(')) {
+                if (!branch.empty && closure(branch.staticType).contains(identifier)) {
+                    // the interpreter treats this as a type name when the input is a single value
+                    throw new UnsupportedExpressionException("ambiguous identifier '" + identifier + "'");
+                }
+                member(branch, identifier);
+                return;
+            }
+            switch (identifier) {
+            case "ofType":
+            case "as":
+                typeFilter(branch, parseTypeSpecifier());
+                break;
+            case "where":
+                where(branch);
+                break;
+            default:
+                throw new UnsupportedExpressionException("function '" + identifier + "'");
+            }
+            expect(')');
+        }
+
+        private void member(Branch branch, String name) throws UnsupportedExpressionException {
+            if (branch.empty) {
+                return;
+            }
+            Class<?> type = branch.staticType;
+            if (type == null) {
+                throw new UnsupportedExpressionException("navigation from a value of unknown type");
+            }
+            ElementInfo elementInfo = ModelSupport.getElementInfo(type, name);
+            if (elementInfo == null) {
+                if (Modifier.isAbstract(type.getModifiers())) {
+                    // a subtype could have the element
+                    throw new UnsupportedExpressionException("element '" + name + "' of abstract type " + type.getSimpleName());
+                }
+                // the interpreter selects nothing for an element the type doesn't have
+                branch.empty = true;
+                return;
+            }
+            Class<?> elementType = elementInfo.getType();
+            if (!Element.class.isAssignableFrom(elementType) && !Resource.class.isAssignableFrom(elementType)) {
+                throw new UnsupportedExpressionException("element '" + name + "' is not a FHIR element");
+            }
+            branch.steps.add(new GetterStep(getter(type, name), elementInfo.isRepeating()));
+            // the type of a choice element is only known after a type filter
+            branch.staticType = elementInfo.isChoice() ? null : elementType;
+        }
+
+        private void typeFilter(Branch branch, String typeName) throws UnsupportedExpressionException {
+            FHIRPathType type = FHIRPathType.from(typeName);
+            if (type == null || type.modelClass() == null || FHIRPathType.isSystemType(type)) {
+                // the interpreter compares System types against the primitive value rather than the element
+                throw new UnsupportedExpressionException("type '" + typeName + "'");
+            }
+            if (branch.empty) {
+                return;
+            }
+            branch.steps.add(new TypeFilterStep(type));
+            branch.staticType = type.modelClass();
+        }
+
+        private void where(Branch branch) throws UnsupportedExpressionException {
+            String name = parseIdentifier();
+            expect('=');
+            String literal = parseString();
+            if (branch.empty) {
+                return;
+            }
+            Class<?> type = branch.staticType;
+            if (type == null || closure(type).contains(name)) {
+                throw new UnsupportedExpressionException("where on a value of unknown type");
+            }
+            ElementInfo elementInfo = ModelSupport.getElementInfo(type, name);
+            if (elementInfo == null || elementInfo.isRepeating() || elementInfo.isChoice()) {
+                throw new UnsupportedExpressionException("where on element '" + name + "'");
+            }
+            Method valueGetter;
+            try {
+                valueGetter = elementInfo.getType().getMethod("getValue");
+            } catch (NoSuchMethodException e) {
+                throw new UnsupportedExpressionException("where on non-primitive element '" + name + "'");
+            }
+            if (!String.class.equals(valueGetter.getReturnType())) {
+                throw new UnsupportedExpressionException("where on non-string element '" + name + "'");
+            }
+            branch.steps.add(new WhereEqualsStep(getter(type, name), bind(valueGetter), literal));
+        }
+
+        private Function<Object, Object> getter(Class<?> type, String name) throws UnsupportedExpressionException {
+            // element names which are Java keywords are encoded in the model, e.g. class as clazz
+            String getterName = "class".equals(name) ? "getClazz" : "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            try {
+                return bind(type.getMethod(getterName));
+            } catch (NoSuchMethodException e) {
+                throw new UnsupportedExpressionException("no getter for element '" + name + "' of " + type.getSimpleName());
+            }
+        }
+
+        /**
+         * Bind the getter as a lambda, which the JIT can inline like a direct call
+         */
+        @SuppressWarnings("unchecked")
+        private Function<Object, Object> bind(Method getter) throws UnsupportedExpressionException {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodHandle handle = lookup.unreflect(getter);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class), handle, handle.type());
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new UnsupportedExpressionException("unable to bind " + getter + ": " + t.getMessage());
+            }
+        }
+
+        /**
+         * The type names which the interpreter matches against a single input value of this type, instead of
+         * navigating to a child element
+         */
+        private Set<String> closure(Class<?> type) {
+            Set<String> closure = new LinkedHashSet<>();
+            FHIRPathType pathType = FHIRPathType.from(type);
+            while (pathType != null && !FHIRPathType.FHIR_ANY.equals(pathType)) {
+                closure.add(pathType.getName());
+                pathType = pathType.baseType();
+            }
+            return closure;
+        }
+
+        // typeSpecifier : identifier ('.' identifier)?
+        private String parseTypeSpecifier() throws UnsupportedExpressionException {
+            String typeName = parseIdentifier();
+            if (("FHIR".equals(typeName) || "System".equals(typeName)) && accept('.')) {
+                typeName = typeName + "." + parseIdentifier();
+            }
+            return typeName;
+        }
+
+        private String parseIdentifier() throws UnsupportedExpressionException {
+            skipWhitespace();
+            int start = pos;
+            if (pos < expression.length() && expression.charAt(pos) == '`') {
+                int end = expression.indexOf('`', pos + 1);
+                if (end == -1) {
+                    throw new UnsupportedExpressionException("unterminated identifier");
+                }
+                pos = end + 1;
+                return expression.substring(start + 1, end);
+            }
+            while (pos < expression.length() && (Character.isLetterOrDigit(expression.charAt(pos)) || expression.charAt(pos) == '_')) {
+                pos++;
+            }
+            if (pos == start || Character.isDigit(expression.charAt(start))) {
+                throw new UnsupportedExpressionException("expected an identifier at position " + start);
+            }
+            return expression.substring(start, pos);
+        }
+
+        private String parseString() throws UnsupportedExpressionException {
+            skipWhitespace();
+            if (pos >= expression.length() || expression.charAt(pos) != '\'') {
+                throw new UnsupportedExpressionException("expected a string at position " + pos);
+            }
+            int end = expression.indexOf('\'', pos + 1);
+            if (end == -1) {
+                throw new UnsupportedExpressionException("unterminated string");
+            }
+            String literal = expression.substring(pos + 1, end);
+            if (literal.indexOf('\\') != -1) {
+                throw new UnsupportedExpressionException("escape sequence in string");
+            }
+            pos = end + 1;
+            return literal;
+        }
+
+        private boolean peek(char c) {
+            skipWhitespace();
+            return pos < expression.length() && expression.charAt(pos) == c;
+        }
+
+        private boolean accept(char c) {
+            if (peek(c)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) throws UnsupportedExpressionException {
+            if (!accept(c)) {
+                throw new UnsupportedExpressionException("expected '" + c + "' at position " + pos);
+            }
+        }
+
+        private boolean peekKeyword(String keyword) {
+            skipWhitespace();
+            int end = pos + keyword.length();
+            return expression.startsWith(keyword, pos)
+                    && (end == expression.length() || !Character.isLetterOrDigit(expression.charAt(end)));
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            if (peekKeyword(keyword)) {
+                pos += keyword.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
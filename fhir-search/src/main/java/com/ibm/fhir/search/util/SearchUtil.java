@@ -33,6 +33,8 @@ import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.config.PropertyGroup;
 import com.ibm.fhir.config.PropertyGroup.PropertyEntry;
+import com.ibm.fhir.config.metrics.RequestPhase;
+import com.ibm.fhir.config.metrics.RequestTimings;
 import com.ibm.fhir.core.FHIRConstants;
 import com.ibm.fhir.model.resource.Resource;
 import com.ibm.fhir.model.resource.SearchParameter;
@@ -603,7 +605,7 @@ public class SearchUtil {
      * a matching type.
      * <p>
      * If inclusion keyword is '_revinclude', search parameter must have a target resource type matching the resource
-     * type being searched.
+     * type being searched, unless the inclusion is iterated, in which case it is handled like an '_include'.
      *
      * @param resourceType
      *     the resource type being searched for
@@ -613,19 +615,21 @@ public class SearchUtil {
      *     the target resource type for included resources
      * @param inclusionKeyword
      *     the inclusion type, either _include or _revinclude
+     * @param iterate
+     *     whether the inclusion has the :iterate modifier
      * @return
      *         the inclusion SearchParameters for type {@code resourceType} or empty map if none exist
      * @throws Exception
      */
     private static Map<String, SearchParameter> getInclusionWildcardSearchParameters(String resourceType, String joinResourceType,
-        String searchParameterTargetType, String inclusionKeyword) throws Exception {
+        String searchParameterTargetType, String inclusionKeyword, boolean iterate) throws Exception {
         Map<String, SearchParameter> inclusionSearchParameters = new HashMap<>();
 
         for (SearchParameter searchParameter : getApplicableSearchParameters(joinResourceType)) {
             if (SearchParamType.REFERENCE.equals(searchParameter.getType()) &&
-                    ((SearchConstants.INCLUDE.equals(inclusionKeyword)
+                    (((SearchConstants.INCLUDE.equals(inclusionKeyword) || iterate)
                             && (searchParameterTargetType == null || isValidTargetType(searchParameterTargetType, searchParameter))) ||
-                    (SearchConstants.REVINCLUDE.equals(inclusionKeyword) && isValidTargetType(resourceType, searchParameter)))) {
+                    (SearchConstants.REVINCLUDE.equals(inclusionKeyword) && !iterate && isValidTargetType(resourceType, searchParameter)))) {
                 // Valid search parameter of type reference - add to map
                 inclusionSearchParameters.put(searchParameter.getCode().getValue(), searchParameter);
             } else if (inclusionSearchParameters.containsKey(searchParameter.getCode().getValue())) {
@@ -660,6 +664,7 @@ public class SearchUtil {
      */
     public static Map<SearchParameter, List<FHIRPathNode>> extractParameterValues(Resource resource, boolean skipEmpty)
             throws Exception {
+        long start = System.nanoTime();
 
         Map<SearchParameter, List<FHIRPathNode>> result = new LinkedHashMap<>();
 
@@ -668,7 +673,9 @@ public class SearchUtil {
 
         // Create one time.
         FHIRPathEvaluator evaluator = FHIRPathEvaluator.evaluator();
-        EvaluationContext evaluationContext = new EvaluationContext(resource);
+
+        // Only created if an expression can't be compiled, because this builds a FHIRPathTree over the whole resource
+        EvaluationContext evaluationContext = null;
 
         List<SearchParameter> parameters = getApplicableSearchParameters(resourceType.getSimpleName());
 
@@ -694,7 +701,16 @@ public class SearchUtil {
                 continue;
             }
             try {
-                Collection<FHIRPathNode> tmpResults = evaluator.evaluate(evaluationContext, expression.getValue());
+                Collection<FHIRPathNode> tmpResults;
+                CompiledPathExpression compiled = CompiledPathExpression.compile(resource.getClass(), expression.getValue());
+                if (compiled != null) {
+                    tmpResults = compiled.evaluate(resource);
+                } else {
+                    if (evaluationContext == null) {
+                        evaluationContext = new EvaluationContext(resource);
+                    }
+                    tmpResults = evaluator.evaluate(evaluationContext, expression.getValue());
+                }
 
                 if (log.isLoggable(Level.FINEST)) {
                     log.finest("Expression [" + expression.getValue() + "] parameter-code ["
@@ -713,6 +729,7 @@ public class SearchUtil {
             }
         }
 
+        RequestTimings.record(RequestPhase.PARAMETER_EXTRACTION, start);
         return result;
     }
 
@@ -741,7 +758,9 @@ public class SearchUtil {
 
         // Check for unsupported uses of _include/_revinclude
         if (queryParameters.containsKey(SearchConstants.INCLUDE)
-                || queryParameters.containsKey(SearchConstants.REVINCLUDE)) {
+                || queryParameters.containsKey(SearchConstants.REVINCLUDE)
+                || queryParameters.containsKey(SearchConstants.INCLUDE + SearchConstants.COLON_DELIMITER_STR + SearchConstants.ITERATE)
+                || queryParameters.containsKey(SearchConstants.REVINCLUDE + SearchConstants.COLON_DELIMITER_STR + SearchConstants.ITERATE)) {
             // Make sure _sort is not present with _include and/or _revinclude.
             // TODO: do we really need to forbid this?
             if (queryParameters.containsKey(SearchConstants.SORT)) {
@@ -1459,7 +1478,9 @@ public class SearchUtil {
     }
 
     public static boolean isSearchResultParameter(String name) {
-        return SearchConstants.SEARCH_RESULT_PARAMETER_NAMES.contains(name);
+        return SearchConstants.SEARCH_RESULT_PARAMETER_NAMES.contains(name)
+                || name.startsWith(SearchConstants.INCLUDE + SearchConstants.COLON_DELIMITER_STR)
+                || name.startsWith(SearchConstants.REVINCLUDE + SearchConstants.COLON_DELIMITER_STR);
     }
 
     public static boolean isSearchSingletonParameter(String name) {
@@ -1974,7 +1995,7 @@ public class SearchUtil {
      * @param context
      *     the search context
      * @param inclusionKeyword
-     *     the type of inclusion, either '_include' or '_revinclude'
+     *     the type of inclusion, either '_include' or '_revinclude', optionally with the ':iterate' modifier
      * @param inclusionValues
      *     the inclusion values, each containing joinResourceType, searchParameterName,
      *     and optionally searchParameterTargetType, colon-delimited
@@ -1982,9 +2003,23 @@ public class SearchUtil {
      *     the validation level
      * @throws Exception
      */
-    private static void parseInclusionParameter(Class<?> resourceType, FHIRSearchContext context, String inclusionKeyword, List<String> inclusionValues,
+    private static void parseInclusionParameter(Class<?> resourceType, FHIRSearchContext context, String inclusionParameterName, List<String> inclusionValues,
         boolean lenient) throws Exception {
 
+        // Split off the :iterate modifier, which applies the inclusion to the included resources as well
+        String inclusionKeyword = inclusionParameterName;
+        boolean iterate = false;
+        int modifierIndex = inclusionParameterName.indexOf(SearchConstants.COLON_DELIMITER);
+        if (modifierIndex > 0) {
+            inclusionKeyword = inclusionParameterName.substring(0, modifierIndex);
+            String modifier = inclusionParameterName.substring(modifierIndex + 1);
+            if (!SearchConstants.ITERATE.equals(modifier)) {
+                manageException("Modifier '" + modifier + "' is not supported for " + inclusionKeyword, lenient);
+                return;
+            }
+            iterate = true;
+        }
+
         String[] inclusionValueParts;
         String joinResourceType;
         String searchParameterName;
@@ -1992,7 +2027,6 @@ public class SearchUtil {
         String searchParameterTargetType;
 
         SearchParameter searchParm;
-        InclusionParameter newInclusionParm;
         List<InclusionParameter> newInclusionParms = null;
 
         List<String> allowedIncludes = getSearchPropertyRestrictions(resourceType.getSimpleName(), SEARCH_PROPERTY_TYPE_INCLUDE);
@@ -2013,8 +2047,14 @@ public class SearchUtil {
 
             if (SearchConstants.INCLUDE.equals(inclusionKeyword)) {
 
-                // For _include parameter, join resource type must match resource type being searched
-                if (!joinResourceType.equals(resourceType.getSimpleName())) {
+                // For _include parameter, join resource type must match resource type being searched, but an iterated
+                // _include applies to the included resources, so it only needs to be a valid resource type
+                if (iterate) {
+                    if (!ModelSupport.isResourceType(joinResourceType)) {
+                        manageException("'" + joinResourceType + "' is not a valid resource type.", lenient);
+                        continue;
+                    }
+                } else if (!joinResourceType.equals(resourceType.getSimpleName())) {
                     manageException("The join resource type must match the resource type being searched.", lenient);
                     continue;
                 }
@@ -2035,8 +2075,9 @@ public class SearchUtil {
                     continue;
                 }
 
-                // For _revinclude parameter, target resource type, if specified, must match resource type being searched
-                if (searchParameterTargetType != null && !searchParameterTargetType.equals(resourceType.getSimpleName())) {
+                // For _revinclude parameter, target resource type, if specified, must match resource type being searched,
+                // unless the _revinclude is iterated over the included resources
+                if (!iterate && searchParameterTargetType != null && !searchParameterTargetType.equals(resourceType.getSimpleName())) {
                     manageException("The search parameter target type must match the resource type being searched.", lenient);
                     continue;
                 }
@@ -2052,7 +2093,7 @@ public class SearchUtil {
             // Ensure that the Inclusion Parameter being parsed is a valid search parameter of type 'reference'.
             Map<String, SearchParameter> searchParametersMap;
             if (SearchConstants.WILDCARD.equals(searchParameterName)) {
-                searchParametersMap = getInclusionWildcardSearchParameters(resourceType.getSimpleName(), joinResourceType, searchParameterTargetType, inclusionKeyword);
+                searchParametersMap = getInclusionWildcardSearchParameters(resourceType.getSimpleName(), joinResourceType, searchParameterTargetType, inclusionKeyword, iterate);
                 if (searchParametersMap.isEmpty()) {
                     log.fine("No valid inclusion parameters found for wildcard search.");
                 }
@@ -2073,12 +2114,12 @@ public class SearchUtil {
                 for (Map.Entry<String, SearchParameter> entry : searchParametersMap.entrySet()) {
                     if (inclusionKeyword.equals(SearchConstants.INCLUDE)) {
                         newInclusionParms =
-                                buildIncludeParameter(resourceType, joinResourceType, entry.getValue(), entry.getKey(), searchParameterTargetType);
+                                buildIncludeParameter(resourceType, joinResourceType, entry.getValue(), entry.getKey(), searchParameterTargetType, iterate);
                         context.getIncludeParameters().addAll(newInclusionParms);
                     } else {
-                        newInclusionParm =
-                                buildRevIncludeParameter(resourceType, joinResourceType, entry.getValue(), entry.getKey(), searchParameterTargetType);
-                        context.getRevIncludeParameters().add(newInclusionParm);
+                        newInclusionParms =
+                                buildRevIncludeParameter(resourceType, joinResourceType, entry.getValue(), entry.getKey(), searchParameterTargetType, iterate);
+                        context.getRevIncludeParameters().addAll(newInclusionParms);
                     }
                 }
             } catch (FHIRSearchException e) {
@@ -2152,7 +2193,7 @@ public class SearchUtil {
      * @throws FHIRSearchException
      */
     private static List<InclusionParameter> buildIncludeParameter(Class<?> resourceType, String joinResourceType, SearchParameter searchParm,
-        String searchParameterName, String searchParameterTargetType) throws FHIRSearchException {
+        String searchParameterName, String searchParameterTargetType, boolean iterate) throws FHIRSearchException {
 
         List<InclusionParameter> includeParms = new ArrayList<>();
 
@@ -2162,7 +2203,7 @@ public class SearchUtil {
             for (Code targetType : searchParm.getTarget()) {
                 searchParameterTargetType = targetType.getValue();
                 includeParms
-                        .add(new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType));
+                        .add(new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType, iterate));
             }
         }
         // Validate the specified target type is correct.
@@ -2170,7 +2211,7 @@ public class SearchUtil {
             if (!isValidTargetType(searchParameterTargetType, searchParm)) {
                 throw SearchExceptionUtil.buildNewInvalidSearchException(INVALID_TARGET_TYPE_EXCEPTION);
             }
-            includeParms.add(new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType));
+            includeParms.add(new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType, iterate));
         }
         return includeParms;
     }
@@ -2181,8 +2222,13 @@ public class SearchUtil {
      *
      * @throws FHIRSearchException
      */
-    private static InclusionParameter buildRevIncludeParameter(Class<?> resourceType, String joinResourceType, SearchParameter searchParm,
-        String searchParameterName, String searchParameterTargetType) throws FHIRSearchException {
+    private static List<InclusionParameter> buildRevIncludeParameter(Class<?> resourceType, String joinResourceType, SearchParameter searchParm,
+        String searchParameterName, String searchParameterTargetType, boolean iterate) throws FHIRSearchException {
+
+        // An iterated _revinclude may reference any of the included resources, so it targets the same types as an _include
+        if (iterate) {
+            return buildIncludeParameter(resourceType, joinResourceType, searchParm, searchParameterName, searchParameterTargetType, true);
+        }
 
         // Verify that the search parameter target type is correct
         if (searchParameterTargetType == null) {
@@ -2191,7 +2237,7 @@ public class SearchUtil {
         if (!isValidTargetType(searchParameterTargetType, searchParm)) {
             throw SearchExceptionUtil.buildNewInvalidSearchException(INVALID_TARGET_TYPE_EXCEPTION);
         }
-        return new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType);
+        return Collections.singletonList(new InclusionParameter(joinResourceType, searchParameterName, searchParameterTargetType));
 
     }
 
@@ -0,0 +1,158 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.search.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Observation;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.resource.SearchParameter;
+import com.ibm.fhir.model.type.Code;
+import com.ibm.fhir.model.type.CodeableConcept;
+import com.ibm.fhir.model.type.ContactPoint;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.HumanName;
+import com.ibm.fhir.model.type.Quantity;
+import com.ibm.fhir.model.type.Reference;
+import com.ibm.fhir.model.type.code.ContactPointSystem;
+import com.ibm.fhir.model.type.code.ObservationStatus;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.search.util.CompiledPathExpression;
+import com.ibm.fhir.search.util.SearchUtil;
+
+/**
+ * Tests that {@link CompiledPathExpression} selects the same nodes as the FHIRPath interpreter
+ */
+public class CompiledPathExpressionTest extends BaseSearchTest {
+    private static final String[] TEST_FILES = {
+        "extract/observation-empty.json",
+        "extract/observation-full.json",
+        "extract/observation-some.json",
+        "extract/patient-deceased-boolean.json",
+        "extract/patient-deceased-time.json",
+        "extract/insuranceplan-alias.json",
+        "extract/insuranceplan-name.json",
+        "extract/tag-test.json"
+    };
+
+    @Override
+    @BeforeClass
+    public void setup() {
+        FHIRConfiguration.setConfigHome("target/test-classes");
+    }
+
+    private Patient patient() {
+        return Patient.builder()
+                .id("p1")
+                .name(HumanName.builder().family(string("Doe")).given(string("John"), string("J")).build())
+                .telecom(ContactPoint.builder().system(ContactPointSystem.PHONE).value(string("555-1234")).build(),
+                    ContactPoint.builder().system(ContactPointSystem.EMAIL).value(string("john@example.com")).build(),
+                    ContactPoint.builder().system(ContactPointSystem.PHONE).value(string("555-1234")).build())
+                .build();
+    }
+
+    private Observation observation() {
+        return Observation.builder()
+                .status(ObservationStatus.FINAL)
+                .code(CodeableConcept.builder().text(string("weight")).build())
+                .subject(Reference.builder().reference(string("Patient/p1")).build())
+                .value(Quantity.builder().value(Decimal.of(70)).unit(string("kg")).code(Code.of("kg")).build())
+                .build();
+    }
+
+    private void assertSameAsInterpreter(Resource resource, String expression) throws Exception {
+        CompiledPathExpression compiled = CompiledPathExpression.compile(resource.getClass(), expression);
+        assertNotNull(compiled, expression);
+        Collection<FHIRPathNode> expected = FHIRPathEvaluator.evaluator().evaluate(new EvaluationContext(resource), expression);
+        assertEquals(compiled.evaluate(resource), new ArrayList<>(expected), expression);
+    }
+
+    @Test
+    public void testPath() throws Exception {
+        assertSameAsInterpreter(patient(), "Patient.name.given");
+        assertEquals(CompiledPathExpression.compile(Patient.class, "Patient.name.given").evaluate(patient()).size(), 2);
+        assertSameAsInterpreter(patient(), "Resource.meta.lastUpdated");
+        assertSameAsInterpreter(patient(), "Patient.name.family | Patient.name.given");
+    }
+
+    @Test
+    public void testTypeFilters() throws Exception {
+        assertSameAsInterpreter(observation(), "Observation.value");
+        assertSameAsInterpreter(observation(), "Observation.value.ofType(Quantity)");
+        assertSameAsInterpreter(observation(), "(Observation.value as Quantity)");
+        assertSameAsInterpreter(observation(), "Observation.value.as(Quantity).unit");
+        assertSameAsInterpreter(observation(), "(Observation.value as CodeableConcept).text");
+        assertTrue(CompiledPathExpression.compile(Observation.class, "(Observation.value as CodeableConcept).text").evaluate(observation()).isEmpty());
+    }
+
+    @Test
+    public void testWhere() throws Exception {
+        String expression = "Patient.telecom.where(system='phone') | Person.telecom.where(system='phone')";
+        assertSameAsInterpreter(patient(), expression);
+        // the union removes the duplicate phone number
+        assertEquals(CompiledPathExpression.compile(Patient.class, expression).evaluate(patient()).size(), 1);
+    }
+
+    @Test
+    public void testOtherResourceType() throws Exception {
+        assertSameAsInterpreter(patient(), "Person.telecom");
+        assertTrue(CompiledPathExpression.compile(Patient.class, "Person.telecom").evaluate(patient()).isEmpty());
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        assertNull(CompiledPathExpression.compile(Observation.class, "Observation.subject.where(resolve() is Patient)"));
+        assertNull(CompiledPathExpression.compile(Observation.class, "Observation.value.unit"));
+        assertNull(CompiledPathExpression.compile(Patient.class, "Patient.deceased.exists() and Patient.deceased != false"));
+        assertNull(CompiledPathExpression.compile(Patient.class, "Patient.name[0]"));
+        assertNull(CompiledPathExpression.compile(Patient.class, "Patient.id"));
+    }
+
+    @Test
+    public void testBuiltInSearchParameters() throws Exception {
+        List<Resource> resources = new ArrayList<>(Arrays.asList(patient(), observation()));
+        for (String file : TEST_FILES) {
+            try (InputStream stream = CompiledPathExpressionTest.class.getResourceAsStream("/testdata/" + file)) {
+                resources.add(FHIRParser.parser(Format.JSON).parse(stream));
+            }
+        }
+
+        int compiledCount = 0;
+        for (Resource resource : resources) {
+            for (SearchParameter parameter : SearchUtil.getApplicableSearchParameters(resource.getClass().getSimpleName())) {
+                if (parameter.getExpression() == null) {
+                    continue;
+                }
+                String expression = parameter.getExpression().getValue();
+                if (CompiledPathExpression.compile(resource.getClass(), expression) != null) {
+                    assertSameAsInterpreter(resource, expression);
+                    compiledCount++;
+                }
+            }
+        }
+        assertTrue(compiledCount > 0);
+    }
+}
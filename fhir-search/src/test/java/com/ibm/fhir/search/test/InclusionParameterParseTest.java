@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2018,2020
+ * (C) Copyright IBM Corp. 2018, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -826,4 +826,63 @@ public class InclusionParameterParseTest extends BaseSearchTest {
         assertTrue(selfUri.contains(revinclude3));
     }
 
+    @Test
+    public void testIncludeIterate() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        Class<Encounter> resourceType = Encounter.class;
+        String queryString = "&_include:iterate=Patient:organization:Organization";
+
+        // The iterated _include applies to the included resources, so its join type needn't be the search type
+        queryParameters.put("_include", Collections.singletonList("Encounter:subject:Patient"));
+        queryParameters.put("_include:iterate", Collections.singletonList("Patient:organization"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
+        assertNotNull(searchContext);
+        assertEquals(2, searchContext.getIncludeParameters().size());
+        assertTrue(searchContext.getIncludeParameters().contains(new InclusionParameter("Encounter", "subject", "Patient")));
+        assertTrue(searchContext.getIncludeParameters().contains(new InclusionParameter("Patient", "organization", "Organization", true)));
+        assertFalse(searchContext.getIncludeParameters().contains(new InclusionParameter("Patient", "organization", "Organization")));
+
+        String selfUri = SearchUtil.buildSearchSelfUri("http://example.com/Encounter", searchContext);
+        assertTrue(selfUri.contains(queryString));
+    }
+
+    @Test
+    public void testRevIncludeIterate() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        Class<Patient> resourceType = Patient.class;
+        String queryString = "&_revinclude:iterate=Provenance:target:Encounter";
+
+        // The iterated _revinclude targets the included resources, so its target type needn't be the search type
+        queryParameters.put("_revinclude", Collections.singletonList("Encounter:patient"));
+        queryParameters.put("_revinclude:iterate", Collections.singletonList("Provenance:target:Encounter"));
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(resourceType, queryParameters);
+        assertNotNull(searchContext);
+        assertEquals(2, searchContext.getRevIncludeParameters().size());
+        assertTrue(searchContext.getRevIncludeParameters().contains(new InclusionParameter("Encounter", "patient", "Patient")));
+        assertTrue(searchContext.getRevIncludeParameters().contains(new InclusionParameter("Provenance", "target", "Encounter", true)));
+
+        String selfUri = SearchUtil.buildSearchSelfUri("http://example.com/Patient", searchContext);
+        assertTrue(selfUri.contains(queryString));
+    }
+
+    @Test(expectedExceptions = FHIRSearchException.class)
+    public void testIncludeInvalidModifier() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        Class<Patient> resourceType = Patient.class;
+
+        // In strict mode, the query should throw a FHIRSearchException
+        queryParameters.put("_include:recurse", Collections.singletonList("Patient:organization"));
+        SearchUtil.parseQueryParameters(resourceType, queryParameters);
+    }
+
+    @Test(expectedExceptions = FHIRSearchException.class)
+    public void testIncludeIterateInvalidWithSort() throws Exception {
+        Map<String, List<String>> queryParameters = new HashMap<>();
+        Class<Patient> resourceType = Patient.class;
+
+        // In strict mode, the query should throw a FHIRSearchException
+        queryParameters.put("_sort", Collections.singletonList("birthDate"));
+        queryParameters.put("_include:iterate", Collections.singletonList("Patient:organization"));
+        SearchUtil.parseQueryParameters(resourceType, queryParameters);
+    }
 }
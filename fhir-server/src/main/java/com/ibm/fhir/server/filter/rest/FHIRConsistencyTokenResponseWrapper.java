@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.filter.rest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.function.Supplier;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.ibm.fhir.config.FHIRConfiguration;
+import com.ibm.fhir.config.FHIRRequestContext;
+
+/**
+ * This class is used to wrap the HttpServletResponse of requests which may write to the persistence layer.
+ * It adds a consistency token header to the response, just before the response body is written. The
+ * persistence transaction has been committed by then, so the token, which the persistence layer creates on
+ * demand, identifies a point after all of the writes of the request: the write-ahead log position of the
+ * primary with PostgreSQL, or else the current time. The client sends the token back on its subsequent
+ * requests, and read-only requests are then only served by a read-only replica which has reached the token.
+ */
+public class FHIRConsistencyTokenResponseWrapper extends HttpServletResponseWrapper {
+    private boolean tokenAdded = false;
+
+    public FHIRConsistencyTokenResponseWrapper(HttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * Add the consistency token header to the response, unless it has been added already, the
+     * response is already committed, the request turned out to be read-only (e.g. a batch bundle
+     * of GET entries) or it didn't use the persistence layer.
+     */
+    public void addConsistencyToken() {
+        if (!tokenAdded && !isCommitted()) {
+            tokenAdded = true;
+            Supplier<String> tokenSupplier = FHIRRequestContext.get().getConsistencyTokenSupplier();
+            if (tokenSupplier != null && !FHIRRequestContext.get().isReadOnly()) {
+                String token = tokenSupplier.get();
+                if (token != null) {
+                    setHeader(FHIRConfiguration.DEFAULT_CONSISTENCY_TOKEN_HEADER_NAME, token);
+                }
+            }
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        addConsistencyToken();
+        return super.getOutputStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        addConsistencyToken();
+        return super.getWriter();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        addConsistencyToken();
+        super.flushBuffer();
+    }
+}
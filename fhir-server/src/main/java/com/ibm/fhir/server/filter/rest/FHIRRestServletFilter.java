@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -32,6 +32,8 @@ import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.config.PropertyGroup;
+import com.ibm.fhir.config.metrics.RequestMetrics;
+import com.ibm.fhir.config.metrics.RequestTimings;
 import com.ibm.fhir.core.HTTPHandlingPreference;
 import com.ibm.fhir.core.HTTPReturnPreference;
 import com.ibm.fhir.exception.FHIRException;
@@ -41,6 +43,7 @@ import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.persistence.jdbc.connection.ReplicaLagMonitor;
 
 /**
  * This class is a servlet filter which is registered with the REST API's servlet. The main purpose of the class is to
@@ -68,6 +71,7 @@ public class FHIRRestServletFilter extends HttpFilter {
         }
 
         long initialTime = System.currentTimeMillis();
+        RequestTimings timings = null;
 
         String tenantId = defaultTenantId;
         String dsId = FHIRConfiguration.DEFAULT_DATASTORE_ID;
@@ -138,8 +142,36 @@ public class FHIRRestServletFilter extends HttpFilter {
             Map<String, List<String>> requestHeaders = extractRequestHeaders(request);
             context.setHttpHeaders(requestHeaders);
 
+            // Interactions which only read may be served by a read-only replica, once it has caught
+            // up with the last write of the client (if the client sent its consistency token).
+            context.setReadOnly(isReadOnlyRequest(request.getMethod(), request.getRequestURI()));
+            context.setConsistencyToken(getConsistencyToken(request));
+
+            // Time the phases of the request if they are reported to the client or published.
+            HttpServletResponse chainResponse = response;
+            FHIRServerTimingResponseWrapper timingResponse = null;
+            boolean serverTiming = FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SERVER_TIMING_HEADER, false);
+            if (serverTiming || RequestMetrics.isPublishing()) {
+                timings = new RequestTimings();
+                context.setTimings(timings);
+                if (serverTiming) {
+                    timingResponse = new FHIRServerTimingResponseWrapper(response, timings);
+                    chainResponse = timingResponse;
+                }
+            }
+
             // Pass the request through to the next filter in the chain.
-            chain.doFilter(request, response);
+            if (context.isReadOnly()) {
+                chain.doFilter(request, chainResponse);
+            } else {
+                // Give the client a consistency token for its subsequent reads
+                FHIRConsistencyTokenResponseWrapper tokenResponse = new FHIRConsistencyTokenResponseWrapper(chainResponse);
+                chain.doFilter(request, tokenResponse);
+                tokenResponse.addConsistencyToken();
+            }
+            if (timingResponse != null) {
+                timingResponse.addServerTiming();
+            }
         } catch (Exception e) {
             log.log(Level.INFO, "Error while setting request context or processing request", e);
 
@@ -176,6 +208,10 @@ public class FHIRRestServletFilter extends HttpFilter {
             double elapsedSecs = (System.currentTimeMillis() - initialTime) / 1000.0;
             log.info("Completed request[" + elapsedSecs + " secs]: " + encodedRequestDescription + statusMsg.toString());
 
+            if (timings != null) {
+                RequestMetrics.publish(tenantId, response.getStatus(), timings);
+            }
+
             // Remove the FHIRRequestContext from the current thread.
             FHIRRequestContext.remove();
 
@@ -222,6 +258,42 @@ public class FHIRRestServletFilter extends HttpFilter {
         return requestHeaders;
     }
 
+    /**
+     * Check if the interaction of the request only reads from the persistence layer: read, vread, history and
+     * search, but not the operations, which may write even when invoked with GET.
+     *
+     * @param method the HTTP method of the request
+     * @param path the path of the request URI
+     * @return true if the interaction is read-only
+     */
+    public static boolean isReadOnlyRequest(String method, String path) {
+        if (path == null || path.contains("$")) {
+            return false;
+        }
+        if ("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method)) {
+            return true;
+        }
+        // search via POST
+        return "POST".equalsIgnoreCase(method) && (path.endsWith("/_search") || path.endsWith("/_search/"));
+    }
+
+    /**
+     * @return the consistency token of the last write of the client from the request header, or null if it
+     *     didn't send a valid one
+     */
+    private String getConsistencyToken(HttpServletRequest request) {
+        String token = request.getHeader(FHIRConfiguration.DEFAULT_CONSISTENCY_TOKEN_HEADER_NAME);
+        if (token != null && !token.isEmpty()) {
+            token = token.trim();
+            if (ReplicaLagMonitor.isValidToken(token)) {
+                return token;
+            }
+            // The token is only a hint, so a bad one is ignored
+            log.fine("Ignoring invalid consistency token: '" + Encode.forHtml(token) + "'");
+        }
+        return null;
+    }
+
     private HTTPHandlingPreference computeHandlingPref(ServletRequest request) throws FHIRException {
         HTTPHandlingPreference handlingPref = HTTPHandlingPreference.from(FHIRConfigHelper.getStringProperty(FHIRConfiguration.PROPERTY_DEFAULT_HANDLING, "strict"));
         boolean allowClientHandlingPref = FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_ALLOW_CLIENT_HANDLING_PREF, true);
@@ -0,0 +1,63 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.filter.rest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.ibm.fhir.config.metrics.RequestTimings;
+
+/**
+ * This class is used to wrap the HttpServletResponse of requests which report their phase timings to the client.
+ * It adds a Server-Timing header with the timings to the response, just before the response body is written.
+ * The phases which happen while the body is written (e.g. generating the response and reading the resources of
+ * a streamed search) come too late for the header, so they are only published to the metrics system.
+ */
+public class FHIRServerTimingResponseWrapper extends HttpServletResponseWrapper {
+    public static final String SERVER_TIMING_HEADER_NAME = "Server-Timing";
+
+    private final RequestTimings timings;
+    private boolean headerAdded = false;
+
+    public FHIRServerTimingResponseWrapper(HttpServletResponse response, RequestTimings timings) {
+        super(response);
+        this.timings = timings;
+    }
+
+    /**
+     * Add the Server-Timing header to the response, unless it has been added already or the
+     * response is already committed.
+     */
+    public void addServerTiming() {
+        if (!headerAdded && !isCommitted()) {
+            headerAdded = true;
+            setHeader(SERVER_TIMING_HEADER_NAME, timings.toServerTimingHeader());
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        addServerTiming();
+        return super.getOutputStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        addServerTiming();
+        return super.getWriter();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        addServerTiming();
+        super.flushBuffer();
+    }
+}
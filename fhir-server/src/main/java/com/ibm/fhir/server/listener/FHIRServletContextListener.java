@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -8,10 +8,18 @@ package com.ibm.fhir.server.listener;
 
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_CHECK_REFERENCE_TYPES;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_INTERNED_TYPES;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_INTERN_POOL_MAX_SIZE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_BOOTSTRAP_DB;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_STATEMENT_STATISTICS_ENABLED;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_STATEMENT_STATISTICS_EXPLAIN_SAMPLE_RATE;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_STATEMENT_STATISTICS_MAX_SLOW_STATEMENTS;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_STATEMENT_STATISTICS_MAX_STATEMENTS;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_JDBC_STATEMENT_STATISTICS_SLOW_THRESHOLD;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_KAFKA_CONNECTIONPROPS;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_KAFKA_ENABLED;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_KAFKA_TOPICNAME;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_METRICS_PUBLISHER;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_CHANNEL;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_CLIENT;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_CLUSTER;
@@ -22,11 +30,15 @@ import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_SERVERS;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_TLS_ENABLED;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_TRUSTSTORE;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_NATS_TRUSTSTORE_PW;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_REGISTRY_WARM_UP;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_SERVER_REGISTRY_RESOURCE_PROVIDER_ENABLED;
+import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_VIRTUAL_THREADS;
 import static com.ibm.fhir.config.FHIRConfiguration.PROPERTY_WEBSOCKET_ENABLED;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,18 +58,26 @@ import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.config.PropertyGroup;
 import com.ibm.fhir.config.PropertyGroup.PropertyEntry;
+import com.ibm.fhir.config.metrics.MetricsPublisher;
+import com.ibm.fhir.config.metrics.NoOpMetricsPublisher;
+import com.ibm.fhir.config.metrics.RequestMetrics;
+import com.ibm.fhir.core.util.VirtualThreads;
 import com.ibm.fhir.model.config.FHIRModelConfig;
 import com.ibm.fhir.model.lang.util.LanguageRegistryUtil;
+import com.ibm.fhir.model.type.Element;
 import com.ibm.fhir.model.util.FHIRUtil;
+import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.notification.websocket.impl.FHIRNotificationServiceEndpointConfig;
 import com.ibm.fhir.notifications.kafka.impl.FHIRNotificationKafkaPublisher;
 import com.ibm.fhir.notifications.nats.impl.FHIRNotificationNATSPublisher;
 import com.ibm.fhir.persistence.helper.FHIRPersistenceHelper;
 import com.ibm.fhir.persistence.interceptor.impl.FHIRPersistenceInterceptorMgr;
 import com.ibm.fhir.persistence.jdbc.connection.FHIRDbTenantDatasourceConnectionStrategy;
+import com.ibm.fhir.persistence.jdbc.stats.StatementStatisticsRegistry;
 import com.ibm.fhir.persistence.jdbc.util.DerbyBootstrapper;
 import com.ibm.fhir.registry.FHIRRegistry;
 import com.ibm.fhir.search.util.SearchUtil;
+import com.ibm.fhir.server.metrics.MPMetricsPublisher;
 import com.ibm.fhir.server.operation.FHIROperationRegistry;
 import com.ibm.fhir.server.registry.ServerRegistryResourceProvider;
 import com.ibm.fhir.server.util.FHIROperationUtil;
@@ -71,6 +91,8 @@ public class FHIRServletContextListener implements ServletContextListener {
     private static final String DEFAULT_NATS_CHANNEL = "fhirNotifications";
     private static final String DEFAULT_NATS_CLUSTER = "nats-streaming";
     private static final String DEFAULT_NATS_CLIENT = "fhir-server";
+    private static final String METRICS_PUBLISHER_NONE = "none";
+    private static final String METRICS_PUBLISHER_MP_METRICS = "mpMetrics";
     public static final String FHIR_SERVER_INIT_COMPLETE = "com.ibm.fhir.webappInitComplete";
     private static FHIRNotificationKafkaPublisher kafkaPublisher = null;
     private static FHIRNotificationNATSPublisher natsPublisher = null;
@@ -119,6 +141,12 @@ public class FHIRServletContextListener implements ServletContextListener {
             event.getServletContext().setAttribute(FHIRPersistenceHelper.class.getName(), persistenceHelper);
             log.fine("Set shared persistence helper on servlet context.");
 
+            Boolean virtualThreads = fhirConfig.getBooleanProperty(PROPERTY_VIRTUAL_THREADS, Boolean.FALSE);
+            if (virtualThreads) {
+                VirtualThreads.setEnabled(true);
+                log.info("Virtual threads " + (VirtualThreads.isEnabled() ? "enabled" : "not supported, using platform threads"));
+            }
+
             // If websocket notifications are enabled, then initialize the endpoint.
             Boolean websocketEnabled = fhirConfig.getBooleanProperty(PROPERTY_WEBSOCKET_ENABLED, Boolean.FALSE);
             if (websocketEnabled) {
@@ -185,6 +213,37 @@ public class FHIRServletContextListener implements ServletContextListener {
             Boolean extendedCodeableConceptValidation = fhirConfig.getBooleanProperty(PROPERTY_EXTENDED_CODEABLE_CONCEPT_VALIDATION, Boolean.TRUE);
             FHIRModelConfig.setExtendedCodeableConceptValidation(extendedCodeableConceptValidation);
 
+            List<String> internedTypeNames = fhirConfig.getStringListProperty(PROPERTY_INTERNED_TYPES);
+            if (internedTypeNames != null && !internedTypeNames.isEmpty()) {
+                Set<Class<? extends Element>> internedTypes = new HashSet<>();
+                for (String typeName : internedTypeNames) {
+                    Class<?> type = ModelSupport.getDataType(typeName);
+                    if (type != null && Element.class.isAssignableFrom(type)) {
+                        internedTypes.add(type.asSubclass(Element.class));
+                    } else {
+                        log.warning("Ignoring unknown element type '" + typeName + "' in " + PROPERTY_INTERNED_TYPES);
+                    }
+                }
+                FHIRModelConfig.setInternedTypes(internedTypes);
+                FHIRModelConfig.setInternPoolMaxSize(fhirConfig.getIntProperty(PROPERTY_INTERN_POOL_MAX_SIZE, 10000));
+                log.info("Interning parsed values of element types " + internedTypes);
+            }
+
+            String metricsPublisher = fhirConfig.getStringProperty(PROPERTY_METRICS_PUBLISHER, METRICS_PUBLISHER_NONE);
+            if (!METRICS_PUBLISHER_NONE.equals(metricsPublisher)) {
+                log.info("Publishing request metrics with " + metricsPublisher);
+                RequestMetrics.setPublisher(createMetricsPublisher(metricsPublisher));
+            }
+
+            Boolean statementStatisticsEnabled = fhirConfig.getBooleanProperty(PROPERTY_JDBC_STATEMENT_STATISTICS_ENABLED, Boolean.FALSE);
+            if (statementStatisticsEnabled) {
+                StatementStatisticsRegistry.getInstance().configure(true,
+                    fhirConfig.getIntProperty(PROPERTY_JDBC_STATEMENT_STATISTICS_SLOW_THRESHOLD, 1000),
+                    fhirConfig.getDoubleProperty(PROPERTY_JDBC_STATEMENT_STATISTICS_EXPLAIN_SAMPLE_RATE, 0.0),
+                    fhirConfig.getIntProperty(PROPERTY_JDBC_STATEMENT_STATISTICS_MAX_STATEMENTS, 1000),
+                    fhirConfig.getIntProperty(PROPERTY_JDBC_STATEMENT_STATISTICS_MAX_SLOW_STATEMENTS, 100));
+            }
+
             // Transaction handling done inside the following method, so each database
             // we need to bootstrap can get its own transaction.
             bootstrapDerbyDatabases(fhirConfig);
@@ -192,6 +251,14 @@ public class FHIRServletContextListener implements ServletContextListener {
             log.fine("Initializing FHIRRegistry...");
             FHIRRegistry.getInstance();
 
+            Boolean registryWarmUp = fhirConfig.getBooleanProperty(PROPERTY_REGISTRY_WARM_UP, Boolean.FALSE);
+            if (registryWarmUp) {
+                log.info("Loading FHIRRegistry resources...");
+                long start = System.nanoTime();
+                int count = FHIRRegistry.getInstance().loadAllResources(Runtime.getRuntime().availableProcessors());
+                log.info("Loaded " + count + " FHIRRegistry resources in " + ((System.nanoTime() - start) / 1000000) + "ms");
+            }
+
             Boolean serverRegistryResourceProviderEnabled = fhirConfig.getBooleanProperty(PROPERTY_SERVER_REGISTRY_RESOURCE_PROVIDER_ENABLED, Boolean.FALSE);
             if (serverRegistryResourceProviderEnabled) {
                 log.info("Registering ServerRegistryResourceProvider...");
@@ -392,6 +459,23 @@ public class FHIRServletContextListener implements ServletContextListener {
         }
     }
 
+    /**
+     * Create the metrics publisher configured by {@link FHIRConfiguration#PROPERTY_METRICS_PUBLISHER}
+     * @param metricsPublisher "mpMetrics" or the name of a class which implements {@link MetricsPublisher}
+     * @return the metrics publisher
+     * @throws Exception
+     */
+    private MetricsPublisher createMetricsPublisher(String metricsPublisher) throws Exception {
+        if (METRICS_PUBLISHER_MP_METRICS.equals(metricsPublisher)) {
+            return new MPMetricsPublisher();
+        }
+        Class<?> publisherClass = Class.forName(metricsPublisher);
+        if (!MetricsPublisher.class.isAssignableFrom(publisherClass)) {
+            throw new IllegalArgumentException("MetricsPublisher is not assignable from " + metricsPublisher);
+        }
+        return (MetricsPublisher) publisherClass.getDeclaredConstructor().newInstance();
+    }
+
     @Override
     public void contextDestroyed(ServletContextEvent event) {
         if (log.isLoggable(Level.FINER)) {
@@ -412,6 +496,8 @@ public class FHIRServletContextListener implements ServletContextListener {
                 natsPublisher.shutdown();
                 natsPublisher = null;
             }
+
+            RequestMetrics.setPublisher(new NoOpMetricsPublisher());
         } catch (Exception e) {
         } finally {
             if (log.isLoggable(Level.FINER)) {
@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.inject.spi.CDI;
+
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.metrics.Timer;
+
+import com.ibm.fhir.config.metrics.MetricsPublisher;
+import com.ibm.fhir.config.metrics.RequestPhase;
+import com.ibm.fhir.config.metrics.RequestTimings;
+
+/**
+ * A {@link MetricsPublisher} which updates timers in the application registry of MicroProfile Metrics
+ * (the mpMetrics feature of Liberty must be enabled):
+ * <ul>
+ * <li>{@value #REQUEST_TIMER_NAME}, the total time of the requests of each tenant</li>
+ * <li>{@value #PHASE_TIMER_NAME}, the time spent in each phase by the requests of each tenant, with a
+ * {@code phase} tag</li>
+ * <li>{@value #REPLICA_LAG_GAUGE_NAME}, the last measured lag of each read-only replica in bytes of write-ahead
+ * log, with a {@code replica} tag</li>
+ * </ul>
+ * The phase timers are only updated for the requests which entered the phase.
+ */
+public class MPMetricsPublisher implements MetricsPublisher {
+    public static final String REQUEST_TIMER_NAME = "fhir_request";
+    public static final String PHASE_TIMER_NAME = "fhir_request_phase";
+    public static final String REPLICA_LAG_GAUGE_NAME = "fhir_replica_lag";
+
+    private static final RequestPhase[] PHASES = RequestPhase.values();
+
+    private final MetricRegistry registry;
+
+    // The request timer followed by the phase timers of each tenant, in the order of the phases
+    private final Map<String, Timer[]> tenantTimers = new ConcurrentHashMap<>();
+
+    // The last lag of each replica, read by its gauge
+    private final Map<String, AtomicLong> replicaLags = new ConcurrentHashMap<>();
+
+    /**
+     * Create a publisher for the application registry, obtained with CDI
+     */
+    public MPMetricsPublisher() {
+        this(CDI.current().select(MetricRegistry.class).get());
+    }
+
+    /**
+     * Create a publisher for the given registry
+     * @param registry
+     */
+    public MPMetricsPublisher(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void publish(String tenantId, int status, RequestTimings timings) {
+        Timer[] timers = tenantTimers.computeIfAbsent(tenantId, this::createTimers);
+        timers[0].update(timings.getElapsedNanos(), TimeUnit.NANOSECONDS);
+        for (RequestPhase phase : PHASES) {
+            if (timings.getCount(phase) > 0) {
+                timers[phase.ordinal() + 1].update(timings.getNanos(phase), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void publishReplicaLag(String replicaName, long lagBytes) {
+        replicaLags.computeIfAbsent(replicaName, this::createReplicaLagGauge).set(lagBytes);
+    }
+
+    private AtomicLong createReplicaLagGauge(String replicaName) {
+        AtomicLong lag = new AtomicLong();
+        Metadata metadata = Metadata.builder()
+                .withName(REPLICA_LAG_GAUGE_NAME)
+                .withType(MetricType.GAUGE)
+                .withUnit(MetricUnits.BYTES)
+                .build();
+        registry.register(metadata, (Gauge<Long>) lag::get, new Tag("replica", replicaName));
+        return lag;
+    }
+
+    private Timer[] createTimers(String tenantId) {
+        Tag tenantTag = new Tag("tenant", tenantId);
+        Timer[] timers = new Timer[PHASES.length + 1];
+        timers[0] = registry.timer(REQUEST_TIMER_NAME, tenantTag);
+        for (RequestPhase phase : PHASES) {
+            timers[phase.ordinal() + 1] = registry.timer(PHASE_TIMER_NAME, tenantTag, new Tag("phase", phase.metricName()));
+        }
+        return timers;
+    }
+}
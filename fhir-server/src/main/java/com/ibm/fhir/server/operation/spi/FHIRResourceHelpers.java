@@ -15,7 +15,9 @@ import com.ibm.fhir.model.patch.FHIRPatch;
 import com.ibm.fhir.model.resource.Bundle;
 import com.ibm.fhir.model.resource.OperationOutcome;
 import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.path.spi.ReferenceResolver;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.server.util.FHIRRestReferenceResolver;
 
 /**
  * This interface describes the set of helper methods from the FHIR REST layer that are used by custom operation
@@ -270,4 +272,15 @@ public interface FHIRResourceHelpers {
      * @throws Exception
      */
     public int doReindex(FHIROperationContext operationContext, OperationOutcome.Builder operationOutcomeResult, Instant tstamp, String resourceLogicalId) throws Exception;
+
+    /**
+     * Get a reference resolver which loads the targets of references from this server, for use by the FHIRPath
+     * resolve() function. Resolved resources are cached by the resolver, so the same instance should be used
+     * for the whole request.
+     *
+     * @return the reference resolver
+     */
+    default ReferenceResolver getReferenceResolver() {
+        return new FHIRRestReferenceResolver(this);
+    }
 }
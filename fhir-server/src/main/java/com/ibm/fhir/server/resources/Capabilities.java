@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -321,6 +321,22 @@ public class Capabilities extends FHIRResource {
             log.log(Level.WARNING, "Unexpected error while reading server transaction mode setting", t);
         }
 
+        List<CapabilityStatement.Rest.Interaction> systemInteractions = new ArrayList<>();
+        systemInteractions.add(CapabilityStatement.Rest.Interaction.builder()
+            .code(transactionMode)
+            .build());
+
+        // System level history is supported if the persistence layer can read the resource change log
+        try {
+            if (getPersistenceImpl().isChangesSupported()) {
+                systemInteractions.add(CapabilityStatement.Rest.Interaction.builder()
+                    .code(SystemRestfulInteraction.HISTORY_SYSTEM)
+                    .build());
+            }
+        } catch (Throwable t) {
+            log.log(Level.WARNING, "Unexpected error while reading server history support", t);
+        }
+
         CapabilityStatement.Rest.Security.Builder securityBuilder = CapabilityStatement.Rest.Security.builder()
                 .cors(com.ibm.fhir.model.type.Boolean.of(FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SECURITY_CORS, true)));
 
@@ -382,9 +398,7 @@ public class Capabilities extends FHIRResource {
                 .mode(RestfulCapabilityMode.SERVER)
                 .security(securityBuilder.build())
                 .resource(addSupportedProfilesToResources(resources))
-                .interaction(CapabilityStatement.Rest.Interaction.builder()
-                    .code(transactionMode)
-                    .build())
+                .interaction(systemInteractions)
                 .operation(mapOperationDefinitionsToRestOperations(systemOps))
                 .build();
 
@@ -450,6 +464,9 @@ public class Capabilities extends FHIRResource {
             } else if ("history".equals(interactionString)){
                 // special case for search since the value set uses "history-instance" instead of just "history"
                 interactions.add(buildInteractionStatement(TypeRestfulInteraction.HISTORY_INSTANCE));
+                if (getPersistenceImpl().isChangesSupported()) {
+                    interactions.add(buildInteractionStatement(TypeRestfulInteraction.HISTORY_TYPE));
+                }
             } else if ("delete".equals(interactionString)) {
                 // special case for delete since we shouldn't advertise it if the PL doesn't support it
                 interactions.add(buildInteractionStatement(TypeRestfulInteraction.DELETE));
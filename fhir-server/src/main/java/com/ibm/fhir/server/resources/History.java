@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -84,4 +84,50 @@ public class History extends FHIRResource {
             log.exiting(this.getClass().getName(), "history(String,String)");
         }
     }
+
+    @GET
+    @Path("_history")
+    public Response systemHistory() {
+        return doHistory(null, "systemHistory()");
+    }
+
+    @GET
+    @Path("{type}/_history")
+    public Response typeHistory(@PathParam("type") String type) {
+        return doHistory(type, "typeHistory(String)");
+    }
+
+    /**
+     * Performs a system level history if type is null, or a type level history otherwise
+     */
+    private Response doHistory(String type, String methodName) {
+        log.entering(this.getClass().getName(), methodName);
+        Date startTime = new Date();
+        Response.Status status = null;
+        Bundle bundle = null;
+
+        try {
+            checkInitComplete();
+
+            FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            bundle = helper.doHistory(type, uriInfo.getQueryParameters(), getRequestUri());
+            status = Status.OK;
+            return Response.status(status).entity(bundle).build();
+        } catch (FHIROperationException e) {
+            status = issueListToStatus(e.getIssues());
+            return exceptionResponse(e, status);
+        } catch (Exception e) {
+            status = Status.INTERNAL_SERVER_ERROR;
+            return exceptionResponse(e, status);
+        } finally {
+            try {
+                RestAuditLogger.logHistory(httpServletRequest, bundle,
+                        startTime, new Date(), status);
+            } catch (Exception e) {
+                log.log(Level.SEVERE, AUDIT_LOGGING_ERR_MSG, e);
+            }
+
+            log.exiting(this.getClass().getName(), methodName);
+        }
+    }
 }
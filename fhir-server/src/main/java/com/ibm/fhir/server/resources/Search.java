@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016, 2020
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -9,6 +9,7 @@ package com.ibm.fhir.server.resources;
 import static com.ibm.fhir.server.util.IssueTypeToHttpStatusMapper.issueListToStatus;
 
 import java.util.Date;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -21,6 +22,8 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
@@ -28,11 +31,14 @@ import javax.ws.rs.core.Response.Status;
 
 import org.eclipse.microprofile.jwt.JsonWebToken;
 
+import com.ibm.fhir.config.FHIRConfigHelper;
+import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.core.FHIRMediaType;
 import com.ibm.fhir.exception.FHIROperationException;
 import com.ibm.fhir.model.resource.Bundle;
 import com.ibm.fhir.server.util.FHIRRestHelper;
 import com.ibm.fhir.server.util.RestAuditLogger;
+import com.ibm.fhir.server.util.SearchBundleStreamingOutput;
 
 @Path("/")
 @Consumes({ FHIRMediaType.APPLICATION_FHIR_JSON, MediaType.APPLICATION_JSON,
@@ -50,6 +56,9 @@ public class Search extends FHIRResource {
     @Inject
     private JsonWebToken jwt;
 
+    @Context
+    private HttpHeaders httpHeaders;
+
     public Search() throws Exception {
         super();
     }
@@ -68,6 +77,14 @@ public class Search extends FHIRResource {
 
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            MediaType streamingMediaType = getStreamingMediaType();
+            SearchBundleStreamingOutput output = streamingMediaType != null
+                    ? helper.startStreamingSearch(type, null, null, queryParameters, getRequestUri()) : null;
+            if (output != null) {
+                bundle = output.getBundle();
+                status = Status.OK;
+                return Response.status(status).entity(output).type(streamingMediaType).build();
+            }
             bundle = helper.doSearch(type, null, null, queryParameters, getRequestUri(), null, null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -104,6 +121,14 @@ public class Search extends FHIRResource {
 
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            MediaType streamingMediaType = getStreamingMediaType();
+            SearchBundleStreamingOutput output = streamingMediaType != null
+                    ? helper.startStreamingSearch(type, compartment, compartmentId, queryParameters, getRequestUri()) : null;
+            if (output != null) {
+                bundle = output.getBundle();
+                status = Status.OK;
+                return Response.status(status).entity(output).type(streamingMediaType).build();
+            }
             bundle = helper.doSearch(type, compartment, compartmentId, queryParameters, getRequestUri(), null, null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -140,6 +165,14 @@ public class Search extends FHIRResource {
 
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            MediaType streamingMediaType = getStreamingMediaType();
+            SearchBundleStreamingOutput output = streamingMediaType != null
+                    ? helper.startStreamingSearch(type, null, null, queryParameters, getRequestUri()) : null;
+            if (output != null) {
+                bundle = output.getBundle();
+                status = Status.OK;
+                return Response.status(status).entity(output).type(streamingMediaType).build();
+            }
             bundle = helper.doSearch(type, null, null, queryParameters, getRequestUri(), null, null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -161,6 +194,38 @@ public class Search extends FHIRResource {
         }
     }
 
+    /**
+     * Get the media type of the response if the search results can be written one entry at a time,
+     * which is when the response is JSON without pretty printing.
+     *
+     * @return the media type of the response, or null if the response must be a complete Bundle
+     */
+    private MediaType getStreamingMediaType() {
+        List<MediaType> acceptableMediaTypes = httpHeaders.getAcceptableMediaTypes();
+        MediaType mediaType = acceptableMediaTypes.isEmpty() ? MediaType.WILDCARD_TYPE : acceptableMediaTypes.get(0);
+        MediaType result;
+        if (mediaType.isCompatible(FHIRMediaType.APPLICATION_FHIR_JSON_TYPE)) {
+            result = FHIRMediaType.APPLICATION_FHIR_JSON_TYPE;
+        } else if (mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+            result = MediaType.APPLICATION_JSON_TYPE;
+        } else {
+            return null;
+        }
+
+        // Same precedence as the provider: the header, then the _pretty parameter, then the config
+        String pretty = httpHeaders.getHeaderString(FHIRConfiguration.DEFAULT_PRETTY_RESPONSE_HEADER_NAME);
+        if (pretty == null) {
+            pretty = uriInfo.getQueryParameters().getFirst("_pretty");
+        }
+        if (Boolean.parseBoolean(pretty)) {
+            return null;
+        } else if (!"false".equalsIgnoreCase(pretty)
+                && FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_DEFAULT_PRETTY_PRINT, false)) {
+            return null;
+        }
+        return result;
+    }
+
     @GET
     @Path("/")
     public Response searchAllGet() {
@@ -186,6 +251,14 @@ public class Search extends FHIRResource {
 
             queryParameters = uriInfo.getQueryParameters();
             FHIRRestHelper helper = new FHIRRestHelper(getPersistenceImpl());
+            MediaType streamingMediaType = getStreamingMediaType();
+            SearchBundleStreamingOutput output = streamingMediaType != null
+                    ? helper.startStreamingSearch("Resource", null, null, queryParameters, getRequestUri()) : null;
+            if (output != null) {
+                bundle = output.getBundle();
+                status = Status.OK;
+                return Response.status(status).entity(output).type(streamingMediaType).build();
+            }
             bundle = helper.doSearch("Resource", null, null, queryParameters, getRequestUri(), null, null);
             status = Status.OK;
             return Response.status(status).entity(bundle).build();
@@ -14,7 +14,9 @@ import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
 import java.net.URI;
+import java.net.URLEncoder;
 import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.ArrayList;
@@ -27,6 +29,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -42,6 +47,8 @@ import com.ibm.fhir.config.FHIRConfigHelper;
 import com.ibm.fhir.config.FHIRConfiguration;
 import com.ibm.fhir.config.FHIRRequestContext;
 import com.ibm.fhir.config.PropertyGroup;
+import com.ibm.fhir.config.metrics.RequestPhase;
+import com.ibm.fhir.config.metrics.RequestTimings;
 import com.ibm.fhir.core.FHIRConstants;
 import com.ibm.fhir.core.HTTPHandlingPreference;
 import com.ibm.fhir.core.HTTPReturnPreference;
@@ -78,8 +85,11 @@ import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
 import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
 import com.ibm.fhir.path.exception.FHIRPathException;
 import com.ibm.fhir.path.patch.FHIRPathPatch;
+import com.ibm.fhir.path.spi.ReferenceResolver;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.FHIRPersistenceTransaction;
+import com.ibm.fhir.persistence.ResourceChangeLogRecord;
+import com.ibm.fhir.persistence.SearchResultCursor;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRHistoryContext;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -138,14 +148,25 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             .appendPattern(", dd-MMM-yy HH:mm:ss")
             .optionalEnd().toFormatter();
 
+    // Used to validate and map the local references of bundle entries in parallel, before the entries are processed
+    private static final ForkJoinPool bundlePreparePool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     private FHIRPersistence persistence = null;
 
     // These values are used for correlating requests within a bundle.
     private String bundleTransactionCorrelationId = null;
     private String bundleRequestCorrelationId = null;
 
+    // True while processing a bundle whose local references were all mapped before its entries were processed
+    private boolean bundleLocalReferencesMapped = false;
+
+    // Request-scoped resolver for the FHIRPath resolve() function. It is created with the helper, on the
+    // request thread, because it only reads resources on the thread which created it.
+    private final ReferenceResolver referenceResolver;
+
     public FHIRRestHelper(FHIRPersistence persistence) {
         this.persistence = persistence;
+        this.referenceResolver = new FHIRRestReferenceResolver(this);
     }
 
     @Override
@@ -940,6 +961,161 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    /**
+     * Performs the work of a system or type level history, which returns the resource versions created,
+     * updated or deleted across all resource types, or across a single resource type, in the order in which
+     * the changes were made. Instead of paging with _page, the 'next' link continues after the last change
+     * of this page using the _changeIdMarker parameter, so each page is read with an index range scan. With
+     * _since, the changes are ordered by their time, and the 'next' link also moves _since forward to the time
+     * of the last change of this page.
+     *
+     * @param type
+     *            the resource type of a type level history, or null for a system level history
+     * @param queryParameters
+     *            a Map containing the query parameters from the request URL
+     * @param requestUri
+     *            the URI from the request
+     * @return a Bundle containing the changes
+     * @throws Exception
+     */
+    public Bundle doHistory(String type, MultivaluedMap<String, String> queryParameters, String requestUri) throws Exception {
+        log.entering(this.getClass().getName(), "doHistory(String,MultivaluedMap,String)");
+
+        if (type != null) {
+            if (!ModelSupport.isResourceType(type)) {
+                throw buildUnsupportedResourceTypeException(type);
+            }
+            // Validate that interaction is allowed for given resource type
+            validateInteraction(Interaction.HISTORY.value(), type);
+        }
+        if (!persistence.isChangesSupported()) {
+            throw buildRestException("System and type level history are not supported by the persistence implementation", IssueType.NOT_SUPPORTED);
+        }
+
+        // Start a new txn in the persistence layer if one is not already active.
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+        txn.begin();
+
+        Bundle bundle = null;
+
+        // Save the current request context.
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+
+        try {
+            FHIRHistoryContext historyContext =
+                    FHIRPersistenceUtil.parseHistoryParameters(queryParameters, HTTPHandlingPreference.LENIENT.equals(requestContext.getHandlingPreference()));
+            if (historyContext.getPageNumber() != 1) {
+                throw buildRestException("The '_page' parameter is not supported for system or type level history; use the 'next' link instead",
+                    IssueType.NOT_SUPPORTED);
+            }
+            int pageSize = Math.min(historyContext.getPageSize(), SearchConstants.MAX_PAGE_SIZE);
+
+            // First, invoke the 'beforeHistory' interceptor methods.
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, null, null, null));
+            getInterceptorMgr().fireBeforeHistoryEvent(event);
+
+            Instant since = historyContext.getSince() != null ? historyContext.getSince().getValue().toInstant() : null;
+            List<ResourceChangeLogRecord> changes = pageSize > 0
+                    ? persistence.changes(pageSize, since, historyContext.getChangeIdMarker(), type)
+                    : Collections.emptyList();
+
+            Bundle.Builder bundleBuilder = Bundle.builder()
+                    .type(BundleType.HISTORY)
+                    .id(UUID.randomUUID().toString())
+                    .link(Bundle.Link.builder().relation(string("self")).url(Url.of(requestUri)).build());
+            for (ResourceChangeLogRecord change : changes) {
+                bundleBuilder.entry(buildHistoryEntry(change, type));
+            }
+            if (changes.size() == pageSize && pageSize > 0) {
+                // There may be more changes, so continue after the last change of this page
+                ResourceChangeLogRecord lastChange = changes.get(changes.size() - 1);
+                com.ibm.fhir.model.type.Instant nextSince = historyContext.getSince() != null
+                        ? com.ibm.fhir.model.type.Instant.of(lastChange.getChangeTstamp().atZone(ZoneOffset.UTC)) : null;
+                String nextLinkUrl = buildHistoryNextLink(requestUri, pageSize, nextSince, lastChange.getChangeId());
+                bundleBuilder.link(Bundle.Link.builder().relation(string("next")).url(Url.of(nextLinkUrl)).build());
+            }
+            bundle = bundleBuilder.build();
+
+            event.setFhirResource(bundle);
+
+            // Invoke the 'afterHistory' interceptor methods.
+            getInterceptorMgr().fireAfterHistoryEvent(event);
+
+            // Commit our transaction if we started one before.
+            txn.commit();
+            txn = null;
+
+            return bundle;
+        } finally {
+            // Restore the original request context.
+            FHIRRequestContext.set(requestContext);
+
+            // If we previously started a transaction and it's still active, we need to rollback due to an error.
+            if (txn != null) {
+                txn.rollback();
+            }
+
+            log.exiting(this.getClass().getName(), "doHistory(String,MultivaluedMap,String)");
+        }
+    }
+
+    /**
+     * Build the history Bundle entry for a change read from the resource change log
+     */
+    private Bundle.Entry buildHistoryEntry(ResourceChangeLogRecord change, String type) throws Exception {
+        String resourceType = change.getResourceTypeName();
+        String logicalId = change.getLogicalId();
+
+        // Determine the correct method to include in this history entry (POST, PUT, DELETE).
+        HTTPVerb method;
+        switch (change.getChangeType()) {
+        case CREATE:
+            method = HTTPVerb.POST;
+            break;
+        case DELETE:
+            method = HTTPVerb.DELETE;
+            break;
+        default:
+            method = HTTPVerb.PUT;
+            break;
+        }
+
+        Bundle.Entry.Request request =
+                Bundle.Entry.Request.builder().method(method).url(Url.of(method == HTTPVerb.POST
+                        ? resourceType : resourceType + "/" + logicalId)).build();
+
+        // The response identifies the version even for deletions, which have no resource
+        Bundle.Entry.Response response = Bundle.Entry.Response.builder()
+                .status(string("200"))
+                .etag(string("W/\"" + change.getVersionId() + "\""))
+                .lastModified(com.ibm.fhir.model.type.Instant.of(change.getChangeTstamp().atZone(ZoneOffset.UTC)))
+                .build();
+
+        return Bundle.Entry.builder()
+                .fullUrl(Uri.of(getRequestBaseUri(type) + "/" + resourceType + "/" + logicalId))
+                .request(request)
+                .response(response)
+                .resource(change.getResource())
+                .build();
+    }
+
+    /**
+     * Build the 'next' link of a system or type level history, which continues after the given change id,
+     * or after the given change id among the changes made at the given since time
+     */
+    private String buildHistoryNextLink(String requestUri, int pageSize, com.ibm.fhir.model.type.Instant since, long changeIdMarker)
+            throws Exception {
+        int queryPathSeparatorLoc = requestUri.indexOf("?");
+        StringBuilder nextLinkUrl = new StringBuilder(queryPathSeparatorLoc != -1 ? requestUri.substring(0, queryPathSeparatorLoc) : requestUri);
+        nextLinkUrl.append("?_count=").append(pageSize);
+        if (since != null) {
+            nextLinkUrl.append("&_since=").append(URLEncoder.encode(since.getValue().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME), "UTF-8"));
+        }
+        nextLinkUrl.append("&_changeIdMarker=").append(changeIdMarker);
+        return nextLinkUrl.toString();
+    }
+
     @Override
     public Bundle doSearch(String type, String compartment, String compartmentId,
             MultivaluedMap<String, String> queryParameters, String requestUri,
@@ -1040,6 +1216,104 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    /**
+     * Starts a search whose results are written to the response one entry at a time, as they are read from the
+     * persistence layer. Only the count and the checks of the search are run by this method; the resources are
+     * read by the returned output, in a transaction which stays open until the output has been written.
+     *
+     * <p>The search must be answered with a complete Bundle instead when streaming is disabled, when interceptors
+     * must see the search results, or when the search has _include, _revinclude or chained parameters, since these
+     * may add to the Bundle after the matches or fail once the matches have been written.
+     *
+     * @param type
+     *            the resource type associated with the search
+     * @param compartment
+     *            the compartment associated with the search
+     * @param compartmentId
+     *            the ID of the compartment associated with the search
+     * @param queryParameters
+     *            a Map containing the query parameters from the request URL
+     * @param requestUri
+     *            the request URI
+     * @return the output writing the search results, or null if the search must be answered with {@link #doSearch}
+     * @throws Exception
+     */
+    public SearchBundleStreamingOutput startStreamingSearch(String type, String compartment, String compartmentId,
+            MultivaluedMap<String, String> queryParameters, String requestUri) throws Exception {
+        log.entering(this.getClass().getName(), "startStreamingSearch");
+
+        if (!FHIRConfigHelper.getBooleanProperty(FHIRConfiguration.PROPERTY_SEARCH_STREAMING_RESPONSE, false)
+                || getInterceptorMgr().hasInterceptors()
+                || !ModelSupport.isResourceType(type)) {
+            log.exiting(this.getClass().getName(), "startStreamingSearch");
+            return null;
+        }
+
+        // Validate that interaction is allowed for given resource type
+        validateInteraction(Interaction.SEARCH.value(), type);
+
+        // Save the current request context.
+        FHIRRequestContext requestContext = FHIRRequestContext.get();
+        Class<? extends Resource> resourceType = getResourceType(type);
+        FHIRSearchContext searchContext = SearchUtil.parseQueryParameters(compartment, compartmentId, resourceType, queryParameters,
+            HTTPHandlingPreference.LENIENT.equals(requestContext.getHandlingPreference()));
+        if (searchContext.hasIncludeParameters() || searchContext.hasRevIncludeParameters()) {
+            log.exiting(this.getClass().getName(), "startStreamingSearch");
+            return null;
+        }
+        for (QueryParameter queryParameter : searchContext.getSearchParameters()) {
+            if (queryParameter.isChained()) {
+                log.exiting(this.getClass().getName(), "startStreamingSearch");
+                return null;
+            }
+        }
+
+        FHIRTransactionHelper txn = new FHIRTransactionHelper(getTransaction());
+        // Start a new txn in the persistence layer if one is not already active.
+        txn.begin();
+
+        SearchResultCursor cursor = null;
+        try {
+            FHIRPersistenceEvent event =
+                    new FHIRPersistenceEvent(null, buildPersistenceEventProperties(type, null, null, searchContext));
+            getInterceptorMgr().fireBeforeSearchEvent(event);
+
+            FHIRPersistenceContext persistenceContext =
+                    FHIRPersistenceContextFactory.createPersistenceContext(event, searchContext);
+            cursor = persistence.searchCursor(persistenceContext, resourceType);
+
+            // The Bundle without the entries, which needs the total count set by the search
+            Bundle bundle = createSearchBundle(Collections.emptyList(), searchContext, type);
+            if (requestUri != null) {
+                bundle = addLinks(searchContext, bundle, requestUri);
+            }
+
+            // Calculate how many resources are 'match' mode
+            int pageSize = searchContext.getPageSize();
+            int offset = (searchContext.getPageNumber() - 1) * pageSize;
+            int matchResourceCount = Math.max(0, Math.min(pageSize, searchContext.getTotalCount() - offset));
+
+            SearchBundleStreamingOutput output =
+                    new SearchBundleStreamingOutput(bundle, cursor, txn, getRequestBaseUri(type), matchResourceCount);
+            cursor = null;
+            txn = null;
+            return output;
+        } finally {
+            // Restore the original request context.
+            FHIRRequestContext.set(requestContext);
+
+            if (cursor != null) {
+                cursor.close();
+            }
+            // If we previously started a transaction and it wasn't handed over, we need to rollback due to an error.
+            if (txn != null) {
+                txn.rollback();
+            }
+
+            log.exiting(this.getClass().getName(), "startStreamingSearch");
+        }
+    }
+
     /**
      * Helper method which invokes a custom operation.
      *
@@ -1138,23 +1412,55 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
 
         // Save the current request context.
         FHIRRequestContext requestContext = FHIRRequestContext.get();
+        boolean readOnly = requestContext.isReadOnly();
 
         try {
             // First, validate the bundle and create the response bundle.
             Bundle responseBundle = validateBundle(inputBundle);
 
+            // A batch which only reads can be served by a read-only replica, the same as a search
+            if (isReadOnlyBatch(inputBundle)) {
+                requestContext.setReadOnly(true);
+            }
+
             // Next, process each of the entries in the bundle.
             responseBundle = processBundleEntries(inputBundle, responseBundle, requestProperties);
 
             return responseBundle;
         } finally {
             // Restore the original request context.
+            requestContext.setReadOnly(readOnly);
             FHIRRequestContext.set(requestContext);
 
             log.exiting(this.getClass().getName(), "doBundle");
         }
     }
 
+    /**
+     * Check if the bundle is a batch whose entries only read: GET (or HEAD) requests other than operations.
+     * The entries of a transaction bundle are always processed against the primary datastore.
+     *
+     * @param bundle the request bundle
+     * @return true if the bundle is a read-only batch
+     */
+    public static boolean isReadOnlyBatch(Bundle bundle) {
+        if (bundle.getType() == null || bundle.getType().getValueAsEnumConstant() != BundleType.ValueSet.BATCH
+                || bundle.getEntry().isEmpty()) {
+            return false;
+        }
+        for (Bundle.Entry entry : bundle.getEntry()) {
+            Bundle.Entry.Request request = entry.getRequest();
+            if (request == null || request.getMethod() == null || request.getUrl() == null || request.getUrl().getValue() == null) {
+                return false;
+            }
+            HTTPVerb.ValueSet method = request.getMethod().getValueAsEnumConstant();
+            if ((method != HTTPVerb.ValueSet.GET && method != HTTPVerb.ValueSet.HEAD) || request.getUrl().getValue().contains("$")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public FHIRPersistenceTransaction getTransaction() throws Exception {
         return persistence.getTransaction();
@@ -1260,7 +1566,13 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
 
             Set<String> localIdentifiers = new HashSet<>();
 
-            for (Bundle.Entry requestEntry : bundle.getEntry()) {
+            // Validate the resources of all the entries up front. Resource validation is the expensive part
+            // of validating the bundle and doesn't depend on the other entries, so it is done in parallel.
+            List<ResourceValidation> resourceValidations = prepareInParallel(bundle.getEntry(),
+                requestEntry -> requestEntry.getResource() != null ? ResourceValidation.of(this, requestEntry.getResource()) : null);
+
+            for (int entryIndex = 0; entryIndex < bundle.getEntry().size(); entryIndex++) {
+                Bundle.Entry requestEntry = bundle.getEntry().get(entryIndex);
                 // Create a corresponding response entry and add it to the response bundle.
                 Bundle.Entry.Response response;
                 Bundle.Entry responseEntry = null;
@@ -1307,7 +1619,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
 
                     // If the request entry contains a resource, then validate it now.
                     if (resource != null) {
-                        List<Issue> issues = validateResource(resource);
+                        List<Issue> issues = resourceValidations.get(entryIndex).getIssues();
                         if (!issues.isEmpty()) {
                             if (anyFailureInIssues(issues)) {
                                 if (requestType == BundleType.ValueSet.TRANSACTION) {
@@ -1342,8 +1654,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
                     responseEntry = Bundle.Entry.builder().response(response).build();
                 } catch (FHIROperationException e) {
                     if (log.isLoggable(Level.FINE)) {
-                        log.log(Level.FINE, "Failed to process BundleEntry ["
-                                + bundle.getEntry().indexOf(requestEntry) + "]", e);
+                        log.log(Level.FINE, "Failed to process BundleEntry [" + entryIndex + "]", e);
                     }
                     if (requestType == BundleType.ValueSet.TRANSACTION) {
                         issueList.addAll(e.getIssues());
@@ -1570,6 +1881,10 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             // Build a mapping of local identifiers to external identifiers for local reference resolution.
             Map<String, String> localRefMap = buildLocalRefMap(requestBundle, responseBundle);
 
+            // Map the local references of all the entries now, if possible, so that only the
+            // interactions with the persistence layer are left for the ordered processing below.
+            requestBundle = mapLocalReferences(requestBundle, responseBundle, localRefMap);
+
             // Process entries.
             responseBundle = processEntriesForMethod(requestBundle, responseBundle, HTTPVerb.DELETE,
                     txn != null, localRefMap, requestProperties, bundleRequestCorrelationId);
@@ -1603,6 +1918,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             // Clear both correlation id fields since we're done processing the bundle.
             bundleRequestCorrelationId = null;
             bundleTransactionCorrelationId = null;
+            bundleLocalReferencesMapped = false;
 
             if (txn != null) {
                 txn.rollback();
@@ -2015,9 +2331,9 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             }
 
             // Convert any local references found within the resource to their corresponding external reference.
-            ReferenceMappingVisitor<Resource> visitor = new ReferenceMappingVisitor<Resource>(localRefMap);
-            resource.accept(visitor);
-            resource = visitor.getResult();
+            if (!bundleLocalReferencesMapped) {
+                resource = mapLocalReferences(resource, localRefMap);
+            }
 
             // Determine if we have a pre-generated resource ID
             String resourceId = retrieveGeneratedIdentifier(localRefMap, localIdentifier);
@@ -2106,9 +2422,9 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         Resource resource = requestEntry.getResource();
 
         // Convert any local references found within the resource to their corresponding external reference.
-        ReferenceMappingVisitor<Resource> visitor = new ReferenceMappingVisitor<Resource>(localRefMap);
-        resource.accept(visitor);
-        resource = visitor.getResult();
+        if (!bundleLocalReferencesMapped) {
+            resource = mapLocalReferences(resource, localRefMap);
+        }
 
         // Perform the 'update' operation.
         String ifMatchBundleValue = null;
@@ -2389,6 +2705,138 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         }
     }
 
+    /**
+     * Converts the local references of the resources of the POST and PUT request entries to their corresponding
+     * external references, in parallel.
+     *
+     * <p>This is only possible if the external identifiers of all of the local identifiers in the bundle are
+     * already known. If the bundle contains a conditional create or conditional update with a local identifier,
+     * whose external identifier is only known once it has been processed, then the request bundle is returned
+     * unchanged and the local references are mapped while processing each entry.
+     *
+     * @param requestBundle
+     *            the bundle containing the requests
+     * @param responseBundle
+     *            the bundle containing the responses
+     * @param localRefMap
+     *            the map of local references to external references
+     * @return the request bundle with the local references of its resources mapped, or the original request bundle
+     * @throws Exception
+     */
+    private Bundle mapLocalReferences(Bundle requestBundle, Bundle responseBundle, Map<String, String> localRefMap) throws Exception {
+        List<Integer> entryIndices = new ArrayList<>();
+        for (int entryIndex = 0; entryIndex < requestBundle.getEntry().size(); ++entryIndex) {
+            Bundle.Entry requestEntry = requestBundle.getEntry().get(entryIndex);
+            Bundle.Entry.Request request = requestEntry.getRequest();
+            Bundle.Entry.Response response = responseBundle.getEntry().get(entryIndex).getResponse();
+
+            if (response.getStatus().equals(SC_OK_STRING) &&
+                    (request.getMethod().equals(HTTPVerb.POST) || request.getMethod().equals(HTTPVerb.PUT))) {
+                String localIdentifier = retrieveLocalIdentifier(requestEntry);
+                if (localIdentifier != null && !localRefMap.containsKey(localIdentifier)) {
+                    // the external identifier of this entry is only known once it has been processed
+                    return requestBundle;
+                }
+                if (requestEntry.getResource() != null) {
+                    entryIndices.add(entryIndex);
+                }
+            }
+        }
+
+        List<Resource> mappedResources = prepareInParallel(entryIndices,
+            entryIndex -> mapLocalReferences(requestBundle.getEntry().get(entryIndex).getResource(), localRefMap));
+
+        List<Bundle.Entry> entries = new ArrayList<>(requestBundle.getEntry());
+        for (int i = 0; i < entryIndices.size(); i++) {
+            int entryIndex = entryIndices.get(i);
+            entries.set(entryIndex, entries.get(entryIndex).toBuilder().resource(mappedResources.get(i)).build());
+        }
+        bundleLocalReferencesMapped = true;
+        return requestBundle.toBuilder().entry(entries).build();
+    }
+
+    /**
+     * Converts any local references found within the resource to their corresponding external reference.
+     *
+     * @param resource
+     *            the resource
+     * @param localRefMap
+     *            the map of local references to external references
+     * @return the resource with its local references mapped
+     */
+    private static Resource mapLocalReferences(Resource resource, Map<String, String> localRefMap) {
+        ReferenceMappingVisitor<Resource> visitor = new ReferenceMappingVisitor<Resource>(localRefMap);
+        resource.accept(visitor);
+        return visitor.getResult();
+    }
+
+    /**
+     * Applies the function to each of the items on the bundle preparation pool and returns the results in the
+     * order of the items. The function is called with the request context of the caller.
+     *
+     * @param items
+     *            the items to be prepared
+     * @param function
+     *            the function to apply to each item; must not modify shared state
+     * @return the results of the function, in the order of the items
+     * @throws Exception
+     */
+    private static <T, R> List<R> prepareInParallel(List<T> items, Function<T, R> function) throws Exception {
+        if (items.size() < 2) {
+            return items.stream().map(function).collect(Collectors.toList());
+        }
+
+        final FHIRRequestContext requestContext = FHIRRequestContext.get();
+        try {
+            return bundlePreparePool.submit(() -> items.parallelStream().map(item -> {
+                FHIRRequestContext.set(requestContext);
+                try {
+                    return function.apply(item);
+                } finally {
+                    // Don't leave the request context behind on the pool thread
+                    FHIRRequestContext.remove();
+                }
+            }).collect(Collectors.toList())).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The result of validating the resource of a bundle entry, computed before the entry is checked.
+     */
+    private static class ResourceValidation {
+        private final List<Issue> issues;
+        private final FHIRValidationException exception;
+
+        private ResourceValidation(List<Issue> issues, FHIRValidationException exception) {
+            this.issues = issues;
+            this.exception = exception;
+        }
+
+        private static ResourceValidation of(FHIRRestHelper helper, Resource resource) {
+            try {
+                return new ResourceValidation(helper.validateResource(resource), null);
+            } catch (FHIRValidationException e) {
+                return new ResourceValidation(null, e);
+            }
+        }
+
+        /**
+         * @return the validation issues
+         * @throws FHIRValidationException if the validation failed
+         */
+        private List<Issue> getIssues() throws FHIRValidationException {
+            if (exception != null) {
+                throw exception;
+            }
+            return issues;
+        }
+    }
+
     /**
      * This method will retrieve the local identifier associated with the specified bundle request entry, or return null
      * if the fullUrl field is not specified or doesn't contain a local identifier.
@@ -2896,6 +3344,7 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         if (searchContext != null) {
             props.put(FHIRPersistenceEvent.PROPNAME_SEARCH_CONTEXT_IMPL, searchContext);
         }
+        props.put(FHIRPersistenceEvent.PROPNAME_REFERENCE_RESOLVER, getReferenceResolver());
         return props;
     }
 
@@ -2940,6 +3389,11 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
         return result;
     }
 
+    @Override
+    public ReferenceResolver getReferenceResolver() {
+        return referenceResolver;
+    }
+
     /**
      * Validate a resource. First validate profile assertions for the resource if configured to do so,
      * then validate the resource itself.
@@ -3053,7 +3507,15 @@ public class FHIRRestHelper implements FHIRResourceHelpers {
             }
         }
 
-        return FHIRValidator.validator().validate(resource);
+        long start = System.nanoTime();
+        try {
+            // resolve() in the profile constraints can read the referenced resources from this server
+            EvaluationContext evaluationContext = new EvaluationContext(resource);
+            evaluationContext.setReferenceResolver(getReferenceResolver());
+            return FHIRValidator.validator().validate(evaluationContext);
+        } finally {
+            RequestTimings.record(RequestPhase.VALIDATION, start);
+        }
     }
 
     /**
@@ -0,0 +1,191 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.util;
+
+import static com.ibm.fhir.model.util.FHIRUtil.REFERENCE_PATTERN;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.path.spi.ReferenceResolver;
+import com.ibm.fhir.search.SearchConstants;
+import com.ibm.fhir.search.util.ReferenceUtil;
+import com.ibm.fhir.server.operation.spi.FHIRResourceHelpers;
+
+/**
+ * A {@link ReferenceResolver} which loads the targets of references from this server.
+ *
+ * <p>The references are grouped by resource type, and each group is fetched with a single _id search
+ * (or as few as the maximum page size allows). Version-specific references are fetched with a vread.
+ * All reads go through the {@link FHIRResourceHelpers}, so persistence interceptors (e.g. for
+ * authorization) see every resource which is resolved.
+ *
+ * <p>Resolved resources are cached for the lifetime of this object, which is intended to be a single request.
+ * Absolute references are only resolved if their base URL matches the service base URL of the request.
+ *
+ * <p>Resources are only read on the thread which created the resolver, because the reads must run in the
+ * request's transaction. On other threads (e.g. when the entries of a bundle are validated in parallel),
+ * only the references which were already resolved are returned.
+ */
+public class FHIRRestReferenceResolver implements ReferenceResolver {
+    private static final Logger log = Logger.getLogger(FHIRRestReferenceResolver.class.getName());
+
+    // Matcher groups of FHIRUtil.REFERENCE_PATTERN
+    private static final int BASE_URL = 1;
+    private static final int RESOURCE_TYPE = 4;
+
+    private final FHIRResourceHelpers helpers;
+
+    // The request thread, which is the only one allowed to read resources
+    private final Thread owner;
+
+    // References resolved so far. Null values are references which could not be resolved.
+    private final Map<String, Resource> cache = new HashMap<>();
+
+    /**
+     * Public constructor
+     * @param helpers the helpers used to read the resources
+     */
+    public FHIRRestReferenceResolver(FHIRResourceHelpers helpers) {
+        this.helpers = helpers;
+        this.owner = Thread.currentThread();
+    }
+
+    @Override
+    public synchronized Map<String, Resource> resolve(Collection<String> references) {
+        Map<String, Resource> result = new HashMap<>();
+        if (Thread.currentThread() != owner) {
+            for (String reference : references) {
+                addResult(result, reference, cache.get(reference));
+            }
+            return result;
+        }
+
+        // resource type -> logical id -> references to that resource
+        Map<String, Map<String, List<String>>> unversioned = new LinkedHashMap<>();
+        String baseUrl = null;
+        for (String reference : references) {
+            if (cache.containsKey(reference)) {
+                addResult(result, reference, cache.get(reference));
+                continue;
+            }
+            cache.put(reference, null);
+
+            String relativeReference = reference;
+            Matcher matcher = REFERENCE_PATTERN.matcher(reference);
+            if (!matcher.matches()) {
+                continue;
+            }
+            if (matcher.group(BASE_URL) != null) {
+                if (baseUrl == null) {
+                    baseUrl = getServiceBaseUrl();
+                }
+                if (baseUrl == null || !reference.startsWith(baseUrl)) {
+                    // a reference to another server
+                    continue;
+                }
+                relativeReference = reference.substring(baseUrl.length());
+            }
+
+            String resourceType = matcher.group(RESOURCE_TYPE);
+            String[] parts = relativeReference.split("/");
+            if (parts.length < 2 || !resourceType.equals(parts[0])) {
+                continue;
+            }
+            String logicalId = parts[1];
+
+            if (parts.length == 4) {
+                Resource resource = vread(resourceType, logicalId, parts[3]);
+                cache.put(reference, resource);
+                addResult(result, reference, resource);
+            } else {
+                unversioned.computeIfAbsent(resourceType, k -> new LinkedHashMap<>())
+                    .computeIfAbsent(logicalId, k -> new ArrayList<>()).add(reference);
+            }
+        }
+
+        for (Map.Entry<String, Map<String, List<String>>> typeEntry : unversioned.entrySet()) {
+            String resourceType = typeEntry.getKey();
+            List<String> logicalIds = new ArrayList<>(typeEntry.getValue().keySet());
+            for (int start = 0; start < logicalIds.size(); start += SearchConstants.MAX_PAGE_SIZE) {
+                List<String> chunk = logicalIds.subList(start, Math.min(logicalIds.size(), start + SearchConstants.MAX_PAGE_SIZE));
+                for (Resource resource : search(resourceType, chunk)) {
+                    List<String> resolved = typeEntry.getValue().get(resource.getId());
+                    if (resolved != null) {
+                        for (String reference : resolved) {
+                            cache.put(reference, resource);
+                            addResult(result, reference, resource);
+                        }
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Fetch the current versions of the given resources with a single search
+     */
+    private List<Resource> search(String resourceType, List<String> logicalIds) {
+        List<Resource> result = new ArrayList<>(logicalIds.size());
+        MultivaluedMap<String, String> queryParameters = new MultivaluedHashMap<>();
+        queryParameters.putSingle("_id", String.join(",", logicalIds));
+        queryParameters.putSingle(SearchConstants.COUNT, Integer.toString(logicalIds.size()));
+        try {
+            Bundle bundle = helpers.doSearch(resourceType, null, null, queryParameters, null, null, null);
+            for (Bundle.Entry entry : bundle.getEntry()) {
+                if (entry.getResource() != null) {
+                    result.add(entry.getResource());
+                }
+            }
+        } catch (Exception e) {
+            if (log.isLoggable(Level.FINE)) {
+                log.log(Level.FINE, "Unable to resolve references to " + resourceType + " resources", e);
+            }
+        }
+        return result;
+    }
+
+    private Resource vread(String resourceType, String logicalId, String versionId) {
+        try {
+            return helpers.doVRead(resourceType, logicalId, versionId, null);
+        } catch (Exception e) {
+            if (log.isLoggable(Level.FINE)) {
+                log.log(Level.FINE, "Unable to resolve reference to " + resourceType + "/" + logicalId + "/_history/" + versionId, e);
+            }
+            return null;
+        }
+    }
+
+    private String getServiceBaseUrl() {
+        try {
+            return ReferenceUtil.getBaseUrl(null);
+        } catch (Exception e) {
+            log.log(Level.FINE, "Unable to determine the service base URL", e);
+            return null;
+        }
+    }
+
+    private void addResult(Map<String, Resource> result, String reference, Resource resource) {
+        if (resource != null) {
+            result.put(reference, resource);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.ibm.fhir.config.metrics.RequestPhase;
+import com.ibm.fhir.config.metrics.RequestTimings;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.generator.FHIRGenerator;
+import com.ibm.fhir.model.generator.exception.FHIRGeneratorException;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.persistence.SearchResultCursor;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
+
+/**
+ * Writes a searchset Bundle in JSON with one entry for each resource of a {@link SearchResultCursor}, writing
+ * each entry as soon as its resource is read rather than building the whole Bundle first. Everything but the
+ * entries (id, meta, type, total and links) comes from a Bundle which is written first, since the elements of
+ * a Bundle all precede its entries.
+ *
+ * <p>The search runs in a transaction which stays open while the response is written, and which is committed
+ * once all the entries have been written.
+ */
+public class SearchBundleStreamingOutput implements StreamingOutput {
+    private static final Logger log = Logger.getLogger(SearchBundleStreamingOutput.class.getName());
+
+    private final Bundle bundle;
+    private final SearchResultCursor cursor;
+    private final FHIRTransactionHelper txn;
+    private final String baseUri;
+    private final int matchResourceCount;
+
+    /**
+     * Public constructor
+     * @param bundle the Bundle without any entries
+     * @param cursor the search results to write as the entries of the Bundle
+     * @param txn the transaction the search runs in, which is committed once the results are written
+     * @param baseUri the base URI of the fullUrl of the entries
+     * @param matchResourceCount the number of resources at the start of the results which are matches
+     */
+    public SearchBundleStreamingOutput(Bundle bundle, SearchResultCursor cursor, FHIRTransactionHelper txn, String baseUri,
+            int matchResourceCount) {
+        this.bundle = bundle;
+        this.cursor = cursor;
+        this.txn = txn;
+        this.baseUri = baseUri;
+        this.matchResourceCount = matchResourceCount;
+    }
+
+    /**
+     * @return the Bundle without any entries
+     */
+    public Bundle getBundle() {
+        return bundle;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        boolean committed = false;
+        try {
+            FHIRGenerator generator = FHIRGenerator.generator(Format.JSON);
+
+            // Write the Bundle without the closing brace, to add the entries to it
+            long start = System.nanoTime();
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            generator.generate(bundle, header);
+            RequestTimings.record(RequestPhase.RESPONSE, start);
+            byte[] headerBytes = header.toByteArray();
+            int end = headerBytes.length - 1;
+            while (end >= 0 && headerBytes[end] != '}') {
+                end--;
+            }
+            out.write(headerBytes, 0, end);
+
+            int remainingMatches = matchResourceCount;
+            boolean first = true;
+            Resource resource;
+            while ((resource = cursor.next()) != null) {
+                if (resource.getId() == null) {
+                    throw new IllegalStateException("Returned resources must have an id.");
+                }
+                write(out, first ? ",\"entry\":[" : ",");
+                first = false;
+
+                String fullUrl = baseUri + "/" + resource.getClass().getSimpleName() + "/" + resource.getId();
+                write(out, "{\"fullUrl\":\"" + escape(fullUrl) + "\",\"resource\":");
+                start = System.nanoTime();
+                generator.generate(resource, out);
+                RequestTimings.record(RequestPhase.RESPONSE, start);
+                // Search mode is determined by the number of matches, as for the complete Bundle
+                write(out, ",\"search\":{\"mode\":\"" + (remainingMatches-- > 0 ? "match" : "include") + "\",\"score\":1}}");
+            }
+            write(out, first ? "}" : "]}");
+            out.flush();
+
+            cursor.close();
+            txn.commit();
+            committed = true;
+        } catch (FHIRGeneratorException | FHIRPersistenceException e) {
+            // The response has been started, so all that can be done is to cut it short
+            throw new IOException("an error occurred while writing the search results", e);
+        } finally {
+            if (!committed) {
+                try {
+                    cursor.close();
+                } catch (FHIRPersistenceException e) {
+                    log.log(Level.WARNING, "an error occurred while closing the search results", e);
+                }
+                try {
+                    txn.rollback();
+                } catch (FHIRPersistenceException e) {
+                    log.log(Level.WARNING, "an error occurred while rolling back the search transaction", e);
+                }
+            }
+        }
+    }
+
+    private static void write(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Escape the given value for a JSON string
+     */
+    private static String escape(String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2020
+ * (C) Copyright IBM Corp. 2020, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -8,7 +8,9 @@ package com.ibm.fhir.server.test;
 
 import static com.ibm.fhir.model.type.String.string;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import javax.ws.rs.core.Response;
@@ -1959,4 +1961,97 @@ public class FHIRRestHelperTest {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Test transaction bundle post with many entries, whose resources are validated and
+     * whose local references are mapped in parallel before the entries are processed.
+     * Each Procedure has a local reference to the Patient, which is last in the bundle.
+     */
+    @Test
+    public void testTransactionBundlePostManyWithDependency() throws Exception {
+        FHIRPersistence persistence = new MockPersistenceImpl();
+        FHIRRestHelper helper = new FHIRRestHelper(persistence);
+
+        final int procedureCount = 20;
+        Bundle.Builder requestBundleBuilder = Bundle.builder()
+                .id("bundle1")
+                .type(BundleType.TRANSACTION);
+        for (int i = 0; i < procedureCount; i++) {
+            Procedure procedure = Procedure.builder()
+                    .status(ProcedureStatus.COMPLETED)
+                    .subject(Reference.builder()
+                        .reference(string("urn:patient"))
+                        .build())
+                    .build();
+            requestBundleBuilder.entry(Bundle.Entry.builder()
+                .fullUrl(Uri.of("urn:procedure" + i))
+                .resource(procedure)
+                .request(Bundle.Entry.Request.builder()
+                    .method(HTTPVerb.POST)
+                    .url(Uri.of("Procedure"))
+                    .build())
+                .build());
+        }
+        requestBundleBuilder.entry(Bundle.Entry.builder()
+            .fullUrl(Uri.of("urn:patient"))
+            .resource(Patient.builder().build())
+            .request(Bundle.Entry.Request.builder()
+                .method(HTTPVerb.POST)
+                .url(Uri.of("Patient"))
+                .build())
+            .build());
+
+        // Process bundle
+        FHIRRequestContext.get().setOriginalRequestUri("test");
+        FHIRRequestContext.get().setReturnPreference(HTTPReturnPreference.REPRESENTATION);
+        Bundle responseBundle = helper.doBundle(requestBundleBuilder.build(), null);
+
+        // Validate results; the ids are generated in bundle order before any entry is processed
+        assertNotNull(responseBundle);
+        assertEquals(procedureCount + 1, responseBundle.getEntry().size());
+        for (int i = 0; i < procedureCount; i++) {
+            Bundle.Entry entry = responseBundle.getEntry().get(i);
+            assertEquals("Procedure/generated-" + i + "/_history/1", entry.getResponse().getLocation().getValue());
+            assertEquals(Integer.toString(Response.Status.CREATED.getStatusCode()), entry.getResponse().getStatus().getValue());
+            Procedure returnedProcedure = (Procedure) entry.getResource();
+            assertEquals("Patient/generated-" + procedureCount, returnedProcedure.getSubject().getReference().getValue());
+        }
+        Bundle.Entry patientEntry = responseBundle.getEntry().get(procedureCount);
+        assertEquals("Patient/generated-" + procedureCount + "/_history/1", patientEntry.getResponse().getLocation().getValue());
+    }
+
+    /**
+     * Test which bundles are processed as read-only batches
+     */
+    @Test
+    public void testIsReadOnlyBatch() throws Exception {
+        Bundle.Entry readEntry = Bundle.Entry.builder()
+            .request(Bundle.Entry.Request.builder()
+                .method(HTTPVerb.GET)
+                .url(Uri.of("Patient/1"))
+                .build())
+            .build();
+        Bundle.Entry searchEntry = Bundle.Entry.builder()
+            .request(Bundle.Entry.Request.builder()
+                .method(HTTPVerb.GET)
+                .url(Uri.of("Observation?subject=Patient/1"))
+                .build())
+            .build();
+        Bundle.Entry operationEntry = Bundle.Entry.builder()
+            .request(Bundle.Entry.Request.builder()
+                .method(HTTPVerb.GET)
+                .url(Uri.of("Patient/1/$everything"))
+                .build())
+            .build();
+        Bundle.Entry deleteEntry = Bundle.Entry.builder()
+            .request(Bundle.Entry.Request.builder()
+                .method(HTTPVerb.DELETE)
+                .url(Uri.of("Patient/1"))
+                .build())
+            .build();
+
+        assertTrue(FHIRRestHelper.isReadOnlyBatch(Bundle.builder().type(BundleType.BATCH).entry(readEntry, searchEntry).build()));
+        assertFalse(FHIRRestHelper.isReadOnlyBatch(Bundle.builder().type(BundleType.BATCH).entry(readEntry, deleteEntry).build()));
+        assertFalse(FHIRRestHelper.isReadOnlyBatch(Bundle.builder().type(BundleType.BATCH).entry(readEntry, operationEntry).build()));
+        assertFalse(FHIRRestHelper.isReadOnlyBatch(Bundle.builder().type(BundleType.TRANSACTION).entry(readEntry, searchEntry).build()));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Id;
+import com.ibm.fhir.model.type.Meta;
+import com.ibm.fhir.model.type.code.BundleType;
+import com.ibm.fhir.search.SearchConstants;
+import com.ibm.fhir.server.operation.spi.FHIRResourceHelpers;
+import com.ibm.fhir.server.util.FHIRRestReferenceResolver;
+
+/**
+ * Unit test for {@link FHIRRestReferenceResolver}, with fake resource helpers
+ */
+public class FHIRRestReferenceResolverTest {
+
+    /**
+     * Records the searches and vreads, and finds every Patient except those with an id starting with "missing"
+     */
+    private static class FakeHelpers {
+        final List<MultivaluedMap<String, String>> searches = new ArrayList<>();
+        final List<String> vreads = new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        FHIRResourceHelpers create() {
+            return (FHIRResourceHelpers) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { FHIRResourceHelpers.class },
+                (proxy, method, args) -> {
+                    if ("doSearch".equals(method.getName()) && args.length == 7) {
+                        String type = (String) args[0];
+                        MultivaluedMap<String, String> queryParameters = (MultivaluedMap<String, String>) args[3];
+                        searches.add(queryParameters);
+                        if (!"Patient".equals(type)) {
+                            throw new IllegalStateException("unexpected search of " + type);
+                        }
+                        Bundle.Builder bundle = Bundle.builder().type(BundleType.SEARCHSET);
+                        for (String id : queryParameters.getFirst("_id").split(",")) {
+                            if (!id.startsWith("missing")) {
+                                bundle.entry(Bundle.Entry.builder().resource(patient(id, "1")).build());
+                            }
+                        }
+                        return bundle.build();
+                    }
+                    if ("doVRead".equals(method.getName()) && args.length == 4) {
+                        vreads.add(args[0] + "/" + args[1] + "/" + args[2]);
+                        return args[1].toString().startsWith("missing") ? null : patient((String) args[1], (String) args[2]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        }
+    }
+
+    private static Patient patient(String id, String versionId) {
+        return Patient.builder()
+                .id(id)
+                .meta(Meta.builder().versionId(Id.of(versionId)).build())
+                .build();
+    }
+
+    @Test
+    public void testSearchChunks() throws Exception {
+        FakeHelpers helpers = new FakeHelpers();
+        FHIRRestReferenceResolver resolver = new FHIRRestReferenceResolver(helpers.create());
+
+        List<String> references = new ArrayList<>();
+        for (int i = 0; i <= SearchConstants.MAX_PAGE_SIZE; i++) {
+            references.add("Patient/p" + i);
+        }
+        // a duplicate reference doesn't add an id to the search
+        references.add("Patient/p0");
+
+        Map<String, Resource> result = resolver.resolve(references);
+        assertEquals(result.size(), SearchConstants.MAX_PAGE_SIZE + 1);
+        assertEquals(result.get("Patient/p7").getId(), "p7");
+
+        // one search per page of ids
+        assertEquals(helpers.searches.size(), 2);
+        assertEquals(helpers.searches.get(0).getFirst("_id").split(",").length, SearchConstants.MAX_PAGE_SIZE);
+        assertEquals(helpers.searches.get(0).getFirst(SearchConstants.COUNT), Integer.toString(SearchConstants.MAX_PAGE_SIZE));
+        assertEquals(helpers.searches.get(1).getFirst("_id"), "p" + SearchConstants.MAX_PAGE_SIZE);
+        assertEquals(helpers.searches.get(1).getFirst(SearchConstants.COUNT), "1");
+
+        // resolved references are cached
+        Map<String, Resource> again = resolver.resolve(Arrays.asList("Patient/p7", "Patient/p8"));
+        assertSame(again.get("Patient/p7"), result.get("Patient/p7"));
+        assertEquals(again.size(), 2);
+        assertEquals(helpers.searches.size(), 2);
+    }
+
+    @Test
+    public void testVersionedReference() throws Exception {
+        FakeHelpers helpers = new FakeHelpers();
+        FHIRRestReferenceResolver resolver = new FHIRRestReferenceResolver(helpers.create());
+
+        Map<String, Resource> result = resolver.resolve(Arrays.asList("Patient/p1/_history/2", "Patient/p1"));
+        assertEquals(result.get("Patient/p1/_history/2").getMeta().getVersionId().getValue(), "2");
+        assertEquals(result.get("Patient/p1").getMeta().getVersionId().getValue(), "1");
+        assertEquals(helpers.vreads, Collections.singletonList("Patient/p1/2"));
+        assertEquals(helpers.searches.size(), 1);
+        assertEquals(helpers.searches.get(0).getFirst("_id"), "p1");
+    }
+
+    @Test
+    public void testUnresolvable() throws Exception {
+        FakeHelpers helpers = new FakeHelpers();
+        FHIRRestReferenceResolver resolver = new FHIRRestReferenceResolver(helpers.create());
+
+        List<String> references = Arrays.asList(
+            "Patient/missing1",
+            "Patient/missing2/_history/1",
+            // the search of Observations fails
+            "Observation/o1",
+            "not a reference",
+            "#contained",
+            "Patient/p1");
+        Map<String, Resource> result = resolver.resolve(references);
+        assertEquals(result.keySet(), Collections.singleton("Patient/p1"));
+        assertEquals(helpers.searches.size(), 2);
+        assertEquals(helpers.vreads.size(), 1);
+
+        // references which couldn't be resolved aren't fetched again
+        result = resolver.resolve(references);
+        assertEquals(result.size(), 1);
+        assertEquals(helpers.searches.size(), 2);
+        assertEquals(helpers.vreads.size(), 1);
+    }
+
+    @Test
+    public void testOtherThread() throws Exception {
+        FakeHelpers helpers = new FakeHelpers();
+        FHIRRestReferenceResolver resolver = new FHIRRestReferenceResolver(helpers.create());
+        resolver.resolve(Collections.singletonList("Patient/p1"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // only the references already resolved by the owner thread are returned
+            Map<String, Resource> result = executor.submit(() -> resolver.resolve(Arrays.asList("Patient/p1", "Patient/p2")))
+                    .get(10, TimeUnit.SECONDS);
+            assertTrue(result.containsKey("Patient/p1"));
+            assertFalse(result.containsKey("Patient/p2"));
+            assertEquals(helpers.searches.size(), 1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.server.test;
+
+import static com.ibm.fhir.model.type.String.string;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.Test;
+
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.Bundle;
+import com.ibm.fhir.model.resource.Patient;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.UnsignedInt;
+import com.ibm.fhir.model.type.Url;
+import com.ibm.fhir.model.type.code.BundleType;
+import com.ibm.fhir.model.type.code.SearchEntryMode;
+import com.ibm.fhir.persistence.SearchResultCursor;
+import com.ibm.fhir.persistence.exception.FHIRPersistenceException;
+import com.ibm.fhir.persistence.helper.FHIRTransactionHelper;
+import com.ibm.fhir.server.util.SearchBundleStreamingOutput;
+
+/**
+ * Unit test for the {@link SearchBundleStreamingOutput}
+ */
+public class SearchBundleStreamingOutputTest {
+    private static final String BASE_URI = "https://localhost:9443/fhir-server/api/v4";
+
+    private Bundle header(int total) {
+        return Bundle.builder()
+                .id("b1")
+                .type(BundleType.SEARCHSET)
+                .total(UnsignedInt.of(total))
+                .link(Bundle.Link.builder().relation(string("self")).url(Url.of(BASE_URI + "/Patient?_count=2")).build())
+                .build();
+    }
+
+    private Bundle write(Bundle header, SearchResultCursor cursor, int matchResourceCount) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SearchBundleStreamingOutput(header, cursor, new FHIRTransactionHelper(new MockTransactionAdapter()), BASE_URI,
+            matchResourceCount).write(out);
+        return FHIRParser.parser(Format.JSON).parse(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testEntries() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        SearchResultCursor results = SearchResultCursor.of(Arrays.<Resource>asList(
+            Patient.builder().id("p1").build(), Patient.builder().id("p2").build(), Patient.builder().id("p3").build()));
+        SearchResultCursor cursor = new SearchResultCursor() {
+            @Override
+            public Resource next() throws FHIRPersistenceException {
+                return results.next();
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        Bundle bundle = write(header(5), cursor, 2);
+        assertEquals(bundle.getId(), "b1");
+        assertEquals(bundle.getTotal().getValue().intValue(), 5);
+        assertEquals(bundle.getLink().size(), 1);
+        assertEquals(bundle.getEntry().size(), 3);
+        assertEquals(bundle.getEntry().get(0).getFullUrl().getValue(), BASE_URI + "/Patient/p1");
+        assertEquals(bundle.getEntry().get(0).getResource().getId(), "p1");
+        assertEquals(bundle.getEntry().get(1).getSearch().getMode(), SearchEntryMode.MATCH);
+        assertEquals(bundle.getEntry().get(2).getSearch().getMode(), SearchEntryMode.INCLUDE);
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testNoEntries() throws Exception {
+        Bundle bundle = write(header(0), SearchResultCursor.of(Collections.emptyList()), 0);
+        assertEquals(bundle.getTotal().getValue().intValue(), 0);
+        assertTrue(bundle.getEntry().isEmpty());
+    }
+}
@@ -33,6 +33,7 @@ import com.ibm.fhir.model.util.ModelSupport;
 import com.ibm.fhir.path.FHIRPathNode;
 import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
 import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.path.spi.ReferenceResolver;
 import com.ibm.fhir.persistence.FHIRPersistence;
 import com.ibm.fhir.persistence.SingleResourceResult;
 import com.ibm.fhir.persistence.context.FHIRPersistenceContext;
@@ -159,13 +160,13 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
     @Override
     public void beforeCreate(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
         DecodedJWT jwt = JWT.decode(getAccessToken());
-        enforce(event.getFhirResource(), getPatientIdFromToken(jwt), Permission.WRITE, getScopesFromToken(jwt));
+        enforce(event.getFhirResource(), getPatientIdFromToken(jwt), Permission.WRITE, getScopesFromToken(jwt), event.getReferenceResolver());
     }
 
     @Override
     public void beforeDelete(FHIRPersistenceEvent event) throws FHIRPersistenceInterceptorException {
         DecodedJWT jwt = JWT.decode(getAccessToken());
-        enforce(event.getPrevFhirResource(), getPatientIdFromToken(jwt), Permission.WRITE, getScopesFromToken(jwt));
+        enforce(event.getPrevFhirResource(), getPatientIdFromToken(jwt), Permission.WRITE, getScopesFromToken(jwt), event.getReferenceResolver());
     }
 
     @Override
@@ -176,8 +177,8 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
 
         // First, check READ permission on the existing resource to ensure we don't write over something that
         // the user doesn't have access to
-        enforce(event.getPrevFhirResource(), patientIdFromToken, Permission.READ, scopesFromToken);
-        enforce(event.getFhirResource(), patientIdFromToken, Permission.WRITE, scopesFromToken);
+        enforce(event.getPrevFhirResource(), patientIdFromToken, Permission.READ, scopesFromToken, event.getReferenceResolver());
+        enforce(event.getFhirResource(), patientIdFromToken, Permission.WRITE, scopesFromToken, event.getReferenceResolver());
     }
 
     @Override
@@ -188,7 +189,7 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
         List<Scope> scopesFromToken = getScopesFromToken(jwt);
 
         enforceDirectProvenanceAccess(event, resource, patientIdFromToken, scopesFromToken);
-        enforce(resource, patientIdFromToken, Permission.READ, scopesFromToken);
+        enforce(resource, patientIdFromToken, Permission.READ, scopesFromToken, event.getReferenceResolver());
     }
 
     @Override
@@ -199,7 +200,7 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
         List<Scope> scopesFromToken = getScopesFromToken(jwt);
 
         enforceDirectProvenanceAccess(event, resource, patientIdFromToken, scopesFromToken);
-        enforce(resource, patientIdFromToken, Permission.READ, scopesFromToken);
+        enforce(resource, patientIdFromToken, Permission.READ, scopesFromToken, event.getReferenceResolver());
     }
 
     @Override
@@ -214,7 +215,7 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
 
                 if (resource != null) {
                     enforceDirectProvenanceAccess(event, resource, patientIdFromToken, scopesFromToken);
-                    enforce(resource, patientIdFromToken, Permission.READ, scopesFromToken);
+                    enforce(resource, patientIdFromToken, Permission.READ, scopesFromToken, event.getReferenceResolver());
                 }
             }
         } else {
@@ -226,7 +227,8 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
     private void enforceDirectProvenanceAccess(FHIRPersistenceEvent event, Resource resource, List<String> patientIdFromToken, List<Scope> scopesFromToken)
             throws FHIRPersistenceInterceptorException {
         if (resource instanceof Provenance) {
-            if (!isAllowed(((Provenance) resource).getTarget(), event.getPersistenceImpl(), patientIdFromToken, Permission.READ, scopesFromToken)) {
+            if (!isAllowed(((Provenance) resource).getTarget(), event.getPersistenceImpl(), patientIdFromToken, Permission.READ, scopesFromToken,
+                    event.getReferenceResolver())) {
                 String msg = Permission.READ + " permission to 'Provenance/" + resource.getId() +
                         "' with context id(s): " + patientIdFromToken +
                         " requires access to one or more of its target resources.";
@@ -247,10 +249,12 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
      * @param contextIds an identifier for the current context (e.g. patient or user) as determined by the scope strings
      * @param requiredPermission
      * @param approvedScopes a list of SMART scopes associated with the request
+     * @param resolver the resolver for the FHIRPath resolve() function, or null
      * @throws IllegalStateException if the baseUrl cannot be computed from the request context
      * @throws FHIRPersistenceInterceptorException if the interaction is not permitted
      */
-    private boolean isAllowed(List<Reference> references, FHIRPersistence persistence, List<String> contextIds, Permission requiredPermission, List<Scope> approvedScopes) {
+    private boolean isAllowed(List<Reference> references, FHIRPersistence persistence, List<String> contextIds, Permission requiredPermission, List<Scope> approvedScopes,
+            ReferenceResolver resolver) {
         boolean allow = false;
 
         String baseUrl;
@@ -267,7 +271,7 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
                 try {
                     SingleResourceResult<? extends Resource> result = executeRead(persistence, referenceValue, resourceType);
 
-                    if (result.isSuccess() && checkCompartment(result.getResource(), CompartmentType.PATIENT, contextIds)) {
+                    if (result.isSuccess() && checkCompartment(result.getResource(), CompartmentType.PATIENT, contextIds, resolver)) {
                         allow = true;
                         break;
                     }
@@ -307,7 +311,7 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
         if (event.getFhirResource() instanceof Bundle) {
             for ( Bundle.Entry entry : ((Bundle) event.getFhirResource()).getEntry() ) {
                 if (entry.getResource() != null) {
-                    enforce(entry.getResource(), patientIdFromToken, Permission.READ, scopesFromToken);
+                    enforce(entry.getResource(), patientIdFromToken, Permission.READ, scopesFromToken, event.getReferenceResolver());
                 }
             }
         } else {
@@ -323,11 +327,12 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
      * @param contextIds an identifier for the current context (e.g. patient or user) as determined by the scope strings
      * @param requiredPermission
      * @param approvedScopes a list of SMART scopes associated with the request
+     * @param resolver the resolver for the FHIRPath resolve() function, or null
      * @throws FHIRPersistenceInterceptorException if the interaction is not permitted
      */
-    private void enforce(Resource resource, List<String> contextIds, Permission requiredPermission, List<Scope> approvedScopes)
-            throws FHIRPersistenceInterceptorException {
-        if (!isAllowed(resource, contextIds, requiredPermission, approvedScopes)) {
+    private void enforce(Resource resource, List<String> contextIds, Permission requiredPermission, List<Scope> approvedScopes,
+            ReferenceResolver resolver) throws FHIRPersistenceInterceptorException {
+        if (!isAllowed(resource, contextIds, requiredPermission, approvedScopes, resolver)) {
             if (log.isLoggable(Level.FINE)) {
                 log.fine(requiredPermission.value() + " permission for '" + resource.getClass().getSimpleName() + "/" + resource.getId() +
                         "' is not granted by any of the provided scopes: " + approvedScopes +
@@ -345,10 +350,11 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
      * @param contextIds an identifier for the current context (e.g. patient or user) as determined by the scope strings
      * @param requiredPermission
      * @param approvedScopes a list of SMART scopes associated with the request
+     * @param resolver the resolver for the FHIRPath resolve() function, or null
      * @throws FHIRPersistenceInterceptorException if the interaction is not permitted
      */
-    private boolean isAllowed(Resource resource, List<String> contextIds, Permission requiredPermission, List<Scope> approvedScopes)
-            throws FHIRPersistenceInterceptorException {
+    private boolean isAllowed(Resource resource, List<String> contextIds, Permission requiredPermission, List<Scope> approvedScopes,
+            ReferenceResolver resolver) throws FHIRPersistenceInterceptorException {
         Objects.requireNonNull(resource, "resource");
         Objects.requireNonNull(contextIds, "contextIds");
 
@@ -383,7 +389,7 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
             }
 
             // Else, see if the target resource belongs to the Patient compartment of the in-context patient
-            return checkCompartment(resource, CompartmentType.PATIENT, contextIds);
+            return checkCompartment(resource, CompartmentType.PATIENT, contextIds, resolver);
         }
 
         if (approvedScopeMap.containsKey(ContextType.USER)) {
@@ -399,10 +405,12 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
      * @param resource
      * @param compartmentType
      * @param contextIds
+     * @param resolver the resolver for the FHIRPath resolve() function in the inclusion criteria, or null
      * @return true if the resource is in one of the compartment defined by the compartmentType and the contextIds
      *          or if the resource type is not applicable for the given compartmentType
      */
-    private boolean checkCompartment(Resource resource, CompartmentType compartmentType, List<String> contextIds) {
+    private boolean checkCompartment(Resource resource, CompartmentType compartmentType, List<String> contextIds,
+            ReferenceResolver resolver) {
         String resourceType = resource.getClass().getSimpleName();
         String compartment = compartmentType.getValue();
 
@@ -425,6 +433,7 @@ public class AuthzPolicyEnforcementPersistenceInterceptor implements FHIRPersist
                     .getCompartmentResourceTypeInclusionCriteria(compartment, resourceType);
 
             EvaluationContext resourceContext = new FHIRPathEvaluator.EvaluationContext(resource);
+            resourceContext.setReferenceResolver(resolver);
 
             for (String searchParmCode : inclusionCriteria) {
                 try {
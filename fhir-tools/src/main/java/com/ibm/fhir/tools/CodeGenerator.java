@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2019, 2020
+ * (C) Copyright IBM Corp. 2019, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -2297,6 +2297,7 @@ public class CodeGenerator {
         cb._import("com.ibm.fhir.model.type.Boolean");
         cb._import("com.ibm.fhir.model.type.Integer");
         cb._import("com.ibm.fhir.model.type.String");
+        cb._import("com.ibm.fhir.model.util.ElementInterner");
         cb._import("com.ibm.fhir.model.util.XMLSupport.StreamReaderDelegate");
         cb.newLine();
 
@@ -2604,10 +2605,12 @@ public class CodeGenerator {
 
         cb._break();
 
+        // the String and Uri parse methods also parse code, id, canonical and the other subtypes
+        boolean intern = "String".equals(generatedClassName) || "Uri".equals(generatedClassName);
         cb._case("XMLStreamReader.END_ELEMENT")
             ._if("reader.getLocalName().equals(elementName)")
                 .invoke("stackPop", args())
-                ._return("builder.build()")
+                ._return(intern ? "ElementInterner.intern(builder.build())" : "builder.build()")
             ._end()
             ._break();
 
@@ -2698,6 +2701,7 @@ public class CodeGenerator {
         cb._import("com.ibm.fhir.model.type.Integer");
         cb._import("com.ibm.fhir.model.type.String");
         cb._import("com.ibm.fhir.model.util.ElementFilter");
+        cb._import("com.ibm.fhir.model.util.ElementInterner");
         cb.newLine();
 
         cb._import("net.jcip.annotations.NotThreadSafe");
@@ -3124,7 +3128,12 @@ public class CodeGenerator {
         }
 
         cb.invoke("stackPop", args());
-        cb._return("builder.build()");
+        if ("String".equals(generatedClassName) || "Uri".equals(generatedClassName)) {
+            // the String and Uri parse methods also parse code, id, canonical and the other subtypes
+            cb._return("ElementInterner.intern(builder.build())");
+        } else {
+            cb._return("builder.build()");
+        }
         cb.end().newLine();
 
         if ("String".equals(generatedClassName) || "Uri".equals(generatedClassName) || "Integer".equals(generatedClassName)) {
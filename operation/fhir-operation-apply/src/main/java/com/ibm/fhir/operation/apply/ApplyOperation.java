@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2017, 2020
+ * (C) Copyright IBM Corp. 2017, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -10,8 +10,11 @@ import static com.ibm.fhir.model.type.String.string;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.ws.rs.core.MultivaluedMap;
 
@@ -40,12 +43,19 @@ import com.ibm.fhir.model.type.Quantity;
 import com.ibm.fhir.model.type.Reference;
 import com.ibm.fhir.model.type.SimpleQuantity;
 import com.ibm.fhir.model.type.Uri;
+import com.ibm.fhir.model.type.Expression;
+import com.ibm.fhir.model.type.code.ActionConditionKind;
 import com.ibm.fhir.model.type.code.CarePlanActivityKind;
 import com.ibm.fhir.model.type.code.CarePlanActivityStatus;
 import com.ibm.fhir.model.type.code.CarePlanIntent;
 import com.ibm.fhir.model.type.code.CarePlanStatus;
 import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
+import com.ibm.fhir.path.FHIRPathNode;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
+import com.ibm.fhir.path.exception.FHIRPathException;
+import com.ibm.fhir.path.util.FHIRPathUtil;
 import com.ibm.fhir.registry.FHIRRegistry;
 import com.ibm.fhir.server.operation.spi.AbstractOperation;
 import com.ibm.fhir.server.operation.spi.FHIROperationContext;
@@ -59,6 +69,7 @@ import com.ibm.fhir.server.util.FHIROperationUtil;
  * @link $apply http://hl7.org/fhir/plandefinition-operation-apply.html
  */
 public class ApplyOperation extends AbstractOperation {
+    private static final Logger log = Logger.getLogger(ApplyOperation.class.getName());
 
     private static final String FILE = "apply.json";
 
@@ -76,6 +87,8 @@ public class ApplyOperation extends AbstractOperation {
     private static final String EXTENSION_BASE_URL =
             "http://ibm.com/fhir/extension/apply/";
 
+    private static final String FHIRPATH_LANGUAGE = "text/fhirpath";
+
     @Override
     protected OperationDefinition buildOperationDefinition() {
         try (InputStream in = getClass().getClassLoader().getResourceAsStream(FILE);) {
@@ -123,8 +136,18 @@ public class ApplyOperation extends AbstractOperation {
             CodeableConcept settingContext =
                     checkAndProcessSettingContext(operationContext, queryParameters, parameters);
 
+            // The applicability conditions are evaluated against the first subject, with the references
+            // it contains resolved from this server
+            EvaluationContext subjectContext = null;
+            Resource subject = readSubject(resourceHelper, subjects.get(0));
+            if (subject != null) {
+                subjectContext = new EvaluationContext(subject);
+                subjectContext.setReferenceResolver(resourceHelper.getReferenceResolver());
+            }
+
             CarePlan carePlan =
-                    transform(resource, subjects, encounter, practitioner, organization, userType, userLanguage, userTaskContext, setting, settingContext);
+                    transform(resource, subjects, encounter, practitioner, organization, userType, userLanguage, userTaskContext, setting,
+                        settingContext, subjectContext);
             return FHIROperationUtil.getOutputParameters(carePlan);
         } catch (FHIROperationException e) {
             throw e;
@@ -226,13 +249,14 @@ public class ApplyOperation extends AbstractOperation {
      * @param userTaskContext
      * @param setting
      * @param settingContext
+     * @param subjectContext
      * @return
      */
     private CarePlan transform(PlanDefinition planDefinition, List<String> subjects,
         String encounter,
         String practitioner, String organization, CodeableConcept userType,
         CodeableConcept userLanguage, CodeableConcept userTaskContext, CodeableConcept setting,
-        CodeableConcept settingContext) {
+        CodeableConcept settingContext, EvaluationContext subjectContext) {
         CarePlan.Builder builder = CarePlan.builder();
 
         if (planDefinition.getUrl() != null) {
@@ -327,7 +351,7 @@ public class ApplyOperation extends AbstractOperation {
             builder.language(b.value(lang.getValue()).build());
         }
 
-        convertFromPlanDefinitionToCarePlan(planDefinition, builder);
+        convertFromPlanDefinitionToCarePlan(planDefinition, builder, subjectContext);
         builder.status(CarePlanStatus.DRAFT);
         return builder.build();
     }
@@ -335,10 +359,11 @@ public class ApplyOperation extends AbstractOperation {
     /**
      * @param planDefinition
      * @param builder
+     * @param subjectContext the context to evaluate the applicability conditions in, or null if the subject can't be read
      */
-    private void convertFromPlanDefinitionToCarePlan(PlanDefinition planDefinition, CarePlan.Builder builder) {
+    private void convertFromPlanDefinitionToCarePlan(PlanDefinition planDefinition, CarePlan.Builder builder, EvaluationContext subjectContext) {
         List<CarePlan.Activity> activities = new ArrayList<>();
-        for (Action action : getActions(planDefinition.getAction())) {
+        for (Action action : getActions(planDefinition.getAction(), subjectContext)) {
             CarePlan.Activity.Builder cab = CarePlan.Activity.builder();
 
             ActivityDefinition activityDefinition = null;
@@ -420,17 +445,77 @@ public class ApplyOperation extends AbstractOperation {
          */
     }
 
-    private List<Action> getActions(List<Action> actions) {
+    /*
+     * gets the applicable actions with a definition, including the nested actions of the applicable actions.
+     * @param actions
+     * @param subjectContext
+     * @return
+     */
+    private List<Action> getActions(List<Action> actions, EvaluationContext subjectContext) {
         List<Action> result = new ArrayList<>();
         for (Action action : actions) {
+            if (!isApplicable(action, subjectContext)) {
+                continue;
+            }
             if (action.getDefinition() != null) {
                 result.add(action);
             }
-            result.addAll(getActions(action.getAction()));
+            result.addAll(getActions(action.getAction(), subjectContext));
         }
         return result;
     }
 
+    /*
+     * checks the FHIRPath applicability conditions of the action. Conditions in other languages can't be evaluated here,
+     * so they are ignored, as are all the conditions when the subject couldn't be read.
+     * @param action
+     * @param subjectContext
+     * @return false if any FHIRPath applicability condition doesn't evaluate to true
+     */
+    private boolean isApplicable(Action action, EvaluationContext subjectContext) {
+        if (subjectContext == null) {
+            return true;
+        }
+        for (Action.Condition condition : action.getCondition()) {
+            Expression expression = condition.getExpression();
+            if (!ActionConditionKind.APPLICABILITY.equals(condition.getKind()) || expression == null || expression.getExpression() == null
+                    || expression.getLanguage() == null || !FHIRPATH_LANGUAGE.equals(expression.getLanguage().getValue())) {
+                continue;
+            }
+            try {
+                Collection<FHIRPathNode> nodes = FHIRPathEvaluator.evaluator().evaluate(subjectContext, expression.getExpression().getValue());
+                if (!FHIRPathUtil.evaluatesToTrue(nodes)) {
+                    return false;
+                }
+            } catch (FHIRPathException e) {
+                log.log(Level.WARNING, "Ignoring the applicability condition '" + expression.getExpression().getValue()
+                        + "' which failed to evaluate", e);
+            }
+        }
+        return true;
+    }
+
+    /*
+     * reads the subject of the operation.
+     * @param resourceHelper
+     * @param subject a relative reference like 'Patient/123'
+     * @return the subject, or null if it can't be read
+     */
+    private Resource readSubject(FHIRResourceHelpers resourceHelper, String subject) {
+        String[] tokens = subject.split("/");
+        if (tokens.length != 2) {
+            return null;
+        }
+        try {
+            return resourceHelper.doRead(tokens[0], tokens[1], false, false, null, null);
+        } catch (Exception e) {
+            if (log.isLoggable(Level.FINE)) {
+                log.log(Level.FINE, "Unable to read the subject '" + subject + "'", e);
+            }
+            return null;
+        }
+    }
+
     /*
      * reads the plan definition and converts to PlanDefinition resource.
      * @param resourceHelper
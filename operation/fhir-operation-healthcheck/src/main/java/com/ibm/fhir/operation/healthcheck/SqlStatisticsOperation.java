@@ -0,0 +1,194 @@
+/*
+ * (C) Copyright IBM Corp. 2021
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.ibm.fhir.operation.healthcheck;
+
+import static com.ibm.fhir.model.type.String.string;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import javax.ws.rs.core.SecurityContext;
+
+import com.ibm.fhir.config.FHIRRequestContext;
+import com.ibm.fhir.exception.FHIROperationException;
+import com.ibm.fhir.model.format.Format;
+import com.ibm.fhir.model.parser.FHIRParser;
+import com.ibm.fhir.model.resource.OperationDefinition;
+import com.ibm.fhir.model.resource.Parameters;
+import com.ibm.fhir.model.resource.Parameters.Parameter;
+import com.ibm.fhir.model.resource.Resource;
+import com.ibm.fhir.model.type.Decimal;
+import com.ibm.fhir.model.type.Element;
+import com.ibm.fhir.model.type.Instant;
+import com.ibm.fhir.persistence.jdbc.stats.SlowStatement;
+import com.ibm.fhir.persistence.jdbc.stats.StatementStatistics;
+import com.ibm.fhir.persistence.jdbc.stats.StatementStatisticsRegistry;
+import com.ibm.fhir.server.operation.spi.AbstractOperation;
+import com.ibm.fhir.server.operation.spi.FHIROperationContext;
+import com.ibm.fhir.server.operation.spi.FHIRResourceHelpers;
+import com.ibm.fhir.server.util.FHIROperationUtil;
+
+/**
+ * Custom operation to get the SQL statement statistics collected by the JDBC persistence layer
+ * (see {@link StatementStatisticsRegistry}), and optionally reset them.
+ *
+ * <p>The registry is shared by all the tenants of the server. So only the users in the {@link #ADMIN_ROLE}
+ * role get the statistics of all the statement shapes, the slow statements of every tenant with their
+ * access plans, and may reset the statistics. Other users only get the slow statements of their own tenant,
+ * without the plans.
+ */
+public class SqlStatisticsOperation extends AbstractOperation {
+    public static final String ADMIN_ROLE = "FHIRAdmin";
+
+    private static final String PARAM_LIMIT = "limit";
+    private static final String PARAM_RESET = "reset";
+
+    private static final int DEFAULT_LIMIT = 50;
+
+    public SqlStatisticsOperation() {
+        super();
+    }
+
+    @Override
+    protected OperationDefinition buildOperationDefinition() {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("sql-statistics.json")) {
+            return FHIRParser.parser(Format.JSON).parse(in);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+
+    @Override
+    protected Parameters doInvoke(FHIROperationContext operationContext, Class<? extends Resource> resourceType,
+            String logicalId, String versionId, Parameters parameters, FHIRResourceHelpers resourceHelper)
+            throws FHIROperationException {
+        int limit = DEFAULT_LIMIT;
+        boolean reset = false;
+        if (parameters != null) {
+            for (Parameter parameter : parameters.getParameter()) {
+                if (PARAM_LIMIT.equals(parameter.getName().getValue())) {
+                    Integer val = parameter.getValue().as(com.ibm.fhir.model.type.Integer.class).getValue();
+                    if (val != null) {
+                        limit = val;
+                    }
+                } else if (PARAM_RESET.equals(parameter.getName().getValue())) {
+                    reset = Boolean.TRUE.equals(parameter.getValue().as(com.ibm.fhir.model.type.Boolean.class).getValue());
+                }
+            }
+        }
+
+        // Allow the reset only with POST because it changes the state of the server
+        String method = (String) operationContext.getProperty(FHIROperationContext.PROPNAME_METHOD_TYPE);
+        if (reset && !"POST".equalsIgnoreCase(method)) {
+            throw new FHIROperationException("HTTP method not supported with reset: " + method);
+        }
+
+        SecurityContext securityContext = (SecurityContext) operationContext.getProperty(FHIROperationContext.PROPNAME_SECURITY_CONTEXT);
+        boolean admin = securityContext != null && securityContext.isUserInRole(ADMIN_ROLE);
+        if (reset && !admin) {
+            throw FHIROperationUtil.generateForbiddenOperationException(getName());
+        }
+        String tenantId = FHIRRequestContext.get().getTenantId();
+
+        try {
+            StatementStatisticsRegistry registry = StatementStatisticsRegistry.getInstance();
+            Parameters.Builder result = Parameters.builder();
+            result.parameter(parameter("enabled", com.ibm.fhir.model.type.Boolean.of(registry.isEnabled())));
+
+            if (admin) {
+                List<StatementStatistics> statistics = registry.getStatistics();
+                for (int i = 0; i < statistics.size() && i < limit; i++) {
+                    result.parameter(toParameter(statistics.get(i)));
+                }
+            }
+            int count = 0;
+            for (SlowStatement slow : registry.getSlowStatements()) {
+                if (count >= limit) {
+                    break;
+                }
+                if (admin || tenantId.equals(slow.getTenantId())) {
+                    result.parameter(toParameter(slow, admin));
+                    count++;
+                }
+            }
+            if (admin) {
+                result.parameter(parameter("overflow", integer(registry.getOverflowCount())));
+            }
+
+            if (reset) {
+                registry.reset();
+            }
+            return FHIROperationUtil.getOutputParameters(result.build());
+        } catch (Throwable t) {
+            throw new FHIROperationException("Unexpected error occurred while processing request for operation '"
+                    + getName() + "': " + getCausedByMessage(t), t);
+        }
+    }
+
+    private Parameter toParameter(StatementStatistics stats) {
+        Parameter.Builder builder = Parameter.builder()
+                .name(string("statement"))
+                .part(parameter("sql", string(stats.getSql())))
+                .part(parameter("kind", string(stats.getKind().metricName())))
+                .part(parameter("count", integer(stats.getCount())))
+                .part(parameter("totalMillis", millis(stats.getTotalNanos())))
+                .part(parameter("meanMillis", millis(stats.getMeanNanos())))
+                .part(parameter("maxMillis", millis(stats.getMaxNanos())))
+                .part(parameter("rows", integer(stats.getRows())))
+                .part(parameter("errors", integer(stats.getErrors())));
+        for (int i = 0; i <= StatementStatistics.BUCKET_BOUNDS_MILLIS.length; i++) {
+            long count = stats.getBucketCount(i);
+            if (count > 0) {
+                Parameter.Builder bucket = Parameter.builder().name(string("bucket"));
+                if (i < StatementStatistics.BUCKET_BOUNDS_MILLIS.length) {
+                    // the last bucket has no upper bound
+                    bucket.part(parameter("upperBoundMillis", integer(StatementStatistics.BUCKET_BOUNDS_MILLIS[i])));
+                }
+                bucket.part(parameter("count", integer(count)));
+                builder.part(bucket.build());
+            }
+        }
+        return builder.build();
+    }
+
+    private Parameter toParameter(SlowStatement slow, boolean withPlan) {
+        Parameter.Builder builder = Parameter.builder()
+                .name(string("slowStatement"))
+                .part(parameter("sql", string(slow.getSql())))
+                .part(parameter("elapsedMillis", millis(slow.getElapsedNanos())))
+                .part(parameter("time", Instant.of(slow.getTime().atZone(ZoneOffset.UTC))));
+        if (slow.getTenantId() != null) {
+            builder.part(parameter("tenant", string(slow.getTenantId())));
+        }
+        if (withPlan && slow.getPlan() != null) {
+            builder.part(parameter("plan", string(slow.getPlan())));
+        }
+        return builder.build();
+    }
+
+    private Parameter parameter(String name, Element value) {
+        return Parameter.builder().name(string(name)).value(value).build();
+    }
+
+    /**
+     * The counters are longs but FHIR integers are 32-bit, so they are capped at the max integer value
+     */
+    private com.ibm.fhir.model.type.Integer integer(long value) {
+        return com.ibm.fhir.model.type.Integer.of((int) Math.min(value, Integer.MAX_VALUE));
+    }
+
+    private Decimal millis(long nanos) {
+        return Decimal.of(BigDecimal.valueOf(nanos, 6).setScale(3, RoundingMode.HALF_UP));
+    }
+
+    private String getCausedByMessage(Throwable throwable) {
+        return throwable.getClass().getName() + ": " + throwable.getMessage();
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * (C) Copyright IBM Corp. 2016,2019
+ * (C) Copyright IBM Corp. 2016, 2021
  *
  * SPDX-License-Identifier: Apache-2.0
  */
@@ -28,6 +28,7 @@ import com.ibm.fhir.model.type.Uri;
 import com.ibm.fhir.model.type.code.IssueSeverity;
 import com.ibm.fhir.model.type.code.IssueType;
 import com.ibm.fhir.model.type.code.NarrativeStatus;
+import com.ibm.fhir.path.evaluator.FHIRPathEvaluator.EvaluationContext;
 import com.ibm.fhir.server.operation.spi.AbstractOperation;
 import com.ibm.fhir.server.operation.spi.FHIROperationContext;
 import com.ibm.fhir.server.operation.spi.FHIRResourceHelpers;
@@ -58,14 +59,18 @@ public class ValidateOperation extends AbstractOperation {
             }
             Resource resource = resourceParameter.getResource() ;
 
+            // resolve() in the profile constraints can read the referenced resources from this server
+            EvaluationContext evaluationContext = new EvaluationContext(resource);
+            evaluationContext.setReferenceResolver(resourceHelper.getReferenceResolver());
+
             List<OperationOutcome.Issue> issues;
             Parameter profileParameter = getParameter(parameters, "profile");
             if (profileParameter != null && profileParameter.getValue() != null) {
                 Uri profileUri = profileParameter.getValue().as(Uri.class);
                 String profile = profileUri == null ? null : profileUri.getValue();
-                issues = FHIRValidator.validator().validate(resource, profile);
+                issues = FHIRValidator.validator().validate(evaluationContext, profile);
             } else {
-                issues = FHIRValidator.validator().validate(resource);
+                issues = FHIRValidator.validator().validate(evaluationContext);
             }
 
             return FHIROperationUtil.getOutputParameters(buildResourceValidOperationOutcome(issues));